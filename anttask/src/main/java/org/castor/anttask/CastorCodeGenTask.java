@@ -682,6 +682,7 @@ public final class CastorCodeGenTask extends MatchingTask {
       }
 
       SchemaContext schemaContext = new SchemaContextImpl();
+      schemaContext.setSchemaCache(getSchemaCache());
       SchemaUnmarshaller schemaUnmarshaller = null;
       try {
         schemaUnmarshaller = new SchemaUnmarshaller(schemaContext);
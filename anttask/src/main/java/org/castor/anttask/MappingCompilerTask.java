@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.castor.anttask;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Vector;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.MatchingTask;
+import org.apache.tools.ant.types.FileSet;
+import org.exolab.castor.mapping.MappingException;
+import org.exolab.castor.tools.MappingCompiler;
+
+/**
+ * An <a href="http://ant.apache.org/">Ant</a> task to call the Castor {@link MappingCompiler}. It
+ * can be passed a mapping file, a directory, a Fileset or all three. Every mapping file is compiled
+ * to a file of the same name with the extension <tt>.cmap</tt>, next to the mapping file or in the
+ * given destination directory.
+ *
+ * @since 1.4.2
+ */
+public final class MappingCompilerTask extends MatchingTask {
+
+  /** Error message -- no mapping file provided. */
+  private static final String NO_MAPPING_MSG = "At least one mapping file must be provided.";
+
+  /** The mapping file to compile. */
+  private File _mappingFile;
+
+  /** The directory, for which the user wants to compile all mapping files. */
+  private File _mappingDir;
+
+  /** The filesets of mapping files the user wants to compile. */
+  private final Vector<FileSet> _mappingFileSets = new Vector<>();
+
+  /** The directory to write the compiled mappings to; null to write them next to the sources. */
+  private File _destDir;
+
+  /** Indicates whether mapping files are compiled even if their compiled mapping is up to date. */
+  private boolean _force = false;
+
+  /**
+   * Sets the individual mapping file to compile.
+   *
+   * @param file One mapping file.
+   */
+  public void setFile(final File file) {
+    _mappingFile = file;
+  }
+
+  /**
+   * Sets the directory such that all mapping files in this directory will be compiled.
+   *
+   * @param dir The directory containing the mapping files to compile.
+   */
+  public void setDir(final File dir) {
+    _mappingDir = dir;
+  }
+
+  /**
+   * Adds a fileset of mapping files to compile.
+   *
+   * @param set An individual file set containing mapping files.
+   */
+  public void addFileset(final FileSet set) {
+    _mappingFileSets.add(set);
+  }
+
+  /**
+   * Sets the directory to write the compiled mappings to.
+   *
+   * @param destDir The destination directory.
+   */
+  public void setDestDir(final File destDir) {
+    _destDir = destDir;
+  }
+
+  /**
+   * Sets whether mapping files are compiled even if their compiled mapping is up to date.
+   *
+   * @param force True to always compile mapping files.
+   */
+  public void setForce(final boolean force) {
+    _force = force;
+  }
+
+  /**
+   * Compiles an individual mapping file. If anything goes wrong a BuildException will be thrown.
+   *
+   * @param compiler The compiler to use.
+   * @param file The mapping file to compile.
+   */
+  private void processFile(final MappingCompiler compiler, final File file) {
+    File directory = (_destDir == null) ? file.getAbsoluteFile().getParentFile() : _destDir;
+    File output = MappingCompiler.getOutputFile(file, directory);
+    try {
+      if (compiler.compile(file, output)) {
+        log("Compiled " + file + " to " + output);
+      } else {
+        log(output + " is up to date", Project.MSG_VERBOSE);
+      }
+    } catch (IOException e) {
+      throw new BuildException("Problem compiling mapping file " + file, e);
+    } catch (MappingException e) {
+      throw new BuildException("Invalid mapping file " + file, e);
+    }
+  }
+
+  /**
+   * Compiles all mapping files of the given directory.
+   *
+   * @param compiler The compiler to use.
+   * @param dir The directory.
+   * @param ds The scanner listing the mapping files of the directory.
+   */
+  private void processDirectory(final MappingCompiler compiler, final File dir,
+      final DirectoryScanner ds) {
+    for (String file : ds.getIncludedFiles()) {
+      processFile(compiler, new File(dir, file));
+    }
+  }
+
+  /**
+   * Public execute method -- entry point for the Ant task. Compiles the given mapping file, the
+   * mapping files of the given directory and those of the given filesets. If anything goes wrong
+   * during execution of the Ant task a BuildException will be thrown.
+   *
+   * @see org.apache.tools.ant.Task#execute()
+   */
+  public void execute() {
+    if ((_mappingFile == null) && (_mappingDir == null) && _mappingFileSets.isEmpty()) {
+      throw new BuildException(NO_MAPPING_MSG);
+    }
+
+    MappingCompiler compiler = new MappingCompiler();
+    compiler.setForce(_force);
+
+    if (_mappingFile != null) {
+      processFile(compiler, _mappingFile);
+    }
+
+    if ((_mappingDir != null) && _mappingDir.isDirectory()) {
+      processDirectory(compiler, _mappingDir, getDirectoryScanner(_mappingDir));
+    }
+
+    for (FileSet fs : _mappingFileSets) {
+      processDirectory(compiler, fs.getDir(getProject()), fs.getDirectoryScanner(getProject()));
+    }
+  }
+}
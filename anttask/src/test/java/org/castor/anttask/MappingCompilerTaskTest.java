@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.castor.anttask;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.FileSet;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for {@link MappingCompilerTask}.
+ */
+public class MappingCompilerTaskTest {
+
+    private static final String MAPPING =
+        "<mapping><class name=\"org.castor.test.Entity\"><field name=\"id\" type=\"integer\"/>"
+            + "</class></mapping>";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private MappingCompilerTask task;
+
+    @Before
+    public void setUp() throws Exception {
+        task = new MappingCompilerTask();
+        task.setProject(new Project());
+    }
+
+    @Test(expected = BuildException.class)
+    public void should_ThrowBuildException_When_NoMappingProvided() {
+        task.execute();
+    }
+
+    @Test
+    public void should_WriteCompiledMapping_When_FileProvided() throws Exception {
+        File mapping = writeMapping(tempFolder.getRoot(), "mapping.xml", MAPPING);
+        task.setFile(mapping);
+        task.execute();
+
+        assertTrue(new File(tempFolder.getRoot(), "mapping.cmap").isFile());
+    }
+
+    @Test
+    public void should_WriteToDestDir_When_FilesetProvided() throws Exception {
+        File sources = tempFolder.newFolder("mappings");
+        File destDir = tempFolder.newFolder("compiled");
+        writeMapping(sources, "first.xml", MAPPING);
+        writeMapping(sources, "second.xml", MAPPING);
+
+        FileSet fileSet = new FileSet();
+        fileSet.setDir(sources);
+        fileSet.setIncludes("*.xml");
+        task.addFileset(fileSet);
+        task.setDestDir(destDir);
+        task.execute();
+
+        assertTrue(new File(destDir, "first.cmap").isFile());
+        assertTrue(new File(destDir, "second.cmap").isFile());
+        assertFalse(new File(sources, "first.cmap").exists());
+    }
+
+    @Test
+    public void should_SkipMapping_When_CompiledMappingIsUpToDate() throws Exception {
+        File mapping = writeMapping(tempFolder.getRoot(), "mapping.xml", MAPPING);
+        File compiled = new File(tempFolder.getRoot(), "mapping.cmap");
+        task.setFile(mapping);
+        task.execute();
+
+        assertTrue(compiled.setLastModified(0L));
+        task.execute();
+        assertEquals(0L, compiled.lastModified());
+
+        writeMapping(tempFolder.getRoot(), "mapping.xml", MAPPING.replace("integer", "long"));
+        task.execute();
+        assertNotEquals(0L, compiled.lastModified());
+    }
+
+    @Test(expected = BuildException.class)
+    public void should_ThrowBuildException_When_MappingIsInvalid() throws Exception {
+        task.setFile(writeMapping(tempFolder.getRoot(), "mapping.xml", "<mapping>"));
+        task.execute();
+    }
+
+    private File writeMapping(final File dir, final String name, final String content)
+        throws IOException {
+        File file = new File(dir, name);
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
@@ -266,6 +266,17 @@ public class BuilderConfiguration {
      */
     public static final String USE_CYCLE_BREAKER = "org.exolab.castor.builder.useCycleBreaker";
 
+    /**
+     * Property specifying whether generated classes should implement
+     * {@link org.exolab.castor.xml.XmlWritable}, writing their attributes and content directly
+     * during marshalling; defaults to false. Only takes effect when marshal methods are generated.
+     * 
+     * <pre>
+     * org.exolab.castor.builder.directMarshalling = false
+     * </pre>
+     */
+    public static final String DIRECT_MARSHALLING = "org.exolab.castor.builder.directMarshalling";
+
     /**
      * Property specifying whether for Java field names the old naming conventions should be used;
      * defaults to <i>true</i>.
@@ -513,6 +524,16 @@ public class BuilderConfiguration {
     return Boolean.valueOf(_localProps.getProperty(Property.USE_CYCLE_BREAKER, "true"));
   }
 
+  /**
+   * Returns true if generated classes should write their attributes and content directly during
+   * marshalling; defaults to 'false'.
+   *
+   * @return true if generated classes should implement {@link org.exolab.castor.xml.XmlWritable}
+   */
+  public final boolean generateDirectMarshalling() {
+    return Boolean.parseBoolean(_localProps.getProperty(Property.DIRECT_MARSHALLING, FALSE));
+  }
+
   /**
    * Returns the maximum number of static constant definitions that are acceptable within one class
    * file; default is 1000.
@@ -59,6 +59,11 @@ public class SGTypes {
   public static final JClass VALIDATION_EXCEPTION =
       new JClass("org.exolab.castor.xml.ValidationException");
 
+  /**
+   * Represents a {@link JClass} instance of type 'org.exolab.castor.xml.XmlWriter'.
+   */
+  public static final JClass XML_WRITER = new JClass("org.exolab.castor.xml.XmlWriter");
+
   /**
    * Represents a {@link JClass} instance of type 'java.lang.IndexOutOfBoundsException'.
    */
@@ -164,4 +169,18 @@ public class SGTypes {
     }
     return new JClass("java.util.Hashtable");
   }
+
+  /**
+   * Factory method for creating a {@link JCollectionType} instance representing a {@link HashMap}
+   * instance.
+   * 
+   * @param useJava50 Whether Java 5.0 is the target JVM.
+   * @return {@link JCollectionType} instance representing a {@link HashMap}
+   */
+  public static final JType createHashMap(final boolean useJava50) {
+    if (useJava50) {
+      return new JClass("java.util.HashMap<Object,Object>");
+    }
+    return new JClass("java.util.HashMap");
+  }
 }
@@ -89,6 +89,7 @@ import org.exolab.castor.xml.schema.Group;
 import org.exolab.castor.xml.schema.ModelGroup;
 import org.exolab.castor.xml.schema.Particle;
 import org.exolab.castor.xml.schema.Schema;
+import org.exolab.castor.xml.schema.SchemaCache;
 import org.exolab.castor.xml.schema.SchemaContext;
 import org.exolab.castor.xml.schema.SchemaContextImpl;
 import org.exolab.castor.xml.schema.SimpleContent;
@@ -193,6 +194,8 @@ public class SourceGenerator extends BuilderConfiguration {
    * A flag indicating, if true, that source generation should fail on the first error.
    */
   private boolean _failOnFirstError = false;
+  /** The cache imported and included schemas are shared through, or null. */
+  private SchemaCache _schemaCache = null;
   /** A GroupNaming helper class used to named anonymous groups. */
   private GroupNaming _groupNaming = null;
   /** Strategy for name conflict resolution. */
@@ -339,6 +342,25 @@ public class SourceGenerator extends BuilderConfiguration {
     _failOnFirstError = failOnFirstError;
   }
 
+  /**
+   * Sets the {@link SchemaCache} imported and included schemas are looked up in and added to, so
+   * that schemas shared by several generation runs are parsed only once.
+   *
+   * @param schemaCache the {@link SchemaCache} to use, or null (the default) for no caching.
+   */
+  public final void setSchemaCache(final SchemaCache schemaCache) {
+    _schemaCache = schemaCache;
+  }
+
+  /**
+   * Returns the {@link SchemaCache} imported and included schemas are looked up in and added to.
+   *
+   * @return the {@link SchemaCache} used, or null if schemas are not cached.
+   */
+  public final SchemaCache getSchemaCache() {
+    return _schemaCache;
+  }
+
   /**
    * Sets whether or not to suppress non-fatal warnings encountered during source generation.
    * 
@@ -634,6 +656,7 @@ public class SourceGenerator extends BuilderConfiguration {
     }
 
     SchemaContext schemaContext = new SchemaContextImpl();
+    schemaContext.setSchemaCache(_schemaCache);
     SchemaUnmarshaller schemaUnmarshaller = null;
     try {
       schemaUnmarshaller = new SchemaUnmarshaller(schemaContext);
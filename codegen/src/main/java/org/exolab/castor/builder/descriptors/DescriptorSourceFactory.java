@@ -526,6 +526,37 @@ public final class DescriptorSourceFactory {
     }
   }
 
+  /**
+   * Creates the methods of the anonymous EnumFieldHandler that convert between XML values and
+   * constants of the given enumeration type by calling the lookup methods generated for the type
+   * directly, rather than reflectively.
+   *
+   * @param enumType the fully qualified name of the enumeration type
+   * @param jsc the java source code to which this will be written
+   */
+  private void createEnumConversionMethods(final String enumType, final JSourceCode jsc) {
+    jsc.indent();
+    if (_config.useJava50()) {
+      jsc.add("@Override");
+    }
+    jsc.add("protected java.lang.Object fromValue(final java.lang.String value) {");
+    jsc.indent();
+    jsc.add("return " + enumType);
+    jsc.append(_config.useJava5Enums() ? ".fromValue(value);" : ".valueOf(value);");
+    jsc.unindent();
+    jsc.add("}");
+    if (_config.useJava50()) {
+      jsc.add("@Override");
+    }
+    jsc.add("protected java.lang.String toValue(final java.lang.Object value) {");
+    jsc.indent();
+    jsc.add("return ((" + enumType + ") value)");
+    jsc.append(_config.useJava5Enums() ? ".value();" : ".toString();");
+    jsc.unindent();
+    jsc.add("}");
+    jsc.unindent();
+  } // -- createEnumConversionMethods
+
   /**
    * Adds additional logic or wrappers around the core handler for special types such as dates,
    * enumerated types, collections, etc.
@@ -541,7 +572,9 @@ public final class DescriptorSourceFactory {
     if (xsType.isEnumerated()) {
       jsc.add("handler = new org.exolab.castor.xml.handlers.EnumFieldHandler(");
       jsc.append(classType(xsType.getJType()));
-      jsc.append(", handler);");
+      jsc.append(", handler) {");
+      createEnumConversionMethods(xsType.getJType().toString(), jsc);
+      jsc.add("};");
       jsc.add("desc.setImmutable(true);");
     } else if (xsType.getType() == XSType.DATETIME_TYPE) {
       jsc.add("handler = new org.exolab.castor.xml.handlers.DateFieldHandler(");
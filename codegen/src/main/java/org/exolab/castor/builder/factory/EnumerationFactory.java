@@ -13,7 +13,11 @@
  */
 package org.exolab.castor.builder.factory;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.exolab.castor.builder.AnnotationBuilder;
 import org.exolab.castor.builder.BuilderConfiguration;
@@ -52,6 +56,12 @@ import org.exolab.javasource.JType;
  */
 public final class EnumerationFactory extends BaseFactory {
 
+  /**
+   * Maximum number of values looked up through a switch on their hash code; larger enumerations
+   * use a map, so that the lookup method stays well below the size limit for a method.
+   */
+  private static final int MAX_LOOKUP_SWITCH_SIZE = 1000;
+
   /**
    * The TypeConversion instance to use for mapping SimpleTypes into XSTypes.
    */
@@ -135,10 +145,19 @@ public final class EnumerationFactory extends BaseFactory {
       return;
     }
 
+    // -- look up constants through a switch, unless there are too many of them
+    boolean useLookupSwitch =
+        generateConstantDefinitions && (numberOfEnumerationFacets <= MAX_LOOKUP_SWITCH_SIZE);
+    Map<String, String> lookupTable = new LinkedHashMap<String, String>();
+
     JField field = null;
-    JField fHash = new JField(SGTypes.createHashtable(getConfig().useJava50()), "_memberTable");
-    fHash.setInitString("init()");
-    fHash.getModifiers().setStatic(true);
+    JField fHash = null;
+    if (!useLookupSwitch) {
+      fHash = new JField(SGTypes.createHashMap(getConfig().useJava50()), "_memberTable");
+      fHash.setInitString("init()");
+      fHash.getModifiers().setStatic(true);
+      fHash.getModifiers().setFinal(true);
+    }
 
     JSourceCode jsc = null;
 
@@ -151,10 +170,12 @@ public final class EnumerationFactory extends BaseFactory {
     jsc.add("this.type = type;");
     jsc.add("this.stringValue = value;");
 
-    createValueOfMethod(jClass, className);
-    createEnumerateMethod(jClass, className);
+    if (!useLookupSwitch) {
+      createValueOfMethod(jClass, className);
+      createEnumerateMethod(jClass, className, false);
+      createInitMethod(jClass);
+    }
     createToStringMethod(jClass, className);
-    createInitMethod(jClass);
     createReadResolveMethod(jClass);
 
     // -- Loop through "enumeration" facets
@@ -224,7 +245,9 @@ public final class EnumerationFactory extends BaseFactory {
       }
       // -- initializer method
 
-      if (addInitializerCode) {
+      if (addInitializerCode && useLookupSwitch) {
+        lookupTable.put(_caseInsensitive ? value.toLowerCase() : value, objName);
+      } else if (addInitializerCode) {
         jsc = getSourceCodeForInitMethod(jClass);
         jsc.add("members.put(\"");
         jsc.append(escapeValue(value));
@@ -246,17 +269,24 @@ public final class EnumerationFactory extends BaseFactory {
       ++count;
     }
 
-    // -- finish init method
-    final JMethod method = jClass.getMethod(this.getInitMethodName(_maxSuffix), 0);
-    method.getSourceCode().add("return members;");
-
-    // -- add memberTable to the class, we can only add this after all the
-    // types,
-    // -- or we'll create source code that will generate null pointer
-    // exceptions,
-    // -- because calling init() will try to add null values to the
-    // hashtable.
-    jClass.addField(fHash);
+    if (useLookupSwitch) {
+      // -- add the list of members to the class, after all the constants
+      createMemberList(jClass, lookupTable);
+      createValueOfSwitchMethod(jClass, className, lookupTable);
+      createEnumerateMethod(jClass, className, true);
+    } else {
+      // -- finish init method
+      final JMethod method = jClass.getMethod(this.getInitMethodName(_maxSuffix), 0);
+      method.getSourceCode().add("return members;");
+
+      // -- add memberTable to the class, we can only add this after all the
+      // types,
+      // -- or we'll create source code that will generate null pointer
+      // exceptions,
+      // -- because calling init() will try to add null values to the
+      // hash map.
+      jClass.addField(fHash);
+    }
 
     // -- add internal type
     field = new JField(JType.INT, "type");
@@ -291,31 +321,34 @@ public final class EnumerationFactory extends BaseFactory {
     valueField.setModifiers(modifiers);
     jEnum.addField(valueField);
 
-    // add enumConstants field
-    JField enumConstantsField =
-        new JField(new JClass("java.util.Map<java.lang.String, " + jEnum.getLocalName() + ">"),
-            "enumConstants");
-    modifiers = new JModifiers();
-    modifiers.setFinal(true);
-    modifiers.makePrivate();
-    modifiers.setStatic(true);
-    enumConstantsField.setModifiers(modifiers);
-    enumConstantsField
-        .setInitString("new java.util.HashMap<java.lang.String, " + jEnum.getLocalName() + ">()");
-    jEnum.addField(enumConstantsField);
-
-    // add static initialization of enumConstants field
-    JSourceCode sourceCode = jEnum.getStaticInitializationCode();
-    sourceCode.add("for (" + jEnum.getLocalName() + " c: " + jEnum.getLocalName() + ".values()) {");
-    sourceCode.indent();
-    sourceCode.indent();
-    sourceCode.add(jEnum.getLocalName() + "." + enumConstantsField.getName() + ".put(c."
-        + valueField.getName() + ", c);");
-    sourceCode.unindent();
-    sourceCode.add("}");
+    // add enumConstants field, unless constants are looked up through a switch
+    JField enumConstantsField = null;
+    if (simpleType.getNumberOfFacets(Facet.ENUMERATION) > MAX_LOOKUP_SWITCH_SIZE) {
+      enumConstantsField =
+          new JField(new JClass("java.util.Map<java.lang.String, " + jEnum.getLocalName() + ">"),
+              "enumConstants");
+      modifiers = new JModifiers();
+      modifiers.setFinal(true);
+      modifiers.makePrivate();
+      modifiers.setStatic(true);
+      enumConstantsField.setModifiers(modifiers);
+      enumConstantsField.setInitString(
+          "new java.util.HashMap<java.lang.String, " + jEnum.getLocalName() + ">()");
+      jEnum.addField(enumConstantsField);
+
+      // add static initialization of enumConstants field
+      JSourceCode sourceCode = jEnum.getStaticInitializationCode();
+      sourceCode
+          .add("for (" + jEnum.getLocalName() + " c: " + jEnum.getLocalName() + ".values()) {");
+      sourceCode.indent();
+      sourceCode.indent();
+      sourceCode.add(jEnum.getLocalName() + "." + enumConstantsField.getName() + ".put(c."
+          + valueField.getName() + ", c);");
+      sourceCode.unindent();
+      sourceCode.add("}");
+    }
 
     addValueMethod(jEnum);
-    addFromValueMethod(jEnum, enumConstantsField);
     addSetValueMethod(jEnum);
     addToStringMethod(jEnum);
 
@@ -327,6 +360,7 @@ public final class EnumerationFactory extends BaseFactory {
     constructor.setModifiers(modifiers);
     jEnum.addConstructor(constructor);
 
+    Map<String, String> lookupTable = new LinkedHashMap<String, String>();
     int enumCount = 0;
     while (enumeration.hasMoreElements()) {
       Facet facet = enumeration.nextElement();
@@ -346,9 +380,12 @@ public final class EnumerationFactory extends BaseFactory {
       }
 
       jEnum.addEnumConstant(enumConstant);
+      lookupTable.put(facet.getValue(), enumConstant.getName());
       enumCount++;
     }
 
+    addFromValueMethod(jEnum, enumConstantsField, lookupTable);
+
     // custom annotations
     for (AnnotationBuilder annotationBuilder : annotationBuilders) {
       annotationBuilder.addEnumAnnotations(simpleType, jEnum);
@@ -394,20 +431,32 @@ public final class EnumerationFactory extends BaseFactory {
    * Adds a {@link JMethod} instance for "fromValue".
    * 
    * @param jEnum The {@link JEnum} instance to add this method to.
+   * @param enumConstantsField The map of constants by value, or null if the constants should be
+   *        looked up through a switch.
+   * @param lookupTable The names of the constants by value.
    */
-  private void addFromValueMethod(JEnum jEnum, JField enumConstantsField) {
+  private void addFromValueMethod(final JEnum jEnum, final JField enumConstantsField,
+      final Map<String, String> lookupTable) {
     JModifiers modifiers;
     JSourceCode sourceCode;
     JMethod fromValueMethod = new JMethod("fromValue", jEnum, "the constant for this value");
     fromValueMethod.addParameter(new JParameter(new JClass("java.lang.String"), "value"));
     sourceCode = new JSourceCode();
-    sourceCode.add(jEnum.getLocalName() + " c = " + jEnum.getLocalName() + "."
-        + enumConstantsField.getName() + ".get(value);");
-    sourceCode.add("if (c != null) {");
-    sourceCode.indent();
-    sourceCode.add("return c;");
-    sourceCode.unindent();
-    sourceCode.add("}");
+    if (enumConstantsField == null) {
+      sourceCode.add("if (value != null) {");
+      sourceCode.indent();
+      addLookupSwitch(sourceCode, "value", lookupTable);
+      sourceCode.unindent();
+      sourceCode.add("}");
+    } else {
+      sourceCode.add(jEnum.getLocalName() + " c = " + jEnum.getLocalName() + "."
+          + enumConstantsField.getName() + ".get(value);");
+      sourceCode.add("if (c != null) {");
+      sourceCode.indent();
+      sourceCode.add("return c;");
+      sourceCode.unindent();
+      sourceCode.add("}");
+    }
     sourceCode.add("throw new IllegalArgumentException(value);");
     fromValueMethod.setSourceCode(sourceCode);
     modifiers = new JModifiers();
@@ -517,16 +566,16 @@ public final class EnumerationFactory extends BaseFactory {
    */
   private JMethod createInitMethod(final JClass jClass) {
     final String initMethodName = getInitMethodName(_maxSuffix);
-    JMethod mInit = new JMethod(initMethodName, SGTypes.createHashtable(getConfig().useJava50()),
-        "the initialized Hashtable for the member table");
+    JMethod mInit = new JMethod(initMethodName, SGTypes.createHashMap(getConfig().useJava50()),
+        "the initialized HashMap for the member table");
     jClass.addMethod(mInit);
     mInit.getModifiers().makePrivate();
     mInit.getModifiers().setStatic(true);
     if (getConfig().useJava50()) {
-      mInit.getSourceCode().add("java.util.Hashtable<Object, Object> members"
-          + " = new java.util.Hashtable<Object, Object>();");
+      mInit.getSourceCode().add("java.util.HashMap<Object, Object> members"
+          + " = new java.util.HashMap<Object, Object>();");
     } else {
-      mInit.getSourceCode().add("java.util.Hashtable members = new java.util.Hashtable();");
+      mInit.getSourceCode().add("java.util.HashMap members = new java.util.HashMap();");
     }
     return mInit;
   }
@@ -552,8 +601,11 @@ public final class EnumerationFactory extends BaseFactory {
    * 
    * @param jClass The enumeration class to create this method for.
    * @param className The name of the class.
+   * @param useMemberList true if the instances are held by the '_members' array rather than by the
+   *        '_memberTable' map
    */
-  private void createEnumerateMethod(final JClass jClass, final String className) {
+  private void createEnumerateMethod(final JClass jClass, final String className,
+      final boolean useMemberList) {
     // TODO for the time being return Enumeration<Object> for Java 5.0;
     // change
     JMethod mEnumerate = new JMethod("enumerate",
@@ -564,7 +616,46 @@ public final class EnumerationFactory extends BaseFactory {
     JDocComment jdc = mEnumerate.getJDocComment();
     jdc.appendComment("Returns an enumeration of all possible instances of ");
     jdc.appendComment(className);
-    mEnumerate.getSourceCode().add("return _memberTable.elements();");
+    if (useMemberList) {
+      mEnumerate.getSourceCode()
+          .add("return java.util.Collections.enumeration(java.util.Arrays.asList(_members));");
+    } else {
+      mEnumerate.getSourceCode()
+          .add("return java.util.Collections.enumeration(_memberTable.values());");
+    }
+  }
+
+  /**
+   * Creates the '_members' array holding all instances of this enumeration class, in the order of
+   * their declaration. It must be added after all constants have been added to the class.
+   * 
+   * @param jClass The enumeration class to create this field for.
+   * @param lookupTable The names of the constants by value.
+   */
+  private void createMemberList(final JClass jClass, final Map<String, String> lookupTable) {
+    List<String> members = new ArrayList<String>();
+    for (String objName : lookupTable.values()) {
+      if (!members.contains(objName)) {
+        members.add(objName);
+      }
+    }
+
+    StringBuilder init = new StringBuilder("{\n");
+    for (int i = 0; i < members.size(); i++) {
+      if (i > 0) {
+        init.append(",\n");
+      }
+      init.append("    ").append(members.get(i));
+    }
+    init.append("\n}");
+
+    JField fMembers =
+        new JField(new JArrayType(jClass, getConfig().useJava50()), "_members");
+    fMembers.getModifiers().setStatic(true);
+    fMembers.getModifiers().setFinal(true);
+    fMembers.getModifiers().makePrivate();
+    fMembers.setInitString(init.toString());
+    jClass.addField(fMembers);
   }
 
   /**
@@ -594,6 +685,88 @@ public final class EnumerationFactory extends BaseFactory {
 
   }
 
+  /**
+   * Creates 'valueOf(String)' method for this enumeration class, looking up the instance through a
+   * switch on the hash code of the given String.
+   * 
+   * @param jClass The enumeration class to create this method for.
+   * @param className The name of the class.
+   * @param lookupTable The names of the constants by value.
+   */
+  private void createValueOfSwitchMethod(final JClass jClass, final String className,
+      final Map<String, String> lookupTable) {
+    JMethod mValueOf =
+        new JMethod("valueOf", jClass, "the " + className + " value of parameter 'string'");
+    mValueOf.addParameter(new JParameter(SGTypes.STRING, "string"));
+    mValueOf.getModifiers().setStatic(true);
+    jClass.addMethod(mValueOf);
+
+    JDocComment jdc = mValueOf.getJDocComment();
+    jdc.appendComment("Returns a new " + className);
+    jdc.appendComment(" based on the given String value.");
+
+    JSourceCode jsc = mValueOf.getSourceCode();
+    jsc.add("if (string != null) {");
+    jsc.indent();
+    if (_caseInsensitive) {
+      jsc.add("java.lang.String key = string.toLowerCase();");
+      addLookupSwitch(jsc, "key", lookupTable);
+    } else {
+      addLookupSwitch(jsc, "string", lookupTable);
+    }
+    jsc.unindent();
+    jsc.add("}");
+    jsc.add("String err = \"'\" + string + \"' is not a valid " + className + "\";");
+    jsc.add("throw new IllegalArgumentException(err);");
+  }
+
+  /**
+   * Adds a switch on the hash code of the given String variable, returning the constant whose
+   * value equals the String, to the given source code. Values sharing a hash code are compared in
+   * turn; the code falls through if no value matches.
+   * 
+   * @param jsc The source code to add the switch to.
+   * @param variable The name of the String variable holding the value to look up.
+   * @param lookupTable The names of the constants by value.
+   */
+  private void addLookupSwitch(final JSourceCode jsc, final String variable,
+      final Map<String, String> lookupTable) {
+    Map<Integer, List<String>> buckets = new LinkedHashMap<Integer, List<String>>();
+    for (String value : lookupTable.keySet()) {
+      Integer hash = Integer.valueOf(value.hashCode());
+      List<String> bucket = buckets.get(hash);
+      if (bucket == null) {
+        bucket = new ArrayList<String>();
+        buckets.put(hash, bucket);
+      }
+      bucket.add(value);
+    }
+
+    jsc.add("switch (" + variable + ".hashCode()) {");
+    for (Map.Entry<Integer, List<String>> bucket : buckets.entrySet()) {
+      jsc.indent();
+      jsc.add("case " + bucket.getKey() + ":");
+      jsc.indent();
+      for (String value : bucket.getValue()) {
+        jsc.add("if (\"" + escapeValue(value) + "\".equals(" + variable + ")) {");
+        jsc.indent();
+        jsc.add("return " + lookupTable.get(value) + ";");
+        jsc.unindent();
+        jsc.add("}");
+      }
+      jsc.add("break;");
+      jsc.unindent();
+      jsc.unindent();
+    }
+    jsc.indent();
+    jsc.add("default:");
+    jsc.indent();
+    jsc.add("break;");
+    jsc.unindent();
+    jsc.unindent();
+    jsc.add("}");
+  }
+
   /**
    * Creates all the necessary enumeration code from the given SimpleType. Enumerations are handled
    * by creating an Object like the following:
@@ -58,6 +58,7 @@ import org.exolab.castor.builder.TypeConversion;
 import org.exolab.castor.builder.binding.ExtendedBinding;
 import org.exolab.castor.builder.binding.XMLBindingComponent;
 import org.exolab.castor.builder.info.ClassInfo;
+import org.exolab.castor.builder.info.CollectionInfo;
 import org.exolab.castor.builder.info.FieldInfo;
 import org.exolab.castor.builder.info.GroupInfo;
 import org.exolab.castor.builder.info.XMLInfo;
@@ -68,6 +69,7 @@ import org.exolab.castor.builder.info.nature.XMLInfoNature;
 import org.exolab.castor.builder.info.nature.relation.JDOOneToManyNature;
 import org.exolab.castor.builder.info.nature.relation.JDOOneToOneNature;
 import org.exolab.castor.builder.types.XSClass;
+import org.exolab.castor.builder.types.XSList;
 import org.exolab.castor.builder.types.XSString;
 import org.exolab.castor.builder.types.XSType;
 import org.exolab.castor.mapping.AccessMode;
@@ -681,6 +683,10 @@ public final class SourceFactory extends BaseFactory {
         // -- #unmarshal()
         createUnmarshalMethods(jClass, sgState);
       }
+      // -- #marshalAttributes() and #marshalContent()
+      if (getConfig().generateDirectMarshalling()) {
+        createDirectMarshalMethods(state.getClassInfo(), jClass);
+      }
     }
 
     // create equals() method?
@@ -1138,6 +1144,169 @@ public final class SourceFactory extends BaseFactory {
     createMarshalMethods(parent, false);
   } // -- createMarshalMethods
 
+  /**
+   * Creates the methods of {@link org.exolab.castor.xml.XmlWritable} that let the Marshaller write
+   * instances of the given class directly. The methods are only given real bodies for classes that
+   * do not extend another generated class and whose fields can all be written that way; a subclass
+   * declaring fields of its own overrides them so that its instances are marshalled through their
+   * descriptors, while a subclass without fields simply inherits them.
+   *
+   * @param classInfo the ClassInfo describing the fields of the class
+   * @param jClass the JClass to add the methods to
+   */
+  private void createDirectMarshalMethods(final ClassInfo classInfo, final JClass jClass) {
+    String superClass = jClass.getSuperClassQualifiedName();
+    boolean isRoot = (superClass == null) || superClass
+        .equals(getConfig().getProperty(BuilderConfiguration.Property.SUPER_CLASS, null));
+    if (!isRoot && (classInfo.getFieldCount() == 0)) {
+      return;
+    }
+    if (isRoot && !canMarshalDirectly(classInfo)) {
+      return;
+    }
+
+    jClass.addInterface("org.exolab.castor.xml.XmlWritable");
+
+    // -- #marshalAttributes()
+    JMethod jMethod = new JMethod("marshalAttributes", JType.BOOLEAN,
+        "true if the attributes have been written, false if this instance must be marshalled "
+            + "through its descriptor");
+    jMethod.addException(SGTypes.MARSHAL_EXCEPTION, "if an attribute cannot be written");
+    jMethod.addParameter(new JParameter(SGTypes.XML_WRITER, "writer"));
+    jClass.addMethod(jMethod);
+    JSourceCode jsc = jMethod.getSourceCode();
+    if (isRoot) {
+      for (FieldInfo member : classInfo.getAttributeFields()) {
+        if (!member.isTransient()) {
+          createDirectWrite(member, "attribute", jsc);
+        }
+      }
+      jsc.add("return true;");
+    } else {
+      jsc.add("return false;");
+    }
+
+    // -- #marshalContent()
+    jMethod = new JMethod("marshalContent");
+    jMethod.addException(SGTypes.MARSHAL_EXCEPTION, "if the content cannot be written");
+    jMethod.addException(SGTypes.VALIDATION_EXCEPTION, "if a child object is invalid");
+    jMethod.addParameter(new JParameter(SGTypes.XML_WRITER, "writer"));
+    jClass.addMethod(jMethod);
+    jsc = jMethod.getSourceCode();
+    if (isRoot) {
+      FieldInfo textField = classInfo.getTextField();
+      if ((textField != null) && !textField.isTransient()) {
+        createDirectWrite(textField, "text", jsc);
+      }
+      for (FieldInfo member : classInfo.getElementFields()) {
+        if (!member.isTransient()) {
+          createDirectWrite(member, "element", jsc);
+        }
+      }
+    } else {
+      jsc.add("// -- fields of this class are marshalled through its descriptor");
+    }
+  } // -- createDirectMarshalMethods
+
+  /**
+   * Returns true if all the fields of the given class can be written through an XmlWriter. Fields
+   * are written in the same order as their descriptors are registered, so anything that the
+   * descriptor-driven marshalling treats specially (containers, wildcards, choice place holders,
+   * text content needing conversion) rules the class out.
+   *
+   * @param classInfo the ClassInfo describing the fields of the class
+   * @return true if all fields can be written directly
+   */
+  private boolean canMarshalDirectly(final ClassInfo classInfo) {
+    FieldInfo textField = classInfo.getTextField();
+    if ((textField != null) && !textField.isTransient() && !isDirectlyWritable(textField, false)) {
+      return false;
+    }
+    List<FieldInfo> fields = new ArrayList<FieldInfo>();
+    fields.addAll(classInfo.getAttributeFieldsAsCollection());
+    fields.addAll(classInfo.getElementFieldsAsCollection());
+    for (FieldInfo member : fields) {
+      if (member.isTransient()) {
+        continue;
+      }
+      String nodeName = new XMLInfoNature(member).getNodeName();
+      if (member.isContainer() || "_anyObject".equals(member.getName()) || (nodeName == null)
+          || nodeName.equals(XMLInfo.CHOICE_NODE_NAME_ERROR_INDICATION)) {
+        return false;
+      }
+    }
+    return true;
+  } // -- canMarshalDirectly
+
+  /**
+   * Returns true if the value of the given field can be written as plain text by an XmlWriter,
+   * i.e. if it is a String or a primitive that is handled by its generated field handler without
+   * any conversion.
+   *
+   * @param member the field to check
+   * @param allowCollection true if a collection may be written as one node per item
+   * @return true if the value can be written as plain text
+   */
+  private boolean isDirectlyWritable(final FieldInfo member, final boolean allowCollection) {
+    if ((member.getXMLFieldHandler() != null) || member.isNillable()) {
+      return false;
+    }
+    XSType xsType = new XMLInfoNature(member).getSchemaType();
+    if (member instanceof CollectionInfo) {
+      if (!allowCollection
+          || (member
+              .getMemberAndAccessorFactory() instanceof CollectionJ2NoIndexMemberAndAccessorFactory)
+          || ((xsType instanceof XSList) && ((XSList) xsType).isDerivedFromXSList())) {
+        return false;
+      }
+      xsType = ((CollectionInfo) member).getContentType();
+    }
+    if (xsType.isEnumerated()) {
+      return false;
+    }
+    return (xsType.getType() == XSType.STRING_TYPE) || xsType.getJType().isPrimitive();
+  } // -- isDirectlyWritable
+
+  /**
+   * Adds the code writing the given field through an XmlWriter to the given source code. Fields
+   * whose value can be written as plain text are written directly; all others are handed back to
+   * the Marshaller, which writes them through their descriptor.
+   *
+   * @param member the field to write
+   * @param kind the XmlWriter method to use: "attribute", "text" or "element"
+   * @param jsc the source code to add the code to
+   */
+  private void createDirectWrite(final FieldInfo member, final String kind,
+      final JSourceCode jsc) {
+    XMLInfoNature xmlNature = new XMLInfoNature(member);
+    String nsURI = xmlNature.getNamespaceURI();
+    String args = "text".equals(kind) ? ""
+        : ((nsURI == null) ? "null" : "\"" + nsURI + "\"") + ", \"" + xmlNature.getNodeName()
+            + "\"";
+
+    if (!isDirectlyWritable(member, "element".equals(kind))) {
+      jsc.add("writer." + ("attribute".equals(kind) ? "attribute" : "object") + "(" + args + ");");
+      return;
+    }
+    String separator = "text".equals(kind) ? "" : ", ";
+    if (member instanceof CollectionInfo) {
+      String readMethod = member.getReadMethodName();
+      jsc.add("for (int i = 0; i < " + readMethod + "Count(); i++) {");
+      jsc.indent();
+      jsc.add("writer." + kind + "(" + args + separator + readMethod + "(i));");
+      jsc.unindent();
+      jsc.add("}");
+    } else if (xmlNature.getSchemaType().getJType().isPrimitive()) {
+      jsc.add("if (" + member.getHasMethodName() + "()) {");
+      jsc.indent();
+      jsc.add("writer." + kind + "(" + args + separator + member.getReadMethodName() + "());");
+      jsc.unindent();
+      jsc.add("}");
+    } else {
+      jsc.add("writer." + kind + "(" + args + separator + member.getReadMethodName() + "());");
+    }
+  } // -- createDirectWrite
+
   /**
    * Creates the #marshal methods for the given JClass.
    * 
@@ -405,6 +405,34 @@ public class SGTypesTest {
         );
     }
 
+    // ========== createHashMap Tests ==========
+
+    @Test
+    public void should_ReturnJClassWithGenerics_When_CreateHashMapWithJavaFifty() {
+        JType result = SGTypes.createHashMap(true);
+
+        assertNotNull("Result should not be null", result);
+        assertTrue("Result should be JClass", result instanceof JClass);
+        assertEquals(
+            "Result should be generic HashMap",
+            "java.util.HashMap<Object,Object>",
+            ((JClass) result).getName()
+        );
+    }
+
+    @Test
+    public void should_ReturnJClassWithoutGenerics_When_CreateHashMapWithoutJavaFifty() {
+        JType result = SGTypes.createHashMap(false);
+
+        assertNotNull("Result should not be null", result);
+        assertTrue("Result should be JClass", result instanceof JClass);
+        assertEquals(
+            "Result should be plain HashMap",
+            "java.util.HashMap",
+            ((JClass) result).getName()
+        );
+    }
+
     // ========== Edge Case and Branch Coverage Tests ==========
 
     @Test
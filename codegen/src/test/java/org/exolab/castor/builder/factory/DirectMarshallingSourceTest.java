@@ -0,0 +1,171 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.builder.factory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.castor.xml.XMLProperties;
+import org.exolab.castor.builder.BuilderConfiguration;
+import org.exolab.castor.builder.SourceGenerator;
+import org.exolab.castor.xml.Marshaller;
+import org.exolab.castor.xml.Unmarshaller;
+import org.exolab.castor.xml.XMLContext;
+import org.exolab.castor.xml.XmlWritable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.InputSource;
+
+/**
+ * Compiles the sources generated with direct marshalling switched on and checks that the generated
+ * {@link XmlWritable} methods write the same document as the descriptor-driven path.
+ *
+ * @since 1.4.2
+ */
+public class DirectMarshallingSourceTest {
+
+  private static final String PACKAGE = "org.exolab.castor.builder.factory.generated.direct";
+
+  private static final String NAMESPACE = "http://castor.org/direct";
+
+  private static final String DOCUMENT = "<order xmlns=\"" + NAMESPACE + "\""
+      + " code=\"A&amp;1\" paid=\"true\"><id>-9876543210</id><note>rush</note>"
+      + "<item>first</item><item>second</item><sizes>1 22 333</sizes>"
+      + "<line quantity=\"7\"/></order>";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * The class generated for the order element, loaded from the compiled sources.
+   */
+  private Class<?> orderClass;
+
+  /**
+   * Generates and compiles the sources for the test schema.
+   *
+   * @throws Exception if any error occurs
+   */
+  @Before
+  public void setUp() throws Exception {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    assumeNotNull(compiler);
+
+    File directory = folder.getRoot();
+    Properties properties = new Properties();
+    properties.setProperty(BuilderConfiguration.Property.DIRECT_MARSHALLING, "true");
+    SourceGenerator generator = new SourceGenerator();
+    generator.setDefaultProperties(properties);
+    generator.setDestDir(directory.getPath());
+    generator.setResourceDestination(directory.getPath());
+    generator.setSuppressNonFatalWarnings(true);
+    generator.generateSource(
+        new InputSource(getClass().getResource("direct-marshalling.xsd").toExternalForm()),
+        PACKAGE);
+
+    List<String> arguments = new ArrayList<String>();
+    arguments.add("-nowarn");
+    arguments.add("-classpath");
+    arguments.add(System.getProperty("java.class.path"));
+    arguments.add("-d");
+    arguments.add(directory.getPath());
+    addSources(directory, arguments);
+    assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[0])));
+
+    ClassLoader loader =
+        new URLClassLoader(new URL[] {directory.toURI().toURL()}, getClass().getClassLoader());
+    orderClass = loader.loadClass(PACKAGE + ".Order");
+  }
+
+  @Test
+  public void should_ImplementXmlWritable_When_DirectMarshallingIsGenerated() throws Exception {
+    assertTrue(XmlWritable.class.isAssignableFrom(orderClass));
+    Class<?> lineClass = orderClass.getMethod("getLine").getReturnType();
+    assertTrue(XmlWritable.class.isAssignableFrom(lineClass));
+  }
+
+  @Test
+  public void should_WriteSameDocument_When_MarshalledDirectly() throws Exception {
+    Object order = unmarshal();
+
+    String generic = marshal(order, false, null);
+    String direct = marshal(order, true, null);
+
+    assertEquals(generic, direct);
+    assertTrue(direct.contains("<sizes>1 22 333</sizes>"));
+    assertTrue(direct.contains("<id>-9876543210</id>"));
+    assertTrue(direct.contains("code=\"A&amp;1\""));
+  }
+
+  @Test
+  public void should_QualifyChildElements_When_NamespaceIsMappedToPrefix() throws Exception {
+    Object order = unmarshal();
+
+    String generic = marshal(order, false, "d");
+    String direct = marshal(order, true, "d");
+
+    assertEquals(generic, direct);
+    assertTrue(direct.contains("<d:sizes>1 22 333</d:sizes>"));
+    assertTrue(direct.contains("<d:line quantity=\"7\"/>"));
+  }
+
+  private Object unmarshal() throws Exception {
+    Unmarshaller unmarshaller = createContext().createUnmarshaller();
+    unmarshaller.setClass(orderClass);
+    return unmarshaller.unmarshal(new StringReader(DOCUMENT));
+  }
+
+  private String marshal(final Object object, final boolean direct, final String prefix)
+      throws Exception {
+    XMLContext context = createContext();
+    context.setProperty(XMLProperties.DIRECT_MARSHALLING, direct);
+    Marshaller marshaller = context.createMarshaller();
+    if (prefix != null) {
+      marshaller.setNamespaceMapping(prefix, NAMESPACE);
+    }
+    StringWriter writer = new StringWriter();
+    marshaller.setWriter(writer);
+    marshaller.marshal(object);
+    return writer.toString();
+  }
+
+  private XMLContext createContext() {
+    XMLContext context = new XMLContext();
+    context.setClassLoader(orderClass.getClassLoader());
+    return context;
+  }
+
+  private static void addSources(final File directory, final List<String> sources) {
+    for (File file : directory.listFiles()) {
+      if (file.isDirectory()) {
+        addSources(file, sources);
+      } else if (file.getName().endsWith(".java")) {
+        sources.add(file.getPath());
+      }
+    }
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.builder.factory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.exolab.castor.builder.BuilderConfiguration;
+import org.exolab.castor.builder.SourceGenerator;
+import org.exolab.castor.mapping.FieldHandler;
+import org.exolab.castor.xml.MarshalException;
+import org.exolab.castor.xml.Marshaller;
+import org.exolab.castor.xml.Unmarshaller;
+import org.exolab.castor.xml.XMLClassDescriptor;
+import org.exolab.castor.xml.XMLContext;
+import org.exolab.castor.xml.XMLFieldDescriptor;
+import org.exolab.castor.xml.handlers.EnumFieldHandler;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.InputSource;
+
+/**
+ * Compiles the sources generated for an enumeration and checks that the generated lookup methods,
+ * which switch on the hash code of the value, and the generated {@link EnumFieldHandler} of the
+ * descriptors find the constants.
+ *
+ * @since 1.4.2
+ */
+public class EnumerationSourceTest {
+
+  private static final String PACKAGE = "org.exolab.castor.builder.factory.generated.enumeration";
+
+  private static final String NAMESPACE = "http://castor.org/enumeration";
+
+  private static final String DOCUMENT = "<palette xmlns=\"" + NAMESPACE + "\" main=\"Aa\">"
+      + "<color>BB</color><color>red</color></palette>";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void should_FindConstant_When_EnumIsLookedUpByValueOrName() throws Exception {
+    Class<?> color = generate("5.0", false).loadClass(PACKAGE + ".types.Color");
+
+    Object red = lookup(color, "fromValue", "red");
+    assertSame(color.getField("RED").get(null), red);
+    assertSame(red, lookup(color, "valueOf", "RED"));
+    assertEquals("red", red.toString());
+    assertSame(color.getField("GREEN").get(null), lookup(color, "fromValue", "green"));
+  }
+
+  @Test
+  public void should_TellValuesApart_When_EnumValuesShareHashCode() throws Exception {
+    assertEquals("Aa".hashCode(), "BB".hashCode());
+    Class<?> color = generate("5.0", false).loadClass(PACKAGE + ".types.Color");
+
+    assertSame(color.getField("AA").get(null), lookup(color, "fromValue", "Aa"));
+    assertSame(color.getField("BB").get(null), lookup(color, "fromValue", "BB"));
+  }
+
+  @Test
+  public void should_Throw_When_EnumValueIsUnknown() throws Exception {
+    Class<?> color = generate("5.0", false).loadClass(PACKAGE + ".types.Color");
+
+    assertUnknown(color, "fromValue", "blue");
+    assertUnknown(color, "fromValue", "RED");
+    assertUnknown(color, "fromValue", "AaBB");
+    assertUnknown(color, "fromValue", null);
+  }
+
+  @Test
+  public void should_FindConstant_When_ClassIsLookedUpByValueOrName() throws Exception {
+    Class<?> color = generate("1.4", false).loadClass(PACKAGE + ".types.Color");
+
+    Object red = lookup(color, "valueOf", "red");
+    assertSame(color.getField("RED").get(null), red);
+    assertEquals("red", red.toString());
+    assertSame(color.getField("AA").get(null), lookup(color, "valueOf", "Aa"));
+    assertSame(color.getField("BB").get(null), lookup(color, "valueOf", "BB"));
+
+    assertUnknown(color, "valueOf", "blue");
+    assertUnknown(color, "valueOf", "bb");
+    assertUnknown(color, "valueOf", null);
+  }
+
+  @Test
+  public void should_IgnoreCase_When_GeneratedCaseInsensitive() throws Exception {
+    Class<?> color = generate("1.4", true).loadClass(PACKAGE + ".types.Color");
+
+    assertSame(color.getField("RED").get(null), lookup(color, "valueOf", "RED"));
+    assertSame(color.getField("AA").get(null), lookup(color, "valueOf", "aA"));
+    assertSame(color.getField("BB").get(null), lookup(color, "valueOf", "bb"));
+    assertUnknown(color, "valueOf", "blue");
+  }
+
+  @Test
+  public void should_RoundTripValues_When_FieldHandlerIsGenerated() throws Exception {
+    ClassLoader loader = generate("5.0", false);
+    Class<?> paletteClass = loader.loadClass(PACKAGE + ".Palette");
+    Class<?> color = loader.loadClass(PACKAGE + ".types.Color");
+
+    XMLClassDescriptor descriptor = (XMLClassDescriptor) loader
+        .loadClass(PACKAGE + ".descriptors.PaletteDescriptor").getDeclaredConstructor()
+        .newInstance();
+    List<XMLFieldDescriptor> fields = new ArrayList<XMLFieldDescriptor>();
+    fields.addAll(Arrays.asList(descriptor.getAttributeDescriptors()));
+    fields.addAll(Arrays.asList(descriptor.getElementDescriptors()));
+    assertEquals(2, fields.size());
+    for (XMLFieldDescriptor field : fields) {
+      FieldHandler handler = field.getHandler();
+      assertTrue(handler instanceof EnumFieldHandler);
+      assertNotEquals(EnumFieldHandler.class, handler.getClass());
+    }
+
+    XMLContext context = new XMLContext();
+    context.setClassLoader(loader);
+    Object palette = unmarshal(context, paletteClass, DOCUMENT);
+    assertSame(color.getField("AA").get(null), paletteClass.getMethod("getMain").invoke(palette));
+    Object[] colors = (Object[]) paletteClass.getMethod("getColor").invoke(palette);
+    assertEquals(2, colors.length);
+    assertSame(color.getField("BB").get(null), colors[0]);
+    assertSame(color.getField("RED").get(null), colors[1]);
+
+    Marshaller marshaller = context.createMarshaller();
+    StringWriter writer = new StringWriter();
+    marshaller.setWriter(writer);
+    marshaller.marshal(palette);
+    assertTrue(writer.toString().contains(" main=\"Aa\""));
+    assertTrue(writer.toString().contains("<color>BB</color><color>red</color>"));
+
+    try {
+      unmarshal(context, paletteClass, DOCUMENT.replace("red", "blue"));
+      fail("Expected MarshalException");
+    } catch (MarshalException e) {
+      // -- expected
+    }
+  }
+
+  /**
+   * Generates and compiles the sources for the test schema.
+   *
+   * @param javaVersion the Java version to generate the sources for
+   * @param caseInsensitive true if enumeration values are to be looked up ignoring case
+   * @return a class loader for the compiled classes
+   * @throws Exception if any error occurs
+   */
+  private ClassLoader generate(final String javaVersion, final boolean caseInsensitive)
+      throws Exception {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    assumeNotNull(compiler);
+
+    File directory = folder.getRoot();
+    Properties properties = new Properties();
+    properties.setProperty(BuilderConfiguration.Property.JAVA_VERSION, javaVersion);
+    SourceGenerator generator = new SourceGenerator();
+    generator.setDefaultProperties(properties);
+    generator.setCaseInsensitive(caseInsensitive);
+    generator.setDestDir(directory.getPath());
+    generator.setResourceDestination(directory.getPath());
+    generator.setSuppressNonFatalWarnings(true);
+    generator.generateSource(
+        new InputSource(getClass().getResource("enumeration.xsd").toExternalForm()), PACKAGE);
+
+    List<String> arguments = new ArrayList<String>();
+    arguments.add("-nowarn");
+    arguments.add("-classpath");
+    arguments.add(System.getProperty("java.class.path"));
+    arguments.add("-d");
+    arguments.add(directory.getPath());
+    addSources(directory, arguments);
+    assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[0])));
+
+    return new URLClassLoader(new URL[] {directory.toURI().toURL()}, getClass().getClassLoader());
+  }
+
+  private static Object lookup(final Class<?> type, final String method, final String value)
+      throws Exception {
+    try {
+      return type.getMethod(method, String.class).invoke(null, value);
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private static void assertUnknown(final Class<?> type, final String method, final String value)
+      throws Exception {
+    try {
+      lookup(type, method, value);
+      fail("Expected IllegalArgumentException for " + value);
+    } catch (IllegalArgumentException e) {
+      // -- expected
+    }
+  }
+
+  private static Object unmarshal(final XMLContext context, final Class<?> type,
+      final String document) throws Exception {
+    Unmarshaller unmarshaller = context.createUnmarshaller();
+    unmarshaller.setClass(type);
+    return unmarshaller.unmarshal(new StringReader(document));
+  }
+
+  private static void addSources(final File directory, final List<String> sources) {
+    for (File file : directory.listFiles()) {
+      if (file.isDirectory()) {
+        addSources(file, sources);
+      } else if (file.getName().endsWith(".java")) {
+        sources.add(file.getPath());
+      }
+    }
+  }
+}
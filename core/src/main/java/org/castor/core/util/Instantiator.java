@@ -0,0 +1,406 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.castor.core.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates objects through a constructor or a factory method resolved once into a
+ * {@link MethodHandle}. The constructors of a class are resolved on first use and kept with the
+ * class, per argument signature, so that creating an object costs a handle invocation instead of a
+ * reflective lookup and call.
+ * <p>
+ * A constructor that cannot be resolved is remembered as well; the failure is reported each time
+ * the instantiator is used, with the exception reflection would report.
+ *
+ * @since 1.4.2
+ */
+public final class Instantiator {
+
+  /** The type of a handle creating an object without arguments. */
+  private static final MethodType NO_ARGUMENTS = MethodType.methodType(Object.class);
+
+  /** The type of a handle creating an object from an array of arguments. */
+  private static final MethodType ARGUMENTS = MethodType.methodType(Object.class, Object[].class);
+
+  /** The type of a handle calling a factory method on an object with an array of arguments. */
+  private static final MethodType METHOD_ARGUMENTS =
+      MethodType.methodType(Object.class, Object.class, Object[].class);
+
+  /** The instantiators of each class, by argument signature. */
+  private static final ClassValue<ConcurrentMap<Signature, Instantiator>> INSTANTIATORS =
+      new ClassValue<ConcurrentMap<Signature, Instantiator>>() {
+        @Override
+        protected ConcurrentMap<Signature, Instantiator> computeValue(final Class<?> type) {
+          return new ConcurrentHashMap<Signature, Instantiator>();
+        }
+      };
+
+  /** The signature of the default constructor. */
+  private static final Signature DEFAULT_SIGNATURE = new Signature(new Class<?>[0], true);
+
+  /** The name of the class instantiated, or of the factory method. */
+  private final String _name;
+
+  /** The handle without arguments, null if it cannot be used. */
+  private final MethodHandle _handle;
+
+  /** The handle spreading an array of arguments, null if it cannot be used. */
+  private final MethodHandle _spreader;
+
+  /** The constructor used reflectively if no handle can be created for it, may be null. */
+  private final Constructor<?> _constructor;
+
+  /** The method used reflectively if no handle can be created for it, may be null. */
+  private final Method _method;
+
+  /** The failure to report on use, may be null. */
+  private final ReflectiveOperationException _failure;
+
+  private Instantiator(final String name, final MethodHandle handle, final MethodHandle spreader,
+      final Constructor<?> constructor, final Method method,
+      final ReflectiveOperationException failure) {
+    _name = name;
+    _handle = handle;
+    _spreader = spreader;
+    _constructor = constructor;
+    _method = method;
+    _failure = failure;
+  }
+
+  /**
+   * Returns the instantiator calling the public default constructor of the given class.
+   *
+   * @param type the class to instantiate
+   * @return the instantiator of the class
+   */
+  public static Instantiator forClass(final Class<?> type) {
+    return forSignature(type, DEFAULT_SIGNATURE);
+  }
+
+  /**
+   * Returns the instantiator calling the public constructor of the given class with exactly the
+   * given parameter types.
+   *
+   * @param type the class to instantiate
+   * @param argTypes the parameter types of the constructor
+   * @return the instantiator of the class
+   */
+  public static Instantiator forConstructor(final Class<?> type, final Class<?>[] argTypes) {
+    return forSignature(type, new Signature(argTypes, true));
+  }
+
+  /**
+   * Returns the instantiator calling the public constructor of the given class best matching the
+   * given argument types: the constructor with the most parameters of exactly the argument type,
+   * among the ones accepting arguments of the given types.
+   *
+   * @param type the class to instantiate
+   * @param argTypes the types of the arguments, null for a null argument
+   * @return the instantiator of the class
+   */
+  public static Instantiator forArguments(final Class<?> type, final Class<?>[] argTypes) {
+    return forSignature(type, new Signature(argTypes, false));
+  }
+
+  /**
+   * Returns an instantiator calling the given constructor. The instantiator is not cached.
+   *
+   * @param constructor the constructor
+   * @return the instantiator of the constructor
+   */
+  public static Instantiator forConstructor(final Constructor<?> constructor) {
+    String name = constructor.getDeclaringClass().getName();
+    try {
+      MethodHandle handle = MethodHandles.publicLookup().unreflectConstructor(constructor);
+      return forHandle(name, handle, constructor.getParameterTypes().length);
+    } catch (IllegalAccessException e) {
+      return new Instantiator(name, null, null, constructor, null, null);
+    }
+  }
+
+  /**
+   * Returns an instantiator calling the given factory method. The instantiator is not cached.
+   *
+   * @param method the factory method, static or called on an object
+   * @return the instantiator of the method
+   */
+  public static Instantiator forMethod(final Method method) {
+    String name = method.getDeclaringClass().getName() + '.' + method.getName();
+    try {
+      MethodHandle handle = MethodHandles.publicLookup().unreflect(method);
+      if (Modifier.isStatic(method.getModifiers())) {
+        handle = MethodHandles.dropArguments(handle, 0, Object.class);
+      }
+      int count = method.getParameterTypes().length;
+      MethodHandle spreader =
+          handle.asSpreader(Object[].class, count).asType(METHOD_ARGUMENTS);
+      return new Instantiator(name, null, spreader, null, method, null);
+    } catch (IllegalAccessException e) {
+      return new Instantiator(name, null, null, null, method, null);
+    }
+  }
+
+  /**
+   * Creates an object without arguments.
+   *
+   * @return the new object
+   * @throws NoSuchMethodException if no suitable constructor exists
+   * @throws InstantiationException if the class cannot be instantiated
+   * @throws IllegalAccessException if the constructor is not accessible
+   * @throws InvocationTargetException if the constructor fails
+   */
+  public Object newInstance() throws NoSuchMethodException, InstantiationException,
+      IllegalAccessException, InvocationTargetException {
+    if (_handle == null) {
+      return newInstance(null);
+    }
+    try {
+      return _handle.invokeExact();
+    } catch (Throwable e) {
+      throw new InvocationTargetException(e);
+    }
+  }
+
+  /**
+   * Creates an object from the given arguments.
+   *
+   * @param args the arguments, may be null if there are none
+   * @return the new object
+   * @throws NoSuchMethodException if no suitable constructor exists
+   * @throws InstantiationException if the class cannot be instantiated
+   * @throws IllegalAccessException if the constructor is not accessible
+   * @throws InvocationTargetException if the constructor fails
+   */
+  public Object newInstance(final Object[] args) throws NoSuchMethodException,
+      InstantiationException, IllegalAccessException, InvocationTargetException {
+    if (_spreader != null) {
+      try {
+        return _spreader.invokeExact(args);
+      } catch (Throwable e) {
+        throw new InvocationTargetException(e);
+      }
+    }
+    if (_constructor != null) {
+      return _constructor.newInstance(args);
+    }
+    ReflectiveOperationException failure = failure();
+    if (failure instanceof NoSuchMethodException) {
+      throw (NoSuchMethodException) failure;
+    }
+    if (failure instanceof IllegalAccessException) {
+      throw (IllegalAccessException) failure;
+    }
+    throw (InstantiationException) failure;
+  }
+
+  /**
+   * Creates an object by calling the factory method on the given object.
+   *
+   * @param target the object to call the method on, ignored for a static method
+   * @param args the arguments, may be null if there are none
+   * @return the new object
+   * @throws IllegalAccessException if the method is not accessible
+   * @throws InvocationTargetException if the method fails
+   */
+  public Object invoke(final Object target, final Object[] args)
+      throws IllegalAccessException, InvocationTargetException {
+    if (_spreader != null) {
+      try {
+        return _spreader.invokeExact(target, args);
+      } catch (Throwable e) {
+        throw new InvocationTargetException(e);
+      }
+    }
+    return _method.invoke(target, args);
+  }
+
+  /**
+   * Returns the instantiator of the given class and signature, resolving it on first use.
+   *
+   * @param type the class to instantiate
+   * @param signature the signature of the constructor
+   * @return the instantiator
+   */
+  private static Instantiator forSignature(final Class<?> type, final Signature signature) {
+    ConcurrentMap<Signature, Instantiator> instantiators = INSTANTIATORS.get(type);
+    Instantiator instantiator = instantiators.get(signature);
+    if (instantiator == null) {
+      instantiator = resolve(type, signature);
+      Instantiator existing = instantiators.putIfAbsent(signature, instantiator);
+      if (existing != null) {
+        instantiator = existing;
+      }
+    }
+    return instantiator;
+  }
+
+  /**
+   * Resolves the constructor of the given class matching the given signature.
+   *
+   * @param type the class to instantiate
+   * @param signature the signature of the constructor
+   * @return the instantiator, reporting a failure if there is no such constructor
+   */
+  private static Instantiator resolve(final Class<?> type, final Signature signature) {
+    String name = type.getName();
+    if (type.isInterface() || type.isArray() || type.isPrimitive()
+        || Modifier.isAbstract(type.getModifiers())) {
+      return new Instantiator(name, null, null, null, null, new InstantiationException(name));
+    }
+    Constructor<?> constructor;
+    try {
+      if (signature._exact) {
+        constructor = type.getConstructor(signature._types);
+      } else {
+        constructor = findConstructor(type, signature._types);
+      }
+    } catch (NoSuchMethodException e) {
+      return new Instantiator(name, null, null, null, null, e);
+    } catch (SecurityException e) {
+      return new Instantiator(name, null, null, null, null, new IllegalAccessException(name));
+    }
+    return forConstructor(constructor);
+  }
+
+  /**
+   * Returns the public constructor of the given class best matching the given argument types.
+   *
+   * @param type the class to instantiate
+   * @param argTypes the types of the arguments, null for a null argument
+   * @return the constructor
+   * @throws NoSuchMethodException if no constructor accepts the arguments
+   */
+  private static Constructor<?> findConstructor(final Class<?> type, final Class<?>[] argTypes)
+      throws NoSuchMethodException {
+    Constructor<?>[] constructors = type.getConstructors();
+    Constructor<?> cons = null;
+    int rank = 0;
+
+    for (int c = 0; c < constructors.length; c++) {
+      Class<?>[] paramTypes = constructors[c].getParameterTypes();
+      if (paramTypes.length != argTypes.length) {
+        continue;
+      }
+
+      int tmpRank = 0;
+      boolean matches = true;
+      for (int p = 0; p < paramTypes.length; p++) {
+        if (argTypes[p] == null) {
+          if (paramTypes[p].isPrimitive()) {
+            matches = false;
+            break;
+          }
+        } else if (paramTypes[p] == argTypes[p]) {
+          ++tmpRank;
+        } else if (!wrap(paramTypes[p]).isAssignableFrom(argTypes[p])) {
+          matches = false;
+          break;
+        }
+      }
+
+      if (matches) {
+        if (tmpRank == paramTypes.length) {
+          return constructors[c];
+        }
+        if ((cons == null) || (tmpRank > rank)) {
+          cons = constructors[c];
+          rank = tmpRank;
+        }
+      }
+    }
+
+    if (cons == null) {
+      throw new NoSuchMethodException(type.getName());
+    }
+    return cons;
+  }
+
+  /**
+   * Returns the wrapper class of the given primitive class, or the class itself.
+   *
+   * @param type the class
+   * @return the wrapper class
+   */
+  private static Class<?> wrap(final Class<?> type) {
+    if (!type.isPrimitive()) {
+      return type;
+    }
+    return MethodType.methodType(type).wrap().returnType();
+  }
+
+  /**
+   * Creates an instantiator for the given constructor handle.
+   *
+   * @param name the name of the class instantiated
+   * @param handle the constructor handle
+   * @param count the number of parameters of the constructor
+   * @return the instantiator
+   */
+  private static Instantiator forHandle(final String name, final MethodHandle handle,
+      final int count) {
+    MethodHandle spreader = handle.asSpreader(Object[].class, count).asType(ARGUMENTS);
+    MethodHandle noArguments = (count == 0) ? handle.asType(NO_ARGUMENTS) : null;
+    return new Instantiator(name, noArguments, spreader, null, null, null);
+  }
+
+  /**
+   * Returns a new exception reporting the failure to resolve this instantiator.
+   *
+   * @return the exception to throw
+   */
+  private ReflectiveOperationException failure() {
+    if (_failure instanceof NoSuchMethodException) {
+      return new NoSuchMethodException(_failure.getMessage());
+    }
+    if (_failure instanceof IllegalAccessException) {
+      return new IllegalAccessException(_failure.getMessage());
+    }
+    return new InstantiationException(_name);
+  }
+
+  /**
+   * The parameter or argument types a constructor is looked up with.
+   */
+  private static final class Signature {
+    private final Class<?>[] _types;
+    private final boolean _exact;
+
+    Signature(final Class<?>[] types, final boolean exact) {
+      _types = (types == null) ? new Class<?>[0] : types.clone();
+      _exact = exact;
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+      if (!(object instanceof Signature)) {
+        return false;
+      }
+      Signature signature = (Signature) object;
+      return (signature._exact == _exact) && Arrays.equals(signature._types, _types);
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(_types) + (_exact ? 1 : 0);
+    }
+  }
+}
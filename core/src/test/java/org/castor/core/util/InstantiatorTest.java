@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.castor.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link Instantiator} class.
+ *
+ * @since 1.4.2
+ */
+public class InstantiatorTest {
+
+  /**
+   * Class with constructors of several signatures.
+   */
+  public static class Value {
+    private final Object value;
+
+    public Value() {
+      this.value = null;
+    }
+
+    public Value(final Integer value) {
+      this.value = value;
+    }
+
+    public Value(final Number value) {
+      this.value = "number:" + value;
+    }
+
+    public Value(final String value, final int count) {
+      this.value = value + count;
+    }
+
+    public Object getValue() {
+      return value;
+    }
+
+    public Value create() {
+      return new Value("created", 1);
+    }
+  }
+
+  /**
+   * Class whose constructor fails.
+   */
+  public static class Failing {
+    public Failing() {
+      throw new UnsupportedOperationException("failing");
+    }
+  }
+
+  @Test
+  public void should_CreateInstance_When_DefaultConstructorIsPublic() throws Exception {
+    Object value = Instantiator.forClass(Value.class).newInstance();
+    assertTrue(value instanceof Value);
+    assertSame(Instantiator.forClass(Value.class), Instantiator.forClass(Value.class));
+  }
+
+  @Test
+  public void should_UseExactConstructor_When_ParameterTypesAreGiven() throws Exception {
+    Instantiator instantiator =
+        Instantiator.forConstructor(Value.class, new Class<?>[] {Number.class});
+    Value value = (Value) instantiator.newInstance(new Object[] {Integer.valueOf(1)});
+    assertEquals("number:1", value.getValue());
+
+    value = (Value) Instantiator.forConstructor(Value.class,
+        new Class<?>[] {String.class, Integer.TYPE}).newInstance(new Object[] {"a", 2});
+    assertEquals("a2", value.getValue());
+  }
+
+  @Test
+  public void should_PreferExactMatch_When_ArgumentTypesAreGiven() throws Exception {
+    Value value = (Value) Instantiator.forArguments(Value.class, new Class<?>[] {Integer.class})
+        .newInstance(new Object[] {Integer.valueOf(1)});
+    assertEquals(Integer.valueOf(1), value.getValue());
+
+    value = (Value) Instantiator.forArguments(Value.class, new Class<?>[] {Long.class})
+        .newInstance(new Object[] {Long.valueOf(2)});
+    assertEquals("number:2", value.getValue());
+
+    value = (Value) Instantiator.forArguments(Value.class, new Class<?>[] {String.class,
+        Integer.class}).newInstance(new Object[] {"b", Integer.valueOf(3)});
+    assertEquals("b3", value.getValue());
+  }
+
+  @Test
+  public void should_ReportMissingConstructor_When_NoneMatches() throws Exception {
+    Instantiator instantiator =
+        Instantiator.forConstructor(Value.class, new Class<?>[] {Boolean.class});
+    for (int i = 0; i < 2; i++) {
+      try {
+        instantiator.newInstance(new Object[] {Boolean.TRUE});
+        fail("NoSuchMethodException expected");
+      } catch (NoSuchMethodException e) {
+        // expected, on each use
+      }
+    }
+  }
+
+  @Test(expected = InstantiationException.class)
+  public void should_ReportInstantiationFailure_When_ClassIsAbstract() throws Exception {
+    Instantiator.forClass(AbstractList.class).newInstance();
+  }
+
+  @Test
+  public void should_WrapFailure_When_ConstructorThrows() throws Exception {
+    try {
+      Instantiator.forClass(Failing.class).newInstance();
+      fail("InvocationTargetException expected");
+    } catch (InvocationTargetException e) {
+      assertTrue(e.getTargetException() instanceof UnsupportedOperationException);
+    }
+  }
+
+  @Test
+  public void should_CallFactoryMethod_When_CreatedForMethod() throws Exception {
+    Instantiator instantiator = Instantiator.forMethod(Value.class.getMethod("create"));
+    Value value = (Value) instantiator.invoke(new Value(), null);
+    assertEquals("created1", value.getValue());
+
+    instantiator = Instantiator.forMethod(ArrayList.class.getMethod("size"));
+    assertEquals(Integer.valueOf(0), instantiator.invoke(new ArrayList<Object>(), new Object[0]));
+  }
+}
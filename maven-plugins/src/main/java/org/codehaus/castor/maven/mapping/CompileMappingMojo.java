@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.codehaus.castor.maven.mapping;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.exolab.castor.mapping.MappingException;
+import org.exolab.castor.tools.MappingCompiler;
+
+/**
+ * Compiles the Castor mapping files of a project with the {@link MappingCompiler}, so that they
+ * can be loaded with {@link org.exolab.castor.mapping.Mapping#loadCompiledMapping(java.net.URL)}
+ * at runtime. Every mapping file found below the mapping directory is compiled to the same relative
+ * location in the output directory, with the extension <tt>.cmap</tt>. Mapping files whose compiled
+ * mapping is up to date are skipped.
+ *
+ * @since 1.4.2
+ */
+@Mojo(name = "compile-mapping", defaultPhase = LifecyclePhase.PROCESS_RESOURCES,
+    threadSafe = true)
+public class CompileMappingMojo extends AbstractMojo {
+
+  /** The extension of the mapping files to compile. */
+  private static final String MAPPING_EXTENSION = ".xml";
+
+  /**
+   * The directory holding the mapping files to compile.
+   */
+  @Parameter(property = "castor.mapping.directory",
+      defaultValue = "${basedir}/src/main/mapping")
+  private File mappingDirectory;
+
+  /**
+   * The directory to write the compiled mappings to.
+   */
+  @Parameter(property = "castor.mapping.outputDirectory",
+      defaultValue = "${project.build.outputDirectory}")
+  private File outputDirectory;
+
+  /**
+   * Whether to compile mapping files even if their compiled mapping is up to date.
+   */
+  @Parameter(property = "castor.mapping.force", defaultValue = "false")
+  private boolean force;
+
+  public void execute() throws MojoExecutionException {
+    if (!mappingDirectory.isDirectory()) {
+      getLog().info("No mapping files to compile in " + mappingDirectory);
+      return;
+    }
+
+    MappingCompiler compiler = new MappingCompiler();
+    compiler.setForce(force);
+    compileDirectory(compiler, mappingDirectory, outputDirectory);
+  }
+
+  /**
+   * Compiles the mapping files of the given directory and of its subdirectories.
+   *
+   * @param compiler the compiler to use
+   * @param directory the directory holding mapping files
+   * @param output the directory to write their compiled mappings to
+   * @throws MojoExecutionException if a mapping file cannot be compiled
+   */
+  private void compileDirectory(final MappingCompiler compiler, final File directory,
+      final File output) throws MojoExecutionException {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.isDirectory()) {
+        compileDirectory(compiler, file, new File(output, file.getName()));
+      } else if (file.getName().toLowerCase().endsWith(MAPPING_EXTENSION)) {
+        compileFile(compiler, file, MappingCompiler.getOutputFile(file, output));
+      }
+    }
+  }
+
+  /**
+   * Compiles an individual mapping file.
+   *
+   * @param compiler the compiler to use
+   * @param file the mapping file
+   * @param output the file to write the compiled mapping to
+   * @throws MojoExecutionException if the mapping file cannot be compiled
+   */
+  private void compileFile(final MappingCompiler compiler, final File file, final File output)
+      throws MojoExecutionException {
+    try {
+      if (compiler.compile(file, output)) {
+        getLog().info("Compiled " + file + " to " + output);
+      } else if (getLog().isDebugEnabled()) {
+        getLog().debug(output + " is up to date");
+      }
+    } catch (IOException e) {
+      throw new MojoExecutionException("Problem compiling mapping file " + file, e);
+    } catch (MappingException e) {
+      throw new MojoExecutionException("Invalid mapping file " + file, e);
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.codehaus.castor.maven.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Field;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class for {@link CompileMappingMojo}.
+ */
+public class CompileMappingMojoTest {
+
+    private static final String MAPPING =
+        "<mapping><class name=\"org.castor.test.Entity\"><field name=\"id\" type=\"integer\"/>"
+            + "</class></mapping>";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private CompileMappingMojo mojo;
+
+    private File mappingDir;
+
+    private File outputDir;
+
+    @Before
+    public void setUp() throws Exception {
+        mappingDir = tempFolder.newFolder("mapping");
+        outputDir = tempFolder.newFolder("classes");
+        mojo = new CompileMappingMojo();
+        setFieldValue(mojo, "mappingDirectory", mappingDir);
+        setFieldValue(mojo, "outputDirectory", outputDir);
+    }
+
+    @Test
+    public void should_CompileMappingsKeepingPaths_When_DirectoryHoldsMappings()
+        throws Exception {
+        writeFile(new File(mappingDir, "mapping.xml"), MAPPING);
+        File subDir = new File(mappingDir, "org/castor");
+        assertTrue(subDir.mkdirs());
+        writeFile(new File(subDir, "nested.xml"), MAPPING);
+        writeFile(new File(subDir, "readme.txt"), "not a mapping");
+
+        mojo.execute();
+
+        assertTrue(new File(outputDir, "mapping.cmap").isFile());
+        assertTrue(new File(outputDir, "org/castor/nested.cmap").isFile());
+        assertFalse(new File(outputDir, "org/castor/readme.cmap").exists());
+    }
+
+    @Test
+    public void should_DoNothing_When_MappingDirectoryIsMissing() throws Exception {
+        setFieldValue(mojo, "mappingDirectory", new File(mappingDir, "missing"));
+
+        mojo.execute();
+
+        assertEquals(0, outputDir.list().length);
+    }
+
+    @Test(expected = MojoExecutionException.class)
+    public void should_ThrowMojoExecutionException_When_MappingIsInvalid() throws Exception {
+        writeFile(new File(mappingDir, "mapping.xml"), "<mapping>");
+
+        mojo.execute();
+    }
+
+    private void writeFile(final File file, final String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void setFieldValue(Object obj, String fieldName, Object value) {
+        try {
+            Field field = CompileMappingMojo.class.getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(obj, value);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new RuntimeException("Failed to set field: " + fieldName, e);
+        }
+    }
+}
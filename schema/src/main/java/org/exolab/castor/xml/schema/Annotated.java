@@ -35,8 +35,9 @@
 
 package org.exolab.castor.xml.schema;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Vector;
 
 /**
  * A base class used for XML Structures that support annotations.
@@ -49,7 +50,7 @@ public abstract class Annotated extends Structure {
   /**
    * The Annotations of this Annotated structure.
    **/
-  private final Vector<Annotation> _annotations = new Vector<Annotation>(1);
+  private final ArrayList<Annotation> _annotations = new ArrayList<Annotation>(1);
 
   /**
    * Adds the given Annotation to this Annotated Structure.
@@ -66,7 +67,7 @@ public abstract class Annotated extends Structure {
    * @return an Enumeration of the Annotation contained within this Annotated type
    **/
   public Enumeration<Annotation> getAnnotations() {
-    return _annotations.elements();
+    return Collections.enumeration(_annotations);
   }
 
   /**
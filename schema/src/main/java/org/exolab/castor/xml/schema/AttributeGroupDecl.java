@@ -38,8 +38,10 @@ package org.exolab.castor.xml.schema;
 
 import org.exolab.castor.xml.ValidationException;
 
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 
 /**
  * An XML Schema Attribute Group Definition
@@ -72,12 +74,12 @@ public final class AttributeGroupDecl extends AttributeGroup {
   /**
    * The collection of attributes for this AttributeGroup
    **/
-  private final Vector<AttributeDecl> _attributes = new Vector<>();
+  private final List<AttributeDecl> _attributes = new ArrayList<>();
 
   /**
    * The collection of AttributesGroupReferences for this AttributeGroup
    **/
-  private final Vector<AttributeGroupReference> _references = new Vector<>();
+  private final List<AttributeGroupReference> _references = new ArrayList<>();
 
   /**
    * the anyattribute wilcard, if any
@@ -143,14 +145,14 @@ public final class AttributeGroupDecl extends AttributeGroup {
    * Returns the attributes of THIS attribute group. (not those of the nested groups)
    */
   public Enumeration<AttributeDecl> getLocalAttributes() {
-    return _attributes.elements();
+    return Collections.enumeration(_attributes);
   }
 
   /**
    * Returns the AttributeGroupReference of THIS attribute group. (not those of the nested groups)
    */
   public Enumeration<AttributeGroupReference> getLocalAttributeGroupReferences() {
-    return _references.elements();
+    return Collections.enumeration(_references);
   }
 
   /**
@@ -174,13 +176,13 @@ public final class AttributeGroupDecl extends AttributeGroup {
       return null;
 
     for (int i = 0; i < _attributes.size(); i++) {
-      AttributeDecl attr = (AttributeDecl) _attributes.elementAt(i);
+      AttributeDecl attr = _attributes.get(i);
       if (name.equals(attr.getName()))
         return attr;
     }
 
     for (int i = 0; i < _references.size(); i++) {
-      AttributeGroupReference ref = (AttributeGroupReference) _references.elementAt(i);
+      AttributeGroupReference ref = _references.get(i);
 
       AttributeDecl attr = ref.getAttribute(name);
       if (attr != null)
@@ -354,15 +356,15 @@ public final class AttributeGroupDecl extends AttributeGroup {
  **/
 class AttributeGroupEnumeration implements Enumeration<AttributeDecl> {
 
-  private Vector<AttributeGroupReference> references = null;
+  private List<AttributeGroupReference> references = null;
   int index = 0;
 
   private Enumeration<AttributeDecl> enumeration = null;
 
 
-  AttributeGroupEnumeration(Vector<AttributeDecl> definitions,
-      Vector<AttributeGroupReference> references) {
-    enumeration = definitions.elements();
+  AttributeGroupEnumeration(List<AttributeDecl> definitions,
+      List<AttributeGroupReference> references) {
+    enumeration = Collections.enumeration(definitions);
     if (!enumeration.hasMoreElements())
       enumeration = null;
     this.references = references;
@@ -374,7 +376,7 @@ class AttributeGroupEnumeration implements Enumeration<AttributeDecl> {
 
     int i = index;
     while (i < references.size()) {
-      AttributeGroupReference ref = references.elementAt(i);
+      AttributeGroupReference ref = references.get(i);
       ++i;
       if (!ref.isEmpty())
         return true;
@@ -393,7 +395,7 @@ class AttributeGroupEnumeration implements Enumeration<AttributeDecl> {
     }
 
     while (index < references.size()) {
-      AttributeGroupReference ref = references.elementAt(index);
+      AttributeGroupReference ref = references.get(index);
 
       ++index;
 
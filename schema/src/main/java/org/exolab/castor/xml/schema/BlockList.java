@@ -44,7 +44,10 @@ import java.util.StringTokenizer;
  * @author <a href="mailto:kvisco@intalio.com">Keith Visco</a>
  * @version $Revision$ $Date: 2006-04-25 15:08:23 -0600 (Tue, 25 Apr 2006) $
  **/
-public final class BlockList {
+public final class BlockList implements java.io.Serializable {
+
+  /** SerialVersionUID */
+  private static final long serialVersionUID = -3409187302714630158L;
 
   /**
    * The #all value
@@ -35,8 +35,9 @@
 
 package org.exolab.castor.xml.schema;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Vector;
 
 /**
  * An implementation of an XML Schema content model group.
@@ -52,10 +53,46 @@ class ContentModelGroupImpl implements ContentModelGroup, java.io.Serializable {
   /**
    * Collection holding all {@link Particle}s of this content model group.
    */
-  private final Vector<Particle> _contentModel = new Vector<>();
+  private final ArrayList<Particle> _contentModel = new ArrayList<>();
 
+  /**
+   * Resolver for the named elements and groups of this content model group; not serialized, and
+   * thus rebuilt on first use after deserialization.
+   */
   private transient ScopableResolver _resolver = new ScopableResolver();
 
+  /**
+   * Returns the resolver for the named elements and groups of this content model group, rebuilding
+   * it from the particles of this group after deserialization.
+   *
+   * @return the resolver for the named elements and groups of this content model group
+   */
+  private ScopableResolver getResolver() {
+    if (_resolver == null) {
+      ScopableResolver resolver = new ScopableResolver();
+      for (Particle particle : _contentModel) {
+        if (particle instanceof ElementDecl) {
+          ElementDecl elementDecl = (ElementDecl) particle;
+          if (!elementDecl.isReference()) {
+            resolver.addResolvable("element:" + elementDecl.getName(), elementDecl);
+          }
+        } else if (particle instanceof ModelGroup) {
+          ModelGroup group = (ModelGroup) particle;
+          if ((group.getName() != null) && (!group.isReference())) {
+            resolver.addResolvable("group:" + group.getName(), group);
+          }
+        } else if (particle instanceof Group) {
+          Group group = (Group) particle;
+          if (group.getName() != null) {
+            resolver.addResolvable("group:" + group.getName(), group);
+          }
+        }
+      }
+      _resolver = resolver;
+    }
+    return _resolver;
+  }
+
   /**
    * {@inheritDoc}
    * 
@@ -84,12 +121,12 @@ class ContentModelGroupImpl implements ContentModelGroup, java.io.Serializable {
     if (!elementDecl.isReference()) {
       String key = "element:" + name;
       // -- check for naming collisions
-      if (_resolver.resolve(key) != null) {
+      if (getResolver().resolve(key) != null) {
         String err = "An element declaration with the given name, ";
         err += name + ", already exists in this scope.";
         throw new SchemaException(err);
       }
-      _resolver.addResolvable(key, elementDecl);
+      getResolver().addResolvable(key, elementDecl);
     }
 
     // -- add to content model
@@ -108,10 +145,10 @@ class ContentModelGroupImpl implements ContentModelGroup, java.io.Serializable {
     }
     int position = _contentModel.indexOf(elementDecl);
     if (position >= 0) {
-      _contentModel.removeElementAt(position);
+      _contentModel.remove(position);
       if (!elementDecl.isReference()) {
         String key = "element:" + elementDecl.getName();
-        _resolver.removeResolvable(key);
+        getResolver().removeResolvable(key);
       }
       return true;
     }
@@ -132,13 +169,13 @@ class ContentModelGroupImpl implements ContentModelGroup, java.io.Serializable {
     if (name != null) {
       String key = "group:" + name;
       // -- check for naming collisions
-      if (_resolver.resolve(key) != null) {
+      if (getResolver().resolve(key) != null) {
         String err = "A group definition with the given name, ";
         err += name + ", already exists in this scope.";
         throw new SchemaException(err);
       }
 
-      _resolver.addResolvable(key, group);
+      getResolver().addResolvable(key, group);
     }
 
     // -- add to content model
@@ -159,9 +196,9 @@ class ContentModelGroupImpl implements ContentModelGroup, java.io.Serializable {
       String name = group.getName();
       if (name != null) {
         String key = "group:" + name;
-        _resolver.removeResolvable(key);
+        getResolver().removeResolvable(key);
       }
-      _contentModel.removeElementAt(position);
+      _contentModel.remove(position);
       return true;
     }
     return false;
@@ -181,13 +218,13 @@ class ContentModelGroupImpl implements ContentModelGroup, java.io.Serializable {
     if ((name != null) && (!group.isReference())) {
       String key = "group:" + name;
       // -- check for naming collisions
-      if (_resolver.resolve(key) != null) {
+      if (getResolver().resolve(key) != null) {
         String err = "An element declaration with the given name, ";
         err += name + ", already exists in this scope.";
         throw new SchemaException(err);
       }
 
-      _resolver.addResolvable(key, group);
+      getResolver().addResolvable(key, group);
     }
 
     // -- add to content model
@@ -208,9 +245,9 @@ class ContentModelGroupImpl implements ContentModelGroup, java.io.Serializable {
       String name = group.getName();
       if ((name != null) && (!group.isReference())) {
         String key = "group:" + name;
-        _resolver.removeResolvable(key);
+        getResolver().removeResolvable(key);
       }
-      _contentModel.removeElementAt(position);
+      _contentModel.remove(position);
       return true;
     }
     return false;
@@ -227,7 +264,7 @@ class ContentModelGroupImpl implements ContentModelGroup, java.io.Serializable {
     }
     int position = _contentModel.indexOf(wildcard);
     if (position >= 0) {
-      _contentModel.removeElementAt(position);
+      _contentModel.remove(position);
       return true;
     }
     return false;
@@ -239,7 +276,7 @@ class ContentModelGroupImpl implements ContentModelGroup, java.io.Serializable {
    * @see org.exolab.castor.xml.schema.ContentModelGroup#enumerate()
    */
   public Enumeration<Particle> enumerate() {
-    return _contentModel.elements();
+    return Collections.enumeration(_contentModel);
   }
 
   /**
@@ -307,7 +344,7 @@ class ContentModelGroupImpl implements ContentModelGroup, java.io.Serializable {
    * @see org.exolab.castor.xml.schema.ContentModelGroup#getParticle(int)
    */
   public Particle getParticle(final int index) {
-    return _contentModel.elementAt(index);
+    return _contentModel.get(index);
   }
 
   /**
@@ -102,6 +102,29 @@ public class ContentType implements java.io.Serializable {
     return _names[_type];
   } // -- toString
 
+  /**
+   * Replaces a deserialized ContentType with the corresponding constant, so that ContentTypes can
+   * still be compared by identity. Subclasses such as {@link SimpleContent} are kept as they are.
+   *
+   * @return the ContentType constant corresponding to the type of this ContentType.
+   */
+  private Object readResolve() {
+    switch (_type) {
+      case ELEMENT_ONLY:
+        return elemOnly;
+      case MIXED:
+        return mixed;
+      case EMPTY:
+        return empty;
+      case ANY:
+        return any;
+      case TEXT_ONLY:
+        return textOnly;
+      default:
+        return this;
+    }
+  } // -- readResolve
+
   /**
    * Creates a new ContentType based on the given String
    * 
@@ -99,6 +99,15 @@ class DeferredSimpleType extends SimpleType {
     this.baseTypeName = baseTypeName;
   }
 
+  /**
+   * Sets the parent of this simple type, and of the instance it has been resolved to, if any.
+   */
+  protected void setParent(Structure parent) {
+    super.setParent(parent);
+    if (instance != null)
+      instance.setParent(parent);
+  }
+
   /**
    * Package private getter of the simpleType instance.
    */
@@ -44,7 +44,10 @@ import java.util.StringTokenizer;
  * @author <a href="mailto:kvisco@intalio.com">Keith Visco</a>
  * @version $Revision$ $Date: 2006-04-25 15:08:23 -0600 (Tue, 25 Apr 2006) $
  **/
-public final class FinalList {
+public final class FinalList implements java.io.Serializable {
+
+  /** SerialVersionUID */
+  private static final long serialVersionUID = 8153047285910352264L;
 
   /**
    * The #all value
@@ -43,7 +43,10 @@ package org.exolab.castor.xml.schema;
  * @author <a href="mailto:kvisco@intalio.com">Keith Visco</a>
  * @version $Revision$ $Date: 2003-03-03 00:05:44 -0700 (Mon, 03 Mar 2003) $
  **/
-public class Form {
+public class Form implements java.io.Serializable {
+
+  /** SerialVersionUID */
+  private static final long serialVersionUID = 4628593615672840311L;
 
   /**
    * The String value for the qualified Form
@@ -116,6 +119,16 @@ public class Form {
     return _value;
   } // -- toString
 
+  /**
+   * Replaces a deserialized Form with the corresponding constant, so that Forms can still be
+   * compared by identity.
+   *
+   * @return the Form constant corresponding to the value of this Form.
+   **/
+  private Object readResolve() {
+    return valueOf(_value);
+  } // -- readResolve
+
   /**
    * Returns the Form corresponding to the given value.
    *
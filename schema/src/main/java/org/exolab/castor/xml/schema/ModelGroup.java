@@ -37,7 +37,8 @@ package org.exolab.castor.xml.schema;
 
 import org.exolab.castor.xml.*;
 
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 
 /**
@@ -58,7 +59,7 @@ public class ModelGroup extends Group {
   /**
    * An ordered list of all ModelGroup definitions
    **/
-  private final Vector<ModelGroup> _modelDefs = new Vector<>();
+  private final ArrayList<ModelGroup> _modelDefs = new ArrayList<>();
 
   /**
    * An attribute that indicates if this Group is a redefinition
@@ -123,7 +124,7 @@ public class ModelGroup extends Group {
    * modelGroupRef)+
    **/
   public Enumeration<ModelGroup> getDeclarations() {
-    return _modelDefs.elements();
+    return Collections.enumeration(_modelDefs);
   } // -- getDeclarations
 
   /**
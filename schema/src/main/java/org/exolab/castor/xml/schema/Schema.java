@@ -40,11 +40,15 @@ import org.exolab.castor.xml.ValidationException;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Vector;
-import java.util.Hashtable;
-import java.util.Enumeration;
+import java.util.Set;
 
 
 /**
@@ -106,12 +110,12 @@ public class Schema extends Annotated {
    * The global AttribteGroups for this Schema
    **/
   private final Map<String, AttributeGroup> _attributeGroups =
-      new Hashtable<String, AttributeGroup>();
+      new LinkedHashMap<String, AttributeGroup>();
 
   /**
    * The global attributes for this Schema
    **/
-  private final Map<String, AttributeDecl> _attributes = new Hashtable<String, AttributeDecl>();
+  private final Map<String, AttributeDecl> _attributes = new LinkedHashMap<String, AttributeDecl>();
 
   /**
    * The value of the block attribute.
@@ -122,7 +126,7 @@ public class Schema extends Annotated {
   /**
    * A list of defined architypes
    **/
-  private final Map<String, ComplexType> _complexTypes = new Hashtable<String, ComplexType>();
+  private final Map<String, ComplexType> _complexTypes = new LinkedHashMap<String, ComplexType>();
 
   /**
    * The elementFormDefault attribute for this Schema
@@ -132,7 +136,7 @@ public class Schema extends Annotated {
   /**
    * A list of defined elements
    **/
-  private final Map<String, ElementDecl> _elements = new Hashtable<String, ElementDecl>();
+  private final Map<String, ElementDecl> _elements = new LinkedHashMap<String, ElementDecl>();
 
   /**
    * The value of the final attribute.
@@ -142,13 +146,13 @@ public class Schema extends Annotated {
   /**
    * A list of defined top-levels groups
    */
-  private final Map<String, ModelGroup> _groups = new Hashtable<String, ModelGroup>();
+  private final Map<String, ModelGroup> _groups = new LinkedHashMap<String, ModelGroup>();
 
   /**
    * A list of defined <redefine>
    */
   private final Map<String, RedefineSchema> _redefineSchemas =
-      new Hashtable<String, RedefineSchema>();
+      new LinkedHashMap<String, RedefineSchema>();
 
   /**
    * The ID for this Schema
@@ -158,18 +162,31 @@ public class Schema extends Annotated {
   /**
    * A list of imported schemas
    **/
-  private final Map<String, Schema> _importedSchemas = new Hashtable<String, Schema>();
+  private final Map<String, Schema> _importedSchemas = new LinkedHashMap<String, Schema>();
+
+  /**
+   * Bumped whenever an import is added to or removed from this schema, invalidating every
+   * {@link ImportIndex} built over it. Like all other modifications, imports are only changed by
+   * the thread building the schema.
+   */
+  private volatile long _importGeneration = 0;
+
+  /**
+   * The schemas imported by this schema, directly or indirectly, by namespace; rebuilt whenever
+   * the imports of any schema it covers change.
+   */
+  private transient volatile ImportIndex _importIndex = null;
 
   /**
    * A list of included schemas meant to be used only when the cache mechanism is enabled.
    **/
-  private final Map<String, Schema> _cachedincludedSchemas = new Hashtable<String, Schema>();
+  private final Map<String, Schema> _cachedincludedSchemas = new LinkedHashMap<String, Schema>();
 
 
   /**
    * A list of XML Schema files included in this schema
    **/
-  private final Vector<String> _includedSchemas = new Vector<String>();
+  private final Set<String> _includedSchemas = new LinkedHashSet<String>();
 
   /**
    * A list of namespaces declared in this schema
@@ -191,7 +208,7 @@ public class Schema extends Annotated {
   /**
    * A list of defined SimpleTypes
    **/
-  private final Hashtable<String, SimpleType> _simpleTypes = new Hashtable<String, SimpleType>();
+  private final Map<String, SimpleType> _simpleTypes = new LinkedHashMap<String, SimpleType>();
 
   /**
    * The targetNamespace for this Schema
@@ -359,7 +376,7 @@ public class Schema extends Annotated {
    * @exception SchemaException if the Complextype does not have a name or if another Complextype
    *            already exists with the same name
    **/
-  public synchronized void addComplexType(ComplexType complexType) throws SchemaException {
+  public void addComplexType(ComplexType complexType) throws SchemaException {
 
     String name = complexType.getName();
 
@@ -475,7 +492,7 @@ public class Schema extends Annotated {
    * @param schema the Schema to add to this Schema as an imported schema
    * @exception SchemaException if the Schema already exists
    */
-  public synchronized void addImportedSchema(Schema schema) throws SchemaException {
+  public void addImportedSchema(Schema schema) throws SchemaException {
     String targetNamespace = schema.getTargetNamespace();
     if (targetNamespace == null)
       targetNamespace = "";
@@ -484,6 +501,7 @@ public class Schema extends Annotated {
       throw new SchemaException(err + targetNamespace);
     }
     _importedSchemas.put(targetNamespace, schema);
+    _importGeneration++;
   } // -- addImportedSchema
 
   /**
@@ -492,7 +510,7 @@ public class Schema extends Annotated {
    * @param schema the Schema to add to this Schema as a cached included schema.
    * @exception SchemaException if the Schema already exists
    */
-  public synchronized void cacheIncludedSchema(Schema schema) throws SchemaException {
+  public void cacheIncludedSchema(Schema schema) throws SchemaException {
     String schemaLocation = schema.getSchemaLocation();
     if (schemaLocation == null)
       schemaLocation = "";
@@ -518,7 +536,7 @@ public class Schema extends Annotated {
    * @exception SchemaException if the SimpleType does not have a name or if another SimpleType
    *            already exists with the same name
    **/
-  public synchronized void addSimpleType(SimpleType simpleType) throws SchemaException {
+  public void addSimpleType(SimpleType simpleType) throws SchemaException {
 
     String name = simpleType.getName();
 
@@ -607,6 +625,9 @@ public class Schema extends Annotated {
    * @return an Enumeration of all top-level Attribute declarations
    **/
   public Collection<AttributeDecl> getAttributes() {
+    if (_cachedincludedSchemas.isEmpty() && _redefineSchemas.isEmpty()) {
+      return Collections.unmodifiableCollection(_attributes.values());
+    }
     Collection<AttributeDecl> result = new ArrayList<>(_attributes.size() * 2);
 
     result.addAll(_attributes.values());
@@ -723,6 +744,9 @@ public class Schema extends Annotated {
    * @return an Enumeration of all top-level AttributeGroup declarations
    **/
   public Collection<AttributeGroup> getAttributeGroups() {
+    if (_cachedincludedSchemas.isEmpty() && _redefineSchemas.isEmpty()) {
+      return Collections.unmodifiableCollection(_attributeGroups.values());
+    }
     Collection<AttributeGroup> result = new ArrayList<>(_attributeGroups.size() * 2);
 
     result.addAll(_attributeGroups.values());
@@ -955,6 +979,9 @@ public class Schema extends Annotated {
    * @return an Enumeration of all top-level ComplexType declarations
    **/
   public Collection<ComplexType> getComplexTypes() {
+    if (_cachedincludedSchemas.isEmpty() && _redefineSchemas.isEmpty()) {
+      return Collections.unmodifiableCollection(_complexTypes.values());
+    }
     Collection<ComplexType> result = new ArrayList<>(_complexTypes.size() * 2);
 
     result.addAll(_complexTypes.values());
@@ -1066,6 +1093,9 @@ public class Schema extends Annotated {
    * @return an Enumeration of all top-level element declarations
    **/
   public Collection<ElementDecl> getElementDecls() {
+    if (_cachedincludedSchemas.isEmpty() && _redefineSchemas.isEmpty()) {
+      return Collections.unmodifiableCollection(_elements.values());
+    }
     Collection<ElementDecl> result = new ArrayList<>(_elements.size() * 2);
 
     result.addAll(_elements.values());
@@ -1188,22 +1218,10 @@ public class Schema extends Annotated {
     SimpleType result = null;
     if ((namespace == null) || (isDefaultNS)) {
 
-      // -- first check user-defined types
+      // -- first check user-defined types, a deferred type is resolved below
       result = _simpleTypes.get(name);
-      if (result != null) {
-        // -- resolve deferred type if necessary
-        if (result.getType() != result) {
-          // -- can result.getType ever return null?
-          // -- We can check, just in case.
-          if (result.getType() != null) {
-            result = (SimpleType) result.getType();
-            result.setParent(this);
-            _simpleTypes.put(name, result);
-          }
-        }
-      }
       // -- otherwise try built-in types
-      else {
+      if (result == null) {
         result = simpleTypesFactory.getBuiltInType(name);
         // if we have a built-in type not declared in the good namespace -> Exception
         if ((result != null) && (!_schemaNamespace.equals(namespace))) {
@@ -1221,18 +1239,6 @@ public class Schema extends Annotated {
       }
     } else if (namespace.equals(_targetNamespace)) {
       result = _simpleTypes.get(name);
-      if (result != null) {
-        // -- resolve deferred type if necessary
-        if (result.getType() != result) {
-          // -- can result.getType ever return null?
-          // -- We can check, just in case.
-          if (result.getType() != null) {
-            result = (SimpleType) result.getType();
-            result.setParent(this);
-            _simpleTypes.put(name, result);
-          }
-        }
-      }
       if (result == null) {
         // -- check the cached included schema
         Iterator<Schema> cacheIncluded = _cachedincludedSchemas.values().iterator();
@@ -1288,23 +1294,23 @@ public class Schema extends Annotated {
    **/
   public Collection<SimpleType> getSimpleTypes() {
 
-    // -- clean up "deferred types" if necessary
-    Enumeration<SimpleType> enumeration = _simpleTypes.elements();
-    while (enumeration.hasMoreElements()) {
-      SimpleType type = enumeration.nextElement();
-      if (type != type.getType()) {
-        // -- resolve deferred type if necessary
-        if (type.getType() != null) {
-          String name = type.getName();
-          type = (SimpleType) type.getType();
-          type.setParent(this);
-          _simpleTypes.put(name, type);
-        }
+    // -- deferred types are resolved in the result only, so that reading never modifies the schema
+    boolean deferred = false;
+    for (SimpleType type : _simpleTypes.values()) {
+      if (type instanceof DeferredSimpleType) {
+        deferred = true;
+        break;
       }
     }
+    if (!deferred && _cachedincludedSchemas.isEmpty() && _redefineSchemas.isEmpty()) {
+      return Collections.unmodifiableCollection(_simpleTypes.values());
+    }
     Collection<SimpleType> result = new ArrayList<>(_simpleTypes.size() * 2);
 
-    result.addAll(_simpleTypes.values());
+    for (SimpleType type : _simpleTypes.values()) {
+      SimpleType resolved = (SimpleType) type.getType();
+      result.add((resolved != null) ? resolved : type);
+    }
 
     Collection<Schema> cachedincluded = _cachedincludedSchemas.values();
     for (Schema includedSchema : cachedincluded) {
@@ -1430,6 +1436,9 @@ public class Schema extends Annotated {
    * @return an Enumeration of all top-level ModelGroup declarations
    **/
   public Collection<ModelGroup> getModelGroups() {
+    if (_cachedincludedSchemas.isEmpty() && _redefineSchemas.isEmpty()) {
+      return Collections.unmodifiableCollection(_groups.values());
+    }
     Collection<ModelGroup> result = new ArrayList<>(_groups.size() * 2);
 
     result.addAll(_groups.values());
@@ -1482,7 +1491,7 @@ public class Schema extends Annotated {
    * @return the hashtable of the imported schemas
    */
   public Collection<Schema> getImportedSchema() {
-    return _importedSchemas.values();
+    return Collections.unmodifiableCollection(_importedSchemas.values());
   }
 
   /**
@@ -1501,7 +1510,7 @@ public class Schema extends Annotated {
    * @return an enumeration of redefined schemas.
    */
   public Collection<RedefineSchema> getRedefineSchema() {
-    return _redefineSchemas.values();
+    return Collections.unmodifiableCollection(_redefineSchemas.values());
   }
 
   /**
@@ -1535,7 +1544,7 @@ public class Schema extends Annotated {
    * 
    */
   public Collection<Schema> getCachedIncludedSchemas() {
-    return _cachedincludedSchemas.values();
+    return Collections.unmodifiableCollection(_cachedincludedSchemas.values());
   }
 
   /**
@@ -1559,31 +1568,30 @@ public class Schema extends Annotated {
    * @return the imported schema
    */
   private Schema getImportedSchema(String ns, Schema caller) {
-
-    // -- Check for recursive calls
-    if (caller == this) {
-      return null;
-    }
-    // -- Associate caller if necessary
-    if (caller == null) {
-      caller = this;
-    }
-
     Schema result = _importedSchemas.get(ns);
     // --maybe we are the schema imported is at
     // --a depth > 1
-    if (result == null) {
-      Iterator<Schema> schemas = _importedSchemas.values().iterator();
-      while (schemas.hasNext()) {
-        Schema temp = schemas.next();
-        result = temp.getImportedSchema(ns, caller);
-        if (result != null) {
-          break;
-        }
-      }
+    if (result == null && !_importedSchemas.isEmpty()) {
+      result = getImportIndex().get(ns);
     }
     return result;
-  }
+  } // -- getImportedSchema
+
+  /**
+   * Returns the index of all schemas reachable through imports, rebuilding it if any import has
+   * changed since it was last built. The first schema found for a namespace wins, in the same
+   * depth-first order a recursive search would visit them.
+   * 
+   * @return the imported schemas by namespace
+   */
+  private Map<String, Schema> getImportIndex() {
+    ImportIndex index = _importIndex;
+    if (index == null || !index.isCurrent()) {
+      index = new ImportIndex(this);
+      _importIndex = index;
+    }
+    return index._schemas;
+  } // -- getImportIndex
 
   /**
    * Returns the namespace associated with the given prefix.
@@ -1624,6 +1632,15 @@ public class Schema extends Annotated {
     return _includedSchemas.contains(includeFile);
   } // -- includeProcessed
 
+  /**
+   * Returns the locations of the XML Schema files processed via an &lt;xs:include&gt;.
+   *
+   * @return an unmodifiable view of the included locations
+   */
+  public Collection<String> getIncludes() {
+    return Collections.unmodifiableCollection(_includedSchemas);
+  } // -- getIncludes
+
   /**
    * Returns the namespace of the XML Schema <BR />
    * Note: This is not the same as targetNamespace. This is the namespace of "XML Schema" itself and
@@ -1829,7 +1846,7 @@ public class Schema extends Annotated {
    *
    * @return true if the Schema was removed, otherwise false
    */
-  public synchronized boolean removeCachedIncludedSchema(Schema schema) {
+  public boolean removeCachedIncludedSchema(Schema schema) {
     if (schema == null)
       return false;
     String schemaLocation = schema.getSchemaLocation();
@@ -1848,7 +1865,7 @@ public class Schema extends Annotated {
    *
    * @return true if the Schema was removed, otherwise false
    */
-  public synchronized boolean removeImportedSchema(Schema schema) {
+  public boolean removeImportedSchema(Schema schema) {
     if (schema == null)
       return false;
     String targetNamespace = schema.getTargetNamespace();
@@ -1857,6 +1874,7 @@ public class Schema extends Annotated {
     Schema tmp = _importedSchemas.get(targetNamespace);
     if (schema.equals(tmp)) {
       _importedSchemas.remove(targetNamespace);
+      _importGeneration++;
       return true;
     }
     return false;
@@ -1880,7 +1898,7 @@ public class Schema extends Annotated {
    *
    * @return true if the Schema was removed, otherwise false
    */
-  public synchronized boolean removeRedefineSchema(RedefineSchema schema) {
+  public boolean removeRedefineSchema(RedefineSchema schema) {
     if (schema == null)
       return false;
     String schemaLocation = schema.getSchemaLocation();
@@ -2191,6 +2209,79 @@ public class Schema extends Annotated {
     _masterSchema = masterSchema;
   }
 
+  /**
+   * An immutable index of the schemas reachable from a schema through imports, together with the
+   * import generation of every schema it has been built from. The first schema found for a
+   * namespace wins, in the same depth-first order a recursive search would visit them.
+   */
+  private static final class ImportIndex {
+
+    /**
+     * The imported schemas by namespace.
+     */
+    private final Map<String, Schema> _schemas;
+
+    /**
+     * The schemas whose imports have been indexed.
+     */
+    private final Schema[] _sources;
+
+    /**
+     * The import generation of each of {@link #_sources} when the index has been built.
+     */
+    private final long[] _generations;
+
+    ImportIndex(final Schema schema) {
+      Map<String, Schema> schemas = new HashMap<String, Schema>();
+      Set<Schema> visited = Collections.newSetFromMap(new IdentityHashMap<Schema, Boolean>());
+      List<Schema> sources = new ArrayList<Schema>();
+      List<Long> generations = new ArrayList<Long>();
+      visited.add(schema);
+      index(schema, schemas, visited, sources, generations);
+
+      _schemas = schemas;
+      _sources = sources.toArray(new Schema[sources.size()]);
+      _generations = new long[generations.size()];
+      for (int i = 0; i < _generations.length; i++) {
+        _generations[i] = generations.get(i);
+      }
+    }
+
+    /**
+     * Adds the imports of the given schema, then those of each imported schema, to the index.
+     */
+    private static void index(final Schema schema, final Map<String, Schema> schemas,
+        final Set<Schema> visited, final List<Schema> sources, final List<Long> generations) {
+      // -- read the generation first, so that a concurrent change is detected on the next lookup
+      generations.add(schema._importGeneration);
+      sources.add(schema);
+      for (Map.Entry<String, Schema> entry : schema._importedSchemas.entrySet()) {
+        if (!schemas.containsKey(entry.getKey())) {
+          schemas.put(entry.getKey(), entry.getValue());
+        }
+      }
+      for (Schema imported : schema._importedSchemas.values()) {
+        if (visited.add(imported)) {
+          index(imported, schemas, visited, sources, generations);
+        }
+      }
+    }
+
+    /**
+     * Returns true if no schema this index has been built from has changed its imports since.
+     *
+     * @return true if this index is still current
+     */
+    boolean isCurrent() {
+      for (int i = 0; i < _sources.length; i++) {
+        if (_sources[i]._importGeneration != _generations[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
 
 } // -- Schema
 
@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml.schema;
+
+import java.util.Map;
+
+/**
+ * A cache of {@link Schema} instances read for imported and included XML Schema documents, which
+ * can be shared between several schema reading activities (and threads) through
+ * {@link SchemaContext#setSchemaCache(SchemaCache)}.
+ * <p>
+ * Entries are keyed by the absolute URI of the schema document and a hash of its content. As a
+ * {@link Schema} also holds the components of the documents it includes and imports, every entry
+ * records the content hashes of these documents as well, and is only served while none of them has
+ * changed. Every lookup returns a copy of the cached {@link Schema}, which the caller is free to
+ * modify.
+ * <p>
+ * Implementations must be thread-safe.
+ *
+ * @see SchemaCacheImpl
+ * @since 1.4.2
+ */
+public interface SchemaCache {
+
+  /**
+   * Returns a copy of the {@link Schema} cached for the given URI, if its content hash and the
+   * content hashes of all documents it has been read from match.
+   *
+   * @param uri The absolute URI of the schema document.
+   * @param contentHash The hash of the current content of the schema document.
+   * @param hasher Provides the hashes of the current content of the documents the cached schema
+   *        depends on.
+   * @return A copy of the cached {@link Schema}, or null if there is none for this URI and
+   *         content.
+   */
+  Schema get(String uri, String contentHash, ContentHasher hasher);
+
+  /**
+   * Caches the {@link Schema} read from the given URI, replacing any entry for a previous content
+   * of the same document. Later modifications of the given schema do not affect the cache.
+   *
+   * @param uri The absolute URI of the schema document.
+   * @param contentHash The hash of the content the schema has been read from.
+   * @param schema The {@link Schema} read.
+   * @param dependencies The content hashes of all other documents, imported or included directly
+   *        or indirectly, the schema has been read from, by absolute URI.
+   */
+  void put(String uri, String contentHash, Schema schema, Map<String, String> dependencies);
+
+  /**
+   * Removes all entries from this cache.
+   */
+  void clear();
+
+  /**
+   * Computes the hash of the current content of a schema document, so that a {@link SchemaCache}
+   * can check the documents a cached schema depends on.
+   */
+  interface ContentHasher {
+
+    /**
+     * Returns the hash of the current content of the schema document at the given URI.
+     *
+     * @param uri The absolute URI of the schema document.
+     * @return The hash of the content, or null if the document cannot be read.
+     */
+    String getContentHash(String uri);
+
+  }
+
+}
@@ -0,0 +1,280 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml.schema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.exolab.castor.xml.schema.reader.SchemaSnapshotReader;
+import org.exolab.castor.xml.schema.writer.SchemaSnapshotWriter;
+
+/**
+ * Default {@link SchemaCache} implementation, holding at most a given number of schema documents in
+ * memory and evicting the least recently used one beyond that.
+ * <p>
+ * Schemas are held as snapshots (see {@link SchemaSnapshotWriter}), taken when a schema is added,
+ * and every lookup restores a new copy from the snapshot. If a directory is set, every snapshot is
+ * additionally written to it, and entries missing from memory are restored from there before the
+ * document is parsed again, so that the cache survives restarts. Failing to read or write a
+ * snapshot is logged and treated as a cache miss. Note that every copy holds its own copies of the
+ * schemas it imports.
+ *
+ * @since 1.4.2
+ */
+public class SchemaCacheImpl implements SchemaCache {
+
+  /**
+   * Logger instance used for all logging functionality.
+   */
+  private static final Log LOG = LogFactory.getLog(SchemaCacheImpl.class);
+
+  /**
+   * Default maximum number of schema documents held in memory.
+   */
+  public static final int DEFAULT_MAX_SIZE = 100;
+
+  /**
+   * The cache entries by URI, in least recently used order.
+   */
+  private final Map<String, CachedSchema> _entries;
+
+  /**
+   * The directory snapshots of the cached schemas are kept in, or null.
+   */
+  private File _directory;
+
+  /**
+   * Creates an instance of {@link SchemaCacheImpl} holding at most {@link #DEFAULT_MAX_SIZE}
+   * schema documents.
+   */
+  public SchemaCacheImpl() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Creates an instance of {@link SchemaCacheImpl}.
+   *
+   * @param maxSize The maximum number of schema documents held in memory.
+   */
+  public SchemaCacheImpl(final int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("Maximum cache size must be positive: " + maxSize);
+    }
+    _entries = new LinkedHashMap<String, CachedSchema>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<String, CachedSchema> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Sets the directory snapshots of the cached schemas are written to and restored from. A value
+   * of null (the default) keeps the cache in memory only.
+   *
+   * @param directory The directory for schema snapshots, or null.
+   */
+  public synchronized void setDirectory(final File directory) {
+    if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+      throw new IllegalArgumentException("Unable to create schema cache directory " + directory);
+    }
+    _directory = directory;
+  }
+
+  /**
+   * Returns the directory snapshots of the cached schemas are kept in.
+   *
+   * @return The directory for schema snapshots, or null.
+   */
+  public synchronized File getDirectory() {
+    return _directory;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Schema get(final String uri, final String contentHash, final ContentHasher hasher) {
+    CachedSchema cached = lookup(uri, contentHash);
+    if (cached == null) {
+      return null;
+    }
+    // -- the dependencies are hashed outside the lock, as this may read their documents
+    for (Map.Entry<String, String> dependency : cached._dependencies.entrySet()) {
+      if (!dependency.getValue().equals(hasher.getContentHash(dependency.getKey()))) {
+        return null;
+      }
+    }
+    try {
+      return new SchemaSnapshotReader(ByteBuffer.wrap(cached._snapshot)).read();
+    } catch (IOException e) {
+      LOG.warn("Ignoring unreadable schema snapshot for " + uri, e);
+      return null;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void put(final String uri, final String contentHash, final Schema schema,
+      final Map<String, String> dependencies) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      SchemaSnapshotWriter writer = new SchemaSnapshotWriter(out);
+      writer.setSourceHash(contentHash);
+      writer.setDependencies(dependencies);
+      writer.write(schema);
+    } catch (IOException e) {
+      LOG.warn("Unable to cache schema " + uri, e);
+      return;
+    }
+    CachedSchema cached = new CachedSchema(contentHash, dependencies, out.toByteArray());
+
+    synchronized (this) {
+      _entries.put(uri, cached);
+      if (_directory == null) {
+        return;
+      }
+
+      File file = getSnapshotFile(uri);
+      try {
+        // -- write to a temporary file first, so that readers never see a partial snapshot
+        File temp = File.createTempFile("schema", ".tmp", _directory);
+        try {
+          Files.write(temp.toPath(), cached._snapshot);
+        } catch (IOException e) {
+          temp.delete();
+          throw e;
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException e) {
+        LOG.warn("Unable to write schema snapshot " + file + " for " + uri, e);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public synchronized void clear() {
+    _entries.clear();
+  }
+
+  /**
+   * Returns the number of schema documents currently held in memory.
+   *
+   * @return The number of schema documents held in memory.
+   */
+  public synchronized int size() {
+    return _entries.size();
+  }
+
+  /**
+   * Computes the content hash used as part of a cache key for the given schema document content.
+   *
+   * @param content The content of a schema document.
+   * @return The hex encoded SHA-256 digest of the content.
+   */
+  public static String hash(final String content) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] bytes = digest.digest(content.getBytes(StandardCharsets.UTF_8));
+      StringBuilder buffer = new StringBuilder(bytes.length * 2);
+      for (byte b : bytes) {
+        buffer.append(Character.forDigit((b >> 4) & 0xF, 16));
+        buffer.append(Character.forDigit(b & 0xF, 16));
+      }
+      return buffer.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Returns the entry cached for the given URI and content hash, restoring it from the snapshot
+   * directory if it is not held in memory.
+   *
+   * @param uri The absolute URI of the schema document.
+   * @param contentHash The hash of the current content of the schema document.
+   * @return The cached entry, or null if there is none for this URI and content.
+   */
+  private synchronized CachedSchema lookup(final String uri, final String contentHash) {
+    CachedSchema cached = _entries.get(uri);
+    if (cached != null && cached._contentHash.equals(contentHash)) {
+      return cached;
+    }
+    if (_directory == null) {
+      return null;
+    }
+
+    File file = getSnapshotFile(uri);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      byte[] snapshot = Files.readAllBytes(file.toPath());
+      SchemaSnapshotReader reader = new SchemaSnapshotReader(ByteBuffer.wrap(snapshot));
+      if (!reader.isCurrent(contentHash)) {
+        return null;
+      }
+      cached = new CachedSchema(contentHash, reader.getDependencies(), snapshot);
+      _entries.put(uri, cached);
+      return cached;
+    } catch (IOException e) {
+      LOG.warn("Ignoring unreadable schema snapshot " + file + " for " + uri, e);
+      return null;
+    }
+  }
+
+  /**
+   * Returns the file the snapshot for the given schema document is kept in.
+   *
+   * @param uri The absolute URI of the schema document.
+   * @return The snapshot file for the schema document.
+   */
+  private File getSnapshotFile(final String uri) {
+    return new File(_directory, hash(uri) + ".snapshot");
+  }
+
+  /**
+   * The snapshot of a cached {@link Schema}, together with the hashes of the content of the
+   * documents it has been read from.
+   */
+  private static final class CachedSchema {
+    private final String _contentHash;
+    private final Map<String, String> _dependencies;
+    private final byte[] _snapshot;
+
+    CachedSchema(final String contentHash, final Map<String, String> dependencies,
+        final byte[] snapshot) {
+      _contentHash = contentHash;
+      _dependencies = (dependencies == null) ? Collections.<String, String>emptyMap()
+          : new LinkedHashMap<String, String>(dependencies);
+      _snapshot = snapshot;
+    }
+  }
+
+}
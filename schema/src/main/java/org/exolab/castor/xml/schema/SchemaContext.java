@@ -27,6 +27,24 @@ public interface SchemaContext {
    */
   void setSchemaResolver(Resolver resolver);
 
+  /**
+   * Returns the {@link SchemaCache} imported and included schema documents are looked up in and
+   * added to.
+   * 
+   * @return the {@link SchemaCache} to use, or null if schema documents are not cached
+   * @since 1.4.2
+   */
+  SchemaCache getSchemaCache();
+
+  /**
+   * Sets the {@link SchemaCache} imported and included schema documents are looked up in and added
+   * to. The same cache can be set on several contexts to share schema documents between them.
+   * 
+   * @param schemaCache the {@link SchemaCache} to use, or null to disable caching
+   * @since 1.4.2
+   */
+  void setSchemaCache(SchemaCache schemaCache);
+
   /**
    * Return an XML document parser as specified in the configuration file.
    *
@@ -26,6 +26,11 @@ public class SchemaContextImpl implements SchemaContext {
    */
   private AbstractProperties _properties;
 
+  /**
+   * {@link SchemaCache} instance used for imported and included XML Schema definitions.
+   */
+  private SchemaCache _schemaCache;
+
   /**
    * Creates an instance of {@link SchemaContextImpl}.
    */
@@ -61,6 +66,24 @@ public class SchemaContextImpl implements SchemaContext {
     _schemaResolver = resolver;
   }
 
+  /**
+   * {@inheritDoc}
+   * 
+   * @see org.exolab.castor.xml.schema.SchemaContext#getSchemaCache()
+   */
+  public SchemaCache getSchemaCache() {
+    return _schemaCache;
+  }
+
+  /**
+   * {@inheritDoc}
+   * 
+   * @see org.exolab.castor.xml.schema.SchemaContext#setSchemaCache(org.exolab.castor.xml.schema.SchemaCache)
+   */
+  public void setSchemaCache(final SchemaCache schemaCache) {
+    _schemaCache = schemaCache;
+  }
+
   /**
    * {@inheritDoc}
    * 
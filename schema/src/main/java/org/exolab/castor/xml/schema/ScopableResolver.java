@@ -35,7 +35,7 @@
 
 package org.exolab.castor.xml.schema;
 
-import java.util.Hashtable;
+import java.util.HashMap;
 
 /**
  * An implementation of Resolver that can be "scoped". Which means you can construct a
@@ -47,7 +47,7 @@ import java.util.Hashtable;
  **/
 public class ScopableResolver implements Resolver {
 
-  private final Hashtable<String, Referable> ids = new Hashtable<>();
+  private final HashMap<String, Referable> ids = new HashMap<>();
 
   private final Resolver _resolver;
 
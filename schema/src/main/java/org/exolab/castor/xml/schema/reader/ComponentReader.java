@@ -35,6 +35,9 @@
 
 package org.exolab.castor.xml.schema.reader;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URI;
 
 import org.exolab.castor.net.URIException;
@@ -44,6 +47,8 @@ import org.exolab.castor.xml.AttributeSet;
 import org.exolab.castor.xml.Namespaces;
 import org.exolab.castor.xml.Unmarshaller;
 import org.exolab.castor.xml.XMLException;
+import org.exolab.castor.xml.schema.SchemaCache;
+import org.exolab.castor.xml.schema.SchemaCacheImpl;
 import org.exolab.castor.xml.schema.SchemaContext;
 import org.exolab.castor.xml.schema.SchemaException;
 import org.exolab.castor.xml.schema.Resolver;
@@ -340,12 +345,31 @@ public abstract class ComponentReader {
 
   protected void parseSchema(Parser parser, SchemaUnmarshaller schemaUnmarshaller, URILocation uri,
       String schemaLocation, String reason) throws SchemaException {
+    parseSchema(parser, schemaUnmarshaller, uri, null, schemaLocation, reason);
+  }
+
+  /**
+   * Parses the schema document at the given location, using the given content if it has already
+   * been read.
+   *
+   * @param parser the parser to use
+   * @param schemaUnmarshaller the unmarshaller to report the schema components to
+   * @param uri the location of the schema document
+   * @param content the content of the schema document as returned by
+   *        {@link #readSchema(URILocation, String, String)}, or null to read it from the location
+   * @param schemaLocation the schema location, for error messages
+   * @param reason the reason for reading the schema document, for error messages
+   * @throws SchemaException if the schema document cannot be read or parsed
+   */
+  protected void parseSchema(Parser parser, SchemaUnmarshaller schemaUnmarshaller, URILocation uri,
+      String content, String schemaLocation, String reason) throws SchemaException {
     Sax2ComponentReader handler = new Sax2ComponentReader(schemaUnmarshaller);
     parser.setDocumentHandler(handler);
     parser.setErrorHandler(handler);
 
     try {
-      InputSource source = new InputSource(uri.getReader());
+      Reader reader = (content != null) ? new StringReader(content) : uri.getReader();
+      InputSource source = new InputSource(reader);
       source.setSystemId(uri.getAbsoluteURI());
       parser.parse(source);
     } catch (java.io.IOException ioe) {
@@ -355,6 +379,76 @@ public abstract class ComponentReader {
     }
   }
   
+  /**
+   * Reads the content of the schema document at the given location, so that it can be looked up
+   * in a {@link org.exolab.castor.xml.schema.SchemaCache} before it is parsed.
+   *
+   * @param uri the location of the schema document
+   * @param schemaLocation the schema location, for error messages
+   * @param reason the reason for reading the schema document, for error messages
+   * @return the content of the schema document
+   * @throws SchemaException if the schema document cannot be read
+   */
+  protected String readSchema(URILocation uri, String schemaLocation, String reason)
+      throws SchemaException {
+    try (Reader reader = uri.getReader()) {
+      StringBuilder content = new StringBuilder();
+      char[] buffer = new char[8192];
+      int length;
+      while ((length = reader.read(buffer)) != -1) {
+        content.append(buffer, 0, length);
+      }
+      return content.toString();
+    } catch (IOException ioe) {
+      throw new SchemaException("Error reading " + reason + " file '" + schemaLocation + "'");
+    }
+  }
+
+  /**
+   * Reads the content of the schema document at the given location and records its hash, so that
+   * the document can be looked up in a {@link SchemaCache} and schemas depending on it can be
+   * validated later on.
+   *
+   * @param uri the location of the schema document
+   * @param schemaLocation the schema location, for error messages
+   * @param reason the reason for reading the schema document, for error messages
+   * @param state the state of the current schema read
+   * @return the content of the schema document
+   * @throws SchemaException if the schema document cannot be read
+   */
+  protected String readAndHashSchema(URILocation uri, String schemaLocation, String reason,
+      SchemaUnmarshallerState state) throws SchemaException {
+    String content = readSchema(uri, schemaLocation, reason);
+    state.recordContentHash(schemaLocation, SchemaCacheImpl.hash(content));
+    return content;
+  }
+
+  /**
+   * Creates a {@link SchemaCache.ContentHasher} for validating the documents a cached schema
+   * depends on, which reuses and records the hashes of the documents read by the current read.
+   *
+   * @param state the state of the current schema read
+   * @return a new {@link SchemaCache.ContentHasher}
+   */
+  protected SchemaCache.ContentHasher createContentHasher(final SchemaUnmarshallerState state) {
+    return new SchemaCache.ContentHasher() {
+      public String getContentHash(final String uri) {
+        String contentHash = state.getContentHash(uri);
+        if (contentHash != null) {
+          return contentHash;
+        }
+        try {
+          readAndHashSchema(getURIResolver().resolve(uri, null), uri, "cached", state);
+        } catch (URIException urix) {
+          return null;
+        } catch (SchemaException sx) {
+          return null;
+        }
+        return state.getContentHash(uri);
+      }
+    };
+  }
+
   protected Parser createParser(String reason) throws SchemaException {
     Parser parser = null;
     try {
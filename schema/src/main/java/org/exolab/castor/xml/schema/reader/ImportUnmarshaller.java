@@ -35,12 +35,15 @@
 
 package org.exolab.castor.xml.schema.reader;
 
+import java.util.Map;
+
 import org.exolab.castor.net.URIException;
 import org.exolab.castor.net.URILocation;
 import org.exolab.castor.net.URIResolver;
 import org.exolab.castor.xml.AttributeSet;
 import org.exolab.castor.xml.XMLException;
 import org.exolab.castor.xml.schema.Schema;
+import org.exolab.castor.xml.schema.SchemaCache;
 import org.exolab.castor.xml.schema.SchemaContext;
 import org.exolab.castor.xml.schema.SchemaException;
 import org.exolab.castor.xml.schema.SchemaNames;
@@ -120,14 +123,29 @@ public class ImportUnmarshaller extends ComponentReader {
     }
 
     boolean alreadyLoaded = false;
+    SchemaCache cache = getSchemaContext().getSchemaCache();
+    String content = null;
+    String contentHash = null;
     if (importedSchema == null) {
       if (uri instanceof SchemaLocation) {
         importedSchema = ((SchemaLocation) uri).getSchema();
         schema.addImportedSchema(importedSchema);
         alreadyLoaded = true;
       } else {
-        importedSchema = new Schema();
-        addSchema = true;
+        // -- look for the same document read before, possibly by another SchemaReader
+        if (cache != null) {
+          content = readAndHashSchema(uri, schemaLocation, "import", state);
+          contentHash = state.getContentHash(schemaLocation);
+          importedSchema = cache.get(schemaLocation, contentHash, createContentHasher(state));
+        }
+        if (importedSchema != null) {
+          state.adoptCached(importedSchema);
+          schema.addImportedSchema(importedSchema);
+          alreadyLoaded = true;
+        } else {
+          importedSchema = new Schema();
+          addSchema = true;
+        }
       }
     } else {
       // check schema location, if different, allow merge
@@ -168,12 +186,19 @@ public class ImportUnmarshaller extends ComponentReader {
     schemaUnmarshaller.setSchema(importedSchema);
     
     // parse schema
-    parseSchema(parser, schemaUnmarshaller, uri, schemaLocation, "import");
+    parseSchema(parser, schemaUnmarshaller, uri, content, schemaLocation, "import");
 
     // -- Add schema to list of imported schemas (if not already present)
     if (addSchema) {
       importedSchema.setSchemaLocation(schemaLocation);
       schema.addImportedSchema(importedSchema);
+      if (contentHash != null && state.checkSelfContained(importedSchema)) {
+        Map<String, String> dependencies =
+            state.collectDependencies(schemaLocation, importedSchema);
+        if (dependencies != null) {
+          cache.put(schemaLocation, contentHash, importedSchema, dependencies);
+        }
+      }
     }
   }
 
@@ -35,11 +35,14 @@
 
 package org.exolab.castor.xml.schema.reader;
 
+import java.util.Map;
+
 import org.exolab.castor.net.URILocation;
 import org.exolab.castor.net.URIResolver;
 import org.exolab.castor.xml.AttributeSet;
 import org.exolab.castor.xml.XMLException;
 import org.exolab.castor.xml.schema.Schema;
+import org.exolab.castor.xml.schema.SchemaCache;
 import org.exolab.castor.xml.schema.SchemaContext;
 import org.exolab.castor.xml.schema.SchemaException;
 import org.exolab.castor.xml.schema.SchemaNames;
@@ -89,6 +92,9 @@ public class IncludeUnmarshaller extends ComponentReader {
 
     Schema includedSchema = null;
     boolean alreadyLoaded = false;
+    SchemaCache cache = getSchemaContext().getSchemaCache();
+    String content = null;
+    String contentHash = null;
 
     // -- caching is on
     if (state.cacheIncludedSchemas) {
@@ -103,6 +109,21 @@ public class IncludeUnmarshaller extends ComponentReader {
         schema.cacheIncludedSchema(includedSchema);
         alreadyLoaded = true;
       }
+      // -- look for the same document read before, possibly by another SchemaReader
+      if (!alreadyLoaded && cache != null) {
+        content = readAndHashSchema(uri, include, "include", state);
+        contentHash = state.getContentHash(include);
+        includedSchema = cache.get(include, contentHash, createContentHasher(state));
+        if (includedSchema != null) {
+          checkTargetNamespace(includedSchema, schema);
+          state.adoptCached(includedSchema);
+          schema.cacheIncludedSchema(includedSchema);
+          alreadyLoaded = true;
+        }
+      }
+    } else if (cache != null) {
+      // -- the including schema depends on the content of this document, so record its hash
+      content = readAndHashSchema(uri, include, "include", state);
     }
 
     if (includedSchema == null) {
@@ -129,19 +150,41 @@ public class IncludeUnmarshaller extends ComponentReader {
       schemaUnmarshaller.setSchema(schema);
     }
 
-    parseSchema(parser, schemaUnmarshaller, uri, include, "include");
+    parseSchema(parser, schemaUnmarshaller, uri, content, include, "include");
 
     if (state.cacheIncludedSchemas) {
       String ns = includedSchema.getTargetNamespace();
-      if (ns == null || ns == "")
+      // -- an included schema without target namespace takes the one of the including schema,
+      // -- and can thus not be shared with other including schemas
+      boolean shareable = (ns != null && ns.length() > 0);
+      if (!shareable)
         includedSchema.setTargetNamespace(schema.getTargetNamespace());
-      else if (!ns.equals(schema.getTargetNamespace()))
-        throw new SchemaException(
-            "The target namespace of the included components must be the same as the target namespace of the including schema");
+      else
+        checkTargetNamespace(includedSchema, schema);
       schema.cacheIncludedSchema(includedSchema);
+      if (contentHash != null && shareable && state.checkSelfContained(includedSchema)) {
+        Map<String, String> dependencies = state.collectDependencies(include, includedSchema);
+        if (dependencies != null) {
+          cache.put(include, contentHash, includedSchema, dependencies);
+        }
+      }
     }
   }
 
+  /**
+   * Makes sure the target namespace of an included schema is the one of the including schema.
+   *
+   * @param includedSchema the included schema
+   * @param schema the including schema
+   * @throws SchemaException if the target namespaces differ
+   */
+  private void checkTargetNamespace(final Schema includedSchema, final Schema schema)
+      throws SchemaException {
+    if (!includedSchema.getTargetNamespace().equals(schema.getTargetNamespace()))
+      throw new SchemaException(
+          "The target namespace of the included components must be the same as the target namespace of the including schema");
+  }
+
 
   /**
    * Sets the name of the element that this UnknownUnmarshaller handles
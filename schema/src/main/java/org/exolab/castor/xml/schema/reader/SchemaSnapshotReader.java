@@ -0,0 +1,376 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml.schema.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.exolab.castor.util.Version;
+import org.exolab.castor.xml.schema.Schema;
+import org.exolab.castor.xml.schema.writer.SchemaSnapshotWriter;
+
+/**
+ * Restores a {@link Schema} object model from a binary snapshot written by a
+ * {@link SchemaSnapshotWriter}.
+ * <p>
+ * Only the header of the snapshot is read on construction, so that stale snapshots can be detected
+ * through {@link #isCurrent(String)} cheaply. The object model itself is restored on the first
+ * call to {@link #read()}. Snapshot files are memory-mapped rather than read into the heap.
+ * <p>
+ * As the directory snapshots are kept in may be writable by others, the object model is only
+ * restored from classes of the {@code org.exolab.castor.xml.schema} packages and the few JDK and
+ * Castor classes they are built from; a snapshot referring to any other class is rejected as invalid.
+ *
+ * @since 1.4.2
+ */
+public class SchemaSnapshotReader {
+
+  /**
+   * The package prefix of the classes of the Schema object model.
+   */
+  private static final String SCHEMA_PACKAGE = "org.exolab.castor.xml.schema.";
+
+  /**
+   * The classes outside the Schema packages the object model is built from, besides primitives
+   * and arrays. {@code java.lang.Object} is not serializable itself and only admits the arrays
+   * backing the collections.
+   */
+  private static final Set<String> MODEL_CLASSES = new HashSet<String>(Arrays.asList(
+      "java.lang.Boolean", "java.lang.Byte", "java.lang.Character", "java.lang.Double",
+      "java.lang.Enum", "java.lang.Float", "java.lang.Integer", "java.lang.Long",
+      "java.lang.Number", "java.lang.Object", "java.lang.Short", "java.lang.String",
+      "java.math.BigDecimal", "java.math.BigInteger", "java.util.ArrayList", "java.util.HashMap",
+      "java.util.HashSet", "java.util.Hashtable", "java.util.LinkedHashMap",
+      "java.util.LinkedHashSet", "java.util.LinkedList", "java.util.TreeMap",
+      "java.util.TreeSet", "java.util.Vector", "org.exolab.castor.types.AnyNode",
+      "org.exolab.castor.xml.Namespaces", "org.exolab.castor.xml.Namespaces$Namespace"));
+
+  /**
+   * The snapshot format version found in the header.
+   */
+  private final short _formatVersion;
+
+  /**
+   * The Castor version that wrote the snapshot.
+   */
+  private final String _castorVersion;
+
+  /**
+   * The hash of the source the snapshotted schema has been read from.
+   */
+  private final String _sourceHash;
+
+  /**
+   * The hashes of the other documents the snapshotted schema has been read from, by URI.
+   */
+  private final Map<String, String> _dependencies;
+
+  /**
+   * The checksum of the serialized object model.
+   */
+  private final long _checksum;
+
+  /**
+   * The serialized object model.
+   */
+  private final ByteBuffer _payload;
+
+  /**
+   * The schema restored, once {@link #read()} has been called.
+   */
+  private Schema _schema = null;
+
+  /**
+   * Creates a new SchemaSnapshotReader for the given snapshot file, which is memory-mapped.
+   *
+   * @param file The snapshot file.
+   * @throws IOException If the file cannot be read or is not a schema snapshot.
+   */
+  public SchemaSnapshotReader(final File file) throws IOException {
+    this(map(file));
+  }
+
+  /**
+   * Creates a new SchemaSnapshotReader for a snapshot held in the given buffer.
+   *
+   * @param buffer The buffer holding the snapshot, from its current position on.
+   * @throws IOException If the buffer does not hold a schema snapshot.
+   */
+  public SchemaSnapshotReader(final ByteBuffer buffer) throws IOException {
+    if (buffer == null) {
+      throw new IllegalArgumentException("The argument 'buffer' must not be null.");
+    }
+    try {
+      if (buffer.getInt() != SchemaSnapshotWriter.MAGIC) {
+        throw new IOException("Not a schema snapshot");
+      }
+      _formatVersion = buffer.getShort();
+      _castorVersion = readUTF(buffer);
+      _sourceHash = readUTF(buffer);
+      _dependencies = (_formatVersion < 3) ? Collections.<String, String>emptyMap()
+          : readDependencies(buffer);
+      _checksum = buffer.getLong();
+      int length = buffer.getInt();
+      if (length < 0 || length > buffer.remaining()) {
+        throw new IOException("Truncated schema snapshot");
+      }
+      _payload = buffer.slice();
+      _payload.limit(length);
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated schema snapshot", e);
+    }
+  }
+
+  /**
+   * Returns the snapshot format version found in the header.
+   *
+   * @return The snapshot format version.
+   */
+  public short getFormatVersion() {
+    return _formatVersion;
+  }
+
+  /**
+   * Returns the Castor version that wrote the snapshot.
+   *
+   * @return The Castor version that wrote the snapshot.
+   */
+  public String getCastorVersion() {
+    return _castorVersion;
+  }
+
+  /**
+   * Returns the hash of the source the snapshotted schema has been read from.
+   *
+   * @return The hash of the source, or an empty String if none has been recorded.
+   */
+  public String getSourceHash() {
+    return _sourceHash;
+  }
+
+  /**
+   * Returns the hashes of the other documents the snapshotted schema has been read from.
+   *
+   * @return The hashes of the documents, by URI; empty if none have been recorded.
+   */
+  public Map<String, String> getDependencies() {
+    return _dependencies;
+  }
+
+  /**
+   * Returns true if the snapshot has been written by the current format and Castor version, and
+   * thus can be restored by this reader.
+   *
+   * @return true if the snapshot can be restored.
+   */
+  public boolean isCompatible() {
+    return _formatVersion == SchemaSnapshotWriter.FORMAT_VERSION
+        && Version.VERSION.equals(_castorVersion);
+  }
+
+  /**
+   * Returns true if the snapshot can be restored, and has been written for the source with the
+   * given hash.
+   *
+   * @param sourceHash The hash of the current source of the schema.
+   * @return true if the snapshot is compatible and up to date with the given source.
+   */
+  public boolean isCurrent(final String sourceHash) {
+    return isCompatible() && _sourceHash.equals(sourceHash);
+  }
+
+  /**
+   * Restores the snapshotted schema. Subsequent calls return the same {@link Schema} instance.
+   *
+   * @return The restored {@link Schema}.
+   * @throws IOException If the snapshot is not compatible or is corrupt.
+   */
+  public synchronized Schema read() throws IOException {
+    if (_schema != null) {
+      return _schema;
+    }
+    if (!isCompatible()) {
+      throw new IOException("Schema snapshot written by format " + _formatVersion + " of Castor "
+          + _castorVersion + " cannot be read by Castor " + Version.VERSION);
+    }
+
+    CRC32 checksum = new CRC32();
+    checksum.update(_payload.duplicate());
+    if (checksum.getValue() != _checksum) {
+      throw new IOException("Corrupt schema snapshot");
+    }
+
+    try (ObjectInputStream objects =
+        new SchemaObjectInputStream(new ByteBufferInputStream(_payload.duplicate()))) {
+      _schema = (Schema) objects.readObject();
+    } catch (ClassNotFoundException | ClassCastException e) {
+      throw new IOException("Invalid schema snapshot", e);
+    }
+    return _schema;
+  }
+
+  /**
+   * Maps the given file into memory.
+   *
+   * @param file The file to map.
+   * @return The buffer holding the file content.
+   * @throws IOException If the file cannot be read.
+   */
+  private static ByteBuffer map(final File file) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("The argument 'file' must not be null.");
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /**
+   * Reads a String as written by {@link java.io.DataOutput#writeUTF(String)}.
+   *
+   * @param buffer The buffer to read from.
+   * @return The String read.
+   * @throws IOException If the String is truncated.
+   */
+  private static String readUTF(final ByteBuffer buffer) throws IOException {
+    int length = buffer.getShort() & 0xFFFF;
+    if (length > buffer.remaining()) {
+      throw new IOException("Truncated schema snapshot");
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    // modified UTF-8 and UTF-8 only differ for NUL and supplementary characters
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads the hashes of the documents the snapshotted schema depends on from the given buffer.
+   *
+   * @param buffer The buffer, positioned at the dependency count.
+   * @return The hashes of the documents, by URI.
+   * @throws IOException If the buffer ends before all dependencies have been read.
+   */
+  private static Map<String, String> readDependencies(final ByteBuffer buffer)
+      throws IOException {
+    int count = buffer.getInt();
+    if (count < 0 || count > buffer.remaining()) {
+      throw new IOException("Truncated schema snapshot");
+    }
+    Map<String, String> dependencies = new LinkedHashMap<String, String>();
+    for (int i = 0; i < count; i++) {
+      dependencies.put(readUTF(buffer), readUTF(buffer));
+    }
+    return Collections.unmodifiableMap(dependencies);
+  }
+
+  /**
+   * Returns true if objects of the class with the given name may be restored from a snapshot.
+   *
+   * @param name The name of the class, as found in the snapshot.
+   * @return true if the class is part of the Schema object model.
+   */
+  static boolean isAllowed(final String name) {
+    // -- arrays are allowed for allowed component types
+    String className = name;
+    int dimensions = 0;
+    while (dimensions < className.length() && className.charAt(dimensions) == '[') {
+      ++dimensions;
+    }
+    if (dimensions > 0) {
+      className = className.substring(dimensions);
+      if (className.length() == 1) {
+        return true;
+      }
+      if (!className.startsWith("L") || !className.endsWith(";")) {
+        return false;
+      }
+      className = className.substring(1, className.length() - 1);
+    }
+    return className.startsWith(SCHEMA_PACKAGE) || MODEL_CLASSES.contains(className);
+  }
+
+  /**
+   * An {@link ObjectInputStream} restoring only the classes of the Schema object model.
+   */
+  private static final class SchemaObjectInputStream extends ObjectInputStream {
+
+    SchemaObjectInputStream(final InputStream in) throws IOException {
+      super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(final ObjectStreamClass desc)
+        throws IOException, ClassNotFoundException {
+      if (!isAllowed(desc.getName())) {
+        throw new InvalidClassException(desc.getName(),
+            "Class is not part of the Schema object model");
+      }
+      return super.resolveClass(desc);
+    }
+
+    @Override
+    protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException {
+      throw new InvalidClassException("Proxy classes are not part of the Schema object model");
+    }
+  }
+
+  /**
+   * An {@link InputStream} reading from a {@link ByteBuffer}.
+   */
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer _buffer;
+
+    ByteBufferInputStream(final ByteBuffer buffer) {
+      _buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return _buffer.hasRemaining() ? (_buffer.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!_buffer.hasRemaining()) {
+        return -1;
+      }
+      int count = Math.min(length, _buffer.remaining());
+      _buffer.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return _buffer.remaining();
+    }
+  }
+
+}
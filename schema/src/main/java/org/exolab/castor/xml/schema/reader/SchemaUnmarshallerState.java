@@ -34,9 +34,18 @@
  */
 package org.exolab.castor.xml.schema.reader;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.exolab.castor.xml.schema.Schema;
+import org.exolab.castor.xml.schema.SchemaException;
 
 /**
  * A class used to save state information for the {@link SchemaUnmarshaller}. Roughly speaking, it
@@ -55,6 +64,19 @@ public class SchemaUnmarshallerState {
    */
   boolean cacheIncludedSchemas = false;
 
+  /**
+   * The schemas read so far which do not refer to any schema still being read, and can thus be
+   * shared through a {@link org.exolab.castor.xml.schema.SchemaCache}.
+   */
+  private final Set<Schema> _selfContained =
+      Collections.newSetFromMap(new IdentityHashMap<Schema, Boolean>());
+
+  /**
+   * The hashes of the content of the schema documents read so far, by location, as used by a
+   * {@link org.exolab.castor.xml.schema.SchemaCache}.
+   */
+  private final Map<String, String> _contentHashes = new HashMap<String, String>();
+
   /**
    * Marks the given {@link Schema} as having been processed.
    * 
@@ -99,5 +121,126 @@ public class SchemaUnmarshallerState {
     this.cacheIncludedSchemas = cacheIncludedSchemas;
   }
 
+  /**
+   * Adopts the given {@link Schema}, a copy taken from a schema cache, into the current read. The
+   * schemas it imports are marked as processed, or replaced by the schemas already read for the
+   * same location, so that every schema document is represented by a single {@link Schema}.
+   *
+   * @param schema the {@link Schema} taken from a schema cache.
+   * @throws SchemaException if an imported schema cannot be replaced.
+   */
+  void adoptCached(Schema schema) throws SchemaException {
+    _selfContained.add(schema);
+    for (Schema imported : new ArrayList<Schema>(schema.getImportedSchema())) {
+      String location = imported.getSchemaLocation();
+      if (location == null) {
+        continue;
+      }
+      Schema processed = _processed.get(location);
+      if (processed == null) {
+        _processed.put(location, imported);
+        adoptCached(imported);
+      } else if (processed != imported && _selfContained.contains(processed)) {
+        schema.removeImportedSchema(imported);
+        schema.addImportedSchema(processed);
+      }
+    }
+  }
+
+  /**
+   * Records the hash of the content of the schema document at the given location.
+   *
+   * @param schemaLocation the location of the schema document.
+   * @param contentHash the hash of its content.
+   */
+  void recordContentHash(String schemaLocation, String contentHash) {
+    _contentHashes.put(schemaLocation, contentHash);
+  }
+
+  /**
+   * Returns the hash recorded for the content of the schema document at the given location.
+   *
+   * @param schemaLocation the location of the schema document.
+   * @return the hash of its content, or null if none has been recorded.
+   */
+  String getContentHash(String schemaLocation) {
+    return _contentHashes.get(schemaLocation);
+  }
+
+  /**
+   * Collects the content hashes of all schema documents the given {@link Schema} has been read
+   * from, apart from the document at the given location itself: the documents it includes, and
+   * the documents of the schemas it imports or includes separately, transitively.
+   *
+   * @param schemaLocation the location of the schema document the schema has been read from.
+   * @param schema the {@link Schema} read.
+   * @return the content hashes by location, or null if the hash of any document is unknown.
+   */
+  Map<String, String> collectDependencies(String schemaLocation, Schema schema) {
+    Map<String, String> dependencies = new LinkedHashMap<String, String>();
+    Set<Schema> visited = Collections.newSetFromMap(new IdentityHashMap<Schema, Boolean>());
+    if (!collectDependencies(schema, visited, dependencies)) {
+      return null;
+    }
+    dependencies.remove(schemaLocation);
+    return dependencies;
+  }
+
+  private boolean collectDependencies(Schema schema, Set<Schema> visited,
+      Map<String, String> dependencies) {
+    if (!visited.add(schema)) {
+      return true;
+    }
+    List<String> locations = new ArrayList<String>(schema.getIncludes());
+    if (schema.getSchemaLocation() != null) {
+      locations.add(schema.getSchemaLocation());
+    }
+    for (String location : locations) {
+      String contentHash = _contentHashes.get(location);
+      if (contentHash == null) {
+        return false;
+      }
+      dependencies.put(location, contentHash);
+    }
+    for (Schema imported : schema.getImportedSchema()) {
+      if (!collectDependencies(imported, visited, dependencies)) {
+        return false;
+      }
+    }
+    for (Schema included : schema.getCachedIncludedSchemas()) {
+      if (!collectDependencies(included, visited, dependencies)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks whether the given, completely read {@link Schema} refers to schemas still being read
+   * (the schemas importing it, in case of cyclic imports), and marks it as self-contained if not.
+   * Only self-contained schemas may be added to a schema cache, as only they can be shared
+   * between reads.
+   *
+   * @param schema the {@link Schema} to check.
+   * @return true if the given {@link Schema} is self-contained.
+   */
+  boolean checkSelfContained(Schema schema) {
+    if (!schema.getRedefineSchema().isEmpty()) {
+      return false;
+    }
+    for (Schema imported : schema.getImportedSchema()) {
+      if (imported != schema && !_selfContained.contains(imported)) {
+        return false;
+      }
+    }
+    for (Schema included : schema.getCachedIncludedSchemas()) {
+      if (included != schema && !_selfContained.contains(included)) {
+        return false;
+      }
+    }
+    _selfContained.add(schema);
+    return true;
+  }
+
 
 }
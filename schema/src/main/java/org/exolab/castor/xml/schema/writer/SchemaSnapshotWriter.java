@@ -0,0 +1,141 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml.schema.writer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.exolab.castor.util.Version;
+import org.exolab.castor.xml.schema.Schema;
+
+/**
+ * Writes a binary snapshot of a read and resolved {@link Schema} object model, including its
+ * imported and included schemas, so that it can be restored by a
+ * {@link org.exolab.castor.xml.schema.reader.SchemaSnapshotReader} without parsing the XML Schema
+ * documents again.
+ * <p>
+ * A snapshot consists of a header, holding the snapshot format version, the Castor version that
+ * wrote it, an optional hash of the source the schema has been read from and the hashes of the
+ * other documents it depends on, followed by the serialized object model and its checksum.
+ * Snapshots written by another format or Castor version, or for another source, are treated as
+ * stale by the reader.
+ * <p>
+ * Annotations are written with the schema, so application information attached to them through
+ * natures must be serializable.
+ *
+ * @since 1.4.2
+ */
+public class SchemaSnapshotWriter {
+
+  /**
+   * The magic number a schema snapshot starts with.
+   */
+  public static final int MAGIC = 0xCA570C55;
+
+  /**
+   * The version of the snapshot format written.
+   */
+  public static final short FORMAT_VERSION = 3;
+
+  /**
+   * The stream the snapshot is written to.
+   */
+  private final OutputStream _out;
+
+  /**
+   * The hash of the source the schema has been read from.
+   */
+  private String _sourceHash = "";
+
+  /**
+   * The hashes of the other documents the schema has been read from, by URI.
+   */
+  private Map<String, String> _dependencies = Collections.emptyMap();
+
+  /**
+   * Creates a new SchemaSnapshotWriter for the given stream.
+   *
+   * @param out The stream to write the snapshot to; not closed by this writer.
+   */
+  public SchemaSnapshotWriter(final OutputStream out) {
+    if (out == null) {
+      throw new IllegalArgumentException("The argument 'out' must not be null.");
+    }
+    _out = out;
+  }
+
+  /**
+   * Sets the hash of the source the schema has been read from, such as the content hash computed by
+   * {@link org.exolab.castor.xml.schema.SchemaCacheImpl#hash(String)}. A reader can compare it to
+   * the hash of the current source to detect stale snapshots.
+   *
+   * @param sourceHash The hash of the source of the schema, or null for none.
+   */
+  public void setSourceHash(final String sourceHash) {
+    _sourceHash = (sourceHash == null) ? "" : sourceHash;
+  }
+
+  /**
+   * Sets the hashes of the other documents the schema has been read from, such as the documents it
+   * imports or includes, so that a reader can detect a snapshot made stale by a change to any of
+   * them.
+   *
+   * @param dependencies The hashes of the documents, by URI, or null for none.
+   */
+  public void setDependencies(final Map<String, String> dependencies) {
+    _dependencies = (dependencies == null) ? Collections.<String, String>emptyMap()
+        : new LinkedHashMap<String, String>(dependencies);
+  }
+
+  /**
+   * Writes a snapshot of the given schema.
+   *
+   * @param schema The schema to write.
+   * @throws IOException If the snapshot cannot be written, or if the object model contains
+   *         objects that cannot be serialized.
+   */
+  public void write(final Schema schema) throws IOException {
+    if (schema == null) {
+      throw new IllegalArgumentException("The argument 'schema' must not be null.");
+    }
+
+    ByteArrayOutputStream payload = new ByteArrayOutputStream(64 * 1024);
+    try (ObjectOutputStream objects = new ObjectOutputStream(payload)) {
+      objects.writeObject(schema);
+    }
+    CRC32 checksum = new CRC32();
+    checksum.update(payload.toByteArray());
+
+    DataOutputStream data = new DataOutputStream(_out);
+    data.writeInt(MAGIC);
+    data.writeShort(FORMAT_VERSION);
+    data.writeUTF(Version.VERSION);
+    data.writeUTF(_sourceHash);
+    data.writeInt(_dependencies.size());
+    for (Map.Entry<String, String> dependency : _dependencies.entrySet()) {
+      data.writeUTF(dependency.getKey());
+      data.writeUTF(dependency.getValue());
+    }
+    data.writeLong(checksum.getValue());
+    data.writeInt(payload.size());
+    payload.writeTo(data);
+    data.flush();
+  }
+
+}
@@ -0,0 +1,195 @@
+package org.exolab.castor.xml.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link SchemaCacheImpl}.
+ */
+public class SchemaCacheImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Hasher for entries without dependencies.
+     */
+    private static final SchemaCache.ContentHasher NO_DEPENDENCIES = uri -> null;
+
+    private static Schema createSchema(final String targetNamespace) {
+        Schema schema = new Schema();
+        schema.setTargetNamespace(targetNamespace);
+        return schema;
+    }
+
+    private static void put(final SchemaCache cache, final String uri, final String contentHash,
+            final Schema schema) {
+        cache.put(uri, contentHash, schema, Collections.<String, String>emptyMap());
+    }
+
+    @Test
+    public void should_ReturnCopyOfCachedSchema_When_ContentHashMatches() {
+        SchemaCacheImpl cache = new SchemaCacheImpl();
+        Schema schema = createSchema("urn:test:common");
+        put(cache, "file:/common.xsd", "abc", schema);
+
+        Schema cached = cache.get("file:/common.xsd", "abc", NO_DEPENDENCIES);
+
+        assertNotNull("Cached schema should be returned", cached);
+        assertNotSame("A copy of the cached schema should be returned", schema, cached);
+        assertEquals("Copy should have the same content", "urn:test:common",
+            cached.getTargetNamespace());
+    }
+
+    @Test
+    public void should_NotShareChanges_When_CachedSchemaIsModified() {
+        SchemaCacheImpl cache = new SchemaCacheImpl();
+        Schema schema = createSchema("urn:test:common");
+        put(cache, "file:/common.xsd", "abc", schema);
+        schema.setTargetNamespace("urn:test:changed-after-put");
+        cache.get("file:/common.xsd", "abc", NO_DEPENDENCIES).setTargetNamespace("urn:test:changed");
+
+        Schema cached = cache.get("file:/common.xsd", "abc", NO_DEPENDENCIES);
+
+        assertEquals("Cached schema should not be affected by modifications", "urn:test:common",
+            cached.getTargetNamespace());
+    }
+
+    @Test
+    public void should_ReturnNull_When_ContentHashDiffers() {
+        SchemaCacheImpl cache = new SchemaCacheImpl();
+        put(cache, "file:/common.xsd", "abc", new Schema());
+
+        assertNull("Changed document should not be served",
+            cache.get("file:/common.xsd", "def", NO_DEPENDENCIES));
+        assertNull("Unknown document should not be served",
+            cache.get("file:/other.xsd", "abc", NO_DEPENDENCIES));
+    }
+
+    @Test
+    public void should_ReturnNull_When_DependencyChanged() {
+        SchemaCacheImpl cache = new SchemaCacheImpl();
+        cache.put("file:/common.xsd", "abc", new Schema(),
+            Collections.singletonMap("file:/imported.xsd", "1"));
+        Map<String, String> current = new HashMap<String, String>();
+
+        current.put("file:/imported.xsd", "1");
+        assertNotNull("Unchanged dependency should be served",
+            cache.get("file:/common.xsd", "abc", current::get));
+        current.put("file:/imported.xsd", "2");
+        assertNull("Changed dependency should not be served",
+            cache.get("file:/common.xsd", "abc", current::get));
+        current.remove("file:/imported.xsd");
+        assertNull("Unreadable dependency should not be served",
+            cache.get("file:/common.xsd", "abc", current::get));
+    }
+
+    @Test
+    public void should_ReplaceEntry_When_SameUriIsPutAgain() {
+        SchemaCacheImpl cache = new SchemaCacheImpl();
+        put(cache, "file:/common.xsd", "abc", new Schema());
+        put(cache, "file:/common.xsd", "def", createSchema("urn:test:changed"));
+
+        assertEquals("One entry per document should be kept", 1, cache.size());
+        assertNull("Previous content should be dropped",
+            cache.get("file:/common.xsd", "abc", NO_DEPENDENCIES));
+        assertEquals("Current content should be served", "urn:test:changed",
+            cache.get("file:/common.xsd", "def", NO_DEPENDENCIES).getTargetNamespace());
+    }
+
+    @Test
+    public void should_EvictLeastRecentlyUsed_When_MaximumSizeIsExceeded() {
+        SchemaCacheImpl cache = new SchemaCacheImpl(2);
+        put(cache, "file:/first.xsd", "1", new Schema());
+        put(cache, "file:/second.xsd", "2", new Schema());
+        cache.get("file:/first.xsd", "1", NO_DEPENDENCIES);
+        put(cache, "file:/third.xsd", "3", new Schema());
+
+        assertEquals("Cache size should be bounded", 2, cache.size());
+        assertNotNull("Recently used entry should be kept",
+            cache.get("file:/first.xsd", "1", NO_DEPENDENCIES));
+        assertNull("Least recently used entry should be evicted",
+            cache.get("file:/second.xsd", "2", NO_DEPENDENCIES));
+    }
+
+    @Test
+    public void should_RemoveAllEntries_When_Cleared() {
+        SchemaCacheImpl cache = new SchemaCacheImpl();
+        put(cache, "file:/common.xsd", "abc", new Schema());
+        cache.clear();
+
+        assertEquals("Cache should be empty", 0, cache.size());
+    }
+
+    @Test
+    public void should_RestoreSchemaFromDirectory_When_NotInMemory() throws Exception {
+        Schema schema = createSchema("urn:test:common");
+        SchemaCacheImpl writing = new SchemaCacheImpl();
+        writing.setDirectory(folder.getRoot());
+        put(writing, "file:/common.xsd", "abc", schema);
+
+        SchemaCacheImpl reading = new SchemaCacheImpl();
+        reading.setDirectory(folder.getRoot());
+        Schema restored = reading.get("file:/common.xsd", "abc", NO_DEPENDENCIES);
+
+        assertNotNull("Schema should be restored from its snapshot", restored);
+        assertNotSame("Restored schema should be a copy", schema, restored);
+        assertEquals("Restored schema should have the same content", "urn:test:common",
+            restored.getTargetNamespace());
+        assertEquals("Restored schema should be kept in memory", 1, reading.size());
+    }
+
+    @Test
+    public void should_CheckDependencies_When_SchemaIsRestoredFromDirectory() throws Exception {
+        SchemaCacheImpl writing = new SchemaCacheImpl();
+        writing.setDirectory(folder.getRoot());
+        writing.put("file:/common.xsd", "abc", new Schema(),
+            Collections.singletonMap("file:/imported.xsd", "1"));
+
+        SchemaCacheImpl reading = new SchemaCacheImpl();
+        reading.setDirectory(folder.getRoot());
+
+        assertNull("Changed dependency should not be restored",
+            reading.get("file:/common.xsd", "abc", uri -> "2"));
+        assertNotNull("Unchanged dependency should be restored",
+            reading.get("file:/common.xsd", "abc", uri -> "1"));
+    }
+
+    @Test
+    public void should_IgnoreSnapshot_When_ContentHashDiffers() throws Exception {
+        SchemaCacheImpl writing = new SchemaCacheImpl();
+        writing.setDirectory(folder.getRoot());
+        put(writing, "file:/common.xsd", "abc", new Schema());
+
+        SchemaCacheImpl reading = new SchemaCacheImpl();
+        reading.setDirectory(folder.getRoot());
+
+        assertNull("Stale snapshot should not be restored",
+            reading.get("file:/common.xsd", "def", NO_DEPENDENCIES));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_ThrowException_When_MaximumSizeIsNotPositive() {
+        new SchemaCacheImpl(0);
+    }
+
+    @Test
+    public void should_HashContentStably_When_ContentIsEqual() {
+        assertEquals("Equal content should hash equally",
+            SchemaCacheImpl.hash("<schema/>"), SchemaCacheImpl.hash("<schema/>"));
+        assertNotEquals("Different content should hash differently",
+            SchemaCacheImpl.hash("<schema/>"), SchemaCacheImpl.hash("<schema />"));
+        assertEquals("Hash should be hex encoded SHA-256", 64, SchemaCacheImpl.hash("").length());
+    }
+}
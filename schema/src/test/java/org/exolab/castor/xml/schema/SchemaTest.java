@@ -0,0 +1,126 @@
+package org.exolab.castor.xml.schema;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+/**
+ * Tests for the collections and import lookups of {@link Schema}.
+ */
+public class SchemaTest {
+
+    private static Schema schema(String targetNamespace) {
+        Schema schema = new Schema();
+        schema.setTargetNamespace(targetNamespace);
+        return schema;
+    }
+
+    @Test
+    public void should_FindTransitiveImport_When_LookedUpByPrefix() throws Exception {
+        Schema root = schema("urn:root");
+        Schema middle = schema("urn:middle");
+        Schema leaf = schema("urn:leaf");
+        leaf.addComplexType(leaf.createComplexType("LeafType"));
+        middle.addImportedSchema(leaf);
+        root.addImportedSchema(middle);
+        root.addNamespace("l", "urn:leaf");
+
+        assertSame(leaf, root.getImportedSchema("urn:leaf"));
+        assertSame(leaf.getComplexType("LeafType"), root.getComplexType("l:LeafType"));
+    }
+
+    @Test
+    public void should_SeeImportChange_When_IndexAlreadyBuilt() throws Exception {
+        Schema root = schema("urn:root");
+        Schema middle = schema("urn:middle");
+        root.addImportedSchema(middle);
+        assertNull(root.getImportedSchema("urn:leaf"));
+
+        Schema leaf = schema("urn:leaf");
+        middle.addImportedSchema(leaf);
+        assertSame(leaf, root.getImportedSchema("urn:leaf"));
+
+        middle.removeImportedSchema(leaf);
+        assertNull(root.getImportedSchema("urn:leaf"));
+    }
+
+    @Test
+    public void should_PreferShallowerImport_When_NamespaceImportedTwice() throws Exception {
+        Schema root = schema("urn:root");
+        Schema first = schema("urn:first");
+        Schema second = schema("urn:second");
+        Schema deep = schema("urn:shared");
+        Schema direct = schema("urn:shared");
+        first.addImportedSchema(deep);
+        root.addImportedSchema(first);
+        root.addImportedSchema(second);
+        second.addImportedSchema(direct);
+
+        assertSame(deep, root.getImportedSchema("urn:shared"));
+    }
+
+    @Test
+    public void should_TerminateLookup_When_ImportsAreCyclic() throws Exception {
+        Schema a = schema("urn:a");
+        Schema b = schema("urn:b");
+        Schema c = schema("urn:c");
+        a.addImportedSchema(b);
+        b.addImportedSchema(c);
+        c.addImportedSchema(b);
+
+        assertNull(a.getImportedSchema("urn:missing"));
+        assertSame(b, c.getImportedSchema("urn:b"));
+    }
+
+    @Test
+    public void should_ResolveDeferredType_When_ListingSimpleTypes() throws Exception {
+        Schema schema = new Schema("xs", Schema.DEFAULT_SCHEMA_NS);
+        schema.setTargetNamespace("urn:deferred");
+        schema.addNamespace("", "urn:deferred");
+        SimpleType code = schema.createSimpleType("code", "base", "restriction");
+        assertTrue(code instanceof DeferredSimpleType);
+        schema.addSimpleType(code);
+        schema.addSimpleType(schema.createSimpleType("base", "xs:string", "restriction"));
+
+        Iterator<SimpleType> types = schema.getSimpleTypes().iterator();
+        SimpleType resolved = types.next();
+
+        assertFalse(resolved instanceof DeferredSimpleType);
+        assertEquals("code", resolved.getName());
+        assertSame(schema, resolved.getParent());
+        assertSame(resolved, schema.getSimpleTypes().iterator().next());
+        assertSame(resolved, schema.getSimpleType("code", "urn:deferred"));
+        assertEquals("base", types.next().getName());
+    }
+
+    @Test
+    public void should_KeepDeclarationOrder_When_ListingComplexTypes() throws Exception {
+        Schema schema = schema("urn:order");
+        String[] names = {"Zeta", "Alpha", "Mu", "Beta"};
+        for (String name : names) {
+            schema.addComplexType(schema.createComplexType(name));
+        }
+
+        Iterator<ComplexType> types = schema.getComplexTypes().iterator();
+        for (String name : names) {
+            assertEquals(name, types.next().getName());
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void should_RejectModification_When_ChangingReturnedCollection() throws Exception {
+        Schema schema = schema("urn:readonly");
+        ComplexType type = schema.createComplexType("Type");
+        schema.addComplexType(type);
+
+        Collection<ComplexType> types = schema.getComplexTypes();
+        types.remove(type);
+    }
+}
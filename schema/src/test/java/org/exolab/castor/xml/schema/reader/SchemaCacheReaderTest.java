@@ -0,0 +1,209 @@
+package org.exolab.castor.xml.schema.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.exolab.castor.xml.schema.Schema;
+import org.exolab.castor.xml.schema.SchemaCache;
+import org.exolab.castor.xml.schema.SchemaCacheImpl;
+import org.exolab.castor.xml.schema.SchemaContext;
+import org.exolab.castor.xml.schema.SchemaContextImpl;
+import org.exolab.castor.xml.schema.SimpleType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests sharing imported schemas between {@link SchemaReader} instances through a
+ * {@link SchemaCache}.
+ */
+public class SchemaCacheReaderTest {
+
+    private static final String COMMON_NS = "urn:test:common";
+
+    private static final String BASE_NS = "urn:test:base";
+
+    /**
+     * Counts the schemas served from the cache.
+     */
+    private static class CountingSchemaCache extends SchemaCacheImpl {
+
+        private int hits;
+
+        @Override
+        public Schema get(final String uri, final String contentHash, final ContentHasher hasher) {
+            Schema schema = super.get(uri, contentHash, hasher);
+            if (schema != null) {
+                hits++;
+            }
+            return schema;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File writeSchema(final String name, final String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private File writeCommon(final String typeName) throws IOException {
+        return writeSchema("common.xsd",
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='" + COMMON_NS
+                + "'><xs:simpleType name='" + typeName + "'>"
+                + "<xs:restriction base='xs:string'/></xs:simpleType></xs:schema>");
+    }
+
+    private File writeCommonImportingBase() throws IOException {
+        return writeSchema("common.xsd",
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' xmlns:b='" + BASE_NS
+                + "' targetNamespace='" + COMMON_NS + "'>"
+                + "<xs:import namespace='" + BASE_NS + "' schemaLocation='base.xsd'/>"
+                + "<xs:simpleType name='code'><xs:restriction base='b:base'/></xs:simpleType>"
+                + "</xs:schema>");
+    }
+
+    private File writeBase(final String extraTypeName) throws IOException {
+        return writeSchema("base.xsd",
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='" + BASE_NS
+                + "'><xs:simpleType name='base'><xs:restriction base='xs:string'/></xs:simpleType>"
+                + "<xs:simpleType name='" + extraTypeName + "'>"
+                + "<xs:restriction base='xs:string'/></xs:simpleType></xs:schema>");
+    }
+
+    private File writeImporting(final String name) throws IOException {
+        return writeSchema(name,
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' xmlns:c='" + COMMON_NS
+                + "' targetNamespace='urn:test:" + name + "'>"
+                + "<xs:import namespace='" + COMMON_NS + "' schemaLocation='common.xsd'/>"
+                + "<xs:element name='code' type='c:code'/></xs:schema>");
+    }
+
+    private Schema read(final File file, final SchemaContext context) throws IOException {
+        SchemaReader reader = new SchemaReader();
+        reader.setSchemaContext(context);
+        reader.setInputSource(new InputSource(file.toURI().toString()));
+        return reader.read();
+    }
+
+    private SchemaContext createContext(final SchemaCache cache) {
+        SchemaContext context = new SchemaContextImpl();
+        context.setSchemaCache(cache);
+        return context;
+    }
+
+    @Test
+    public void should_ReuseImportedSchema_When_ReadersShareCache() throws Exception {
+        writeCommon("code");
+        File first = writeImporting("first.xsd");
+        File second = writeImporting("second.xsd");
+        CountingSchemaCache cache = new CountingSchemaCache();
+
+        Schema firstCommon = read(first, createContext(cache)).getImportedSchema(COMMON_NS);
+        Schema secondCommon = read(second, createContext(cache)).getImportedSchema(COMMON_NS);
+
+        assertNotNull("Imported schema should be read", firstCommon);
+        assertEquals("Imported schema should be taken from the cache", 1, cache.hits);
+        assertNotSame("Every reader should get its own copy", firstCommon, secondCommon);
+        assertNotNull("Copy should hold the imported type",
+            secondCommon.getSimpleType("code", COMMON_NS));
+        assertEquals("Only the imported schema should be cached", 1, cache.size());
+    }
+
+    @Test
+    public void should_NotAffectCache_When_ImportedSchemaIsModified() throws Exception {
+        writeCommon("code");
+        File first = writeImporting("first.xsd");
+        SchemaCacheImpl cache = new SchemaCacheImpl();
+        Schema firstCommon = read(first, createContext(cache)).getImportedSchema(COMMON_NS);
+
+        SimpleType added = firstCommon.createSimpleType("added",
+            firstCommon.getSimpleType("code", COMMON_NS));
+        firstCommon.addSimpleType(added);
+        Schema secondCommon = read(first, createContext(cache)).getImportedSchema(COMMON_NS);
+
+        assertNull("Modification should not reach the cache",
+            secondCommon.getSimpleType("added", COMMON_NS));
+    }
+
+    @Test
+    public void should_ReadImportedSchemaAgain_When_ContentChanged() throws Exception {
+        writeCommon("code");
+        File first = writeImporting("first.xsd");
+        SchemaContext context = new SchemaContextImpl();
+        context.setSchemaCache(new SchemaCacheImpl());
+
+        Schema before = read(first, context).getImportedSchema(COMMON_NS);
+        writeCommon("other");
+        writeSchema("changed.xsd",
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:test:changed'>"
+                + "<xs:import namespace='" + COMMON_NS + "' schemaLocation='common.xsd'/></xs:schema>");
+        Schema after =
+            read(new File(folder.getRoot(), "changed.xsd"), context).getImportedSchema(COMMON_NS);
+
+        assertNotSame("Changed schema should be read again", before, after);
+        assertNotNull("Changed schema should contain the new type",
+            after.getSimpleType("other", COMMON_NS));
+    }
+
+    @Test
+    public void should_ReadImportedSchemaAgain_When_TransitiveImportChanged() throws Exception {
+        writeBase("first");
+        writeCommonImportingBase();
+        File first = writeImporting("first.xsd");
+        CountingSchemaCache cache = new CountingSchemaCache();
+        read(first, createContext(cache));
+
+        writeBase("second");
+        Schema common = read(first, createContext(cache)).getImportedSchema(COMMON_NS);
+        Schema base = common.getImportedSchema(BASE_NS);
+
+        assertEquals("Schemas depending on the changed document should not be served", 0,
+            cache.hits);
+        assertNotNull("Changed import should contain the new type",
+            base.getSimpleType("second", BASE_NS));
+        assertNull("Changed import should not contain the old type",
+            base.getSimpleType("first", BASE_NS));
+    }
+
+    @Test
+    public void should_ShareImportedSchemaWithinRead_When_CachedSchemaImportsIt() throws Exception {
+        writeBase("extra");
+        writeCommonImportingBase();
+        CountingSchemaCache cache = new CountingSchemaCache();
+        read(writeImporting("first.xsd"), createContext(cache));
+
+        File both = writeSchema("both.xsd",
+            "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:test:both'>"
+                + "<xs:import namespace='" + COMMON_NS + "' schemaLocation='common.xsd'/>"
+                + "<xs:import namespace='" + BASE_NS + "' schemaLocation='base.xsd'/></xs:schema>");
+        Schema schema = read(both, createContext(cache));
+
+        assertEquals("Imported schema should be taken from the cache", 1, cache.hits);
+        assertSame("Each document should be represented by a single schema",
+            schema.getImportedSchema(BASE_NS),
+            schema.getImportedSchema(COMMON_NS).getImportedSchema(BASE_NS));
+    }
+
+    @Test
+    public void should_NotShareImportedSchema_When_NoCacheIsSet() throws Exception {
+        writeCommon("code");
+        File first = writeImporting("first.xsd");
+
+        Schema firstCommon = read(first, new SchemaContextImpl()).getImportedSchema(COMMON_NS);
+        Schema secondCommon = read(first, new SchemaContextImpl()).getImportedSchema(COMMON_NS);
+
+        assertNotSame("Imported schema should be read for each reader", firstCommon, secondCommon);
+    }
+}
@@ -0,0 +1,220 @@
+package org.exolab.castor.xml.schema.reader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.zip.CRC32;
+
+import org.exolab.castor.util.Version;
+
+import org.exolab.castor.xml.schema.ComplexType;
+import org.exolab.castor.xml.schema.ContentType;
+import org.exolab.castor.xml.schema.ElementDecl;
+import org.exolab.castor.xml.schema.Facet;
+import org.exolab.castor.xml.schema.Form;
+import org.exolab.castor.xml.schema.Group;
+import org.exolab.castor.xml.schema.Schema;
+import org.exolab.castor.xml.schema.SchemaCacheImpl;
+import org.exolab.castor.xml.schema.SimpleType;
+import org.exolab.castor.xml.schema.writer.SchemaSnapshotWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests writing and restoring {@link Schema} snapshots.
+ */
+public class SchemaSnapshotTest {
+
+    private static final String SCHEMA =
+        "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' xmlns='urn:test'"
+            + " targetNamespace='urn:test' elementFormDefault='qualified'>"
+            + "<xs:simpleType name='code'><xs:restriction base='xs:string'>"
+            + "<xs:maxLength value='8'/></xs:restriction></xs:simpleType>"
+            + "<xs:complexType name='item' mixed='true'><xs:sequence>"
+            + "<xs:element name='code' type='code'/></xs:sequence></xs:complexType>"
+            + "<xs:element name='item' type='item'><xs:annotation>"
+            + "<xs:documentation>An item.</xs:documentation></xs:annotation></xs:element>"
+            + "</xs:schema>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Schema readSchema() throws IOException {
+        SchemaReader reader = new SchemaReader(new InputSource(new StringReader(SCHEMA)));
+        return reader.read();
+    }
+
+    private ByteBuffer write(final Schema schema, final String sourceHash) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SchemaSnapshotWriter writer = new SchemaSnapshotWriter(out);
+        writer.setSourceHash(sourceHash);
+        writer.write(schema);
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private ByteBuffer writeForeign(final Object object) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (ObjectOutputStream objects = new ObjectOutputStream(payload)) {
+            objects.writeObject(object);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(payload.toByteArray());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(SchemaSnapshotWriter.MAGIC);
+        data.writeShort(SchemaSnapshotWriter.FORMAT_VERSION);
+        data.writeUTF(Version.VERSION);
+        data.writeUTF("");
+        data.writeInt(0);
+        data.writeLong(checksum.getValue());
+        data.writeInt(payload.size());
+        payload.writeTo(data);
+        data.flush();
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    @Test
+    public void should_RestoreSchemaComponents_When_SnapshotIsRead() throws Exception {
+        Schema restored = new SchemaSnapshotReader(write(readSchema(), "abc")).read();
+
+        assertEquals("Target namespace should be restored", "urn:test",
+            restored.getTargetNamespace());
+        assertSame("Form should be restored as constant", Form.Qualified,
+            restored.getElementFormDefault());
+
+        ComplexType item = restored.getComplexType("item");
+        assertNotNull("Complex type should be restored", item);
+        assertSame("Content type should be restored as constant", ContentType.mixed,
+            item.getContentType());
+        ElementDecl code = item.getElementDecl("code");
+        assertNotNull("Local element should be restored", code);
+
+        SimpleType codeType = restored.getSimpleType("code");
+        assertSame("References should be restored", codeType, code.getType());
+        Facet maxLength = codeType.getFacet(Facet.MAX_LENGTH);
+        assertNotNull("Facet should be restored", maxLength);
+        assertEquals("Facet value should be restored", 8, maxLength.toInt());
+
+        ElementDecl element = restored.getElementDecl("item");
+        assertTrue("Annotations should be restored", element.getAnnotations().hasMoreElements());
+    }
+
+    @Test
+    public void should_AllowAddingParticles_When_SchemaIsRestored() throws Exception {
+        Schema restored = new SchemaSnapshotReader(write(readSchema(), "")).read();
+        ComplexType item = restored.getComplexType("item");
+        Group sequence = (Group) item.getParticle(0);
+
+        ElementDecl added = new ElementDecl(restored, "added");
+        sequence.addElementDecl(added);
+
+        assertEquals("Element should be appended to restored group", 2,
+            sequence.getParticleCount());
+        assertSame("Element should be added to restored type", added, item.getElementDecl("added"));
+    }
+
+    @Test
+    public void should_ReturnSameSchema_When_ReadTwice() throws Exception {
+        SchemaSnapshotReader reader = new SchemaSnapshotReader(write(readSchema(), ""));
+
+        assertSame("Restored schema should be kept", reader.read(), reader.read());
+    }
+
+    @Test
+    public void should_DetectStaleSnapshot_When_SourceHashDiffers() throws Exception {
+        SchemaSnapshotReader reader = new SchemaSnapshotReader(write(readSchema(), "abc"));
+
+        assertTrue("Snapshot should be compatible", reader.isCompatible());
+        assertTrue("Snapshot should be current for its source", reader.isCurrent("abc"));
+        assertFalse("Snapshot should be stale for another source", reader.isCurrent("def"));
+        assertEquals("Source hash should be recorded", "abc", reader.getSourceHash());
+    }
+
+    @Test
+    public void should_RecordDependencies_When_SnapshotIsWritten() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SchemaSnapshotWriter writer = new SchemaSnapshotWriter(out);
+        writer.setSourceHash("abc");
+        writer.setDependencies(Collections.singletonMap("file:/imported.xsd", "def"));
+        writer.write(readSchema());
+
+        SchemaSnapshotReader reader = new SchemaSnapshotReader(ByteBuffer.wrap(out.toByteArray()));
+
+        assertEquals("Dependencies should be recorded",
+            Collections.singletonMap("file:/imported.xsd", "def"), reader.getDependencies());
+        assertTrue("Snapshot should be current for its source", reader.isCurrent("abc"));
+        assertNotNull("Schema should be restored", reader.read());
+    }
+
+    @Test(expected = IOException.class)
+    public void should_ThrowException_When_BufferIsNotASnapshot() throws Exception {
+        new SchemaSnapshotReader(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+    @Test(expected = IOException.class)
+    public void should_ThrowException_When_SnapshotIsCorrupt() throws Exception {
+        ByteBuffer snapshot = write(readSchema(), "");
+        int last = snapshot.limit() - 1;
+        snapshot.put(last, (byte) (snapshot.get(last) ^ 0xFF));
+
+        new SchemaSnapshotReader(snapshot).read();
+    }
+
+    @Test
+    public void should_RejectSnapshot_When_ItHoldsForeignClass() throws Exception {
+        SchemaSnapshotReader reader = new SchemaSnapshotReader(writeForeign(new File("foreign")));
+        assertTrue("Tampered snapshot should pass the header checks", reader.isCompatible());
+
+        try {
+            reader.read();
+            fail("Foreign class should be rejected");
+        } catch (InvalidClassException e) {
+            assertEquals("Rejected class should be reported", "java.io.File", e.classname);
+        }
+    }
+
+    @Test
+    public void should_IgnoreSnapshot_When_CachedFileHoldsForeignClass() throws Exception {
+        SchemaCacheImpl cache = new SchemaCacheImpl();
+        cache.setDirectory(folder.getRoot());
+        cache.put("urn:test", "abc", readSchema(), Collections.<String, String>emptyMap());
+        File[] snapshots = folder.getRoot().listFiles();
+        assertEquals("Snapshot should be written", 1, snapshots.length);
+
+        ByteBuffer foreign = writeForeign(new File("foreign"));
+        Files.write(snapshots[0].toPath(), foreign.array());
+        SchemaCacheImpl restarted = new SchemaCacheImpl();
+        restarted.setDirectory(folder.getRoot());
+
+        assertNull("Tampered snapshot should not be restored", restarted.get("urn:test", "", uri -> null));
+    }
+
+    @Test
+    public void should_AllowOnlySchemaModel_When_ClassNamesAreChecked() {
+        assertTrue(SchemaSnapshotReader.isAllowed(Schema.class.getName()));
+        assertTrue(SchemaSnapshotReader.isAllowed("java.util.ArrayList"));
+        assertTrue(SchemaSnapshotReader.isAllowed("[I"));
+        assertTrue(SchemaSnapshotReader.isAllowed("[[Lorg.exolab.castor.xml.schema.Facet;"));
+        assertFalse(SchemaSnapshotReader.isAllowed("java.io.File"));
+        assertFalse(SchemaSnapshotReader.isAllowed("[Ljava.io.File;"));
+        assertFalse(SchemaSnapshotReader.isAllowed("org.exolab.castor.xml.schemax.Foreign"));
+    }
+}
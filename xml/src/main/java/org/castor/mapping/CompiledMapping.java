@@ -0,0 +1,361 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.castor.mapping;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.exolab.castor.mapping.Mapping;
+import org.exolab.castor.mapping.MappingException;
+import org.exolab.castor.mapping.xml.MappingRoot;
+import org.exolab.castor.util.Version;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+/**
+ * A mapping file compiled at build time. A compiled mapping holds the class, key generator and
+ * field handler definitions of a mapping file and of all the mapping files it includes in a binary
+ * form, so that {@link Mapping#loadCompiledMapping(URL)} can load it without parsing XML or
+ * resolving includes. It also holds a checksum of every mapping file it has been compiled from, to
+ * tell whether it is still up to date with them.
+ * <p>
+ * Mapping files are usually compiled with the {@link org.exolab.castor.tools.MappingCompiler}
+ * command line tool, the Ant task or the Maven goal:
+ *
+ * <pre>
+ * CompiledMapping compiled = CompiledMapping.compile(mappingURL);
+ * compiled.write(out);
+ * </pre>
+ *
+ * A compiled mapping can only be loaded by the Castor version that has written it.
+ *
+ * @since 1.4.2
+ */
+public final class CompiledMapping {
+
+  /** The file extension of compiled mappings. */
+  public static final String FILE_EXTENSION = ".cmap";
+
+  /** Marks the start of a compiled mapping. */
+  static final int MAGIC = 0x43434D50;
+
+  /** The version of the layout of compiled mappings. */
+  static final int FORMAT_VERSION = 1;
+
+  /** The algorithm used for the checksums of mapping files. */
+  private static final String CHECKSUM_ALGORITHM = "SHA-256";
+
+  /** The package prefix of the classes a mapping consists of. */
+  private static final String MAPPING_PACKAGE = "org.exolab.castor.mapping.xml.";
+
+  /** The packages of the JDK classes a mapping consists of; their subpackages are excluded. */
+  private static final String[] JDK_PACKAGES = {"java.lang.", "java.util."};
+
+  /** The class, key generator and field handler definitions. */
+  private final MappingRoot _root;
+
+  /**
+   * The checksums of the mapping files compiled, by location. The first entry is the mapping file
+   * compiled, the locations of the included mapping files are as they are referenced.
+   */
+  private final Map<String, String> _checksums;
+
+  /**
+   * Creates a compiled mapping.
+   *
+   * @param root the class, key generator and field handler definitions
+   * @param checksums the checksums of the mapping files compiled, by location
+   */
+  private CompiledMapping(final MappingRoot root, final Map<String, String> checksums) {
+    _root = root;
+    _checksums = checksums;
+  }
+
+  /**
+   * Compiles the given mapping file together with all the mapping files it includes.
+   *
+   * @param source the location of the mapping file
+   * @return the compiled mapping
+   * @throws IOException if a mapping file cannot be read
+   * @throws MappingException if a mapping file is invalid
+   */
+  public static CompiledMapping compile(final URL source) throws IOException, MappingException {
+    ChecksumResolver resolver = new ChecksumResolver(source);
+    Mapping mapping = new Mapping();
+    mapping.setEntityResolver(resolver);
+    mapping.loadMapping(source);
+    new MappingUnmarshaller().loadMappingOnly(mapping);
+    return new CompiledMapping(mapping.getRoot(), resolver._checksums);
+  }
+
+  /**
+   * Reads a compiled mapping.
+   *
+   * @param in the stream to read the compiled mapping from
+   * @param location the location of the compiled mapping, for error messages
+   * @return the compiled mapping
+   * @throws IOException if the compiled mapping cannot be read
+   * @throws MappingException if the stream does not hold a compiled mapping, or one written by
+   *         another Castor version
+   */
+  public static CompiledMapping read(final InputStream in, final String location)
+      throws IOException, MappingException {
+    try {
+      ObjectInputStream input = new MappingInputStream(in);
+      if ((input.readInt() != MAGIC) || (input.readInt() != FORMAT_VERSION)) {
+        throw new MappingException("mapping.compiled.invalid", location);
+      }
+      String version = input.readUTF();
+      if (!Version.VERSION.equals(version)) {
+        throw new MappingException("mapping.compiled.wrongVersion", location, version,
+            Version.VERSION);
+      }
+      int count = input.readInt();
+      Map<String, String> checksums = new LinkedHashMap<>();
+      for (int i = 0; i < count; i++) {
+        checksums.put(input.readUTF(), input.readUTF());
+      }
+      Object root = input.readObject();
+      if (!(root instanceof MappingRoot)) {
+        throw new MappingException("mapping.compiled.invalid", location);
+      }
+      return new CompiledMapping((MappingRoot) root, checksums);
+    } catch (StreamCorruptedException ex) {
+      throw new MappingException("mapping.compiled.invalid", location);
+    } catch (InvalidClassException ex) {
+      throw new MappingException(ex);
+    } catch (ClassNotFoundException ex) {
+      throw new MappingException(ex);
+    }
+  }
+
+  /**
+   * Writes this compiled mapping.
+   *
+   * @param out the stream to write this compiled mapping to
+   * @throws IOException if the compiled mapping cannot be written
+   */
+  public void write(final OutputStream out) throws IOException {
+    ObjectOutputStream output = new ObjectOutputStream(out);
+    output.writeInt(MAGIC);
+    output.writeInt(FORMAT_VERSION);
+    output.writeUTF(Version.VERSION);
+    output.writeInt(_checksums.size());
+    for (Map.Entry<String, String> entry : _checksums.entrySet()) {
+      output.writeUTF(entry.getKey());
+      output.writeUTF(entry.getValue());
+    }
+    output.writeObject(_root);
+    output.flush();
+  }
+
+  /**
+   * Returns the class, key generator and field handler definitions of this compiled mapping.
+   *
+   * @return the definitions of the mapping files compiled
+   */
+  public MappingRoot getRoot() {
+    return _root;
+  }
+
+  /**
+   * Returns the checksums of the mapping files compiled, by location. The first entry is the
+   * mapping file compiled, the locations of the included mapping files are as they are referenced.
+   *
+   * @return the checksums of the mapping files compiled
+   */
+  public Map<String, String> getChecksums() {
+    return Collections.unmodifiableMap(_checksums);
+  }
+
+  /**
+   * Tells whether this compiled mapping is up to date with the given mapping file and the mapping
+   * files it includes, which are looked up relative to it.
+   *
+   * @param source the location of the mapping file this mapping has been compiled from
+   * @return true if none of the mapping files has changed since the mapping has been compiled
+   * @throws IOException if a mapping file cannot be read
+   */
+  public boolean isUpToDate(final URL source) throws IOException {
+    Iterator<Map.Entry<String, String>> entries = _checksums.entrySet().iterator();
+    if (!entries.hasNext() || !entries.next().getValue().equals(checksum(read(source)))) {
+      return false;
+    }
+    while (entries.hasNext()) {
+      Map.Entry<String, String> entry = entries.next();
+      if (!entry.getValue().equals(checksum(read(new URL(source, entry.getKey()))))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads the content of the given location.
+   *
+   * @param location the location to read
+   * @return the content read
+   * @throws IOException if the location cannot be read
+   */
+  private static byte[] read(final URL location) throws IOException {
+    InputStream in = location.openStream();
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int count;
+      while ((count = in.read(buffer)) != -1) {
+        out.write(buffer, 0, count);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Computes the checksum of the given content.
+   *
+   * @param content the content of a mapping file
+   * @return the checksum, in hexadecimal
+   */
+  private static String checksum(final byte[] content) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+    StringBuilder buffer = new StringBuilder();
+    for (byte value : digest.digest(content)) {
+      buffer.append(Character.forDigit((value >> 4) & 0xF, 16));
+      buffer.append(Character.forDigit(value & 0xF, 16));
+    }
+    return buffer.toString();
+  }
+
+  /**
+   * Returns true if the class with the given name may be read from a compiled mapping.
+   *
+   * @param name the name of the class, as found in the compiled mapping
+   * @return true if the class is one a mapping consists of
+   */
+  static boolean isAllowed(final String name) {
+    String className = name;
+    int dimensions = 0;
+    while ((dimensions < className.length()) && (className.charAt(dimensions) == '[')) {
+      dimensions++;
+    }
+    if (dimensions > 0) {
+      // -- arrays are allowed for primitives and allowed component types
+      className = className.substring(dimensions);
+      if (className.length() == 1) {
+        return true;
+      }
+      if (!className.startsWith("L") || !className.endsWith(";")) {
+        return false;
+      }
+      className = className.substring(1, className.length() - 1);
+    }
+    if (className.startsWith(MAPPING_PACKAGE)) {
+      return true;
+    }
+    for (String prefix : JDK_PACKAGES) {
+      if (className.startsWith(prefix) && (className.indexOf('.', prefix.length()) < 0)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * {@link ObjectInputStream} restricting the classes read from a compiled mapping to those a
+   * mapping consists of.
+   */
+  private static final class MappingInputStream extends ObjectInputStream {
+
+    /**
+     * Creates a stream reading a compiled mapping from the given stream.
+     *
+     * @param in the stream to read the compiled mapping from
+     * @throws IOException if the stream header cannot be read
+     */
+    MappingInputStream(final InputStream in) throws IOException {
+      super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(final ObjectStreamClass desc)
+        throws IOException, ClassNotFoundException {
+      if (!isAllowed(desc.getName())) {
+        throw new InvalidClassException(desc.getName(), "not part of a mapping");
+      }
+      return super.resolveClass(desc);
+    }
+
+    @Override
+    protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException {
+      throw new InvalidClassException("proxy classes are not part of a mapping");
+    }
+  }
+
+  /**
+   * {@link EntityResolver} reading the mapping files while they are compiled, and recording their
+   * checksums. Relative locations are resolved against the mapping file compiled.
+   */
+  private static final class ChecksumResolver implements EntityResolver {
+
+    /** The location of the mapping file compiled. */
+    private final URL _base;
+
+    /** The checksums of the files read, by location. */
+    private final Map<String, String> _checksums = new LinkedHashMap<>();
+
+    /**
+     * Creates a resolver for the given mapping file.
+     *
+     * @param base the location of the mapping file compiled
+     */
+    ChecksumResolver(final URL base) {
+      _base = base;
+    }
+
+    public InputSource resolveEntity(final String publicId, final String systemId)
+        throws IOException {
+      if (systemId == null) {
+        return null;
+      }
+      byte[] content = read(new URL(_base, systemId));
+      if (!_checksums.containsKey(systemId)) {
+        _checksums.put(systemId, checksum(content));
+      }
+      InputSource source = new InputSource(new ByteArrayInputStream(content));
+      source.setPublicId(publicId);
+      source.setSystemId(systemId);
+      return source;
+    }
+  }
+}
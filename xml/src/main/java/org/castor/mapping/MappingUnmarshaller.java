@@ -69,6 +69,11 @@ public final class MappingUnmarshaller {
    */
   private boolean _allowRedefinitions = false;
 
+  /**
+   * A flag that indicates whether class descriptors are created on first use.
+   */
+  private boolean _lazyDescriptors = false;
+
   /**
    * The {@link AbstractInternalContext}?holds all 'global' Castor states and access to
    * configuration.
@@ -112,6 +117,16 @@ public final class MappingUnmarshaller {
     _allowRedefinitions = allow;
   }
 
+  /**
+   * Enables or disables the creation of class descriptors on first use rather than when the
+   * mapping is loaded.
+   * 
+   * @param lazy a boolean that when true creates class descriptors on first use.
+   */
+  public void setLazyDescriptors(final boolean lazy) {
+    _lazyDescriptors = lazy;
+  }
+
   // --------------------------------------------------------------------------
 
   /**
@@ -155,6 +170,7 @@ public final class MappingUnmarshaller {
       loader = (AbstractMappingLoader) _registry.getMappingLoader("CastorXmlMapping", bindingType);
       loader.setClassLoader(mapping.getClassLoader());
       loader.setAllowRedefinitions(_allowRedefinitions);
+      loader.setLazyDescriptors(_lazyDescriptors);
       loader.setInternalContext(_internalContext);
       loader.loadMapping(mapping.getRoot(), param);
       return loader;
@@ -43,6 +43,7 @@ import org.exolab.castor.xml.XMLContext;
 import org.exolab.castor.xml.XMLSerializerFactory;
 import org.exolab.castor.xml.util.DefaultNaming;
 import org.exolab.castor.xml.util.ResolverStrategy;
+import org.exolab.castor.xml.util.SymbolTable;
 import org.exolab.castor.xml.util.XMLParserUtils;
 import org.xml.sax.DocumentHandler;
 import org.xml.sax.Parser;
@@ -76,6 +77,11 @@ public abstract class AbstractInternalContext implements InternalContext {
    */
   private XMLClassDescriptorResolver _xmlClassDescriptorResolver;
 
+  /**
+   * The canonical names of the class descriptors resolved in this context.
+   */
+  private final SymbolTable _symbolTable = new SymbolTable();
+
   /**
    * The XMLContext knows the one {@link Introspector} to be used.
    */
@@ -126,6 +132,8 @@ public abstract class AbstractInternalContext implements InternalContext {
   @Override
   public void addMapping(final Mapping mapping) throws MappingException {
     MappingUnmarshaller mappingUnmarshaller = new MappingUnmarshaller();
+    mappingUnmarshaller.setLazyDescriptors(
+        Boolean.TRUE.equals(getBooleanProperty(XMLProperties.LAZY_MAPPING_DESCRIPTORS)));
     MappingLoader mappingLoader = mappingUnmarshaller.getMappingLoader(mapping, BindingType.XML);
     _xmlClassDescriptorResolver.setMappingLoader(mappingLoader);
   }
@@ -371,6 +379,11 @@ public abstract class AbstractInternalContext implements InternalContext {
     return _xmlClassDescriptorResolver;
   }
 
+  @Override
+  public SymbolTable getSymbolTable() {
+    return _symbolTable;
+  }
+
   @Override
   public Introspector getIntrospector() {
     return _introspector;
@@ -28,6 +28,7 @@ import org.exolab.castor.xml.ResolverException;
 import org.exolab.castor.xml.Serializer;
 import org.exolab.castor.xml.XMLClassDescriptorResolver;
 import org.exolab.castor.xml.util.ResolverStrategy;
+import org.exolab.castor.xml.util.SymbolTable;
 import org.xml.sax.DocumentHandler;
 import org.xml.sax.Parser;
 import org.xml.sax.XMLReader;
@@ -251,6 +252,15 @@ public interface InternalContext extends PropertyChangeProvider {
    */
   XMLClassDescriptorResolver getXMLClassDescriptorResolver();
 
+  /**
+   * To get the table of the canonical local names and namespace URIs of the class descriptors
+   * resolved in this context.
+   * 
+   * @return the SymbolTable of this context
+   * @since 1.4.2
+   */
+  SymbolTable getSymbolTable();
+
   /**
    * To get the Introspector assigned to this XMLContext.
    * 
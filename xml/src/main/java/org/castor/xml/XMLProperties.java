@@ -139,6 +139,22 @@ public class XMLProperties extends AbstractProperties {
    */
   public static final String NAMESPACES = "org.exolab.castor.parser.namespaces";
 
+  /**
+   * Property specifying whether UTF-8 encoded documents without a document type declaration are
+   * unmarshalled with the built-in {@link org.exolab.castor.xml.parsing.XMLTokenizer} rather than
+   * the configured SAX parser. Documents the tokenizer does not accept, and documents to be
+   * validated by the parser, are always parsed by the SAX parser.
+   * 
+   * Possible values: - false (default) - true
+   * 
+   * <pre>
+   * org.exolab.castor.parser.native
+   * </pre>
+   * 
+   * @since 1.4.2
+   */
+  public static final String NATIVE_PARSER = "org.exolab.castor.parser.native";
+
   /**
    * Property specifying XML namespace to Java package mappings.
    * 
@@ -188,6 +204,104 @@ public class XMLProperties extends AbstractProperties {
    */
   public static final String MARSHALLING_VALIDATION = "org.exolab.castor.marshalling.validation";
 
+  /**
+   * Property specifying whether generated classes implementing
+   * {@link org.exolab.castor.xml.XmlWritable} may write their attributes and content directly
+   * during marshalling, instead of being marshalled through their descriptors.
+   * 
+   * Possible values: - false - true (default)
+   * 
+   * <pre>
+   * org.exolab.castor.xml.marshalling.direct
+   * </pre>
+   * 
+   * @since 1.4.2
+   */
+  public static final String DIRECT_MARSHALLING = "org.exolab.castor.xml.marshalling.direct";
+
+  /**
+   * Property specifying the {@link java.util.concurrent.Executor} the batch methods of
+   * {@link org.exolab.castor.xml.XMLContext} run their documents on, and the
+   * {@link org.exolab.castor.xml.Marshaller} runs the chunks of large collections on (see
+   * {@link #PARALLEL_MARSHALLING_THRESHOLD}). The value has to be an executor instance, set with
+   * {@link org.exolab.castor.xml.XMLContext#setProperty(String, Object)}. If not set, a virtual
+   * thread is started per task where the runtime offers virtual threads, and a shared pool with
+   * one thread per processor is used otherwise.
+   * 
+   * <pre>
+   * org.exolab.castor.xml.batch.executor
+   * </pre>
+   * 
+   * @since 1.4.2
+   */
+  public static final String BATCH_EXECUTOR = "org.exolab.castor.xml.batch.executor";
+
+  /**
+   * Property specifying how many documents of a batch run by the batch methods of
+   * {@link org.exolab.castor.xml.XMLContext} may be in flight at the same time. Further documents
+   * are not taken from the batch input until one of them completes.
+   * 
+   * Possible values: - a positive number, 64 by default
+   * 
+   * <pre>
+   * org.exolab.castor.xml.batch.inflight
+   * </pre>
+   * 
+   * @since 1.4.2
+   */
+  public static final String BATCH_IN_FLIGHT = "org.exolab.castor.xml.batch.inflight";
+
+  /**
+   * Property specifying how many times {@link org.exolab.castor.xml.XMLContext#warmUp} marshals
+   * and unmarshals the synthetic instance of each class, so that the marshalling code is run often
+   * enough to be compiled.
+   * 
+   * Possible values: - a positive number, 1 by default
+   * 
+   * <pre>
+   * org.exolab.castor.xml.warmup.rounds
+   * </pre>
+   * 
+   * @since 1.4.2
+   */
+  public static final String WARM_UP_ROUNDS = "org.exolab.castor.xml.warmup.rounds";
+
+  /**
+   * Property specifying the number of items from which a collection is marshalled on several
+   * threads. The items are split into contiguous chunks, marshalled concurrently on the executor
+   * set as {@link #BATCH_EXECUTOR} and written in item order, so that the document is the same as
+   * when marshalled by one thread, except that items declaring a namespace without a prefix in
+   * scope share one generated prefix. Collections are marshalled by one thread while a
+   * {@link org.exolab.castor.xml.MarshalListener} is set.
+   * 
+   * Possible values: - a positive number - 0 to never marshal collections on several threads
+   * (default)
+   * 
+   * <pre>
+   * org.exolab.castor.xml.marshalling.parallel.threshold
+   * </pre>
+   * 
+   * @since 1.4.2
+   */
+  public static final String PARALLEL_MARSHALLING_THRESHOLD =
+      "org.exolab.castor.xml.marshalling.parallel.threshold";
+
+  /**
+   * Property specifying whether the class descriptors of a mapping are created the first time a
+   * class is marshalled or unmarshalled, rather than when the mapping is added. This shortens the
+   * loading of large mappings of which only a few classes are used. Errors in a class mapping are
+   * then only reported, as an {@link IllegalStateException}, when the class is first used.
+   * 
+   * Possible values: - false (default) - true
+   * 
+   * <pre>
+   * org.exolab.castor.xml.mapping.lazy
+   * </pre>
+   * 
+   * @since 1.4.2
+   */
+  public static final String LAZY_MAPPING_DESCRIPTORS = "org.exolab.castor.xml.mapping.lazy";
+
   /**
    * Property specifying whether XML documents (as generated at marshalling) should use indentation
    * or not.
@@ -0,0 +1,33 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.dsml;
+
+/**
+ * An {@link ImportEventListener} that is also told how far an import has progressed. The importer
+ * reports every {@link Importer#getProgressInterval()} processed entries and once more when the
+ * import completes, so the throughput can be computed as <code>entries / elapsedMillis</code>.
+ * <p>
+ * Callbacks are serialized by the importer, even when entries are applied by several workers.
+ *
+ * @since 1.4.2
+ */
+public interface ImportProgressListener extends ImportEventListener {
+
+  /**
+   * Reports the progress of the running import.
+   *
+   * @param entries Number of entries processed so far.
+   * @param elapsedMillis Milliseconds elapsed since the import started.
+   * @param completed True if this is the final report of the import.
+   */
+  public void importProgress(long entries, long elapsedMillis, boolean completed);
+}
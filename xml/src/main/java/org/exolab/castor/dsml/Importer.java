@@ -68,6 +68,15 @@ public abstract class Importer {
   private ImportEventListener _listener;
 
 
+  private int _progressInterval = 1000;
+
+
+  private long _processed;
+
+
+  private long _started;
+
+
   public void setImportDescriptor(ImportDescriptor importDesc) {
     _importDesc = importDesc;
   }
@@ -93,6 +102,25 @@ public abstract class Importer {
   }
 
 
+  /**
+   * Sets the number of processed entries between two progress reports sent to an
+   * {@link ImportProgressListener}.
+   *
+   * @param interval Number of entries between progress reports, at least one.
+   */
+  public void setProgressInterval(final int interval) {
+    if (interval < 1) {
+      throw new IllegalArgumentException("Argument 'interval' must be positive");
+    }
+    _progressInterval = interval;
+  }
+
+
+  public int getProgressInterval() {
+    return _progressInterval;
+  }
+
+
   public void importDocument(InputStream stream) throws ImportExportException {
     importDocument(_xmlContext.getParser(), new InputSource(stream));
   }
@@ -108,6 +136,7 @@ public abstract class Importer {
 
     consumer = createConsumer();
     parser.setDocumentHandler(consumer);
+    startProgress();
     try {
       parser.parse(input);
     } catch (SAXException except) {
@@ -118,6 +147,7 @@ public abstract class Importer {
     if (consumer.getResults() != null) {
       importEntries(consumer.getResults());
     }
+    completeProgress();
   }
 
   public void readImportDescriptor(InputStream input) throws IOException, SAXException {
@@ -141,9 +171,44 @@ public abstract class Importer {
   }
 
 
-  protected void notify(String name, int flag) {
+  /**
+   * Reports a processed entry to the listener. Synchronized so that listeners see the events of
+   * concurrent workers one at a time.
+   */
+  protected synchronized void notify(String name, int flag) {
+    ++_processed;
     if (_listener != null) {
       _listener.processedEntry(name, flag);
+      if ((_processed % _progressInterval) == 0) {
+        reportProgress(false);
+      }
+    }
+  }
+
+
+  /**
+   * Resets the progress counters at the start of an import.
+   */
+  protected synchronized void startProgress() {
+    _processed = 0;
+    _started = System.currentTimeMillis();
+  }
+
+
+  /**
+   * Sends the final progress report of an import.
+   */
+  protected synchronized void completeProgress() {
+    if (_listener != null) {
+      reportProgress(true);
+    }
+  }
+
+
+  private void reportProgress(final boolean completed) {
+    if (_listener instanceof ImportProgressListener) {
+      ((ImportProgressListener) _listener).importProgress(_processed,
+          System.currentTimeMillis() - _started, completed);
     }
   }
 
@@ -49,7 +49,18 @@ import org.exolab.castor.dsml.Consumer;
 public class JNDIConsumer extends Consumer {
   private JNDIEntryConsumer _entries;
 
-  public JNDIConsumer() {}
+  private final JNDIImportPipeline _pipeline;
+
+  public JNDIConsumer() {
+    _pipeline = null;
+  }
+
+  /**
+   * Creates a consumer that hands every entry to the pipeline as soon as it has been parsed.
+   */
+  JNDIConsumer(final JNDIImportPipeline pipeline) {
+    _pipeline = pipeline;
+  }
 
   public Enumeration<SearchResult> getResults() {
     if (_entries == null) {
@@ -59,7 +70,7 @@ public class JNDIConsumer extends Consumer {
   }
 
   public DocumentHandler getEntryConsumer() {
-    _entries = new JNDIEntryConsumer();
+    _entries = new JNDIEntryConsumer(_pipeline);
     return _entries;
   }
 }
@@ -40,6 +40,7 @@ import java.util.Vector;
 import org.xml.sax.SAXException;
 import org.xml.sax.AttributeList;
 import org.xml.sax.HandlerBase;
+import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.BasicAttribute;
@@ -61,8 +62,19 @@ class JNDIEntryConsumer extends HandlerBase {
   private StringBuffer _value;
   private Base64Decoder _decoder;
   private final Vector<SearchResult> _entries = new Vector<>();
+  private final JNDIImportPipeline _pipeline;
 
-  JNDIEntryConsumer() {}
+  JNDIEntryConsumer() {
+    this(null);
+  }
+
+  /**
+   * Creates a consumer that submits entries to the pipeline instead of collecting them, if the
+   * pipeline is not null.
+   */
+  JNDIEntryConsumer(final JNDIImportPipeline pipeline) {
+    _pipeline = pipeline;
+  }
 
   public Enumeration<SearchResult> getSearchResults() {
     return _entries.elements();
@@ -112,7 +124,19 @@ class JNDIEntryConsumer extends HandlerBase {
       if (_attrSet == null || _attr != null) {
         throw new SAXException(Messages.format("dsml.closingTagNotRecognized", tagName));
       }
-      _entries.add(new SearchResult(_entryDN, null, _attrSet));
+      SearchResult result = new SearchResult(_entryDN, null, _attrSet);
+      if (_pipeline == null) {
+        _entries.add(result);
+      } else {
+        try {
+          _pipeline.submit(result);
+        } catch (NamingException except) {
+          throw new SAXException(except);
+        } catch (InterruptedException except) {
+          Thread.currentThread().interrupt();
+          throw new SAXException(except);
+        }
+      }
       _entryDN = null;
       _attrSet = null;
     } else if (tagName.equals(XML.Entries.Elements.OBJECT_CLASS)
@@ -0,0 +1,400 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.dsml.jndi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.naming.InvalidNameException;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+
+import org.exolab.castor.dsml.ImportDescriptor;
+import org.exolab.castor.dsml.ImportEventListener;
+
+/**
+ * Applies the entries of an import to the directory with a fixed number of worker threads.
+ * <p>
+ * Entries are routed to a worker by their DN, so all entries of one DN are applied in the order
+ * they were submitted. An entry whose ancestor or descendant entries are still pending goes to
+ * the worker applying them, so parents are created before their children and children deleted
+ * before their parents as in the document; if those entries are pending on several workers, the
+ * entry is held back until only one of them is left. Entries of unrelated DNs may be applied in
+ * any order when there is more than one worker. Each worker has a bounded queue, which holds the
+ * submitting thread (usually the SAX parser) back while the directory is slower than the
+ * document. A worker takes up to a batch of entries at a time and looks up all of their existing
+ * entries before it writes any of them.
+ * <p>
+ * The first failure of a worker stops all workers and is rethrown to the submitting thread.
+ *
+ * @since 1.4.2
+ */
+final class JNDIImportPipeline {
+
+  /** Marks the end of the entries in a worker queue. */
+  private static final SearchResult END = new SearchResult("", null, new BasicAttributes());
+
+  /** Milliseconds to wait for queue space before checking the workers again. */
+  private static final long OFFER_TIMEOUT = 100;
+
+  private final JNDIImporter _importer;
+
+  private final ImportDescriptor _importDesc;
+
+  private final DirContext _ctx;
+
+  private final Worker[] _workers;
+
+  private final int _batchSize;
+
+  private volatile NamingException _failure;
+
+  /**
+   * The entries submitted but not applied yet, by the key of their DN and of each ancestor DN;
+   * only kept when there is more than one worker.
+   */
+  private final Map<Object, Pending> _pending = new HashMap<Object, Pending>();
+
+  JNDIImportPipeline(final JNDIImporter importer, final ImportDescriptor importDesc,
+      final DirContext ctx, final int workers, final int queueCapacity, final int batchSize) {
+    _importer = importer;
+    _importDesc = importDesc;
+    _ctx = ctx;
+    _workers = new Worker[workers];
+    for (int i = 0; i < workers; ++i) {
+      _workers[i] = new Worker(i, queueCapacity);
+    }
+    _batchSize = batchSize;
+  }
+
+  /**
+   * Starts the workers. A single worker uses the importer's context; several workers each use a
+   * new instance of it, as directory contexts are not safe for concurrent use.
+   */
+  void start() throws NamingException {
+    try {
+      for (int i = 0; i < _workers.length; ++i) {
+        if (_workers.length == 1) {
+          _workers[i]._context = _ctx;
+        } else {
+          _workers[i]._context = (DirContext) _ctx.lookup("");
+          _workers[i]._ownsContext = true;
+        }
+      }
+    } catch (NamingException except) {
+      closeContexts();
+      throw except;
+    }
+    for (int i = 0; i < _workers.length; ++i) {
+      _workers[i].start();
+    }
+  }
+
+  /**
+   * Hands an entry to the worker of its DN, or to the worker applying pending entries above or
+   * below it, waiting while those are pending on several workers or that worker's queue is full.
+   */
+  void submit(final SearchResult result) throws NamingException, InterruptedException {
+    if (_workers.length == 1) {
+      offer(_workers[0], result);
+      return;
+    }
+    Object[] path = keyPath(result.getName());
+    int worker;
+    synchronized (_pending) {
+      while ((worker = route(path)) < 0) {
+        checkFailure();
+        _pending.wait(OFFER_TIMEOUT);
+      }
+      Pending own = pending(path[0]);
+      own._worker = worker;
+      own._count++;
+      for (int i = 0; i < path.length; ++i) {
+        pending(path[i]).add(worker, 1);
+      }
+    }
+    offer(_workers[worker], result);
+  }
+
+  /**
+   * Waits until all submitted entries have been applied.
+   */
+  void finish() throws NamingException, InterruptedException {
+    for (int i = 0; i < _workers.length; ++i) {
+      offer(_workers[i], END);
+    }
+    for (int i = 0; i < _workers.length; ++i) {
+      _workers[i].join();
+    }
+    checkFailure();
+  }
+
+  /**
+   * Stops any worker still running and releases the contexts created for the workers.
+   */
+  void close() {
+    for (int i = 0; i < _workers.length; ++i) {
+      _workers[i].interrupt();
+    }
+    boolean interrupted = false;
+    for (int i = 0; i < _workers.length; ++i) {
+      while (_workers[i].isAlive()) {
+        try {
+          _workers[i].join();
+        } catch (InterruptedException except) {
+          interrupted = true;
+        }
+      }
+    }
+    closeContexts();
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void offer(final Worker worker, final SearchResult result)
+      throws NamingException, InterruptedException {
+    checkFailure();
+    while (!worker._queue.offer(result, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+      checkFailure();
+    }
+  }
+
+  /**
+   * Returns the worker to apply an entry with the given key path on, or -1 if entries above or
+   * below it are pending on different workers.
+   */
+  private int route(final Object[] path) {
+    int worker = -1;
+    for (int i = 0; i < path.length; ++i) {
+      Pending pending = _pending.get(path[i]);
+      if ((pending != null) && (pending._count > 0)) {
+        if ((worker >= 0) && (worker != pending._worker)) {
+          return -1;
+        }
+        worker = pending._worker;
+      }
+    }
+    Pending subtree = _pending.get(path[0]);
+    if (subtree != null) {
+      for (int i = 0; i < subtree._entries.length; ++i) {
+        if (subtree._entries[i] > 0) {
+          if ((worker >= 0) && (worker != i)) {
+            return -1;
+          }
+          worker = i;
+        }
+      }
+    }
+    if (worker < 0) {
+      worker = (path[0].hashCode() & 0x7fffffff) % _workers.length;
+    }
+    return worker;
+  }
+
+  private Pending pending(final Object key) {
+    Pending pending = _pending.get(key);
+    if (pending == null) {
+      pending = new Pending(_workers.length);
+      _pending.put(key, pending);
+    }
+    return pending;
+  }
+
+  /**
+   * Records that the given worker has applied an entry of the given DN, letting entries held back
+   * by it be submitted.
+   */
+  private void applied(final String name, final int worker) {
+    if (_workers.length == 1) {
+      return;
+    }
+    Object[] path = keyPath(name);
+    synchronized (_pending) {
+      _pending.get(path[0])._count--;
+      for (int i = 0; i < path.length; ++i) {
+        if (_pending.get(path[i]).add(worker, -1)) {
+          _pending.remove(path[i]);
+        }
+      }
+      _pending.notifyAll();
+    }
+  }
+
+  private void checkFailure() throws NamingException {
+    if (_failure != null) {
+      throw _failure;
+    }
+  }
+
+  private synchronized void fail(final NamingException except) {
+    if (_failure == null) {
+      _failure = except;
+    }
+  }
+
+  private void closeContexts() {
+    for (int i = 0; i < _workers.length; ++i) {
+      if (_workers[i]._ownsContext) {
+        try {
+          _workers[i]._context.close();
+        } catch (NamingException except) {
+          // The context is discarded anyway.
+        }
+        _workers[i]._ownsContext = false;
+      }
+    }
+  }
+
+  /**
+   * Returns the key identifying the entry of the given DN, which ignores differences in case and
+   * spacing where the DN can be parsed.
+   */
+  static Object entryKey(final String name) {
+    try {
+      return new LdapName(name);
+    } catch (InvalidNameException except) {
+      return name.toLowerCase(Locale.ROOT);
+    }
+  }
+
+  /**
+   * Returns the key of the entry of the given DN followed by the keys of its ancestors up to the
+   * topmost one, or just the key of the entry where the DN cannot be parsed.
+   */
+  static Object[] keyPath(final String name) {
+    LdapName dn;
+    try {
+      dn = new LdapName(name);
+    } catch (InvalidNameException except) {
+      return new Object[] {name.toLowerCase(Locale.ROOT)};
+    }
+    Object[] path = new Object[Math.max(dn.size(), 1)];
+    path[0] = dn;
+    for (int i = 1; i < path.length; ++i) {
+      path[i] = dn.getPrefix(dn.size() - i);
+    }
+    return path;
+  }
+
+  /**
+   * The pending entries of a DN and of the DNs below it.
+   */
+  private static final class Pending {
+    /** The worker applying the pending entries of the DN itself. */
+    private int _worker = -1;
+
+    /** The number of pending entries of the DN itself. */
+    private int _count;
+
+    /** The number of pending entries of the DN and of the DNs below it, by worker. */
+    private final int[] _entries;
+
+    private int _total;
+
+    Pending(final int workers) {
+      _entries = new int[workers];
+    }
+
+    /**
+     * Adds the given number of pending entries on the given worker, and tells whether none are
+     * left.
+     */
+    boolean add(final int worker, final int delta) {
+      _entries[worker] += delta;
+      _total += delta;
+      return (_total == 0);
+    }
+  }
+
+  private final class Worker extends Thread {
+    private final int _index;
+
+    private final BlockingQueue<SearchResult> _queue;
+
+    private DirContext _context;
+
+    private boolean _ownsContext;
+
+    Worker(final int index, final int queueCapacity) {
+      super("castor-dsml-import-" + index);
+      setDaemon(true);
+      _index = index;
+      _queue = new ArrayBlockingQueue<SearchResult>(queueCapacity);
+    }
+
+    public void run() {
+      List<SearchResult> batch = new ArrayList<SearchResult>(_batchSize);
+      try {
+        while (_failure == null) {
+          batch.add(_queue.take());
+          _queue.drainTo(batch, _batchSize - 1);
+          boolean end = (batch.get(batch.size() - 1) == END);
+          if (end) {
+            batch.remove(batch.size() - 1);
+          }
+          apply(batch);
+          batch.clear();
+          if (end) {
+            return;
+          }
+        }
+      } catch (InterruptedException except) {
+        // Closed before all entries were applied.
+      } catch (NamingException except) {
+        fail(except);
+      } catch (RuntimeException except) {
+        NamingException failure = new NamingException(except.toString());
+        failure.setRootCause(except);
+        fail(failure);
+      }
+    }
+
+    private void apply(final List<SearchResult> batch) throws NamingException {
+      // A null value records an entry known not to exist.
+      Map<Object, Attributes> existing = new HashMap<Object, Attributes>();
+      int[] policies = new int[batch.size()];
+      for (int i = 0; i < batch.size(); ++i) {
+        SearchResult result = batch.get(i);
+        policies[i] = _importDesc.getPolicy(result.getName());
+        Object key = entryKey(result.getName());
+        if (JNDIImporter.needsExisting(result, policies[i]) && !existing.containsKey(key)) {
+          existing.put(key, JNDIImporter.getExisting(_context, result.getName()));
+        }
+      }
+      for (int i = 0; i < batch.size(); ++i) {
+        SearchResult result = batch.get(i);
+        Object key = entryKey(result.getName());
+        if (JNDIImporter.needsExisting(result, policies[i]) && !existing.containsKey(key)) {
+          existing.put(key, JNDIImporter.getExisting(_context, result.getName()));
+        }
+        int flag = _importer.importEntry(_context, result, policies[i], existing.get(key));
+        applied(result.getName(), _index);
+        if (flag == ImportEventListener.DELETED) {
+          existing.put(key, null);
+        } else if (flag != ImportEventListener.IGNORED) {
+          // Looked up again by a later entry of the same DN.
+          existing.remove(key);
+        }
+      }
+    }
+  }
+}
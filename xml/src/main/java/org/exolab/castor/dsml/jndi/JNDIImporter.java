@@ -35,6 +35,7 @@
 
 package org.exolab.castor.dsml.jndi;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
@@ -51,92 +52,213 @@ import org.exolab.castor.dsml.ImportEventListener;
 import org.exolab.castor.dsml.Importer;
 import org.exolab.castor.dsml.ImportDescriptor;
 import org.exolab.castor.dsml.ImportExportException;
+import org.xml.sax.InputSource;
+import org.xml.sax.Parser;
+import org.xml.sax.SAXException;
 
 /**
+ * Imports DSML entries into a JNDI directory. Entries are streamed from the parser to a
+ * configurable number of workers that apply them to the directory, see
+ * {@link #setWorkerCount(int)}.
+ *
  * @author <a href="mailto:arkin@intalio.com">Assaf Arkin</a>
  * @version $Revision$ $Date: 2006-04-13 06:47:36 -0600 (Thu, 13 Apr 2006) $
  */
 public class JNDIImporter extends Importer {
   private DirContext _ctx;
 
+  private int _workerCount = 1;
+
+  private int _queueCapacity = 256;
+
+  private int _batchSize = 32;
+
   public JNDIImporter(final DirContext ctx) {
     _ctx = ctx;
   }
 
+  /**
+   * Sets the number of workers applying entries to the directory. Entries of the same DN, and
+   * entries of a DN and of the DNs above or below it, are always applied in document order; with
+   * more than one worker, entries of unrelated DNs are not. Defaults to one.
+   *
+   * @param count Number of workers, at least one.
+   */
+  public void setWorkerCount(final int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("Argument 'count' must be positive");
+    }
+    _workerCount = count;
+  }
+
+  public int getWorkerCount() {
+    return _workerCount;
+  }
+
+  /**
+   * Sets the number of parsed entries each worker may hold before the parser waits for it.
+   *
+   * @param capacity Queue capacity per worker, at least one.
+   */
+  public void setQueueCapacity(final int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Argument 'capacity' must be positive");
+    }
+    _queueCapacity = capacity;
+  }
+
+  public int getQueueCapacity() {
+    return _queueCapacity;
+  }
+
+  /**
+   * Sets the maximum number of entries a worker takes at once. The existing entries of a batch
+   * are looked up before any of its entries is written.
+   *
+   * @param size Batch size, at least one.
+   */
+  public void setBatchSize(final int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("Argument 'size' must be positive");
+    }
+    _batchSize = size;
+  }
+
+  public int getBatchSize() {
+    return _batchSize;
+  }
+
   protected Consumer createConsumer() {
     return new JNDIConsumer();
   }
 
+  /**
+   * Imports the document, handing each entry to the workers as soon as it has been parsed
+   * instead of collecting the whole document first.
+   */
+  public void importDocument(final Parser parser, final InputSource input)
+      throws ImportExportException {
+    JNDIImportPipeline pipeline = createPipeline();
+    parser.setDocumentHandler(new JNDIConsumer(pipeline));
+    startProgress();
+    try {
+      pipeline.start();
+      parser.parse(input);
+      pipeline.finish();
+    } catch (SAXException except) {
+      if (except.getException() instanceof NamingException) {
+        throw new ImportExportException(except.getException());
+      }
+      throw new ImportExportException(except);
+    } catch (IOException except) {
+      throw new ImportExportException(except);
+    } catch (NamingException except) {
+      throw new ImportExportException(except);
+    } catch (InterruptedException except) {
+      Thread.currentThread().interrupt();
+      throw new ImportExportException(except);
+    } finally {
+      pipeline.close();
+    }
+    completeProgress();
+  }
+
   public void importEntry(final SearchResult result, final int policy) throws NamingException {
-    Attributes existing;
+    Attributes existing = null;
+
+    if (needsExisting(result, policy)) {
+      existing = getExisting(_ctx, result.getName());
+    }
+    importEntry(_ctx, result, policy, existing);
+  }
+
+  /**
+   * Returns true if importing the entry with the given policy depends on the existing entry.
+   */
+  static boolean needsExisting(final SearchResult result, final int policy) {
+    return (result.getAttributes().size() > 0)
+        || ((policy & ImportDescriptor.Policy.DELETE_EMPTY) != 0);
+  }
+
+  /**
+   * Returns the attributes of the named entry, or null if there is no such entry.
+   */
+  static Attributes getExisting(final DirContext ctx, final String name) throws NamingException {
+    try {
+      return ctx.getAttributes(name);
+    } catch (NameNotFoundException except) {
+      return null;
+    }
+  }
+
+  /**
+   * Applies the entry to the directory, given its existing attributes (null if the entry does
+   * not exist), and returns the {@link ImportEventListener} flag reported for it.
+   */
+  int importEntry(final DirContext ctx, final SearchResult result, final int policy,
+      final Attributes existing) throws NamingException {
     Attributes attrSet;
     Attribute attr;
     NamingEnumeration<? extends Attribute> enumeration;
+    int flag;
 
     if (result.getAttributes().size() == 0) {
-      if ((policy & ImportDescriptor.Policy.DELETE_EMPTY) != 0) {
+      flag = ImportEventListener.IGNORED;
+      if (((policy & ImportDescriptor.Policy.DELETE_EMPTY) != 0) && (existing != null)) {
         try {
-          _ctx.lookup(result.getName());
-          _ctx.unbind(result.getName());
-          notify(result.getName(), ImportEventListener.DELETED);
+          ctx.unbind(result.getName());
+          flag = ImportEventListener.DELETED;
         } catch (NameNotFoundException except) {
           // Object does not exist, was not removed, ignore.
-          notify(result.getName(), ImportEventListener.IGNORED);
         }
-      } else {
-        notify(result.getName(), ImportEventListener.IGNORED);
       }
-    } else {
-      try {
-        existing = _ctx.getAttributes(result.getName());
-
-        List<ModificationItem> modifs = new ArrayList<ModificationItem>();
-        attrSet = result.getAttributes();
-        enumeration = attrSet.getAll();
-        while (enumeration.hasMore()) {
-          attr = enumeration.next();
-          if (existing.get(attr.getID()) != null) {
-            if ((policy & ImportDescriptor.Policy.NEW_ATTRIBUTE_ONLY) == 0) {
-              if (attr.size() > 0) {
-                modifs.add(new ModificationItem(DirContext.REPLACE_ATTRIBUTE, attr));
-              } else {
-                modifs.add(new ModificationItem(DirContext.REMOVE_ATTRIBUTE, attr));
-              }
-            }
-          } else {
-            if ((policy & ImportDescriptor.Policy.UPDATE_ONLY) == 0) {
-              if (attr.size() > 0) {
-                modifs.add(new ModificationItem(DirContext.ADD_ATTRIBUTE, attr));
-              }
-            }
-          }
-        }
-        if ((policy & ImportDescriptor.Policy.REPLACE_ATTRIBUTE) != 0) {
-          enumeration = existing.getAll();
-          while (enumeration.hasMore()) {
-            attr = enumeration.next();
-            if (attrSet.get(attr.getID()) == null) {
+    } else if (existing != null) {
+      List<ModificationItem> modifs = new ArrayList<ModificationItem>();
+      attrSet = result.getAttributes();
+      enumeration = attrSet.getAll();
+      while (enumeration.hasMore()) {
+        attr = enumeration.next();
+        if (existing.get(attr.getID()) != null) {
+          if ((policy & ImportDescriptor.Policy.NEW_ATTRIBUTE_ONLY) == 0) {
+            if (attr.size() > 0) {
+              modifs.add(new ModificationItem(DirContext.REPLACE_ATTRIBUTE, attr));
+            } else {
               modifs.add(new ModificationItem(DirContext.REMOVE_ATTRIBUTE, attr));
             }
           }
-        }
-        if (!modifs.isEmpty()) {
-          ModificationItem[] array = modifs.toArray(new ModificationItem[modifs.size()]);
-          _ctx.modifyAttributes(result.getName(), array);
-          notify(result.getName(), ImportEventListener.REFRESHED);
         } else {
-          notify(result.getName(), ImportEventListener.IGNORED);
+          if ((policy & ImportDescriptor.Policy.UPDATE_ONLY) == 0) {
+            if (attr.size() > 0) {
+              modifs.add(new ModificationItem(DirContext.ADD_ATTRIBUTE, attr));
+            }
+          }
         }
-      } catch (NameNotFoundException except) {
-        // Object does not exist, we create a new one.
-        if ((policy & ImportDescriptor.Policy.REFRESH_ONLY) == 0) {
-          _ctx.bind(result.getName(), null, result.getAttributes());
-          notify(result.getName(), ImportEventListener.CREATED);
-        } else {
-          notify(result.getName(), ImportEventListener.IGNORED);
+      }
+      if ((policy & ImportDescriptor.Policy.REPLACE_ATTRIBUTE) != 0) {
+        enumeration = existing.getAll();
+        while (enumeration.hasMore()) {
+          attr = enumeration.next();
+          if (attrSet.get(attr.getID()) == null) {
+            modifs.add(new ModificationItem(DirContext.REMOVE_ATTRIBUTE, attr));
+          }
         }
       }
+      if (!modifs.isEmpty()) {
+        ModificationItem[] array = modifs.toArray(new ModificationItem[modifs.size()]);
+        ctx.modifyAttributes(result.getName(), array);
+        flag = ImportEventListener.REFRESHED;
+      } else {
+        flag = ImportEventListener.IGNORED;
+      }
+    } else if ((policy & ImportDescriptor.Policy.REFRESH_ONLY) == 0) {
+      // Object does not exist, we create a new one.
+      ctx.bind(result.getName(), null, result.getAttributes());
+      flag = ImportEventListener.CREATED;
+    } else {
+      flag = ImportEventListener.IGNORED;
     }
+    notify(result.getName(), flag);
+    return flag;
   }
 
   public void importEntries(final NamingEnumeration<SearchResult> results) throws NamingException {
@@ -153,13 +275,25 @@ public class JNDIImporter extends Importer {
     if (getImportDescriptor() == null) {
       setImportDescriptor(new ImportDescriptor());
     }
+    JNDIImportPipeline pipeline = createPipeline();
     try {
+      pipeline.start();
       while (results.hasMoreElements()) {
-        SearchResult result = results.nextElement();
-        importEntry(result, getImportDescriptor().getPolicy(result.getName()));
+        pipeline.submit(results.nextElement());
       }
+      pipeline.finish();
     } catch (NamingException except) {
       throw new ImportExportException(except);
+    } catch (InterruptedException except) {
+      Thread.currentThread().interrupt();
+      throw new ImportExportException(except);
+    } finally {
+      pipeline.close();
     }
   }
+
+  private JNDIImportPipeline createPipeline() {
+    return new JNDIImportPipeline(this, getImportDescriptor(), _ctx, _workerCount,
+        _queueCapacity, _batchSize);
+  }
 }
@@ -118,6 +118,16 @@ public abstract class GeneralizedFieldHandler extends AbstractFieldHandler {
     _handler = handler;
   } // -- setFieldHandler
 
+  /**
+   * Returns the FieldHandler that this FieldHandler delegates to.
+   *
+   * @return the FieldHandler to delegate to, or null if it has not been set
+   * @since 1.4.2
+   */
+  public final FieldHandler getFieldHandler() {
+    return _handler;
+  } // -- getFieldHandler
+
   /**
    * Sets whether or not this GeneralizedFieldHandler should automatically iterate over the
    * collection returned by the target object and pass only the items (one by one) to the
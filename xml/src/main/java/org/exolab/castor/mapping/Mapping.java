@@ -14,10 +14,12 @@
 package org.exolab.castor.mapping;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -25,7 +27,11 @@ import java.util.Set;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.castor.core.util.Messages;
+import org.castor.mapping.CompiledMapping;
 import org.castor.mapping.MappingSource;
+import org.exolab.castor.mapping.xml.ClassMapping;
+import org.exolab.castor.mapping.xml.FieldHandlerDef;
+import org.exolab.castor.mapping.xml.KeyGeneratorDef;
 import org.exolab.castor.mapping.xml.MappingRoot;
 import org.exolab.castor.net.util.URIUtils;
 import org.exolab.castor.util.DTDResolver;
@@ -306,6 +312,90 @@ public final class Mapping {
     _mappings.add(new MappingSource(source, type, _resolver));
   }
 
+  /**
+   * Loads a mapping compiled with {@link CompiledMapping}, without parsing the mapping files it has
+   * been compiled from.
+   *
+   * @param url The URL of the compiled mapping.
+   * @throws IOException An error occured when reading the compiled mapping.
+   * @throws MappingException The compiled mapping is invalid or has been compiled by another
+   *         Castor version.
+   * @since 1.4.2
+   */
+  public void loadCompiledMapping(final URL url) throws IOException, MappingException {
+    LOG.info(Messages.format("mapping.compiled.loadingFrom", url.toExternalForm()));
+    InputStream in = url.openStream();
+    try {
+      addCompiledMapping(CompiledMapping.read(in, url.toExternalForm()));
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Loads a mapping compiled with {@link CompiledMapping}, unless the mapping file it has been
+   * compiled from or one of the mapping files included has changed since. The mapping file is
+   * loaded instead if the compiled mapping is out of date, cannot be found or has been compiled by
+   * another Castor version.
+   *
+   * @param url The URL of the compiled mapping.
+   * @param source The URL of the mapping file the mapping has been compiled from.
+   * @throws IOException An error occured when reading the mapping files.
+   * @throws MappingException The compiled mapping is invalid.
+   * @since 1.4.2
+   */
+  public void loadCompiledMapping(final URL url, final URL source)
+      throws IOException, MappingException {
+    CompiledMapping compiled = null;
+    try {
+      InputStream in = url.openStream();
+      try {
+        compiled = CompiledMapping.read(in, url.toExternalForm());
+      } finally {
+        in.close();
+      }
+    } catch (IOException ex) {
+      LOG.debug("Cannot read compiled mapping " + url.toExternalForm(), ex);
+    } catch (MappingException ex) {
+      LOG.debug("Cannot read compiled mapping " + url.toExternalForm(), ex);
+    }
+
+    if ((compiled != null) && compiled.isUpToDate(source)) {
+      LOG.info(Messages.format("mapping.compiled.loadingFrom", url.toExternalForm()));
+      addCompiledMapping(compiled);
+    } else {
+      LOG.warn(Messages.format("mapping.compiled.outdated", url.toExternalForm(),
+          source.toExternalForm()));
+      loadMapping(source);
+    }
+  }
+
+  /**
+   * Adds the definitions of the given compiled mapping to the loaded mapping.
+   *
+   * @param compiled The compiled mapping.
+   */
+  private void addCompiledMapping(final CompiledMapping compiled) {
+    MappingRoot root = compiled.getRoot();
+
+    Enumeration<? extends ClassMapping> classMappings = root.enumerateClassMapping();
+    while (classMappings.hasMoreElements()) {
+      _root.addClassMapping(classMappings.nextElement());
+    }
+
+    Enumeration<? extends KeyGeneratorDef> keyGeneratorDefinitions =
+        root.enumerateKeyGeneratorDef();
+    while (keyGeneratorDefinitions.hasMoreElements()) {
+      _root.addKeyGeneratorDef(keyGeneratorDefinitions.nextElement());
+    }
+
+    Enumeration<? extends FieldHandlerDef> fieldHandlerDefinitions =
+        root.enumerateFieldHandlerDef();
+    while (fieldHandlerDefinitions.hasMoreElements()) {
+      _root.addFieldHandlerDef(fieldHandlerDefinitions.nextElement());
+    }
+  }
+
   // --------------------------------------------------------------------------
 }
 
@@ -46,6 +46,7 @@ import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Enumeration;
 import java.util.Map;
@@ -136,6 +137,14 @@ public abstract class AbstractMappingLoader extends AbstractMappingLoader2 {
   /** Map of field handlers associated by their name. */
   private final Map<String, FieldHandler> _fieldHandlers = new HashMap<String, FieldHandler>();
 
+  /**
+   * Descriptors created on first use whose relations are still being resolved, keyed by class name.
+   * They are only added once the outermost of these creations completes. Also used as the lock
+   * serializing these creations.
+   */
+  private final Map<String, ClassDescriptor> _creating =
+      new LinkedHashMap<String, ClassDescriptor>();
+
   /**
    * Constructs a new mapping helper. This constructor is used by a derived class.
    *
@@ -237,6 +246,11 @@ public abstract class AbstractMappingLoader extends AbstractMappingLoader2 {
   }
 
   protected final void createClassDescriptors(final MappingRoot mapping) throws MappingException {
+    if (isLazyDescriptors()) {
+      registerClassMappings(mapping);
+      return;
+    }
+
     // Load the mapping for all the classes. This is always returned
     // in the same order as it appeared in the mapping file.
     Enumeration<? extends ClassMapping> enumeration = mapping.enumerateClassMapping();
@@ -271,6 +285,94 @@ public abstract class AbstractMappingLoader extends AbstractMappingLoader2 {
     }
   }
 
+  /**
+   * Registers the class mappings of the given mapping for creation on first use. Class mappings
+   * that cannot be created lazily are created right away.
+   *
+   * @param mapping The mapping to register the class mappings of.
+   * @throws MappingException A class mapping is invalid or defined twice.
+   */
+  private void registerClassMappings(final MappingRoot mapping) throws MappingException {
+    List<ClassMapping> eagerList = new ArrayList<ClassMapping>();
+    Enumeration<? extends ClassMapping> enumeration = mapping.enumerateClassMapping();
+    while (enumeration.hasMoreElements()) {
+      ClassMapping clsMap = enumeration.nextElement();
+      if (isLazyMapping(clsMap)) {
+        addLazyMapping(resolveType(clsMap.getName()).getName(), clsMap);
+      } else {
+        eagerList.add(clsMap);
+      }
+    }
+
+    // registered only now, so that they can extend any of the lazy ones
+    for (ClassMapping clsMap : eagerList) {
+      ClassDescriptor clsDesc = createClassDescriptor(clsMap);
+      if (clsDesc != null) {
+        addDescriptor(clsDesc);
+        resolveRelations(clsDesc);
+      }
+    }
+  }
+
+  /**
+   * Tells whether the descriptor of the given class mapping may be created on first use. The
+   * default implementation returns <code>true</code>.
+   *
+   * @param clsMap The class mapping to check.
+   * @return <code>true</code> if the descriptor may be created on first use.
+   */
+  protected boolean isLazyMapping(final ClassMapping clsMap) {
+    return true;
+  }
+
+  /**
+   * {@inheritDoc}
+   * 
+   * Creation is serialized, so every descriptor is created exactly once. Descriptors requested
+   * while resolving the extends, depends and field relations of another are created in the same
+   * pass and are only visible to other threads once that pass is complete.
+   * 
+   * @throws IllegalStateException The class mapping turned out to be invalid.
+   */
+  protected final ClassDescriptor createLazyDescriptor(final String classname) {
+    synchronized (_creating) {
+      ClassDescriptor descriptor = _creating.get(classname);
+      if (descriptor != null) {
+        return descriptor;
+      }
+
+      ClassMapping clsMap = getLazyMapping(classname);
+      if (clsMap == null) {
+        // -- created by another thread while we were waiting
+        return getDescriptor(classname);
+      }
+
+      boolean outermost = _creating.isEmpty();
+      try {
+        descriptor = createClassDescriptor(clsMap);
+        if (descriptor == null) {
+          return null;
+        }
+        _creating.put(classname, descriptor);
+        resolveRelations(descriptor);
+
+        if (outermost) {
+          for (ClassDescriptor created : _creating.values()) {
+            addLazyDescriptor(created);
+          }
+        }
+        return descriptor;
+      } catch (MappingException ex) {
+        throw new IllegalStateException(
+            Messages.format("mapping.lazyDescriptorFailed", classname, ex.getMessage()), ex);
+      } finally {
+        if (outermost) {
+          _creating.clear();
+        }
+      }
+    }
+  }
+
   protected abstract ClassDescriptor createClassDescriptor(final ClassMapping clsMap)
       throws MappingException;
 
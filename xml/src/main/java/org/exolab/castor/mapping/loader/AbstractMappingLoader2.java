@@ -4,11 +4,14 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.exolab.castor.mapping.ClassDescriptor;
 import org.exolab.castor.mapping.MappingException;
 import org.exolab.castor.mapping.MappingLoader;
+import org.exolab.castor.mapping.xml.ClassMapping;
 
 public abstract class AbstractMappingLoader2 implements MappingLoader {
 
@@ -18,6 +21,9 @@ public abstract class AbstractMappingLoader2 implements MappingLoader {
   /** A flag indicating whether or not mappings can be redefined. */
   private boolean _allowRedefinitions = false;
 
+  /** A flag indicating whether or not descriptors are created on first use. */
+  private boolean _lazyDescriptors = false;
+
   /** Has loadMapping been called? */
   private boolean _loaded = false;
 
@@ -32,15 +38,24 @@ public abstract class AbstractMappingLoader2 implements MappingLoader {
   private final Map<String, ClassDescriptor> _descriptorsByClassname =
       new Hashtable<String, ClassDescriptor>();
 
+  /**
+   * Class mappings whose descriptors will be created the first time they are asked for, keyed by
+   * class name.
+   */
+  private final Map<String, ClassMapping> _lazyMappings =
+      new ConcurrentHashMap<String, ClassMapping>();
+
   public AbstractMappingLoader2(final ClassLoader loader) {
     setClassLoader(loader);
   }
 
   public final void clear() {
     _allowRedefinitions = false;
+    _lazyDescriptors = false;
     _loaded = false;
     _descriptors.clear();
     _descriptorsByClassname.clear();
+    _lazyMappings.clear();
   }
 
   /**
@@ -80,6 +95,26 @@ public abstract class AbstractMappingLoader2 implements MappingLoader {
     return _allowRedefinitions;
   }
 
+  /**
+   * Enables or disables the creation of class descriptors on first use. When enabled, loading a
+   * mapping only registers its class mappings and each descriptor is created the first time it is
+   * asked for, together with the descriptors it extends or depends on.
+   * 
+   * @param lazy A boolean that when true creates descriptors on first use.
+   */
+  public final void setLazyDescriptors(final boolean lazy) {
+    _lazyDescriptors = lazy;
+  }
+
+  /**
+   * Are class descriptors created on first use rather than when loading the mapping?
+   * 
+   * @return A boolean that when true creates descriptors on first use.
+   */
+  public final boolean isLazyDescriptors() {
+    return _lazyDescriptors;
+  }
+
   /**
    * Adds a class descriptor. Will throw a mapping exception if a descriptor for this class already
    * exists.
@@ -89,6 +124,12 @@ public abstract class AbstractMappingLoader2 implements MappingLoader {
    */
   protected final void addDescriptor(final ClassDescriptor descriptor) throws MappingException {
     String classname = descriptor.getJavaClass().getName();
+    if (_lazyMappings.containsKey(classname)) {
+      if (!isAllowRedefinition()) {
+        throw new MappingException("mapping.duplicateDescriptors", classname);
+      }
+      _lazyMappings.remove(classname);
+    }
     if (_descriptorsByClassname.containsKey(classname)) {
       if (!isAllowRedefinition()) {
         throw new MappingException("mapping.duplicateDescriptors", classname);
@@ -108,6 +149,74 @@ public abstract class AbstractMappingLoader2 implements MappingLoader {
     _descriptorsByClassname.put(classname, descriptor);
   }
 
+  /**
+   * Registers a class mapping whose descriptor will only be created the first time it is asked
+   * for. Will throw a mapping exception if a mapping or descriptor for this class already exists.
+   *
+   * @param classname The name of the mapped class.
+   * @param clsMap The class mapping to create the descriptor from.
+   * @throws MappingException A mapping or descriptor for this class already exists.
+   */
+  protected final void addLazyMapping(final String classname, final ClassMapping clsMap)
+      throws MappingException {
+    if (_lazyMappings.containsKey(classname) || _descriptorsByClassname.containsKey(classname)) {
+      if (!isAllowRedefinition()) {
+        throw new MappingException("mapping.duplicateDescriptors", classname);
+      }
+      ClassDescriptor descriptor = _descriptorsByClassname.remove(classname);
+      if (descriptor != null) {
+        _descriptors.remove(descriptor);
+      }
+    }
+    _lazyMappings.put(classname, clsMap);
+  }
+
+  /**
+   * Returns the class mapping registered for the given class whose descriptor has not been created
+   * yet.
+   *
+   * @param classname The name of the mapped class.
+   * @return The class mapping or <code>null</code> if there is none pending for this class.
+   */
+  protected final ClassMapping getLazyMapping(final String classname) {
+    return _lazyMappings.get(classname);
+  }
+
+  /**
+   * Returns the names of all classes whose descriptors have not been created yet.
+   *
+   * @return The names of all classes with a pending class mapping.
+   */
+  protected final Set<String> getLazyClassnames() {
+    return _lazyMappings.keySet();
+  }
+
+  /**
+   * Adds a descriptor created from a pending class mapping and removes that mapping. The
+   * descriptor is added before the mapping is removed, so that concurrent readers always find one
+   * of them.
+   *
+   * @param descriptor The descriptor created from a pending class mapping.
+   */
+  protected final void addLazyDescriptor(final ClassDescriptor descriptor) {
+    String classname = descriptor.getJavaClass().getName();
+    _descriptors.add(descriptor);
+    _descriptorsByClassname.put(classname, descriptor);
+    _lazyMappings.remove(classname);
+  }
+
+  /**
+   * Creates the descriptor of the given class from its pending class mapping. Called when a
+   * descriptor is asked for that has been registered with {@link #addLazyMapping} but not been
+   * created yet. The default implementation returns <code>null</code>.
+   *
+   * @param classname The name of the class to create the descriptor for.
+   * @return The descriptor created or <code>null</code> if none could be created.
+   */
+  protected ClassDescriptor createLazyDescriptor(final String classname) {
+    return null;
+  }
+
   /**
    * @see org.exolab.castor.mapping.MappingLoader#getDescriptor(java.lang.String) {@inheritDoc}
    */
@@ -115,7 +224,16 @@ public abstract class AbstractMappingLoader2 implements MappingLoader {
     if (classname == null) {
       return null;
     }
-    return _descriptorsByClassname.get(classname);
+    ClassDescriptor descriptor = _descriptorsByClassname.get(classname);
+    if (descriptor == null) {
+      if (_lazyMappings.containsKey(classname)) {
+        descriptor = createLazyDescriptor(classname);
+      } else {
+        // -- may have been created from its pending mapping in the meantime
+        descriptor = _descriptorsByClassname.get(classname);
+      }
+    }
+    return descriptor;
   }
 
   // /**
@@ -127,6 +245,9 @@ public abstract class AbstractMappingLoader2 implements MappingLoader {
   // }
 
   public final List<ClassDescriptor> getDescriptors() {
+    for (String classname : _lazyMappings.keySet()) {
+      getDescriptor(classname);
+    }
     return _descriptors;
   }
 
@@ -43,6 +43,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.Enumeration;
 import java.util.Iterator;
 
+import org.castor.core.util.Instantiator;
 import org.castor.core.util.Messages;
 import org.exolab.castor.core.exceptions.CastorIllegalStateException;
 import org.exolab.castor.mapping.AbstractFieldHandler;
@@ -54,6 +55,8 @@ import org.exolab.castor.mapping.TypeConvertor;
 import org.exolab.castor.mapping.CollectionHandler;
 import org.exolab.castor.mapping.MappingException;
 import org.exolab.castor.mapping.MappingRuntimeException;
+import org.exolab.castor.mapping.loader.collection.ArrayBuilder;
+import org.exolab.castor.mapping.loader.collection.handler.ArrayCollectionHandler;
 import org.exolab.castor.util.IteratorEnumeration;
 
 /**
@@ -144,6 +147,11 @@ public final class FieldHandlerImpl<T> extends AbstractFieldHandler<T> {
    */
   private Method _createMethod;
 
+  /**
+   * The instantiator calling {@link #_createMethod}. May be null.
+   */
+  private Instantiator _createInstantiator;
+
   /**
    * The Java field name.
    */
@@ -337,6 +345,96 @@ public final class FieldHandlerImpl<T> extends AbstractFieldHandler<T> {
     return _convertTo;
   }
 
+  /**
+   * Returns the Java field accessed directly by this handler.
+   *
+   * @return the Java field, or null if the field is accessed through methods
+   * @since 1.4.2
+   */
+  public Field getField() {
+    return _field;
+  }
+
+  /**
+   * Returns the method used to retrieve the field value.
+   *
+   * @return the get method, or null if there is none
+   * @since 1.4.2
+   */
+  public Method getReadMethod() {
+    return _getMethod;
+  }
+
+  /**
+   * Returns the method used to set the field value.
+   *
+   * @return the set method, or null if there is none
+   * @since 1.4.2
+   */
+  public Method getWriteMethod() {
+    return _setMethod;
+  }
+
+  /**
+   * Returns the method used to add a value to a collection field.
+   *
+   * @return the add method, or null if there is none
+   * @since 1.4.2
+   */
+  public Method getAddMethod() {
+    return _addMethod;
+  }
+
+  /**
+   * Returns the method used to create a new value of the field.
+   *
+   * @return the create method, or null if there is none
+   * @since 1.4.2
+   */
+  public Method getCreateMethod() {
+    return _createMethod;
+  }
+
+  /**
+   * Returns the collection handler used if the field is a collection.
+   *
+   * @return the collection handler, or null if the field is not a collection
+   * @since 1.4.2
+   */
+  public CollectionHandler<T> getCollectionHandler() {
+    return _colHandler;
+  }
+
+  /**
+   * Returns the type of the field, primitive types being replaced by their wrapper class.
+   *
+   * @return the type of the field
+   * @since 1.4.2
+   */
+  public Class getFieldType() {
+    return _fieldType;
+  }
+
+  /**
+   * Returns the value set when the field is set to null or reset.
+   *
+   * @return the default value, which is only set for primitive fields
+   * @since 1.4.2
+   */
+  public Object getDefaultValue() {
+    return _default;
+  }
+
+  /**
+   * Returns true if the field type is immutable, in which case {@link #newInstance(Object)} fails.
+   *
+   * @return true if the field type is immutable
+   * @since 1.4.2
+   */
+  public boolean isImmutable() {
+    return _immutable;
+  }
+
   /**
    * {@inheritDoc}
    * 
@@ -673,6 +771,74 @@ public final class FieldHandlerImpl<T> extends AbstractFieldHandler<T> {
     }
   }
 
+  /**
+   * Returns the component type of the array held by this field if values added to it may be
+   * collected in an {@link ArrayBuilder} and stored at once through {@link #addAll}, rather than
+   * through a call to {@link #setValue} for each of them.
+   * 
+   * @return The component type of the array, or null if the field is not an array, or values have
+   *         to be added one at a time.
+   */
+  public Class<?> getArrayComponentType() {
+    if (!(_colHandler instanceof ArrayCollectionHandler) || _addMethod != null
+        || _handler != null) {
+      return null;
+    }
+    Class<?> type = null;
+    if (_field != null) {
+      type = _field.getType();
+    } else if (_getMethod != null && _setMethod != null) {
+      type = _getMethod.getReturnType();
+    }
+    if (type == null || !type.isArray()) {
+      return null;
+    }
+    return type.getComponentType();
+  }
+
+  /**
+   * Appends the values collected by the given builder to the array held by this field, allocating
+   * the resulting array once. Must only be called if {@link #getArrayComponentType()} returns a
+   * type.
+   * 
+   * @param object The object whose field is to be extended.
+   * @param values The values to append.
+   */
+  public void addAll(Object object, final ArrayBuilder values) {
+    if (values.size() == 0) {
+      return;
+    }
+    try {
+      if (_field != null) {
+        _field.set(object, values.toArray(_field.get(object)));
+      } else {
+        if (_getSequence != null) {
+          for (int i = 0; i < _getSequence.length; i++) {
+            Object last = object;
+            object = _getSequence[i].invoke(object, (Object[]) null);
+            if (object == null) {
+              // -- as in setValue, instantiate the object in the sequence
+              if (_setSequence[i] == null) {
+                return;
+              }
+              object = Types.newInstance(_getSequence[i].getReturnType());
+              _setSequence[i].invoke(last, new Object[] {object});
+            }
+          }
+        }
+        Object collect = _getMethod.invoke(object, (Object[]) null);
+        _setMethod.invoke(object, new Object[] {values.toArray(collect)});
+      }
+    } catch (IllegalAccessException except) {
+      // This should never happen
+      throw new IllegalStateException(
+          Messages.format("mapping.schemaChangeNoAccess", toString()));
+    } catch (InvocationTargetException except) {
+      // This should never happen
+      throw new MappingRuntimeException(except.getTargetException());
+    }
+  }
+
   /**
    * Creates a new instance of the object described by this field.
    * 
@@ -708,7 +874,7 @@ public final class FieldHandlerImpl<T> extends AbstractFieldHandler<T> {
     // If we have a create method and parent object, call the create method.
     if (_createMethod != null && parent != null) {
       try {
-        return (T) _createMethod.invoke(parent, args);
+        return (T) _createInstantiator.invoke(parent, args);
       } catch (IllegalAccessException except) {
         // This should never happen
         throw new IllegalStateException(
@@ -758,6 +924,7 @@ public final class FieldHandlerImpl<T> extends AbstractFieldHandler<T> {
       throw new MappingException("mapping.createMethodNoParam", method,
           method.getDeclaringClass().getName());
     _createMethod = method;
+    _createInstantiator = Instantiator.forMethod(method);
   }
 
   /**
@@ -95,6 +95,15 @@ public final class J1CollectionHandlers {
       _array = array;
     }
 
+    /**
+     * Returns the array enumerated, so that callers may access it directly.
+     * 
+     * @return the array, or null if elements have already been enumerated.
+     */
+    public Object getArray() {
+      return (_index == 0) ? _array : null;
+    }
+
     public boolean hasMoreElements() {
       return (_index < Array.getLength(_array));
     }
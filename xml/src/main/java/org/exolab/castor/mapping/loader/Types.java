@@ -35,13 +35,13 @@
 
 package org.exolab.castor.mapping.loader;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Vector;
 
+import org.castor.core.util.Instantiator;
 import org.castor.core.util.Messages;
 import org.exolab.castor.types.Duration;
 
@@ -271,7 +271,22 @@ public class Types {
    */
   public static Object newInstance(Class<?> type) throws IllegalStateException {
     try {
-      return type.newInstance();
+      return Instantiator.forClass(type).newInstance();
+    } catch (NoSuchMethodException except) {
+      // This should never happen unless byte code changed all of a sudden
+      throw new IllegalStateException(
+          Messages.format("mapping.schemaNotConstructable", type.getName(), except.getMessage()));
+    } catch (java.lang.reflect.InvocationTargetException except) {
+      // -- report unchecked failures of the constructor as they are
+      Throwable target = except.getTargetException();
+      if (target instanceof RuntimeException) {
+        throw (RuntimeException) target;
+      }
+      if (target instanceof Error) {
+        throw (Error) target;
+      }
+      throw new IllegalStateException(
+          Messages.format("mapping.schemaNotConstructable", type.getName(), target.getMessage()));
     } catch (IllegalAccessException except) {
       // This should never happen unless byte code changed all of a sudden
       throw new IllegalStateException(
@@ -297,9 +312,15 @@ public class Types {
     if ((args == null) || (args.length == 0))
       return newInstance(type);
 
+    Class<?>[] argTypes = new Class<?>[args.length];
+    for (int i = 0; i < args.length; i++) {
+      if (args[i] != null) {
+        argTypes[i] = args[i].getClass();
+      }
+    }
+
     try {
-      Constructor<?> cons = findConstructor(type, args);
-      return cons.newInstance(args);
+      return Instantiator.forArguments(type, argTypes).newInstance(args);
     } catch (NoSuchMethodException except) {
       throw new IllegalStateException(
           Messages.format("mapping.constructorNotFound", type.getName(), except.getMessage()));
@@ -392,77 +413,6 @@ public class Types {
     return (Cloneable.class.isAssignableFrom(type));
   }
 
-  /**
-   * Returns the matching constructor for the given arguments
-   * 
-   * @param type The class type of the object instance to be constructed.
-   * @param args Arguments to be supplied to constructor call.
-   * @return the matching constructor for the given arguments
-   * @throws NoSuchMethodException If no constructor with the given number/types of arguments
-   *         exists.
-   */
-  private static Constructor<?> findConstructor(Class<?> type, Object[] args)
-      throws NoSuchMethodException {
-
-    Constructor<?>[] constructors = type.getConstructors();
-    Constructor<?> cons = null;
-    int rank = 0;
-
-    for (int c = 0; c < constructors.length; c++) {
-      Class<?>[] paramTypes = constructors[c].getParameterTypes();
-      if (paramTypes.length != args.length)
-        continue;
-
-      int tmpRank = 0;
-      boolean matches = true;
-      for (int p = 0; p < paramTypes.length; p++) {
-        if (args[p] == null) {
-          if (paramTypes[p].isPrimitive()) {
-            matches = false;
-            break;
-          }
-          // null matches any non primitive object
-          continue;
-        }
-
-        // -- check direct parameter match
-        if (paramTypes[p] == args[p].getClass()) {
-          ++tmpRank;
-          continue;
-        }
-
-        // -- check for inheritance
-        if (paramTypes[p].isAssignableFrom(args[p].getClass())) {
-          // -- good keep going, but don't increment rank
-          continue;
-        }
-        // -- check for primitive match
-        if (paramTypes[p].isPrimitive()) {
-          Class<?> pType = typeFromPrimitive(paramTypes[p]);
-          if (pType.isAssignableFrom(args[p].getClass())) {
-            // -- good keep going, but don't increment rank
-            continue;
-          }
-        }
-        matches = false;
-        break;
-      }
-
-      if (matches) {
-        if (tmpRank == paramTypes.length)
-          return constructors[c];
-        if ((cons == null) || (tmpRank > rank)) {
-          cons = constructors[c];
-          rank = tmpRank;
-        }
-      }
-    }
-
-    if (cons == null)
-      throw new NoSuchMethodException();
-
-    return cons;
-  } // -- findConstructor
 
   /**
    * Information about a specific Java type.
@@ -0,0 +1,608 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.mapping.loader.collection;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * Collects the values of an array-typed field so that the array can be allocated once, at its final
+ * size, rather than being grown by one element for each value added. Values for primitive
+ * component types are held unboxed.
+ * 
+ * @since 1.4.2
+ */
+public abstract class ArrayBuilder {
+
+  /** Initial capacity of a builder. */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** The component type of the array built. */
+  private final Class<?> _componentType;
+
+  /** The number of values collected so far. */
+  protected int _size = 0;
+
+  /**
+   * Creates a new ArrayBuilder.
+   * 
+   * @param componentType The component type of the array built.
+   */
+  protected ArrayBuilder(final Class<?> componentType) {
+    _componentType = componentType;
+  }
+
+  /**
+   * Creates a builder for arrays of the given component type.
+   * 
+   * @param componentType The component type of the array to build.
+   * @return A builder specialized for the given component type.
+   */
+  public static ArrayBuilder newBuilder(final Class<?> componentType) {
+    if (componentType == null) {
+      throw new IllegalArgumentException("componentType must not be null");
+    }
+    if (!componentType.isPrimitive()) {
+      return new OfObject(componentType);
+    } else if (componentType == Integer.TYPE) {
+      return new OfInt();
+    } else if (componentType == Long.TYPE) {
+      return new OfLong();
+    } else if (componentType == Double.TYPE) {
+      return new OfDouble();
+    } else if (componentType == Float.TYPE) {
+      return new OfFloat();
+    } else if (componentType == Short.TYPE) {
+      return new OfShort();
+    } else if (componentType == Byte.TYPE) {
+      return new OfByte();
+    } else if (componentType == Character.TYPE) {
+      return new OfChar();
+    } else if (componentType == Boolean.TYPE) {
+      return new OfBoolean();
+    }
+    throw new IllegalArgumentException("Unsupported component type: " + componentType);
+  }
+
+  /**
+   * Returns the component type of the array built.
+   * 
+   * @return The component type of the array built.
+   */
+  public Class<?> getComponentType() {
+    return _componentType;
+  }
+
+  /**
+   * Returns the number of values collected so far.
+   * 
+   * @return The number of values collected so far.
+   */
+  public int size() {
+    return _size;
+  }
+
+  /**
+   * Discards all values collected so far.
+   */
+  public void clear() {
+    _size = 0;
+  }
+
+  /**
+   * Appends a value. Null values are ignored, as they are when added to an array field one at a
+   * time.
+   * 
+   * @param value The value to append.
+   * @throws IllegalArgumentException If the value cannot be stored in an array of the component
+   *         type.
+   */
+  public final void add(final Object value) {
+    if (value == null) {
+      return;
+    }
+    try {
+      addValue(value);
+    } catch (ClassCastException e) {
+      throw new IllegalArgumentException("Cannot store a " + value.getClass().getName()
+          + " in an array of " + _componentType.getName(), e);
+    }
+  }
+
+  /**
+   * Returns an array holding the values collected so far.
+   * 
+   * @return An array of the component type.
+   */
+  public Object toArray() {
+    return toArray(null);
+  }
+
+  /**
+   * Returns an array holding the elements of the given array followed by the values collected so
+   * far. The result has the component type of the given array if there is one.
+   * 
+   * @param prefix The array whose elements come first; may be null.
+   * @return A new array.
+   * @throws IllegalArgumentException If the values cannot be stored in the resulting array.
+   */
+  public Object toArray(final Object prefix) {
+    int offset = 0;
+    Class<?> type = _componentType;
+    if (prefix != null) {
+      if (!prefix.getClass().isArray()) {
+        throw new IllegalArgumentException(
+            "Expecting an array, instead received: " + prefix.getClass().getName());
+      }
+      offset = Array.getLength(prefix);
+      type = prefix.getClass().getComponentType();
+    }
+    Object array = Array.newInstance(type, offset + _size);
+    try {
+      if (offset > 0) {
+        System.arraycopy(prefix, 0, array, 0, offset);
+      }
+      System.arraycopy(values(), 0, array, offset, _size);
+    } catch (ArrayStoreException e) {
+      throw new IllegalArgumentException("Cannot store the collected values in an array of "
+          + type.getName(), e);
+    }
+    return array;
+  }
+
+  /**
+   * Appends a non-null value.
+   * 
+   * @param value The value to append.
+   */
+  protected abstract void addValue(Object value);
+
+  /**
+   * Returns the backing array, whose first {@link #size()} elements are the values collected.
+   * 
+   * @return The backing array.
+   */
+  protected abstract Object values();
+
+  /**
+   * Appends the values collected by another builder of the same kind.
+   * 
+   * @param values The builder whose values to append.
+   * @throws IllegalArgumentException If the values cannot be stored in an array of the component
+   *         type.
+   */
+  public void addAll(final ArrayBuilder values) {
+    if (values.values().getClass() != values().getClass()
+        || !_componentType.isAssignableFrom(values.getComponentType())) {
+      throw new IllegalArgumentException("Cannot store values of type "
+          + values.getComponentType().getName() + " in an array of " + _componentType.getName());
+    }
+    ensureCapacity(_size + values._size);
+    System.arraycopy(values.values(), 0, values(), _size, values._size);
+    _size += values._size;
+  }
+
+  /**
+   * Makes sure the backing array can hold the given number of values.
+   * 
+   * @param capacity The number of values to hold.
+   */
+  protected abstract void ensureCapacity(int capacity);
+
+  /**
+   * Returns the capacity to grow a backing array to.
+   * 
+   * @param length The current length of the backing array.
+   * @param capacity The number of values to hold.
+   * @return The new capacity.
+   */
+  protected static int grow(final int length, final int capacity) {
+    return Math.max(capacity, Math.max(INITIAL_CAPACITY, length + (length >> 1)));
+  }
+
+  /**
+   * Unboxes a value to be stored as an <code>int</code>. As with
+   * {@link Array#set(Object, int, Object)}, only widening conversions are applied.
+   * 
+   * @param value The value to unbox.
+   * @return The value as an <code>int</code>.
+   * @throws ClassCastException If the value would have to be narrowed.
+   */
+  private static int toInt(final Object value) {
+    if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      return ((Number) value).intValue();
+    } else if (value instanceof Character) {
+      return ((Character) value).charValue();
+    }
+    throw new ClassCastException(value.getClass().getName());
+  }
+
+  /**
+   * Unboxes a value to be stored as a <code>long</code>, applying widening conversions only.
+   * 
+   * @param value The value to unbox.
+   * @return The value as a <code>long</code>.
+   * @throws ClassCastException If the value would have to be narrowed.
+   */
+  private static long toLong(final Object value) {
+    if (value instanceof Long) {
+      return ((Long) value).longValue();
+    }
+    return toInt(value);
+  }
+
+  /**
+   * Unboxes a value to be stored as a <code>float</code>, applying widening conversions only.
+   * 
+   * @param value The value to unbox.
+   * @return The value as a <code>float</code>.
+   * @throws ClassCastException If the value would have to be narrowed.
+   */
+  private static float toFloat(final Object value) {
+    if (value instanceof Float) {
+      return ((Float) value).floatValue();
+    }
+    return toLong(value);
+  }
+
+  /**
+   * Unboxes a value to be stored as a <code>double</code>, applying widening conversions only.
+   * 
+   * @param value The value to unbox.
+   * @return The value as a <code>double</code>.
+   * @throws ClassCastException If the value would have to be narrowed.
+   */
+  private static double toDouble(final Object value) {
+    if (value instanceof Double) {
+      return ((Double) value).doubleValue();
+    } else if (value instanceof Float) {
+      return ((Float) value).floatValue();
+    }
+    return toLong(value);
+  }
+
+  /**
+   * Builder for arrays of a reference type.
+   */
+  public static final class OfObject extends ArrayBuilder {
+    private Object[] _values = new Object[0];
+
+    OfObject(final Class<?> componentType) {
+      super(componentType);
+    }
+
+    protected void addValue(final Object value) {
+      if (!getComponentType().isInstance(value)) {
+        throw new ClassCastException(value.getClass().getName());
+      }
+      if (_size == _values.length) {
+        ensureCapacity(_size + 1);
+      }
+      _values[_size++] = value;
+    }
+
+    protected Object values() {
+      return _values;
+    }
+
+    protected void ensureCapacity(final int capacity) {
+      if (capacity > _values.length) {
+        _values = Arrays.copyOf(_values, grow(_values.length, capacity));
+      }
+    }
+
+    public void clear() {
+      Arrays.fill(_values, 0, _size, null);
+      super.clear();
+    }
+  }
+
+  /**
+   * Builder for <code>int[]</code>.
+   */
+  public static final class OfInt extends ArrayBuilder {
+    private int[] _values = new int[0];
+
+    OfInt() {
+      super(Integer.TYPE);
+    }
+
+    /**
+     * Appends a value.
+     * 
+     * @param value The value to append.
+     */
+    public void addInt(final int value) {
+      if (_size == _values.length) {
+        ensureCapacity(_size + 1);
+      }
+      _values[_size++] = value;
+    }
+
+    protected void addValue(final Object value) {
+      addInt(toInt(value));
+    }
+
+    protected Object values() {
+      return _values;
+    }
+
+    protected void ensureCapacity(final int capacity) {
+      if (capacity > _values.length) {
+        _values = Arrays.copyOf(_values, grow(_values.length, capacity));
+      }
+    }
+  }
+
+  /**
+   * Builder for <code>long[]</code>.
+   */
+  public static final class OfLong extends ArrayBuilder {
+    private long[] _values = new long[0];
+
+    OfLong() {
+      super(Long.TYPE);
+    }
+
+    /**
+     * Appends a value.
+     * 
+     * @param value The value to append.
+     */
+    public void addLong(final long value) {
+      if (_size == _values.length) {
+        ensureCapacity(_size + 1);
+      }
+      _values[_size++] = value;
+    }
+
+    protected void addValue(final Object value) {
+      addLong(toLong(value));
+    }
+
+    protected Object values() {
+      return _values;
+    }
+
+    protected void ensureCapacity(final int capacity) {
+      if (capacity > _values.length) {
+        _values = Arrays.copyOf(_values, grow(_values.length, capacity));
+      }
+    }
+  }
+
+  /**
+   * Builder for <code>double[]</code>.
+   */
+  public static final class OfDouble extends ArrayBuilder {
+    private double[] _values = new double[0];
+
+    OfDouble() {
+      super(Double.TYPE);
+    }
+
+    /**
+     * Appends a value.
+     * 
+     * @param value The value to append.
+     */
+    public void addDouble(final double value) {
+      if (_size == _values.length) {
+        ensureCapacity(_size + 1);
+      }
+      _values[_size++] = value;
+    }
+
+    protected void addValue(final Object value) {
+      addDouble(toDouble(value));
+    }
+
+    protected Object values() {
+      return _values;
+    }
+
+    protected void ensureCapacity(final int capacity) {
+      if (capacity > _values.length) {
+        _values = Arrays.copyOf(_values, grow(_values.length, capacity));
+      }
+    }
+  }
+
+  /**
+   * Builder for <code>float[]</code>.
+   */
+  public static final class OfFloat extends ArrayBuilder {
+    private float[] _values = new float[0];
+
+    OfFloat() {
+      super(Float.TYPE);
+    }
+
+    /**
+     * Appends a value.
+     * 
+     * @param value The value to append.
+     */
+    public void addFloat(final float value) {
+      if (_size == _values.length) {
+        ensureCapacity(_size + 1);
+      }
+      _values[_size++] = value;
+    }
+
+    protected void addValue(final Object value) {
+      addFloat(toFloat(value));
+    }
+
+    protected Object values() {
+      return _values;
+    }
+
+    protected void ensureCapacity(final int capacity) {
+      if (capacity > _values.length) {
+        _values = Arrays.copyOf(_values, grow(_values.length, capacity));
+      }
+    }
+  }
+
+  /**
+   * Builder for <code>short[]</code>.
+   */
+  public static final class OfShort extends ArrayBuilder {
+    private short[] _values = new short[0];
+
+    OfShort() {
+      super(Short.TYPE);
+    }
+
+    /**
+     * Appends a value.
+     * 
+     * @param value The value to append.
+     */
+    public void addShort(final short value) {
+      if (_size == _values.length) {
+        ensureCapacity(_size + 1);
+      }
+      _values[_size++] = value;
+    }
+
+    protected void addValue(final Object value) {
+      if (value instanceof Byte) {
+        addShort(((Byte) value).byteValue());
+      } else {
+        addShort(((Short) value).shortValue());
+      }
+    }
+
+    protected Object values() {
+      return _values;
+    }
+
+    protected void ensureCapacity(final int capacity) {
+      if (capacity > _values.length) {
+        _values = Arrays.copyOf(_values, grow(_values.length, capacity));
+      }
+    }
+  }
+
+  /**
+   * Builder for <code>byte[]</code>.
+   */
+  public static final class OfByte extends ArrayBuilder {
+    private byte[] _values = new byte[0];
+
+    OfByte() {
+      super(Byte.TYPE);
+    }
+
+    /**
+     * Appends a value.
+     * 
+     * @param value The value to append.
+     */
+    public void addByte(final byte value) {
+      if (_size == _values.length) {
+        ensureCapacity(_size + 1);
+      }
+      _values[_size++] = value;
+    }
+
+    protected void addValue(final Object value) {
+      addByte(((Byte) value).byteValue());
+    }
+
+    protected Object values() {
+      return _values;
+    }
+
+    protected void ensureCapacity(final int capacity) {
+      if (capacity > _values.length) {
+        _values = Arrays.copyOf(_values, grow(_values.length, capacity));
+      }
+    }
+  }
+
+  /**
+   * Builder for <code>char[]</code>.
+   */
+  public static final class OfChar extends ArrayBuilder {
+    private char[] _values = new char[0];
+
+    OfChar() {
+      super(Character.TYPE);
+    }
+
+    /**
+     * Appends a value.
+     * 
+     * @param value The value to append.
+     */
+    public void addChar(final char value) {
+      if (_size == _values.length) {
+        ensureCapacity(_size + 1);
+      }
+      _values[_size++] = value;
+    }
+
+    protected void addValue(final Object value) {
+      addChar(((Character) value).charValue());
+    }
+
+    protected Object values() {
+      return _values;
+    }
+
+    protected void ensureCapacity(final int capacity) {
+      if (capacity > _values.length) {
+        _values = Arrays.copyOf(_values, grow(_values.length, capacity));
+      }
+    }
+  }
+
+  /**
+   * Builder for <code>boolean[]</code>.
+   */
+  public static final class OfBoolean extends ArrayBuilder {
+    private boolean[] _values = new boolean[0];
+
+    OfBoolean() {
+      super(Boolean.TYPE);
+    }
+
+    /**
+     * Appends a value.
+     * 
+     * @param value The value to append.
+     */
+    public void addBoolean(final boolean value) {
+      if (_size == _values.length) {
+        ensureCapacity(_size + 1);
+      }
+      _values[_size++] = value;
+    }
+
+    protected void addValue(final Object value) {
+      addBoolean(((Boolean) value).booleanValue());
+    }
+
+    protected Object values() {
+      return _values;
+    }
+
+    protected void ensureCapacity(final int capacity) {
+      if (capacity > _values.length) {
+        _values = Arrays.copyOf(_values, grow(_values.length, capacity));
+      }
+    }
+  }
+}
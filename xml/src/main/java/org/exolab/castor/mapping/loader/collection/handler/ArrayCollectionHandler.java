@@ -29,12 +29,10 @@ public final class ArrayCollectionHandler<T> implements CollectionHandler<T> {
 
     type = type.getComponentType();
 
-    Object newArray = Array.newInstance(type, Array.getLength(collection) + 1);
-
-    for (int i = 0; i < Array.getLength(collection); ++i)
-      Array.set(newArray, i, Array.get(collection, i));
-
-    Array.set(newArray, Array.getLength(collection), object);
+    int length = Array.getLength(collection);
+    Object newArray = Array.newInstance(type, length + 1);
+    System.arraycopy(collection, 0, newArray, 0, length);
+    Array.set(newArray, length, object);
 
     return newArray;
 
@@ -0,0 +1,1108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.exolab.castor.mapping.ClassDescriptor;
+import org.exolab.castor.mapping.CollectionHandler;
+import org.exolab.castor.mapping.FieldDescriptor;
+import org.exolab.castor.mapping.FieldHandler;
+import org.exolab.castor.mapping.GeneralizedFieldHandler;
+import org.exolab.castor.mapping.MappingException;
+import org.exolab.castor.mapping.loader.CollectionHandlers;
+import org.exolab.castor.mapping.loader.FieldHandlerImpl;
+import org.exolab.castor.mapping.loader.Types;
+import org.exolab.castor.util.CommandLineOptions;
+import org.exolab.castor.xml.Introspector;
+import org.exolab.castor.xml.MarshalException;
+import org.exolab.castor.xml.NodeType;
+import org.exolab.castor.xml.XMLClassDescriptor;
+import org.exolab.castor.xml.XMLConstants;
+import org.exolab.castor.xml.XMLContext;
+import org.exolab.castor.xml.XMLFieldDescriptor;
+import org.exolab.castor.xml.handlers.DateFieldHandler;
+
+/**
+ * A tool which generates, at build time, the XML class descriptors of classes that would
+ * otherwise be introspected on first use. The descriptors are created by the same
+ * {@link Introspector} rules as at runtime, but the generated classes access fields and methods
+ * directly instead of through reflection. Each package gets a <tt>.castor.cdr</tt> file listing
+ * its descriptors, so that the descriptors are loaded by the
+ * {@link org.exolab.castor.xml.util.resolvers.ByCDR} resolver instead of introspecting the
+ * classes.
+ * <p>
+ * The tool has to be run with the same Castor properties as the application, as these control
+ * the naming and node types chosen by introspection. Classes whose descriptor cannot be expressed
+ * without reflection, such as classes that are not public, are not generated and are left to
+ * runtime introspection; see {@link #getSkippedClasses()}.
+ *
+ * @see MappingTool
+ * @since 1.4.2
+ */
+public class DescriptorGenerator {
+
+  /** The extension of class files. */
+  private static final String CLASS_EXTENSION = ".class";
+
+  /** The name of the local variable holding the collection handler of a field. */
+  private static final String COLLECTION_HANDLER = "colHandler";
+
+  /** The Introspector creating the descriptors. */
+  private final Introspector _introspector;
+
+  /** The class loader used to load classes by name. */
+  private ClassLoader _classLoader;
+
+  /** The source of the descriptor of each class added, in order. */
+  private final Map<Class<?>, String> _sources = new LinkedHashMap<>();
+
+  /** The reason why each class that cannot be generated has been skipped, by class name. */
+  private final Map<String, String> _skipped = new LinkedHashMap<>();
+
+  /**
+   * Command line method.
+   *
+   * @param args the command line parameters
+   */
+  public static void main(final String[] args) {
+    CommandLineOptions allOptions = new CommandLineOptions();
+
+    // -- Input classname flag
+    String desc = "Sets the input classes, separated by commas";
+    allOptions.addFlag("i", "classnames", desc, true);
+
+    // -- Input package flag
+    desc = "Sets the packages whose classes are input, separated by commas";
+    allOptions.addFlag("p", "packages", desc, true);
+
+    // -- Source destination flag
+    desc = "Sets the destination directory of the descriptor sources";
+    allOptions.addFlag("d", "directory", desc, true);
+
+    // -- Resource destination flag
+    desc = "Sets the destination directory of the .castor.cdr files";
+    allOptions.addFlag("r", "directory", desc, true);
+
+    // -- Help flag
+    desc = "Displays this help screen.";
+    allOptions.addFlag("h", "", desc, true);
+
+    // -- Process the specified command line options
+    Properties options = allOptions.getOptions(args);
+
+    // -- check for help option
+    if (options.getProperty("h") != null) {
+      PrintWriter pw = new PrintWriter(System.out, true);
+      allOptions.printHelp(pw);
+      pw.flush();
+      return;
+    }
+
+    String classnames = options.getProperty("i");
+    String packages = options.getProperty("p");
+
+    if ((classnames == null) && (packages == null)) {
+      PrintWriter pw = new PrintWriter(System.out, true);
+      allOptions.printUsage(pw);
+      pw.flush();
+      return;
+    }
+
+    File sourceDirectory = new File(options.getProperty("d", "."));
+    File resourceDirectory = sourceDirectory;
+    if (options.getProperty("r") != null) {
+      resourceDirectory = new File(options.getProperty("r"));
+    }
+
+    try {
+      DescriptorGenerator generator = new DescriptorGenerator();
+      if (classnames != null) {
+        StringTokenizer tokens = new StringTokenizer(classnames, ",");
+        while (tokens.hasMoreTokens()) {
+          generator.addClass(tokens.nextToken().trim());
+        }
+      }
+      if (packages != null) {
+        StringTokenizer tokens = new StringTokenizer(packages, ",");
+        while (tokens.hasMoreTokens()) {
+          generator.addPackage(tokens.nextToken().trim());
+        }
+      }
+      generator.write(sourceDirectory, resourceDirectory);
+
+      System.out.println("Generated " + generator.getGeneratedClasses().size()
+          + " descriptors to " + sourceDirectory);
+      for (Map.Entry<String, String> skipped : generator.getSkippedClasses().entrySet()) {
+        System.out.println("Skipped " + skipped.getKey() + ": " + skipped.getValue());
+      }
+    } catch (Exception except) {
+      System.out.println(except);
+      except.printStackTrace();
+    }
+  } // -- main
+
+  /**
+   * Creates a DescriptorGenerator which introspects classes as a default {@link XMLContext} does.
+   */
+  public DescriptorGenerator() {
+    this(new XMLContext());
+  } // -- DescriptorGenerator
+
+  /**
+   * Creates a DescriptorGenerator which introspects classes as the given {@link XMLContext} does.
+   *
+   * @param context the XMLContext whose Introspector is used
+   */
+  public DescriptorGenerator(final XMLContext context) {
+    _introspector = context.getInternalContext().getIntrospector();
+  } // -- DescriptorGenerator
+
+  /**
+   * Sets the class loader used to load the classes added by name or by package. The context class
+   * loader of the current thread is used by default.
+   *
+   * @param classLoader the class loader to use
+   */
+  public void setClassLoader(final ClassLoader classLoader) {
+    _classLoader = classLoader;
+  } // -- setClassLoader
+
+  /**
+   * Adds the Class, specified by the given name, its superclasses and the classes of its fields.
+   *
+   * @param name the name of the Class to add
+   * @throws ClassNotFoundException if the Class cannot be loaded
+   */
+  public void addClass(final String name) throws ClassNotFoundException {
+    addClass(Class.forName(name, false, getClassLoader()));
+  } // -- addClass
+
+  /**
+   * Adds the given Class, its superclasses and the classes of its fields, as the
+   * {@link MappingTool} does. If the descriptor of a class cannot be generated, the class is
+   * listed by {@link #getSkippedClasses()} instead.
+   *
+   * @param type the Class to add
+   */
+  public void addClass(final Class<?> type) {
+    if (_sources.containsKey(type) || _skipped.containsKey(type.getName())) {
+      return;
+    }
+
+    String reason = getUnsupportedReason(type);
+    if (reason == null) {
+      try {
+        XMLClassDescriptor descriptor = _introspector.generateClassDescriptor(type);
+        if (!Introspector.introspected(descriptor)) {
+          // -- built-in descriptors are never introspected
+          return;
+        }
+        ClassDescriptor parent = descriptor.getExtends();
+        if (parent != null) {
+          addClass(parent.getJavaClass());
+          if (!_sources.containsKey(parent.getJavaClass())) {
+            reason = "the descriptor of its superclass is not generated";
+          }
+        }
+        if (reason == null) {
+          _sources.put(type, createSource(descriptor));
+          addFieldClasses(descriptor);
+        }
+      } catch (MarshalException except) {
+        reason = except.getMessage();
+      } catch (IllegalArgumentException except) {
+        reason = except.getMessage();
+      }
+    }
+
+    if (reason != null) {
+      _skipped.put(type.getName(), reason);
+    }
+  } // -- addClass
+
+  /**
+   * Adds the classes of the given package, as found by the class loader, without the classes of
+   * its sub packages. Interfaces, enums, annotations, anonymous and local classes, and class
+   * descriptors are ignored.
+   *
+   * @param packageName the name of the package
+   * @throws IOException if the package cannot be listed
+   */
+  public void addPackage(final String packageName) throws IOException {
+    String path = packageName.replace('.', '/');
+    Set<String> classNames = new TreeSet<>();
+
+    Enumeration<URL> resources = getClassLoader().getResources(path);
+    while (resources.hasMoreElements()) {
+      URL url = resources.nextElement();
+      if ("file".equals(url.getProtocol())) {
+        File[] files = new File(URLDecoder.decode(url.getPath(), "UTF-8")).listFiles();
+        if (files != null) {
+          for (File file : files) {
+            addClassName(packageName, file.getName(), classNames);
+          }
+        }
+      } else if ("jar".equals(url.getProtocol())) {
+        JarURLConnection connection = (JarURLConnection) url.openConnection();
+        connection.setUseCaches(false);
+        JarFile jar = connection.getJarFile();
+        try {
+          Enumeration<JarEntry> entries = jar.entries();
+          while (entries.hasMoreElements()) {
+            String entry = entries.nextElement().getName();
+            if (entry.startsWith(path + "/")) {
+              addClassName(packageName, entry.substring(path.length() + 1), classNames);
+            }
+          }
+        } finally {
+          jar.close();
+        }
+      }
+    }
+
+    for (String className : classNames) {
+      Class<?> type;
+      try {
+        type = Class.forName(className, false, getClassLoader());
+      } catch (ClassNotFoundException except) {
+        _skipped.put(className, "it cannot be loaded: " + except.getMessage());
+        continue;
+      } catch (LinkageError except) {
+        _skipped.put(className, "it cannot be loaded: " + except);
+        continue;
+      }
+      if (type.isInterface() || type.isEnum() || type.isAnonymousClass() || type.isLocalClass()
+          || ClassDescriptor.class.isAssignableFrom(type)) {
+        continue;
+      }
+      addClass(type);
+    }
+  } // -- addPackage
+
+  /**
+   * Returns the classes whose descriptor has been generated, in the order they have been added.
+   *
+   * @return the classes whose descriptor has been generated
+   */
+  public Set<Class<?>> getGeneratedClasses() {
+    return Collections.unmodifiableSet(_sources.keySet());
+  } // -- getGeneratedClasses
+
+  /**
+   * Returns the classes whose descriptor cannot be generated, which are introspected at runtime.
+   *
+   * @return the reason why each of these classes has been skipped, by class name
+   */
+  public Map<String, String> getSkippedClasses() {
+    return Collections.unmodifiableMap(_skipped);
+  } // -- getSkippedClasses
+
+  /**
+   * Returns the source of the descriptor generated for the given class.
+   *
+   * @param type the Class added
+   * @return the source of its descriptor, or null if its descriptor has not been generated
+   */
+  public String getSource(final Class<?> type) {
+    return _sources.get(type);
+  } // -- getSource
+
+  /**
+   * Writes the sources of the descriptors generated, and adds them to the <tt>.castor.cdr</tt>
+   * file of the package of their class. Existing entries of these files are kept.
+   *
+   * @param sourceDirectory the directory to write the descriptor sources to
+   * @param resourceDirectory the directory to write the <tt>.castor.cdr</tt> files to
+   * @throws IOException if a file cannot be written, or an existing file cannot be read
+   */
+  public void write(final File sourceDirectory, final File resourceDirectory) throws IOException {
+    Map<File, Properties> cdrFiles = new LinkedHashMap<>();
+
+    for (Map.Entry<Class<?>, String> entry : _sources.entrySet()) {
+      Class<?> type = entry.getKey();
+      String descriptorClassName = getDescriptorClassName(type);
+
+      File source = new File(sourceDirectory,
+          descriptorClassName.replace('.', File.separatorChar) + ".java");
+      Writer writer = new OutputStreamWriter(createFile(source), "UTF-8");
+      try {
+        writer.write(entry.getValue());
+      } finally {
+        writer.close();
+      }
+
+      String packageName = type.getName().substring(0, type.getName().lastIndexOf('.'));
+      File packageDirectory =
+          new File(resourceDirectory, packageName.replace('.', File.separatorChar));
+      File cdrFile = new File(packageDirectory, XMLConstants.PKG_CDR_LIST_FILE);
+      Properties cdr = cdrFiles.get(cdrFile);
+      if (cdr == null) {
+        cdr = new Properties();
+        if (cdrFile.exists()) {
+          InputStream in = new FileInputStream(cdrFile);
+          try {
+            cdr.load(in);
+          } finally {
+            in.close();
+          }
+        }
+        cdrFiles.put(cdrFile, cdr);
+      }
+      cdr.setProperty(type.getName(), descriptorClassName);
+    }
+
+    for (Map.Entry<File, Properties> entry : cdrFiles.entrySet()) {
+      OutputStream out = createFile(entry.getKey());
+      try {
+        entry.getValue().store(out, null);
+      } finally {
+        out.close();
+      }
+    }
+  } // -- write
+
+  /**
+   * Returns the name of the descriptor class generated for the given class: the class name, with
+   * '$' replaced by '_' for member classes, suffixed by {@link XMLConstants#DESCRIPTOR_SUFFIX}, in
+   * the {@link XMLConstants#DESCRIPTOR_PACKAGE} sub package of the package of the class.
+   *
+   * @param type the class described
+   * @return the fully qualified name of its descriptor class
+   */
+  public static String getDescriptorClassName(final Class<?> type) {
+    String name = type.getName();
+    int idx = name.lastIndexOf('.');
+    return name.substring(0, idx + 1) + XMLConstants.DESCRIPTOR_PACKAGE + "."
+        + name.substring(idx + 1).replace('$', '_') + XMLConstants.DESCRIPTOR_SUFFIX;
+  } // -- getDescriptorClassName
+
+  /**
+   * Adds the classes of the fields of the given descriptor which are not part of the JDK.
+   */
+  private void addFieldClasses(final XMLClassDescriptor descriptor) {
+    FieldDescriptor[] fields = descriptor.getFields();
+    for (int i = 0; i < fields.length; i++) {
+      Class<?> type = fields[i].getFieldType();
+      while (type.isArray()) {
+        type = type.getComponentType();
+      }
+      if (!type.isPrimitive() && !type.isInterface() && !type.isEnum()
+          && !type.getName().startsWith("java.") && !type.getName().startsWith("javax.")) {
+        addClass(type);
+      }
+    }
+  } // -- addFieldClasses
+
+  /**
+   * Adds the name of the class stored in the given file of a package to the given set, if the file
+   * is a class file.
+   */
+  private static void addClassName(final String packageName, final String fileName,
+      final Set<String> classNames) {
+    if (fileName.endsWith(CLASS_EXTENSION) && (fileName.indexOf('/') < 0)
+        && !fileName.startsWith("package-info")) {
+      classNames.add(
+          packageName + "." + fileName.substring(0, fileName.length() - CLASS_EXTENSION.length()));
+    }
+  } // -- addClassName
+
+  /**
+   * Returns the class loader used to load classes by name.
+   */
+  private ClassLoader getClassLoader() {
+    if (_classLoader != null) {
+      return _classLoader;
+    }
+    ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    return (loader != null) ? loader : getClass().getClassLoader();
+  } // -- getClassLoader
+
+  /**
+   * Returns why the descriptor of the given class cannot be generated, or null if it can.
+   */
+  private static String getUnsupportedReason(final Class<?> type) {
+    if (type.isPrimitive() || type.isArray() || type.isInterface() || type.isEnum()) {
+      return "it is not a class";
+    }
+    if (type.getName().indexOf('.') < 0) {
+      return "it is in the default package";
+    }
+    if (!isAccessible(type)) {
+      return "it is not public";
+    }
+    if (ClassDescriptor.class.isAssignableFrom(type)) {
+      return "it is a class descriptor";
+    }
+    return null;
+  } // -- getUnsupportedReason
+
+  /**
+   * Creates the source of a descriptor class with the same fields as the given descriptor.
+   *
+   * @param descriptor a descriptor created by introspection
+   * @return the source of the descriptor class
+   * @throws IllegalArgumentException if one of the fields cannot be accessed without reflection
+   */
+  private String createSource(final XMLClassDescriptor descriptor) {
+    Class<?> type = descriptor.getJavaClass();
+    String descriptorClassName = getDescriptorClassName(type);
+    int idx = descriptorClassName.lastIndexOf('.');
+
+    SourceWriter out = new SourceWriter();
+    out.add("/*");
+    out.add(" * This class was automatically generated with Castor's DescriptorGenerator,");
+    out.add(" * using the introspection rules. Do not edit.");
+    out.add(" */");
+    out.add("");
+    out.add("package " + descriptorClassName.substring(0, idx) + ";");
+    out.add("");
+    out.add("/**");
+    out.add(" * Class " + descriptorClassName.substring(idx + 1) + ".");
+    out.add(" */");
+    out.add("@SuppressWarnings(\"all\")");
+    out.add("public class " + descriptorClassName.substring(idx + 1)
+        + " extends org.exolab.castor.xml.util.XMLClassDescriptorImpl {");
+    out.indent();
+    out.add("");
+    out.add("public " + descriptorClassName.substring(idx + 1) + "() {");
+    out.indent();
+    if (descriptor.getXMLName() == null) {
+      out.add("super(" + getTypeName(type) + ".class);");
+    } else {
+      out.add("super(" + getTypeName(type) + ".class, " + quote(descriptor.getXMLName()) + ");");
+    }
+    out.add("setIntrospected(true);");
+
+    FieldDescriptor[] fields = descriptor.getFields();
+    boolean declared = false;
+    boolean collections = false;
+    int count = 0;
+    for (int i = 0; i < fields.length; i++) {
+      XMLFieldDescriptor field = (XMLFieldDescriptor) fields[i];
+      // -- fields of super classes are added by their own descriptor
+      if (field.getContainingClassDescriptor() != descriptor) {
+        continue;
+      }
+      if (!declared) {
+        out.add("org.exolab.castor.xml.util.XMLFieldDescriptorImpl desc = null;");
+        out.add("org.exolab.castor.mapping.FieldHandler handler = null;");
+        declared = true;
+      }
+      out.add("");
+      out.add("//-- " + field.getFieldName());
+      collections |= createField(out, type, field, ++count);
+    }
+
+    ClassDescriptor parent = descriptor.getExtends();
+    if (parent != null) {
+      out.add("");
+      out.add("setExtends(new " + getDescriptorClassName(parent.getJavaClass()) + "());");
+    }
+    out.unindent();
+    out.add("}");
+
+    if (collections) {
+      out.add("");
+      out.add("private static org.exolab.castor.mapping.CollectionHandler getCollectionHandler("
+          + "final java.lang.Class type) {");
+      out.indent();
+      out.add("try {");
+      out.addIndented(
+          "return org.exolab.castor.mapping.loader.CollectionHandlers.getHandler(type);");
+      out.add("} catch (org.exolab.castor.mapping.MappingException except) {");
+      out.addIndented("throw new java.lang.IllegalStateException(except.getMessage());");
+      out.add("}");
+      out.unindent();
+      out.add("}");
+    }
+    out.unindent();
+    out.add("}");
+    return out.toString();
+  } // -- createSource
+
+  /**
+   * Adds the statements creating and adding the descriptor of the given field, and returns true if
+   * they use a collection handler.
+   */
+  private boolean createField(final SourceWriter out, final Class<?> type,
+      final XMLFieldDescriptor field, final int count) {
+    Class<?> fieldType = field.getFieldType();
+    checkAccessible(fieldType, field);
+
+    FieldHandler handler = field.getHandler();
+    DateFieldHandler dateHandler = null;
+    GeneralizedFieldHandler generalizedHandler = null;
+    if (handler instanceof DateFieldHandler) {
+      dateHandler = (DateFieldHandler) handler;
+      handler = dateHandler.getFieldHandler();
+    } else if (handler instanceof GeneralizedFieldHandler) {
+      generalizedHandler = (GeneralizedFieldHandler) handler;
+      handler = generalizedHandler.getFieldHandler();
+      if (!isConstructable(generalizedHandler.getClass())) {
+        throw new IllegalArgumentException("the handler of field '" + field.getFieldName()
+            + "' cannot be created without reflection");
+      }
+    }
+    if (!(handler instanceof FieldHandlerImpl)) {
+      throw new IllegalArgumentException("field '" + field.getFieldName() + "' uses a "
+          + ((handler == null) ? "null" : handler.getClass().getName()) + " handler");
+    }
+    FieldHandlerImpl impl = (FieldHandlerImpl) handler;
+    // -- the Introspector only sets its identity convertor, used for maps
+    if ((impl.getConvertTo() != null) || ((impl.getConvertFrom() != null)
+        && (impl.getConvertFrom().getClass().getEnclosingClass() != Introspector.class))) {
+      throw new IllegalArgumentException(
+          "field '" + field.getFieldName() + "' uses a type convertor");
+    }
+
+    String xmlName = field.getXMLName();
+    out.add("desc = new org.exolab.castor.xml.util.XMLFieldDescriptorImpl("
+        + getTypeName(fieldType) + ".class, " + quote(field.getFieldName()) + ", "
+        + quote(xmlName) + ", null);");
+    out.add("desc.setNodeType(org.exolab.castor.xml.NodeType."
+        + getNodeTypeName(field.getNodeType()) + ");");
+    if (field.isMultivalued()) {
+      out.add("desc.setMultivalued(true);");
+    }
+    if ((fieldType == Object.class) && (xmlName != null)) {
+      out.add("desc.setMatches(" + quote(xmlName + " *") + ");");
+    }
+    if (field.isImmutable()) {
+      out.add("desc.setImmutable(true);");
+    }
+
+    String collectionHandler = null;
+    if ((impl.getCollectionHandler() != null) && (impl.getAddMethod() == null)) {
+      collectionHandler = COLLECTION_HANDLER + count;
+      out.add("final org.exolab.castor.mapping.CollectionHandler " + collectionHandler
+          + " = getCollectionHandler(" + getTypeName(getCollectionType(impl, field)) + ".class);");
+    }
+
+    String target = getTypeName(type);
+    out.add("handler = new org.exolab.castor.xml.XMLFieldHandler() {");
+    out.indent();
+    createGetValue(out, target, impl, collectionHandler);
+    createSetValue(out, target, impl, collectionHandler, field);
+    createResetValue(out, target, impl, collectionHandler);
+    createNewInstance(out, target, impl);
+    out.unindent();
+    out.add("};");
+
+    if (generalizedHandler != null) {
+      out.add("org.exolab.castor.mapping.GeneralizedFieldHandler generalizedHandler" + count
+          + " = new " + getTypeName(generalizedHandler.getClass()) + "();");
+      out.add("generalizedHandler" + count + ".setFieldHandler(handler);");
+      out.add("handler = generalizedHandler" + count + ";");
+    }
+    if (dateHandler != null) {
+      out.add("handler = new org.exolab.castor.xml.handlers.DateFieldHandler(handler);");
+      if (java.sql.Date.class.isAssignableFrom(fieldType)) {
+        out.add(
+            "((org.exolab.castor.xml.handlers.DateFieldHandler) handler).setUseSQLDate(true);");
+      }
+    }
+    out.add("desc.setHandler(handler);");
+    out.add("desc.setUseParentsNamespace(true);");
+    out.add("addFieldDescriptor(desc);");
+    return (collectionHandler != null);
+  } // -- createField
+
+  /**
+   * Adds the getValue method of a field handler, which behaves as the one of the given
+   * {@link FieldHandlerImpl}.
+   */
+  private void createGetValue(final SourceWriter out, final String target,
+      final FieldHandlerImpl impl, final String collectionHandler) {
+    String value = getReadExpression(impl);
+
+    out.add("public java.lang.Object getValue(java.lang.Object object) "
+        + "throws IllegalStateException {");
+    out.indent();
+    if (value == null) {
+      value = "null";
+    } else {
+      out.add(target + " target = (" + target + ") object;");
+    }
+    if ((collectionHandler != null) && (impl.getConvertFrom() == null)) {
+      out.add("java.lang.Object value = " + value + ";");
+      out.add("if (value == null) {");
+      out.addIndented(
+          "return new org.exolab.castor.mapping.loader.CollectionHandlers.EmptyEnumerator();");
+      out.add("}");
+      out.add("return " + collectionHandler + ".elements(value);");
+    } else {
+      out.add("return " + value + ";");
+    }
+    out.unindent();
+    out.add("}");
+  } // -- createGetValue
+
+  /**
+   * Adds the setValue method of a field handler, which behaves as the one of the given
+   * {@link FieldHandlerImpl}.
+   */
+  private void createSetValue(final SourceWriter out, final String target,
+      final FieldHandlerImpl impl, final String collectionHandler, final XMLFieldDescriptor field) {
+    Field javaField = impl.getField();
+    Method setMethod = impl.getWriteMethod();
+    Method addMethod = impl.getAddMethod();
+
+    out.add("public void setValue(java.lang.Object object, java.lang.Object value) "
+        + "throws IllegalStateException, IllegalArgumentException {");
+    out.indent();
+
+    if (collectionHandler == null) {
+      String statement = null;
+      if (javaField != null) {
+        checkAccessible(javaField.getType(), field);
+        statement = "target." + javaField.getName() + " = "
+            + convert(javaField.getType(), impl.getDefaultValue()) + ";";
+      } else if (setMethod != null) {
+        Class<?> setType = setMethod.getParameterTypes()[0];
+        checkAccessible(setType, field);
+        String set = "target." + setMethod.getName() + "("
+            + convert(setType, impl.getDefaultValue()) + ");";
+        if ((addMethod == null) || setType.isPrimitive()) {
+          // -- the add method is used for any value if the set method takes a primitive
+          statement = (addMethod == null) ? set : createAdd(addMethod, field);
+        } else {
+          out.add("if ((value == null) || (value instanceof " + getTypeName(setType) + ")) {");
+          out.indent();
+          out.add(target + " target = (" + target + ") object;");
+          out.add(set);
+          out.add("return;");
+          out.unindent();
+          out.add("}");
+          statement = createAdd(addMethod, field);
+        }
+      } else if (addMethod != null) {
+        statement = createAdd(addMethod, field);
+      }
+      if (statement != null) {
+        out.add("try {");
+        out.indent();
+        out.add(target + " target = (" + target + ") object;");
+        out.add(statement);
+        out.unindent();
+        out.add("} catch (java.lang.ClassCastException except) {");
+        out.addIndented("throw new java.lang.IllegalArgumentException(except.toString());");
+        out.add("}");
+      }
+    } else if ((javaField != null) || (impl.getReadMethod() != null)) {
+      Class<?> collectionType;
+      if (javaField != null) {
+        collectionType = javaField.getType();
+      } else {
+        collectionType = impl.getReadMethod().getReturnType();
+      }
+      checkAccessible(collectionType, field);
+
+      out.add("if (value == null) {");
+      out.addIndented("return;");
+      out.add("}");
+      out.add(target + " target = (" + target + ") object;");
+      out.add("java.lang.Object collection = " + getReadExpression(impl) + ";");
+      if (javaField == null) {
+        out.add("boolean setCollection = (collection == null) || collection.getClass().isArray();");
+      }
+      if (collectionType.isArray()) {
+        Class<?> componentType = collectionType.getComponentType();
+        String condition = "collection == null";
+        if (!componentType.isPrimitive()) {
+          condition += " && !value.getClass().isArray() && (value.getClass() != "
+              + getTypeName(componentType) + ".class)";
+        }
+        out.add("if (" + condition + ") {");
+        out.addIndented("collection = " + createEmptyArray(componentType) + ";");
+        out.add("}");
+      }
+      out.add("java.lang.Object added = " + collectionHandler + ".add(collection, value);");
+      if (javaField != null) {
+        out.add("if (added != null) {");
+        out.addIndented(
+            "target." + javaField.getName() + " = (" + getTypeName(collectionType) + ") added;");
+        out.add("}");
+      } else if (setMethod != null) {
+        Class<?> setType = setMethod.getParameterTypes()[0];
+        checkAccessible(setType, field);
+        out.add("if (added != null) {");
+        out.addIndented("collection = added;");
+        out.add("}");
+        out.add("if (setCollection) {");
+        out.addIndented("target." + setMethod.getName() + "((" + getTypeName(setType)
+            + ") collection);");
+        out.add("}");
+      }
+    }
+    out.unindent();
+    out.add("}");
+  } // -- createSetValue
+
+  /**
+   * Adds the resetValue method of a field handler, which behaves as the one of the given
+   * {@link FieldHandlerImpl}.
+   */
+  private void createResetValue(final SourceWriter out, final String target,
+      final FieldHandlerImpl impl, final String collectionHandler) {
+    Field javaField = impl.getField();
+    Method setMethod = impl.getWriteMethod();
+
+    out.add("public void resetValue(java.lang.Object object) "
+        + "throws IllegalStateException, IllegalArgumentException {");
+    out.indent();
+    if (collectionHandler == null) {
+      if (javaField != null) {
+        out.add(target + " target = (" + target + ") object;");
+        out.add("target." + javaField.getName() + " = "
+            + getResetValue(javaField.getType(), impl.getDefaultValue()) + ";");
+      } else if (setMethod != null) {
+        out.add(target + " target = (" + target + ") object;");
+        out.add("target." + setMethod.getName() + "("
+            + getResetValue(setMethod.getParameterTypes()[0], impl.getDefaultValue()) + ");");
+      }
+    } else if ((javaField != null) || (impl.getReadMethod() != null)) {
+      out.add(target + " target = (" + target + ") object;");
+      out.add("java.lang.Object collection = " + collectionHandler + ".clear("
+          + getReadExpression(impl) + ");");
+      if (javaField != null) {
+        out.add("if (collection != null) {");
+        out.addIndented("target." + javaField.getName() + " = ("
+            + getTypeName(javaField.getType()) + ") collection;");
+        out.add("}");
+      } else if (setMethod != null) {
+        out.add("if (collection != null) {");
+        out.addIndented("target." + setMethod.getName() + "(("
+            + getTypeName(setMethod.getParameterTypes()[0]) + ") collection);");
+        out.add("}");
+      }
+    }
+    out.unindent();
+    out.add("}");
+  } // -- createResetValue
+
+  /**
+   * Adds the newInstance method of a field handler, which behaves as the one of the given
+   * {@link FieldHandlerImpl}.
+   */
+  private void createNewInstance(final SourceWriter out, final String target,
+      final FieldHandlerImpl impl) {
+    Class<?> fieldType = impl.getFieldType();
+    Method createMethod = impl.getCreateMethod();
+
+    out.add("public java.lang.Object newInstance(java.lang.Object parent) "
+        + "throws IllegalStateException {");
+    out.indent();
+    if (fieldType.isInterface() && (createMethod == null)) {
+      out.add("return null;");
+    } else if (impl.isImmutable()) {
+      out.add("throw new IllegalStateException(org.castor.core.util.Messages.format("
+          + "\"mapping.classNotConstructable\", " + quote(fieldType.getName()) + "));");
+    } else {
+      if (createMethod != null) {
+        out.add("if (parent != null) {");
+        out.addIndented("return ((" + target + ") parent)." + createMethod.getName() + "();");
+        out.add("}");
+      }
+      if (isConstructable(fieldType)) {
+        out.add("return new " + getTypeName(fieldType) + "();");
+      } else {
+        out.add("throw new IllegalStateException(org.castor.core.util.Messages.format("
+            + "\"mapping.schemaNotConstructable\", " + quote(fieldType.getName())
+            + ", \"no public default constructor\"));");
+      }
+    }
+    out.unindent();
+    out.add("}");
+  } // -- createNewInstance
+
+  /**
+   * Returns the statement calling the given add method with the value.
+   */
+  private static String createAdd(final Method addMethod, final XMLFieldDescriptor field) {
+    Class<?> addType = addMethod.getParameterTypes()[0];
+    checkAccessible(addType, field);
+    return "target." + addMethod.getName() + "(" + convert(addType, null) + ");";
+  } // -- createAdd
+
+  /**
+   * Returns the expression reading the field on 'target', or null if it cannot be read.
+   */
+  private static String getReadExpression(final FieldHandlerImpl impl) {
+    if (impl.getField() != null) {
+      return "target." + impl.getField().getName();
+    }
+    if (impl.getReadMethod() != null) {
+      return "target." + impl.getReadMethod().getName() + "()";
+    }
+    return null;
+  } // -- getReadExpression
+
+  /**
+   * Returns the class whose collection handler is the one of the given field handler.
+   */
+  private static Class<?> getCollectionType(final FieldHandlerImpl impl,
+      final XMLFieldDescriptor field) {
+    Class<?>[] candidates = new Class<?>[] {
+        (impl.getField() != null) ? impl.getField().getType() : null,
+        (impl.getReadMethod() != null) ? impl.getReadMethod().getReturnType() : null,
+        (impl.getWriteMethod() != null) ? impl.getWriteMethod().getParameterTypes()[0] : null,
+        Object[].class};
+    for (Class<?> candidate : candidates) {
+      if ((candidate == null) || !isAccessible(candidate)) {
+        continue;
+      }
+      try {
+        if (CollectionHandlers.getHandler(candidate) == impl.getCollectionHandler()) {
+          return candidate;
+        }
+      } catch (MappingException except) {
+        // -- not a collection, try the next candidate
+      }
+    }
+    throw new IllegalArgumentException(
+        "the collection handler of field '" + field.getFieldName() + "' is not supported");
+  } // -- getCollectionType
+
+  /**
+   * Returns the expression converting 'value' to the given type, using the given default value if
+   * it is null.
+   */
+  private static String convert(final Class<?> type, final Object defaultValue) {
+    if (!type.isPrimitive()) {
+      return "(" + getTypeName(type) + ") value";
+    }
+    String unboxed;
+    if (type == Boolean.TYPE) {
+      unboxed = "((java.lang.Boolean) value).booleanValue()";
+    } else if (type == Character.TYPE) {
+      unboxed = "((java.lang.Character) value).charValue()";
+    } else {
+      unboxed = "((java.lang.Number) value)." + type.getName() + "Value()";
+    }
+    if (defaultValue == null) {
+      return unboxed;
+    }
+    return "(value == null) ? " + getLiteral(defaultValue) + " : " + unboxed;
+  } // -- convert
+
+  /**
+   * Returns the expression of the value a field of the given type is reset to.
+   */
+  private static String getResetValue(final Class<?> type, final Object defaultValue) {
+    if (defaultValue != null) {
+      return getLiteral(defaultValue);
+    }
+    if (type.isPrimitive()) {
+      return getLiteral(Types.getDefault(type));
+    }
+    return "(" + getTypeName(type) + ") null";
+  } // -- getResetValue
+
+  /**
+   * Returns the Java literal of the given primitive wrapper.
+   */
+  private static String getLiteral(final Object value) {
+    if (value instanceof Character) {
+      return "(char) " + (int) ((Character) value).charValue();
+    } else if (value instanceof Byte) {
+      return "(byte) " + value;
+    } else if (value instanceof Short) {
+      return "(short) " + value;
+    } else if (value instanceof Long) {
+      return value + "L";
+    } else if (value instanceof Float) {
+      return value + "f";
+    } else if (value instanceof Double) {
+      return value + "d";
+    }
+    return String.valueOf(value);
+  } // -- getLiteral
+
+  /**
+   * Returns the expression creating an empty array of the given component type.
+   */
+  private static String createEmptyArray(final Class<?> componentType) {
+    Class<?> type = componentType;
+    String dimensions = "[0]";
+    while (type.isArray()) {
+      type = type.getComponentType();
+      dimensions += "[]";
+    }
+    return "new " + getTypeName(type) + dimensions;
+  } // -- createEmptyArray
+
+  /**
+   * Returns the name of the NodeType constant equal to the given node type.
+   */
+  private static String getNodeTypeName(final NodeType nodeType) {
+    if (nodeType == NodeType.Attribute) {
+      return "Attribute";
+    } else if (nodeType == NodeType.Namespace) {
+      return "Namespace";
+    } else if (nodeType == NodeType.Text) {
+      return "Text";
+    }
+    return "Element";
+  } // -- getNodeTypeName
+
+  /**
+   * Returns the name of the given type in Java source.
+   */
+  private static String getTypeName(final Class<?> type) {
+    return type.getCanonicalName();
+  } // -- getTypeName
+
+  /**
+   * Returns the given string as a Java string literal, or <tt>null</tt>.
+   */
+  private static String quote(final String value) {
+    if (value == null) {
+      return "null";
+    }
+    StringBuilder buffer = new StringBuilder(value.length() + 2);
+    buffer.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char ch = value.charAt(i);
+      if ((ch == '"') || (ch == '\\')) {
+        buffer.append('\\');
+      }
+      buffer.append(ch);
+    }
+    return buffer.append('"').toString();
+  } // -- quote
+
+  /**
+   * Checks that the given type can be named in the generated descriptor of the given field.
+   */
+  private static void checkAccessible(final Class<?> type, final XMLFieldDescriptor field) {
+    if (!isAccessible(type)) {
+      throw new IllegalArgumentException("the type " + type.getName() + " of field '"
+          + field.getFieldName() + "' is not public");
+    }
+  } // -- checkAccessible
+
+  /**
+   * Returns true if the given type can be named from any package.
+   */
+  private static boolean isAccessible(final Class<?> type) {
+    Class<?> tmp = type;
+    while (tmp.isArray()) {
+      tmp = tmp.getComponentType();
+    }
+    if (tmp.isPrimitive()) {
+      return true;
+    }
+    if (tmp.isAnonymousClass() || tmp.isLocalClass()) {
+      return false;
+    }
+    while (tmp != null) {
+      if (!Modifier.isPublic(tmp.getModifiers())) {
+        return false;
+      }
+      tmp = tmp.getDeclaringClass();
+    }
+    return true;
+  } // -- isAccessible
+
+  /**
+   * Returns true if the given type can be instantiated with its public default constructor from
+   * any package.
+   */
+  private static boolean isConstructable(final Class<?> type) {
+    if (!isAccessible(type) || type.isArray() || type.isPrimitive()
+        || ((type.getModifiers() & (Modifier.ABSTRACT | Modifier.INTERFACE)) != 0)
+        || ((type.getDeclaringClass() != null) && !Modifier.isStatic(type.getModifiers()))) {
+      return false;
+    }
+    try {
+      return Modifier.isPublic(type.getConstructor().getModifiers());
+    } catch (NoSuchMethodException except) {
+      return false;
+    }
+  } // -- isConstructable
+
+  /**
+   * Creates the given file and its parent directories.
+   */
+  private static OutputStream createFile(final File file) throws IOException {
+    File directory = file.getAbsoluteFile().getParentFile();
+    if ((directory != null) && !directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create directory " + directory);
+    }
+    return new BufferedOutputStream(new FileOutputStream(file));
+  } // -- createFile
+
+  /**
+   * Collects the indented lines of a Java source.
+   */
+  private static final class SourceWriter {
+    /** The indentation of a level. */
+    private static final String INDENT = "    ";
+
+    /** The lines collected. */
+    private final StringBuilder _buffer = new StringBuilder();
+
+    /** The current indentation. */
+    private String _indentation = "";
+
+    void add(final String line) {
+      if (line.length() > 0) {
+        _buffer.append(_indentation).append(line);
+      }
+      _buffer.append('\n');
+    }
+
+    void addIndented(final String line) {
+      indent();
+      add(line);
+      unindent();
+    }
+
+    void indent() {
+      _indentation += INDENT;
+    }
+
+    void unindent() {
+      _indentation = _indentation.substring(INDENT.length());
+    }
+
+    public String toString() {
+      return _buffer.toString();
+    }
+  } // -- SourceWriter
+}
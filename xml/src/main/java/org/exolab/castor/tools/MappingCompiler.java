@@ -0,0 +1,195 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.tools;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.util.Properties;
+
+import org.castor.mapping.CompiledMapping;
+import org.exolab.castor.mapping.MappingException;
+import org.exolab.castor.util.CommandLineOptions;
+
+/**
+ * A tool which compiles mapping files at build time, so that they can be loaded with
+ * {@link org.exolab.castor.mapping.Mapping#loadCompiledMapping(URL)} without parsing XML. A
+ * mapping file is only compiled again when it or one of the mapping files it includes has changed
+ * since it has last been compiled, unless compilation is forced.
+ *
+ * @see CompiledMapping
+ * @since 1.4.2
+ */
+public class MappingCompiler {
+
+  /** The extension of mapping files, replaced by the one of compiled mappings. */
+  private static final String MAPPING_EXTENSION = ".xml";
+
+  /** Indicates whether mapping files are compiled even if their compiled mapping is up to date. */
+  private boolean _force = false;
+
+  /**
+   * Command line method.
+   *
+   * @param args the command line parameters
+   */
+  public static void main(final String[] args) {
+    CommandLineOptions allOptions = new CommandLineOptions();
+
+    // -- Input mapping file flag
+    allOptions.addFlag("i", "filename", "Sets the mapping file to compile");
+
+    // -- Output filename flag
+    String desc = "Sets the compiled mapping filename";
+    allOptions.addFlag("o", "filename", desc, true);
+
+    // -- Force flag
+    desc = "Compiles the mapping file even if the compiled mapping is up to date.";
+    allOptions.addFlag("f", "", desc, true);
+
+    // -- Help flag
+    desc = "Displays this help screen.";
+    allOptions.addFlag("h", "", desc, true);
+
+    // -- Process the specified command line options
+    Properties options = allOptions.getOptions(args);
+
+    // -- check for help option
+    if (options.getProperty("h") != null) {
+      PrintWriter pw = new PrintWriter(System.out, true);
+      allOptions.printHelp(pw);
+      pw.flush();
+      return;
+    }
+
+    String mappingName = options.getProperty("i");
+    String outputName = options.getProperty("o");
+
+    if (mappingName == null) {
+      PrintWriter pw = new PrintWriter(System.out, true);
+      allOptions.printUsage(pw);
+      pw.flush();
+      return;
+    }
+
+    File mapping = new File(mappingName);
+    File output;
+    if ((outputName == null) || (outputName.length() == 0)) {
+      output = getOutputFile(mapping, mapping.getAbsoluteFile().getParentFile());
+    } else {
+      output = new File(outputName);
+    }
+
+    try {
+      MappingCompiler compiler = new MappingCompiler();
+      compiler.setForce(options.getProperty("f") != null);
+      if (compiler.compile(mapping, output)) {
+        System.out.println("Compiled " + mapping + " to " + output);
+      } else {
+        System.out.println(output + " is up to date");
+      }
+    } catch (Exception except) {
+      System.out.println(except);
+      except.printStackTrace();
+    }
+  } // -- main
+
+  /**
+   * Sets whether mapping files are compiled even if their compiled mapping is up to date.
+   *
+   * @param force true to always compile mapping files
+   */
+  public void setForce(final boolean force) {
+    _force = force;
+  } // -- setForce
+
+  /**
+   * Compiles the given mapping file to the given file, unless the file holds a compiled mapping
+   * that is up to date with the mapping file.
+   *
+   * @param mapping the mapping file to compile
+   * @param output the file to write the compiled mapping to
+   * @return true if the mapping file has been compiled, false if it was up to date
+   * @throws IOException if the mapping file cannot be read or the compiled mapping written
+   * @throws MappingException if the mapping file is invalid
+   */
+  public boolean compile(final File mapping, final File output)
+      throws IOException, MappingException {
+    URL source = mapping.toURI().toURL();
+    if (!_force && isUpToDate(source, output)) {
+      return false;
+    }
+
+    CompiledMapping compiled = CompiledMapping.compile(source);
+
+    File directory = output.getAbsoluteFile().getParentFile();
+    if ((directory != null) && !directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create directory " + directory);
+    }
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+    try {
+      compiled.write(out);
+    } finally {
+      out.close();
+    }
+    return true;
+  } // -- compile
+
+  /**
+   * Returns the file a mapping file is compiled to in the given directory: the name of the mapping
+   * file, with the {@link CompiledMapping#FILE_EXTENSION extension of compiled mappings} instead of
+   * <tt>.xml</tt>.
+   *
+   * @param mapping the mapping file
+   * @param directory the directory to write the compiled mapping to
+   * @return the file to write the compiled mapping to
+   */
+  public static File getOutputFile(final File mapping, final File directory) {
+    String name = mapping.getName();
+    if (name.toLowerCase().endsWith(MAPPING_EXTENSION)) {
+      name = name.substring(0, name.length() - MAPPING_EXTENSION.length());
+    }
+    return new File(directory, name + CompiledMapping.FILE_EXTENSION);
+  } // -- getOutputFile
+
+  /**
+   * Checks whether the given file holds a compiled mapping up to date with the given mapping file.
+   *
+   * @param source the mapping file
+   * @param output the file holding the compiled mapping
+   * @return true if the compiled mapping is up to date
+   * @throws IOException if the mapping file cannot be read
+   */
+  private boolean isUpToDate(final URL source, final File output) throws IOException {
+    if (!output.isFile()) {
+      return false;
+    }
+    CompiledMapping compiled;
+    InputStream in = new FileInputStream(output);
+    try {
+      compiled = CompiledMapping.read(in, output.getPath());
+    } catch (IOException except) {
+      return false;
+    } catch (MappingException except) {
+      return false;
+    } finally {
+      in.close();
+    }
+    return compiled.isUpToDate(source);
+  } // -- isUpToDate
+}
@@ -37,9 +37,9 @@
 
 package org.exolab.castor.util;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 
+import org.castor.core.util.Instantiator;
 import org.exolab.castor.core.exceptions.CastorIllegalStateException;
 
 /**
@@ -87,7 +87,7 @@ public class DefaultObjectFactory implements ObjectFactory {
       if (java.util.Date.class.isAssignableFrom(type)) {
         return handleDates(type);
       }
-      return type.newInstance();
+      return instantiate(type);
     }
 
     argTypes = checkArguments(argTypes, args);
@@ -111,8 +111,7 @@ public class DefaultObjectFactory implements ObjectFactory {
   private Object instantiateUsingConstructor(Class type, Class[] argTypes, Object[] args)
       throws InstantiationException, IllegalAccessException {
     try {
-      Constructor cons = type.getConstructor(argTypes);
-      return cons.newInstance(args);
+      return Instantiator.forConstructor(type, argTypes).newInstance(args);
     } catch (java.lang.NoSuchMethodException nsmx) {
       String err = "unable to find matching public constructor for class: " + type.getName();
       err += " with argument types: ";
@@ -127,6 +126,32 @@ public class DefaultObjectFactory implements ObjectFactory {
     }
   }
 
+  /**
+   * Creates a new instance of the given type through its default constructor. Unchecked exceptions
+   * of the constructor are passed on as they are.
+   * 
+   * @param type The class type to instantiate
+   * @return An instance of the class type provided
+   * @throws InstantiationException If the given class type cannot be instantiated.
+   * @throws IllegalAccessException If the default constructor is not accessible.
+   */
+  private Object instantiate(Class type) throws InstantiationException, IllegalAccessException {
+    try {
+      return Instantiator.forClass(type).newInstance();
+    } catch (java.lang.NoSuchMethodException nsmx) {
+      throw new InstantiationException(type.getName());
+    } catch (InvocationTargetException ite) {
+      Throwable target = ite.getTargetException();
+      if (target instanceof RuntimeException) {
+        throw (RuntimeException) target;
+      }
+      if (target instanceof Error) {
+        throw (Error) target;
+      }
+      throw new CastorIllegalStateException(target.getMessage(), target);
+    }
+  }
+
   /**
    * Check the arguments (incl. argument types, if provided) for consistency, and deduce argument
    * types if not provided.
@@ -179,7 +204,7 @@ public class DefaultObjectFactory implements ObjectFactory {
       long time = date.getTime();
       return new java.sql.Timestamp(time);
     } else {
-      return type.newInstance();
+      return instantiate(type);
     }
 
   } // -- handleDates
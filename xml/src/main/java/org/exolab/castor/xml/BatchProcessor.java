@@ -0,0 +1,151 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a task for each input of a batch on an {@link Executor}, with a bounded number of inputs in
+ * flight. Inputs are taken from the batch one at a time, and only once a slot is free, so a batch
+ * backed by a queue or a directory listing is never read ahead further than the bound. The
+ * outcome of every input is recorded in a {@link BatchResult}, in the order of the input.
+ *
+ * @since 1.4.2
+ */
+final class BatchProcessor {
+
+  /**
+   * The work done for one input of a batch.
+   *
+   * @param <S> the type of the inputs
+   * @param <T> the type of the values produced
+   */
+  interface Task<S, T> {
+
+    /**
+     * Processes one input.
+     *
+     * @param input the input to process.
+     * @return the value produced for the input.
+     * @throws Exception if the input cannot be processed.
+     */
+    T process(S input) throws Exception;
+  }
+
+  /** The executor to run the tasks on. */
+  private final Executor _executor;
+
+  /** The maximum number of inputs in flight. */
+  private final int _inFlight;
+
+  /**
+   * Creates a new processor.
+   *
+   * @param executor the executor to run the tasks on, or null for the default executor.
+   * @param inFlight the maximum number of inputs in flight, at least 1.
+   */
+  BatchProcessor(final Executor executor, final int inFlight) {
+    _executor = (executor == null) ? DefaultExecutor.INSTANCE : executor;
+    _inFlight = Math.max(1, inFlight);
+  }
+
+  /**
+   * Runs the given task for each of the given inputs and waits for all of them to complete.
+   *
+   * @param inputs the inputs of the batch.
+   * @param task the task to run for each input.
+   * @return the outcome of each input, in input order.
+   * @throws InterruptedException if the calling thread is interrupted while waiting; inputs
+   *         already handed to the executor may still be running then.
+   */
+  <S, T> List<BatchResult<T>> run(final Iterable<? extends S> inputs, final Task<S, T> task)
+      throws InterruptedException {
+    final Semaphore slots = new Semaphore(_inFlight);
+    List<BatchResult<T>> results = new ArrayList<BatchResult<T>>();
+    int index = 0;
+    for (final S input : inputs) {
+      slots.acquire();
+      final BatchResult<T> result = new BatchResult<T>(index++);
+      results.add(result);
+      try {
+        _executor.execute(new Runnable() {
+          public void run() {
+            try {
+              result.succeed(task.process(input));
+            } catch (Throwable e) {
+              result.fail(e);
+            } finally {
+              slots.release();
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        result.fail(e);
+        slots.release();
+      }
+    }
+    // -- all slots free again means all inputs are done
+    slots.acquire(_inFlight);
+    return results;
+  }
+
+  /**
+   * Returns the executor used when none is configured.
+   *
+   * @return the default executor.
+   */
+  static Executor defaultExecutor() {
+    return DefaultExecutor.INSTANCE;
+  }
+
+  /**
+   * Holds the executor used when none is configured: one starting a virtual thread per task where
+   * the runtime offers virtual threads, and a pool of daemon threads, one per processor, otherwise.
+   */
+  private static final class DefaultExecutor {
+
+    /** The default executor. */
+    static final Executor INSTANCE = create();
+
+    /**
+     * Creates the default executor.
+     *
+     * @return the default executor.
+     */
+    private static Executor create() {
+      try {
+        Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        return (Executor) factory.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        // -- no virtual threads before Java 21
+      }
+      return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+          new ThreadFactory() {
+            private final AtomicInteger _count = new AtomicInteger();
+
+            public Thread newThread(final Runnable runnable) {
+              Thread thread = new Thread(runnable, "castor-batch-" + _count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+/**
+ * The outcome of one document of a batch run by {@link XMLContext#unmarshalAll} or
+ * {@link XMLContext#marshalAll}: either the value produced for the document, or the error it
+ * failed with. Results are returned in the order of the batch input, and one failing document
+ * does not affect the others.
+ *
+ * @param <T> the type of the value produced for a document
+ * @since 1.4.2
+ */
+public final class BatchResult<T> {
+
+  /** The position of the document within the batch input. */
+  private final int _index;
+
+  /** The value produced for the document. */
+  private T _value;
+
+  /** The error the document failed with, if any. */
+  private Throwable _error;
+
+  /**
+   * Creates the result of the document at the given position.
+   *
+   * @param index the position of the document within the batch input.
+   */
+  BatchResult(final int index) {
+    _index = index;
+  }
+
+  /**
+   * Records the value produced for the document.
+   *
+   * @param value the value produced.
+   */
+  void succeed(final T value) {
+    _value = value;
+  }
+
+  /**
+   * Records the error the document failed with.
+   *
+   * @param error the error.
+   */
+  void fail(final Throwable error) {
+    _error = error;
+  }
+
+  /**
+   * Returns the position of the document within the batch input, starting at 0.
+   *
+   * @return the position of the document.
+   */
+  public int getIndex() {
+    return _index;
+  }
+
+  /**
+   * Indicates whether the document failed.
+   *
+   * @return true if the document failed, false if a value was produced for it.
+   */
+  public boolean isFailed() {
+    return _error != null;
+  }
+
+  /**
+   * Returns the value produced for the document.
+   *
+   * @return the value produced, or null if the document failed.
+   */
+  public T getValue() {
+    return _value;
+  }
+
+  /**
+   * Returns the error the document failed with, typically a {@link MarshalException} or
+   * {@link ValidationException}.
+   *
+   * @return the error, or null if the document did not fail.
+   */
+  public Throwable getError() {
+    return _error;
+  }
+}
@@ -0,0 +1,308 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Constants and low-level encoding shared by {@link BinaryMarshaller} and
+ * {@link BinaryUnmarshaller}.
+ * <p>
+ * A stream starts with {@link #MAGIC} and {@link #VERSION}, followed by a single value. Every value
+ * starts with a one byte tag. Integral values are written as zig-zag encoded varints, floating
+ * point values in IEEE 754 bit layout. Strings, class names and field names are written once and
+ * referred to by their index afterwards; so are objects, which also preserves shared references
+ * and cycles. An object is written as its class name followed by the name and value of each of its
+ * non-null fields, and an empty name. As every value is tagged, fields unknown to the reader are
+ * skipped, and fields missing from the stream keep their default value.
+ *
+ * @since 1.4.2
+ */
+final class BinaryFormat {
+
+  /** Bytes every stream starts with. */
+  static final int MAGIC = 0xCA57B1A5;
+
+  /** Version of the format. */
+  static final byte VERSION = 1;
+
+  static final byte NULL = 0;
+  static final byte FALSE = 1;
+  static final byte TRUE = 2;
+  static final byte BYTE = 3;
+  static final byte SHORT = 4;
+  static final byte INT = 5;
+  static final byte LONG = 6;
+  static final byte CHAR = 7;
+  static final byte FLOAT = 8;
+  static final byte DOUBLE = 9;
+  static final byte STRING = 10;
+  static final byte BYTES = 11;
+  static final byte BIG_INTEGER = 12;
+  static final byte BIG_DECIMAL = 13;
+  static final byte DATE = 14;
+  static final byte ENUM = 15;
+  /** A value of another primitive type, written as its class name and XML text. */
+  static final byte TEXT = 16;
+  static final byte LIST = 17;
+  static final byte MAP_ITEM = 18;
+  static final byte OBJECT = 19;
+  /** A reference to an object written before. */
+  static final byte REFERENCE = 20;
+  static final byte INT_ARRAY = 21;
+  static final byte LONG_ARRAY = 22;
+  static final byte SHORT_ARRAY = 23;
+  static final byte FLOAT_ARRAY = 24;
+  static final byte DOUBLE_ARRAY = 25;
+
+  /**
+   * Hidden constructor.
+   */
+  private BinaryFormat() {
+    // nothing to do
+  }
+
+  /**
+   * Buffered writer of the primitive encodings.
+   */
+  static final class Output {
+    private final OutputStream _out;
+
+    private final byte[] _buffer = new byte[8192];
+
+    private int _position = 0;
+
+    /** Index of each string written so far. */
+    private final Map<String, Integer> _strings = new HashMap<String, Integer>();
+
+    Output(final OutputStream out) {
+      _out = out;
+    }
+
+    void writeByte(final int value) throws IOException {
+      if (_position == _buffer.length) {
+        flushBuffer();
+      }
+      _buffer[_position++] = (byte) value;
+    }
+
+    void writeBytes(final byte[] bytes) throws IOException {
+      writeVarint(bytes.length);
+      if (bytes.length > _buffer.length - _position) {
+        flushBuffer();
+        if (bytes.length > _buffer.length) {
+          _out.write(bytes);
+          return;
+        }
+      }
+      System.arraycopy(bytes, 0, _buffer, _position, bytes.length);
+      _position += bytes.length;
+    }
+
+    void writeInt(final int value) throws IOException {
+      writeByte(value >>> 24);
+      writeByte(value >>> 16);
+      writeByte(value >>> 8);
+      writeByte(value);
+    }
+
+    void writeVarint(long value) throws IOException {
+      while ((value & ~0x7FL) != 0) {
+        writeByte((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      writeByte((int) value);
+    }
+
+    void writeSignedVarint(final long value) throws IOException {
+      writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    void writeFixed32(final int value) throws IOException {
+      writeByte(value);
+      writeByte(value >>> 8);
+      writeByte(value >>> 16);
+      writeByte(value >>> 24);
+    }
+
+    void writeFixed64(final long value) throws IOException {
+      writeFixed32((int) value);
+      writeFixed32((int) (value >>> 32));
+    }
+
+    /**
+     * Writes a string, or a reference to it if it has been written before. The header is 0 for
+     * null, an odd number for a reference and an even number for a new string.
+     */
+    void writeString(final String value) throws IOException {
+      if (value == null) {
+        writeVarint(0);
+        return;
+      }
+      Integer index = _strings.get(value);
+      if (index != null) {
+        writeVarint(((long) index.intValue() << 1) | 1);
+        return;
+      }
+      _strings.put(value, Integer.valueOf(_strings.size()));
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarint((bytes.length + 1L) << 1);
+      if (bytes.length > _buffer.length - _position) {
+        flushBuffer();
+        if (bytes.length > _buffer.length) {
+          _out.write(bytes);
+          return;
+        }
+      }
+      System.arraycopy(bytes, 0, _buffer, _position, bytes.length);
+      _position += bytes.length;
+    }
+
+    void flush() throws IOException {
+      flushBuffer();
+      _out.flush();
+    }
+
+    private void flushBuffer() throws IOException {
+      if (_position > 0) {
+        _out.write(_buffer, 0, _position);
+        _position = 0;
+      }
+    }
+  }
+
+  /**
+   * Buffered reader of the primitive encodings.
+   */
+  static final class Input {
+    private final InputStream _in;
+
+    private final byte[] _buffer = new byte[8192];
+
+    private int _position = 0;
+
+    private int _limit = 0;
+
+    /** The strings read so far, by index. */
+    private final List<String> _strings = new ArrayList<String>();
+
+    Input(final InputStream in) {
+      _in = in;
+    }
+
+    int readByte() throws IOException {
+      if (_position == _limit) {
+        fill();
+      }
+      return _buffer[_position++] & 0xFF;
+    }
+
+    byte[] readBytes() throws IOException {
+      return readRaw(readLength(readVarint()));
+    }
+
+    int readInt() throws IOException {
+      return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+    }
+
+    long readVarint() throws IOException {
+      long result = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = readByte();
+        result |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return result;
+        }
+      }
+      throw new IOException("Malformed varint");
+    }
+
+    long readSignedVarint() throws IOException {
+      long value = readVarint();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readFixed32() throws IOException {
+      return readByte() | (readByte() << 8) | (readByte() << 16) | (readByte() << 24);
+    }
+
+    long readFixed64() throws IOException {
+      return (readFixed32() & 0xFFFFFFFFL) | ((long) readFixed32() << 32);
+    }
+
+    String readString() throws IOException {
+      long header = readVarint();
+      if (header == 0) {
+        return null;
+      }
+      if ((header & 1) == 1) {
+        long index = header >>> 1;
+        if (index >= _strings.size()) {
+          throw new IOException("Invalid string reference: " + index);
+        }
+        return _strings.get((int) index);
+      }
+      int length = readLength((header >>> 1) - 1);
+      String value;
+      if (length <= _limit - _position) {
+        value = new String(_buffer, _position, length, StandardCharsets.UTF_8);
+        _position += length;
+      } else {
+        value = new String(readRaw(length), StandardCharsets.UTF_8);
+      }
+      _strings.add(value);
+      return value;
+    }
+
+    /**
+     * Checks a length read from the stream.
+     */
+    int readLength(final long length) throws IOException {
+      if (length < 0 || length > Integer.MAX_VALUE) {
+        throw new IOException("Invalid length: " + length);
+      }
+      return (int) length;
+    }
+
+    private byte[] readRaw(final int length) throws IOException {
+      byte[] bytes = new byte[length];
+      int offset = Math.min(length, _limit - _position);
+      System.arraycopy(_buffer, _position, bytes, 0, offset);
+      _position += offset;
+      while (offset < length) {
+        int read = _in.read(bytes, offset, length - offset);
+        if (read < 0) {
+          throw new EOFException();
+        }
+        offset += read;
+      }
+      return bytes;
+    }
+
+    private void fill() throws IOException {
+      int read = _in.read(_buffer, 0, _buffer.length);
+      if (read <= 0) {
+        throw new EOFException();
+      }
+      _position = 0;
+      _limit = read;
+    }
+  }
+}
@@ -0,0 +1,418 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.castor.xml.InternalContext;
+import org.exolab.castor.mapping.FieldHandler;
+import org.exolab.castor.mapping.MapItem;
+
+/**
+ * Marshals object graphs into a compact binary encoding, using the same
+ * {@link XMLClassDescriptor} metadata as the {@link Marshaller}, whether it comes from a mapping
+ * file, generated descriptors or introspection. Streams written are read back with a
+ * {@link BinaryUnmarshaller} configured with the same descriptors.
+ * <p>
+ * A BinaryMarshaller may be reused, but is not thread-safe.
+ *
+ * @see BinaryFormat
+ * @since 1.4.2
+ */
+public class BinaryMarshaller extends MarshalFramework {
+
+  /** Logger for this class. */
+  private static final Log LOG = LogFactory.getLog(BinaryMarshaller.class);
+
+  /** Whether to validate objects before marshalling them. */
+  private boolean _validate;
+
+  /** The fields marshalled for each class, by class. */
+  private final Map<Class<?>, ClassFields> _classFields = new HashMap<Class<?>, ClassFields>();
+
+  /** The objects written to the current stream, with their index. */
+  private final Map<Object, Integer> _objects = new IdentityHashMap<Object, Integer>();
+
+  /**
+   * Creates a new BinaryMarshaller.
+   *
+   * @param internalContext the {@link InternalContext} providing the class descriptors; if null a
+   *        default context is created.
+   */
+  public BinaryMarshaller(final InternalContext internalContext) {
+    super(internalContext);
+    _validate = getInternalContext().marshallingValidation();
+  }
+
+  /**
+   * Sets whether objects are validated before they are marshalled.
+   *
+   * @param validate true to validate objects.
+   */
+  public void setValidation(final boolean validate) {
+    _validate = validate;
+  }
+
+  /**
+   * Marshals the given object graph.
+   *
+   * @param object the root of the graph.
+   * @return the binary encoding of the graph.
+   * @throws MarshalException if the graph cannot be marshalled.
+   * @throws ValidationException if the root object is invalid.
+   */
+  public byte[] marshal(final Object object) throws MarshalException, ValidationException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    marshal(object, out);
+    return out.toByteArray();
+  }
+
+  /**
+   * Marshals the given object graph to the given stream. The stream is flushed but not closed.
+   *
+   * @param object the root of the graph.
+   * @param out the stream to write to.
+   * @throws MarshalException if the graph cannot be marshalled or written.
+   * @throws ValidationException if the root object is invalid.
+   */
+  public void marshal(final Object object, final OutputStream out)
+      throws MarshalException, ValidationException {
+    if (_validate && object != null) {
+      Validator validator = new Validator();
+      ValidationContext context = new ValidationContext();
+      context.setInternalContext(getInternalContext());
+      validator.validate(object, context);
+    }
+    BinaryFormat.Output output = new BinaryFormat.Output(out);
+    try {
+      output.writeInt(BinaryFormat.MAGIC);
+      output.writeByte(BinaryFormat.VERSION);
+      writeValue(output, object);
+      output.flush();
+    } catch (IOException e) {
+      throw new MarshalException(e);
+    } finally {
+      _objects.clear();
+    }
+  }
+
+  /**
+   * Writes a single value.
+   */
+  private void writeValue(final BinaryFormat.Output out, final Object value)
+      throws IOException, MarshalException {
+    if (value == null) {
+      out.writeByte(BinaryFormat.NULL);
+      return;
+    }
+    Class<?> type = value.getClass();
+    if (type == String.class) {
+      out.writeByte(BinaryFormat.STRING);
+      out.writeString((String) value);
+    } else if (type == Integer.class) {
+      out.writeByte(BinaryFormat.INT);
+      out.writeSignedVarint(((Integer) value).intValue());
+    } else if (type == Long.class) {
+      out.writeByte(BinaryFormat.LONG);
+      out.writeSignedVarint(((Long) value).longValue());
+    } else if (type == Boolean.class) {
+      out.writeByte(((Boolean) value).booleanValue() ? BinaryFormat.TRUE : BinaryFormat.FALSE);
+    } else if (type == Double.class) {
+      out.writeByte(BinaryFormat.DOUBLE);
+      out.writeFixed64(Double.doubleToRawLongBits(((Double) value).doubleValue()));
+    } else if (type == Float.class) {
+      out.writeByte(BinaryFormat.FLOAT);
+      out.writeFixed32(Float.floatToRawIntBits(((Float) value).floatValue()));
+    } else if (type == Short.class) {
+      out.writeByte(BinaryFormat.SHORT);
+      out.writeSignedVarint(((Short) value).shortValue());
+    } else if (type == Byte.class) {
+      out.writeByte(BinaryFormat.BYTE);
+      out.writeSignedVarint(((Byte) value).byteValue());
+    } else if (type == Character.class) {
+      out.writeByte(BinaryFormat.CHAR);
+      out.writeVarint(((Character) value).charValue());
+    } else if (type == BigInteger.class) {
+      out.writeByte(BinaryFormat.BIG_INTEGER);
+      out.writeBytes(((BigInteger) value).toByteArray());
+    } else if (type == BigDecimal.class) {
+      out.writeByte(BinaryFormat.BIG_DECIMAL);
+      out.writeSignedVarint(((BigDecimal) value).scale());
+      out.writeBytes(((BigDecimal) value).unscaledValue().toByteArray());
+    } else if (type == Date.class) {
+      out.writeByte(BinaryFormat.DATE);
+      out.writeSignedVarint(((Date) value).getTime());
+    } else if (type.isArray()) {
+      writeArray(out, value);
+    } else if (value instanceof Enum) {
+      out.writeByte(BinaryFormat.ENUM);
+      out.writeString(((Enum<?>) value).getDeclaringClass().getName());
+      out.writeString(((Enum<?>) value).name());
+    } else if (isPrimitive(type)) {
+      out.writeByte(BinaryFormat.TEXT);
+      out.writeString(type.getName());
+      out.writeString(value.toString());
+    } else if (value instanceof MapItem) {
+      out.writeByte(BinaryFormat.MAP_ITEM);
+      writeValue(out, ((MapItem) value).getKey());
+      writeValue(out, ((MapItem) value).getValue());
+    } else if (value instanceof Map) {
+      List<Object> items = new ArrayList<Object>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        items.add(new MapItem(entry.getKey(), entry.getValue()));
+      }
+      writeList(out, items);
+    } else if (value instanceof Collection) {
+      writeList(out, (Collection<?>) value);
+    } else if (value instanceof Enumeration) {
+      List<Object> items = new ArrayList<Object>();
+      Enumeration<?> enumeration = (Enumeration<?>) value;
+      while (enumeration.hasMoreElements()) {
+        items.add(enumeration.nextElement());
+      }
+      writeList(out, items);
+    } else if (value instanceof Iterator) {
+      List<Object> items = new ArrayList<Object>();
+      Iterator<?> iterator = (Iterator<?>) value;
+      while (iterator.hasNext()) {
+        items.add(iterator.next());
+      }
+      writeList(out, items);
+    } else {
+      writeObject(out, value);
+    }
+  }
+
+  /**
+   * Writes an array. Arrays of the common numeric primitive types are written packed.
+   */
+  private void writeArray(final BinaryFormat.Output out, final Object array)
+      throws IOException, MarshalException {
+    if (array instanceof byte[]) {
+      out.writeByte(BinaryFormat.BYTES);
+      out.writeBytes((byte[]) array);
+    } else if (array instanceof int[]) {
+      int[] values = (int[]) array;
+      out.writeByte(BinaryFormat.INT_ARRAY);
+      out.writeVarint(values.length);
+      for (int value : values) {
+        out.writeSignedVarint(value);
+      }
+    } else if (array instanceof long[]) {
+      long[] values = (long[]) array;
+      out.writeByte(BinaryFormat.LONG_ARRAY);
+      out.writeVarint(values.length);
+      for (long value : values) {
+        out.writeSignedVarint(value);
+      }
+    } else if (array instanceof short[]) {
+      short[] values = (short[]) array;
+      out.writeByte(BinaryFormat.SHORT_ARRAY);
+      out.writeVarint(values.length);
+      for (short value : values) {
+        out.writeSignedVarint(value);
+      }
+    } else if (array instanceof float[]) {
+      float[] values = (float[]) array;
+      out.writeByte(BinaryFormat.FLOAT_ARRAY);
+      out.writeVarint(values.length);
+      for (float value : values) {
+        out.writeFixed32(Float.floatToRawIntBits(value));
+      }
+    } else if (array instanceof double[]) {
+      double[] values = (double[]) array;
+      out.writeByte(BinaryFormat.DOUBLE_ARRAY);
+      out.writeVarint(values.length);
+      for (double value : values) {
+        out.writeFixed64(Double.doubleToRawLongBits(value));
+      }
+    } else {
+      int length = Array.getLength(array);
+      out.writeByte(BinaryFormat.LIST);
+      out.writeVarint(length);
+      for (int i = 0; i < length; i++) {
+        writeValue(out, Array.get(array, i));
+      }
+    }
+  }
+
+  /**
+   * Writes the items of a collection.
+   */
+  private void writeList(final BinaryFormat.Output out, final Collection<?> items)
+      throws IOException, MarshalException {
+    out.writeByte(BinaryFormat.LIST);
+    out.writeVarint(items.size());
+    for (Object item : items) {
+      writeValue(out, item);
+    }
+  }
+
+  /**
+   * Writes an object described by a class descriptor, or a reference to it if it has been written
+   * before.
+   */
+  private void writeObject(final BinaryFormat.Output out, final Object object)
+      throws IOException, MarshalException {
+    Integer index = _objects.get(object);
+    if (index != null) {
+      out.writeByte(BinaryFormat.REFERENCE);
+      out.writeVarint(index.intValue());
+      return;
+    }
+    _objects.put(object, Integer.valueOf(_objects.size()));
+
+    ClassFields fields = getClassFields(object.getClass());
+    out.writeByte(BinaryFormat.OBJECT);
+    out.writeString(object.getClass().getName());
+    for (int i = 0; i < fields._descriptors.length; i++) {
+      Object value;
+      try {
+        value = fields._descriptors[i].getHandler().getValue(object);
+      } catch (IllegalStateException ise) {
+        LOG.warn("Error marshalling " + object, ise);
+        continue;
+      }
+      if (value == null) {
+        continue;
+      }
+      out.writeString(fields._names[i]);
+      writeValue(out, value);
+    }
+    out.writeString(null);
+  }
+
+  /**
+   * Returns the fields marshalled for the given class.
+   */
+  private ClassFields getClassFields(final Class<?> type) throws MarshalException {
+    ClassFields fields = _classFields.get(type);
+    if (fields == null) {
+      fields = ClassFields.resolve(getInternalContext(), type);
+      _classFields.put(type, fields);
+    }
+    return fields;
+  }
+
+  /**
+   * The fields of a class that are marshalled, with the names they are written under.
+   */
+  static final class ClassFields {
+    /** The field descriptors. */
+    final XMLFieldDescriptor[] _descriptors;
+
+    /** The names of the fields. */
+    final String[] _names;
+
+    /** The field descriptors, by name. */
+    final Map<String, XMLFieldDescriptor> _byName;
+
+    /** The number of constructor arguments of the class. */
+    final int _constructorArguments;
+
+    /**
+     * Collects the attribute, element and text content fields of the given class descriptor that
+     * have a handler.
+     *
+     * @param classDesc the class descriptor.
+     */
+    ClassFields(final XMLClassDescriptor classDesc) {
+      List<XMLFieldDescriptor> descriptors = new ArrayList<XMLFieldDescriptor>();
+      addFields(descriptors, classDesc.getAttributeDescriptors());
+      addFields(descriptors, classDesc.getElementDescriptors());
+      XMLFieldDescriptor content = classDesc.getContentDescriptor();
+      if (content != null) {
+        addFields(descriptors, new XMLFieldDescriptor[] {content});
+      }
+      _descriptors = descriptors.toArray(new XMLFieldDescriptor[descriptors.size()]);
+      _names = new String[_descriptors.length];
+      for (int i = 0; i < _descriptors.length; i++) {
+        _names[i] = nameOf(_descriptors[i]);
+      }
+      _byName = new HashMap<String, XMLFieldDescriptor>(_descriptors.length * 2);
+      int constructorArguments = 0;
+      for (int i = 0; i < _descriptors.length; i++) {
+        _byName.put(_names[i], _descriptors[i]);
+        if (_descriptors[i].isConstructorArgument()) {
+          constructorArguments =
+              Math.max(constructorArguments, _descriptors[i].getConstructorArgumentIndex() + 1);
+        }
+      }
+      _constructorArguments = constructorArguments;
+    }
+
+    /**
+     * Resolves the class descriptor of the given class and collects its fields.
+     *
+     * @param context the context providing the class descriptor resolver.
+     * @param type the class.
+     * @return the fields of the class.
+     * @throws MarshalException if no class descriptor can be resolved.
+     */
+    static ClassFields resolve(final InternalContext context, final Class<?> type)
+        throws MarshalException {
+      XMLClassDescriptor classDesc;
+      try {
+        classDesc = (XMLClassDescriptor) context.getXMLClassDescriptorResolver().resolve(type);
+      } catch (ResolverException rx) {
+        throw new MarshalException(rx);
+      }
+      if (classDesc == null) {
+        throw new MarshalException("No class descriptor found for " + type.getName());
+      }
+      return new ClassFields(classDesc);
+    }
+
+    private static void addFields(final List<XMLFieldDescriptor> descriptors,
+        final XMLFieldDescriptor[] fields) {
+      if (fields == null) {
+        return;
+      }
+      for (XMLFieldDescriptor field : fields) {
+        FieldHandler handler = field.getHandler();
+        if (handler != null) {
+          descriptors.add(field);
+        }
+      }
+    }
+
+    /**
+     * Returns the name a field is written under: its field name, or for fields without one, its
+     * node type and XML name.
+     *
+     * @param field the field descriptor.
+     * @return the name of the field.
+     */
+    static String nameOf(final XMLFieldDescriptor field) {
+      if (field.getFieldName() != null) {
+        return field.getFieldName();
+      }
+      return field.getNodeType() + ":" + field.getXMLName();
+    }
+  }
+}
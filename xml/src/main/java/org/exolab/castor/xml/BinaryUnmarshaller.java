@@ -0,0 +1,553 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.castor.xml.InternalContext;
+import org.exolab.castor.mapping.FieldHandler;
+import org.exolab.castor.mapping.MapItem;
+import org.exolab.castor.mapping.loader.FieldHandlerImpl;
+import org.exolab.castor.mapping.loader.collection.ArrayBuilder;
+import org.exolab.castor.util.DefaultObjectFactory;
+import org.exolab.castor.util.ObjectFactory;
+
+/**
+ * Unmarshals object graphs written by a {@link BinaryMarshaller}. Objects are instantiated and
+ * populated through the {@link XMLClassDescriptor}s resolved by the {@link InternalContext}, so
+ * the same descriptors as for XML unmarshalling apply. Fields are matched by name, so fields may
+ * be reordered; fields in the stream that the descriptors don't know are skipped without
+ * instantiating their values, and fields missing from the stream keep their initial values. A
+ * reference to an object of a skipped field is read as null.
+ * <p>
+ * Only classes whose descriptors the context knows already, through a mapping, a class or a
+ * package added to it, or from resolving them before, are instantiated; enum and text values
+ * must have the type of a field of such a class. A BinaryUnmarshaller may be reused, but is not
+ * thread-safe.
+ *
+ * @see BinaryFormat
+ * @since 1.4.2
+ */
+public class BinaryUnmarshaller extends MarshalFramework {
+
+  /** The factory used to instantiate objects. */
+  private ObjectFactory _objectFactory = new DefaultObjectFactory();
+
+  /** The fields of each class, by class. */
+  private final Map<Class<?>, BinaryMarshaller.ClassFields> _classFields =
+      new HashMap<Class<?>, BinaryMarshaller.ClassFields>();
+
+  /** The types of the fields of the classes read so far, by class name. */
+  private final Map<String, Class<?>> _fieldTypes = new HashMap<String, Class<?>>();
+
+  /** The objects read from the current stream, by index; null for skipped objects. */
+  private final List<Object> _objects = new ArrayList<Object>();
+
+  /**
+   * Creates a new BinaryUnmarshaller.
+   *
+   * @param internalContext the {@link InternalContext} providing the class descriptors; if null a
+   *        default context is created.
+   */
+  public BinaryUnmarshaller(final InternalContext internalContext) {
+    super(internalContext);
+  }
+
+  /**
+   * Sets the factory used to instantiate objects.
+   *
+   * @param objectFactory the factory to use.
+   */
+  public void setObjectFactory(final ObjectFactory objectFactory) {
+    _objectFactory = objectFactory;
+  }
+
+  /**
+   * Unmarshals an object graph.
+   *
+   * @param bytes the binary encoding of the graph.
+   * @return the root of the graph; a root collection or array is returned as a {@link List}.
+   * @throws MarshalException if the graph cannot be unmarshalled.
+   */
+  public Object unmarshal(final byte[] bytes) throws MarshalException {
+    return unmarshal(new ByteArrayInputStream(bytes));
+  }
+
+  /**
+   * Unmarshals an object graph from the given stream. The stream is not closed.
+   *
+   * @param in the stream to read from.
+   * @return the root of the graph; a root collection or array is returned as a {@link List}.
+   * @throws MarshalException if the graph cannot be read or unmarshalled.
+   */
+  public Object unmarshal(final InputStream in) throws MarshalException {
+    BinaryFormat.Input input = new BinaryFormat.Input(in);
+    try {
+      if (input.readInt() != BinaryFormat.MAGIC) {
+        throw new MarshalException("Not a binary marshalled stream");
+      }
+      int version = input.readByte();
+      if (version > BinaryFormat.VERSION) {
+        throw new MarshalException("Unsupported binary format version: " + version);
+      }
+      return convert(readValue(input), Object.class);
+    } catch (IOException e) {
+      throw new MarshalException(e);
+    } finally {
+      _objects.clear();
+    }
+  }
+
+  /**
+   * Reads a single value. Lists are returned as {@link Items}, to be converted to the type they
+   * are assigned to.
+   */
+  private Object readValue(final BinaryFormat.Input in) throws IOException, MarshalException {
+    int tag = in.readByte();
+    switch (tag) {
+      case BinaryFormat.NULL:
+        return null;
+      case BinaryFormat.FALSE:
+        return Boolean.FALSE;
+      case BinaryFormat.TRUE:
+        return Boolean.TRUE;
+      case BinaryFormat.BYTE:
+        return Byte.valueOf((byte) in.readSignedVarint());
+      case BinaryFormat.SHORT:
+        return Short.valueOf((short) in.readSignedVarint());
+      case BinaryFormat.INT:
+        return Integer.valueOf((int) in.readSignedVarint());
+      case BinaryFormat.LONG:
+        return Long.valueOf(in.readSignedVarint());
+      case BinaryFormat.CHAR:
+        return Character.valueOf((char) in.readVarint());
+      case BinaryFormat.FLOAT:
+        return Float.valueOf(Float.intBitsToFloat(in.readFixed32()));
+      case BinaryFormat.DOUBLE:
+        return Double.valueOf(Double.longBitsToDouble(in.readFixed64()));
+      case BinaryFormat.STRING:
+        return in.readString();
+      case BinaryFormat.BYTES:
+        return in.readBytes();
+      case BinaryFormat.BIG_INTEGER:
+        return new BigInteger(in.readBytes());
+      case BinaryFormat.BIG_DECIMAL:
+        int scale = (int) in.readSignedVarint();
+        return new BigDecimal(new BigInteger(in.readBytes()), scale);
+      case BinaryFormat.DATE:
+        return new Date(in.readSignedVarint());
+      case BinaryFormat.ENUM:
+        return readEnum(in.readString(), in.readString());
+      case BinaryFormat.TEXT:
+        Class<?> type = getFieldType(in.readString());
+        return UnmarshalHandler.toPrimitiveObject(type, in.readString());
+      case BinaryFormat.LIST:
+        int size = in.readLength(in.readVarint());
+        Items items = new Items(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) {
+          items.add(readValue(in));
+        }
+        return items;
+      case BinaryFormat.MAP_ITEM:
+        Object key = convert(readValue(in), Object.class);
+        return new MapItem(key, convert(readValue(in), Object.class));
+      case BinaryFormat.OBJECT:
+        return readObject(in);
+      case BinaryFormat.REFERENCE:
+        long index = in.readVarint();
+        if (index < 0 || index >= _objects.size()) {
+          throw new MarshalException("Invalid object reference: " + index);
+        }
+        return _objects.get((int) index);
+      case BinaryFormat.INT_ARRAY:
+        return readArray(in, int.class, tag);
+      case BinaryFormat.LONG_ARRAY:
+        return readArray(in, long.class, tag);
+      case BinaryFormat.SHORT_ARRAY:
+        return readArray(in, short.class, tag);
+      case BinaryFormat.FLOAT_ARRAY:
+        return readArray(in, float.class, tag);
+      case BinaryFormat.DOUBLE_ARRAY:
+        return readArray(in, double.class, tag);
+      default:
+        throw new MarshalException("Invalid value tag: " + tag);
+    }
+  }
+
+  /**
+   * Skips a single value of a field unknown to the descriptors. Objects are not instantiated, but
+   * keep their index so that later references resolve to the right objects.
+   */
+  private void skipValue(final BinaryFormat.Input in) throws IOException, MarshalException {
+    int tag = in.readByte();
+    switch (tag) {
+      case BinaryFormat.NULL:
+      case BinaryFormat.FALSE:
+      case BinaryFormat.TRUE:
+        break;
+      case BinaryFormat.BYTE:
+      case BinaryFormat.SHORT:
+      case BinaryFormat.INT:
+      case BinaryFormat.LONG:
+      case BinaryFormat.DATE:
+        in.readSignedVarint();
+        break;
+      case BinaryFormat.CHAR:
+      case BinaryFormat.REFERENCE:
+        in.readVarint();
+        break;
+      case BinaryFormat.FLOAT:
+        in.readFixed32();
+        break;
+      case BinaryFormat.DOUBLE:
+        in.readFixed64();
+        break;
+      case BinaryFormat.STRING:
+        in.readString();
+        break;
+      case BinaryFormat.BYTES:
+      case BinaryFormat.BIG_INTEGER:
+        in.readBytes();
+        break;
+      case BinaryFormat.BIG_DECIMAL:
+        in.readSignedVarint();
+        in.readBytes();
+        break;
+      case BinaryFormat.ENUM:
+      case BinaryFormat.TEXT:
+        in.readString();
+        in.readString();
+        break;
+      case BinaryFormat.LIST:
+        int size = in.readLength(in.readVarint());
+        for (int i = 0; i < size; i++) {
+          skipValue(in);
+        }
+        break;
+      case BinaryFormat.MAP_ITEM:
+        skipValue(in);
+        skipValue(in);
+        break;
+      case BinaryFormat.OBJECT:
+        in.readString();
+        _objects.add(null);
+        while (in.readString() != null) {
+          skipValue(in);
+        }
+        break;
+      case BinaryFormat.INT_ARRAY:
+      case BinaryFormat.LONG_ARRAY:
+      case BinaryFormat.SHORT_ARRAY:
+        int varints = in.readLength(in.readVarint());
+        for (int i = 0; i < varints; i++) {
+          in.readSignedVarint();
+        }
+        break;
+      case BinaryFormat.FLOAT_ARRAY:
+        int floats = in.readLength(in.readVarint());
+        for (int i = 0; i < floats; i++) {
+          in.readFixed32();
+        }
+        break;
+      case BinaryFormat.DOUBLE_ARRAY:
+        int doubles = in.readLength(in.readVarint());
+        for (int i = 0; i < doubles; i++) {
+          in.readFixed64();
+        }
+        break;
+      default:
+        throw new MarshalException("Invalid value tag: " + tag);
+    }
+  }
+
+  /**
+   * Reads a packed array of primitives.
+   */
+  private Object readArray(final BinaryFormat.Input in, final Class<?> componentType,
+      final int tag) throws IOException {
+    int length = in.readLength(in.readVarint());
+    ArrayBuilder values = ArrayBuilder.newBuilder(componentType);
+    for (int i = 0; i < length; i++) {
+      switch (tag) {
+        case BinaryFormat.INT_ARRAY:
+          ((ArrayBuilder.OfInt) values).addInt((int) in.readSignedVarint());
+          break;
+        case BinaryFormat.LONG_ARRAY:
+          ((ArrayBuilder.OfLong) values).addLong(in.readSignedVarint());
+          break;
+        case BinaryFormat.SHORT_ARRAY:
+          ((ArrayBuilder.OfShort) values).addShort((short) in.readSignedVarint());
+          break;
+        case BinaryFormat.FLOAT_ARRAY:
+          ((ArrayBuilder.OfFloat) values).addFloat(Float.intBitsToFloat(in.readFixed32()));
+          break;
+        default:
+          ((ArrayBuilder.OfDouble) values).addDouble(Double.longBitsToDouble(in.readFixed64()));
+          break;
+      }
+    }
+    return values.toArray();
+  }
+
+  /**
+   * Returns the constant of a Java enum.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private Object readEnum(final String className, final String name) throws MarshalException {
+    Class<?> type = getFieldType(className);
+    if (!type.isEnum()) {
+      throw new MarshalException(className + " is not an enum");
+    }
+    try {
+      return Enum.valueOf((Class) type, name);
+    } catch (IllegalArgumentException e) {
+      throw new MarshalException(e);
+    }
+  }
+
+  /**
+   * Reads an object and its fields. The object is registered before its fields are read, so that
+   * they may refer back to it; objects created through a constructor with arguments are
+   * registered once all their fields are read.
+   */
+  private Object readObject(final BinaryFormat.Input in) throws IOException, MarshalException {
+    Class<?> type = getKnownClass(in.readString());
+    BinaryMarshaller.ClassFields fields = getClassFields(type);
+
+    int index = _objects.size();
+    _objects.add(null);
+    if (fields._constructorArguments == 0) {
+      Object object;
+      try {
+        object = _objectFactory.createInstance(type);
+      } catch (InstantiationException | IllegalAccessException e) {
+        throw new MarshalException("Unable to instantiate " + type.getName(), e);
+      }
+      _objects.set(index, object);
+      for (String name = in.readString(); name != null; name = in.readString()) {
+        XMLFieldDescriptor descriptor = fields._byName.get(name);
+        if (descriptor == null) {
+          skipValue(in);
+        } else {
+          setValue(object, descriptor, readValue(in));
+        }
+      }
+      return object;
+    }
+
+    Class<?>[] argTypes = new Class<?>[fields._constructorArguments];
+    Object[] args = new Object[fields._constructorArguments];
+    List<XMLFieldDescriptor> descriptors = new ArrayList<XMLFieldDescriptor>();
+    List<Object> values = new ArrayList<Object>();
+    for (XMLFieldDescriptor descriptor : fields._descriptors) {
+      if (descriptor.isConstructorArgument()) {
+        argTypes[descriptor.getConstructorArgumentIndex()] = descriptor.getFieldType();
+      }
+    }
+    for (String name = in.readString(); name != null; name = in.readString()) {
+      XMLFieldDescriptor descriptor = fields._byName.get(name);
+      if (descriptor == null) {
+        skipValue(in);
+        continue;
+      }
+      Object value = readValue(in);
+      if (descriptor.isConstructorArgument()) {
+        args[descriptor.getConstructorArgumentIndex()] =
+            convert(value, descriptor.getFieldType());
+      } else {
+        descriptors.add(descriptor);
+        values.add(value);
+      }
+    }
+    Object object;
+    try {
+      object = _objectFactory.createInstance(type, argTypes, args);
+    } catch (InstantiationException | IllegalAccessException e) {
+      throw new MarshalException("Unable to instantiate " + type.getName(), e);
+    }
+    _objects.set(index, object);
+    for (int i = 0; i < descriptors.size(); i++) {
+      setValue(object, descriptors.get(i), values.get(i));
+    }
+    return object;
+  }
+
+  /**
+   * Assigns a value read from the stream to a field. The items of a multivalued field are added
+   * one by one, or all at once for array fields.
+   */
+  private void setValue(final Object object, final XMLFieldDescriptor descriptor,
+      final Object value) throws MarshalException {
+    FieldHandler handler = descriptor.getHandler();
+    try {
+      if (!descriptor.isMultivalued()) {
+        handler.setValue(object, convert(value, descriptor.getFieldType()));
+        return;
+      }
+      List<?> items;
+      if (value instanceof Items) {
+        items = (Items) value;
+      } else if (value != null && value.getClass().isArray()
+          && descriptor.getFieldType() != value.getClass()) {
+        int length = Array.getLength(value);
+        List<Object> elements = new ArrayList<Object>(length);
+        for (int i = 0; i < length; i++) {
+          elements.add(Array.get(value, i));
+        }
+        items = elements;
+      } else {
+        items = Collections.singletonList(value);
+      }
+
+      Class<?> componentType = null;
+      if (handler instanceof FieldHandlerImpl) {
+        componentType = ((FieldHandlerImpl<?>) handler).getArrayComponentType();
+      }
+      if (componentType != null) {
+        ArrayBuilder values = ArrayBuilder.newBuilder(componentType);
+        for (Object item : items) {
+          values.add(convert(item, componentType));
+        }
+        ((FieldHandlerImpl<?>) handler).addAll(object, values);
+      } else {
+        for (Object item : items) {
+          if (item != null) {
+            handler.setValue(object, convert(item, descriptor.getFieldType()));
+          }
+        }
+      }
+    } catch (IllegalStateException | IllegalArgumentException e) {
+      throw new MarshalException("Unable to set field " + descriptor.getFieldName() + " of "
+          + object.getClass().getName(), e);
+    }
+  }
+
+  /**
+   * Converts the lists read from the stream to the given type: an array, a map, a set, or a list.
+   */
+  private Object convert(final Object value, final Class<?> type) {
+    if (!(value instanceof Items)) {
+      return value;
+    }
+    Items items = (Items) value;
+    if (type != null && type.isArray()) {
+      ArrayBuilder values = ArrayBuilder.newBuilder(type.getComponentType());
+      for (Object item : items) {
+        values.add(convert(item, type.getComponentType()));
+      }
+      return values.toArray();
+    }
+    if (type != null && Map.class.isAssignableFrom(type)) {
+      Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+      for (Object item : items) {
+        if (item instanceof MapItem) {
+          map.put(((MapItem) item).getKey(), ((MapItem) item).getValue());
+        } else {
+          map.put(item, item);
+        }
+      }
+      return map;
+    }
+    Collection<Object> collection;
+    if (type != null && Set.class.isAssignableFrom(type)) {
+      collection = new LinkedHashSet<Object>();
+    } else {
+      collection = new ArrayList<Object>(items.size());
+    }
+    for (Object item : items) {
+      collection.add(convert(item, Object.class));
+    }
+    return collection;
+  }
+
+  /**
+   * Returns the fields of the given class, and records the types of the fields.
+   */
+  private BinaryMarshaller.ClassFields getClassFields(final Class<?> type)
+      throws MarshalException {
+    BinaryMarshaller.ClassFields fields = _classFields.get(type);
+    if (fields == null) {
+      fields = BinaryMarshaller.ClassFields.resolve(getInternalContext(), type);
+      _classFields.put(type, fields);
+      for (XMLFieldDescriptor descriptor : fields._descriptors) {
+        Class<?> fieldType = descriptor.getFieldType();
+        if (fieldType != null) {
+          _fieldTypes.put(fieldType.getName(), fieldType);
+        }
+      }
+    }
+    return fields;
+  }
+
+  /**
+   * Returns the class of an object named in the stream, which must be known to the context.
+   */
+  private Class<?> getKnownClass(final String className) throws MarshalException {
+    if (className == null) {
+      throw new MarshalException("Missing class name");
+    }
+    XMLClassDescriptor classDesc =
+        getInternalContext().getXMLClassDescriptorResolver().resolveKnown(className);
+    if (classDesc == null || classDesc.getJavaClass() == null) {
+      throw new MarshalException("Class " + className + " is not known to the context");
+    }
+    return classDesc.getJavaClass();
+  }
+
+  /**
+   * Returns the class of an enum or text value named in the stream, which must be the type of a
+   * field of a class read before.
+   */
+  private Class<?> getFieldType(final String className) throws MarshalException {
+    if (className == null) {
+      throw new MarshalException("Missing class name");
+    }
+    Class<?> type = _fieldTypes.get(className);
+    if (type == null) {
+      throw new MarshalException("Class " + className + " is not the type of a known field");
+    }
+    return type;
+  }
+
+  /**
+   * The items of a list read from the stream, before conversion to the type of the field they are
+   * assigned to.
+   */
+  private static final class Items extends ArrayList<Object> {
+    /** SerialVersionUID. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates an empty list.
+     *
+     * @param capacity the initial capacity.
+     */
+    Items(final int capacity) {
+      super(capacity);
+    }
+  }
+}
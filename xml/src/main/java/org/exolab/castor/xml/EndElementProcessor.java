@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.StringTokenizer;
 
@@ -27,7 +28,10 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.exolab.castor.mapping.FieldHandler;
 import org.exolab.castor.mapping.MapItem;
+import org.exolab.castor.mapping.loader.FieldHandlerImpl;
+import org.exolab.castor.mapping.loader.collection.ArrayBuilder;
 import org.exolab.castor.xml.UnmarshalHandler.ArrayHandler;
+import org.exolab.castor.xml.util.PrimitiveListCodec;
 import org.exolab.castor.xml.util.XMLFieldDescriptorImpl;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
@@ -152,6 +156,10 @@ public class EndElementProcessor {
       throw new SAXException(err);
     }
 
+    // -- store the values collected for array-typed fields before any
+    // -- of the early returns below
+    storeArrays(state);
+
     // -- clean up current Object
     Class<?> type = state.getType();
 
@@ -249,23 +257,33 @@ public class EndElementProcessor {
       } else if (descriptor.isMultivalued() && descriptor.getSchemaType() != null
           && descriptor.getSchemaType().equals("list")
           && ((XMLFieldDescriptorImpl) descriptor).isDerivedFromXSList()) {
-        StringTokenizer attrValueTokenizer = new StringTokenizer(str);
-        List<Object> primitives = new ArrayList<Object>();
-        while (attrValueTokenizer.hasMoreTokens()) {
-          String tokenValue = attrValueTokenizer.nextToken();
-          if (MarshalFramework.isPrimitive(descriptor.getFieldType())) {
-            primitives.add(
-                _unmarshalHandler.toPrimitiveObject(type, tokenValue, state.getFieldDescriptor()));
-          } else {
-            Class<?> valueType = descriptor.getFieldType();
-            // -- handle base64/hexBinary
-            if (valueType.isArray() && (valueType.getComponentType() == Byte.TYPE)) {
-              primitives.add(_unmarshalHandler.decodeBinaryData(descriptor, tokenValue));
-            }
+        ArrayBuilder values = newListBuilder(descriptor);
+        if (values != null) {
+          try {
+            PrimitiveListCodec.parse((str == null) ? "" : str, values);
+          } catch (RuntimeException ex) {
+            throw _unmarshalHandler.conversionError(ex, descriptor);
           }
+          state.setObject(values);
+        } else {
+          StringTokenizer attrValueTokenizer = new StringTokenizer(str);
+          List<Object> primitives = new ArrayList<Object>();
+          while (attrValueTokenizer.hasMoreTokens()) {
+            String tokenValue = attrValueTokenizer.nextToken();
+            if (MarshalFramework.isPrimitive(descriptor.getFieldType())) {
+              primitives.add(_unmarshalHandler.toPrimitiveObject(type, tokenValue,
+                  state.getFieldDescriptor()));
+            } else {
+              Class<?> valueType = descriptor.getFieldType();
+              // -- handle base64/hexBinary
+              if (valueType.isArray() && (valueType.getComponentType() == Byte.TYPE)) {
+                primitives.add(_unmarshalHandler.decodeBinaryData(descriptor, tokenValue));
+              }
+            }
 
+          }
+          state.setObject(primitives);
         }
-        state.setObject(primitives);
       } else {
         if (state.isNil()) {
           state.setObject(null);
@@ -503,12 +521,23 @@ public class EndElementProcessor {
         }
 
         if (descriptor.isMultivalued() && descriptor.getSchemaType() != null
+            && descriptor.getSchemaType().equals("list")
+            && ((XMLFieldDescriptorImpl) descriptor).isDerivedFromXSList()
+            && val instanceof ArrayBuilder) {
+          // -- primitive list, parsed straight into an array builder
+          ArrayBuilder values = (ArrayBuilder) val;
+          state.getArrayBuilder(descriptor, values.getComponentType()).addAll(values);
+          for (int i = 0; i < values.size(); i++) {
+            _unmarshalHandler.getDelegateUnmarshalListener().fieldAdded(descriptor.getFieldName(),
+                state.getObject(), fieldState.getObject());
+          }
+        } else if (descriptor.isMultivalued() && descriptor.getSchemaType() != null
             && descriptor.getSchemaType().equals("list")
             && ((XMLFieldDescriptorImpl) descriptor).isDerivedFromXSList()) {
           List<Object> values = (List<Object>) val;
           for (Object value : values) {
             // -- finally set the value!!
-            handler.setValue(state.getObject(), value);
+            setValue(state, descriptor, handler, value);
 
             // If there is a parent for this object, pass along
             // a notification that we've finished adding a child
@@ -518,7 +547,7 @@ public class EndElementProcessor {
         } else {
 
           // -- finally set the value!!
-          handler.setValue(state.getObject(), val);
+          setValue(state, descriptor, handler, val);
 
           // If there is a parent for this object, pass along
           // a notification that we've finished adding a child
@@ -558,4 +587,74 @@ public class EndElementProcessor {
     }
 
   }
+
+  /**
+   * Sets the value of a field of the object of the given state. Values of array-typed fields are
+   * collected in the state, and stored by {@link #storeArrays(UnmarshalState)} once the object is
+   * complete, instead of growing the array by one element for each value.
+   * 
+   * @param state the state of the object whose field is set.
+   * @param descriptor the descriptor of the field.
+   * @param handler the handler of the field.
+   * @param value the value to set.
+   */
+  private void setValue(final UnmarshalState state, final XMLFieldDescriptor descriptor,
+      final FieldHandler handler, final Object value) {
+    if (handler instanceof FieldHandlerImpl) {
+      Class<?> componentType = ((FieldHandlerImpl<?>) handler).getArrayComponentType();
+      if (componentType != null) {
+        state.getArrayBuilder(descriptor, componentType).add(value);
+        return;
+      }
+    }
+    handler.setValue(state.getObject(), value);
+  }
+
+  /**
+   * Returns a builder for the items of an <code>xs:list</code> of a primitive numeric type, if the
+   * field the list is bound to is an array that can be filled from such a builder.
+   * 
+   * @param descriptor the descriptor of the list field.
+   * @return a new builder, or null if the list has to be parsed item by item.
+   */
+  private ArrayBuilder newListBuilder(final XMLFieldDescriptor descriptor) {
+    if (!MarshalFramework.isPrimitive(descriptor.getFieldType())
+        || !(descriptor.getHandler() instanceof FieldHandlerImpl)) {
+      return null;
+    }
+    Class<?> componentType =
+        ((FieldHandlerImpl<?>) descriptor.getHandler()).getArrayComponentType();
+    if (componentType == null || !PrimitiveListCodec.isSupported(componentType)) {
+      return null;
+    }
+    return ArrayBuilder.newBuilder(componentType);
+  }
+
+  /**
+   * Stores the values collected for the array-typed fields of the object of the given state.
+   * 
+   * @param state the state of the completed object.
+   * @throws SAXException if the values cannot be stored.
+   */
+  private void storeArrays(final UnmarshalState state) throws SAXException {
+    Map<XMLFieldDescriptor, ArrayBuilder> builders = state.removeArrayBuilders();
+    if (builders == null) {
+      return;
+    }
+    for (Map.Entry<XMLFieldDescriptor, ArrayBuilder> entry : builders.entrySet()) {
+      XMLFieldDescriptor descriptor = entry.getKey();
+      try {
+        ((FieldHandlerImpl<?>) descriptor.getHandler()).addAll(state.getObject(), entry.getValue());
+      } catch (Exception ex) {
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        ex.printStackTrace(pw);
+        pw.flush();
+        String err = MessageFormat.format(
+            resourceBundle.getString("unmarshalHandler.error.unable.add.element"),
+            new Object[] {descriptor.getXMLName(), state.getElementName(), sw.toString()});
+        throw new SAXException(err, ex);
+      }
+    }
+  }
 }
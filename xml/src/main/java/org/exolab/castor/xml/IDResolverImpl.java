@@ -69,6 +69,13 @@ class IDResolverImpl implements IDResolver {
     return null;
   }
 
+  /**
+   * Removes all bound IDs, keeping the custom IDResolver.
+   */
+  void clear() {
+    _idReferences.clear();
+  }
+
   /**
    * Sets a custom IDResolver instance to be used for IDRef resolution.
    * 
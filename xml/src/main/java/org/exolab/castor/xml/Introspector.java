@@ -876,10 +876,13 @@ public final class Introspector implements PropertyChangeListener {
   } // -- setWrapCollections
 
   /**
-   * Returns true if the given XMLClassDescriptor was created via introspection
+   * Returns true if the given XMLClassDescriptor was created via introspection. This includes
+   * descriptors generated ahead of time by the {@link org.exolab.castor.tools.DescriptorGenerator},
+   * so that they are handled exactly like the descriptors they replace.
    **/
   public static boolean introspected(XMLClassDescriptor descriptor) {
-    return (descriptor instanceof IntrospectedXMLClassDescriptor);
+    return (descriptor instanceof XMLClassDescriptorImpl)
+        && ((XMLClassDescriptorImpl) descriptor).isIntrospected();
   } // -- introspected
 
   /**
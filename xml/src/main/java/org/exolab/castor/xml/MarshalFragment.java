@@ -0,0 +1,239 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Records the SAX events of a part of a document, as written by a {@link Marshaller}, to replay
+ * them later in the same order into another {@link ContentHandler}. Names and values are kept by
+ * reference and character data is copied into one growing buffer, so that a fragment holding many
+ * elements costs a few arrays rather than an object per event.
+ *
+ * @since 1.4.2
+ */
+final class MarshalFragment extends DefaultHandler {
+
+  private static final int START_ELEMENT = 1;
+
+  private static final int END_ELEMENT = 2;
+
+  private static final int CHARACTERS = 3;
+
+  private static final int IGNORABLE_WHITESPACE = 4;
+
+  private static final int START_PREFIX_MAPPING = 5;
+
+  private static final int END_PREFIX_MAPPING = 6;
+
+  private static final int PROCESSING_INSTRUCTION = 7;
+
+  /** The recorded events, each an event type followed by its int arguments. */
+  private int[] _events = new int[256];
+
+  /** The number of ints used in {@link #_events}. */
+  private int _eventCount = 0;
+
+  /** The names and values of the recorded events, in event order. */
+  private String[] _strings = new String[256];
+
+  /** The number of strings used in {@link #_strings}. */
+  private int _stringCount = 0;
+
+  /** The recorded character data. */
+  private char[] _chars = new char[1024];
+
+  /** The number of characters used in {@link #_chars}. */
+  private int _charCount = 0;
+
+  /**
+   * Replays the recorded events into the given handler, in the order they were recorded.
+   *
+   * @param handler the handler to send the events to.
+   * @throws SAXException if the handler reports an error.
+   */
+  void replay(final ContentHandler handler) throws SAXException {
+    AttributesImpl attributes = new AttributesImpl();
+    int string = 0;
+    int event = 0;
+    while (event < _eventCount) {
+      switch (_events[event++]) {
+        case START_ELEMENT:
+          attributes.clear();
+          int attributeCount = _events[event++];
+          String uri = _strings[string++];
+          String localName = _strings[string++];
+          String qName = _strings[string++];
+          for (int i = 0; i < attributeCount; i++) {
+            attributes.addAttribute(_strings[string], _strings[string + 1], _strings[string + 2],
+                _strings[string + 3], _strings[string + 4]);
+            string += 5;
+          }
+          handler.startElement(uri, localName, qName, attributes);
+          break;
+        case END_ELEMENT:
+          handler.endElement(_strings[string], _strings[string + 1], _strings[string + 2]);
+          string += 3;
+          break;
+        case CHARACTERS:
+          handler.characters(_chars, _events[event], _events[event + 1]);
+          event += 2;
+          break;
+        case IGNORABLE_WHITESPACE:
+          handler.ignorableWhitespace(_chars, _events[event], _events[event + 1]);
+          event += 2;
+          break;
+        case START_PREFIX_MAPPING:
+          handler.startPrefixMapping(_strings[string], _strings[string + 1]);
+          string += 2;
+          break;
+        case END_PREFIX_MAPPING:
+          handler.endPrefixMapping(_strings[string++]);
+          break;
+        case PROCESSING_INSTRUCTION:
+          handler.processingInstruction(_strings[string], _strings[string + 1]);
+          string += 2;
+          break;
+        default:
+          throw new IllegalStateException("Corrupt marshal fragment");
+      }
+    }
+  }
+
+  @Override
+  public void startElement(final String uri, final String localName, final String qName,
+      final Attributes attributes) {
+    int attributeCount = attributes.getLength();
+    addEvent(START_ELEMENT, attributeCount);
+    ensureStrings(3 + 5 * attributeCount);
+    _strings[_stringCount++] = uri;
+    _strings[_stringCount++] = localName;
+    _strings[_stringCount++] = qName;
+    for (int i = 0; i < attributeCount; i++) {
+      _strings[_stringCount++] = attributes.getURI(i);
+      _strings[_stringCount++] = attributes.getLocalName(i);
+      _strings[_stringCount++] = attributes.getQName(i);
+      _strings[_stringCount++] = attributes.getType(i);
+      _strings[_stringCount++] = attributes.getValue(i);
+    }
+  }
+
+  @Override
+  public void endElement(final String uri, final String localName, final String qName) {
+    addEvent(END_ELEMENT);
+    ensureStrings(3);
+    _strings[_stringCount++] = uri;
+    _strings[_stringCount++] = localName;
+    _strings[_stringCount++] = qName;
+  }
+
+  @Override
+  public void characters(final char[] ch, final int start, final int length) {
+    addEvent(CHARACTERS, _charCount, length);
+    addChars(ch, start, length);
+  }
+
+  @Override
+  public void ignorableWhitespace(final char[] ch, final int start, final int length) {
+    addEvent(IGNORABLE_WHITESPACE, _charCount, length);
+    addChars(ch, start, length);
+  }
+
+  @Override
+  public void startPrefixMapping(final String prefix, final String uri) {
+    addEvent(START_PREFIX_MAPPING);
+    ensureStrings(2);
+    _strings[_stringCount++] = prefix;
+    _strings[_stringCount++] = uri;
+  }
+
+  @Override
+  public void endPrefixMapping(final String prefix) {
+    addEvent(END_PREFIX_MAPPING);
+    ensureStrings(1);
+    _strings[_stringCount++] = prefix;
+  }
+
+  @Override
+  public void processingInstruction(final String target, final String data) {
+    addEvent(PROCESSING_INSTRUCTION);
+    ensureStrings(2);
+    _strings[_stringCount++] = target;
+    _strings[_stringCount++] = data;
+  }
+
+  /**
+   * Records an event without arguments.
+   */
+  private void addEvent(final int type) {
+    ensureEvents(1);
+    _events[_eventCount++] = type;
+  }
+
+  /**
+   * Records an event with one argument.
+   */
+  private void addEvent(final int type, final int argument) {
+    ensureEvents(2);
+    _events[_eventCount++] = type;
+    _events[_eventCount++] = argument;
+  }
+
+  /**
+   * Records an event with two arguments.
+   */
+  private void addEvent(final int type, final int first, final int second) {
+    ensureEvents(3);
+    _events[_eventCount++] = type;
+    _events[_eventCount++] = first;
+    _events[_eventCount++] = second;
+  }
+
+  /**
+   * Appends the given characters to the character buffer.
+   */
+  private void addChars(final char[] ch, final int start, final int length) {
+    if (_charCount + length > _chars.length) {
+      char[] chars = new char[Math.max(_chars.length * 2, _charCount + length)];
+      System.arraycopy(_chars, 0, chars, 0, _charCount);
+      _chars = chars;
+    }
+    System.arraycopy(ch, start, _chars, _charCount, length);
+    _charCount += length;
+  }
+
+  /**
+   * Makes room for the given number of ints in the event buffer.
+   */
+  private void ensureEvents(final int count) {
+    if (_eventCount + count > _events.length) {
+      int[] events = new int[_events.length * 2];
+      System.arraycopy(_events, 0, events, 0, _eventCount);
+      _events = events;
+    }
+  }
+
+  /**
+   * Makes room for the given number of strings in the string buffer.
+   */
+  private void ensureStrings(final int count) {
+    if (_stringCount + count > _strings.length) {
+      String[] strings = new String[Math.max(_strings.length * 2, _stringCount + count)];
+      System.arraycopy(_strings, 0, strings, 0, _stringCount);
+      _strings = strings;
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The decisions the {@link Marshaller} takes for an object that depend only on the runtime class
+ * of the object and the descriptor of the field holding it: the class to marshal it as once proxy
+ * interfaces are stripped, the element name, the class descriptor, whether and how to write an
+ * xsi:type attribute and the namespace of the element. A plan is immutable and is computed once
+ * per class and field, so that the objects of a collection holding objects of one class are
+ * marshalled without resolving anything again. This includes whether the type can be inferred
+ * from the element name instead of an xsi:type attribute, which depends on the descriptors the
+ * resolver knows; the plans are therefore dropped whenever these may change, see {@link Cache}.
+ *
+ * @since 1.4.2
+ */
+final class MarshalPlan {
+
+  /** The descriptor of the field, or the one created for the root element. */
+  final XMLFieldDescriptor _descriptor;
+
+  /** The class to marshal the object as. */
+  final Class<?> _type;
+
+  /** True if the object is a byte array. */
+  final boolean _byteArray;
+
+  /** The name of the element. */
+  final String _name;
+
+  /** The class descriptor to marshal the object with, null if the object is skipped. */
+  final XMLClassDescriptor _classDesc;
+
+  /** True if the element is a container, whose element is not written. */
+  final boolean _container;
+
+  /** True if an xsi:type attribute is written, unless xsi:type attributes are suppressed. */
+  final boolean _saveType;
+
+  /** The xsi:type value, without prefix; null if no xsi:type attribute is written. */
+  final String _typeName;
+
+
+  /** True if the xsi:type value is a Java class name, in the java namespace. */
+  final boolean _javaType;
+
+  /** The namespace of the xsi:type value, whose prefix in scope is added to it; may be null. */
+  final String _typeNamespace;
+
+  /** The namespace prefix requested for the element, may be null. */
+  final String _nsPrefix;
+
+  /** The namespace URI of the element, may be null. */
+  final String _nsURI;
+
+  /** The value of {@link Marshaller#setMarshalExtendedType(boolean)} the plan was made for. */
+  final boolean _extendedType;
+
+  /** The proxy interfaces the plan was made for. */
+  final Set<String> _proxyInterfaces;
+
+  MarshalPlan(final XMLFieldDescriptor descriptor, final Class<?> type, final String name,
+      final XMLClassDescriptor classDesc, final boolean container, final boolean saveType,
+      final String typeName, final boolean javaType, final String typeNamespace,
+      final String nsPrefix, final String nsURI,
+      final boolean extendedType, final Set<String> proxyInterfaces) {
+    _descriptor = descriptor;
+    _type = type;
+    _byteArray = type.isArray() && (type.getComponentType() == Byte.TYPE);
+    _name = name;
+    _classDesc = classDesc;
+    _container = container;
+    _saveType = saveType;
+    _typeName = typeName;
+    _javaType = javaType;
+    _typeNamespace = typeNamespace;
+    _nsPrefix = nsPrefix;
+    _nsURI = nsURI;
+    _extendedType = extendedType;
+    _proxyInterfaces = proxyInterfaces;
+  }
+
+  /**
+   * Returns true if this plan applies to a {@link Marshaller} with the given settings.
+   *
+   * @param extendedType the value of {@link Marshaller#setMarshalExtendedType(boolean)}
+   * @param proxyInterfaces the proxy interfaces of the Marshaller
+   * @return true if this plan was made for the given settings
+   */
+  boolean appliesTo(final boolean extendedType, final Set<String> proxyInterfaces) {
+    return (_extendedType == extendedType) && _proxyInterfaces.equals(proxyInterfaces);
+  }
+
+  /**
+   * The plans made for the fields and classes met by the marshallers of one context. The class
+   * descriptors the plans hold are the ones of that context, so a cache is cleared whenever the
+   * descriptors a context resolves may change.
+   * <p>
+   * Plans are kept by runtime class, and then by the identity of the field descriptor, as
+   * descriptors compare by content. The plans of one class are few and rarely added to, so they are
+   * held in a map that is copied on every change and only read otherwise, which lets a plan be
+   * looked up without allocating anything.
+   */
+  static final class Cache {
+
+    /** The plans, by runtime class and then by field descriptor. */
+    private final ConcurrentMap<Class<?>, Map<XMLFieldDescriptor, MarshalPlan>> _plans =
+        new ConcurrentHashMap<Class<?>, Map<XMLFieldDescriptor, MarshalPlan>>();
+
+    /**
+     * Returns the plan made for the given field and class.
+     *
+     * @param descriptor the descriptor of the field
+     * @param type the runtime class of the object
+     * @return the plan, or null if none was made yet
+     */
+    MarshalPlan get(final XMLFieldDescriptor descriptor, final Class<?> type) {
+      Map<XMLFieldDescriptor, MarshalPlan> plans = _plans.get(type);
+      return (plans == null) ? null : plans.get(descriptor);
+    }
+
+    /**
+     * Stores the plan made for the given field and class.
+     *
+     * @param descriptor the descriptor of the field
+     * @param type the runtime class of the object
+     * @param plan the plan
+     */
+    synchronized void put(final XMLFieldDescriptor descriptor, final Class<?> type,
+        final MarshalPlan plan) {
+      Map<XMLFieldDescriptor, MarshalPlan> plans = _plans.get(type);
+      Map<XMLFieldDescriptor, MarshalPlan> copy = (plans == null)
+          ? new IdentityHashMap<XMLFieldDescriptor, MarshalPlan>()
+          : new IdentityHashMap<XMLFieldDescriptor, MarshalPlan>(plans);
+      copy.put(descriptor, plan);
+      _plans.put(type, copy);
+    }
+
+    /**
+     * Drops all plans.
+     */
+    synchronized void clear() {
+      _plans.clear();
+    }
+  }
+}
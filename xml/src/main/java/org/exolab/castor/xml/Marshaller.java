@@ -45,13 +45,21 @@ import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.StringTokenizer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
@@ -73,6 +81,7 @@ import org.exolab.castor.mapping.MappingException;
 import org.exolab.castor.mapping.MappingLoader;
 import org.exolab.castor.mapping.handlers.MapHandlers;
 import org.exolab.castor.mapping.loader.CollectionHandlers;
+import org.exolab.castor.mapping.loader.J1CollectionHandlers.ArrayEnumerator;
 import org.exolab.castor.types.AnyNode;
 import org.exolab.castor.util.SafeStack;
 import org.exolab.castor.xml.descriptors.RootArrayDescriptor;
@@ -82,9 +91,9 @@ import org.exolab.castor.xml.handlers.EnumFieldHandler;
 import org.exolab.castor.xml.util.AnyNode2SAX2;
 import org.exolab.castor.xml.util.AttributeSetImpl;
 import org.exolab.castor.xml.util.DocumentHandlerAdapter;
+import org.exolab.castor.xml.util.PrimitiveListCodec;
 import org.exolab.castor.xml.util.SAX2DOMHandler;
 import org.exolab.castor.xml.util.StaxEventHandler;
-import org.exolab.castor.xml.util.StaxStreamHandler;
 import org.exolab.castor.xml.util.XMLClassDescriptorAdapter;
 import org.exolab.castor.xml.util.XMLClassDescriptorImpl;
 import org.exolab.castor.xml.util.XMLFieldDescriptorImpl;
@@ -159,6 +168,17 @@ public class Marshaller extends MarshalFramework {
    */
   private static final StringClassDescriptor STRING_CLASS_DESCRIPTOR = new StringClassDescriptor();
 
+  /**
+   * The largest number of items of a collection marshalled on several threads into one fragment.
+   */
+  private static final int PARALLEL_CHUNK_SIZE = 256;
+
+  /**
+   * The number of chunks per thread of a collection marshalled on several threads that may be
+   * started or held in memory before they are written.
+   */
+  private static final int PARALLEL_WINDOW = 2;
+
   // ----------------------------/
   // - Private member variables -/
   // ----------------------------/
@@ -201,9 +221,10 @@ public class Marshaller extends MarshalFramework {
   private NamespacesStack namespacesStack = new NamespacesStack();
 
   /**
-   * Records Java packages being used during marshaling.
-   **/
-  private List<String> _packages = new ArrayList<String>();
+   * The plans for marshalling objects by runtime class and field, shared with the other
+   * marshallers of the {@link XMLContext} this Marshaller was created by.
+   */
+  private MarshalPlan.Cache _marshalPlans = new MarshalPlan.Cache();
 
   /**
    * A stack of parent objects...to prevent circular references from being marshaled.
@@ -260,12 +281,46 @@ public class Marshaller extends MarshalFramework {
    */
   private boolean _validate = false;
 
+  /**
+   * Indicates whether generated classes implementing {@link XmlWritable} may write their attributes
+   * and content themselves.
+   */
+  private boolean _directMarshalling = true;
+
+  /**
+   * Buffer used by {@link XmlWriter} instances to format primitive values.
+   */
+  private final char[] _directBuffer = new char[XmlWriter.BUFFER_SIZE];
+
+  /**
+   * Buffer the text of simple values is copied into before being sent as character data.
+   */
+  private char[] _textBuffer = new char[64];
+
   /**
    * Set of full class names of proxy interfaces. If the class to be marshalled implements one of
    * them the superclass will be marshalled instead of the class itself.
    */
   private final Set<String> _proxyInterfaces = new HashSet<String>();
 
+  /**
+   * The minimum number of items of a collection for it to be marshalled on several threads, 0 if
+   * collections are always marshalled by the calling thread.
+   */
+  private int _parallelThreshold = 0;
+
+  /**
+   * The executor running the chunks of collections marshalled on several threads.
+   */
+  private Executor _parallelExecutor = null;
+
+  /**
+   * The prefixes assigned to namespaces, by namespace URI, before the items of a collection were
+   * split into chunks; used instead of generated prefixes by the Marshallers marshalling the
+   * chunks, null if prefixes are generated.
+   */
+  private Map<String, String> _assignedPrefixes = null;
+
   /**
    * Creates a new {@link Marshaller} with the given SAX {@link DocumentHandler}.
    *
@@ -518,7 +573,7 @@ public class Marshaller extends MarshalFramework {
   public void setXmlStreamWriter(XMLStreamWriter xmlStreamWriter) {
     checkNotNull(xmlStreamWriter, "The given 'java.xml.stream.XMLStreamWriter' instance is null.");
 
-    setContentHandler(new StaxStreamHandler(xmlStreamWriter));
+    setContentHandler(new StaxStreamOutput(xmlStreamWriter));
   }
 
   /**
@@ -544,9 +599,19 @@ public class Marshaller extends MarshalFramework {
    */
   public void setInternalContext(final InternalContext internalContext) {
     super.setInternalContext(internalContext);
+    _marshalPlans = new MarshalPlan.Cache();
     deriveProperties();
   }
 
+  /**
+   * Sets the cache of marshal plans to share with the other marshallers of a context.
+   *
+   * @param marshalPlans the cache of the context
+   */
+  void setMarshalPlans(final MarshalPlan.Cache marshalPlans) {
+    _marshalPlans = marshalPlans;
+  }
+
 
   /**
    * Derive class-level properties from {@link XMLProperties} as defined {@link InternalContext}.
@@ -559,6 +624,8 @@ public class Marshaller extends MarshalFramework {
     _saveMapKeys =
         getInternalContext().getBooleanProperty(XMLProperties.SAVE_MAP_KEYS).booleanValue();
 
+    deriveDirectMarshalling();
+
     String prop = getInternalContext().getStringProperty(XMLProperties.PROXY_INTERFACES);
     if (prop != null) {
       StringTokenizer tokenizer = new StringTokenizer(prop, ", ");
@@ -682,8 +749,11 @@ public class Marshaller extends MarshalFramework {
     }
 
     MappingUnmarshaller mum = new MappingUnmarshaller();
+    mum.setLazyDescriptors(Boolean.TRUE
+        .equals(getInternalContext().getBooleanProperty(XMLProperties.LAZY_MAPPING_DESCRIPTORS)));
     MappingLoader resolver = mum.getMappingLoader(mapping, BindingType.XML);
     getInternalContext().getXMLClassDescriptorResolver().setMappingLoader(resolver);
+    _marshalPlans.clear();
   }
 
   /**
@@ -713,6 +783,112 @@ public class Marshaller extends MarshalFramework {
     namespacesStack.addNamespace(nsPrefix, nsURI);
   }
 
+  /**
+   * Declares the namespaces of the given classes, and of all classes reachable through their
+   * fields, on the root element. Namespaces declared at the root are in scope for all nested
+   * elements, which then need no namespace declarations of their own. A namespace already mapped
+   * to a prefix is left as is; a prefix is generated for one without a prefix of its own.
+   *
+   * @param classes the classes whose namespaces to declare
+   * @throws MarshalException if a class descriptor cannot be resolved
+   * @since 1.4.2
+   */
+  public void declareNamespaces(final Class<?>[] classes) throws MarshalException {
+    Set<XMLClassDescriptor> visited =
+        Collections.newSetFromMap(new IdentityHashMap<XMLClassDescriptor, Boolean>());
+    Map<String, String> namespaces = new LinkedHashMap<String, String>();
+    for (int i = 0; i < classes.length; i++) {
+      XMLClassDescriptor classDesc = getClassDescriptor(classes[i]);
+      if (classDesc != null) {
+        collectNamespaces(classDesc, visited, namespaces);
+      }
+    }
+    for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+      predeclareNamespace(namespace.getValue(), namespace.getKey());
+    }
+  } // -- declareNamespaces
+
+  /**
+   * Collects the namespaces of the given class descriptor and of the class descriptors of its
+   * fields, in the order they are met, together with the first prefix given for each of them.
+   *
+   * @param classDesc the class descriptor
+   * @param visited the class descriptors already visited
+   * @param namespaces the prefixes collected so far, by namespace URI
+   */
+  private static void collectNamespaces(final XMLClassDescriptor classDesc,
+      final Set<XMLClassDescriptor> visited, final Map<String, String> namespaces) {
+    if (!visited.add(classDesc)) {
+      return;
+    }
+    collectNamespace(classDesc.getNameSpacePrefix(), classDesc.getNameSpaceURI(), namespaces);
+    collectNamespaces(classDesc.getAttributeDescriptors(), visited, namespaces);
+    collectNamespaces(classDesc.getElementDescriptors(), visited, namespaces);
+  } // -- collectNamespaces
+
+  /**
+   * Collects the namespaces of the given field descriptors and of their class descriptors.
+   *
+   * @param fields the field descriptors, may be null
+   * @param visited the class descriptors already visited
+   * @param namespaces the prefixes collected so far, by namespace URI
+   */
+  private static void collectNamespaces(final XMLFieldDescriptor[] fields,
+      final Set<XMLClassDescriptor> visited, final Map<String, String> namespaces) {
+    if (fields == null) {
+      return;
+    }
+    for (int i = 0; i < fields.length; i++) {
+      XMLFieldDescriptor field = fields[i];
+      if (field == null) {
+        continue;
+      }
+      collectNamespace(field.getNameSpacePrefix(), field.getNameSpaceURI(), namespaces);
+      ClassDescriptor fieldClassDesc = field.getClassDescriptor();
+      if (fieldClassDesc instanceof XMLClassDescriptor) {
+        collectNamespaces((XMLClassDescriptor) fieldClassDesc, visited, namespaces);
+      }
+    }
+  } // -- collectNamespaces
+
+  /**
+   * Adds the given namespace with the given prefix, unless it is empty or was added before.
+   *
+   * @param nsPrefix the preferred prefix, may be null
+   * @param nsURI the namespace URI, may be null
+   * @param namespaces the prefixes collected so far, by namespace URI
+   */
+  private static void collectNamespace(final String nsPrefix, final String nsURI,
+      final Map<String, String> namespaces) {
+    if ((nsURI == null) || (nsURI.length() == 0)) {
+      return;
+    }
+    if (!namespaces.containsKey(nsURI)) {
+      namespaces.put(nsURI, nsPrefix);
+    }
+  } // -- collectNamespace
+
+  /**
+   * Declares the given namespace in the current scope unless a non-default prefix is already bound
+   * to it. A prefix is generated if none is given or the given one is bound to another namespace.
+   *
+   * @param nsPrefix the preferred prefix, may be null
+   * @param nsURI the namespace URI, may be null
+   */
+  private void predeclareNamespace(String nsPrefix, final String nsURI) {
+    if ((nsURI == null) || (nsURI.length() == 0)
+        || (namespacesStack.getNonDefaultNamespacePrefix(nsURI) != null)) {
+      return;
+    }
+    if ((nsPrefix == null) || (nsPrefix.length() == 0)
+        || (namespacesStack.getNamespaceURI(nsPrefix) != null)) {
+      do {
+        nsPrefix = DEFAULT_PREFIX + (++_namespaceCounter);
+      } while (namespacesStack.getNamespaceURI(nsPrefix) != null);
+    }
+    namespacesStack.addNamespace(nsPrefix, nsURI);
+  } // -- predeclareNamespace
+
   /**
    * Sets the name of the root element to use.
    *
@@ -789,6 +965,7 @@ public class Marshaller extends MarshalFramework {
     if (cdr != null) {
       getInternalContext().setXMLClassDescriptorResolver(cdr);
       // _cdResolver = cdr;
+      _marshalPlans.clear();
     }
 
   } // -- setResolver
@@ -933,6 +1110,8 @@ public class Marshaller extends MarshalFramework {
       }
     } else {
       validate(object);
+      deriveDirectMarshalling();
+      deriveParallelMarshalling();
       MarshalState mstate = new MarshalState(object, "root");
       if (_asDocument) {
         try {
@@ -954,6 +1133,78 @@ public class Marshaller extends MarshalFramework {
 
   } // -- marshal
 
+  /**
+   * Reads from the {@link InternalContext} whether instances of {@link XmlWritable} may write
+   * themselves, as it applies to the document about to be marshalled.
+   */
+  private void deriveDirectMarshalling() {
+    Boolean direct = getInternalContext().getBooleanProperty(XMLProperties.DIRECT_MARSHALLING);
+    _directMarshalling = (direct == null) || direct.booleanValue();
+  } // -- deriveDirectMarshalling
+
+  /**
+   * Reads the settings for marshalling large collections on several threads from the
+   * {@link InternalContext}, as they apply to the document about to be marshalled.
+   */
+  private void deriveParallelMarshalling() {
+    _parallelThreshold = 0;
+    Object threshold =
+        getInternalContext().getProperty(XMLProperties.PARALLEL_MARSHALLING_THRESHOLD);
+    if (threshold instanceof Number) {
+      _parallelThreshold = ((Number) threshold).intValue();
+    } else if (threshold != null) {
+      _parallelThreshold = Integer.parseInt(threshold.toString().trim());
+    }
+    if (_parallelThreshold > 0) {
+      Object executor = getInternalContext().getProperty(XMLProperties.BATCH_EXECUTOR);
+      if ((executor != null) && !(executor instanceof Executor)) {
+        throw new IllegalStateException(
+            XMLProperties.BATCH_EXECUTOR + " is not a java.util.concurrent.Executor: " + executor);
+      }
+      _parallelExecutor =
+          (executor == null) ? BatchProcessor.defaultExecutor() : (Executor) executor;
+    }
+  } // -- deriveParallelMarshalling
+
+  /**
+   * Returns this Marshaller to the state it has when created by
+   * {@link XMLContext#createMarshaller()}: no output to marshal to, no listener, namespace
+   * mappings, processing instructions, top-level attributes or root element name, and all options
+   * at their defaults. Anything left over by a marshal call that failed is dropped as well. The
+   * context, the namespace stack and the internal buffers are retained, so that a reset Marshaller
+   * can be reused for another document at little cost.
+   * <p>
+   * A Marshaller is not thread-safe; a reset one is meant to be reused by the same thread, for
+   * instance through {@link XMLContext#acquireMarshaller()}.
+   * 
+   * @since 1.4.2
+   */
+  public void reset() {
+    _handler = null;
+    _serializer = null;
+    _format = null;
+    _asDocument = true;
+    _marshalExtendedType = true;
+    _marshalListener = null;
+    _rootElement = null;
+    _saveMapKeys = true;
+    _suppressNamespaces = false;
+    _suppressXSIType = false;
+    _useXSITypeAtRoot = false;
+    _validate = false;
+    _directMarshalling = true;
+    _parallelThreshold = 0;
+    _parallelExecutor = null;
+    _proxyInterfaces.clear();
+    _processingInstructions.clear();
+    _topLevelAtts.clear();
+    namespacesStack.clear();
+    _namespaceCounter = 0;
+    _depth = 0;
+    _parents.clear();
+    _attributes.clear();
+  } // -- reset
+
   /**
    * Marshals the given object, using the given descriptor and document handler.
    *
@@ -1002,12 +1253,6 @@ public class Marshaller extends MarshalFramework {
       return;
     }
 
-    boolean containerField = false;
-
-    if (descriptor != null && descriptor.isContainer()) {
-      containerField = true;
-    }
-
     // -- add object to stack so we don't potentially get into
     // -- an endlessloop
     if (_parents.search(object) >= 0) {
@@ -1017,424 +1262,97 @@ public class Marshaller extends MarshalFramework {
     _parents.push(object);
 
     final boolean isNil = (object instanceof NilObject);
+    final boolean atRoot = (descriptor == null);
 
-    Class<?> cls = null;
-
-    if (!isNil) {
-      cls = object.getClass();
-
-      if (!_proxyInterfaces.isEmpty()) {
-        boolean isProxy = false;
-
-        Class<?>[] interfaces = cls.getInterfaces();
-        for (int i = 0; i < interfaces.length; i++) {
-          if (_proxyInterfaces.contains(interfaces[i].getName())) {
-            isProxy = true;
-          }
-        }
-
-        if (isProxy) {
-          cls = cls.getSuperclass();
-        }
-      }
-    } else {
-      cls = ((NilObject) object).getClassDescriptor().getJavaClass();
+    MarshalPlan plan = getMarshalPlan(object, descriptor);
+    if (plan._classDesc == null) {
+      _parents.pop();
+      return;
     }
+    descriptor = plan._descriptor;
+    final Class<?> cls = plan._type;
+    final XMLClassDescriptor classDesc = plan._classDesc;
+    final String name = plan._name;
+    final boolean containerField = plan._container;
 
-    boolean byteArray = false;
-    if (cls.isArray())
-      byteArray = (cls.getComponentType() == Byte.TYPE);
-
-    boolean atRoot = false;
-    if (descriptor == null) {
-      descriptor = new XMLFieldDescriptorImpl(cls, "root", null, null);
-      atRoot = true;
+    // -- at this point naming should be done, update
+    // -- MarshalState.xmlName if root element
+    if (atRoot) {
+      mstate._xmlName = name;
     }
 
+    // -- Allow user to prevent xsi:type
+    final boolean saveType = plan._saveType && (!_suppressXSIType);
 
-    // -- calculate Object's name
-    String name = descriptor.getXMLName();
-    if (atRoot && _rootElement != null)
-      name = _rootElement;
-
-    boolean autoNameByClass = false;
-    if (name == null) {
-      autoNameByClass = true;
-      name = cls.getName();
-      // -- remove package information from name
-      int idx = name.lastIndexOf('.');
-      if (idx >= 0) {
-        name = name.substring(idx + 1);
-      }
-      // -- remove capitalization
-      name = getInternalContext().getXMLNaming().toXMLName(name);
-    }
 
-    // -- obtain the class descriptor
-    XMLClassDescriptor classDesc = null;
-    boolean saveType = false; /* flag for xsi:type */
+    // ------------------------/
+    // - Namespace Management -/
+    // ------------------------/
 
-    if (object instanceof NilObject) {
-      classDesc = ((NilObject) object).getClassDescriptor();
-    } else if (cls == descriptor.getFieldType()) {
-      classDesc = (XMLClassDescriptor) descriptor.getClassDescriptor();
+    // -- Set a new namespace scoping
+    // -- Note: We still need to declare a new scope even if
+    // -- we are suppressing most namespaces. Certain elements
+    // -- like xsi:type and xsi:nil will require a namespace
+    // -- declaration and cannot be suppressed.
+    if (!atRoot) {
+      namespacesStack.addNewNamespaceScope();
     }
 
-    if (classDesc == null) {
-
-      // -- check for primitive or String, we need to use
-      // -- the special #isPrimitive method of this class
-      // -- so that we can check for the primitive wrapper
-      // -- classes
-      if (isPrimitive(cls) || byteArray) {
-        classDesc = STRING_CLASS_DESCRIPTOR;
-        // -- check to see if we need to save the xsi:type
-        // -- for this class
-        Class<?> fieldType = descriptor.getFieldType();
-        if (cls != fieldType) {
-          while (fieldType.isArray()) {
-            fieldType = fieldType.getComponentType();
-          }
-          saveType = (!primitiveOrWrapperEquals(cls, fieldType));
-        }
-      } else {
-        saveType = cls.isArray();
-        // -- save package information for use when searching
-        // -- for MarshalInfo classes
-        String className = cls.getName();
-        int idx = className.lastIndexOf(".");
-        String pkgName = null;
-        if (idx > 0) {
-          pkgName = className.substring(0, idx + 1);
-          if (!_packages.contains(pkgName))
-            _packages.add(pkgName);
-        }
+    String nsPrefix = "";
+    String nsURI = "";
 
-        if (_marshalExtendedType) {
-          // -- Check to see if we can determine the class or
-          // -- ClassDescriptor from the type specified in the
-          // -- FieldHandler or from the current CDR state
+    if (!_suppressNamespaces) {
 
-          if ((cls != descriptor.getFieldType()) || atRoot) {
+      // -- Must be done before any attributes are processed
+      // -- since attributes can be namespaced as well.
 
-            saveType = true;
+      nsPrefix = plan._nsPrefix;
+      nsURI = plan._nsURI;
 
-            boolean containsDesc = false;
-
-            // -- if we're not at the root, check to see if we can resolve name.
-            // -- if we're at the root, the name will most likely be resolvable
-            // -- due to the validation step, so in most cases, if we are not
-            // -- using a mapping we need the xsi:type at the root
-            if (!atRoot) {
-              String nsURI = descriptor.getNameSpaceURI();
-              XMLClassDescriptor tmpDesc = null;
-              try {
-                tmpDesc = getResolver().resolveByXMLName(name, nsURI, null);
-              } catch (ResolverException rx) {
-                // -- exception not important as we're simply
-                // -- testing to see if we can resolve during
-                // -- unmarshalling
-                if (LOG.isDebugEnabled()) {
-                  LOG.debug("Error resolving", rx);
-                }
-              }
+      if ((nsURI == null) && (nsPrefix != null)) {
+        nsURI = namespacesStack.getNamespaceURI(nsPrefix);
+      }
+      // -- declare namespace at this element scope?
+      if (nsURI != null) {
+        nsPrefix = declareElementNamespace(nsPrefix, nsURI, atRoot);
+      } else {
+        nsURI = "";
+        redeclareEmptyDefaultNamespace();
+      }
+    }
 
-              if (tmpDesc != null) {
-                Class<?> tmpType = tmpDesc.getJavaClass();
-                if (tmpType == cls) {
-                  containsDesc = (!tmpType.isInterface());
-                }
-              }
-            }
 
-            if (!containsDesc) {
-              // -- check for class mapping, we don't use the
-              // -- resolver directly because it will try to
-              // -- load a compiled descriptor, or introspect
-              // -- one
-              if (atRoot) {
-                if (_useXSITypeAtRoot) {
-                  XMLMappingLoader ml = (XMLMappingLoader) getResolver().getMappingLoader();
-                  if (ml != null) {
-                    containsDesc = (ml.getDescriptor(cls.getName()) != null);
-                  }
-                } else {
-                  // -- prevent xsi:type from appearing
-                  // -- on root
-                  containsDesc = true;
-                }
 
-              }
+    // ---------------------/
+    // - handle attributes -/
+    // ---------------------/
 
-              // -- The following logic needs to be expanded to use
-              // -- namespace -to- package mappings
-              if ((!containsDesc) && (pkgName == null)) {
-                // -- check to see if the class name is guessable
-                // -- from the xml name
-                classDesc = getClassDescriptor(cls);
-                if (classDesc != null) {
-                  String tmpName = classDesc.getXMLName();
-                  if (name.equals(tmpName))
-                    saveType = false;
-                }
-              }
-            }
+    AttributesImpl atts = new AttributesImpl();
 
-            if (containsDesc)
-              saveType = false;
+    // -- user defined attributes
+    if (atRoot) {
+      // -- declare xsi prefix if necessary
+      if (_topLevelAtts.getSize() > 0) {
+        namespacesStack.addNamespace(XSI_PREFIX, XSI_NAMESPACE);
+      }
 
+      for (int i = 0; i < _topLevelAtts.getSize(); i++) {
+        String localName = _topLevelAtts.getName(i);
+        String qName = localName;
+        String ns = "";
+        if (!_suppressNamespaces) {
+          ns = _topLevelAtts.getNamespace(i);
+          String prefix = null;
+          if (StringUtils.isNotEmpty(ns)) {
+            prefix = namespacesStack.getNonDefaultNamespacePrefix(ns);
           }
-
-          // marshal as the actual type
-          if (classDesc == null)
-            classDesc = getClassDescriptor(cls);
-
-        } // -- end if (marshalExtendedType)
-        else {
-          // marshall as the base field type
-          cls = descriptor.getFieldType();
-          classDesc = getClassDescriptor(cls);
-        }
-
-        // -- If we are marshalling an array as the top
-        // -- level object, or if we run into a multi
-        // -- dimensional array, use the special
-        // -- ArrayDescriptor
-        if ((classDesc == null) && cls.isArray()) {
-          classDesc = new RootArrayDescriptor(cls);
-          if (atRoot) {
-            containerField = (!_asDocument);
+          if (StringUtils.isNotEmpty(prefix)) {
+            qName = prefix + ':' + qName;
           }
+          if (ns == null)
+            ns = "";
         }
-      } // -- end else not primitive
-
-      if (classDesc == null) {
-        // -- make sure we are allowed to marshal Object
-        if ((cls == Void.class) || (cls == Object.class) || (cls == Class.class)) {
-
-          throw new MarshalException(MarshalException.BASE_CLASS_OR_VOID_ERR);
-        }
-        _parents.pop();
-        return;
-      }
-    }
-
-    // -- handle auto-naming by class
-    if (autoNameByClass) {
-      if (classDesc.getXMLName() != null) {
-        name = classDesc.getXMLName();
-      }
-    }
-
-    // -- at this point naming should be done, update
-    // -- MarshalState.xmlName if root element
-    if (atRoot) {
-      mstate._xmlName = name;
-    }
-
-    // ------------------------------------------------/
-    // - Next few sections of code deal with xsi:type -/
-    // - prevention, if necessary -/
-    // ------------------------------------------------/
-
-    // -- Allow user to prevent xsi:type
-    saveType = (saveType && (!_suppressXSIType));
-
-    // -- Suppress xsi:type for special types
-    if (saveType) {
-      // -- java.util.Enumeration and java.util.Date fix
-      if (descriptor.getHandler() instanceof DateFieldHandler)
-        saveType = false;
-      else if (descriptor.getHandler() instanceof EnumFieldHandler)
-        saveType = false;
-      else if (isNil)
-        saveType = false;
-    }
-
-    // -- Suppress 'xsi:type' attributes when Castor is able to infer
-    // -- the correct type during unmarshalling
-    if (saveType) {
-      // When the type of the instance of the field is not the
-      // type specified for the field, it might be necessary to
-      // store the type explicitly (using xsi:type) to avoid
-      // confusion during unmarshalling.
-      //
-      // However, it might be possible to use the XMLName of the
-      // instance rather than the XMLName of the field. If
-      // Castor could find back the type from the name of the
-      // element, there is no need to add an xsi:type.
-      //
-      // In order to do that, there is two conditions:
-      // 1. Castor should be able to find the right class to
-      // instantiate form the XMLName of the instance.
-      // 2. Castor should be sure than when using the XMLName of
-      // the instance, there is only one field wich will match
-      // that name (and that it is the current field)
-
-      // XML Name associated with the class we are marshalling
-      String xmlElementName = name;
-      String xmlNamespace = descriptor.getNameSpaceURI();
-
-      // We try to find if there is a XMLClassDescriptor associated
-      // with the XML name of this class
-      XMLClassDescriptor xmlElementNameClassDesc = null;
-      try {
-        xmlElementNameClassDesc = getResolver().resolveByXMLName(xmlElementName, null, null);
-      } catch (ResolverException rx) {
-        // -- exception not important as we're simply
-        // -- testing to see if we can resolve during
-        // -- unmarshalling
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("Error resolving " + xmlElementName, rx);
-        }
-      }
-
-      // Test if we are not dealing with a source generated vector
-      if ((xmlElementName != null) && (xmlElementNameClassDesc != null)) {
-        // More than one class can map to a given element name
-        try {
-          Iterator<ClassDescriptor> classDescriptorIter =
-              getResolver().resolveAllByXMLName(xmlElementName, null, null);
-          for (; classDescriptorIter.hasNext();) {
-            xmlElementNameClassDesc = (XMLClassDescriptor) classDescriptorIter.next();
-            if (cls == xmlElementNameClassDesc.getJavaClass()) {
-              break;
-            }
-            // reset the classDescriptor --> none has been found
-            xmlElementNameClassDesc = null;
-          }
-        } catch (ResolverException rx) {
-          if (LOG.isDebugEnabled()) {
-            LOG.debug("Error resolving " + xmlElementName, rx);
-          }
-          xmlElementNameClassDesc = null;
-        }
-
-        // make sure we only run into this logic if the classDescriptor
-        // is coming from a mapping file.
-        if (xmlElementNameClassDesc instanceof XMLClassDescriptorAdapter) {
-
-          // Try to find a field descriptor directly in the parent object
-          XMLClassDescriptor tempContaining =
-              (XMLClassDescriptor) descriptor.getContainingClassDescriptor();
-
-          // --if no containing class descriptor
-          // --it means the container class could have been introspected
-          // --so no need to enter the logic
-          if (tempContaining != null) {
-            XMLFieldDescriptor fieldDescMatch =
-                tempContaining.getFieldDescriptor(xmlElementName, xmlNamespace, NodeType.Element);
-
-            // Try to find a field descriptor by inheritance in the parent object
-            InheritanceMatch[] matches = searchInheritance(xmlElementName, null, tempContaining); // TODO:
-                                                                                                  // Joachim,
-                                                                                                  // _cdResolver);
-
-            if (matches.length == 1) {
-
-              boolean foundTheRightClass = ((xmlElementNameClassDesc != null)
-                  && (cls == xmlElementNameClassDesc.getJavaClass()));
-
-              boolean oneAndOnlyOneMatchedField =
-                  ((fieldDescMatch != null) || (matches[0].parentFieldDesc == descriptor));
-
-              // Can we remove the xsi:type ?
-              if (foundTheRightClass && oneAndOnlyOneMatchedField) {
-                saveType = false;
-                // no name swapping for now
-              }
-            } // lengh is one
-          }
-        } // the classDesc comes from a mapping file
-      }
-    } // --- End of "if (saveType)"
-
-
-    // ------------------------/
-    // - Namespace Management -/
-    // ------------------------/
-
-    // -- Set a new namespace scoping
-    // -- Note: We still need to declare a new scope even if
-    // -- we are suppressing most namespaces. Certain elements
-    // -- like xsi:type and xsi:nil will require a namespace
-    // -- declaration and cannot be suppressed.
-    if (!atRoot) {
-      namespacesStack.addNewNamespaceScope();
-    }
-
-    String nsPrefix = "";
-    String nsURI = "";
-
-    if (!_suppressNamespaces) {
-
-      // -- Must be done before any attributes are processed
-      // -- since attributes can be namespaced as well.
-
-      nsPrefix = descriptor.getNameSpacePrefix();
-      if (nsPrefix == null)
-        nsPrefix = classDesc.getNameSpacePrefix();
-
-      nsURI = descriptor.getNameSpaceURI();
-      if (nsURI == null)
-        nsURI = classDesc.getNameSpaceURI();
-
-      if ((nsURI == null) && (nsPrefix != null)) {
-        nsURI = namespacesStack.getNamespaceURI(nsPrefix);
-      } else if ((nsPrefix == null) && (nsURI != null)) {
-        nsPrefix = namespacesStack.getNamespacePrefix(nsURI);
-      }
-      // -- declare namespace at this element scope?
-      if (nsURI != null) {
-        String defaultNamespace = namespacesStack.getDefaultNamespaceURI();
-        if ((nsPrefix == null) && (!nsURI.equals(defaultNamespace))) {
-          if ((defaultNamespace == null) && atRoot) {
-            nsPrefix = "";
-          } else
-            nsPrefix = DEFAULT_PREFIX + (++_namespaceCounter);
-        }
-        declareNamespace(nsPrefix, nsURI);
-      } else {
-        nsURI = "";
-        // -- redeclare default namespace as empty
-        String defaultNamespace = namespacesStack.getNamespaceURI("");
-        if ((defaultNamespace != null) && (!"".equals(defaultNamespace)))
-          namespacesStack.addNamespace("", "");
-      }
-    }
-
-
-
-    // ---------------------/
-    // - handle attributes -/
-    // ---------------------/
-
-    AttributesImpl atts = new AttributesImpl();
-
-    // -- user defined attributes
-    if (atRoot) {
-      // -- declare xsi prefix if necessary
-      if (_topLevelAtts.getSize() > 0) {
-        namespacesStack.addNamespace(XSI_PREFIX, XSI_NAMESPACE);
-      }
-
-      for (int i = 0; i < _topLevelAtts.getSize(); i++) {
-        String localName = _topLevelAtts.getName(i);
-        String qName = localName;
-        String ns = "";
-        if (!_suppressNamespaces) {
-          ns = _topLevelAtts.getNamespace(i);
-          String prefix = null;
-          if (StringUtils.isNotEmpty(ns)) {
-            prefix = namespacesStack.getNonDefaultNamespacePrefix(ns);
-          }
-          if (StringUtils.isNotEmpty(prefix)) {
-            qName = prefix + ':' + qName;
-          }
-          if (ns == null)
-            ns = "";
-        }
-        atts.addAttribute(ns, localName, qName, CDATA, _topLevelAtts.getValue(i));
+        atts.addAttribute(ns, localName, qName, CDATA, _topLevelAtts.getValue(i));
       }
     }
 
@@ -1445,10 +1363,21 @@ public class Marshaller extends MarshalFramework {
     int nestedAttCount = 0;
     XMLFieldDescriptor[] nestedAtts = null;
     XMLFieldDescriptor[] descriptors = null;
-    if ((!descriptor.isReference()) && (!isNil)) {
+
+    // -- let generated classes write their own attributes and content, if possible
+    XmlWriter directWriter = null;
+    if (canMarshalDirectly(object, cls, classDesc, descriptor, isNil, containerField)) {
+      directWriter =
+          new XmlWriter(this, handler, object, classDesc, mstate, name, nsPrefix, nsURI);
+      if (!directWriter.writeAttributes(atts)) {
+        directWriter = null;
+      }
+    }
+
+    if ((!descriptor.isReference()) && (!isNil) && (directWriter == null)) {
       descriptors = classDesc.getAttributeDescriptors();
     } else {
-      // references don't have attributes
+      // references don't have attributes, direct writers have processed them already
       descriptors = NO_FIELD_DESCRIPTORS;
     }
 
@@ -1490,7 +1419,7 @@ public class Marshaller extends MarshalFramework {
 
     // -- Look for attributes in container fields,
     // -- (also handle container in container)
-    if (!isNil)
+    if (!isNil && (directWriter == null))
       processContainerAttributes(object, classDesc, atts);
 
     // -- xml:space
@@ -1517,46 +1446,17 @@ public class Marshaller extends MarshalFramework {
       // -- declare XSI namespace, if necessary
       declareNamespace(XSI_PREFIX, XSI_NAMESPACE);
 
-      // -- calculate type name, either use class name or
-      // -- schema type name. If XMLClassDescriptor is introspected,
-      // -- or is the default XMLClassDescriptorImpl, then
-      // -- use java:classname, otherwise use XML name.
-      String typeName = classDesc.getXMLName();
-
-      // -- Check for introspection...
-      boolean introspected = false;
-      if (classDesc instanceof InternalXMLClassDescriptor)
-        introspected = ((InternalXMLClassDescriptor) classDesc).introspected();
-      else
-        introspected = Introspector.introspected(classDesc);
-
-      boolean useJavaPrefix = false;
-      if ((typeName == null) || introspected) {
-        typeName = JAVA_PREFIX + cls.getName();
-        useJavaPrefix = true;
-      } else if (classDesc instanceof RootArrayDescriptor) {
-        typeName = JAVA_PREFIX + cls.getName();
-        useJavaPrefix = true;
-      } else {
-        String dcn = classDesc.getClass().getName();
-        if (dcn.equals(XMLClassDescriptorImpl.class.getName())) {
-          typeName = JAVA_PREFIX + cls.getName();
-          useJavaPrefix = true;
-        } else {
-          // -- calculate proper prefix
-          String tns = classDesc.getNameSpaceURI();
-          String prefix = null;
-          if (StringUtils.isNotEmpty(tns)) {
-            prefix = namespacesStack.getNamespacePrefix(tns);
-            if (StringUtils.isNotEmpty(prefix)) {
-              typeName = prefix + ':' + typeName;
-            }
-          }
+      String typeName = plan._typeName;
+      if (plan._typeNamespace != null) {
+        // -- calculate proper prefix
+        String prefix = namespacesStack.getNamespacePrefix(plan._typeNamespace);
+        if (StringUtils.isNotEmpty(prefix)) {
+          typeName = prefix + ':' + typeName;
         }
       }
       // -- save type information
       atts.addAttribute(XSI_NAMESPACE, TYPE_ATTR, XSI_TYPE, CDATA, typeName);
-      if (useJavaPrefix) {
+      if (plan._javaType) {
         if (namespacesStack.getNamespaceURI("java") == null) {
           // -- declare Java namespace, if necessary
           declareNamespace("java", "http://java.sun.com");
@@ -1646,7 +1546,7 @@ public class Marshaller extends MarshalFramework {
         }
 
         // -- declare all necesssary namespaces
-        namespacesStack.getCurrentNamespaceScope().sendStartEvents(handler);
+        namespacesStack.sendStartEvents(handler);
         // -- Make sure qName is not null
         if (qName == null) {
           // -- hopefully this never happens, but if it does, it means
@@ -1676,7 +1576,7 @@ public class Marshaller extends MarshalFramework {
     // -- handle text content
     // ----------------------
 
-    if (!isNil) {
+    if (!isNil && (directWriter == null)) {
 
       XMLFieldDescriptor cdesc = null;
       if (!descriptor.isReference()) {
@@ -1751,28 +1651,30 @@ public class Marshaller extends MarshalFramework {
           }
           // -- </Wrapper>
 
-          char[] chars = null;
           Class<?> objType = obj.getClass();
           if (objType.isArray() && (objType.getComponentType() == Byte.TYPE)) {
             // -- handle base64/hexbinary content
             final String schemaType = descriptor.getSchemaType();
             if (HexDecoder.DATA_TYPE.equals(schemaType)) {
-              chars = new String(HexDecoder.encode((byte[]) obj)).toCharArray();
+              String str = new String(HexDecoder.encode((byte[]) obj));
+              if (str.length() > 0) {
+                characters(handler, str);
+              }
             } else {
-              chars = Base64Encoder.encode((byte[]) obj);
+              char[] chars = Base64Encoder.encode((byte[]) obj);
+              if (chars.length > 0) {
+                try {
+                  handler.characters(chars, 0, chars.length);
+                } catch (org.xml.sax.SAXException sx) {
+                  throw new MarshalException(sx);
+                }
+              }
             }
           } else {
             // -- all other types
             String str = obj.toString();
             if (StringUtils.isNotEmpty(str)) {
-              chars = str.toCharArray();
-            }
-          }
-          if ((chars != null) && (chars.length > 0)) {
-            try {
-              handler.characters(chars, 0, chars.length);
-            } catch (org.xml.sax.SAXException sx) {
-              throw new MarshalException(sx);
+              characters(handler, str);
             }
           }
         }
@@ -1781,16 +1683,11 @@ public class Marshaller extends MarshalFramework {
       else if (descriptor.isReference()) {
         Object id = getObjectID(object);
         if (id != null) {
-          char[] chars = id.toString().toCharArray();
-          try {
-            handler.characters(chars, 0, chars.length);
-          } catch (org.xml.sax.SAXException sx) {
-            throw new MarshalException(sx);
-          }
+          characters(handler, id.toString());
         }
       }
       // special case for byte[]
-      else if (byteArray) {
+      else if (plan._byteArray) {
         // -- Base64Encoding / HexBinary
         String schemaType = descriptor.getSchemaType();
         String componentType = descriptor.getComponentType();
@@ -1810,25 +1707,13 @@ public class Marshaller extends MarshalFramework {
       /* special case for Strings and primitives */
       else if (isPrimitive(cls)) {
 
-        char[] chars;
         if (cls == java.math.BigDecimal.class) {
-          chars = convertBigDecimalToString(object).toCharArray();
+          characters(handler, convertBigDecimalToString(object));
         } else {
-          chars = object.toString().toCharArray();
-        }
-        try {
-          handler.characters(chars, 0, chars.length);
-        } catch (org.xml.sax.SAXException sx) {
-          throw new MarshalException(sx);
+          characters(handler, object.toString());
         }
       } else if (isEnum(cls)) {
-        char[] chars = object.toString().toCharArray();
-        try {
-          handler.characters(chars, 0, chars.length);
-        } catch (org.xml.sax.SAXException sx) {
-          throw new MarshalException(sx);
-        }
-
+        characters(handler, object.toString());
       }
     }
 
@@ -1836,7 +1721,7 @@ public class Marshaller extends MarshalFramework {
     // -- handle daughter elements
     // ---------------------------
 
-    if (isNil || descriptor.isReference()) {
+    if (isNil || descriptor.isReference() || (directWriter != null)) {
       descriptors = NO_FIELD_DESCRIPTORS;
     } else {
       descriptors = classDesc.getElementDescriptors();
@@ -1844,6 +1729,11 @@ public class Marshaller extends MarshalFramework {
 
     ++_depth;
 
+    // -- text content and daughter elements of generated classes
+    if (directWriter != null) {
+      directWriter.writeContent();
+    }
+
     // -- marshal elements
     for (int i = firstNonNullIdx; i < descriptors.length; i++) {
 
@@ -1958,64 +1848,12 @@ public class Marshaller extends MarshalFramework {
         obj = new NilObject(classDesc, elemDescriptor);
       }
 
-      final Class<?> type = obj.getClass();
-
       MarshalState myState = mstate.createMarshalState(object, name);
       myState._nestedAtts = nestedAtts;
       myState._nestedAttCount = nestedAttCount;
 
 
-      // -- handle byte arrays
-      if (type.isArray() && (type.getComponentType() == Byte.TYPE)) {
-        marshal(obj, elemDescriptor, handler, myState);
-      } else if (type.isArray() && elemDescriptor.isDerivedFromXSList()) {
-        Object buffer = processXSListType(obj, elemDescriptor);
-        String elemName = elemDescriptor.getXMLName();
-        String elemQName = elemName;
-        if (StringUtils.isNotEmpty(nsPrefix)) {
-          elemQName = nsPrefix + ':' + elemName;
-        }
-        char[] chars = buffer.toString().toCharArray();
-        try {
-          handler.startElement(nsURI, elemName, elemQName, _attributes);
-          handler.characters(chars, 0, chars.length);
-          handler.endElement(nsURI, elemName, elemQName);
-        } catch (org.xml.sax.SAXException sx) {
-          throw new MarshalException(sx);
-        }
-      }
-      // -- handle all other collection types
-      else if (isCollection(type)) {
-        boolean processCollection = true;
-        if (_saveMapKeys) {
-          MapHandler mapHandler = MapHandlers.getHandler(type);
-          if (mapHandler != null) {
-            processCollection = false;
-            MapItem item = new MapItem();
-            Enumeration<?> keys = mapHandler.keys(obj);
-            while (keys.hasMoreElements()) {
-              item.setKey(keys.nextElement());
-              item.setValue(mapHandler.get(obj, item.getKey()));
-              marshal(item, elemDescriptor, handler, myState);
-            }
-          }
-
-        }
-        if (processCollection) {
-          CollectionHandler<?> colHandler = getCollectionHandler(type);
-          Enumeration<?> enumeration = colHandler.elements(obj);
-          while (enumeration.hasMoreElements()) {
-            Object item = enumeration.nextElement();
-            if (item != null) {
-              marshal(item, elemDescriptor, handler, myState);
-            }
-          }
-        }
-      }
-      // -- otherwise just marshal object as is
-      else {
-        marshal(obj, elemDescriptor, handler, myState);
-      }
+      marshalElementValue(obj, elemDescriptor, handler, myState, nsPrefix, nsURI);
 
       if (nestedAttCount > 0) {
         nestedAttCount = myState._nestedAttCount;
@@ -2042,59 +1880,783 @@ public class Marshaller extends MarshalFramework {
               }
             }
           }
-          if (popStack) {
-            handler.endElement(nsURI, wInfo._localName, wInfo._qName);
-            wrappers.pop();
-          } else {
-            break;
-          }
+          if (popStack) {
+            handler.endElement(nsURI, wInfo._localName, wInfo._qName);
+            wrappers.pop();
+          } else {
+            break;
+          }
+        }
+      } catch (SAXException sx) {
+        throw new MarshalException(sx);
+      }
+    }
+
+    // TODO: Handling additional attributes at the end causes elements to be marshalled in the wrong
+    // order when element 'text' is null, but their attribute value is not null. Can this be fixed
+    // to process element attributes even when the element text value is null?
+
+    if (wrappers != null && !wrappers.isEmpty()) {
+      dealWithNestedAttributesNested(object, handler, nsPrefix, nsURI, nestedAttCount, nestedAtts,
+          wrappers);
+    }
+
+    dealWithNestedAttributes(object, handler, nsPrefix, nsURI, nestedAttCount, nestedAtts,
+        new SafeStack<WrapperInfo>());
+
+    // -- finish element
+    try {
+      if (!containerField) {
+        handler.endElement(nsURI, name, qName);
+        // -- undeclare all necesssary namespaces
+        namespacesStack.sendEndEvents(handler);
+      }
+    } catch (org.xml.sax.SAXException sx) {
+      throw new MarshalException(sx);
+    }
+
+    --_depth;
+    _parents.pop();
+    if (!atRoot) {
+      namespacesStack.removeNamespaceScope();
+    }
+
+    // -- notify listener of post marshal
+    if (_marshalListener != null) {
+      try {
+        _marshalListener.postMarshal(object);
+      } catch (RuntimeException e) {
+        LOG.error(
+            "Invoking #postMarshal() on your custom MarshalListener instance caused the following problem:",
+            e);
+      }
+    }
+
+  }
+
+  /**
+   * Returns the plan for marshalling the given object as the value of the given field. Plans for
+   * objects below the root element are cached by runtime class and field, in the cache of the
+   * context this Marshaller was created by, and made again only if the plan was made for a
+   * Marshaller with other settings.
+   *
+   * @param object the object to marshal
+   * @param descriptor the descriptor of the field holding the object, null at the root element
+   * @return the plan for the object
+   * @throws MarshalException if the object is of a class that cannot be marshalled
+   */
+  private MarshalPlan getMarshalPlan(final Object object, final XMLFieldDescriptor descriptor)
+      throws MarshalException {
+    if ((descriptor == null) || (object instanceof NilObject)) {
+      return createMarshalPlan(object, descriptor);
+    }
+    Class<?> type = object.getClass();
+    MarshalPlan plan = _marshalPlans.get(descriptor, type);
+    if ((plan == null) || !plan.appliesTo(_marshalExtendedType, _proxyInterfaces)) {
+      plan = createMarshalPlan(object, descriptor);
+      _marshalPlans.put(descriptor, type, plan);
+    }
+    return plan;
+  } // -- getMarshalPlan
+
+  /**
+   * Makes the plan for marshalling the given object as the value of the given field: strips proxy
+   * interfaces from its class, finds its element name and class descriptor, and decides whether
+   * an xsi:type attribute has to be written for it.
+   *
+   * @param object the object to marshal
+   * @param descriptor the descriptor of the field holding the object, null at the root element
+   * @return the plan for the object
+   * @throws MarshalException if the object is of a class that cannot be marshalled
+   */
+  private MarshalPlan createMarshalPlan(final Object object, XMLFieldDescriptor descriptor)
+      throws MarshalException {
+    final boolean isNil = (object instanceof NilObject);
+    boolean containerField = (descriptor != null) && descriptor.isContainer();
+
+    Class<?> cls = null;
+
+    if (!isNil) {
+      cls = object.getClass();
+
+      if (!_proxyInterfaces.isEmpty()) {
+        boolean isProxy = false;
+
+        Class<?>[] interfaces = cls.getInterfaces();
+        for (int i = 0; i < interfaces.length; i++) {
+          if (_proxyInterfaces.contains(interfaces[i].getName())) {
+            isProxy = true;
+          }
+        }
+
+        if (isProxy) {
+          cls = cls.getSuperclass();
+        }
+      }
+    } else {
+      cls = ((NilObject) object).getClassDescriptor().getJavaClass();
+    }
+
+    boolean byteArray = false;
+    if (cls.isArray())
+      byteArray = (cls.getComponentType() == Byte.TYPE);
+
+    boolean atRoot = false;
+    if (descriptor == null) {
+      descriptor = new XMLFieldDescriptorImpl(cls, "root", null, null);
+      atRoot = true;
+    }
+
+
+    // -- calculate Object's name
+    String name = descriptor.getXMLName();
+    if (atRoot && _rootElement != null)
+      name = _rootElement;
+
+    boolean autoNameByClass = false;
+    if (name == null) {
+      autoNameByClass = true;
+      name = cls.getName();
+      // -- remove package information from name
+      int idx = name.lastIndexOf('.');
+      if (idx >= 0) {
+        name = name.substring(idx + 1);
+      }
+      // -- remove capitalization
+      name = getInternalContext().getXMLNaming().toXMLName(name);
+    }
+
+    // -- obtain the class descriptor
+    XMLClassDescriptor classDesc = null;
+    boolean saveType = false; /* flag for xsi:type */
+    String resolveName = null;
+
+    if (object instanceof NilObject) {
+      classDesc = ((NilObject) object).getClassDescriptor();
+    } else if (cls == descriptor.getFieldType()) {
+      classDesc = (XMLClassDescriptor) descriptor.getClassDescriptor();
+    }
+
+    if (classDesc == null) {
+
+      // -- check for primitive or String, we need to use
+      // -- the special #isPrimitive method of this class
+      // -- so that we can check for the primitive wrapper
+      // -- classes
+      if (isPrimitive(cls) || byteArray) {
+        classDesc = STRING_CLASS_DESCRIPTOR;
+        // -- check to see if we need to save the xsi:type
+        // -- for this class
+        Class<?> fieldType = descriptor.getFieldType();
+        if (cls != fieldType) {
+          while (fieldType.isArray()) {
+            fieldType = fieldType.getComponentType();
+          }
+          saveType = (!primitiveOrWrapperEquals(cls, fieldType));
+        }
+      } else {
+        saveType = cls.isArray();
+        // -- classes in the default package may be guessed from their XML name
+        boolean defaultPackage = (cls.getName().lastIndexOf('.') <= 0);
+
+        if (_marshalExtendedType) {
+          // -- Check to see if we can determine the class or
+          // -- ClassDescriptor from the type specified in the
+          // -- FieldHandler or from the current CDR state
+
+          if ((cls != descriptor.getFieldType()) || atRoot) {
+
+            saveType = true;
+
+            // -- whether the class can be resolved from the name is
+            // -- checked below, see #isTypeInferable
+            resolveName = name;
+
+            // -- The following logic needs to be expanded to use
+            // -- namespace -to- package mappings
+            if (defaultPackage) {
+              // -- check to see if the class name is guessable
+              // -- from the xml name
+              classDesc = getClassDescriptor(cls);
+              if (classDesc != null) {
+                String tmpName = classDesc.getXMLName();
+                if (name.equals(tmpName))
+                  saveType = false;
+              }
+            }
+          }
+
+          // marshal as the actual type
+          if (classDesc == null)
+            classDesc = getClassDescriptor(cls);
+
+        } // -- end if (marshalExtendedType)
+        else {
+          // marshall as the base field type
+          cls = descriptor.getFieldType();
+          classDesc = getClassDescriptor(cls);
+        }
+
+        // -- If we are marshalling an array as the top
+        // -- level object, or if we run into a multi
+        // -- dimensional array, use the special
+        // -- ArrayDescriptor
+        if ((classDesc == null) && cls.isArray()) {
+          classDesc = new RootArrayDescriptor(cls);
+          if (atRoot) {
+            containerField = (!_asDocument);
+          }
+        }
+      } // -- end else not primitive
+
+      if (classDesc == null) {
+        // -- make sure we are allowed to marshal Object
+        if ((cls == Void.class) || (cls == Object.class) || (cls == Class.class)) {
+
+          throw new MarshalException(MarshalException.BASE_CLASS_OR_VOID_ERR);
+        }
+        return new MarshalPlan(descriptor, cls, name, null, containerField, false, null, false,
+            null, null, null, _marshalExtendedType, proxyInterfaces());
+      }
+    }
+
+    // -- handle auto-naming by class
+    if (autoNameByClass) {
+      if (classDesc.getXMLName() != null) {
+        name = classDesc.getXMLName();
+      }
+    }
+
+    // ------------------------------------------------/
+    // - Next few sections of code deal with xsi:type -/
+    // - prevention, if necessary -/
+    // ------------------------------------------------/
+
+    // -- Suppress xsi:type for special types
+    if (saveType) {
+      // -- java.util.Enumeration and java.util.Date fix
+      if (descriptor.getHandler() instanceof DateFieldHandler)
+        saveType = false;
+      else if (descriptor.getHandler() instanceof EnumFieldHandler)
+        saveType = false;
+      else if (isNil)
+        saveType = false;
+    }
+
+    // -- Suppress xsi:type when the type can be inferred from the element name
+    if (saveType && isTypeInferable(descriptor, cls, name, resolveName, atRoot)) {
+      saveType = false;
+    }
+
+
+    // -- calculate type name, either use class name or
+    // -- schema type name. If XMLClassDescriptor is introspected,
+    // -- or is the default XMLClassDescriptorImpl, then
+    // -- use java:classname, otherwise use XML name.
+    String typeName = null;
+    boolean useJavaPrefix = false;
+    String typeNamespace = null;
+    if (saveType) {
+      typeName = classDesc.getXMLName();
+
+      // -- Check for introspection...
+      boolean introspected = false;
+      if (classDesc instanceof InternalXMLClassDescriptor)
+        introspected = ((InternalXMLClassDescriptor) classDesc).introspected();
+      else
+        introspected = Introspector.introspected(classDesc);
+
+      if ((typeName == null) || introspected) {
+        useJavaPrefix = true;
+      } else if (classDesc instanceof RootArrayDescriptor) {
+        useJavaPrefix = true;
+      } else {
+        String dcn = classDesc.getClass().getName();
+        if (dcn.equals(XMLClassDescriptorImpl.class.getName())) {
+          useJavaPrefix = true;
+        } else if (StringUtils.isNotEmpty(classDesc.getNameSpaceURI())) {
+          // -- prefixed with the prefix in scope when written
+          typeNamespace = classDesc.getNameSpaceURI();
+        }
+      }
+      if (useJavaPrefix) {
+        typeName = JAVA_PREFIX + cls.getName();
+      }
+    }
+
+    // -- namespace of the element, as far as it is known without
+    // -- looking at the namespaces in scope
+    String nsPrefix = descriptor.getNameSpacePrefix();
+    if (nsPrefix == null)
+      nsPrefix = classDesc.getNameSpacePrefix();
+
+    String nsURI = descriptor.getNameSpaceURI();
+    if (nsURI == null)
+      nsURI = classDesc.getNameSpaceURI();
+
+    return new MarshalPlan(descriptor, cls, name, classDesc, containerField, saveType, typeName,
+        useJavaPrefix, typeNamespace, nsPrefix, nsURI, _marshalExtendedType, proxyInterfaces());
+  } // -- createMarshalPlan
+
+  /**
+   * Returns true if an xsi:type attribute can be left out for objects of the given class, because
+   * Castor is able to infer their type from the element name during unmarshalling. This depends on
+   * the class descriptors the resolver knows, which is why the plans holding the decision are
+   * dropped whenever these may change.
+   *
+   * @param descriptor the descriptor of the field holding the objects
+   * @param cls the class the objects are marshalled as
+   * @param name the element name
+   * @param resolveName the element name the class is resolved by, null if not extended type
+   * @param atRoot true if the objects are marshalled as the root element
+   * @return true if no xsi:type attribute needs to be written for the objects
+   * @throws MarshalException if the resolver called fails fatally
+   */
+  private boolean isTypeInferable(final XMLFieldDescriptor descriptor, final Class<?> cls,
+      final String name, final String resolveName, final boolean atRoot) throws MarshalException {
+    if (resolveName != null) {
+      boolean containsDesc = false;
+
+      // -- if we're not at the root, check to see if we can resolve name.
+      // -- if we're at the root, the name will most likely be resolvable
+      // -- due to the validation step, so in most cases, if we are not
+      // -- using a mapping we need the xsi:type at the root
+      if (!atRoot) {
+        String nsURI = descriptor.getNameSpaceURI();
+        XMLClassDescriptor tmpDesc = null;
+        try {
+          tmpDesc = getResolver().resolveByXMLName(resolveName, nsURI, null);
+        } catch (ResolverException rx) {
+          // -- exception not important as we're simply
+          // -- testing to see if we can resolve during
+          // -- unmarshalling
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Error resolving", rx);
+          }
+        }
+
+        if (tmpDesc != null) {
+          Class<?> tmpType = tmpDesc.getJavaClass();
+          if (tmpType == cls) {
+            containsDesc = (!tmpType.isInterface());
+          }
+        }
+      } else if (_useXSITypeAtRoot) {
+        // -- check for class mapping, we don't use the
+        // -- resolver directly because it will try to
+        // -- load a compiled descriptor, or introspect
+        // -- one
+        XMLMappingLoader ml = (XMLMappingLoader) getResolver().getMappingLoader();
+        if (ml != null) {
+          containsDesc = (ml.getDescriptor(cls.getName()) != null);
+        }
+      } else {
+        // -- prevent xsi:type from appearing
+        // -- on root
+        containsDesc = true;
+      }
+
+      if (containsDesc) {
+        return true;
+      }
+    }
+
+    // -- Suppress 'xsi:type' attributes when Castor is able to infer
+    // -- the correct type during unmarshalling
+    //
+    // When the type of the instance of the field is not the
+    // type specified for the field, it might be necessary to
+    // store the type explicitly (using xsi:type) to avoid
+    // confusion during unmarshalling.
+    //
+    // However, it might be possible to use the XMLName of the
+    // instance rather than the XMLName of the field. If
+    // Castor could find back the type from the name of the
+    // element, there is no need to add an xsi:type.
+    //
+    // In order to do that, there is two conditions:
+    // 1. Castor should be able to find the right class to
+    // instantiate form the XMLName of the instance.
+    // 2. Castor should be sure than when using the XMLName of
+    // the instance, there is only one field wich will match
+    // that name (and that it is the current field)
+
+    // XML Name associated with the class we are marshalling
+    String xmlElementName = name;
+    String xmlNamespace = descriptor.getNameSpaceURI();
+
+    // We try to find if there is a XMLClassDescriptor associated
+    // with the XML name of this class
+    XMLClassDescriptor xmlElementNameClassDesc = null;
+    try {
+      xmlElementNameClassDesc = getResolver().resolveByXMLName(xmlElementName, null, null);
+    } catch (ResolverException rx) {
+      // -- exception not important as we're simply
+      // -- testing to see if we can resolve during
+      // -- unmarshalling
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Error resolving " + xmlElementName, rx);
+      }
+    }
+
+    // Test if we are not dealing with a source generated vector
+    if ((xmlElementName != null) && (xmlElementNameClassDesc != null)) {
+      // More than one class can map to a given element name
+      try {
+        Iterator<ClassDescriptor> classDescriptorIter =
+            getResolver().resolveAllByXMLName(xmlElementName, null, null);
+        for (; classDescriptorIter.hasNext();) {
+          xmlElementNameClassDesc = (XMLClassDescriptor) classDescriptorIter.next();
+          if (cls == xmlElementNameClassDesc.getJavaClass()) {
+            break;
+          }
+          // reset the classDescriptor --> none has been found
+          xmlElementNameClassDesc = null;
+        }
+      } catch (ResolverException rx) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Error resolving " + xmlElementName, rx);
+        }
+        xmlElementNameClassDesc = null;
+      }
+
+      // make sure we only run into this logic if the classDescriptor
+      // is coming from a mapping file.
+      if (xmlElementNameClassDesc instanceof XMLClassDescriptorAdapter) {
+
+        // Try to find a field descriptor directly in the parent object
+        XMLClassDescriptor tempContaining =
+            (XMLClassDescriptor) descriptor.getContainingClassDescriptor();
+
+        // --if no containing class descriptor
+        // --it means the container class could have been introspected
+        // --so no need to enter the logic
+        if (tempContaining != null) {
+          XMLFieldDescriptor fieldDescMatch =
+              tempContaining.getFieldDescriptor(xmlElementName, xmlNamespace, NodeType.Element);
+
+          // Try to find a field descriptor by inheritance in the parent object
+          InheritanceMatch[] matches = searchInheritance(xmlElementName, null, tempContaining); // TODO:
+                                                                                                // Joachim,
+                                                                                                // _cdResolver);
+
+          if (matches.length == 1) {
+
+            boolean foundTheRightClass = ((xmlElementNameClassDesc != null)
+                && (cls == xmlElementNameClassDesc.getJavaClass()));
+
+            boolean oneAndOnlyOneMatchedField =
+                ((fieldDescMatch != null) || (matches[0].parentFieldDesc == descriptor));
+
+            // Can we remove the xsi:type ?
+            if (foundTheRightClass && oneAndOnlyOneMatchedField) {
+              // no name swapping for now
+              return true;
+            }
+          } // lengh is one
+        }
+      } // the classDesc comes from a mapping file
+    }
+    return false;
+  } // -- isTypeInferable
+
+  /**
+   * Returns the proxy interfaces of this Marshaller, as recorded in a {@link MarshalPlan}.
+   *
+   * @return a copy of the proxy interfaces
+   */
+  private Set<String> proxyInterfaces() {
+    if (_proxyInterfaces.isEmpty()) {
+      return Collections.<String>emptySet();
+    }
+    return Collections.unmodifiableSet(new HashSet<String>(_proxyInterfaces));
+  } // -- proxyInterfaces
+
+  /**
+   * Marshals the value of an element field of the object currently being marshalled. Byte arrays
+   * and single values are marshalled as one element, collections and maps as one element per item
+   * and arrays of xs:list types as a single whitespace separated element.
+   *
+   * @param obj the value of the field
+   * @param elemDescriptor the descriptor of the element field
+   * @param handler the ContentHandler to marshal to
+   * @param myState the MarshalState for the field value
+   * @param nsPrefix the namespace prefix of the enclosing element
+   * @param nsURI the namespace URI of the enclosing element
+   * @throws MarshalException If there's a problem marshalling the value.
+   * @throws ValidationException If the value fails to validate.
+   */
+  private void marshalElementValue(final Object obj, final XMLFieldDescriptor elemDescriptor,
+      final ContentHandler handler, final MarshalState myState, final String nsPrefix,
+      final String nsURI) throws MarshalException, ValidationException {
+    final Class<?> type = obj.getClass();
+
+    // -- handle byte arrays
+    if (type.isArray() && (type.getComponentType() == Byte.TYPE)) {
+      marshal(obj, elemDescriptor, handler, myState);
+    } else if (type.isArray() && elemDescriptor.isDerivedFromXSList()) {
+      Object buffer = processXSListType(obj, elemDescriptor);
+      String elemName = elemDescriptor.getXMLName();
+      String elemQName = elemName;
+      if (StringUtils.isNotEmpty(nsPrefix)) {
+        elemQName = nsPrefix + ':' + elemName;
+      }
+      char[] chars = _textBuffer;
+      int length = 0;
+      if (buffer != null) {
+        StringBuilder sb = (StringBuilder) buffer;
+        length = sb.length();
+        chars = textBuffer(length);
+        sb.getChars(0, length, chars, 0);
+      }
+      try {
+        handler.startElement(nsURI, elemName, elemQName, _attributes);
+        handler.characters(chars, 0, length);
+        handler.endElement(nsURI, elemName, elemQName);
+      } catch (org.xml.sax.SAXException sx) {
+        throw new MarshalException(sx);
+      }
+    }
+    // -- handle all other collection types
+    else if (isCollection(type)) {
+      boolean processCollection = true;
+      if (_saveMapKeys) {
+        MapHandler mapHandler = MapHandlers.getHandler(type);
+        if (mapHandler != null) {
+          processCollection = false;
+          MapItem item = new MapItem();
+          Enumeration<?> keys = mapHandler.keys(obj);
+          while (keys.hasMoreElements()) {
+            item.setKey(keys.nextElement());
+            item.setValue(mapHandler.get(obj, item.getKey()));
+            marshal(item, elemDescriptor, handler, myState);
+          }
+        }
+
+      }
+      if (processCollection) {
+        Object[] items = getParallelItems(obj, myState);
+        if (items != null) {
+          marshalInParallel(items, elemDescriptor, handler, myState);
+        } else {
+          CollectionHandler<?> colHandler = getCollectionHandler(type);
+          Enumeration<?> enumeration = colHandler.elements(obj);
+          while (enumeration.hasMoreElements()) {
+            Object item = enumeration.nextElement();
+            if (item != null) {
+              marshal(item, elemDescriptor, handler, myState);
+            }
+          }
         }
-      } catch (SAXException sx) {
-        throw new MarshalException(sx);
       }
     }
+    // -- otherwise just marshal object as is
+    else {
+      marshal(obj, elemDescriptor, handler, myState);
+    }
+  } // -- marshalElementValue
 
-    // TODO: Handling additional attributes at the end causes elements to be marshalled in the wrong
-    // order when element 'text' is null, but their attribute value is not null. Can this be fixed
-    // to process element attributes even when the element text value is null?
-
-    if (wrappers != null && !wrappers.isEmpty()) {
-      dealWithNestedAttributesNested(object, handler, nsPrefix, nsURI, nestedAttCount, nestedAtts,
-          wrappers);
+  /**
+   * Returns the items of the given collection if it may be marshalled on several threads, that is
+   * if it is a {@link Collection} or an object array holding at least as many items as the
+   * configured threshold, or an {@link Enumeration}, whose items are taken from it to be counted.
+   * Collections are marshalled by the calling thread only if a {@link MarshalListener} has to see
+   * the items in order, or if attributes of the owning object are still waiting for the element
+   * they are nested in.
+   *
+   * @param collection the collection to marshal
+   * @param state the state of the object owning the collection
+   * @return the items to marshal in parallel, or null to marshal them sequentially
+   */
+  private Object[] getParallelItems(final Object collection, final MarshalState state) {
+    if ((_parallelThreshold <= 0) || (_marshalListener != null) || (state._nestedAttCount > 0)) {
+      return null;
+    }
+    if (collection instanceof Collection) {
+      Collection<?> items = (Collection<?>) collection;
+      return (items.size() >= _parallelThreshold) ? items.toArray() : null;
+    }
+    if (collection instanceof Object[]) {
+      Object[] items = (Object[]) collection;
+      return (items.length >= _parallelThreshold) ? items : null;
+    }
+    if (collection instanceof Enumeration) {
+      List<Object> items = new ArrayList<Object>();
+      Enumeration<?> enumeration = (Enumeration<?>) collection;
+      while (enumeration.hasMoreElements()) {
+        items.add(enumeration.nextElement());
+      }
+      return items.toArray();
     }
+    return null;
+  } // -- getParallelItems
 
-    dealWithNestedAttributes(object, handler, nsPrefix, nsURI, nestedAttCount, nestedAtts,
-        new SafeStack<WrapperInfo>());
+  /**
+   * Marshals the given items one after the other, skipping null items.
+   *
+   * @param items the items to marshal
+   * @param descriptor the descriptor of the collection field
+   * @param handler the handler to write the items to
+   * @param state the state of the object owning the collection
+   */
+  private void marshalItems(final Object[] items, final XMLFieldDescriptor descriptor,
+      final ContentHandler handler, final MarshalState state)
+      throws MarshalException, ValidationException {
+    for (int i = 0; i < items.length; i++) {
+      if (items[i] != null) {
+        marshal(items[i], descriptor, handler, state);
+      }
+    }
+  } // -- marshalItems
+
+  /**
+   * Marshals the items of a large collection on several threads, or sequentially if there are
+   * fewer of them than the configured threshold. The items are split into contiguous chunks, each
+   * of them marshalled by a worker {@link Marshaller} into a {@link MarshalFragment}, and the
+   * calling thread replays the fragments into the given handler in item order as soon as each of
+   * them is complete, which produces the same events as marshalling the items one after the other.
+   * A chunk is only started once the chunks more than {@link #PARALLEL_WINDOW} times the number
+   * of threads before it have been written, which bounds the fragments held in memory. While the
+   * chunk to write next is not complete, the calling thread marshals chunks as well.
+   * <p>
+   * A prefix is assigned beforehand to each namespace of the descriptors of the items that has
+   * none in scope, and used by every item declaring that namespace, as a prefix generated while
+   * marshalling a chunk could not be numbered as it would be sequentially. Prefixes generated for
+   * other namespaces are numbered on from the same value in each chunk, which is harmless as each
+   * of them is declared by the item using it. If marshalling a chunk failed, the chunks before it
+   * and the part of it marshalled are written before the failure is rethrown, as they would have
+   * been sequentially.
+   *
+   * @param items the items to marshal
+   * @param descriptor the descriptor of the collection field
+   * @param handler the handler to write the items to
+   * @param state the state of the object owning the collection
+   */
+  private void marshalInParallel(final Object[] items, final XMLFieldDescriptor descriptor,
+      final ContentHandler handler, final MarshalState state)
+      throws MarshalException, ValidationException {
+    if (items.length < _parallelThreshold) {
+      marshalItems(items, descriptor, handler, state);
+      return;
+    }
+    // -- computed before the workers share the state
+    state.getXPath();
+    final Map<String, String> prefixes = assignPrefixes(items, descriptor);
+
+    int threads = Runtime.getRuntime().availableProcessors();
+    int count = Math.max(Math.min(items.length, threads * 4),
+        (items.length + PARALLEL_CHUNK_SIZE - 1) / PARALLEL_CHUNK_SIZE);
+    ParallelChunk[] chunks = new ParallelChunk[count];
+    for (int i = 0; i < count; i++) {
+      int start = (int) ((long) items.length * i / count);
+      int end = (int) ((long) items.length * (i + 1) / count);
+      chunks[i] = new ParallelChunk(items, start, end);
+    }
+    final ParallelSchedule schedule = new ParallelSchedule(chunks, threads * PARALLEL_WINDOW);
+    Runnable worker = new Runnable() {
+      public void run() {
+        ParallelChunk chunk;
+        while ((chunk = schedule.take()) != null) {
+          chunk.marshal(createWorker(prefixes), descriptor, state);
+        }
+      }
+    };
 
-    // -- finish element
+    int namespaceCounter = _namespaceCounter;
     try {
-      if (!containerField) {
-        handler.endElement(nsURI, name, qName);
-        // -- undeclare all necesssary namespaces
-        namespacesStack.getCurrentNamespaceScope().sendEndEvents(handler);
+      for (int i = 1; i < Math.min(threads, count); i++) {
+        try {
+          _parallelExecutor.execute(worker);
+        } catch (RejectedExecutionException e) {
+          // -- the calling thread marshals the remaining chunks
+          break;
+        }
       }
-    } catch (org.xml.sax.SAXException sx) {
+      for (int i = 0; i < count; i++) {
+        ParallelChunk chunk = schedule.get(i);
+        ParallelChunk own;
+        while (!chunk.isDone() && ((own = schedule.poll()) != null)) {
+          own.marshal(createWorker(prefixes), descriptor, state);
+        }
+        chunk.await();
+        namespaceCounter = Math.max(namespaceCounter, chunk._namespaceCounter);
+        chunk.write(handler);
+        schedule.written(i);
+      }
+    } catch (SAXException sx) {
       throw new MarshalException(sx);
+    } finally {
+      schedule.close();
+      _namespaceCounter = namespaceCounter;
     }
+  } // -- marshalInParallel
 
-    --_depth;
-    _parents.pop();
-    if (!atRoot) {
-      namespacesStack.removeNamespaceScope();
+  /**
+   * Assigns a prefix to each namespace of the descriptors of the given collection field and of
+   * the classes of its items, as far as they can be resolved, that has no prefix in scope.
+   *
+   * @param items the items of the collection
+   * @param descriptor the descriptor of the collection field
+   * @return the prefixes assigned, by namespace URI
+   */
+  private Map<String, String> assignPrefixes(final Object[] items,
+      final XMLFieldDescriptor descriptor) {
+    Set<XMLClassDescriptor> visited =
+        Collections.newSetFromMap(new IdentityHashMap<XMLClassDescriptor, Boolean>());
+    Map<String, String> namespaces = new LinkedHashMap<String, String>();
+    collectNamespaces(new XMLFieldDescriptor[] {descriptor}, visited, namespaces);
+    Set<Class<?>> classes = new HashSet<Class<?>>();
+    for (int i = 0; i < items.length; i++) {
+      if ((items[i] != null) && classes.add(items[i].getClass())) {
+        try {
+          XMLClassDescriptor classDesc = getClassDescriptor(items[i].getClass());
+          if (classDesc != null) {
+            collectNamespaces(classDesc, visited, namespaces);
+          }
+        } catch (MarshalException e) {
+          // -- reported when the item is marshalled
+        }
+      }
     }
 
-    // -- notify listener of post marshal
-    if (_marshalListener != null) {
-      try {
-        _marshalListener.postMarshal(object);
-      } catch (RuntimeException e) {
-        LOG.error(
-            "Invoking #postMarshal() on your custom MarshalListener instance caused the following problem:",
-            e);
+    Map<String, String> prefixes = new HashMap<String, String>();
+    for (String nsURI : namespaces.keySet()) {
+      if (namespacesStack.getNonDefaultNamespacePrefix(nsURI) == null) {
+        String prefix;
+        do {
+          prefix = DEFAULT_PREFIX + (++_namespaceCounter);
+        } while (namespacesStack.getNamespaceURI(prefix) != null);
+        prefixes.put(nsURI, prefix);
       }
     }
+    return prefixes;
+  } // -- assignPrefixes
 
-  }
+  /**
+   * Creates a Marshaller marshalling a chunk of a collection on behalf of this one: configured
+   * like this one, positioned at the current element with its namespace scopes, ancestors and
+   * namespace prefix counter, and marshalling nested collections on its own thread.
+   *
+   * @param prefixes the prefixes assigned to namespaces for the collection, by namespace URI
+   * @return a new worker Marshaller
+   */
+  private Marshaller createWorker(final Map<String, String> prefixes) {
+    Marshaller worker = new Marshaller(getInternalContext());
+    worker._marshalPlans = _marshalPlans;
+    worker._marshalExtendedType = _marshalExtendedType;
+    worker._saveMapKeys = _saveMapKeys;
+    worker._suppressNamespaces = _suppressNamespaces;
+    worker._suppressXSIType = _suppressXSIType;
+    worker._validate = _validate;
+    worker._directMarshalling = _directMarshalling;
+    worker._proxyInterfaces.addAll(_proxyInterfaces);
+    worker.namespacesStack = namespacesStack.copy();
+    worker._namespaceCounter = _namespaceCounter;
+    worker._assignedPrefixes = prefixes;
+    worker._depth = _depth;
+    worker._parents.addAll(_parents);
+    return worker;
+  } // -- createWorker
 
   private void dealWithNestedAttributes(Object object, ContentHandler handler, String nsPrefix,
       String nsURI, int nestedAttCount, XMLFieldDescriptor[] nestedAtts,
@@ -2335,6 +2897,84 @@ public class Marshaller extends MarshalFramework {
   } // -- getID
 
 
+  /**
+   * Determines the prefix of an element bound to the given namespace URI and declares the namespace
+   * in the current scope, if necessary. A prefix is generated if none is in scope and the URI is
+   * not the default namespace.
+   *
+   * @param nsPrefix the prefix requested by the descriptors, may be null
+   * @param nsURI the namespace URI of the element, must not be null
+   * @param atRoot true if the element is the root element
+   * @return the prefix to use for the element
+   */
+  private String declareElementNamespace(String nsPrefix, final String nsURI,
+      final boolean atRoot) {
+    if (nsPrefix == null) {
+      nsPrefix = namespacesStack.getNamespacePrefix(nsURI);
+    }
+    String defaultNamespace = namespacesStack.getDefaultNamespaceURI();
+    if ((nsPrefix == null) && (!nsURI.equals(defaultNamespace))) {
+      if ((defaultNamespace == null) && atRoot) {
+        nsPrefix = "";
+      } else
+        nsPrefix = generatePrefix(nsURI);
+    }
+    declareNamespace(nsPrefix, nsURI);
+    return nsPrefix;
+  } // -- declareElementNamespace
+
+  /**
+   * Returns a prefix for the given namespace URI, which has none in scope: the one assigned to it
+   * before the collection being marshalled was split into chunks, unless it is bound to another
+   * namespace, or else a new one numbered with the namespace prefix counter.
+   *
+   * @param nsURI the namespace URI
+   * @return the prefix to declare for the namespace
+   */
+  private String generatePrefix(final String nsURI) {
+    if (_assignedPrefixes != null) {
+      String prefix = _assignedPrefixes.get(nsURI);
+      if (prefix != null) {
+        String boundURI = namespacesStack.getNamespaceURI(prefix);
+        if ((boundURI == null) || boundURI.equals(nsURI)) {
+          return prefix;
+        }
+      }
+    }
+    return DEFAULT_PREFIX + (++_namespaceCounter);
+  } // -- generatePrefix
+
+  /**
+   * Redeclares the default namespace as empty for an element without namespace, if a non-empty
+   * default namespace is in scope.
+   */
+  private void redeclareEmptyDefaultNamespace() {
+    String defaultNamespace = namespacesStack.getNamespaceURI("");
+    if ((defaultNamespace != null) && (!"".equals(defaultNamespace)))
+      namespacesStack.addNamespace("", "");
+  } // -- redeclareEmptyDefaultNamespace
+
+  /**
+   * Determines the prefix of an attribute bound to the given namespace URI and declares the
+   * namespace in the current scope, if necessary. Attributes never use the default namespace, so a
+   * prefix is generated if no other one is in scope.
+   *
+   * @param prefix the prefix requested by the descriptor, may be null
+   * @param namespace the namespace URI of the attribute, must not be empty
+   * @return the prefix to use for the attribute
+   */
+  private String declareAttributeNamespace(String prefix, final String namespace) {
+    if ((prefix == null) || (prefix.length() == 0))
+      prefix = namespacesStack.getNonDefaultNamespacePrefix(namespace);
+
+    if ((prefix == null) || (prefix.length() == 0)) {
+      // -- automatically create namespace prefix?
+      prefix = generatePrefix(namespace);
+    }
+    declareNamespace(prefix, namespace);
+    return prefix;
+  } // -- declareAttributeNamespace
+
   /**
    * Declares the given namespace, if not already in scope
    *
@@ -2500,6 +3140,238 @@ public class Marshaller extends MarshalFramework {
     return classDesc;
   } // -- getClassDescriptor
 
+  /**
+   * Checks whether the given object can write its attributes and content itself through an
+   * {@link XmlWriter}. This is only the case for instances of {@link XmlWritable} that are
+   * marshalled as themselves with the descriptor generated alongside their class; mapped or
+   * introspected descriptors, references, containers and nil values always use the generic path.
+   *
+   * @param object the object being marshalled
+   * @param cls the class the object is marshalled as
+   * @param classDesc the class descriptor used for the object
+   * @param descriptor the field descriptor of the object
+   * @param isNil true if the object is a nil placeholder
+   * @param containerField true if the object is the value of a container field
+   * @return true if the object may write itself
+   */
+  private boolean canMarshalDirectly(final Object object, final Class<?> cls,
+      final XMLClassDescriptor classDesc, final XMLFieldDescriptor descriptor, final boolean isNil,
+      final boolean containerField) {
+    if (!_directMarshalling || isNil || containerField || !(object instanceof XmlWritable)) {
+      return false;
+    }
+    if (descriptor.isReference() || (object.getClass() != cls)) {
+      return false;
+    }
+    XMLClassDescriptor actual = classDesc;
+    if (actual instanceof InternalXMLClassDescriptor) {
+      actual = ((InternalXMLClassDescriptor) actual).getClassDescriptor();
+    }
+    if ((actual instanceof XMLClassDescriptorAdapter) || Introspector.introspected(actual)) {
+      return false;
+    }
+    return actual.getJavaClass() == cls;
+  } // -- canMarshalDirectly
+
+  /**
+   * Returns true if a {@link MarshalListener} has been registered.
+   *
+   * @return true if a {@link MarshalListener} has been registered
+   */
+  boolean hasMarshalListener() {
+    return _marshalListener != null;
+  }
+
+  /**
+   * Returns the buffer {@link XmlWriter} instances use to format primitive values.
+   *
+   * @return the shared formatting buffer
+   */
+  char[] getDirectBuffer() {
+    return _directBuffer;
+  }
+
+  /**
+   * Sends the given text as character data, copying it into the reusable text buffer first.
+   *
+   * @param handler the ContentHandler to marshal to
+   * @param text the text to send
+   * @throws MarshalException If the ContentHandler reports an error.
+   */
+  private void characters(final ContentHandler handler, final String text)
+      throws MarshalException {
+    int length = text.length();
+    char[] chars = textBuffer(length);
+    text.getChars(0, length, chars, 0);
+    try {
+      handler.characters(chars, 0, length);
+    } catch (SAXException sx) {
+      throw new MarshalException(sx);
+    }
+  } // -- characters
+
+  /**
+   * Returns the reusable text buffer, grown to hold at least the given number of characters.
+   *
+   * @param length the number of characters the buffer has to hold
+   * @return the text buffer
+   */
+  private char[] textBuffer(final int length) {
+    if (_textBuffer.length < length) {
+      _textBuffer = new char[Math.max(length, _textBuffer.length * 2)];
+    }
+    return _textBuffer;
+  } // -- textBuffer
+
+  /**
+   * Starts a simple element on behalf of an {@link XmlWriter}, opening a new namespace scope and
+   * declaring the namespace of the element if necessary.
+   *
+   * @param handler the ContentHandler to marshal to
+   * @param namespace the namespace URI of the element, may be null
+   * @param name the local name of the element
+   * @return the qualified name of the element
+   * @throws MarshalException If the ContentHandler reports an error.
+   */
+  String startDirectElement(final ContentHandler handler, final String namespace,
+      final String name) throws MarshalException {
+    namespacesStack.addNewNamespaceScope();
+
+    String nsPrefix = null;
+    String nsURI = "";
+    if (!_suppressNamespaces) {
+      if (namespace != null) {
+        nsURI = namespace;
+        nsPrefix = declareElementNamespace(null, namespace, false);
+      } else {
+        redeclareEmptyDefaultNamespace();
+      }
+    }
+
+    String qName = name;
+    if (StringUtils.isNotEmpty(nsPrefix)) {
+      qName = nsPrefix + ':' + name;
+    }
+
+    _attributes.clear();
+    try {
+      namespacesStack.sendStartEvents(handler);
+      handler.startElement(nsURI, name, qName, _attributes);
+    } catch (SAXException sx) {
+      throw new MarshalException(sx);
+    }
+    return qName;
+  } // -- startDirectElement
+
+  /**
+   * Ends a simple element started with {@link #startDirectElement(ContentHandler, String, String)}.
+   *
+   * @param handler the ContentHandler to marshal to
+   * @param namespace the namespace URI of the element, may be null
+   * @param name the local name of the element
+   * @param qName the qualified name of the element
+   * @throws MarshalException If the ContentHandler reports an error.
+   */
+  void endDirectElement(final ContentHandler handler, final String namespace, final String name,
+      final String qName) throws MarshalException {
+    String nsURI = ((namespace == null) || _suppressNamespaces) ? "" : namespace;
+    try {
+      handler.endElement(nsURI, name, qName);
+      namespacesStack.sendEndEvents(handler);
+    } catch (SAXException sx) {
+      throw new MarshalException(sx);
+    }
+    namespacesStack.removeNamespaceScope();
+  } // -- endDirectElement
+
+  /**
+   * Adds an attribute on behalf of an {@link XmlWriter}, declaring its namespace if necessary.
+   *
+   * @param atts the SAX attribute list to add the attribute to
+   * @param namespace the namespace URI of the attribute, may be null
+   * @param name the local name of the attribute
+   * @param value the attribute value
+   */
+  void addDirectAttribute(final AttributesImpl atts, final String namespace, final String name,
+      final String value) {
+    String qName = name;
+    String nsURI = "";
+    if (!_suppressNamespaces && StringUtils.isNotEmpty(namespace)) {
+      nsURI = namespace;
+      qName = declareAttributeNamespace(null, namespace) + ':' + name;
+    }
+    atts.addAttribute(nsURI, name, qName, CDATA, value);
+  } // -- addDirectAttribute
+
+  /**
+   * Adds the attribute of the given attribute field on behalf of an {@link XmlWriter}, using the
+   * generic marshalling path.
+   *
+   * @param object the object owning the attribute
+   * @param attDescriptor the descriptor of the attribute field
+   * @param atts the SAX attribute list to add the attribute to
+   * @throws MarshalException If the attribute value cannot be obtained.
+   */
+  void processDirectAttribute(final Object object, final XMLFieldDescriptor attDescriptor,
+      final AttributesImpl atts) throws MarshalException {
+    processAttribute(object, attDescriptor, atts);
+  } // -- processDirectAttribute
+
+  /**
+   * Marshals the value of an element field on behalf of an {@link XmlWriter}, using the generic
+   * marshalling path.
+   *
+   * @param value the value of the field
+   * @param elemDescriptor the descriptor of the element field
+   * @param handler the ContentHandler to marshal to
+   * @param state the MarshalState for the field value
+   * @param nsPrefix the namespace prefix of the parent element
+   * @param nsURI the namespace URI of the parent element
+   * @throws MarshalException If there's a problem marshalling the value.
+   * @throws ValidationException If the value fails to validate.
+   */
+  void marshalDirectChild(final Object value, final XMLFieldDescriptor elemDescriptor,
+      final ContentHandler handler, final MarshalState state, final String nsPrefix,
+      final String nsURI) throws MarshalException, ValidationException {
+    marshalElementValue(value, elemDescriptor, handler, state, nsPrefix, nsURI);
+  } // -- marshalDirectChild
+
+  /**
+   * Notifies the {@link MarshalListener}, if any, that the given value is about to be marshalled.
+   *
+   * @param value the value about to be marshalled
+   * @return false if the listener vetoes marshalling of the value
+   */
+  boolean firePreMarshal(final Object value) {
+    if (_marshalListener != null) {
+      try {
+        return _marshalListener.preMarshal(value);
+      } catch (RuntimeException e) {
+        LOG.error(
+            "Invoking #preMarshal() on your custom MarshalListener instance caused the following problem:",
+            e);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Notifies the {@link MarshalListener}, if any, that the given value has been marshalled.
+   *
+   * @param value the value that has been marshalled
+   */
+  void firePostMarshal(final Object value) {
+    if (_marshalListener != null) {
+      try {
+        _marshalListener.postMarshal(value);
+      } catch (RuntimeException e) {
+        LOG.error(
+            "Invoking #postMarshal() on your custom MarshalListener instance caused the following problem:",
+            e);
+      }
+    }
+  }
+
   /**
    * Processes the attribute associated with the given attDescriptor and parent object.
    *
@@ -2536,15 +3408,7 @@ public class Marshaller extends MarshalFramework {
     if (!_suppressNamespaces) {
       namespace = attDescriptor.getNameSpaceURI();
       if (StringUtils.isNotEmpty(namespace)) {
-        String prefix = attDescriptor.getNameSpacePrefix();
-        if ((prefix == null) || (prefix.length() == 0))
-          prefix = namespacesStack.getNonDefaultNamespacePrefix(namespace);
-
-        if ((prefix == null) || (prefix.length() == 0)) {
-          // -- automatically create namespace prefix?
-          prefix = DEFAULT_PREFIX + (++_namespaceCounter);
-        }
-        declareNamespace(prefix, namespace);
+        String prefix = declareAttributeNamespace(attDescriptor.getNameSpacePrefix(), namespace);
         qName = prefix + ':' + qName;
       } else
         namespace = "";
@@ -2614,6 +3478,20 @@ public class Marshaller extends MarshalFramework {
   private Object processXSListType(final Object value, XMLFieldDescriptor descriptor)
       throws MarshalException {
     Object returnValue = null;
+    // -- primitive numeric arrays are formatted without boxing their items
+    Object array = value;
+    if (value instanceof ArrayEnumerator) {
+      array = ((ArrayEnumerator<?>) value).getArray();
+    }
+    if (array != null && array.getClass().isArray()
+        && PrimitiveListCodec.isSupported(array.getClass().getComponentType())) {
+      if (Array.getLength(array) == 0) {
+        return null;
+      }
+      StringBuilder sb = new StringBuilder();
+      PrimitiveListCodec.format(array, sb);
+      return sb;
+    }
     Enumeration<?> enumeration = null;
     if (value instanceof Enumeration) {
       enumeration = (Enumeration<?>) value;
@@ -2782,7 +3660,7 @@ public class Marshaller extends MarshalFramework {
       prefix = namespacesStack.getNamespacePrefix(nsURI);
     // if still no prefix, use a naming algorithm (ns+counter).
     if (prefix == null)
-      prefix = DEFAULT_PREFIX + (++_namespaceCounter);
+      prefix = generatePrefix(nsURI);
     result = (prefix.length() != 0) ? prefix + ":" + result.substring(idx + 1)
         : result.substring(idx + 1);
     declareNamespace(prefix, nsURI);
@@ -2821,9 +3699,166 @@ public class Marshaller extends MarshalFramework {
    */
   public void setProperty(final String name, final String value) {
     getInternalContext().setProperty(name, value);
+    _marshalPlans.clear();
     deriveProperties();
   }
 
+  /**
+   * Hands out the chunks of a collection marshalled on several threads in item order, starting a
+   * chunk only once the chunks as many as the window before it have been written.
+   */
+  static final class ParallelSchedule {
+    private final ParallelChunk[] _chunks;
+    private final int _window;
+    private int _next = 0;
+    private int _written = 0;
+    private boolean _closed = false;
+
+    ParallelSchedule(final ParallelChunk[] chunks, final int window) {
+      _chunks = chunks;
+      _window = window;
+    }
+
+    /**
+     * Returns the chunk at the given index, which has not been written yet.
+     */
+    synchronized ParallelChunk get(final int index) {
+      return _chunks[index];
+    }
+
+    /**
+     * Returns the next chunk to marshal, waiting until it may be started, or null if all chunks
+     * have been handed out or the schedule was closed. An interrupt ends the wait, as the
+     * calling thread marshals the chunks left.
+     */
+    synchronized ParallelChunk take() {
+      while (!_closed && (_next < _chunks.length) && (_next >= _written + _window)) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return null;
+        }
+      }
+      return poll();
+    }
+
+    /**
+     * Returns the next chunk to marshal if it may be started right away, null otherwise.
+     */
+    synchronized ParallelChunk poll() {
+      if (_closed || (_next >= _chunks.length) || (_next >= _written + _window)) {
+        return null;
+      }
+      return _chunks[_next++];
+    }
+
+    /**
+     * Drops the chunk at the given index, which has been written, letting the next one start.
+     */
+    synchronized void written(final int index) {
+      _chunks[index] = null;
+      _written = index + 1;
+      notifyAll();
+    }
+
+    /**
+     * Stops handing out chunks, once all have been written or writing them failed.
+     */
+    synchronized void close() {
+      _closed = true;
+      notifyAll();
+    }
+  }
+
+  /**
+   * A contiguous range of the items of a collection marshalled on several threads, together with
+   * the outcome of marshalling it.
+   */
+  static final class ParallelChunk {
+    private final Object[] _items;
+    private final int _start;
+    private final int _end;
+    private MarshalFragment _fragment = null;
+    private Throwable _error = null;
+    private int _namespaceCounter = 0;
+    private boolean _done = false;
+
+    ParallelChunk(final Object[] items, final int start, final int end) {
+      _items = items;
+      _start = start;
+      _end = end;
+    }
+
+    /**
+     * Marshals the items of this chunk into its fragment.
+     */
+    void marshal(final Marshaller worker, final XMLFieldDescriptor descriptor,
+        final MarshalState state) {
+      _fragment = new MarshalFragment();
+      try {
+        for (int i = _start; i < _end; i++) {
+          if (_items[i] != null) {
+            worker.marshal(_items[i], descriptor, _fragment, state);
+          }
+        }
+      } catch (Throwable e) {
+        _error = e;
+      } finally {
+        synchronized (this) {
+          _namespaceCounter = worker._namespaceCounter;
+          _done = true;
+          notifyAll();
+        }
+      }
+    }
+
+    /**
+     * Tells whether this chunk has been marshalled.
+     */
+    synchronized boolean isDone() {
+      return _done;
+    }
+
+    /**
+     * Replays the events of this chunk into the given handler, then rethrows the failure of
+     * marshalling it, if any.
+     */
+    void write(final ContentHandler handler)
+        throws SAXException, MarshalException, ValidationException {
+      _fragment.replay(handler);
+      if (_error instanceof MarshalException) {
+        throw (MarshalException) _error;
+      } else if (_error instanceof ValidationException) {
+        throw (ValidationException) _error;
+      } else if (_error instanceof RuntimeException) {
+        throw (RuntimeException) _error;
+      } else if (_error instanceof Error) {
+        throw (Error) _error;
+      } else if (_error != null) {
+        throw new MarshalException(_error);
+      }
+    }
+
+    /**
+     * Waits until this chunk has been marshalled. An interrupt does not cut the wait short, as
+     * the chunk is being marshalled already, but is kept for the calling thread.
+     */
+    synchronized void await() {
+      boolean interrupted = false;
+      while (!_done) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
   /**
    * Inner-class used for handling wrapper elements and locations.
    */
@@ -52,7 +52,10 @@ import org.xml.sax.helpers.AttributeListImpl;
  * @author <a href="mailto:kvisco@intalio.com">Keith Visco</a>
  * @version $Revision$ $Date: 2004-09-09 23:04:08 -0600 (Thu, 09 Sep 2004) $
  **/
-public final class Namespaces {
+public final class Namespaces implements java.io.Serializable {
+
+  /** SerialVersionUID */
+  private static final long serialVersionUID = 2357684212398563521L;
 
   /**
    * The reserved XML Namespace Prefix
@@ -337,7 +340,10 @@ public final class Namespaces {
   /**
    * An internal class used to represent an XML namespace.
    **/
-  class Namespace {
+  class Namespace implements java.io.Serializable {
+
+    /** SerialVersionUID */
+    private static final long serialVersionUID = -5137281739871942134L;
 
     /**
      * The namespace uri.
@@ -13,18 +13,28 @@
  */
 package org.exolab.castor.xml;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.castor.core.util.Assert;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributeListImpl;
 
 /**
  * This class is an actual namespace stack implementation, responsible for adding and removing
  * namespace scopes, as well as resolving namespace urls and prefixes by traversing all the
  * namespace stack.
+ * <p>
+ * The bindings of all scopes are held in flat arrays, in declaration order, with the start of each
+ * scope recorded by index. Prefixes and namespace URIs are indexed by hash to the innermost binding
+ * declaring them, each binding linking to the next outer binding of the same prefix or URI, so
+ * that lookups do not walk the scopes and pushing or popping a scope allocates nothing.
  * 
  * @author <a href="mailto:jmnarloch AT gmail DOT com">Jakub Narloch</a>
  * @since 1.3.3
@@ -39,10 +49,44 @@ public class NamespacesStack {
    */
   private static final String DEFAULT_NAMESPACE = "";
 
-  /**
-   * Represents a stack of namespaces.
-   */
-  private List<Namespaces> namespaceStack = new ArrayList<Namespaces>();
+  /** The attribute type of namespace declarations. */
+  private static final String CDATA = "CDATA";
+
+  /** The attribute name of namespace declarations. */
+  private static final String XMLNS = "xmlns";
+
+  /** The index marking the absence of a binding. */
+  private static final int NONE = -1;
+
+  /** The prefix of each binding; null for a binding removed again. */
+  private String[] _prefixes = new String[16];
+
+  /** The namespace URI of each binding; null for a binding removed again. */
+  private String[] _uris = new String[16];
+
+  /** The scope of each binding, as its index in {@link #_scopeStarts}. */
+  private int[] _scopes = new int[16];
+
+  /** The index of the next outer binding with the same prefix, for each binding. */
+  private int[] _outerPrefixes = new int[16];
+
+  /** The index of the next outer binding with the same namespace URI, for each binding. */
+  private int[] _outerUris = new int[16];
+
+  /** The number of bindings, including the ones removed again. */
+  private int _size = 0;
+
+  /** The index of the first binding of each scope. */
+  private int[] _scopeStarts = new int[16];
+
+  /** The number of scopes. */
+  private int _depth = 0;
+
+  /** The index of the innermost binding of each prefix. */
+  private final Map<String, Integer> _prefixIndex = new HashMap<String, Integer>();
+
+  /** The index of the innermost binding of each namespace URI. */
+  private final Map<String, Integer> _uriIndex = new HashMap<String, Integer>();
 
   /**
    * Adds a namespace to current scope.
@@ -51,10 +95,60 @@ public class NamespacesStack {
    * @param namespaceUri the namespace uri
    */
   public void addNamespace(String namespacePrefix, String namespaceUri) {
-    Namespaces namespaces = getCurrentNamespaceScope();
-    if (namespaces != null) {
-      namespaces.addNamespace(namespacePrefix, namespaceUri);
+    if (_depth == 0) {
+      addNewNamespaceScope();
     }
+
+    // checks the input parameter
+    Assert.notNull(namespaceUri, "Namespace URI must not be null");
+
+    // -- adjust prefix to prevent null value
+    if (namespacePrefix == null) {
+      namespacePrefix = DEFAULT_NAMESPACE;
+    }
+
+    // -- Make sure prefix is not equal to "xml"
+    if (Namespaces.XML_NAMESPACE_PREFIX.equalsIgnoreCase(namespacePrefix)) {
+      if (!Namespaces.XML_NAMESPACE.equals(namespaceUri)) {
+        String err =
+            "The prefix 'xml' is reserved (XML 1.0 Specification) " + "and cannot be declared.";
+        throw new IllegalArgumentException(err);
+      }
+      // -- if we make it here, just ignore it (it's already supported
+      // internally)
+      return;
+    }
+    // -- make sure URI is not equal to the XML 1.0 namespace
+    else if (Namespaces.XML_NAMESPACE.equals(namespaceUri)) {
+      String err = "The namespace '" + Namespaces.XML_NAMESPACE;
+      err += "' is reserved (XML 1.0 Specification) and cannot be declared.";
+      throw new IllegalArgumentException(err);
+    }
+
+    int index = indexOf(_prefixIndex, namespacePrefix);
+    if ((index != NONE) && (_scopes[index] == _depth - 1)) {
+      // -- redeclared within the current scope, the binding keeps its place
+      unlinkUri(index);
+      _uris[index] = namespaceUri;
+      linkUri(index);
+      return;
+    }
+
+    if (_size == _prefixes.length) {
+      int capacity = _size * 2;
+      _prefixes = Arrays.copyOf(_prefixes, capacity);
+      _uris = Arrays.copyOf(_uris, capacity);
+      _scopes = Arrays.copyOf(_scopes, capacity);
+      _outerPrefixes = Arrays.copyOf(_outerPrefixes, capacity);
+      _outerUris = Arrays.copyOf(_outerUris, capacity);
+    }
+    index = _size++;
+    _prefixes[index] = namespacePrefix;
+    _uris[index] = namespaceUri;
+    _scopes[index] = _depth - 1;
+    _outerPrefixes[index] = indexOf(_prefixIndex, namespacePrefix);
+    _prefixIndex.put(namespacePrefix, index);
+    linkUri(index);
   }
 
   /**
@@ -72,7 +166,20 @@ public class NamespacesStack {
    * @param namespacePrefix the prefix of the namespace to remove
    */
   public void removeNamespace(String namespacePrefix) {
-    getCurrentNamespaceScope().removeNamespace(namespacePrefix);
+    if (_depth == 0) {
+      addNewNamespaceScope();
+    }
+    if (namespacePrefix == null) {
+      return;
+    }
+    int index = indexOf(_prefixIndex, namespacePrefix);
+    if ((index == NONE) || (_scopes[index] != _depth - 1)) {
+      return;
+    }
+    unlinkUri(index);
+    unlinkPrefix(index);
+    _prefixes[index] = null;
+    _uris[index] = null;
   }
 
   /**
@@ -84,11 +191,21 @@ public class NamespacesStack {
    *         given prefix
    */
   public String getNamespaceURI(String namespacePrefix) {
-    String namespaceUri = null;
-    for (int ind = namespaceStack.size() - 1; ind >= 0 && namespaceUri == null; ind--) {
-      namespaceUri = namespaceStack.get(ind).getNamespaceURI(namespacePrefix);
+    if (_depth == 0) {
+      return null;
+    }
+    // -- adjust prefix to prevent null value
+    if (namespacePrefix == null) {
+      namespacePrefix = DEFAULT_NAMESPACE;
+    }
+    int index = indexOf(_prefixIndex, namespacePrefix);
+    if (index != NONE) {
+      return _uris[index];
+    }
+    if (Namespaces.XML_NAMESPACE_PREFIX.equals(namespacePrefix)) {
+      return Namespaces.XML_NAMESPACE;
     }
-    return namespaceUri;
+    return null;
   }
 
   /**
@@ -100,11 +217,13 @@ public class NamespacesStack {
    */
   @SuppressWarnings("deprecation")
   public void declareAsAttributes(AttributeListImpl attributeList, boolean localOnly) {
-    getCurrentNamespaceScope().declareAsAttributes(attributeList);
+    if (_depth == 0) {
+      addNewNamespaceScope();
+    }
+    declareAsAttributes(attributeList, _depth - 1);
     if (!localOnly) {
-      for (int ind = namespaceStack.size() - 1; ind >= 0; ind--) {
-
-        namespaceStack.get(ind).declareAsAttributes(attributeList);
+      for (int scope = _depth - 1; scope >= 0; scope--) {
+        declareAsAttributes(attributeList, scope);
       }
     }
   }
@@ -126,11 +245,7 @@ public class NamespacesStack {
    * @return the
    */
   public String getNamespacePrefix(String namespaceUri) {
-    String namespacePrefix = null;
-    for (int ind = namespaceStack.size() - 1; ind >= 0 && namespacePrefix == null; ind--) {
-      namespacePrefix = namespaceStack.get(ind).getNamespacePrefix(namespaceUri);
-    }
-    return namespacePrefix;
+    return getNamespacePrefix(namespaceUri, false);
   }
 
   /**
@@ -141,28 +256,46 @@ public class NamespacesStack {
    * @return the
    */
   public String getNonDefaultNamespacePrefix(String namespaceUri) {
-    String namespacePrefix = null;
-    for (int ind = namespaceStack.size() - 1; ind >= 0 && namespacePrefix == null; ind--) {
-      namespacePrefix = namespaceStack.get(ind).getNonDefaultNamespacePrefix(namespaceUri);
-    }
-    return namespacePrefix;
+    return getNamespacePrefix(namespaceUri, true);
   }
 
   /**
-   * Retrieves the namespace prefixes registered in current scope.
+   * Retrieves the namespace prefixes registered in current scope. The enumeration reflects the
+   * current scope as it is when the enumeration is used.
    * 
    * @return the enumeration of namespace prefixes
    */
   public Enumeration<String> getLocalNamespacePrefixes() {
-    Namespaces namespaces = getCurrentNamespaceScope();
-    return namespaces != null ? namespaces.getLocalNamespacePrefixes() : null;
+    if (_depth == 0) {
+      addNewNamespaceScope();
+    }
+    final int scope = _depth - 1;
+    return new Enumeration<String>() {
+      private int _next = skipRemoved(_scopeStarts[scope]);
+
+      public boolean hasMoreElements() {
+        return _next < _size;
+      }
+
+      public String nextElement() {
+        if (_next >= _size) {
+          throw new NoSuchElementException();
+        }
+        String prefix = _prefixes[_next];
+        _next = skipRemoved(_next + 1);
+        return prefix;
+      }
+    };
   }
 
   /**
    * Adds a new namespace scope.
    */
   public void addNewNamespaceScope() {
-    namespaceStack.add(new Namespaces());
+    if (_depth == _scopeStarts.length) {
+      _scopeStarts = Arrays.copyOf(_scopeStarts, _depth * 2);
+    }
+    _scopeStarts[_depth++] = _size;
   }
 
   /**
@@ -170,22 +303,252 @@ public class NamespacesStack {
    */
   public void removeNamespaceScope() {
     // removes the current namespace
-    if (!namespaceStack.isEmpty()) {
-      namespaceStack.remove(namespaceStack.size() - 1);
+    if (_depth > 0) {
+      int start = _scopeStarts[--_depth];
+      for (int index = _size - 1; index >= start; index--) {
+        if (_prefixes[index] != null) {
+          unlinkUri(index);
+          unlinkPrefix(index);
+          _prefixes[index] = null;
+          _uris[index] = null;
+        }
+      }
+      _size = start;
     } else {
       this.logger.error("Trying to remove a namespaces scope from an empty stack of Namespaces");
     }
   }
 
   /**
-   * Retrieves the current namespace scope.
+   * Removes all namespace scopes, keeping the storage of the stack for reuse.
+   */
+  public void clear() {
+    Arrays.fill(_prefixes, 0, _size, null);
+    Arrays.fill(_uris, 0, _size, null);
+    _size = 0;
+    _depth = 0;
+    _prefixIndex.clear();
+    _uriIndex.clear();
+  }
+
+  /**
+   * Creates a stack holding the same namespace scopes as this one. The copy may add scopes of its
+   * own and declare namespaces in them without affecting this stack.
+   * 
+   * @return a new stack on top of the scopes of this one.
+   */
+  NamespacesStack copy() {
+    NamespacesStack copy = new NamespacesStack();
+    copy._prefixes = _prefixes.clone();
+    copy._uris = _uris.clone();
+    copy._scopes = _scopes.clone();
+    copy._outerPrefixes = _outerPrefixes.clone();
+    copy._outerUris = _outerUris.clone();
+    copy._size = _size;
+    copy._scopeStarts = _scopeStarts.clone();
+    copy._depth = _depth;
+    copy._prefixIndex.putAll(_prefixIndex);
+    copy._uriIndex.putAll(_uriIndex);
+    return copy;
+  }
+
+  /**
+   * Retrieves a copy of the current namespace scope. Namespaces added to or removed from the copy
+   * are not reflected by this stack; use {@link #addNamespace(String, String)} and
+   * {@link #removeNamespace(String)} instead.
    * 
    * @return the current namespace scope.
    */
   public Namespaces getCurrentNamespaceScope() {
-    if (namespaceStack.isEmpty()) {
+    if (_depth == 0) {
       addNewNamespaceScope();
     }
-    return namespaceStack.get(namespaceStack.size() - 1);
+    Namespaces namespaces = new Namespaces();
+    for (int index = _scopeStarts[_depth - 1]; index < _size; index++) {
+      if (_prefixes[index] != null) {
+        namespaces.addNamespace(_prefixes[index], _uris[index]);
+      }
+    }
+    return namespaces;
+  }
+
+  /**
+   * Reports the start of the namespace mappings of the current scope to the given handler.
+   * 
+   * @param handler the handler to report to.
+   * @throws SAXException if the handler fails.
+   * @since 1.4.2
+   */
+  public void sendStartEvents(final ContentHandler handler) throws SAXException {
+    if (_depth == 0) {
+      return;
+    }
+    for (int index = _scopeStarts[_depth - 1]; index < _size; index++) {
+      if (_prefixes[index] != null) {
+        handler.startPrefixMapping(_prefixes[index], _uris[index]);
+      }
+    }
+  }
+
+  /**
+   * Reports the end of the namespace mappings of the current scope to the given handler.
+   * 
+   * @param handler the handler to report to.
+   * @throws SAXException if the handler fails.
+   * @since 1.4.2
+   */
+  public void sendEndEvents(final ContentHandler handler) throws SAXException {
+    if (_depth == 0) {
+      return;
+    }
+    for (int index = _scopeStarts[_depth - 1]; index < _size; index++) {
+      if (_prefixes[index] != null) {
+        handler.endPrefixMapping(_prefixes[index]);
+      }
+    }
+  }
+
+  /**
+   * Retrieves the prefix for the given namespace uri, as declared by the innermost scope binding
+   * the uri; within that scope the binding declared first wins.
+   * 
+   * @param namespaceUri the namespace uri
+   * @param nonDefault true to skip the default namespace
+   * @return the prefix, or null if the uri is not bound
+   */
+  private String getNamespacePrefix(final String namespaceUri, final boolean nonDefault) {
+    if (_depth == 0) {
+      return null;
+    }
+
+    // check the input parameter
+    Assert.notNull(namespaceUri, "Namespace URI must not be null.");
+    int found = NONE;
+    for (int index = indexOf(_uriIndex, namespaceUri); index != NONE;
+        index = _outerUris[index]) {
+      if ((found != NONE) && (_scopes[index] != _scopes[found])) {
+        break;
+      }
+      if (!nonDefault || (_prefixes[index].length() > 0)) {
+        found = index;
+      }
+    }
+    if (found != NONE) {
+      return _prefixes[found];
+    }
+
+    // -- handle built-in namespace prefixes
+    if (Namespaces.XML_NAMESPACE.equals(namespaceUri)) {
+      return Namespaces.XML_NAMESPACE_PREFIX;
+    }
+    return null;
+  }
+
+  /**
+   * Adds the namespaces of the given scope to the attribute list.
+   * 
+   * @param attributeList the list of attributes
+   * @param scope the scope
+   */
+  private void declareAsAttributes(final AttributeListImpl attributeList, final int scope) {
+    int end = (scope == _depth - 1) ? _size : _scopeStarts[scope + 1];
+    for (int index = _scopeStarts[scope]; index < end; index++) {
+      String prefix = _prefixes[index];
+      if (prefix == null) {
+        continue;
+      }
+      if (prefix.length() > 0) {
+        String attName = new StringBuilder(6 + prefix.length()).append(XMLNS).append(':')
+            .append(prefix).toString();
+        attributeList.addAttribute(attName, CDATA, _uris[index]);
+      } else {
+        attributeList.addAttribute(XMLNS, CDATA, _uris[index]);
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the first binding at or after the given index that was not removed.
+   * 
+   * @param index the index to start at
+   * @return the index of the binding, or the number of bindings if there is none
+   */
+  private int skipRemoved(int index) {
+    while ((index < _size) && (_prefixes[index] == null)) {
+      index++;
+    }
+    return index;
+  }
+
+  /**
+   * Makes the given binding the one found first for its namespace uri, among the bindings of
+   * inner scopes or declared earlier within its own scope.
+   * 
+   * @param index the index of the binding
+   */
+  private void linkUri(final int index) {
+    String uri = _uris[index];
+    int next = NONE;
+    int outer = indexOf(_uriIndex, uri);
+    while ((outer != NONE) && (outer > index)) {
+      next = outer;
+      outer = _outerUris[outer];
+    }
+    _outerUris[index] = outer;
+    if (next == NONE) {
+      _uriIndex.put(uri, index);
+    } else {
+      _outerUris[next] = index;
+    }
+  }
+
+  /**
+   * Removes the given binding from the bindings of its namespace uri.
+   * 
+   * @param index the index of the binding
+   */
+  private void unlinkUri(final int index) {
+    String uri = _uris[index];
+    int next = NONE;
+    int current = indexOf(_uriIndex, uri);
+    while ((current != NONE) && (current != index)) {
+      next = current;
+      current = _outerUris[current];
+    }
+    if (current == NONE) {
+      return;
+    }
+    if (next != NONE) {
+      _outerUris[next] = _outerUris[index];
+    } else if (_outerUris[index] == NONE) {
+      _uriIndex.remove(uri);
+    } else {
+      _uriIndex.put(uri, _outerUris[index]);
+    }
+  }
+
+  /**
+   * Removes the given binding, the innermost one of its prefix, from the bindings of its prefix.
+   * 
+   * @param index the index of the binding
+   */
+  private void unlinkPrefix(final int index) {
+    if (_outerPrefixes[index] == NONE) {
+      _prefixIndex.remove(_prefixes[index]);
+    } else {
+      _prefixIndex.put(_prefixes[index], _outerPrefixes[index]);
+    }
+  }
+
+  /**
+   * Looks up the index of the innermost binding of the given key.
+   * 
+   * @param index the prefix or namespace uri index
+   * @param key the prefix or namespace uri
+   * @return the index of the binding, or {@link #NONE}
+   */
+  private static int indexOf(final Map<String, Integer> index, final String key) {
+    Integer value = index.get(key);
+    return (value == null) ? NONE : value.intValue();
   }
 }
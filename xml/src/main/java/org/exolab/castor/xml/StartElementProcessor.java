@@ -20,6 +20,7 @@ import java.util.ResourceBundle;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.castor.core.util.Instantiator;
 import org.castor.xml.XMLProperties;
 import org.exolab.castor.mapping.ExtendedFieldHandler;
 import org.exolab.castor.mapping.FieldHandler;
@@ -29,6 +30,8 @@ import org.exolab.castor.xml.MarshalFramework.InternalXMLClassDescriptor;
 import org.exolab.castor.xml.UnmarshalHandler.Arguments;
 import org.exolab.castor.xml.UnmarshalHandler.ArrayHandler;
 import org.exolab.castor.xml.util.ContainerElement;
+import org.exolab.castor.xml.util.FieldNameIndex;
+import org.exolab.castor.xml.util.SymbolTable;
 import org.exolab.castor.xml.util.XMLClassDescriptorImpl;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
@@ -184,6 +187,13 @@ public class StartElementProcessor {
     int count = 0;
     boolean isWrapper = false;
     XMLClassDescriptor oldClassDesc = classDesc;
+    // -- the ids of the name and namespace, to resolve the descriptor
+    // -- by comparing ids; looked up once the first index is built, and
+    // -- again while unknown, as indexes built later add names
+    SymbolTable symbols = _unmarshalHandler.getInternalContext().getSymbolTable();
+    boolean byId = (name.indexOf('/') < 0);
+    int nameId = SymbolTable.NO_ID;
+    int namespaceId = SymbolTable.NO_ID;
     while (descriptor == null) {
 
       // -- NOTE (kv 20050228):
@@ -196,13 +206,28 @@ public class StartElementProcessor {
       }
       // -- End Patch
 
+      boolean resolvedById = false;
       if (descriptor == null) {
-        descriptor = classDesc.getFieldDescriptor(name, namespace, NodeType.Element);
+        FieldNameIndex index = byId ? _unmarshalHandler.getNameIndex(classDesc) : null;
+        if ((index != null) && index.hasElementNames()) {
+          if (nameId == SymbolTable.NO_ID) {
+            nameId = symbols.lookupId(name);
+          }
+          if (namespaceId == SymbolTable.NO_ID) {
+            namespaceId = (namespace == null) ? SymbolTable.ANY_NAMESPACE
+                : _unmarshalHandler.getNamespaceId(namespace);
+          }
+          descriptor = index.getElementDescriptor(nameId, namespaceId);
+          resolvedById = true;
+        } else {
+          descriptor = classDesc.getFieldDescriptor(name, namespace, NodeType.Element);
+        }
       }
 
       // -- Namespace patch, should be moved to XMLClassDescriptor, but
       // -- this is the least intrusive patch at the moment. kv - 20030423
-      if ((descriptor != null) && (!descriptor.isContainer())) {
+      // -- (a descriptor resolved by id is already in the namespace)
+      if ((descriptor != null) && !resolvedById && (!descriptor.isContainer())) {
         if (StringUtils.isNotEmpty(namespace)) {
           if (!MarshalFramework.namespaceEquals(namespace, descriptor.getNameSpaceURI())) {
             // -- if descriptor namespace is not null, then we must
@@ -301,7 +326,16 @@ public class StartElementProcessor {
     if (descriptor != null && _unmarshalHandler.isValidating()
         && !_unmarshalHandler.getInternalContext().getLenientSequenceOrder()) {
       try {
-        classDesc.checkDescriptorForCorrectOrderWithinSequence(descriptor, parentState, name);
+        FieldNameIndex index = byId ? _unmarshalHandler.getNameIndex(classDesc) : null;
+        if (index != null) {
+          if (nameId == SymbolTable.NO_ID) {
+            nameId = symbols.lookupId(name);
+          }
+          index.checkDescriptorForCorrectOrderWithinSequence(descriptor, parentState, name,
+              nameId);
+        } else {
+          classDesc.checkDescriptorForCorrectOrderWithinSequence(descriptor, parentState, name);
+        }
       } catch (ValidationException e) {
         throw new SAXException(e);
       }
@@ -423,7 +457,7 @@ public class StartElementProcessor {
       else {
         Class containerClass = descriptor.getFieldType();
         try {
-          containerObject = containerClass.newInstance();
+          containerObject = Instantiator.forClass(containerClass).newInstance();
         } catch (Exception ex) {
           throw new SAXException(ex);
         }
@@ -500,8 +534,8 @@ public class StartElementProcessor {
         Class instanceClass = null;
         try {
 
-          XMLClassDescriptor instanceDesc = _unmarshalHandler.getClassDescriptor(instanceType,
-              _unmarshalHandler.getClassLoader());
+          TypeResolution resolution = _unmarshalHandler.resolveClass(instanceType);
+          XMLClassDescriptor instanceDesc = _unmarshalHandler.getClassDescriptor(resolution);
 
           boolean loadClass = true;
 
@@ -514,7 +548,7 @@ public class StartElementProcessor {
           }
 
           if (loadClass) {
-            instanceClass = _unmarshalHandler.loadClass(instanceType, null);
+            instanceClass = resolution.getType();
             // the FieldHandler can be either an XMLFieldHandler
             // or a FieldHandlerImpl
             FieldHandler tempHandler = descriptor.getHandler();
@@ -555,29 +589,7 @@ public class StartElementProcessor {
       // -- Handle support for "Any" type
 
       if (cls == Object.class) {
-        Class pClass = parentState.getType();
-        ClassLoader loader = pClass.getClassLoader();
-        // -- first look for a descriptor based
-        // -- on the XML name
-        classDesc = _unmarshalHandler.resolveByXMLName(name, namespace, loader);
-        // -- if null, create classname, and try resolving
-        String cname = null;
-        if (classDesc == null) {
-          // -- create class name
-          cname = _unmarshalHandler.getJavaNaming().toJavaClassName(name);
-          classDesc = _unmarshalHandler.getClassDescriptor(cname, loader);
-        }
-        // -- if still null, try using parents package
-        if (classDesc == null) {
-          // -- use parent to get package information
-          String pkg = pClass.getName();
-          int idx = pkg.lastIndexOf('.');
-          if (idx > 0) {
-            pkg = pkg.substring(0, idx + 1);
-            cname = pkg + cname;
-            classDesc = _unmarshalHandler.getClassDescriptor(cname, loader);
-          }
-        }
+        classDesc = _unmarshalHandler.resolveElementType(name, namespace, parentState.getType());
 
         if (classDesc != null) {
           cls = classDesc.getJavaClass();
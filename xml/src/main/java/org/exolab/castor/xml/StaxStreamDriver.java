@@ -0,0 +1,286 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Drives an {@link UnmarshalHandler} straight from an {@link XMLStreamReader}. Names, attributes
+ * and text are handed over as the reader reports them: attributes through a view reading from the
+ * reader, text from the reader's own character buffer, and the locator is only asked for a
+ * location when one is needed. Subtrees the handler ignores, as extra elements, are skipped on the
+ * reader without being reported.
+ * <p>
+ * Like {@link Sax2EventFromStaxStreamProducer}, which reports the same events through the generic
+ * SAX adaptation, the driver reads from the current event of the reader up to the end of the
+ * document, or up to the end of the element the reader is positioned at.
+ *
+ * @since 1.4.2
+ */
+final class StaxStreamDriver implements Locator {
+
+  /** The reader to pull events from. */
+  private final XMLStreamReader _reader;
+
+  /** The handler to report the events to. */
+  private final UnmarshalHandler _handler;
+
+  /** The attributes of the current element. */
+  private final ReaderAttributes _attributes;
+
+  /**
+   * Creates a new driver.
+   *
+   * @param reader the reader to pull events from.
+   * @param handler the handler to report the events to.
+   */
+  StaxStreamDriver(final XMLStreamReader reader, final UnmarshalHandler handler) {
+    _reader = reader;
+    _handler = handler;
+    _attributes = new ReaderAttributes(reader);
+  }
+
+  /**
+   * Reads the document or element and reports it to the handler.
+   *
+   * @throws SAXException if the document cannot be read or unmarshalled.
+   */
+  void start() throws SAXException {
+    _handler.setDocumentLocator(this);
+    try {
+      int depth = 0;
+      int eventType = _reader.getEventType();
+      while (true) {
+        switch (eventType) {
+          case XMLStreamConstants.START_DOCUMENT:
+            _handler.startDocument();
+            depth++;
+            break;
+          case XMLStreamConstants.END_DOCUMENT:
+            _handler.endDocument();
+            depth--;
+            break;
+          case XMLStreamConstants.START_ELEMENT:
+            startElement();
+            if (_handler.getStrictElementHandler().skipElement()) {
+              skipElement();
+              endElement();
+            } else {
+              depth++;
+            }
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            endElement();
+            depth--;
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+            characters();
+            break;
+          case XMLStreamConstants.SPACE:
+            _handler.ignorableWhitespace(_reader.getTextCharacters(), _reader.getTextStart(),
+                _reader.getTextLength());
+            break;
+          default:
+            break;
+        }
+        if (depth == 0) {
+          return;
+        }
+        eventType = _reader.next();
+      }
+    } catch (XMLStreamException e) {
+      _handler.fatalError(new SAXParseException(e.getMessage(), this, e));
+    }
+  }
+
+  private void startElement() throws SAXException {
+    for (int i = 0; i < _reader.getNamespaceCount(); i++) {
+      String prefix = _reader.getNamespacePrefix(i);
+      _handler.startPrefixMapping(prefix == null ? "" : prefix, _reader.getNamespaceURI(i));
+    }
+    String namespaceURI = _reader.getNamespaceURI();
+    String localName = _reader.getLocalName();
+    _handler.startElement(namespaceURI == null ? "" : namespaceURI, localName,
+        qualify(_reader.getPrefix(), localName), _attributes);
+  }
+
+  private void endElement() throws SAXException {
+    String namespaceURI = _reader.getNamespaceURI();
+    String localName = _reader.getLocalName();
+    _handler.endElement(namespaceURI == null ? "" : namespaceURI, localName,
+        qualify(_reader.getPrefix(), localName));
+    for (int i = 0; i < _reader.getNamespaceCount(); i++) {
+      String prefix = _reader.getNamespacePrefix(i);
+      _handler.endPrefixMapping(prefix == null ? "" : prefix);
+    }
+  }
+
+  /**
+   * Moves the reader to the end of the current element, without reporting its content.
+   */
+  private void skipElement() throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0) {
+      int eventType = _reader.next();
+      if (eventType == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  /**
+   * Reports character data; whitespace only character data is reported as ignorable whitespace.
+   */
+  private void characters() throws SAXException {
+    char[] chars = _reader.getTextCharacters();
+    int start = _reader.getTextStart();
+    int length = _reader.getTextLength();
+    for (int i = start; i < start + length; i++) {
+      if (chars[i] > ' ') {
+        _handler.characters(chars, start, length);
+        return;
+      }
+    }
+    _handler.ignorableWhitespace(chars, start, length);
+  }
+
+  private static String qualify(final String prefix, final String localName) {
+    if (prefix == null || prefix.length() == 0) {
+      return localName;
+    }
+    return prefix + ':' + localName;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public String getPublicId() {
+    Location location = _reader.getLocation();
+    return location == null ? null : location.getPublicId();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public String getSystemId() {
+    Location location = _reader.getLocation();
+    return location == null ? null : location.getSystemId();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int getLineNumber() {
+    Location location = _reader.getLocation();
+    return location == null ? -1 : location.getLineNumber();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int getColumnNumber() {
+    Location location = _reader.getLocation();
+    return location == null ? -1 : location.getColumnNumber();
+  }
+
+  /**
+   * The attributes of the current element of a reader, read from the reader when asked for.
+   */
+  private static final class ReaderAttributes implements Attributes {
+
+    /** The reader positioned at the element. */
+    private final XMLStreamReader _reader;
+
+    ReaderAttributes(final XMLStreamReader reader) {
+      _reader = reader;
+    }
+
+    private boolean isValid(final int index) {
+      return index >= 0 && index < _reader.getAttributeCount();
+    }
+
+    public int getLength() {
+      return _reader.getAttributeCount();
+    }
+
+    public String getURI(final int index) {
+      if (!isValid(index)) {
+        return null;
+      }
+      String namespaceURI = _reader.getAttributeNamespace(index);
+      return namespaceURI == null ? "" : namespaceURI;
+    }
+
+    public String getLocalName(final int index) {
+      return isValid(index) ? _reader.getAttributeLocalName(index) : null;
+    }
+
+    public String getQName(final int index) {
+      return isValid(index)
+          ? qualify(_reader.getAttributePrefix(index), _reader.getAttributeLocalName(index))
+          : null;
+    }
+
+    public String getType(final int index) {
+      return isValid(index) ? _reader.getAttributeType(index) : null;
+    }
+
+    public String getValue(final int index) {
+      return isValid(index) ? _reader.getAttributeValue(index) : null;
+    }
+
+    public int getIndex(final String uri, final String localName) {
+      for (int i = 0; i < _reader.getAttributeCount(); i++) {
+        if (getURI(i).equals(uri) && _reader.getAttributeLocalName(i).equals(localName)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    public int getIndex(final String qName) {
+      for (int i = 0; i < _reader.getAttributeCount(); i++) {
+        if (getQName(i).equals(qName)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    public String getType(final String uri, final String localName) {
+      return getType(getIndex(uri, localName));
+    }
+
+    public String getType(final String qName) {
+      return getType(getIndex(qName));
+    }
+
+    public String getValue(final String uri, final String localName) {
+      return getValue(getIndex(uri, localName));
+    }
+
+    public String getValue(final String qName) {
+      return getValue(getIndex(qName));
+    }
+  }
+}
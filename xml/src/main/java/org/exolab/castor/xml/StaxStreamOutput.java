@@ -0,0 +1,150 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Writes the events of a {@link Marshaller} straight to an {@link XMLStreamWriter}. The
+ * marshaller already scopes its namespace declarations per element, so the prefix mappings
+ * announced before an element are written as the namespace declarations of that element, and
+ * nothing is tracked beyond the element being started. Attributes and text are passed on as they
+ * are reported, text from the marshaller's own buffers.
+ * <p>
+ * Unlike {@link org.exolab.castor.xml.util.StaxStreamHandler}, which keeps a namespace stack of
+ * its own for any SAX source, this output relies on the event order of the marshaller and is not
+ * meant as a general purpose {@link org.xml.sax.ContentHandler}.
+ *
+ * @since 1.4.2
+ */
+final class StaxStreamOutput extends DefaultHandler {
+
+  /** The writer to output the marshalled object to. */
+  private final XMLStreamWriter _writer;
+
+  /** The prefixes mapped since the last element was started. */
+  private String[] _prefixes = new String[4];
+
+  /** The namespace URIs mapped since the last element was started. */
+  private String[] _uris = new String[4];
+
+  /** The number of pending prefix mappings. */
+  private int _mappingCount = 0;
+
+  /**
+   * Creates a new output.
+   *
+   * @param writer the writer to output the marshalled object to.
+   */
+  StaxStreamOutput(final XMLStreamWriter writer) {
+    _writer = writer;
+  }
+
+  @Override
+  public void startDocument() throws SAXException {
+    try {
+      _writer.writeStartDocument();
+    } catch (XMLStreamException e) {
+      throw new SAXException("Error occurred when writing the document start.", e);
+    }
+  }
+
+  @Override
+  public void endDocument() throws SAXException {
+    try {
+      _writer.writeEndDocument();
+      _writer.flush();
+    } catch (XMLStreamException e) {
+      throw new SAXException("Error occurred when writing the document end.", e);
+    }
+  }
+
+  @Override
+  public void startPrefixMapping(final String prefix, final String uri) {
+    if (_mappingCount == _prefixes.length) {
+      String[] prefixes = new String[_mappingCount * 2];
+      String[] uris = new String[_mappingCount * 2];
+      System.arraycopy(_prefixes, 0, prefixes, 0, _mappingCount);
+      System.arraycopy(_uris, 0, uris, 0, _mappingCount);
+      _prefixes = prefixes;
+      _uris = uris;
+    }
+    _prefixes[_mappingCount] = prefix;
+    _uris[_mappingCount] = uri;
+    ++_mappingCount;
+  }
+
+  @Override
+  public void startElement(final String uri, final String localName, final String qName,
+      final Attributes attributes) throws SAXException {
+    try {
+      _writer.writeStartElement(qName);
+      for (int i = 0; i < _mappingCount; i++) {
+        String prefix = _prefixes[i];
+        if ((prefix == null) || (prefix.length() == 0)) {
+          _writer.writeDefaultNamespace(_uris[i]);
+        } else {
+          _writer.writeNamespace(prefix, _uris[i]);
+        }
+        _prefixes[i] = null;
+        _uris[i] = null;
+      }
+      _mappingCount = 0;
+      for (int i = 0, length = attributes.getLength(); i < length; i++) {
+        _writer.writeAttribute(attributes.getQName(i), attributes.getValue(i));
+      }
+    } catch (XMLStreamException e) {
+      throw new SAXException("Error occurred when writing the element start.", e);
+    }
+  }
+
+  @Override
+  public void endElement(final String uri, final String localName, final String qName)
+      throws SAXException {
+    try {
+      _writer.writeEndElement();
+    } catch (XMLStreamException e) {
+      throw new SAXException("Error occurred when writing the element end.", e);
+    }
+  }
+
+  @Override
+  public void characters(final char[] ch, final int start, final int length)
+      throws SAXException {
+    try {
+      _writer.writeCharacters(ch, start, length);
+    } catch (XMLStreamException e) {
+      throw new SAXException("Error occurred when writing the characters.", e);
+    }
+  }
+
+  @Override
+  public void ignorableWhitespace(final char[] ch, final int start, final int length)
+      throws SAXException {
+    characters(ch, start, length);
+  }
+
+  @Override
+  public void processingInstruction(final String target, final String data)
+      throws SAXException {
+    try {
+      _writer.writeProcessingInstruction(target, data);
+    } catch (XMLStreamException e) {
+      throw new SAXException("Error occurred when writing the processing instruction.", e);
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.exolab.castor.xml.util.XMLClassDescriptorResolverImpl;
+
+/**
+ * The outcome of resolving a type name the {@link UnmarshalHandler} meets in a document: the value
+ * of an xsi:type attribute, the name of a class named by such a value, or the name of an element
+ * unmarshalled into a field of type {@link Object}. Resolving a name takes class loading and
+ * descriptor lookups; a resolution is immutable and is made once per name, so that the elements of
+ * a polymorphic list are unmarshalled without resolving their type again. A name that does not
+ * resolve is remembered as well, until the resolver finds new descriptors.
+ *
+ * @since 1.4.2
+ */
+final class TypeResolution {
+
+  /** The kind of resolution of an xsi:type value into a class name. */
+  static final int INSTANCE_TYPE = 0;
+
+  /** The kind of resolution of a class name into a class and its descriptor. */
+  static final int CLASS_NAME = 1;
+
+  /** The kind of resolution of the name of an element of type {@link Object}. */
+  static final int ELEMENT_NAME = 2;
+
+  /** The resolution of a name that does not resolve. */
+  static final TypeResolution UNRESOLVED = new TypeResolution(null, null, null);
+
+  /** The name of the class resolved, may be null. */
+  final String _className;
+
+  /** The class resolved, or null if it cannot be loaded. */
+  final Class<?> _type;
+
+  /** The class descriptor resolved, may be null. */
+  final XMLClassDescriptor _descriptor;
+
+  TypeResolution(final String className, final Class<?> type,
+      final XMLClassDescriptor descriptor) {
+    _className = className;
+    _type = type;
+    _descriptor = descriptor;
+  }
+
+  /**
+   * Returns the class resolved.
+   *
+   * @return the class
+   * @throws ClassNotFoundException if the class cannot be loaded
+   */
+  Class<?> getType() throws ClassNotFoundException {
+    if (_type == null) {
+      throw new ClassNotFoundException(_className);
+    }
+    return _type;
+  }
+
+  /**
+   * Returns true if a class descriptor was found; for an xsi:type value, if it was resolved into
+   * the name of a class with a descriptor.
+   *
+   * @param kind the kind of resolution
+   * @return true if the name resolved
+   */
+  boolean isResolved(final int kind) {
+    if (kind == INSTANCE_TYPE) {
+      return _className != null;
+    }
+    return _descriptor != null;
+  }
+
+  /**
+   * The resolutions made by the unmarshallers of one context. The class descriptors the
+   * resolutions hold are the ones of that context, so a cache is cleared whenever the descriptors
+   * a context resolves may change: explicitly by the context, and by {@link #synchronize} as soon
+   * as the resolver has created descriptors on first use since the resolutions were made.
+   */
+  static final class Cache {
+
+    /** The generation of a resolver that does not tell when its descriptors change. */
+    static final long UNKNOWN_GENERATION = -1;
+
+    /** The resolutions, by kind, names and class loader. */
+    private final ConcurrentMap<Key, TypeResolution> _resolutions =
+        new ConcurrentHashMap<Key, TypeResolution>();
+
+    /** The resolver the stored resolutions were made with, null if not known yet. */
+    private volatile XMLClassDescriptorResolver _resolver;
+
+    /** The generation of the resolver descriptors the stored resolutions were made with. */
+    private volatile long _generation = UNKNOWN_GENERATION;
+
+    /**
+     * Drops all resolutions if they were made with another resolver, or if the descriptors of the
+     * given resolver changed since they were made, and returns the generation of these descriptors, which resolutions made from now on are to be
+     * stored with. To be called before looking up a resolution.
+     *
+     * @param resolver the resolver the resolutions are made with
+     * @return the generation of the resolver descriptors, or {@link #UNKNOWN_GENERATION}
+     */
+    long synchronize(final XMLClassDescriptorResolver resolver) {
+      long generation = (resolver instanceof XMLClassDescriptorResolverImpl)
+          ? ((XMLClassDescriptorResolverImpl) resolver).getGeneration()
+          : UNKNOWN_GENERATION;
+      if ((resolver != _resolver) || (generation != _generation)) {
+        synchronized (this) {
+          if ((resolver != _resolver) || (generation != _generation)) {
+            _resolutions.clear();
+            _resolver = resolver;
+            _generation = generation;
+          }
+        }
+      }
+      return generation;
+    }
+
+    /**
+     * Returns the resolution made for the given name.
+     *
+     * @param kind the kind of resolution
+     * @param namespace the namespace URI of the name, may be null
+     * @param name the name
+     * @param mappedPackage the package mapped to the namespace, may be null
+     * @param currentPackage the package of the enclosing class, may be null
+     * @param loader the class loader used, may be null
+     * @return the resolution, or null if none was made yet
+     */
+    TypeResolution get(final int kind, final String namespace, final String name,
+        final String mappedPackage, final String currentPackage, final ClassLoader loader) {
+      return _resolutions
+          .get(new Key(kind, namespace, name, mappedPackage, currentPackage, loader));
+    }
+
+    /**
+     * Stores the resolution made for the given name, unless the descriptors of the resolver changed
+     * since the given generation was obtained. Misses are stored as well, but only for resolvers
+     * telling when their descriptors change, as the name may resolve once they do.
+     *
+     * @param kind the kind of resolution
+     * @param namespace the namespace URI of the name, may be null
+     * @param name the name
+     * @param mappedPackage the package mapped to the namespace, may be null
+     * @param currentPackage the package of the enclosing class, may be null
+     * @param loader the class loader used, may be null
+     * @param resolution the resolution
+     * @param generation the generation returned by {@link #synchronize} before resolving
+     */
+    void put(final int kind, final String namespace, final String name,
+        final String mappedPackage, final String currentPackage, final ClassLoader loader,
+        final TypeResolution resolution, final long generation) {
+      if ((generation == UNKNOWN_GENERATION) && !resolution.isResolved(kind)) {
+        return;
+      }
+      synchronized (this) {
+        if (generation == _generation) {
+          _resolutions.put(new Key(kind, namespace, name, mappedPackage, currentPackage, loader),
+              resolution);
+        }
+      }
+    }
+
+    /**
+     * Drops all resolutions.
+     */
+    synchronized void clear() {
+      _resolutions.clear();
+    }
+  }
+
+  /**
+   * Identifies a resolution by its kind, the names it was made for and the identity of the class
+   * loader used.
+   */
+  private static final class Key {
+    private final int _kind;
+    private final String _namespace;
+    private final String _name;
+    private final String _mappedPackage;
+    private final String _currentPackage;
+    private final ClassLoader _loader;
+
+    Key(final int kind, final String namespace, final String name, final String mappedPackage,
+        final String currentPackage, final ClassLoader loader) {
+      _kind = kind;
+      _namespace = namespace;
+      _name = name;
+      _mappedPackage = mappedPackage;
+      _currentPackage = currentPackage;
+      _loader = loader;
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+      if (!(object instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) object;
+      return (key._kind == _kind) && (key._loader == _loader) && key._name.equals(_name)
+          && equals(key._namespace, _namespace) && equals(key._mappedPackage, _mappedPackage)
+          && equals(key._currentPackage, _currentPackage);
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = 31 * _kind + _name.hashCode();
+      hash = 31 * hash + ((_namespace == null) ? 0 : _namespace.hashCode());
+      hash = 31 * hash + ((_currentPackage == null) ? 0 : _currentPackage.hashCode());
+      return 31 * hash + System.identityHashCode(_loader);
+    }
+
+    private static boolean equals(final String first, final String second) {
+      return (first == null) ? (second == null) : first.equals(second);
+    }
+  }
+}
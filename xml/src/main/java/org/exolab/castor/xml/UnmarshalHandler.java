@@ -39,12 +39,10 @@ package org.exolab.castor.xml;
 
 import java.io.PrintWriter;
 import java.io.Serializable;
-import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.text.MessageFormat;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Locale;
@@ -61,6 +59,8 @@ import org.castor.xml.InternalContext;
 import org.exolab.castor.mapping.ClassDescriptor;
 import org.exolab.castor.mapping.FieldHandler;
 import org.exolab.castor.mapping.MapItem;
+import org.exolab.castor.mapping.loader.FieldHandlerImpl;
+import org.exolab.castor.mapping.loader.collection.ArrayBuilder;
 import org.exolab.castor.util.DefaultObjectFactory;
 import org.exolab.castor.util.ObjectFactory;
 import org.exolab.castor.xml.descriptors.PrimitivesClassDescriptor;
@@ -72,6 +72,9 @@ import org.exolab.castor.xml.parsing.StrictElementHandler;
 import org.exolab.castor.xml.parsing.UnmarshalListenerDelegate;
 import org.exolab.castor.xml.parsing.UnmarshalStateStack;
 import org.exolab.castor.xml.parsing.primitive.objects.PrimitiveObjectFactory;
+import org.exolab.castor.xml.util.FieldNameIndex;
+import org.exolab.castor.xml.util.PrimitiveListCodec;
+import org.exolab.castor.xml.util.SymbolTable;
 import org.exolab.castor.xml.util.XMLFieldDescriptorImpl;
 import org.xml.sax.AttributeList;
 import org.xml.sax.Attributes;
@@ -146,6 +149,11 @@ public final class UnmarshalHandler extends MarshalFramework
   private UnmarshalState _topState = null;
   private Class<?> _topClass = null;
 
+  /**
+   * The class this handler was created for, restored by {@link #reset()}.
+   */
+  private final Class<?> _rootClass;
+
   /**
    * The top-level instance object, this may be set by the user by calling #setRootObject();.
    **/
@@ -181,6 +189,11 @@ public final class UnmarshalHandler extends MarshalFramework
 
   private ClassLoader _loader = null;
 
+  /**
+   * The type names resolved so far, shared with the other handlers of a context.
+   */
+  private TypeResolution.Cache _typeResolutions = new TypeResolution.Cache();
+
   private static final StringClassDescriptor STRING_DESCRIPTOR = new StringClassDescriptor();
 
   /**
@@ -231,6 +244,16 @@ public final class UnmarshalHandler extends MarshalFramework
 
   private AttributeSetBuilder _attributeSetFactory = null;
 
+  /**
+   * The namespace URI whose id was last looked up, and the symbol table it was looked up in;
+   * parsers mostly hand out the same instance for the same namespace URI.
+   */
+  private String _lastNamespace = null;
+
+  private SymbolTable _lastSymbols = null;
+
+  private int _lastNamespaceId = SymbolTable.NO_ID;
+
   // ----------------/
   // - Constructors -/
   // ----------------/
@@ -263,6 +286,7 @@ public final class UnmarshalHandler extends MarshalFramework
     _idResolver = new IDResolverImpl();
     _javaPackages = new HashMap<Class<?>, String>();
     _topClass = topClass;
+    _rootClass = topClass;
     _anyNodeHandler = new AnyNodeUnmarshalHandler(_namespaceHandling);
     _attributeSetFactory = new AttributeSetBuilder(_namespaceHandling);
   }
@@ -316,6 +340,15 @@ public final class UnmarshalHandler extends MarshalFramework
     _loader = loader;
   } // -- setClassLoader
 
+  /**
+   * Sets the cache of type resolutions to share with the other handlers of a context.
+   *
+   * @param typeResolutions the cache of the context
+   */
+  void setTypeResolutions(final TypeResolution.Cache typeResolutions) {
+    _typeResolutions = typeResolutions;
+  } // -- setTypeResolutions
+
   /**
    * Sets whether or not to clear collections (including arrays) upon first use to remove default
    * values. By default, and for backward compatibility with previous versions of Castor this value
@@ -410,6 +443,52 @@ public final class UnmarshalHandler extends MarshalFramework
     _topObject = root;
   } // -- setRootObject
 
+  /**
+   * Prepares this handler for unmarshalling another document. Everything recorded while reading a
+   * document is dropped: the unmarshal states, the bound IDs and unresolved IDREFs, the namespace
+   * scopes, any element being skipped or any-node being built, the locator and the root object.
+   * The configuration of the handler is kept, and so is the storage of its stacks and tables.
+   * <p>
+   * After a reset the handler unmarshals into a new instance of the class it was created for,
+   * unless a root object is set again.
+   * 
+   * @since 1.4.2
+   */
+  public void reset() {
+    resetDocument(_rootClass);
+  } // -- reset
+
+  /**
+   * Prepares this handler for unmarshalling another document into an instance of the given class,
+   * on behalf of an {@link Unmarshaller} that configures the handler again afterwards. Unlike
+   * {@link #reset()}, this drops the namespace to package mappings as well.
+   * 
+   * @param topClass the class to unmarshal, may be null to look it up from the root element
+   */
+  void reset(final Class<?> topClass) {
+    resetDocument(topClass);
+    _namespaceHandling.clearNamespaceToPackageMappings();
+  } // -- reset
+
+  /**
+   * Drops everything recorded while reading a document.
+   * 
+   * @param topClass the class to unmarshal, may be null to look it up from the root element
+   */
+  private void resetDocument(final Class<?> topClass) {
+    _topClass = topClass;
+    _topObject = null;
+    _topState = null;
+    _locator = null;
+    _node = null;
+    _stateStack.clear();
+    _resolveTable.clear();
+    ((IDResolverImpl) _idResolver).clear();
+    _namespaceHandling.reset();
+    _strictElementHandler.reset();
+    _anyNodeHandler.reset();
+  } // -- resetDocument
+
   /**
    * Sets an {@link org.exolab.castor.xml.UnmarshalListener}.
    *
@@ -791,6 +870,41 @@ public final class UnmarshalHandler extends MarshalFramework
    *        the same as the default namespace unless the default namespace is also null.
    * @param atts the AttributeSet containing the attributes associated with the element.
    */
+  /**
+   * Returns the id of the given namespace URI in the symbol table of the context.
+   *
+   * @param namespace the namespace URI, or null.
+   * @return the id of the namespace URI, or {@link SymbolTable#NO_ID} if it is not known.
+   */
+  int getNamespaceId(final String namespace) {
+    SymbolTable symbols = getInternalContext().getSymbolTable();
+    if ((namespace == _lastNamespace) && (symbols == _lastSymbols)) {
+      return _lastNamespaceId;
+    }
+    int id = symbols.lookupNamespaceId(namespace);
+    if (id != SymbolTable.NO_ID) {
+      // -- unknown namespaces are not remembered, they may be added later
+      _lastNamespace = namespace;
+      _lastSymbols = symbols;
+      _lastNamespaceId = id;
+    }
+    return id;
+  }
+
+  /**
+   * Returns the ids of the field names of the given class descriptor in the symbol table of the
+   * context, looking through the descriptors this handler wraps.
+   *
+   * @param classDesc the class descriptor.
+   * @return the ids of the field names, or null if the class descriptor does not provide them.
+   */
+  FieldNameIndex getNameIndex(XMLClassDescriptor classDesc) {
+    if (classDesc instanceof InternalXMLClassDescriptor) {
+      classDesc = ((InternalXMLClassDescriptor) classDesc).getClassDescriptor();
+    }
+    return getInternalContext().getSymbolTable().getIndex(classDesc);
+  }
+
   void startElementProcessing(String name, String namespace, AttributeSet atts)
       throws SAXException {
     new StartElementProcessor(this).compute(name, namespace, atts);
@@ -1164,57 +1278,85 @@ public final class UnmarshalHandler extends MarshalFramework
         typeNamespaceURI = _namespaceHandling.getNamespaceURI(prefix);
       }
 
-      // -- Retrieve the type corresponding to the schema name and
-      // -- return it.
-      XMLClassDescriptor classDesc = null;
-
-      try {
-        classDesc = getInternalContext().getXMLClassDescriptorResolver().resolveByXMLName(type,
-            typeNamespaceURI, _loader);
+      String mappedPackage = getMappedPackage(typeNamespaceURI);
+      long generation =
+          _typeResolutions.synchronize(getInternalContext().getXMLClassDescriptorResolver());
+      TypeResolution resolution = _typeResolutions.get(TypeResolution.INSTANCE_TYPE,
+          typeNamespaceURI, type, mappedPackage, currentPackage, _loader);
+      if (resolution == null) {
+        String className = resolveInstanceType(type, typeNamespaceURI, mappedPackage,
+            currentPackage);
+        resolution = (className == null) ? TypeResolution.UNRESOLVED
+            : new TypeResolution(className, null, null);
+        _typeResolutions.put(TypeResolution.INSTANCE_TYPE, typeNamespaceURI, type, mappedPackage,
+            currentPackage, _loader, resolution, generation);
+      }
+      return resolution._className;
+    }
+    return null;
+  } // -- getInstanceType
 
-        if (classDesc != null)
-          return classDesc.getJavaClass().getName();
+  /**
+   * Resolves the schema type of an instance type attribute into a java class name.
+   *
+   * @param type the local name of the schema type
+   * @param typeNamespaceURI the namespace URI of the schema type, may be null
+   * @param mappedPackage the package mapped to the namespace URI, may be null
+   * @param currentPackage the package of the enclosing class, may be null
+   * @return the java class name, or null if the type cannot be resolved
+   * @throws SAXException if resolving a class descriptor fails
+   */
+  private String resolveInstanceType(final String type, final String typeNamespaceURI,
+      final String mappedPackage, final String currentPackage) throws SAXException {
+    // -- Retrieve the type corresponding to the schema name and
+    // -- return it.
+    XMLClassDescriptor classDesc = null;
 
+    try {
+      classDesc = getInternalContext().getXMLClassDescriptorResolver().resolveByXMLName(type,
+          typeNamespaceURI, _loader);
 
-        // -- if class descriptor is not found here, then no descriptors
-        // -- existed in memory...try to load one based on name of
-        // -- Schema type
-        final String className = getJavaNaming().toJavaClassName(type);
+      if (classDesc != null)
+        return classDesc.getJavaClass().getName();
 
-        String adjClassName = className;
-        String mappedPackage = getMappedPackage(typeNamespaceURI);
-        if ((mappedPackage != null) && (mappedPackage.length() > 0)) {
-          adjClassName = mappedPackage + "." + className;
-        }
-        classDesc =
-            getInternalContext().getXMLClassDescriptorResolver().resolve(adjClassName, _loader);
-        if (classDesc != null)
-          return classDesc.getJavaClass().getName();
-
-        // -- try to use "current Package"
-        if (StringUtils.isNotEmpty(currentPackage)) {
-          adjClassName = currentPackage + '.' + className;
-        }
 
-        classDesc =
-            getInternalContext().getXMLClassDescriptorResolver().resolve(adjClassName, _loader);
-        if (classDesc != null)
-          return classDesc.getJavaClass().getName();
+      // -- if class descriptor is not found here, then no descriptors
+      // -- existed in memory...try to load one based on name of
+      // -- Schema type
+      final String className = getJavaNaming().toJavaClassName(type);
 
-        // -- Still can't find type, this may be due to an
-        // -- attempt to unmarshal an older XML instance
-        // -- that was marshalled with a previous Castor. A
-        // -- bug fix in the XMLMappingLoader prevents old
-        // -- xsi:type that are missing the "java:"
-        classDesc = getInternalContext().getXMLClassDescriptorResolver().resolve(type, _loader);
-        if (classDesc != null)
-          return classDesc.getJavaClass().getName();
-      } catch (ResolverException rx) {
-        throw new SAXException(rx);
+      String adjClassName = className;
+      if ((mappedPackage != null) && (mappedPackage.length() > 0)) {
+        adjClassName = mappedPackage + "." + className;
+      }
+      classDesc =
+          getInternalContext().getXMLClassDescriptorResolver().resolve(adjClassName, _loader);
+      if (classDesc != null)
+        return classDesc.getJavaClass().getName();
+
+      // -- try to use "current Package"
+      if (StringUtils.isNotEmpty(currentPackage)) {
+        adjClassName = currentPackage + '.' + className;
       }
+
+      classDesc =
+          getInternalContext().getXMLClassDescriptorResolver().resolve(adjClassName, _loader);
+      if (classDesc != null)
+        return classDesc.getJavaClass().getName();
+
+      // -- Still can't find type, this may be due to an
+      // -- attempt to unmarshal an older XML instance
+      // -- that was marshalled with a previous Castor. A
+      // -- bug fix in the XMLMappingLoader prevents old
+      // -- xsi:type that are missing the "java:"
+      classDesc = getInternalContext().getXMLClassDescriptorResolver().resolve(type, _loader);
+      if (classDesc != null)
+        return classDesc.getJavaClass().getName();
+    } catch (ResolverException rx) {
+      throw new SAXException(rx);
     }
     return null;
-  } // -- getInstanceType
+  } // -- resolveInstanceType
 
   /**
    * Looks up the package name from the given namespace URI.
@@ -1290,30 +1432,49 @@ public final class UnmarshalHandler extends MarshalFramework
     // -- the XMLClassDescriptor for the FieldDescriptor.
 
     boolean[] processedAtts = new boolean[atts.getSize()];
-    XMLFieldDescriptor[] descriptors = classDesc.getAttributeDescriptors();
-    for (XMLFieldDescriptor descriptor : descriptors) {
+
+    // -- with the ids of the attribute names at hand, attributes
+    // -- are matched with descriptors by comparing ids
+    FieldNameIndex nameIndex = getNameIndex(classDesc);
+    XMLFieldDescriptor[] descriptors = null;
+    int[] nameIds = null;
+    int[] namespaceIds = null;
+    if ((nameIndex != null) && nameIndex.hasAttributeNames()) {
+      SymbolTable symbols = getInternalContext().getSymbolTable();
+      nameIds = new int[atts.getSize()];
+      namespaceIds = new int[atts.getSize()];
+      for (int i = 0; i < nameIds.length; i++) {
+        nameIds[i] = symbols.lookupId(atts.getName(i));
+        namespaceIds[i] = getNamespaceId(atts.getNamespace(i));
+      }
+    } else {
+      descriptors = classDesc.getAttributeDescriptors();
+    }
+
+    int count = (nameIds != null) ? nameIndex.getAttributeCount() : descriptors.length;
+    for (int d = 0; d < count; d++) {
+      XMLFieldDescriptor descriptor =
+          (nameIds != null) ? nameIndex.getAttribute(d) : descriptors[d];
 
       String name = descriptor.getXMLName();
       String namespace = descriptor.getNameSpaceURI();
       String path = descriptor.getLocationPath();
-      StringBuilder fullAttributePath = new StringBuilder();
 
-      if (StringUtils.isNotEmpty(path)) {
-        fullAttributePath.append(path).append('/');
+      int index;
+      if (nameIds != null) {
+        index = indexOf(nameIds, namespaceIds, nameIndex.getAttributeNameId(d),
+            nameIndex.getAttributeNamespaceId(d));
+      } else {
+        index = atts.getIndex(name, namespace);
       }
 
-      fullAttributePath.append(name);
-
-      if (!name.equals(fullAttributePath.toString())) {
-        int index = atts.getIndex(name, namespace);
+      if (StringUtils.isNotEmpty(path)) {
         if (index >= 0) {
           processedAtts[index] = true;
         }
         continue;
       }
 
-      int index = atts.getIndex(name, namespace);
-
       String attValue = null;
       if (index >= 0) {
         attValue = atts.getValue(index);
@@ -1374,8 +1535,12 @@ public final class UnmarshalHandler extends MarshalFramework
       // -- This really should handle namespace...but it currently
       // -- doesn't. Ignoring namespaces also helps with the
       // -- backward compatibility issue mentioned above.
-      XMLFieldDescriptor descriptor =
-          classDesc.getFieldDescriptor(name, namespace, NodeType.Attribute);
+      XMLFieldDescriptor descriptor;
+      if (nameIds != null) {
+        descriptor = nameIndex.getAttributeDescriptor(nameIds[i]);
+      } else {
+        descriptor = classDesc.getFieldDescriptor(name, namespace, NodeType.Attribute);
+      }
 
       if (descriptor == null) {
         // -- check for nested attribute...loop through
@@ -1507,6 +1672,27 @@ public final class UnmarshalHandler extends MarshalFramework
 
   }
 
+  /**
+   * Returns the position of the attribute with the given name and namespace ids.
+   *
+   * @param nameIds the ids of the attribute names.
+   * @param namespaceIds the ids of the attribute namespaces.
+   * @param nameId the id of the name to find.
+   * @param namespaceId the id of the namespace to find.
+   * @return the position of the attribute, or -1 if there is none.
+   */
+  private static int indexOf(final int[] nameIds, final int[] namespaceIds, final int nameId,
+      final int namespaceId) {
+    if (nameId != SymbolTable.NO_ID) {
+      for (int i = 0; i < nameIds.length; i++) {
+        if ((nameIds[i] == nameId) && (namespaceIds[i] == namespaceId)) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
   /**
    * Processes the given Attribute.
    **/
@@ -1609,6 +1795,22 @@ public final class UnmarshalHandler extends MarshalFramework
       isByteArray = (type.getComponentType() == Byte.TYPE);
     }
 
+    // -- primitive numeric list, parsed straight into the array
+    if (descriptor.isMultivalued() && isPrimative && (handler instanceof FieldHandlerImpl)) {
+      FieldHandlerImpl<?> fieldHandler = (FieldHandlerImpl<?>) handler;
+      Class<?> componentType = fieldHandler.getArrayComponentType();
+      if (componentType != null && PrimitiveListCodec.isSupported(componentType)) {
+        ArrayBuilder values = ArrayBuilder.newBuilder(componentType);
+        try {
+          PrimitiveListCodec.parse(attValue, values);
+        } catch (RuntimeException ex) {
+          throw conversionError(ex, descriptor);
+        }
+        fieldHandler.addAll(parent, values);
+        return;
+      }
+    }
+
     // -- if this is an multi-value attribute
     if (descriptor.isMultivalued()) {
       StringTokenizer attrValueTokenizer = new StringTokenizer(attValue);
@@ -1928,6 +2130,135 @@ public final class UnmarshalHandler extends MarshalFramework
     return classDesc;
   } // -- getClassDescriptor
 
+  /**
+   * Resolves the class of the given name and its class descriptor, using the ClassLoader of this
+   * handler. The outcome is cached until the descriptors of the resolver change.
+   *
+   * @param className the name of the class
+   * @return the resolution; its class descriptor is null if none was found
+   * @throws SAXException if resolving the class descriptor fails
+   */
+  TypeResolution resolveClass(final String className) throws SAXException {
+    XMLClassDescriptorResolver resolver = getInternalContext().getXMLClassDescriptorResolver();
+    long generation = _typeResolutions.synchronize(resolver);
+    TypeResolution resolution =
+        _typeResolutions.get(TypeResolution.CLASS_NAME, null, className, null, null, _loader);
+    if (resolution != null) {
+      return resolution;
+    }
+
+    XMLClassDescriptor classDesc = null;
+    try {
+      classDesc = resolver.resolve(className, _loader);
+    } catch (ResolverException rx) {
+      throw new SAXException(rx);
+    }
+
+    Class<?> type = null;
+    if ((classDesc != null) && (classDesc.getJavaClass() != null)
+        && className.equals(classDesc.getJavaClass().getName())) {
+      type = classDesc.getJavaClass();
+    } else {
+      try {
+        type = loadClass(className, null);
+      } catch (ClassNotFoundException cnfe) {
+        // -- remembered as a class that cannot be loaded
+      }
+    }
+    resolution = new TypeResolution(className, type, classDesc);
+    _typeResolutions.put(TypeResolution.CLASS_NAME, null, className, null, null, _loader,
+        resolution, generation);
+    return resolution;
+  } // -- resolveClass
+
+  /**
+   * Returns the class descriptor of the given resolution, as used by this handler.
+   *
+   * @param resolution the resolution of a class name
+   * @return the class descriptor, or null if none was found
+   */
+  XMLClassDescriptor getClassDescriptor(final TypeResolution resolution) {
+    if (resolution._descriptor == null) {
+      return null;
+    }
+    return new InternalXMLClassDescriptor(resolution._descriptor);
+  } // -- getClassDescriptor
+
+  /**
+   * Finds the class descriptor of an element unmarshalled into a field of type {@link Object}: the
+   * descriptor of the XML name of the element, or the one of the class named after the element,
+   * either in no package or in the package of the enclosing class. The outcome is cached until the
+   * descriptors of the resolver change.
+   *
+   * @param name the local name of the element
+   * @param namespace the namespace URI of the element, may be null
+   * @param parentType the class of the enclosing object
+   * @return the class descriptor, or null if none was found
+   * @throws SAXException if resolving a class descriptor fails
+   */
+  XMLClassDescriptor resolveElementType(final String name, final String namespace,
+      final Class<?> parentType) throws SAXException {
+    ClassLoader loader = parentType.getClassLoader();
+    String pkg = getJavaPackage(parentType);
+    long generation =
+        _typeResolutions.synchronize(getInternalContext().getXMLClassDescriptorResolver());
+    TypeResolution resolution =
+        _typeResolutions.get(TypeResolution.ELEMENT_NAME, namespace, name, null, pkg, loader);
+    if (resolution == null) {
+      resolution = resolveElementType(name, namespace, pkg, loader);
+      _typeResolutions.put(TypeResolution.ELEMENT_NAME, namespace, name, null, pkg, loader,
+          resolution, generation);
+    }
+    if (resolution._descriptor == null) {
+      return null;
+    }
+    // -- a descriptor found by class name is used like any other one found by class
+    if (resolution._className != null) {
+      return new InternalXMLClassDescriptor(resolution._descriptor);
+    }
+    return resolution._descriptor;
+  } // -- resolveElementType
+
+  /**
+   * Finds the class descriptor of an element unmarshalled into a field of type {@link Object}.
+   *
+   * @param name the local name of the element
+   * @param namespace the namespace URI of the element, may be null
+   * @param pkg the package of the enclosing class
+   * @param loader the ClassLoader of the enclosing class
+   * @return the resolution; its class name is null if the descriptor was found by XML name
+   * @throws SAXException if resolving a class descriptor fails
+   */
+  private TypeResolution resolveElementType(final String name, final String namespace,
+      final String pkg, final ClassLoader loader) throws SAXException {
+    XMLClassDescriptorResolver resolver = getInternalContext().getXMLClassDescriptorResolver();
+    try {
+      // -- first look for a descriptor based
+      // -- on the XML name
+      XMLClassDescriptor classDesc = resolver.resolveByXMLName(name, namespace, loader);
+      if (classDesc != null) {
+        return new TypeResolution(null, null, classDesc);
+      }
+      // -- if null, create classname, and try resolving
+      String cname = getJavaNaming().toJavaClassName(name);
+      classDesc = resolver.resolve(cname, loader);
+      // -- if still null, try using parents package
+      if ((classDesc == null) && (pkg.length() > 0)) {
+        cname = pkg + '.' + cname;
+        classDesc = resolver.resolve(cname, loader);
+      }
+      if (classDesc != null) {
+        return new TypeResolution(cname, null, classDesc);
+      }
+    } catch (ResolverException rx) {
+      throw new SAXException(rx);
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(ERROR_DID_NOT_FIND_CLASSDESCRIPTOR + name);
+    }
+    return TypeResolution.UNRESOLVED;
+  } // -- resolveElementType
+
   /**
    * Returns the XMLClassLoader
    */
@@ -2069,20 +2400,31 @@ public final class UnmarshalHandler extends MarshalFramework
     try {
       return toPrimitiveObject(type, value);
     } catch (Exception ex) {
-      UnmarshalState state = _stateStack.getLastState();
-      if (state != null) {
-        if (state.getObject() != null) {
-          String errorMsg = MessageFormat.format(
-              resourceBundle.getString("unmarshalHandler.error.unmarshal.field.of.class"),
-              new Object[] {fieldDesc.getFieldName(), state.getObject().getClass().getName()});
-          throw new SAXException(errorMsg, ex);
-        }
+      throw conversionError(ex, fieldDesc);
+    }
+  }
+
+  /**
+   * Creates the exception reported when the text value of a field cannot be converted.
+   *
+   * @param ex the exception thrown by the conversion
+   * @param fieldDesc the field descriptor of the value converted
+   * @return the exception to throw
+   */
+  SAXException conversionError(final Exception ex, final XMLFieldDescriptor fieldDesc) {
+    UnmarshalState state = _stateStack.getLastState();
+    if (state != null) {
+      if (state.getObject() != null) {
+        String errorMsg = MessageFormat.format(
+            resourceBundle.getString("unmarshalHandler.error.unmarshal.field.of.class"),
+            new Object[] {fieldDesc.getFieldName(), state.getObject().getClass().getName()});
+        return new SAXException(errorMsg, ex);
       }
-      String errorMsg =
-          MessageFormat.format(resourceBundle.getString("unmarshalHandler.error.unmarshal.field"),
-              new Object[] {fieldDesc.getFieldName()});
-      throw new SAXException(errorMsg, ex);
     }
+    String errorMsg =
+        MessageFormat.format(resourceBundle.getString("unmarshalHandler.error.unmarshal.field"),
+            new Object[] {fieldDesc.getFieldName()});
+    return new SAXException(errorMsg, ex);
   }
 
 
@@ -2161,7 +2503,7 @@ public final class UnmarshalHandler extends MarshalFramework
 
     Class<?> _componentType = null;
 
-    ArrayList<Object> _items = null;
+    ArrayBuilder _items = null;
 
     /**
      * Creates a new ArrayHandler
@@ -2174,7 +2516,7 @@ public final class UnmarshalHandler extends MarshalFramework
         throw new IllegalArgumentException(errMsg);
       }
       _componentType = componentType;
-      _items = new ArrayList<Object>();
+      _items = ArrayBuilder.newBuilder(componentType);
     } // -- ArrayHandler
 
     /**
@@ -2201,12 +2543,7 @@ public final class UnmarshalHandler extends MarshalFramework
      * @return The data handled internally in the form of an array.
      */
     public Object getObject() {
-      int size = _items.size();
-      Object array = Array.newInstance(_componentType, size);
-      for (int i = 0; i < size; i++) {
-        Array.set(array, i, _items.get(i));
-      }
-      return array;
+      return _items.toArray();
     }
 
     /**
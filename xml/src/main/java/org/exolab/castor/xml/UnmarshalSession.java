@@ -0,0 +1,155 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.exolab.castor.xml.parsing.NameTable;
+import org.exolab.castor.xml.parsing.XMLTokenizer;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Unmarshals a UTF-8 encoded document fed in chunks as they arrive, for instance from a
+ * non-blocking channel, without blocking a thread while waiting for more. Each chunk is tokenized
+ * and bound as far as it goes; tokenizer and unmarshalling state carry over to the next chunk.
+ * Objects are therefore completed while the document is still arriving, and an
+ * {@link org.castor.xml.UnmarshalListener} set on the {@link Unmarshaller} is told about each of
+ * them as soon as it is unmarshalled.
+ * <p>
+ * Documents the built-in {@link XMLTokenizer} does not accept (see there) are buffered and
+ * unmarshalled with the SAX parser once {@link #finish()} is called.
+ * <p>
+ * Sessions are created by {@link Unmarshaller#createSession()}, unmarshal one document and are not
+ * thread-safe; chunks must be fed by one thread at a time.
+ *
+ * @since 1.4.2
+ */
+public class UnmarshalSession {
+
+  /** The unmarshaller this session was created by. */
+  private final Unmarshaller _unmarshaller;
+
+  /** The tokenizer fed with the chunks. */
+  private final XMLTokenizer _tokenizer;
+
+  /** The table names are looked up in, handed back to the unmarshaller when finished. */
+  private final NameTable _names;
+
+  /** The handler the document is reported to. */
+  private final UnmarshalHandler _handler;
+
+  /** Whether the tokenizer accepted the document and started reporting it. */
+  private boolean _started = false;
+
+  /** The document, if it is to be parsed by the SAX parser. */
+  private ByteArrayOutputStream _buffer = null;
+
+  /** Whether {@link #finish()} has been called. */
+  private boolean _finished = false;
+
+  /**
+   * Creates a new session.
+   *
+   * @param unmarshaller the unmarshaller configuring the unmarshalling.
+   * @param names the table names are looked up in.
+   */
+  UnmarshalSession(final Unmarshaller unmarshaller, final NameTable names) {
+    _unmarshaller = unmarshaller;
+    _names = names;
+    _tokenizer = new XMLTokenizer(names);
+    _handler = unmarshaller.createHandler();
+  }
+
+  /**
+   * Tokenizes and unmarshals the remaining bytes of the given chunk, as far as they go.
+   *
+   * @param chunk the next bytes of the document; its position is advanced to its limit.
+   * @throws MarshalException if the document is not well-formed or cannot be unmarshalled.
+   */
+  public void feed(final ByteBuffer chunk) throws MarshalException {
+    if (_finished) {
+      throw new IllegalStateException("The session has been finished.");
+    }
+    if (_buffer != null) {
+      byte[] bytes = new byte[chunk.remaining()];
+      chunk.get(bytes);
+      _buffer.write(bytes, 0, bytes.length);
+      return;
+    }
+    _tokenizer.feed(chunk);
+    advance();
+  }
+
+  /**
+   * Signals the end of the document and returns the unmarshalled root object.
+   *
+   * @return the root object.
+   * @throws MarshalException if the document is incomplete or cannot be unmarshalled.
+   * @throws ValidationException if the root object is invalid.
+   */
+  public Object finish() throws MarshalException, ValidationException {
+    if (_finished) {
+      throw new IllegalStateException("The session has been finished.");
+    }
+    _finished = true;
+    if (_buffer == null) {
+      try {
+        _tokenizer.endOfInput();
+        advance();
+      } finally {
+        _unmarshaller.releaseNameTable(_names);
+      }
+    } else {
+      _unmarshaller.releaseNameTable(_names);
+    }
+    if (_buffer != null) {
+      InputStream document = new ByteArrayInputStream(_buffer.toByteArray());
+      _buffer = null;
+      return _unmarshaller.unmarshalWithParser(new InputSource(document));
+    }
+    return _handler.getObject();
+  }
+
+  /**
+   * Tokenizes the input fed so far.
+   */
+  private void advance() throws MarshalException {
+    try {
+      if (!_started) {
+        if (!_tokenizer.open()) {
+          if (!_tokenizer.needsInput()) {
+            // -- not for the tokenizer, buffer the document for the SAX parser
+            _buffer = new ByteArrayOutputStream();
+            InputStream replay = _tokenizer.getReplayStream();
+            byte[] bytes = new byte[4096];
+            for (int read = replay.read(bytes); read >= 0; read = replay.read(bytes)) {
+              _buffer.write(bytes, 0, read);
+            }
+          }
+          return;
+        }
+        _tokenizer.start(_handler);
+        _started = true;
+      }
+      _tokenizer.resume();
+    } catch (IOException ioe) {
+      throw new MarshalException(ioe);
+    } catch (SAXException sx) {
+      _unmarshaller.convertSAXExceptionToMarshalException(_handler, sx);
+    }
+  }
+}
@@ -36,9 +36,12 @@
 package org.exolab.castor.xml;
 
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
+import org.exolab.castor.mapping.loader.collection.ArrayBuilder;
 
 /**
  * The state information class for the UnmarshalHandler.
@@ -117,6 +120,12 @@ public class UnmarshalState {
   /** A reference to the parent state. */
   private UnmarshalState _parent = null;
 
+  /**
+   * Values collected for the array-typed fields of the object, to be stored when the object is
+   * complete.
+   */
+  private Map<XMLFieldDescriptor, ArrayBuilder> _arrayBuilders = null;
+
   /**
    * Reinitializes all variables
    */
@@ -142,6 +151,7 @@ public class UnmarshalState {
     setWhitespacePreserving(false);
     setParent(null);
     setTrailingWhitespaceRemoved(false);
+    _arrayBuilders = null;
   } // -- clear
 
   /**
@@ -311,6 +321,37 @@ public class UnmarshalState {
     return _withinMultivaluedElement;
   }
 
+  /**
+   * Returns the builder collecting values for the given array-typed field, creating it if
+   * necessary.
+   * 
+   * @param descriptor the XMLFieldDescriptor of the field.
+   * @param componentType the component type of the array.
+   * @return the builder for the field.
+   */
+  ArrayBuilder getArrayBuilder(XMLFieldDescriptor descriptor, Class<?> componentType) {
+    if (_arrayBuilders == null) {
+      _arrayBuilders = new LinkedHashMap<XMLFieldDescriptor, ArrayBuilder>();
+    }
+    ArrayBuilder builder = _arrayBuilders.get(descriptor);
+    if (builder == null) {
+      builder = ArrayBuilder.newBuilder(componentType);
+      _arrayBuilders.put(descriptor, builder);
+    }
+    return builder;
+  }
+
+  /**
+   * Removes and returns the builders collecting values for array-typed fields.
+   * 
+   * @return the builders by field, or null if there are none.
+   */
+  Map<XMLFieldDescriptor, ArrayBuilder> removeArrayBuilders() {
+    Map<XMLFieldDescriptor, ArrayBuilder> builders = _arrayBuilders;
+    _arrayBuilders = null;
+    return builders;
+  }
+
   void setConstructorArguments(UnmarshalHandler.Arguments args) {
     _args = args;
   }
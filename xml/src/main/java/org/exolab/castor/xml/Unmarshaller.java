@@ -40,6 +40,7 @@ import java.io.Reader;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLStreamReader;
@@ -62,6 +63,8 @@ import org.exolab.castor.mapping.MappingLoader;
 import org.exolab.castor.types.AnyNode;
 import org.exolab.castor.util.ObjectFactory;
 import org.exolab.castor.xml.location.FileLocation;
+import org.exolab.castor.xml.parsing.NameTable;
+import org.exolab.castor.xml.parsing.XMLTokenizer;
 import org.exolab.castor.xml.util.AnyNode2SAX2;
 import org.exolab.castor.xml.util.DOMEventProducer;
 import org.w3c.dom.Node;
@@ -172,6 +175,24 @@ public class Unmarshaller {
    */
   private InternalContext _internalContext;
 
+  /**
+   * The names read by the built-in tokenizer, kept across documents. Taken by one document at a
+   * time, so that concurrent unmarshal calls never share it.
+   */
+  private final AtomicReference<NameTable> _nameTable = new AtomicReference<NameTable>();
+
+  /**
+   * The handler of the last completed unmarshal call, reset and reused by the next one. Taken by
+   * one call at a time, so that concurrent unmarshal calls never share it.
+   */
+  private final AtomicReference<UnmarshalHandler> _handler =
+      new AtomicReference<UnmarshalHandler>();
+
+  /**
+   * The type names resolved while unmarshalling, shared with the other unmarshallers of a context.
+   */
+  private TypeResolution.Cache _typeResolutions = new TypeResolution.Cache();
+
   // ----------------/
   // - Constructors -/
   // ----------------/
@@ -334,7 +355,48 @@ public class Unmarshaller {
   public UnmarshalHandler createHandler() {
 
     UnmarshalHandler handler = new UnmarshalHandler(_internalContext, _class);
+    configureHandler(handler);
+    return handler;
+  } // -- createHandler
+
+  /**
+   * Returns the handler for an unmarshal call: the handler of the last completed call, reset and
+   * configured like this Unmarshaller, or a new one if there is none or another call is using it.
+   * The handler is handed back with {@link #releaseHandler(UnmarshalHandler)} once the call
+   * completed; a call failing with an exception drops it.
+   * 
+   * @return the handler to unmarshal with
+   */
+  private UnmarshalHandler obtainHandler() {
+    UnmarshalHandler handler = _handler.getAndSet(null);
+    if (handler == null) {
+      return createHandler();
+    }
+    handler.reset(_class);
+    configureHandler(handler);
+    return handler;
+  } // -- obtainHandler
+
+  /**
+   * Takes the unmarshalled object from the given handler and keeps the handler for the next
+   * unmarshal call, without any reference to the object model just read.
+   * 
+   * @param handler the handler of the completed call
+   * @return the unmarshalled object
+   */
+  private Object releaseHandler(final UnmarshalHandler handler) {
+    Object object = handler.getObject();
+    handler.reset();
+    _handler.set(handler);
+    return object;
+  } // -- releaseHandler
 
+  /**
+   * Applies the configuration of this Unmarshaller to the given handler.
+   * 
+   * @param handler the handler to configure
+   */
+  private void configureHandler(final UnmarshalHandler handler) {
     handler.setClearCollections(_clearCollections);
     handler.setReuseObjects(_reuseObjects);
     handler.setValidation(_validate);
@@ -358,20 +420,12 @@ public class Unmarshaller {
       }
     }
 
-    if (_instanceObj != null) {
-      handler.setRootObject(_instanceObj);
-    }
-    if (_idResolver != null)
-      handler.setIDResolver(_idResolver);
-
-    if (_loader != null)
-      handler.setClassLoader(_loader);
-
-    if (_unmarshalListener != null)
-      handler.setUnmarshalListener(_unmarshalListener);
-
-    return handler;
-  } // -- createHandler
+    handler.setRootObject(_instanceObj);
+    handler.setIDResolver(_idResolver);
+    handler.setClassLoader(_loader);
+    handler.setTypeResolutions(_typeResolutions);
+    handler.setUnmarshalListener(_unmarshalListener);
+  } // -- configureHandler
 
   /**
    * Indicates whether or not validation should be performed during umarshalling.
@@ -504,8 +558,11 @@ public class Unmarshaller {
     }
 
     MappingUnmarshaller mum = new MappingUnmarshaller();
+    mum.setLazyDescriptors(Boolean.TRUE
+        .equals(_internalContext.getBooleanProperty(XMLProperties.LAZY_MAPPING_DESCRIPTORS)));
     MappingLoader resolver = mum.getMappingLoader(mapping, BindingType.XML);
     _internalContext.getXMLClassDescriptorResolver().setMappingLoader(resolver);
+    _typeResolutions.clear();
   }
 
   /**
@@ -600,14 +657,14 @@ public class Unmarshaller {
    **/
   public Object unmarshal(EventProducer eventProducer)
       throws MarshalException, ValidationException {
-    UnmarshalHandler handler = createHandler();
+    UnmarshalHandler handler = obtainHandler();
     eventProducer.setDocumentHandler(handler);
     try {
       eventProducer.start();
     } catch (org.xml.sax.SAXException sx) {
       convertSAXExceptionToMarshalException(handler, sx);
     }
-    return handler.getObject();
+    return releaseHandler(handler);
 
   } // -- unmarshal(EventProducer)
 
@@ -622,14 +679,14 @@ public class Unmarshaller {
    **/
   public Object unmarshal(SAX2EventProducer eventProducer)
       throws MarshalException, ValidationException {
-    UnmarshalHandler handler = createHandler();
+    UnmarshalHandler handler = obtainHandler();
     eventProducer.setContentHandler(handler);
     try {
       eventProducer.start();
     } catch (org.xml.sax.SAXException sx) {
       convertSAXExceptionToMarshalException(handler, sx);
     }
-    return handler.getObject();
+    return releaseHandler(handler);
 
   } // -- unmarshal(SAX2EventProducer)
 
@@ -644,13 +701,13 @@ public class Unmarshaller {
    * @return The {@link Object} instance that is a result of unmarshalling.
    **/
   public Object unmarshal(final AnyNode anyNode) throws MarshalException {
-    UnmarshalHandler handler = createHandler();
+    UnmarshalHandler handler = obtainHandler();
     try {
       AnyNode2SAX2.fireEvents(anyNode, handler);
     } catch (SAXException sex) {
       convertSAXExceptionToMarshalException(handler, sex);
     }
-    return handler.getObject();
+    return releaseHandler(handler);
   }
 
   /**
@@ -662,6 +719,48 @@ public class Unmarshaller {
    * @exception ValidationException when there is a validation error
    **/
   public Object unmarshal(InputSource source) throws MarshalException, ValidationException {
+    if (source.getByteStream() != null && isNativeParserEnabled()
+        && XMLTokenizer.isSupportedEncoding(source.getEncoding())) {
+      NameTable names = obtainNameTable();
+      XMLTokenizer tokenizer = new XMLTokenizer(source.getByteStream(), names);
+      tokenizer.setSystemId(source.getSystemId());
+      tokenizer.setPublicId(source.getPublicId());
+      try {
+        if (tokenizer.open()) {
+          UnmarshalHandler handler = obtainHandler();
+          try {
+            tokenizer.parse(handler);
+          } catch (org.xml.sax.SAXException sx) {
+            convertSAXExceptionToMarshalException(handler, sx);
+          }
+          return releaseHandler(handler);
+        }
+      } catch (java.io.IOException ioe) {
+        throw new MarshalException(ioe);
+      } finally {
+        releaseNameTable(names);
+      }
+      // -- not for the tokenizer, parse the document read so far and the rest with SAX
+      InputSource replay = new InputSource(tokenizer.getReplayStream());
+      replay.setSystemId(source.getSystemId());
+      replay.setPublicId(source.getPublicId());
+      replay.setEncoding(source.getEncoding());
+      source = replay;
+    }
+    return unmarshalWithParser(source);
+  } // -- unmarshal(InputSource)
+
+  /**
+   * Unmarshals the document read from the given {@link InputSource} with the configured SAX
+   * parser.
+   * 
+   * @param source the InputSource to read the XML from
+   * @return the unmarshalled object
+   * @exception MarshalException when there is an error during the unmarshalling process
+   * @exception ValidationException when there is a validation error
+   */
+  Object unmarshalWithParser(final InputSource source)
+      throws MarshalException, ValidationException {
     XMLReader reader = null;
     Parser parser = null;
 
@@ -684,7 +783,7 @@ public class Unmarshaller {
     }
 
 
-    UnmarshalHandler handler = createHandler();
+    UnmarshalHandler handler = obtainHandler();
 
 
     try {
@@ -703,8 +802,77 @@ public class Unmarshaller {
       convertSAXExceptionToMarshalException(handler, sx);
     }
 
-    return handler.getObject();
-  } // -- unmarshal(InputSource)
+    return releaseHandler(handler);
+  } // -- unmarshalWithParser(InputSource)
+
+  /**
+   * Creates a session unmarshalling a UTF-8 encoded document that is fed in chunks, as they
+   * arrive. The session is configured like this Unmarshaller at the time it is created,
+   * except for the SAX parser used for documents the built-in tokenizer does not accept.
+   * 
+   * @return a new {@link UnmarshalSession}.
+   * @since 1.4.2
+   */
+  public UnmarshalSession createSession() {
+    return new UnmarshalSession(this, obtainNameTable());
+  }
+
+  /**
+   * Returns the table of names read by the built-in tokenizer for a document: the table of the
+   * last document read, or a new one if there is none or another document is using it. The table
+   * is handed back with {@link #releaseNameTable(NameTable)} once the document has been read.
+   * 
+   * @return the name table.
+   */
+  NameTable obtainNameTable() {
+    NameTable names = _nameTable.getAndSet(null);
+    return (names == null) ? new NameTable() : names;
+  }
+
+  /**
+   * Keeps the given table of names for the next document read by the built-in tokenizer.
+   * 
+   * @param names the name table no longer used.
+   */
+  void releaseNameTable(final NameTable names) {
+    _nameTable.set(names);
+  }
+
+  /**
+   * Returns this Unmarshaller to the configuration it has when created by
+   * {@link XMLContext#createUnmarshaller()}: no class, root object, class loader, listener, ID
+   * resolver, entity resolver or object factory, namespace to package mappings and validation
+   * taken from the properties of its context again, and all other options at their defaults. The
+   * context itself, the handler kept from the last unmarshal call and the names read by the
+   * built-in tokenizer are retained, so that a reset Unmarshaller can be reused for another
+   * document at little cost.
+   * <p>
+   * An Unmarshaller is not thread-safe; a reset one is meant to be reused by the same thread, for
+   * instance through {@link XMLContext#acquireUnmarshaller()}.
+   * 
+   * @since 1.4.2
+   */
+  public void reset() {
+    if (_objectFactory != null) {
+      // -- a handler keeps the last factory set
+      _handler.set(null);
+    }
+    _class = null;
+    _instanceObj = null;
+    _loader = null;
+    _clearCollections = false;
+    _idResolver = null;
+    _ignoreExtraAtts = true;
+    _reuseObjects = false;
+    _unmarshalListener = null;
+    _wsPreserve = false;
+    _objectFactory = null;
+    entityResolver = null;
+    if (_namespaceToPackage != null) {
+      _namespaceToPackage.clear();
+    }
+    deriveProperties();
+  } // -- reset
 
 
   /**
@@ -747,7 +915,13 @@ public class Unmarshaller {
    **/
   public Object unmarshal(XMLStreamReader streamReader)
       throws MarshalException, ValidationException {
-    return unmarshal(BaseSax2EventFromStaxProducer.createSax2EventFromStax(streamReader));
+    UnmarshalHandler handler = obtainHandler();
+    try {
+      new StaxStreamDriver(streamReader, handler).start();
+    } catch (SAXException sx) {
+      convertSAXExceptionToMarshalException(handler, sx);
+    }
+    return releaseHandler(handler);
   }
 
   /**
@@ -763,7 +937,7 @@ public class Unmarshaller {
    **/
   public Object unmarshal(SAX2EventAndErrorProducer eventProducer)
       throws MarshalException, ValidationException {
-    UnmarshalHandler handler = createHandler();
+    UnmarshalHandler handler = obtainHandler();
     eventProducer.setContentHandler(handler);
     eventProducer.setErrorHandler(handler);
     try {
@@ -771,7 +945,7 @@ public class Unmarshaller {
     } catch (org.xml.sax.SAXException sx) {
       convertSAXExceptionToMarshalException(handler, sx);
     }
-    return handler.getObject();
+    return releaseHandler(handler);
 
   }
 
@@ -816,6 +990,20 @@ public class Unmarshaller {
         "The given 'javax.transform.xml.Source' is not supported, or were incorrectly instantiated.");
   }
 
+  /**
+   * Returns whether documents may be unmarshalled with the built-in {@link XMLTokenizer}.
+   * 
+   * @return true if the tokenizer is enabled and the parser is not to validate documents.
+   */
+  private boolean isNativeParserEnabled() {
+    Boolean enabled = _internalContext.getBooleanProperty(XMLProperties.NATIVE_PARSER);
+    if (enabled == null || !enabled.booleanValue()) {
+      return false;
+    }
+    Boolean validation = _internalContext.getBooleanProperty(XMLProperties.PARSER_VALIDATION);
+    return validation == null || !validation.booleanValue();
+  }
+
   /**
    * Converts a SAXException to a (localised) MarshalException.
    * 
@@ -823,7 +1011,7 @@ public class Unmarshaller {
    * @param sex The {@link SAXException} instance
    * @throws MarshalException The {@link MarshalException} instance derived from the SAX exception.
    */
-  private void convertSAXExceptionToMarshalException(UnmarshalHandler handler, SAXException sex)
+  void convertSAXExceptionToMarshalException(UnmarshalHandler handler, SAXException sex)
       throws MarshalException {
     Exception except = sex.getException();
     if (except == null) {
@@ -945,6 +1133,8 @@ public class Unmarshaller {
    */
   public void setObjectFactory(final ObjectFactory objectFactory) {
     this._objectFactory = objectFactory;
+    // -- a handler keeps the last factory set
+    _handler.set(null);
   } // -- setObjectFactory
 
   /**
@@ -974,6 +1164,7 @@ public class Unmarshaller {
    */
   public void setProperty(final String name, final String value) {
     _internalContext.setProperty(name, value);
+    _typeResolutions.clear();
   }
 
   /**
@@ -983,9 +1174,19 @@ public class Unmarshaller {
    */
   public void setInternalContext(final InternalContext internalContext) {
     _internalContext = internalContext;
+    _typeResolutions = new TypeResolution.Cache();
     deriveProperties();
   }
 
+  /**
+   * Sets the cache of type resolutions to share with the other unmarshallers of a context.
+   *
+   * @param typeResolutions the cache of the context
+   */
+  void setTypeResolutions(final TypeResolution.Cache typeResolutions) {
+    _typeResolutions = typeResolutions;
+  }
+
   /**
    * Derive class-level properties from {@link XMLProperties} as defined {@link InternalContext}.
    * This method will be called after a new {@link InternalContext} has been set.
@@ -1032,6 +1233,7 @@ public class Unmarshaller {
    */
   public void setResolver(XMLClassDescriptorResolver xmlClassDescriptorResolver) {
     _internalContext.setResolver(xmlClassDescriptorResolver);
+    _typeResolutions.clear();
   }
 
   /**
@@ -0,0 +1,188 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of a warm-up run by {@link XMLContext#warmUp}: how long each of its phases took,
+ * which classes were resolved and round-tripped, and which failed. A class failing does not affect
+ * the others, so a report may well be used as is to decide whether an application is ready.
+ *
+ * @since 1.4.2
+ */
+public final class WarmUpReport {
+
+  /** The time spent resolving the class descriptors, in nanoseconds. */
+  private long _resolveNanos;
+
+  /** The time spent marshalling the synthetic instances, in nanoseconds. */
+  private long _marshalNanos;
+
+  /** The time spent unmarshalling the synthetic documents, in nanoseconds. */
+  private long _unmarshalNanos;
+
+  /** The classes a class descriptor was resolved for. */
+  private final List<Class<?>> _resolvedClasses = new ArrayList<Class<?>>();
+
+  /** The classes marshalled and unmarshalled again. */
+  private final List<Class<?>> _roundTrippedClasses = new ArrayList<Class<?>>();
+
+  /** The error each failed class failed with. */
+  private final Map<Class<?>, Throwable> _failures = new LinkedHashMap<Class<?>, Throwable>();
+
+  /**
+   * Creates an empty report.
+   */
+  WarmUpReport() {
+    super();
+  }
+
+  /**
+   * Records the time spent resolving the class descriptors.
+   *
+   * @param nanos the time spent, in nanoseconds.
+   */
+  void setResolveTime(final long nanos) {
+    _resolveNanos = nanos;
+  }
+
+  /**
+   * Records the time spent marshalling the synthetic instances.
+   *
+   * @param nanos the time spent, in nanoseconds.
+   */
+  void setMarshalTime(final long nanos) {
+    _marshalNanos = nanos;
+  }
+
+  /**
+   * Records the time spent unmarshalling the synthetic documents.
+   *
+   * @param nanos the time spent, in nanoseconds.
+   */
+  void setUnmarshalTime(final long nanos) {
+    _unmarshalNanos = nanos;
+  }
+
+  /**
+   * Records a class a class descriptor was resolved for.
+   *
+   * @param type the class.
+   */
+  void addResolvedClass(final Class<?> type) {
+    _resolvedClasses.add(type);
+  }
+
+  /**
+   * Records a class marshalled and unmarshalled again.
+   *
+   * @param type the class.
+   */
+  void addRoundTrippedClass(final Class<?> type) {
+    _roundTrippedClasses.add(type);
+  }
+
+  /**
+   * Records the error a class failed with.
+   *
+   * @param type the class.
+   * @param error the error.
+   */
+  void addFailure(final Class<?> type, final Throwable error) {
+    _failures.put(type, error);
+  }
+
+  /**
+   * Returns the time spent resolving the class descriptors.
+   *
+   * @param unit the unit to return the time in.
+   * @return the time spent, in the given unit.
+   */
+  public long getResolveTime(final TimeUnit unit) {
+    return unit.convert(_resolveNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the time spent marshalling the synthetic instances.
+   *
+   * @param unit the unit to return the time in.
+   * @return the time spent, in the given unit.
+   */
+  public long getMarshalTime(final TimeUnit unit) {
+    return unit.convert(_marshalNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the time spent unmarshalling the synthetic documents.
+   *
+   * @param unit the unit to return the time in.
+   * @return the time spent, in the given unit.
+   */
+  public long getUnmarshalTime(final TimeUnit unit) {
+    return unit.convert(_unmarshalNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the time spent in all phases of the warm-up.
+   *
+   * @param unit the unit to return the time in.
+   * @return the time spent, in the given unit.
+   */
+  public long getTotalTime(final TimeUnit unit) {
+    return unit.convert(_resolveNanos + _marshalNanos + _unmarshalNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the classes a class descriptor was resolved for, in the order they were given in or
+   * found in their package.
+   *
+   * @return the resolved classes.
+   */
+  public List<Class<?>> getResolvedClasses() {
+    return Collections.unmodifiableList(_resolvedClasses);
+  }
+
+  /**
+   * Returns the classes marshalled and unmarshalled again. Classes without a public default
+   * constructor, abstract classes and interfaces are resolved only.
+   *
+   * @return the round-tripped classes.
+   */
+  public List<Class<?>> getRoundTrippedClasses() {
+    return Collections.unmodifiableList(_roundTrippedClasses);
+  }
+
+  /**
+   * Returns the error each failed class failed with, typically a {@link ResolverException},
+   * {@link MarshalException} or {@link ValidationException}.
+   *
+   * @return the failed classes with their errors; empty if no class failed.
+   */
+  public Map<Class<?>, Throwable> getFailures() {
+    return Collections.unmodifiableMap(_failures);
+  }
+
+  /**
+   * Indicates whether any class failed.
+   *
+   * @return true if a class failed to resolve or to round-trip.
+   */
+  public boolean isFailed() {
+    return !_failures.isEmpty();
+  }
+}
@@ -40,6 +40,7 @@
 package org.exolab.castor.xml;
 
 import java.util.Iterator;
+import java.util.List;
 
 import org.castor.xml.InternalContext;
 import org.exolab.castor.mapping.ClassDescriptor;
@@ -122,6 +123,17 @@ public interface XMLClassDescriptorResolver extends ClassDescriptorResolver {
    */
   XMLClassDescriptor resolve(String className, ClassLoader loader) throws ResolverException;
 
+  /**
+   * Returns the XMLClassDescriptor for the given class name if it is known already, that is if it
+   * was added through a mapping, a class or a package, or resolved before. Neither the class nor a
+   * descriptor class is loaded, and no descriptor is created by introspection.
+   * 
+   * @param className the class name to find the XMLClassDescriptor for
+   * @return the XMLClassDescriptor for the given class name, or null if it is not known
+   * @since 1.4.2
+   */
+  XMLClassDescriptor resolveKnown(String className);
+
   /**
    * Returns the first XMLClassDescriptor that matches the given XML name and namespaceURI. Null is
    * returned if no descriptor can be found.
@@ -234,6 +246,16 @@ public interface XMLClassDescriptorResolver extends ClassDescriptorResolver {
    */
   void loadClassDescriptors(final String packageName) throws ResolverException;
 
+  /**
+   * Returns the class descriptors resolved so far for the classes of the given package, as loaded
+   * by {@link #addPackage(String)} or resolved on demand. Classes of sub packages are not included.
+   * 
+   * @param packageName The package name, or the empty string for the default package.
+   * @return The class descriptors cached for the package, in no particular order.
+   * @since 1.4.2
+   */
+  List<ClassDescriptor> getPackageDescriptors(final String packageName);
+
   /**
    * To clear the descriptor cache.
    * 
@@ -13,12 +13,26 @@
  */
 package org.exolab.castor.xml;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.Source;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.castor.mapping.BindingType;
 import org.castor.mapping.MappingUnmarshaller;
 import org.castor.xml.AbstractInternalContext;
 import org.castor.xml.InternalContext;
+import org.castor.xml.XMLProperties;
+import org.exolab.castor.mapping.ClassDescriptor;
 import org.exolab.castor.mapping.Mapping;
 import org.exolab.castor.mapping.MappingException;
 import org.exolab.castor.mapping.MappingLoader;
@@ -38,12 +52,46 @@ public class XMLContext {
   /** Logger to be used. */
   private static final Log LOG = LogFactory.getFactory().getInstance(XMLContext.class);
 
+  /**
+   * The executor running each task on the submitting thread, for work that is not to be run in
+   * parallel.
+   */
+  private static final Executor CALLER = new Executor() {
+    public void execute(final Runnable task) {
+      task.run();
+    }
+  };
+
   /**
    * The internal XML context is the class which holds a couple of Castor states as it provides some
    * central methods needed in various places of Castor.
    */
   private InternalContext _internalContext;
 
+  /**
+   * The idle {@link Marshaller} of each thread, as handed back by
+   * {@link #releaseMarshaller(Marshaller)}.
+   */
+  private final ThreadLocal<Marshaller> _idleMarshaller = new ThreadLocal<Marshaller>();
+
+  /**
+   * The idle {@link Unmarshaller} of each thread, as handed back by
+   * {@link #releaseUnmarshaller(Unmarshaller)}.
+   */
+  private final ThreadLocal<Unmarshaller> _idleUnmarshaller = new ThreadLocal<Unmarshaller>();
+
+  /**
+   * The plans for marshalling objects by runtime class and field, shared by the marshallers of
+   * this context and dropped whenever the class descriptors may change.
+   */
+  private final MarshalPlan.Cache _marshalPlans = new MarshalPlan.Cache();
+
+  /**
+   * The type names resolved by the unmarshallers of this context, dropped whenever the class
+   * descriptors may change.
+   */
+  private final TypeResolution.Cache _typeResolutions = new TypeResolution.Cache();
+
   /**
    * Creates an instance of {@link XMLContext} with an internal XML context.
    */
@@ -78,8 +126,12 @@ public class XMLContext {
    */
   public void addMapping(final Mapping mapping) throws MappingException {
     MappingUnmarshaller mappingUnmarshaller = new MappingUnmarshaller();
+    mappingUnmarshaller.setLazyDescriptors(Boolean.TRUE
+        .equals(_internalContext.getBooleanProperty(XMLProperties.LAZY_MAPPING_DESCRIPTORS)));
     MappingLoader mappingLoader = mappingUnmarshaller.getMappingLoader(mapping, BindingType.XML);
     _internalContext.getXMLClassDescriptorResolver().setMappingLoader(mappingLoader);
+    _marshalPlans.clear();
+    _typeResolutions.clear();
   }
 
   /**
@@ -93,6 +145,8 @@ public class XMLContext {
    */
   public void addClass(final Class clazz) throws ResolverException {
     _internalContext.getXMLClassDescriptorResolver().addClass(clazz);
+    _marshalPlans.clear();
+    _typeResolutions.clear();
   }
 
   /**
@@ -106,6 +160,8 @@ public class XMLContext {
    */
   public void addClasses(final Class[] clazzes) throws ResolverException {
     _internalContext.getXMLClassDescriptorResolver().addClasses(clazzes);
+    _marshalPlans.clear();
+    _typeResolutions.clear();
   }
 
   /**
@@ -122,6 +178,8 @@ public class XMLContext {
    */
   public void addPackage(final String packageName) throws ResolverException {
     _internalContext.getXMLClassDescriptorResolver().addPackage(packageName);
+    _marshalPlans.clear();
+    _typeResolutions.clear();
   }
 
   /**
@@ -138,6 +196,8 @@ public class XMLContext {
    */
   public void addPackages(final String[] packageNames) throws ResolverException {
     _internalContext.getXMLClassDescriptorResolver().addPackages(packageNames);
+    _marshalPlans.clear();
+    _typeResolutions.clear();
   }
 
   /**
@@ -161,6 +221,7 @@ public class XMLContext {
       LOG.debug("Creating new Marshaller instance.");
     }
     Marshaller marshaller = new Marshaller(_internalContext);
+    marshaller.setMarshalPlans(_marshalPlans);
     return marshaller;
   }
 
@@ -176,9 +237,384 @@ public class XMLContext {
       LOG.debug("Creating new Unmarshaller instance.");
     }
     Unmarshaller unmarshaller = new Unmarshaller(_internalContext);
+    unmarshaller.setTypeResolutions(_typeResolutions);
+    return unmarshaller;
+  }
+
+  /**
+   * Creates a new {@link BinaryMarshaller} instance, marshalling objects into the compact binary
+   * encoding using the class descriptors of this context.
+   * 
+   * @return A new {@link BinaryMarshaller} instance.
+   */
+  public BinaryMarshaller createBinaryMarshaller() {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Creating new BinaryMarshaller instance.");
+    }
+    return new BinaryMarshaller(_internalContext);
+  }
+
+  /**
+   * Creates a new {@link BinaryUnmarshaller} instance, unmarshalling objects written by a
+   * {@link BinaryMarshaller} using the class descriptors of this context.
+   * 
+   * @return A new {@link BinaryUnmarshaller} instance.
+   */
+  public BinaryUnmarshaller createBinaryUnmarshaller() {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Creating new BinaryUnmarshaller instance.");
+    }
+    return new BinaryUnmarshaller(_internalContext);
+  }
+
+  /**
+   * Returns a {@link Marshaller} for the calling thread: the one the thread last handed back with
+   * {@link #releaseMarshaller(Marshaller)}, or a new one. Either way the Marshaller is in the state
+   * {@link #createMarshaller()} creates it in, and has to be configured and given an output before
+   * use.
+   * <p>
+   * Each thread keeps at most one idle Marshaller per context, so a thread marshalling many small
+   * documents reuses the same instance and its internal buffers. The Marshaller must only be used
+   * by the acquiring thread, and not be used any more once released.
+   * 
+   * @return A {@link Marshaller} confined to the calling thread.
+   * @since 1.4.2
+   */
+  public Marshaller acquireMarshaller() {
+    Marshaller marshaller = _idleMarshaller.get();
+    if (marshaller == null) {
+      return createMarshaller();
+    }
+    _idleMarshaller.remove();
+    return marshaller;
+  }
+
+  /**
+   * Hands a {@link Marshaller} back for reuse by the calling thread. The Marshaller is reset, so
+   * that it does not keep the output and listener of its last use. A Marshaller of another context
+   * is ignored.
+   * 
+   * @param marshaller The {@link Marshaller} to reuse, as returned by
+   *        {@link #acquireMarshaller()}.
+   * @see Marshaller#reset()
+   * @since 1.4.2
+   */
+  public void releaseMarshaller(final Marshaller marshaller) {
+    if ((marshaller == null) || (marshaller.getInternalContext() != _internalContext)) {
+      return;
+    }
+    marshaller.reset();
+    _idleMarshaller.set(marshaller);
+  }
+
+  /**
+   * Returns an {@link Unmarshaller} for the calling thread: the one the thread last handed back
+   * with {@link #releaseUnmarshaller(Unmarshaller)}, or a new one. Either way the Unmarshaller is
+   * in the state {@link #createUnmarshaller()} creates it in.
+   * <p>
+   * Each thread keeps at most one idle Unmarshaller per context, so a thread unmarshalling many
+   * small documents reuses the same instance and its handler. The Unmarshaller must only be used
+   * by the acquiring thread, and not be used any more once released.
+   * 
+   * @return An {@link Unmarshaller} confined to the calling thread.
+   * @since 1.4.2
+   */
+  public Unmarshaller acquireUnmarshaller() {
+    Unmarshaller unmarshaller = _idleUnmarshaller.get();
+    if (unmarshaller == null) {
+      return createUnmarshaller();
+    }
+    _idleUnmarshaller.remove();
     return unmarshaller;
   }
 
+  /**
+   * Hands an {@link Unmarshaller} back for reuse by the calling thread. The Unmarshaller is reset,
+   * so that it does not keep the root object and listener of its last use. An Unmarshaller of
+   * another context is ignored.
+   * 
+   * @param unmarshaller The {@link Unmarshaller} to reuse, as returned by
+   *        {@link #acquireUnmarshaller()}.
+   * @see Unmarshaller#reset()
+   * @since 1.4.2
+   */
+  public void releaseUnmarshaller(final Unmarshaller unmarshaller) {
+    if ((unmarshaller == null) || (unmarshaller.getInternalContext() != _internalContext)) {
+      return;
+    }
+    unmarshaller.reset();
+    _idleUnmarshaller.set(unmarshaller);
+  }
+
+  /**
+   * Unmarshals each of the given documents into an instance of the given class. The documents are
+   * unmarshalled concurrently, on the executor set as {@link XMLProperties#BATCH_EXECUTOR}, with at
+   * most {@link XMLProperties#BATCH_IN_FLIGHT} of them in flight; further sources are not taken
+   * from the given {@link Iterable} before one of them completes. All documents share the class
+   * descriptors of this context, and the descriptor of the given class is resolved once up front.
+   * <p>
+   * Each document is unmarshalled by a new {@link Unmarshaller} as returned by
+   * {@link #createUnmarshaller()}, configured with the given class only. The per-thread instances
+   * of {@link #acquireUnmarshaller()} are not used, as the threads of the executor may be short
+   * lived.
+   * 
+   * @param sources The documents to unmarshal, each a {@link Source} as accepted by
+   *        {@link Unmarshaller#unmarshal(Source)}.
+   * @param type The class to unmarshal the documents into.
+   * @return The outcome of each document, in the order of the given sources.
+   * @throws InterruptedException If the calling thread is interrupted while waiting for the
+   *         documents to complete.
+   * @since 1.4.2
+   */
+  public <T> List<BatchResult<T>> unmarshalAll(final Iterable<? extends Source> sources,
+      final Class<T> type) throws InterruptedException {
+    try {
+      _internalContext.getXMLClassDescriptorResolver().resolve(type);
+    } catch (ResolverException e) {
+      // -- every document will report the problem itself
+      LOG.debug("Unable to resolve the class descriptor of " + type.getName(), e);
+    }
+    return createBatchProcessor().run(sources, new BatchProcessor.Task<Source, T>() {
+      public T process(final Source source) throws Exception {
+        Unmarshaller unmarshaller = createUnmarshaller();
+        unmarshaller.setClass(type);
+        return type.cast(unmarshaller.unmarshal(source));
+      }
+    });
+  }
+
+  /**
+   * Marshals each of the given objects into an XML document. The objects are marshalled
+   * concurrently, on the executor set as {@link XMLProperties#BATCH_EXECUTOR}, with at most
+   * {@link XMLProperties#BATCH_IN_FLIGHT} of them in flight; further objects are not taken from
+   * the given {@link Iterable} before one of them completes. All objects share the class
+   * descriptors of this context.
+   * <p>
+   * Each object is marshalled by a new {@link Marshaller} as returned by
+   * {@link #createMarshaller()}. The per-thread instances of {@link #acquireMarshaller()} are not
+   * used, as the threads of the executor may be short lived.
+   * 
+   * @param objects The objects to marshal.
+   * @return The outcome of each object, the XML document written for it, in the order of the
+   *         given objects.
+   * @throws InterruptedException If the calling thread is interrupted while waiting for the
+   *         objects to complete.
+   * @since 1.4.2
+   */
+  public List<BatchResult<String>> marshalAll(final Iterable<?> objects)
+      throws InterruptedException {
+    return createBatchProcessor().run(objects, new BatchProcessor.Task<Object, String>() {
+      public String process(final Object object) throws Exception {
+        Marshaller marshaller = createMarshaller();
+        StringWriter out = new StringWriter();
+        marshaller.setWriter(out);
+        marshaller.marshal(object);
+        return out.toString();
+      }
+    });
+  }
+
+  /**
+   * Warms this context up, so that the first documents of an application do not pay for resolving
+   * class descriptors, loading classes and compiling the marshalling code. The warm-up runs in
+   * three phases, each timed on its own:
+   * <ol>
+   * <li>resolve: the class descriptors of the given packages are loaded as by
+   * {@link #addPackage(String)}, and those of the given classes and of all classes found in the
+   * packages are resolved;</li>
+   * <li>marshal: an instance of each resolved class, as created by its public default constructor,
+   * is marshalled;</li>
+   * <li>unmarshal: each document written is unmarshalled into its class again.</li>
+   * </ol>
+   * Each synthetic instance is marshalled and unmarshalled {@link XMLProperties#WARM_UP_ROUNDS}
+   * times, without validation. Classes without a public default constructor are resolved only.
+   * <p>
+   * When run in parallel, the classes of each phase are processed on the executor set as
+   * {@link XMLProperties#BATCH_EXECUTOR}, with at most {@link XMLProperties#BATCH_IN_FLIGHT} of
+   * them in flight; otherwise they are processed one after the other by the calling thread. A
+   * class failing is recorded in the report and does not stop the warm-up.
+   * 
+   * @param packageNames The packages to load the class descriptors of, or null.
+   * @param classes The classes to resolve the class descriptors of, or null.
+   * @param parallel true to process the classes of each phase concurrently.
+   * @return The time each phase took and the outcome for each class.
+   * @throws ResolverException If there's a problem loading class descriptors for one of the given
+   *         packages.
+   * @throws InterruptedException If the calling thread is interrupted while waiting for a phase
+   *         to complete.
+   * @since 1.4.2
+   */
+  public WarmUpReport warmUp(final String[] packageNames, final Class<?>[] classes,
+      final boolean parallel) throws ResolverException, InterruptedException {
+    final XMLClassDescriptorResolver resolver = _internalContext.getXMLClassDescriptorResolver();
+    final int rounds = Math.max(1, getIntProperty(XMLProperties.WARM_UP_ROUNDS, 1));
+    BatchProcessor processor = parallel ? createBatchProcessor() : new BatchProcessor(CALLER, 1);
+    WarmUpReport report = new WarmUpReport();
+
+    // -- resolve phase
+    long start = System.nanoTime();
+    List<Class<?>> types = new ArrayList<Class<?>>();
+    if (classes != null) {
+      for (Class<?> type : classes) {
+        if (!types.contains(type)) {
+          types.add(type);
+        }
+      }
+    }
+    if (packageNames != null) {
+      for (String packageName : packageNames) {
+        addPackage(packageName);
+        for (ClassDescriptor descriptor : resolver.getPackageDescriptors(packageName)) {
+          Class<?> type = descriptor.getJavaClass();
+          if ((type != null) && !types.contains(type)) {
+            types.add(type);
+          }
+        }
+      }
+    }
+    List<BatchResult<ClassDescriptor>> resolved =
+        processor.run(types, new BatchProcessor.Task<Class<?>, ClassDescriptor>() {
+          public ClassDescriptor process(final Class<?> type) throws Exception {
+            ClassDescriptor descriptor = resolver.resolve(type);
+            if (descriptor == null) {
+              throw new ResolverException("Unable to resolve a class descriptor for "
+                  + type.getName());
+            }
+            return descriptor;
+          }
+        });
+    report.setResolveTime(System.nanoTime() - start);
+
+    final List<Class<?>> instantiable = new ArrayList<Class<?>>();
+    for (BatchResult<ClassDescriptor> result : resolved) {
+      Class<?> type = types.get(result.getIndex());
+      if (result.isFailed()) {
+        report.addFailure(type, result.getError());
+      } else {
+        report.addResolvedClass(type);
+        if (isInstantiable(type)) {
+          instantiable.add(type);
+        }
+      }
+    }
+
+    // -- marshal phase
+    start = System.nanoTime();
+    List<BatchResult<String>> marshalled =
+        processor.run(instantiable, new BatchProcessor.Task<Class<?>, String>() {
+          public String process(final Class<?> type) throws Exception {
+            Marshaller marshaller = createMarshaller();
+            marshaller.setValidation(false);
+            String document = null;
+            for (int i = 0; i < rounds; i++) {
+              StringWriter out = new StringWriter();
+              marshaller.setWriter(out);
+              marshaller.marshal(type.getConstructor().newInstance());
+              document = out.toString();
+            }
+            return document;
+          }
+        });
+    report.setMarshalTime(System.nanoTime() - start);
+
+    final Map<Class<?>, String> documents = new HashMap<Class<?>, String>();
+    List<Class<?>> unmarshallable = new ArrayList<Class<?>>();
+    for (BatchResult<String> result : marshalled) {
+      Class<?> type = instantiable.get(result.getIndex());
+      if (result.isFailed()) {
+        report.addFailure(type, result.getError());
+      } else {
+        documents.put(type, result.getValue());
+        unmarshallable.add(type);
+      }
+    }
+
+    // -- unmarshal phase
+    start = System.nanoTime();
+    List<BatchResult<Object>> unmarshalled =
+        processor.run(unmarshallable, new BatchProcessor.Task<Class<?>, Object>() {
+          public Object process(final Class<?> type) throws Exception {
+            Unmarshaller unmarshaller = createUnmarshaller();
+            unmarshaller.setClass(type);
+            unmarshaller.setValidation(false);
+            Object value = null;
+            for (int i = 0; i < rounds; i++) {
+              value = unmarshaller.unmarshal(new StringReader(documents.get(type)));
+            }
+            return value;
+          }
+        });
+    report.setUnmarshalTime(System.nanoTime() - start);
+
+    for (BatchResult<Object> result : unmarshalled) {
+      Class<?> type = unmarshallable.get(result.getIndex());
+      if (result.isFailed()) {
+        report.addFailure(type, result.getError());
+      } else {
+        report.addRoundTrippedClass(type);
+      }
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Warmed up " + report.getResolvedClasses().size() + " classes in "
+          + report.getTotalTime(TimeUnit.MILLISECONDS) + " ms, "
+          + report.getFailures().size() + " failed");
+    }
+    return report;
+  } // -- warmUp
+
+  /**
+   * Indicates whether a warm-up can create instances of the given class.
+   * 
+   * @param type The class.
+   * @return true if the class is a concrete public class with a public default constructor.
+   */
+  private static boolean isInstantiable(final Class<?> type) {
+    int modifiers = type.getModifiers();
+    if (type.isInterface() || type.isArray() || type.isPrimitive() || type.isEnum()
+        || Modifier.isAbstract(modifiers) || !Modifier.isPublic(modifiers)) {
+      return false;
+    }
+    try {
+      type.getConstructor();
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Creates the processor running a batch, as configured by the batch properties of this context.
+   * 
+   * @return A new {@link BatchProcessor}.
+   */
+  private BatchProcessor createBatchProcessor() {
+    Object executor = _internalContext.getProperty(XMLProperties.BATCH_EXECUTOR);
+    if ((executor != null) && !(executor instanceof Executor)) {
+      throw new IllegalStateException(
+          XMLProperties.BATCH_EXECUTOR + " is not a java.util.concurrent.Executor: " + executor);
+    }
+    return new BatchProcessor((Executor) executor,
+        getIntProperty(XMLProperties.BATCH_IN_FLIGHT, 64));
+  }
+
+  /**
+   * Returns the value of a numeric property of this context.
+   * 
+   * @param propertyName The name of the property.
+   * @param defaultValue The value to return if the property is not set.
+   * @return The value of the property.
+   */
+  private int getIntProperty(final String propertyName, final int defaultValue) {
+    Object value = _internalContext.getProperty(propertyName);
+    if (value instanceof Number) {
+      return ((Number) value).intValue();
+    } else if (value != null) {
+      return Integer.parseInt(value.toString().trim());
+    }
+    return defaultValue;
+  }
+
   // /**
   // * To create a schema reader instance for reading XSD files.
   // * @param inputSource the InputSource to read from
@@ -246,6 +682,8 @@ public class XMLContext {
    */
   public void setProperty(final String propertyName, final Object value) {
     _internalContext.setProperty(propertyName, value);
+    _marshalPlans.clear();
+    _typeResolutions.clear();
   }
 
   /**
@@ -256,6 +694,8 @@ public class XMLContext {
    */
   public void setProperty(final String propertyName, final boolean value) {
     _internalContext.setProperty(propertyName, value);
+    _marshalPlans.clear();
+    _typeResolutions.clear();
   }
 
   /**
@@ -286,5 +726,7 @@ public class XMLContext {
    */
   public void setClassLoader(ClassLoader classLoader) {
     this._internalContext.setClassLoader(classLoader);
+    _marshalPlans.clear();
+    _typeResolutions.clear();
   }
 }
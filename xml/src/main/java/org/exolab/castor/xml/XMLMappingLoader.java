@@ -43,7 +43,12 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -116,6 +121,13 @@ public final class XMLMappingLoader extends AbstractMappingLoader {
    */
   private static final String VALUE_OF = "valueOf";
 
+  /**
+   * Names of the mapped classes keyed by their XML names, only maintained when descriptors are
+   * created on first use.
+   */
+  private final Map<String, List<String>> _classnamesByXMLName =
+      new HashMap<String, List<String>>();
+
   /**
    * Creates a new XMLMappingLoader. Joachim 2007-08-19: called via ClassLoader from
    * XMLMappingLoaderFactory.getMappingLoader() must not be modified!!!
@@ -140,9 +152,123 @@ public final class XMLMappingLoader extends AbstractMappingLoader {
     if (loadMapping()) {
       createFieldHandlers(mapping);
       createClassDescriptors(mapping);
+      if (isLazyDescriptors()) {
+        indexXMLNames(mapping);
+      }
     }
   }
 
+  /**
+   * Records the XML names of all mapped classes, so that descriptors not created yet can still be
+   * looked up by XML name.
+   * 
+   * @param mapping The mapping whose class mappings have just been registered.
+   * @throws MappingException A mapped class cannot be loaded.
+   */
+  private void indexXMLNames(final MappingRoot mapping) throws MappingException {
+    _classnamesByXMLName.clear();
+    Enumeration<? extends ClassMapping> enumeration = mapping.enumerateClassMapping();
+    while (enumeration.hasMoreElements()) {
+      ClassMapping classMapping = enumeration.nextElement();
+      Class javaClass = resolveType(classMapping.getName());
+      String xmlName;
+      if (isLazyMapping(classMapping)) {
+        xmlName = getXMLName(classMapping, javaClass);
+      } else {
+        // -- created already, possibly from a compiled descriptor with its own name
+        XMLClassDescriptor descriptor = (XMLClassDescriptor) getDescriptor(javaClass.getName());
+        if ((descriptor == null) || (descriptor.getXMLName() == null)) {
+          continue;
+        }
+        xmlName = descriptor.getXMLName();
+      }
+
+      List<String> classnames = _classnamesByXMLName.get(xmlName);
+      if (classnames == null) {
+        classnames = new ArrayList<String>();
+        _classnamesByXMLName.put(xmlName, classnames);
+      }
+      if (!classnames.contains(javaClass.getName())) {
+        classnames.add(javaClass.getName());
+      }
+    }
+  }
+
+  /**
+   * Returns the XML names of all mapped classes. Only available when descriptors are created on
+   * first use.
+   * 
+   * @return The XML names of all mapped classes.
+   * @see #isLazyDescriptors()
+   */
+  public Set<String> getXMLNames() {
+    return Collections.unmodifiableSet(_classnamesByXMLName.keySet());
+  }
+
+  /**
+   * Returns the descriptors of all mapped classes with the given XML name, creating those that have
+   * not been created yet. Only available when descriptors are created on first use.
+   * 
+   * @param xmlName The XML name to look for.
+   * @return The descriptors of all mapped classes with this XML name, never <code>null</code>.
+   * @see #isLazyDescriptors()
+   */
+  public List<ClassDescriptor> getDescriptorsByXMLName(final String xmlName) {
+    List<String> classnames = _classnamesByXMLName.get(xmlName);
+    if (classnames == null) {
+      return Collections.emptyList();
+    }
+    List<ClassDescriptor> descriptors = new ArrayList<ClassDescriptor>(classnames.size());
+    for (String classname : classnames) {
+      ClassDescriptor descriptor = getDescriptor(classname);
+      if (descriptor != null) {
+        descriptors.add(descriptor);
+      }
+    }
+    return descriptors;
+  }
+
+  /**
+   * {@inheritDoc}
+   * 
+   * Class mappings that may resolve to a compiled descriptor are created right away, as only the
+   * compiled descriptor knows its XML name.
+   */
+  protected boolean isLazyMapping(final ClassMapping classMapping) {
+    return !isCompiledCandidate(classMapping);
+  }
+
+  /**
+   * Tells whether the given class mapping does nothing but ask for the class to be auto-completed,
+   * in which case a compiled descriptor is used if one can be found.
+   * 
+   * @param classMapping the class mapping to check
+   * @return <code>true</code> if a compiled descriptor will be looked for
+   */
+  private boolean isCompiledCandidate(final ClassMapping classMapping) {
+    return classMapping.getAutoComplete() && (classMapping.getMapTo() == null)
+        && ((classMapping.getClassChoice() == null)
+            || (classMapping.getClassChoice().getFieldMappingCount() == 0))
+        && (classMapping.getIdentityCount() == 0);
+  }
+
+  /**
+   * Returns the XML name of the given class mapping, either the one it maps to or the one derived
+   * from the class name.
+   * 
+   * @param classMapping the class mapping
+   * @param javaClass the mapped class
+   * @return the XML name of the mapped class
+   */
+  private String getXMLName(final ClassMapping classMapping, final Class javaClass) {
+    MapTo mapTo = classMapping.getMapTo();
+    if ((mapTo != null) && (mapTo.getXml() != null)) {
+      return mapTo.getXml();
+    }
+    String clsName = getInternalContext().getJavaNaming().getClassName(javaClass);
+    return getInternalContext().getXMLNaming().toXMLName(clsName);
+  }
+
   // -----------------------------------------------------------------------------------
 
   /**
@@ -170,22 +296,17 @@ public final class XMLMappingLoader extends AbstractMappingLoader {
     getInternalContext().getXMLClassDescriptorResolver().setLoadPackageMappings(false);
 
     try {
-      if (classMapping.getAutoComplete()) {
-        if ((classMapping.getMapTo() == null)
-            && ((classMapping.getClassChoice() == null)
-                || (classMapping.getClassChoice().getFieldMappingCount() == 0))
-            && (classMapping.getIdentityCount() == 0)) {
-          // If we make it here we simply try to load a compiled mapping
-          try {
-            ClassDescriptor clsDesc = getInternalContext().getXMLClassDescriptorResolver()
-                .resolve(classMapping.getName());
-            if (clsDesc != null) {
-              return clsDesc;
-            }
-          } catch (ResolverException e) {
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("Ignoring exception: " + e + " at resolving: " + classMapping.getName());
-            }
+      if (isCompiledCandidate(classMapping)) {
+        // If we make it here we simply try to load a compiled mapping
+        try {
+          ClassDescriptor clsDesc = getInternalContext().getXMLClassDescriptorResolver()
+              .resolve(classMapping.getName());
+          if (clsDesc != null) {
+            return clsDesc;
+          }
+        } catch (ResolverException e) {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Ignoring exception: " + e + " at resolving: " + classMapping.getName());
           }
         }
       }
@@ -200,15 +321,8 @@ public final class XMLMappingLoader extends AbstractMappingLoader {
       xmlClassDesc.setJavaClass(javaClass);
 
       // Obtain XML name.
-      String xmlName;
       MapTo mapTo = classMapping.getMapTo();
-      if ((mapTo != null) && (mapTo.getXml() != null)) {
-        xmlName = mapTo.getXml();
-      } else {
-        String clsName = getInternalContext().getJavaNaming().getClassName(javaClass);
-        xmlName = getInternalContext().getXMLNaming().toXMLName(clsName);
-      }
-      xmlClassDesc.setXMLName(xmlName);
+      xmlClassDesc.setXMLName(getXMLName(classMapping, javaClass));
 
       // If this class extends another class, we need to obtain the extended
       // class and make sure this class indeed extends it.
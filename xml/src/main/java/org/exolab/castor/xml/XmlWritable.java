@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+/**
+ * Implemented by generated classes that can write their own attributes and content, bypassing the
+ * descriptor-driven marshalling of their fields. The {@link Marshaller} still takes care of the
+ * element itself (naming, namespace scoping, xsi:type, validation and {@link MarshalListener}
+ * notifications) and only hands the attributes and content over to the instance.
+ *
+ * @see XmlWriter
+ * @since 1.4.2
+ */
+public interface XmlWritable {
+
+  /**
+   * Adds the attributes of this instance to the start tag of its element.
+   *
+   * <p>
+   * An implementation that cannot write itself (for example because a subclass adds fields it does
+   * not know about) must return false without having called the given writer; the
+   * {@link Marshaller} then marshals the whole instance through its descriptors instead.
+   *
+   * @param writer the writer to add the attributes to
+   * @return true if the attributes have been written and {@link #marshalContent(XmlWriter)} may be
+   *         used, false otherwise
+   * @throws MarshalException If an attribute cannot be written.
+   */
+  boolean marshalAttributes(XmlWriter writer) throws MarshalException;
+
+  /**
+   * Writes the text content and the child elements of this instance.
+   *
+   * @param writer the writer to write the content to
+   * @throws MarshalException If the content cannot be written.
+   * @throws ValidationException If a child object fails to validate.
+   */
+  void marshalContent(XmlWriter writer) throws MarshalException, ValidationException;
+}
@@ -0,0 +1,418 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import java.util.Enumeration;
+
+import org.exolab.castor.xml.Marshaller.MarshalState;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * The output handed to {@link XmlWritable} instances by the {@link Marshaller}. Attributes,
+ * text content and simple child elements are written straight to the underlying
+ * {@link ContentHandler}, with primitive values formatted into a buffer shared by the
+ * {@link Marshaller} instead of being boxed. Complex child objects are passed back to the
+ * {@link Marshaller} and marshalled through their descriptors as usual.
+ *
+ * <p>
+ * Namespace declarations, namespace suppression and {@link MarshalListener} notifications are
+ * handled exactly as on the descriptor-driven path. Instances are created by the
+ * {@link Marshaller} for one object at a time and must not be retained.
+ *
+ * @see XmlWritable
+ * @since 1.4.2
+ */
+public final class XmlWriter {
+
+  /**
+   * Size of the buffer used to format primitive values; large enough for any long.
+   */
+  static final int BUFFER_SIZE = 20;
+
+  private static final char[] TRUE_CHARS = "true".toCharArray();
+
+  private static final char[] FALSE_CHARS = "false".toCharArray();
+
+  /**
+   * The {@link Marshaller} this writer belongs to.
+   */
+  private final Marshaller _marshaller;
+
+  /**
+   * The ContentHandler we are marshalling to.
+   */
+  private final ContentHandler _handler;
+
+  /**
+   * The object writing itself.
+   */
+  private final Object _object;
+
+  /**
+   * The class descriptor of the object, used to look up child element descriptors.
+   */
+  private final XMLClassDescriptor _classDesc;
+
+  /**
+   * The MarshalState of the object.
+   */
+  private final MarshalState _state;
+
+  /**
+   * The XML name of the element of the object.
+   */
+  private final String _xmlName;
+
+  /**
+   * The namespace prefix of the element of the object.
+   */
+  private final String _nsPrefix;
+
+  /**
+   * The namespace URI of the element of the object.
+   */
+  private final String _nsURI;
+
+  /**
+   * The attributes of the start tag; only set while attributes are written.
+   */
+  private AttributesImpl _atts = null;
+
+  /**
+   * Creates a new XmlWriter for the given object.
+   *
+   * @param marshaller the {@link Marshaller} marshalling the object
+   * @param handler the ContentHandler to marshal to
+   * @param object the object, which must implement {@link XmlWritable}
+   * @param classDesc the class descriptor of the object
+   * @param state the MarshalState of the object
+   * @param xmlName the XML name of the element of the object
+   * @param nsPrefix the namespace prefix of the element of the object
+   * @param nsURI the namespace URI of the element of the object
+   */
+  XmlWriter(final Marshaller marshaller, final ContentHandler handler, final Object object,
+      final XMLClassDescriptor classDesc, final MarshalState state, final String xmlName,
+      final String nsPrefix, final String nsURI) {
+    _marshaller = marshaller;
+    _handler = handler;
+    _object = object;
+    _classDesc = classDesc;
+    _state = state;
+    _xmlName = xmlName;
+    _nsPrefix = nsPrefix;
+    _nsURI = nsURI;
+  }
+
+  /**
+   * Lets the object add its attributes to the given attribute list.
+   *
+   * @param atts the attributes of the start tag
+   * @return false if the object declined to write itself, in which case the attribute list is left
+   *         unchanged
+   * @throws MarshalException If an attribute cannot be written.
+   */
+  boolean writeAttributes(final AttributesImpl atts) throws MarshalException {
+    int mark = atts.getLength();
+    _atts = atts;
+    try {
+      if (((XmlWritable) _object).marshalAttributes(this)) {
+        return true;
+      }
+      while (atts.getLength() > mark) {
+        atts.removeAttribute(atts.getLength() - 1);
+      }
+      return false;
+    } finally {
+      _atts = null;
+    }
+  }
+
+  /**
+   * Lets the object write its text content and child elements.
+   *
+   * @throws MarshalException If the content cannot be written.
+   * @throws ValidationException If a child object fails to validate.
+   */
+  void writeContent() throws MarshalException, ValidationException {
+    ((XmlWritable) _object).marshalContent(this);
+  }
+
+  // --------------/
+  // - Attributes -/
+  // --------------/
+
+  /**
+   * Adds an attribute to the start tag; null values are skipped.
+   *
+   * @param namespace the namespace URI of the attribute, may be null
+   * @param name the local name of the attribute
+   * @param value the attribute value
+   */
+  public void attribute(final String namespace, final String name, final String value) {
+    if (_atts == null) {
+      throw new IllegalStateException(
+          "Attribute '" + name + "' must be written from XmlWritable#marshalAttributes().");
+    }
+    if (value != null) {
+      _marshaller.addDirectAttribute(_atts, namespace, name, value);
+    }
+  }
+
+  /**
+   * Adds the attribute of the given attribute field to the start tag through its descriptor,
+   * exactly as the descriptor-driven path would. This is used for values that need more than their
+   * string form, such as enumerations, dates or lists.
+   *
+   * @param namespace the namespace URI of the attribute, may be null
+   * @param name the local name of the attribute
+   * @throws MarshalException If the attribute value cannot be obtained.
+   */
+  public void attribute(final String namespace, final String name) throws MarshalException {
+    if (_atts == null) {
+      throw new IllegalStateException(
+          "Attribute '" + name + "' must be written from XmlWritable#marshalAttributes().");
+    }
+    XMLFieldDescriptor attDescriptor =
+        _classDesc.getFieldDescriptor(name, namespace, NodeType.Attribute);
+    if (attDescriptor == null) {
+      throw new MarshalException("No attribute descriptor for '" + name
+          + "' in class descriptor of " + _object.getClass().getName());
+    }
+    _marshaller.processDirectAttribute(_object, attDescriptor, _atts);
+  }
+
+  public void attribute(final String namespace, final String name, final boolean value) {
+    attribute(namespace, name, value ? MarshalFramework.TRUE_VALUE : "false");
+  }
+
+  public void attribute(final String namespace, final String name, final int value) {
+    attribute(namespace, name, Integer.toString(value));
+  }
+
+  public void attribute(final String namespace, final String name, final long value) {
+    attribute(namespace, name, Long.toString(value));
+  }
+
+  public void attribute(final String namespace, final String name, final float value) {
+    attribute(namespace, name, Float.toString(value));
+  }
+
+  public void attribute(final String namespace, final String name, final double value) {
+    attribute(namespace, name, Double.toString(value));
+  }
+
+  // ----------------/
+  // - Text content -/
+  // ----------------/
+
+  /**
+   * Writes the text content of the element; null values are skipped.
+   *
+   * @param value the text content
+   * @throws MarshalException If the ContentHandler reports an error.
+   */
+  public void text(final String value) throws MarshalException {
+    if (value != null) {
+      characters(value);
+    }
+  }
+
+  public void text(final boolean value) throws MarshalException {
+    characters(value ? TRUE_CHARS : FALSE_CHARS, 0);
+  }
+
+  public void text(final int value) throws MarshalException {
+    text((long) value);
+  }
+
+  public void text(final long value) throws MarshalException {
+    characters(_marshaller.getDirectBuffer(), format(value));
+  }
+
+  public void text(final float value) throws MarshalException {
+    characters(Float.toString(value));
+  }
+
+  public void text(final double value) throws MarshalException {
+    characters(Double.toString(value));
+  }
+
+  // ------------------/
+  // - Child elements -/
+  // ------------------/
+
+  /**
+   * Writes a child element with simple content; null values are skipped.
+   *
+   * @param namespace the namespace URI of the element, may be null
+   * @param name the local name of the element
+   * @param value the text content of the element
+   * @throws MarshalException If the ContentHandler reports an error.
+   */
+  public void element(final String namespace, final String name, final String value)
+      throws MarshalException {
+    if (value != null) {
+      element(namespace, name, (Object) value);
+    }
+  }
+
+  public void element(final String namespace, final String name, final boolean value)
+      throws MarshalException {
+    if (_marshaller.hasMarshalListener()) {
+      element(namespace, name, Boolean.valueOf(value));
+      return;
+    }
+    String qName = _marshaller.startDirectElement(_handler, namespace, name);
+    characters(value ? TRUE_CHARS : FALSE_CHARS, 0);
+    _marshaller.endDirectElement(_handler, namespace, name, qName);
+  }
+
+  public void element(final String namespace, final String name, final int value)
+      throws MarshalException {
+    if (_marshaller.hasMarshalListener()) {
+      element(namespace, name, Integer.valueOf(value));
+      return;
+    }
+    element(namespace, name, (long) value);
+  }
+
+  public void element(final String namespace, final String name, final long value)
+      throws MarshalException {
+    if (_marshaller.hasMarshalListener()) {
+      element(namespace, name, Long.valueOf(value));
+      return;
+    }
+    String qName = _marshaller.startDirectElement(_handler, namespace, name);
+    characters(_marshaller.getDirectBuffer(), format(value));
+    _marshaller.endDirectElement(_handler, namespace, name, qName);
+  }
+
+  public void element(final String namespace, final String name, final float value)
+      throws MarshalException {
+    element(namespace, name, _marshaller.hasMarshalListener() ? (Object) Float.valueOf(value)
+        : Float.toString(value));
+  }
+
+  public void element(final String namespace, final String name, final double value)
+      throws MarshalException {
+    element(namespace, name, _marshaller.hasMarshalListener() ? (Object) Double.valueOf(value)
+        : Double.toString(value));
+  }
+
+  /**
+   * Writes the child element(s) of the given element field through its descriptor, exactly as the
+   * descriptor-driven path would. This is used for values that need more than their string form,
+   * such as instances of other generated classes, enumerations, dates or collections thereof.
+   * Nothing is written if the field has no value, unless it is required and nillable.
+   *
+   * @param namespace the namespace URI of the element, may be null
+   * @param name the local name of the element
+   * @throws MarshalException If there's a problem marshalling the value.
+   * @throws ValidationException If the value fails to validate.
+   */
+  public void object(final String namespace, final String name)
+      throws MarshalException, ValidationException {
+    XMLFieldDescriptor elemDescriptor =
+        _classDesc.getFieldDescriptor(name, namespace, NodeType.Element);
+    if (elemDescriptor == null) {
+      throw new MarshalException("No element descriptor for '" + name + "' in class descriptor of "
+          + _object.getClass().getName());
+    }
+    Object value = elemDescriptor.getHandler().getValue(_object);
+    if ((value == null)
+        || ((value instanceof Enumeration) && !((Enumeration<?>) value).hasMoreElements())) {
+      if (!elemDescriptor.isNillable() || !elemDescriptor.isRequired()) {
+        return;
+      }
+      value = new Marshaller.NilObject(_classDesc, elemDescriptor);
+    }
+    _marshaller.marshalDirectChild(value, elemDescriptor, _handler,
+        _state.createMarshalState(_object, _xmlName), _nsPrefix, _nsURI);
+  }
+
+  // -------------------/
+  // - Private Methods -/
+  // -------------------/
+
+  /**
+   * Writes a simple element for the given value, notifying the {@link MarshalListener} if any.
+   */
+  private void element(final String namespace, final String name, final Object value)
+      throws MarshalException {
+    if (!_marshaller.firePreMarshal(value)) {
+      return;
+    }
+    String qName = _marshaller.startDirectElement(_handler, namespace, name);
+    characters(value.toString());
+    _marshaller.endDirectElement(_handler, namespace, name, qName);
+    _marshaller.firePostMarshal(value);
+  }
+
+  /**
+   * Sends the given string as character data.
+   */
+  private void characters(final String value) throws MarshalException {
+    int length = value.length();
+    if (length == 0) {
+      return;
+    }
+    char[] buffer = _marshaller.getDirectBuffer();
+    if (length > buffer.length) {
+      characters(value.toCharArray(), 0);
+      return;
+    }
+    value.getChars(0, length, buffer, 0);
+    try {
+      _handler.characters(buffer, 0, length);
+    } catch (SAXException sx) {
+      throw new MarshalException(sx);
+    }
+  }
+
+  /**
+   * Sends the characters of the given buffer, starting at the given offset, as character data.
+   */
+  private void characters(final char[] chars, final int offset) throws MarshalException {
+    try {
+      _handler.characters(chars, offset, chars.length - offset);
+    } catch (SAXException sx) {
+      throw new MarshalException(sx);
+    }
+  }
+
+  /**
+   * Formats the given value right-aligned into the shared buffer.
+   *
+   * @return the offset of the first character within the buffer
+   */
+  private int format(final long value) {
+    char[] buffer = _marshaller.getDirectBuffer();
+    int pos = buffer.length;
+    if (value == Long.MIN_VALUE) {
+      String str = Long.toString(value);
+      pos -= str.length();
+      str.getChars(0, str.length(), buffer, pos);
+      return pos;
+    }
+    long remainder = (value < 0) ? -value : value;
+    do {
+      buffer[--pos] = (char) ('0' + (remainder % 10));
+      remainder /= 10;
+    } while (remainder != 0);
+    if (value < 0) {
+      buffer[--pos] = '-';
+    }
+    return pos;
+  }
+}
@@ -103,6 +103,16 @@ public class DateFieldHandler extends XMLFieldHandler {
   // - Public Methods -/
   // ------------------/
 
+  /**
+   * Returns the FieldHandler this DateFieldHandler delegates to.
+   *
+   * @return the nested FieldHandler
+   * @since 1.4.2
+   */
+  public FieldHandler getFieldHandler() {
+    return _handler;
+  } // -- getFieldHandler
+
   /**
    * Returns the value of the field associated with this descriptor from the given target object.
    *
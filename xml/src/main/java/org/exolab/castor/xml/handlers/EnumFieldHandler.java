@@ -38,7 +38,6 @@
 package org.exolab.castor.xml.handlers;
 
 import java.lang.reflect.Array;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 
@@ -47,6 +46,12 @@ import org.exolab.castor.mapping.ValidityException;
 
 /**
  * A specialized FieldHandler for the XML Schema enumeration types.
+ * <p>
+ * Values are converted through the static <code>fromValue(String)</code> or
+ * <code>valueOf(String)</code> method of the enumeration type, and back through its
+ * <code>value()</code> or <code>toString()</code> method. Generated descriptors override
+ * {@link #fromValue(String)} and {@link #toValue(Object)} to call these methods directly; other
+ * users get them invoked reflectively.
  *
  * @author <a href="keith AT kvisco  DOT com">Keith Visco</a>
  * @version $Revision$ $Date: 2006-04-13 06:47:36 -0600 (Thu, 13 Apr 2006) $
@@ -61,8 +66,12 @@ public class EnumFieldHandler implements FieldHandler {
   private static final String METHOD_VALUE = "value";
   private static final String METHOD_TOSTRING = "toString";
 
+  /** The enumeration type. */
+  private final Class _enumType;
   /** The <code>valueOf(String)</code> method for the provided enumtype. */
   private final Method _valueOf;
+  /** The <code>value()</code> method for the provided enumtype. */
+  private final Method _value;
   /** The field handler to which we delegate. */
   private final FieldHandler _handler;
 
@@ -78,7 +87,9 @@ public class EnumFieldHandler implements FieldHandler {
    */
   public EnumFieldHandler(final Class enumType, final FieldHandler handler) {
     this._handler = handler;
+    this._enumType = enumType;
     this._valueOf = getUnmarshallMethod(enumType);
+    this._value = getMarshallMethod(enumType);
   } // -- EnumFieldHandler
 
   /**
@@ -175,24 +186,53 @@ public class EnumFieldHandler implements FieldHandler {
       String[] values = new String[size];
 
       for (int i = 0; i < size; i++) {
-        Object obj = Array.get(val, i);
-        try {
-          values[i] = (String) getMarshallMethod(obj.getClass()).invoke(obj, null);
-        } catch (Exception e) {
-          throw new IllegalStateException(e.toString());
-        }
+        values[i] = toValue(Array.get(val, i));
       }
       result = values;
     } else {
-      try {
-        result = getMarshallMethod(val.getClass()).invoke(val, null);
-      } catch (Exception e) {
-        throw new IllegalStateException(e.toString());
-      }
+      result = toValue(val);
     }
     return result;
   } // -- getValue
 
+  /**
+   * Returns the XML value of the given enumeration constant. Generated descriptors override this
+   * method to call the <code>value()</code> or <code>toString()</code> method of the enumeration
+   * type directly.
+   *
+   * @param value the enumeration constant
+   * @return the XML value of the constant
+   * @throws IllegalStateException If the value method cannot be invoked.
+   */
+  protected String toValue(final Object value) throws IllegalStateException {
+    Method method = _enumType.isInstance(value) ? _value : getMarshallMethod(value.getClass());
+    try {
+      return (String) method.invoke(value, null);
+    } catch (Exception e) {
+      throw new IllegalStateException(e.toString());
+    }
+  } // -- toValue
+
+  /**
+   * Returns the enumeration constant for the given XML value. Generated descriptors override this
+   * method to call the <code>fromValue(String)</code> or <code>valueOf(String)</code> method of the
+   * enumeration type directly.
+   *
+   * @param value the XML value
+   * @return the enumeration constant for the value
+   * @throws IllegalStateException If the value is not part of the enumeration.
+   */
+  protected Object fromValue(final String value) throws IllegalStateException {
+    try {
+      return _valueOf.invoke(null, new Object[] {value});
+    } catch (java.lang.reflect.InvocationTargetException ite) {
+      Throwable toss = ite.getTargetException();
+      throw new IllegalStateException(toss.toString());
+    } catch (java.lang.IllegalAccessException iae) {
+      throw new IllegalStateException(iae.toString());
+    }
+  } // -- fromValue
+
   /**
    * Sets the value of the field associated with this descriptor.
    *
@@ -205,14 +245,9 @@ public class EnumFieldHandler implements FieldHandler {
       throws java.lang.IllegalStateException {
     Object obj = null;
     if (value != null) {
-      Object[] args = new String[1];
-      args[0] = value.toString();
       try {
-        obj = _valueOf.invoke(null, args);
-      } catch (java.lang.reflect.InvocationTargetException ite) {
-        Throwable toss = ite.getTargetException();
-        throw new IllegalStateException(toss.toString());
-      } catch (java.lang.IllegalAccessException iae) {
+        obj = fromValue(value.toString());
+      } catch (IllegalArgumentException iae) {
         throw new IllegalStateException(iae.toString());
       }
     }
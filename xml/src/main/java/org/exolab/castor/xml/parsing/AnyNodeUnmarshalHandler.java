@@ -169,6 +169,17 @@ public class AnyNodeUnmarshalHandler {
     return startingNode;
   }
 
+  /**
+   * Drops any any-node branch in progress, together with the preserved element information.
+   */
+  public void reset() {
+    _anyUnmarshaller = null;
+    _depth = 0;
+    if (_elemInfo != null) {
+      _elemInfo.clear();
+    }
+  }
+
   /**
    * Preserves passed name and attributes.
    * 
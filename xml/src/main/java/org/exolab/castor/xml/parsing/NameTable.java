@@ -0,0 +1,133 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml.parsing;
+
+/**
+ * Maps character ranges to canonical {@link String} instances, so that element and attribute
+ * names recurring across documents are allocated once. Names are looked up by their characters and
+ * hash code, without creating a String for names already in the table.
+ * <p>
+ * The number of names held is bounded; once full, unknown names are returned as new Strings
+ * without being added. Instances are not thread-safe.
+ *
+ * @since 1.4.2
+ */
+public class NameTable {
+
+  /** The maximum number of names held. */
+  private static final int MAX_NAMES = 4096;
+
+  /** The names, by slot. */
+  private String[] _names = new String[256];
+
+  /** The hash codes of the names, by slot. */
+  private int[] _hashes = new int[256];
+
+  /** The number of names held. */
+  private int _size = 0;
+
+  /**
+   * Computes the hash code of the given characters, as used by {@link #get}.
+   *
+   * @param chars the characters.
+   * @param offset the index of the first character.
+   * @param length the number of characters.
+   * @return the hash code.
+   */
+  public static int hash(final char[] chars, final int offset, final int length) {
+    int hash = 0;
+    for (int i = offset; i < offset + length; i++) {
+      hash = 31 * hash + chars[i];
+    }
+    return hash;
+  }
+
+  /**
+   * Returns the canonical String for the given characters.
+   *
+   * @param chars the characters.
+   * @param offset the index of the first character.
+   * @param length the number of characters.
+   * @param hash the hash code of the characters, as computed by {@link #hash}.
+   * @return the name.
+   */
+  public String get(final char[] chars, final int offset, final int length, final int hash) {
+    int mask = _names.length - 1;
+    int slot = hash & mask;
+    for (String name = _names[slot]; name != null; name = _names[slot]) {
+      if (_hashes[slot] == hash && equals(name, chars, offset, length)) {
+        return name;
+      }
+      slot = (slot + 1) & mask;
+    }
+    String name = new String(chars, offset, length);
+    if (_size < MAX_NAMES) {
+      _names[slot] = name;
+      _hashes[slot] = hash;
+      if (++_size * 4 > _names.length * 3) {
+        rehash();
+      }
+    }
+    return name;
+  }
+
+  /**
+   * Returns the canonical String for the given name, adding it if necessary.
+   *
+   * @param name the name.
+   * @return the canonical instance of the name.
+   */
+  public String get(final String name) {
+    char[] chars = name.toCharArray();
+    return get(chars, 0, chars.length, hash(chars, 0, chars.length));
+  }
+
+  /**
+   * Returns the number of names held.
+   *
+   * @return the number of names.
+   */
+  public int size() {
+    return _size;
+  }
+
+  private static boolean equals(final String name, final char[] chars, final int offset,
+      final int length) {
+    if (name.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (name.charAt(i) != chars[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void rehash() {
+    String[] names = _names;
+    int[] hashes = _hashes;
+    _names = new String[names.length * 2];
+    _hashes = new int[names.length * 2];
+    int mask = _names.length - 1;
+    for (int i = 0; i < names.length; i++) {
+      if (names[i] != null) {
+        int slot = hashes[i] & mask;
+        while (_names[slot] != null) {
+          slot = (slot + 1) & mask;
+        }
+        _names[slot] = names[i];
+        _hashes[slot] = hashes[i];
+      }
+    }
+  }
+}
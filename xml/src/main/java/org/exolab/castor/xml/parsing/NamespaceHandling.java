@@ -234,4 +234,19 @@ public class NamespaceHandling {
     _createNamespaceScope = value;
 
   }
+
+  /**
+   * Removes all namespace scopes, keeping the namespace to package mappings.
+   */
+  public void reset() {
+    namespacesStack.clear();
+    _createNamespaceScope = true;
+  }
+
+  /**
+   * Removes all namespace to package mappings.
+   */
+  public void clearNamespaceToPackageMappings() {
+    _namespaceToPackage.clear();
+  }
 }
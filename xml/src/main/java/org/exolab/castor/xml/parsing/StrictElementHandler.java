@@ -94,6 +94,13 @@ public class StrictElementHandler {
     return false;
   }
 
+  /**
+   * Resets the depth counter, so that no element is being skipped.
+   */
+  public void reset() {
+    _ignoreElementDepth = 0;
+  }
+
   /**
    * Decreases the depth counter for elements which should be skipped.
    */
@@ -114,4 +114,12 @@ public class UnmarshalStateStack {
     this.parentStateIndex = null;
   }
 
+  /**
+   * Removes all {@link UnmarshalState}s from the stack.
+   */
+  public void clear() {
+    _unmarshalStates.clear();
+    parentStateIndex = null;
+  }
+
 }
@@ -0,0 +1,1223 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml.parsing;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * A non-validating XML 1.0 tokenizer for UTF-8 encoded documents without a document type
+ * declaration, the common case for data binding. It decodes the byte stream itself, looks up
+ * element and attribute names in a {@link NameTable}, and reports the document to a
+ * {@link ContentHandler} the way a SAX parser with namespace processing disabled does: names are
+ * passed as qualified names, and namespace declarations as attributes.
+ * <p>
+ * {@link #open()} reads the prolog and decides whether the document can be tokenized. Documents
+ * with a document type declaration (and thereby entity declarations and external entities), with
+ * an encoding other than UTF-8 or US-ASCII, or with an XML version other than 1.0 are not; for
+ * those, {@link #getReplayStream()} returns a stream of the complete document, to be passed to a
+ * JAXP parser.
+ * <p>
+ * Names are checked for delimiters only, not against the XML name production. Text and attribute
+ * values are passed to the handler in as many chunks as the input buffering results in, without
+ * being copied unless they contain references.
+ * <p>
+ * A tokenizer created without a stream is fed: input arrives through {@link #feed(ByteBuffer)} and
+ * {@link #endOfInput()}, and {@link #open()} and {@link #resume()} return early when they run out
+ * of input, to be called again once more is fed. Tokenizing stops and resumes at token
+ * boundaries, so no event is reported twice.
+ *
+ * @since 1.4.2
+ */
+public class XMLTokenizer implements Locator {
+
+  /** The initial size of the buffers. */
+  private static final int BUFFER_SIZE = 8192;
+
+  /** Thrown when a fed tokenizer runs out of input. */
+  private static final IOException SUSPEND = new IOException("Suspended for more input.");
+
+  /** The stream being tokenized; null if input is fed. */
+  private final InputStream _in;
+
+  /** The handler events are reported to, once started. */
+  private ContentHandler _handler = null;
+
+  /** Whether the last call to {@link #open()} or {@link #resume()} ran out of fed input. */
+  private boolean _needsInput = false;
+
+  /** Whether the byte order mark has been checked. */
+  private boolean _bomChecked = false;
+
+  /** Whether the XML declaration has been read, if there is one. */
+  private boolean _declarationChecked = false;
+
+  /** Whether the root element has been seen. */
+  private boolean _rootSeen = false;
+
+  /** Whether a CDATA section is being read. */
+  private boolean _inCData = false;
+
+  /** The start of the token being read, where tokenizing resumes after running out of input. */
+  private int _tokenStart = 0;
+
+  /** The names of elements and attributes. */
+  private final NameTable _names;
+
+  /** The bytes read from the stream. */
+  private byte[] _bytes = new byte[BUFFER_SIZE];
+
+  /** The index of the next byte to decode. */
+  private int _bytePos = 0;
+
+  /** The index after the last byte read. */
+  private int _byteLimit = 0;
+
+  /** Whether the bytes read are kept, for {@link #getReplayStream()}. */
+  private boolean _replayable = true;
+
+  /** Whether the end of the stream has been reached. */
+  private boolean _eof = false;
+
+  /** Whether the previous character decoded was a carriage return. */
+  private boolean _skipLineFeed = false;
+
+  /** The decoded characters, with line ends normalized. */
+  private char[] _chars = new char[BUFFER_SIZE];
+
+  /** The index of the next character to tokenize. */
+  private int _pos = 0;
+
+  /** The index after the last character decoded. */
+  private int _limit = 0;
+
+  /** The start of the token being read, kept when the buffer is refilled; -1 if none. */
+  private int _mark = -1;
+
+  /** The current line number. */
+  private int _line = 1;
+
+  /** The index of the first character of the current line; may be negative. */
+  private int _lineStart = 0;
+
+  /** The index up to which lines have been counted. */
+  private int _lineScan = 0;
+
+  /** The attributes of the current element. */
+  private final TokenAttributes _attributes = new TokenAttributes();
+
+  /** Buffer for text containing references. */
+  private char[] _text = new char[64];
+
+  /** The names of the open elements. */
+  private String[] _elements = new String[32];
+
+  /** The number of open elements. */
+  private int _depth = 0;
+
+  /** The system identifier of the document. */
+  private String _systemId = null;
+
+  /** The public identifier of the document. */
+  private String _publicId = null;
+
+  /**
+   * Creates a new tokenizer.
+   *
+   * @param in the stream to tokenize.
+   * @param names the table to look names up in.
+   */
+  public XMLTokenizer(final InputStream in, final NameTable names) {
+    _in = in;
+    _names = names;
+  }
+
+  /**
+   * Creates a new tokenizer to be fed with input.
+   *
+   * @param names the table to look names up in.
+   */
+  public XMLTokenizer(final NameTable names) {
+    this(null, names);
+  }
+
+  /**
+   * Adds the remaining bytes of the given buffer to the input of a fed tokenizer.
+   *
+   * @param chunk the bytes to add; its position is advanced to its limit.
+   */
+  public void feed(final ByteBuffer chunk) {
+    if (_in != null || _eof) {
+      throw new IllegalStateException("The tokenizer does not accept more input.");
+    }
+    int length = chunk.remaining();
+    if (!_replayable && _bytePos > 0) {
+      System.arraycopy(_bytes, _bytePos, _bytes, 0, _byteLimit - _bytePos);
+      _byteLimit -= _bytePos;
+      _bytePos = 0;
+    }
+    if (_byteLimit + length > _bytes.length) {
+      byte[] bytes = new byte[Math.max(_bytes.length * 2, _byteLimit + length)];
+      System.arraycopy(_bytes, 0, bytes, 0, _byteLimit);
+      _bytes = bytes;
+    }
+    chunk.get(_bytes, _byteLimit, length);
+    _byteLimit += length;
+  }
+
+  /**
+   * Signals the end of the input of a fed tokenizer.
+   */
+  public void endOfInput() {
+    if (_in != null) {
+      throw new IllegalStateException("The tokenizer reads a stream.");
+    }
+    _eof = true;
+  }
+
+  /**
+   * Returns whether the last call to {@link #open()} or {@link #resume()} returned because a fed
+   * tokenizer ran out of input.
+   *
+   * @return true if more input is needed.
+   */
+  public boolean needsInput() {
+    return _needsInput;
+  }
+
+  /**
+   * Sets the system identifier reported by the locator.
+   *
+   * @param systemId the system identifier.
+   */
+  public void setSystemId(final String systemId) {
+    _systemId = systemId;
+  }
+
+  /**
+   * Sets the public identifier reported by the locator.
+   *
+   * @param publicId the public identifier.
+   */
+  public void setPublicId(final String publicId) {
+    _publicId = publicId;
+  }
+
+  /**
+   * Returns whether the given encoding name, as declared by an input source or XML declaration,
+   * can be tokenized.
+   *
+   * @param encoding the encoding name; may be null.
+   * @return true if the encoding is UTF-8 or US-ASCII, or not given.
+   */
+  public static boolean isSupportedEncoding(final String encoding) {
+    return encoding == null || "UTF-8".equalsIgnoreCase(encoding)
+        || "UTF8".equalsIgnoreCase(encoding) || "US-ASCII".equalsIgnoreCase(encoding)
+        || "ASCII".equalsIgnoreCase(encoding);
+  }
+
+  /**
+   * Reads the prolog of the document up to the root element, and returns whether the document can
+   * be tokenized. No events are reported before this method returns.
+   *
+   * @return true if {@link #parse} may be called, false if the document has to be parsed from
+   *         {@link #getReplayStream()} instead, or if a fed tokenizer {@link #needsInput()}.
+   * @throws IOException if the stream cannot be read.
+   */
+  public boolean open() throws IOException {
+    _needsInput = false;
+    try {
+      if (!readPrologue()) {
+        return false;
+      }
+    } catch (SAXException e) {
+      // -- malformed prologue, let the fallback parser report it
+      return false;
+    } catch (IOException e) {
+      if (e != SUSPEND) {
+        throw e;
+      }
+      _pos = _tokenStart;
+      _mark = -1;
+      _needsInput = true;
+      return false;
+    }
+    _replayable = false;
+    return true;
+  }
+
+  /**
+   * Returns a stream of the complete document, for parsing it with another parser after
+   * {@link #open()} returned false.
+   *
+   * @return the document.
+   */
+  public InputStream getReplayStream() {
+    if (!_replayable) {
+      throw new IllegalStateException("The document has been tokenized already.");
+    }
+    InputStream bytes = new ByteArrayInputStream(_bytes, 0, _byteLimit);
+    return _in == null ? bytes : new SequenceInputStream(bytes, _in);
+  }
+
+  /**
+   * Tokenizes the document, reporting it to the given handler. Must only be called after
+   * {@link #open()} returned true.
+   *
+   * @param handler the handler to report the document to.
+   * @throws IOException if the stream cannot be read.
+   * @throws SAXException if the document is not well-formed, or the handler fails.
+   */
+  public void parse(final ContentHandler handler) throws IOException, SAXException {
+    start(handler);
+    resume();
+  }
+
+  /**
+   * Starts reporting the document to the given handler. Must only be called after {@link #open()}
+   * returned true; the document is then tokenized by {@link #resume()}.
+   *
+   * @param handler the handler to report the document to.
+   * @throws SAXException if the handler fails.
+   */
+  public void start(final ContentHandler handler) throws SAXException {
+    if (_replayable) {
+      throw new IllegalStateException("open() has not accepted the document.");
+    }
+    _handler = handler;
+    handler.setDocumentLocator(this);
+    handler.startDocument();
+  }
+
+  /**
+   * Tokenizes the document as far as the input allows.
+   *
+   * @return true if the end of the document has been reached, false if a fed tokenizer
+   *         {@link #needsInput()}.
+   * @throws IOException if the stream cannot be read.
+   * @throws SAXException if the document is not well-formed, or the handler fails.
+   */
+  public boolean resume() throws IOException, SAXException {
+    if (_handler == null) {
+      throw new IllegalStateException("start() has not been called.");
+    }
+    _needsInput = false;
+    while (true) {
+      _tokenStart = _pos;
+      try {
+        if (_inCData) {
+          readCDataContent(_handler);
+          continue;
+        }
+        if (_pos == _limit && !fill()) {
+          break;
+        }
+        readToken(_handler);
+      } catch (IOException e) {
+        if (e != SUSPEND) {
+          throw e;
+        }
+        _pos = _tokenStart;
+        _mark = -1;
+        _needsInput = true;
+        return false;
+      }
+    }
+    if (_depth > 0) {
+      throw error("Element '" + _elements[_depth - 1] + "' is not closed.");
+    }
+    if (!_rootSeen) {
+      throw error("The document has no root element.");
+    }
+    _handler.endDocument();
+    return true;
+  }
+
+  /**
+   * Reads the markup or character data at the current position.
+   */
+  private void readToken(final ContentHandler handler) throws IOException, SAXException {
+    char c = _chars[_pos];
+    if (c == '<') {
+      ensure(2);
+      char next = _pos + 1 < _limit ? _chars[_pos + 1] : 0;
+      if (next == '/') {
+        readEndTag(handler);
+      } else if (next == '?') {
+        readProcessingInstruction(handler);
+      } else if (next == '!') {
+        if (startsWith("<!--")) {
+          skipComment();
+        } else if (_depth > 0 && startsWith("<![CDATA[")) {
+          _pos += 9;
+          _inCData = true;
+          _tokenStart = _pos;
+          readCDataContent(handler);
+        } else {
+          throw error("Markup declarations are not allowed here.");
+        }
+      } else {
+        if (_depth == 0 && _rootSeen) {
+          throw error("Only one root element is allowed.");
+        }
+        readStartTag(handler);
+        _rootSeen = true;
+      }
+    } else if (_depth > 0) {
+      readText(handler);
+    } else if (isWhitespace(c)) {
+      _pos++;
+    } else {
+      throw error("Content is not allowed outside of the root element.");
+    }
+  }
+
+  // -- prologue
+
+  /**
+   * Reads the byte order mark, XML declaration, comments and processing instructions preceding the
+   * root element.
+   */
+  private boolean readPrologue() throws IOException, SAXException {
+    if (!_bomChecked) {
+      while (_byteLimit < 4 && readBytes()) {
+        // -- read enough bytes to recognize a byte order mark
+      }
+      if (_byteLimit >= 3 && (_bytes[0] & 0xFF) == 0xEF && (_bytes[1] & 0xFF) == 0xBB
+          && (_bytes[2] & 0xFF) == 0xBF) {
+        _bytePos = 3;
+      } else if (_byteLimit >= 2 && (_bytes[0] == 0 || _bytes[1] == 0
+          || (_bytes[0] & 0xFF) == 0xFE || (_bytes[0] & 0xFF) == 0xFF)) {
+        // -- UTF-16 or UTF-32
+        return false;
+      }
+      _bomChecked = true;
+    }
+
+    if (!_declarationChecked) {
+      _tokenStart = _pos;
+      if (startsWith("<?xml") && ensure(6) && isWhitespace(_chars[_pos + 5])) {
+        if (!readXMLDeclaration()) {
+          return false;
+        }
+      }
+      _declarationChecked = true;
+    }
+    while (true) {
+      _tokenStart = _pos;
+      if (_pos == _limit && !fill()) {
+        return false;
+      }
+      char c = _chars[_pos];
+      if (isWhitespace(c)) {
+        _pos++;
+      } else if (c != '<') {
+        return false;
+      } else if (startsWith("<!--")) {
+        skipComment();
+      } else if (startsWith("<?")) {
+        readProcessingInstruction(null);
+      } else if (startsWith("<!")) {
+        // -- document type declaration
+        return false;
+      } else {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Reads the XML declaration and returns whether its version and encoding are supported.
+   */
+  private boolean readXMLDeclaration() throws IOException, SAXException {
+    _pos += 5;
+    StringBuilder declaration = new StringBuilder();
+    while (!startsWith("?>")) {
+      if (_pos == _limit && !fill()) {
+        throw error("The XML declaration is not closed.");
+      }
+      declaration.append(_chars[_pos++]);
+    }
+    _pos += 2;
+    String version = getPseudoAttribute(declaration, "version");
+    if (!"1.0".equals(version)) {
+      return false;
+    }
+    return isSupportedEncoding(getPseudoAttribute(declaration, "encoding"));
+  }
+
+  /**
+   * Returns the value of a pseudo-attribute of the XML declaration.
+   */
+  private static String getPseudoAttribute(final CharSequence declaration, final String name) {
+    String text = declaration.toString();
+    int index = text.indexOf(name);
+    while (index >= 0) {
+      int i = index + name.length();
+      while (i < text.length() && isWhitespace(text.charAt(i))) {
+        i++;
+      }
+      if (i < text.length() && text.charAt(i) == '=') {
+        i++;
+        while (i < text.length() && isWhitespace(text.charAt(i))) {
+          i++;
+        }
+        if (i < text.length() && (text.charAt(i) == '"' || text.charAt(i) == '\'')) {
+          int end = text.indexOf(text.charAt(i), i + 1);
+          if (end > i) {
+            return text.substring(i + 1, end);
+          }
+        }
+      }
+      index = text.indexOf(name, index + 1);
+    }
+    return null;
+  }
+
+  // -- markup
+
+  /**
+   * Reads a start tag or empty element tag and reports it.
+   */
+  private void readStartTag(final ContentHandler handler) throws IOException, SAXException {
+    _pos++;
+    String name = readName();
+    _attributes.clear();
+    boolean empty;
+    while (true) {
+      boolean whitespace = skipWhitespace();
+      char c = peek();
+      if (c == '>') {
+        _pos++;
+        empty = false;
+        break;
+      }
+      if (c == '/') {
+        _pos++;
+        expect('>');
+        empty = true;
+        break;
+      }
+      if (!whitespace) {
+        throw error("Whitespace is required between attributes of element '" + name + "'.");
+      }
+      String attName = readName();
+      skipWhitespace();
+      expect('=');
+      skipWhitespace();
+      char quote = peek();
+      if (quote != '"' && quote != '\'') {
+        throw error("The value of attribute '" + attName + "' must be quoted.");
+      }
+      _pos++;
+      if (_attributes.getIndex(attName) >= 0) {
+        throw error("Attribute '" + attName + "' is specified more than once.");
+      }
+      _attributes.addAttribute(attName);
+      readAttributeValue(quote);
+    }
+
+    handler.startElement("", "", name, _attributes);
+    if (empty) {
+      handler.endElement("", "", name);
+    } else {
+      if (_depth == _elements.length) {
+        String[] elements = new String[_depth * 2];
+        System.arraycopy(_elements, 0, elements, 0, _depth);
+        _elements = elements;
+      }
+      _elements[_depth++] = name;
+    }
+  }
+
+  /**
+   * Reads an end tag and reports it.
+   */
+  private void readEndTag(final ContentHandler handler) throws IOException, SAXException {
+    _pos += 2;
+    String name = readName();
+    skipWhitespace();
+    expect('>');
+    if (_depth == 0) {
+      throw error("Unexpected end tag '" + name + "'.");
+    }
+    String open = _elements[_depth - 1];
+    if (open != name && !open.equals(name)) {
+      throw error("Element '" + open + "' must be terminated by the end tag '</" + open + ">'.");
+    }
+    _elements[--_depth] = null;
+    handler.endElement("", "", name);
+  }
+
+  /**
+   * Reads the value of an attribute, expanding references and normalizing whitespace.
+   */
+  private void readAttributeValue(final char quote) throws IOException, SAXException {
+    while (true) {
+      if (_pos == _limit && !fill()) {
+        throw error("The attribute value is not closed.");
+      }
+      char[] chars = _chars;
+      int start = _pos;
+      int pos = start;
+      int limit = _limit;
+      char c = 0;
+      while (pos < limit) {
+        c = chars[pos];
+        if (c == quote || c == '&' || c == '<' || c == '\n' || c == '\t') {
+          break;
+        }
+        pos++;
+      }
+      _attributes.append(chars, start, pos - start);
+      _pos = pos;
+      if (pos == limit) {
+        continue;
+      }
+      if (c == quote) {
+        _pos++;
+        return;
+      } else if (c == '<') {
+        throw error("Attribute values must not contain '<'.");
+      } else if (c == '&') {
+        _attributes.appendCodePoint(readReference());
+      } else {
+        _pos++;
+        _attributes.append(' ');
+      }
+    }
+  }
+
+  /**
+   * Reads character data, reporting it without copying unless it contains references.
+   */
+  private void readText(final ContentHandler handler) throws IOException, SAXException {
+    while (true) {
+      if (_pos == _limit && !fill()) {
+        return;
+      }
+      char[] chars = _chars;
+      int start = _pos;
+      int pos = start;
+      int limit = _limit;
+      while (pos < limit && chars[pos] != '<' && chars[pos] != '&') {
+        pos++;
+      }
+      _pos = pos;
+      if (pos > start) {
+        handler.characters(chars, start, pos - start);
+        _tokenStart = pos;
+      }
+      if (pos == limit) {
+        continue;
+      }
+      if (chars[pos] == '<') {
+        return;
+      }
+      int length = Character.toChars(readReference(), _text, 0);
+      handler.characters(_text, 0, length);
+      _tokenStart = _pos;
+    }
+  }
+
+  /**
+   * Reads the content of a CDATA section up to and including its end, and reports it.
+   */
+  private void readCDataContent(final ContentHandler handler) throws IOException, SAXException {
+    int start = _pos;
+    while (true) {
+      if (_pos == _limit || (_chars[_pos] == ']' && _pos + 2 >= _limit)) {
+        if (_pos > start) {
+          handler.characters(_chars, start, _pos - start);
+          _tokenStart = _pos;
+        }
+        if (!ensure(3)) {
+          throw error("The CDATA section is not closed.");
+        }
+        start = _pos;
+      }
+      if (_chars[_pos] == ']' && _chars[_pos + 1] == ']' && _chars[_pos + 2] == '>') {
+        break;
+      }
+      _pos++;
+    }
+    if (_pos > start) {
+      handler.characters(_chars, start, _pos - start);
+    }
+    _pos += 3;
+    _inCData = false;
+  }
+
+  /**
+   * Skips a comment.
+   */
+  private void skipComment() throws IOException, SAXException {
+    _pos += 4;
+    while (true) {
+      if (_pos == _limit && !fill()) {
+        throw error("The comment is not closed.");
+      }
+      if (_chars[_pos] == '-') {
+        if (!ensure(3)) {
+          throw error("The comment is not closed.");
+        }
+        if (_chars[_pos + 1] == '-') {
+          if (_chars[_pos + 2] != '>') {
+            throw error("The string '--' is not permitted within comments.");
+          }
+          _pos += 3;
+          return;
+        }
+      }
+      _pos++;
+    }
+  }
+
+  /**
+   * Reads a processing instruction, and reports it if a handler is given.
+   */
+  private void readProcessingInstruction(final ContentHandler handler)
+      throws IOException, SAXException {
+    _pos += 2;
+    String target = readName();
+    if ("xml".equalsIgnoreCase(target)) {
+      throw error("The processing instruction target 'xml' is reserved.");
+    }
+    boolean whitespace = skipWhitespace();
+    StringBuilder data = new StringBuilder();
+    while (!startsWith("?>")) {
+      if (_pos == _limit && !fill()) {
+        throw error("The processing instruction is not closed.");
+      }
+      if (!whitespace) {
+        throw error("Whitespace is required after the processing instruction target.");
+      }
+      data.append(_chars[_pos++]);
+    }
+    _pos += 2;
+    if (handler != null) {
+      handler.processingInstruction(target, data.toString());
+    }
+  }
+
+  // -- lexical
+
+  /**
+   * Reads a name and returns its canonical instance from the name table.
+   */
+  private String readName() throws IOException, SAXException {
+    _mark = _pos;
+    int hash = 0;
+    scan: while (_pos < _limit || fill()) {
+      char[] chars = _chars;
+      int pos = _pos;
+      int limit = _limit;
+      while (pos < limit) {
+        char c = chars[pos];
+        if (c <= ' ' || c == '>' || c == '/' || c == '=' || c == '<' || c == '?' || c == '"'
+            || c == '\'' || c == '&' || c == ';') {
+          _pos = pos;
+          break scan;
+        }
+        hash = 31 * hash + c;
+        pos++;
+      }
+      _pos = pos;
+    }
+    int start = _mark;
+    _mark = -1;
+    int length = _pos - start;
+    if (length == 0) {
+      throw error("A name is expected.");
+    }
+    char first = _chars[start];
+    if (first == '-' || first == '.' || (first >= '0' && first <= '9')) {
+      throw error("Names must not start with '" + first + "'.");
+    }
+    return _names.get(_chars, start, length, hash);
+  }
+
+  /**
+   * Reads a character or entity reference and returns the code point it refers to.
+   */
+  private int readReference() throws IOException, SAXException {
+    _pos++;
+    _mark = _pos;
+    while (true) {
+      if (_pos == _limit && !fill()) {
+        throw error("The reference is not terminated by ';'.");
+      }
+      char c = _chars[_pos];
+      if (c == ';') {
+        break;
+      }
+      if (c <= ' ' || c == '<' || c == '&' || _pos - _mark > 10) {
+        throw error("The reference is not terminated by ';'.");
+      }
+      _pos++;
+    }
+    int start = _mark;
+    int length = _pos - start;
+    _mark = -1;
+    _pos++;
+    if (length > 1 && _chars[start] == '#') {
+      int radix = 10;
+      int offset = 1;
+      if (_chars[start + 1] == 'x') {
+        radix = 16;
+        offset = 2;
+      }
+      int codePoint = 0;
+      if (offset == length) {
+        throw error("Invalid character reference.");
+      }
+      for (int i = offset; i < length; i++) {
+        int digit = Character.digit(_chars[start + i], radix);
+        if (digit < 0 || codePoint > 0x10FFFF) {
+          throw error("Invalid character reference.");
+        }
+        codePoint = codePoint * radix + digit;
+      }
+      if (!isChar(codePoint)) {
+        throw error("Character reference '&#" + new String(_chars, start + 1, length - 1)
+            + ";' is an invalid XML character.");
+      }
+      return codePoint;
+    }
+    String name = new String(_chars, start, length);
+    switch (name) {
+      case "lt":
+        return '<';
+      case "gt":
+        return '>';
+      case "amp":
+        return '&';
+      case "apos":
+        return '\'';
+      case "quot":
+        return '"';
+      default:
+        throw error("The entity '" + name + "' was referenced, but not declared.");
+    }
+  }
+
+  private static boolean isChar(final int codePoint) {
+    return codePoint == 0x9 || codePoint == 0xA || codePoint == 0xD
+        || (codePoint >= 0x20 && codePoint <= 0xD7FF)
+        || (codePoint >= 0xE000 && codePoint <= 0xFFFD)
+        || (codePoint >= 0x10000 && codePoint <= 0x10FFFF);
+  }
+
+  private static boolean isWhitespace(final char c) {
+    return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+  }
+
+  private boolean skipWhitespace() throws IOException, SAXException {
+    boolean skipped = false;
+    while ((_pos < _limit || fill()) && isWhitespace(_chars[_pos])) {
+      _pos++;
+      skipped = true;
+    }
+    return skipped;
+  }
+
+  private char peek() throws IOException, SAXException {
+    if (_pos == _limit && !fill()) {
+      throw error("Unexpected end of document.");
+    }
+    return _chars[_pos];
+  }
+
+  private void expect(final char c) throws IOException, SAXException {
+    if (peek() != c) {
+      throw error("'" + c + "' is expected.");
+    }
+    _pos++;
+  }
+
+  private boolean startsWith(final String prefix) throws IOException, SAXException {
+    if (!ensure(prefix.length())) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (_chars[_pos + i] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // -- buffering
+
+  /**
+   * Makes at least the given number of characters available from the current position, unless
+   * the end of the document is reached first.
+   */
+  private boolean ensure(final int count) throws IOException, SAXException {
+    while (_limit - _pos < count) {
+      if (!fill()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decodes more characters, discarding those before the mark, or the current position if there
+   * is no mark.
+   *
+   * @return false if the end of the document has been reached.
+   */
+  private boolean fill() throws IOException, SAXException {
+    int keep = Math.min(_mark >= 0 ? _mark : _pos, _tokenStart);
+    if (keep > 0) {
+      countLines(keep);
+      System.arraycopy(_chars, keep, _chars, 0, _limit - keep);
+      _limit -= keep;
+      _pos -= keep;
+      if (_mark >= 0) {
+        _mark -= keep;
+      }
+      _tokenStart -= keep;
+      _lineScan -= keep;
+      _lineStart -= keep;
+    }
+    if (_chars.length - _limit < 2) {
+      char[] chars = new char[_chars.length * 2];
+      System.arraycopy(_chars, 0, chars, 0, _limit);
+      _chars = chars;
+    }
+    return decode() > 0;
+  }
+
+  /**
+   * Decodes UTF-8 bytes into the character buffer, normalizing line ends.
+   *
+   * @return the number of characters decoded, 0 at the end of the stream.
+   */
+  private int decode() throws IOException, SAXException {
+    while (true) {
+      if (_bytePos == _byteLimit && !readBytes()) {
+        return 0;
+      }
+      byte[] bytes = _bytes;
+      char[] chars = _chars;
+      int bytePos = _bytePos;
+      int byteLimit = _byteLimit;
+      int limit = _limit;
+      int charMax = chars.length - 1;
+      while (bytePos < byteLimit && limit < charMax) {
+        int b = bytes[bytePos];
+        if (b >= 0) {
+          bytePos++;
+          if (b == '\r') {
+            chars[limit++] = '\n';
+            _skipLineFeed = true;
+          } else if (b == '\n' && _skipLineFeed) {
+            _skipLineFeed = false;
+          } else {
+            _skipLineFeed = false;
+            chars[limit++] = (char) b;
+          }
+          continue;
+        }
+        _skipLineFeed = false;
+        int length;
+        int codePoint;
+        int min;
+        if ((b & 0xE0) == 0xC0) {
+          length = 2;
+          codePoint = b & 0x1F;
+          min = 0x80;
+        } else if ((b & 0xF0) == 0xE0) {
+          length = 3;
+          codePoint = b & 0x0F;
+          min = 0x800;
+        } else if ((b & 0xF8) == 0xF0) {
+          length = 4;
+          codePoint = b & 0x07;
+          min = 0x10000;
+        } else {
+          throw error("Invalid UTF-8 byte sequence.");
+        }
+        if (bytePos + length > byteLimit) {
+          break;
+        }
+        for (int i = 1; i < length; i++) {
+          int next = bytes[bytePos + i];
+          if ((next & 0xC0) != 0x80) {
+            throw error("Invalid UTF-8 byte sequence.");
+          }
+          codePoint = (codePoint << 6) | (next & 0x3F);
+        }
+        if (codePoint < min || codePoint > 0x10FFFF
+            || (codePoint >= 0xD800 && codePoint <= 0xDFFF)) {
+          throw error("Invalid UTF-8 byte sequence.");
+        }
+        bytePos += length;
+        if (codePoint < 0x10000) {
+          chars[limit++] = (char) codePoint;
+        } else {
+          chars[limit++] = Character.highSurrogate(codePoint);
+          chars[limit++] = Character.lowSurrogate(codePoint);
+        }
+      }
+      int count = limit - _limit;
+      _limit = limit;
+      _bytePos = bytePos;
+      if (count > 0) {
+        return count;
+      }
+      if (_bytePos == _byteLimit) {
+        // -- only a line feed following a carriage return was read
+        continue;
+      }
+      // -- an incomplete sequence at the end of the bytes read
+      if (!readBytes()) {
+        throw error("Invalid UTF-8 byte sequence at the end of the document.");
+      }
+    }
+  }
+
+  /**
+   * Reads more bytes from the stream, discarding the bytes decoded unless they are to be replayed.
+   *
+   * @return false if the end of the stream has been reached.
+   */
+  private boolean readBytes() throws IOException {
+    if (_eof) {
+      return false;
+    }
+    if (_in == null) {
+      throw SUSPEND;
+    }
+    if (!_replayable && _bytePos > 0) {
+      System.arraycopy(_bytes, _bytePos, _bytes, 0, _byteLimit - _bytePos);
+      _byteLimit -= _bytePos;
+      _bytePos = 0;
+    }
+    if (_byteLimit == _bytes.length) {
+      byte[] bytes = new byte[_bytes.length * 2];
+      System.arraycopy(_bytes, 0, bytes, 0, _byteLimit);
+      _bytes = bytes;
+    }
+    int read;
+    do {
+      read = _in.read(_bytes, _byteLimit, _bytes.length - _byteLimit);
+    } while (read == 0);
+    if (read < 0) {
+      _eof = true;
+      return false;
+    }
+    _byteLimit += read;
+    return true;
+  }
+
+  /**
+   * Counts the lines up to the given index.
+   */
+  private void countLines(final int index) {
+    for (int i = _lineScan; i < index; i++) {
+      if (_chars[i] == '\n') {
+        _line++;
+        _lineStart = i + 1;
+      }
+    }
+    if (index > _lineScan) {
+      _lineScan = index;
+    }
+  }
+
+  private SAXParseException error(final String message) {
+    return new SAXParseException(message, this);
+  }
+
+  // -- Locator
+
+  /**
+   * {@inheritDoc}
+   */
+  public String getPublicId() {
+    return _publicId;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public String getSystemId() {
+    return _systemId;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int getLineNumber() {
+    countLines(Math.min(_pos, _limit));
+    return _line;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int getColumnNumber() {
+    countLines(Math.min(_pos, _limit));
+    return _pos - _lineStart + 1;
+  }
+
+  /**
+   * The attributes of the current element, reused across elements. Values are kept as ranges of
+   * a shared character buffer and converted to Strings when asked for.
+   */
+  static final class TokenAttributes implements Attributes {
+
+    /** The qualified names of the attributes. */
+    private String[] _qNames = new String[8];
+
+    /** The start of each value in the value buffer. */
+    private int[] _starts = new int[8];
+
+    /** The values of the attributes, once converted to Strings. */
+    private String[] _values = new String[8];
+
+    /** The characters of the values. */
+    private char[] _chars = new char[256];
+
+    /** The number of characters used in the value buffer. */
+    private int _charCount = 0;
+
+    /** The number of attributes. */
+    private int _length = 0;
+
+    void clear() {
+      for (int i = 0; i < _length; i++) {
+        _values[i] = null;
+      }
+      _length = 0;
+      _charCount = 0;
+    }
+
+    void addAttribute(final String qName) {
+      if (_length == _qNames.length) {
+        String[] qNames = new String[_length * 2];
+        System.arraycopy(_qNames, 0, qNames, 0, _length);
+        _qNames = qNames;
+        int[] starts = new int[_length * 2];
+        System.arraycopy(_starts, 0, starts, 0, _length);
+        _starts = starts;
+        _values = new String[_length * 2];
+      }
+      _qNames[_length] = qName;
+      _starts[_length] = _charCount;
+      _length++;
+    }
+
+    void append(final char[] chars, final int offset, final int length) {
+      if (_charCount + length > _chars.length) {
+        char[] grown = new char[Math.max(_chars.length * 2, _charCount + length)];
+        System.arraycopy(_chars, 0, grown, 0, _charCount);
+        _chars = grown;
+      }
+      System.arraycopy(chars, offset, _chars, _charCount, length);
+      _charCount += length;
+    }
+
+    void append(final char c) {
+      if (_charCount == _chars.length) {
+        char[] chars = new char[_chars.length * 2];
+        System.arraycopy(_chars, 0, chars, 0, _charCount);
+        _chars = chars;
+      }
+      _chars[_charCount++] = c;
+    }
+
+    void appendCodePoint(final int codePoint) {
+      if (codePoint < 0x10000) {
+        append((char) codePoint);
+      } else {
+        append(Character.highSurrogate(codePoint));
+        append(Character.lowSurrogate(codePoint));
+      }
+    }
+
+    public int getLength() {
+      return _length;
+    }
+
+    public String getURI(final int index) {
+      return index >= 0 && index < _length ? "" : null;
+    }
+
+    public String getLocalName(final int index) {
+      return index >= 0 && index < _length ? "" : null;
+    }
+
+    public String getQName(final int index) {
+      return index >= 0 && index < _length ? _qNames[index] : null;
+    }
+
+    public String getType(final int index) {
+      return index >= 0 && index < _length ? "CDATA" : null;
+    }
+
+    public String getValue(final int index) {
+      if (index < 0 || index >= _length) {
+        return null;
+      }
+      if (_values[index] == null) {
+        int end = index + 1 < _length ? _starts[index + 1] : _charCount;
+        _values[index] = new String(_chars, _starts[index], end - _starts[index]);
+      }
+      return _values[index];
+    }
+
+    public int getIndex(final String uri, final String localName) {
+      if (uri != null && uri.length() > 0) {
+        return -1;
+      }
+      return getIndex(localName);
+    }
+
+    public int getIndex(final String qName) {
+      for (int i = 0; i < _length; i++) {
+        if (_qNames[i] == qName || _qNames[i].equals(qName)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    public String getType(final String uri, final String localName) {
+      return getType(getIndex(uri, localName));
+    }
+
+    public String getType(final String qName) {
+      return getType(getIndex(qName));
+    }
+
+    public String getValue(final String uri, final String localName) {
+      return getValue(getIndex(uri, localName));
+    }
+
+    public String getValue(final String qName) {
+      return getValue(getIndex(qName));
+    }
+  }
+}
@@ -0,0 +1,389 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml.util;
+
+import org.exolab.castor.xml.NodeType;
+import org.exolab.castor.xml.UnmarshalState;
+import org.exolab.castor.xml.ValidationException;
+import org.exolab.castor.xml.XMLFieldDescriptor;
+
+/**
+ * The ids, in a {@link SymbolTable}, of the names and namespace URIs of the field descriptors of a
+ * class descriptor. Element and attribute names arriving from a parser are resolved to a field
+ * descriptor by comparing their ids with these, rather than by comparing characters. A null
+ * namespace URI has the id of the empty string.
+ * <p>
+ * Element or attribute names are not indexed when the class descriptor may match names it cannot
+ * list: introspected descriptors, wildcard and container fields, and descriptors overriding the
+ * matching methods. Callers then match names with
+ * {@link XMLClassDescriptorImpl#getFieldDescriptor(String, String, NodeType)}.
+ * <p>
+ * Instances are immutable, and only valid for the descriptor arrays they were built from.
+ *
+ * @since 1.4.2
+ */
+public final class FieldNameIndex {
+
+  /** The class descriptor indexed. */
+  private final XMLClassDescriptorImpl _descriptor;
+
+  /** The symbol table holding the ids. */
+  private final SymbolTable _symbols;
+
+  /** The element descriptors the index was built from. */
+  private final XMLFieldDescriptor[] _elements;
+
+  /** The attribute descriptors the index was built from. */
+  private final XMLFieldDescriptor[] _attributes;
+
+  /** The number of sequence elements the index was built from. */
+  private final int _sequenceLength;
+
+  /** Whether the class descriptor was introspected when the index was built. */
+  private final boolean _introspected;
+
+  /**
+   * The element descriptors, once for each name they match, in declaration order; null if element
+   * names are not indexed.
+   */
+  private final XMLFieldDescriptor[] _elementMatches;
+
+  /** The ids of the names matched by the entries of {@link #_elementMatches}. */
+  private final int[] _elementNameIds;
+
+  /** The ids of the namespace URIs of the entries of {@link #_elementMatches}. */
+  private final int[] _elementNamespaceIds;
+
+  /**
+   * The attribute descriptors, once for each name they match, in declaration order; null if
+   * attribute names are not indexed.
+   */
+  private final XMLFieldDescriptor[] _attributeMatches;
+
+  /** The ids of the names matched by the entries of {@link #_attributeMatches}. */
+  private final int[] _attributeMatchIds;
+
+  /**
+   * The ids of the XML names of the attribute descriptors, in the order of
+   * {@link XMLClassDescriptorImpl#getAttributeDescriptors()}; null if attribute names are not
+   * indexed.
+   */
+  private final int[] _attributeNameIds;
+
+  /** The ids of the namespace URIs of the attribute descriptors. */
+  private final int[] _attributeNamespaceIds;
+
+  /**
+   * The ids of the XML names of the sequence elements, {@link SymbolTable#NO_ID} for wildcards and
+   * choices; null if the sequence order is not checked by id.
+   */
+  private final int[] _sequenceNameIds;
+
+  /**
+   * Creates the index of the given field descriptors of a class descriptor, adding their names to
+   * the symbol table.
+   *
+   * @param symbols the symbol table.
+   * @param descriptor the class descriptor.
+   * @param elements the element descriptors of the class descriptor.
+   * @param attributes the attribute descriptors of the class descriptor.
+   * @param sequence the sequence elements of the class descriptor.
+   */
+  FieldNameIndex(final SymbolTable symbols, final XMLClassDescriptorImpl descriptor,
+      final XMLFieldDescriptor[] elements, final XMLFieldDescriptor[] attributes,
+      final XMLFieldDescriptor[] sequence) {
+    _descriptor = descriptor;
+    _symbols = symbols;
+    _elements = elements;
+    _attributes = attributes;
+    _sequenceLength = sequence.length;
+    _introspected = descriptor.isIntrospected();
+
+    Class<?> type = descriptor.getClass();
+    boolean matchesOverridden = _introspected || overrides(type, XMLClassDescriptorImpl.class,
+        "getFieldDescriptor", String.class, String.class, NodeType.class);
+    boolean hasContainer = false;
+    for (XMLFieldDescriptor element : elements) {
+      if ((element != null) && element.isContainer()) {
+        hasContainer = true;
+      }
+    }
+
+    XMLFieldDescriptor[] elementMatches = null;
+    if (!matchesOverridden && !hasContainer) {
+      elementMatches = listMatches(elements);
+    }
+    _elementMatches = elementMatches;
+    _elementNameIds = matchIds(elementMatches);
+    _elementNamespaceIds = namespaceIds(elementMatches);
+
+    XMLFieldDescriptor[] attributeMatches = null;
+    if (!matchesOverridden && !hasContainer && !overrides(type, XMLClassDescriptorImpl.class,
+        "getAttributeDescriptors")) {
+      attributeMatches = listMatches(attributes);
+    }
+    _attributeMatches = attributeMatches;
+    _attributeMatchIds = matchIds(attributeMatches);
+    _attributeNameIds = (attributeMatches == null) ? null : xmlNameIds(attributes);
+    _attributeNamespaceIds = (attributeMatches == null) ? null : namespaceIds(attributes);
+
+    int[] sequenceNameIds = null;
+    if (!overrides(type, XMLClassDescriptorImpl.class,
+        "checkDescriptorForCorrectOrderWithinSequence", XMLFieldDescriptor.class,
+        UnmarshalState.class, String.class)) {
+      sequenceNameIds = new int[sequence.length];
+      for (int i = 0; i < sequence.length; i++) {
+        String name = sequence[i].getXMLName();
+        boolean choice = XMLClassDescriptorImpl.CHOICE_NAME.equals(name);
+        sequenceNameIds[i] = ((name == null) || choice) ? SymbolTable.NO_ID : symbols.getId(name);
+      }
+    }
+    _sequenceNameIds = sequenceNameIds;
+  }
+
+  /**
+   * Returns true if this index was built for the given symbol table and descriptor arrays.
+   *
+   * @param symbols the symbol table.
+   * @param elements the current element descriptors of the class descriptor.
+   * @param attributes the current attribute descriptors of the class descriptor.
+   * @param sequenceLength the current number of sequence elements of the class descriptor.
+   * @return true if the index is up to date.
+   */
+  boolean isFor(final SymbolTable symbols, final XMLFieldDescriptor[] elements,
+      final XMLFieldDescriptor[] attributes, final int sequenceLength) {
+    return (_symbols == symbols) && (_elements == elements) && (_attributes == attributes)
+        && (_sequenceLength == sequenceLength) && (_introspected == _descriptor.isIntrospected());
+  }
+
+  /**
+   * Returns true if element names are resolved by {@link #getElementDescriptor(int, int)}.
+   *
+   * @return true if element names are indexed.
+   */
+  public boolean hasElementNames() {
+    return _elementMatches != null;
+  }
+
+  /**
+   * Returns the element descriptor matching the given name, as
+   * {@link XMLClassDescriptorImpl#getFieldDescriptor(String, String, NodeType)} would for a name
+   * without location path. May only be called if {@link #hasElementNames()}.
+   *
+   * @param nameId the id of the element name.
+   * @param namespaceId the id of the namespace URI of the element, or
+   *        {@link SymbolTable#ANY_NAMESPACE} to match descriptors of any namespace.
+   * @return the matching element descriptor, or null if there is none.
+   */
+  public XMLFieldDescriptor getElementDescriptor(final int nameId, final int namespaceId) {
+    if (nameId == SymbolTable.NO_ID) {
+      return null;
+    }
+    int[] nameIds = _elementNameIds;
+    for (int i = 0; i < nameIds.length; i++) {
+      if ((nameIds[i] == nameId) && ((namespaceId == SymbolTable.ANY_NAMESPACE)
+          || (namespaceId == _elementNamespaceIds[i]))) {
+        return _elementMatches[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns true if attribute names are resolved by {@link #getAttributeDescriptor(int)} and the
+   * attribute descriptors have name ids, see {@link #getAttributeNameId(int)}.
+   *
+   * @return true if attribute names are indexed.
+   */
+  public boolean hasAttributeNames() {
+    return _attributeMatches != null;
+  }
+
+  /**
+   * Returns the attribute descriptor matching the given name, as
+   * {@link XMLClassDescriptorImpl#getFieldDescriptor(String, String, NodeType)} would. May only be
+   * called if {@link #hasAttributeNames()}.
+   *
+   * @param nameId the id of the attribute name.
+   * @return the matching attribute descriptor, or null if there is none.
+   */
+  public XMLFieldDescriptor getAttributeDescriptor(final int nameId) {
+    if (nameId == SymbolTable.NO_ID) {
+      return null;
+    }
+    int[] nameIds = _attributeMatchIds;
+    for (int i = 0; i < nameIds.length; i++) {
+      if (nameIds[i] == nameId) {
+        return _attributeMatches[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the number of attribute descriptors indexed.
+   *
+   * @return the number of attribute descriptors.
+   */
+  public int getAttributeCount() {
+    return _attributes.length;
+  }
+
+  /**
+   * Returns an attribute descriptor indexed, in the order of
+   * {@link XMLClassDescriptorImpl#getAttributeDescriptors()}.
+   *
+   * @param index the position of the descriptor.
+   * @return the attribute descriptor.
+   */
+  public XMLFieldDescriptor getAttribute(final int index) {
+    return _attributes[index];
+  }
+
+  /**
+   * Returns the id of the XML name of an attribute descriptor. May only be called if
+   * {@link #hasAttributeNames()}.
+   *
+   * @param index the position of the descriptor, see {@link #getAttribute(int)}.
+   * @return the id of the XML name, or {@link SymbolTable#NO_ID} if the descriptor has none.
+   */
+  public int getAttributeNameId(final int index) {
+    return _attributeNameIds[index];
+  }
+
+  /**
+   * Returns the id of the namespace URI of an attribute descriptor. May only be called if
+   * {@link #hasAttributeNames()}.
+   *
+   * @param index the position of the descriptor, see {@link #getAttribute(int)}.
+   * @return the id of the namespace URI.
+   */
+  public int getAttributeNamespaceId(final int index) {
+    return _attributeNamespaceIds[index];
+  }
+
+  /**
+   * Checks whether the given element descriptor is the one expected by the sequence of the class
+   * descriptor, comparing the id of the element name with the ids of the sequence element names.
+   *
+   * @param elementDescriptor the descriptor of the element.
+   * @param parentState the state of the object the element belongs to.
+   * @param xmlName the element name.
+   * @param nameId the id of the element name.
+   * @throws ValidationException if the element is out of order.
+   * @see XMLClassDescriptorImpl#checkDescriptorForCorrectOrderWithinSequence(XMLFieldDescriptor,
+   *      UnmarshalState, String)
+   */
+  public void checkDescriptorForCorrectOrderWithinSequence(
+      final XMLFieldDescriptor elementDescriptor, final UnmarshalState parentState,
+      final String xmlName, final int nameId) throws ValidationException {
+    if (_sequenceNameIds == null) {
+      _descriptor.checkDescriptorForCorrectOrderWithinSequence(elementDescriptor, parentState,
+          xmlName);
+    } else {
+      _descriptor.checkOrder(elementDescriptor, parentState, xmlName, _sequenceNameIds, nameId);
+    }
+  }
+
+  /**
+   * Returns the given descriptors once for each name they match, or null if one of them may match
+   * names it cannot list.
+   */
+  private static XMLFieldDescriptor[] listMatches(final XMLFieldDescriptor[] descriptors) {
+    int count = 0;
+    for (XMLFieldDescriptor descriptor : descriptors) {
+      if (descriptor == null) {
+        continue;
+      }
+      if (!(descriptor instanceof XMLFieldDescriptorImpl) || overrides(descriptor.getClass(),
+          XMLFieldDescriptorImpl.class, "matches", String.class)) {
+        return null;
+      }
+      String[] names = ((XMLFieldDescriptorImpl) descriptor).getMatchNames();
+      if (names == null) {
+        return null;
+      }
+      count += names.length;
+    }
+    XMLFieldDescriptor[] matches = new XMLFieldDescriptor[count];
+    int next = 0;
+    for (XMLFieldDescriptor descriptor : descriptors) {
+      if (descriptor != null) {
+        String[] names = ((XMLFieldDescriptorImpl) descriptor).getMatchNames();
+        for (int i = 0; i < names.length; i++) {
+          matches[next++] = descriptor;
+        }
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * Returns the ids of the names matched by the entries of a result of
+   * {@link #listMatches(XMLFieldDescriptor[])}.
+   */
+  private int[] matchIds(final XMLFieldDescriptor[] matches) {
+    if (matches == null) {
+      return null;
+    }
+    int[] ids = new int[matches.length];
+    int next = 0;
+    while (next < matches.length) {
+      for (String name : ((XMLFieldDescriptorImpl) matches[next]).getMatchNames()) {
+        ids[next++] = (name == null) ? SymbolTable.NO_ID : _symbols.getId(name);
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Returns the ids of the XML names of the given descriptors.
+   */
+  private int[] xmlNameIds(final XMLFieldDescriptor[] descriptors) {
+    int[] ids = new int[descriptors.length];
+    for (int i = 0; i < descriptors.length; i++) {
+      String name = (descriptors[i] == null) ? null : descriptors[i].getXMLName();
+      ids[i] = (name == null) ? SymbolTable.NO_ID : _symbols.getId(name);
+    }
+    return ids;
+  }
+
+  /**
+   * Returns the ids of the namespace URIs of the given descriptors.
+   */
+  private int[] namespaceIds(final XMLFieldDescriptor[] descriptors) {
+    if (descriptors == null) {
+      return null;
+    }
+    int[] ids = new int[descriptors.length];
+    for (int i = 0; i < descriptors.length; i++) {
+      String namespace = (descriptors[i] == null) ? null : descriptors[i].getNameSpaceURI();
+      ids[i] = _symbols.getId((namespace == null) ? "" : namespace);
+    }
+    return ids;
+  }
+
+  /**
+   * Returns true if the given class declares the method in place of the given base class.
+   */
+  private static boolean overrides(final Class<?> type, final Class<?> base, final String name,
+      final Class<?>... parameterTypes) {
+    if (type == base) {
+      return false;
+    }
+    try {
+      return type.getMethod(name, parameterTypes).getDeclaringClass() != base;
+    } catch (NoSuchMethodException except) {
+      return true;
+    }
+  }
+}
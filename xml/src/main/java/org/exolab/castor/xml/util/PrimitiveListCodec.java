@@ -0,0 +1,228 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml.util;
+
+import org.exolab.castor.mapping.loader.collection.ArrayBuilder;
+
+/**
+ * Parses and formats <code>xs:list</code> values of primitive numeric types directly between
+ * character data and primitive arrays, without boxing each item or splitting the text into a
+ * list of strings first.
+ * 
+ * @since 1.4.2
+ */
+public final class PrimitiveListCodec {
+
+  /**
+   * Hidden constructor.
+   */
+  private PrimitiveListCodec() {
+    // nothing to do
+  }
+
+  /**
+   * Indicates whether lists of the given component type are handled by this class.
+   * 
+   * @param componentType the component type of the list.
+   * @return true if lists of the given type can be parsed and formatted.
+   */
+  public static boolean isSupported(final Class<?> componentType) {
+    return componentType == Integer.TYPE || componentType == Long.TYPE
+        || componentType == Short.TYPE || componentType == Double.TYPE
+        || componentType == Float.TYPE;
+  }
+
+  /**
+   * Parses the whitespace separated items of the given text, appending them to the given builder.
+   * 
+   * @param chars the text to parse.
+   * @param values the builder to append to; its component type must be supported.
+   * @throws NumberFormatException if an item is not a valid value of the component type.
+   */
+  public static void parse(final CharSequence chars, final ArrayBuilder values) {
+    if (!isSupported(values.getComponentType())) {
+      throw new IllegalArgumentException(
+          "Unsupported component type: " + values.getComponentType());
+    }
+    int length = chars.length();
+    int index = 0;
+    while (index < length) {
+      while (index < length && isWhitespace(chars.charAt(index))) {
+        index++;
+      }
+      if (index == length) {
+        break;
+      }
+      int start = index;
+      while (index < length && !isWhitespace(chars.charAt(index))) {
+        index++;
+      }
+      parseItem(chars, start, index, values);
+    }
+  }
+
+  /**
+   * Formats the items of the given primitive array, separated by a single space, the same way
+   * their boxed values would be formatted.
+   * 
+   * @param array the array to format; its component type must be supported.
+   * @param buffer the buffer to append to.
+   */
+  public static void format(final Object array, final StringBuilder buffer) {
+    if (array instanceof int[]) {
+      int[] values = (int[]) array;
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0) {
+          buffer.append(' ');
+        }
+        buffer.append(values[i]);
+      }
+    } else if (array instanceof long[]) {
+      long[] values = (long[]) array;
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0) {
+          buffer.append(' ');
+        }
+        buffer.append(values[i]);
+      }
+    } else if (array instanceof short[]) {
+      short[] values = (short[]) array;
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0) {
+          buffer.append(' ');
+        }
+        buffer.append(values[i]);
+      }
+    } else if (array instanceof double[]) {
+      double[] values = (double[]) array;
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0) {
+          buffer.append(' ');
+        }
+        buffer.append(values[i]);
+      }
+    } else if (array instanceof float[]) {
+      float[] values = (float[]) array;
+      for (int i = 0; i < values.length; i++) {
+        if (i > 0) {
+          buffer.append(' ');
+        }
+        buffer.append(values[i]);
+      }
+    } else {
+      throw new IllegalArgumentException("Unsupported array type: " + array.getClass().getName());
+    }
+  }
+
+  /**
+   * Parses a single item and appends it to the builder.
+   * 
+   * @param chars the text being parsed.
+   * @param start the index of the first character of the item.
+   * @param end the index after the last character of the item.
+   * @param values the builder to append to.
+   */
+  private static void parseItem(final CharSequence chars, final int start, final int end,
+      final ArrayBuilder values) {
+    if (values instanceof ArrayBuilder.OfInt) {
+      ((ArrayBuilder.OfInt) values)
+          .addInt((int) parseLong(chars, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE));
+    } else if (values instanceof ArrayBuilder.OfLong) {
+      ((ArrayBuilder.OfLong) values)
+          .addLong(parseLong(chars, start, end, Long.MIN_VALUE, Long.MAX_VALUE));
+    } else if (values instanceof ArrayBuilder.OfShort) {
+      ((ArrayBuilder.OfShort) values)
+          .addShort((short) parseLong(chars, start, end, Short.MIN_VALUE, Short.MAX_VALUE));
+    } else if (values instanceof ArrayBuilder.OfDouble) {
+      String item = chars.subSequence(start, end).toString();
+      double value;
+      if (item.equals("INF") || item.equals("Infinity")) {
+        value = Double.POSITIVE_INFINITY;
+      } else if (item.equals("-INF") || item.equals("-Infinity")) {
+        value = Double.NEGATIVE_INFINITY;
+      } else {
+        value = Double.parseDouble(item);
+      }
+      ((ArrayBuilder.OfDouble) values).addDouble(value);
+    } else {
+      ((ArrayBuilder.OfFloat) values)
+          .addFloat(Float.parseFloat(chars.subSequence(start, end).toString()));
+    }
+  }
+
+  /**
+   * Parses a signed decimal integer in the given range, accepting the same input as
+   * {@link Long#parseLong(String)}.
+   * 
+   * @param chars the text being parsed.
+   * @param start the index of the first character of the integer.
+   * @param end the index after the last character of the integer.
+   * @param min the smallest value allowed.
+   * @param max the largest value allowed.
+   * @return the value parsed.
+   * @throws NumberFormatException if the text is not an integer in the range.
+   */
+  private static long parseLong(final CharSequence chars, final int start, final int end,
+      final long min, final long max) {
+    int index = start;
+    boolean negative = false;
+    char first = chars.charAt(index);
+    if (first == '-' || first == '+') {
+      negative = (first == '-');
+      index++;
+      if (index == end) {
+        throw invalidItem(chars, start, end);
+      }
+    }
+    // -- accumulate negatively, as the negative range is the larger one
+    long limit = negative ? min : -max;
+    long multiplicationLimit = limit / 10;
+    long result = 0;
+    for (; index < end; index++) {
+      int digit = Character.digit(chars.charAt(index), 10);
+      if (digit < 0 || result < multiplicationLimit) {
+        throw invalidItem(chars, start, end);
+      }
+      result *= 10;
+      if (result < limit + digit) {
+        throw invalidItem(chars, start, end);
+      }
+      result -= digit;
+    }
+    return negative ? result : -result;
+  }
+
+  /**
+   * Creates the exception reported for an item that cannot be parsed.
+   * 
+   * @param chars the text being parsed.
+   * @param start the index of the first character of the item.
+   * @param end the index after the last character of the item.
+   * @return the exception to throw.
+   */
+  private static NumberFormatException invalidItem(final CharSequence chars, final int start,
+      final int end) {
+    return new NumberFormatException(
+        "For input string: \"" + chars.subSequence(start, end) + "\"");
+  }
+
+  /**
+   * Indicates whether the given character separates list items, using the same characters as
+   * {@link java.util.StringTokenizer} does by default.
+   * 
+   * @param ch the character to check.
+   * @return true if the character is whitespace.
+   */
+  private static boolean isWhitespace(final char ch) {
+    return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r' || ch == '\f';
+  }
+}
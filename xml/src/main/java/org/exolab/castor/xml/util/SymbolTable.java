@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.exolab.castor.xml.XMLClassDescriptor;
+
+/**
+ * Assigns an integer id to each element name, attribute name and namespace URI of the class
+ * descriptors matched in a context, so that names arriving from a parser are resolved to a field
+ * descriptor by comparing ids rather than characters. The ids of a descriptor's names are assigned
+ * when names are first matched against it, see {@link #getIndex(XMLClassDescriptor)}; resolving
+ * or caching a descriptor does not touch the table.
+ * <p>
+ * Names arriving from a parser are looked up only, never added, so the table is bounded by the
+ * names of the descriptors. Instances are thread-safe.
+ *
+ * @since 1.4.2
+ */
+public class SymbolTable {
+
+  /** The id returned for names not in the table. */
+  public static final int NO_ID = -1;
+
+  /** The namespace id matching element descriptors of any namespace. */
+  public static final int ANY_NAMESPACE = -2;
+
+  /** The id of each name. */
+  private final ConcurrentMap<String, Integer> _ids = new ConcurrentHashMap<String, Integer>();
+
+  /** The id given to the next name added. */
+  private final AtomicInteger _nextId = new AtomicInteger();
+
+  /**
+   * Returns the id of the given name, adding the name if it is not yet known.
+   *
+   * @param name the name.
+   * @return the id of the name.
+   */
+  public int getId(final String name) {
+    Integer id = _ids.get(name);
+    if (id == null) {
+      Integer newId = Integer.valueOf(_nextId.getAndIncrement());
+      id = _ids.putIfAbsent(name, newId);
+      if (id == null) {
+        id = newId;
+      }
+    }
+    return id.intValue();
+  }
+
+  /**
+   * Returns the id of the given name, or {@link #NO_ID} if the name is not known. Unknown names are
+   * not added.
+   *
+   * @param name the name, or null.
+   * @return the id of the name, or {@link #NO_ID}.
+   */
+  public int lookupId(final String name) {
+    if (name == null) {
+      return NO_ID;
+    }
+    Integer id = _ids.get(name);
+    return (id == null) ? NO_ID : id.intValue();
+  }
+
+  /**
+   * Returns the id of the given namespace URI, or {@link #NO_ID} if the namespace URI is not known.
+   * A null namespace URI has the id of the empty string.
+   *
+   * @param namespace the namespace URI, or null.
+   * @return the id of the namespace URI, or {@link #NO_ID}.
+   */
+  public int lookupNamespaceId(final String namespace) {
+    return lookupId((namespace == null) ? "" : namespace);
+  }
+
+  /**
+   * Returns the ids of the names of the field descriptors of the given class descriptor, adding
+   * the names to this table the first time.
+   *
+   * @param descriptor the class descriptor.
+   * @return the ids of the field names, or null if the class descriptor does not provide them.
+   */
+  public FieldNameIndex getIndex(final XMLClassDescriptor descriptor) {
+    if (!(descriptor instanceof XMLClassDescriptorImpl)) {
+      return null;
+    }
+    return ((XMLClassDescriptorImpl) descriptor).getNameIndex(this);
+  }
+
+  /**
+   * Returns the number of names held.
+   *
+   * @return the number of names.
+   */
+  public int size() {
+    return _ids.size();
+  }
+}
@@ -95,6 +95,9 @@ public class XMLClassDescriptorImpl extends Validator implements XMLClassDescrip
 
   private static final String WILDCARD = "*";
 
+  /** The XML name of the sequence element standing for a choice. */
+  static final String CHOICE_NAME = "-error-if-this-is-used-";
+
   /** The set of attribute descriptors. */
   private XMLFieldDescriptors _attributes = null;
 
@@ -119,6 +122,12 @@ public class XMLClassDescriptorImpl extends Validator implements XMLClassDescrip
   /** Cached element descriptors for improved performance. */
   private XMLFieldDescriptor[] _elemArray = null;
 
+  /**
+   * The ids of the field names, built for the symbol table that last matched names against this
+   * descriptor.
+   */
+  private volatile FieldNameIndex _nameIndex = null;
+
   /** The namespace prefix that is to be used when marshalling. */
   private String _nsPrefix = null;
 
@@ -281,6 +290,25 @@ public class XMLClassDescriptorImpl extends Validator implements XMLClassDescrip
   public void checkDescriptorForCorrectOrderWithinSequence(
       final XMLFieldDescriptor elementDescriptor, UnmarshalState parentState, String xmlName)
       throws ValidationException {
+    checkOrder(elementDescriptor, parentState, xmlName, null, SymbolTable.NO_ID);
+  }
+
+  /**
+   * Checks whether the given XMLFieldDescriptor is the one actually expected, given the natural
+   * order as defined by a sequence definition. Element names are compared by id if the ids of the
+   * names of the sequence elements are given.
+   * 
+   * @param elementDescriptor The XML field descriptor to be checked
+   * @param parentState The state of the object the element belongs to
+   * @param xmlName The element name
+   * @param sequenceNameIds The ids of the names of the sequence elements, see
+   *        {@link FieldNameIndex}, or null to compare names by characters
+   * @param nameId The id of the element name
+   * @throws ValidationException If the descriptor is not the one expected
+   */
+  void checkOrder(final XMLFieldDescriptor elementDescriptor, final UnmarshalState parentState,
+      final String xmlName, final int[] sequenceNameIds, final int nameId)
+      throws ValidationException {
     if (_compositor == SEQUENCE && !_sequenceOfElements.isEmpty()) {
 
       if (parentState.getExpectedIndex() == _sequenceOfElements.size()) {
@@ -295,11 +323,17 @@ public class XMLClassDescriptorImpl extends Validator implements XMLClassDescrip
       String expectedElementName = expectedElementDescriptor.getXMLName();
       String elementName = xmlName;
 
-      boolean anyNode = expectedElementDescriptor.getFieldName().equals("_anyObject")
+      // -- an id is known for all names but those of wildcards and choices
+      int expectedNameId = (sequenceNameIds == null) ? SymbolTable.NO_ID
+          : sequenceNameIds[parentState.getExpectedIndex()];
+
+      boolean anyNode = (expectedNameId == SymbolTable.NO_ID)
+          && expectedElementDescriptor.getFieldName().equals("_anyObject")
           && expectedElementName == null;
 
       // choices
-      if (!anyNode && expectedElementDescriptor.getXMLName().equals("-error-if-this-is-used-")) {
+      if (!anyNode && (expectedNameId == SymbolTable.NO_ID)
+          && expectedElementName.equals(CHOICE_NAME)) {
 
         // find possible names
         List<String> possibleNames = new ArrayList<String>();
@@ -309,7 +343,7 @@ public class XMLClassDescriptorImpl extends Validator implements XMLClassDescrip
         if (!possibleNames.contains(elementName)) {
           if (!expectedElementDescriptor.isRequired()) {
             parentState.setExpectedIndex(parentState.getExpectedIndex() + 1);
-            checkDescriptorForCorrectOrderWithinSequence(elementDescriptor, parentState, xmlName);
+            checkOrder(elementDescriptor, parentState, xmlName, sequenceNameIds, nameId);
           } else {
             throw new ValidationException("Element with name " + elementName + " passed to type "
                 + getXMLName()
@@ -326,7 +360,9 @@ public class XMLClassDescriptorImpl extends Validator implements XMLClassDescrip
         parentState.setWithinMultivaluedElement(true);
       }
 
-      if (!anyNode && !(expectedElementName).equals(elementName)) {
+      boolean expected = (expectedNameId != SymbolTable.NO_ID) ? (expectedNameId == nameId)
+          : expectedElementName.equals(elementName);
+      if (!anyNode && !expected) {
 
         // handle substitution groups !!!
         List<String> substitutes = expectedElementDescriptor.getSubstitutes();
@@ -342,7 +378,7 @@ public class XMLClassDescriptorImpl extends Validator implements XMLClassDescrip
         if (expectedElementDescriptor.isMultivalued()) {
           parentState.setWithinMultivaluedElement(false);
           parentState.setExpectedIndex(parentState.getExpectedIndex() + 1);
-          checkDescriptorForCorrectOrderWithinSequence(elementDescriptor, parentState, xmlName);
+          checkOrder(elementDescriptor, parentState, xmlName, sequenceNameIds, nameId);
           return;
         }
         // handle required fields
@@ -354,7 +390,7 @@ public class XMLClassDescriptorImpl extends Validator implements XMLClassDescrip
 
         // non required field, proceed until next required field
         parentState.setExpectedIndex(parentState.getExpectedIndex() + 1);
-        checkDescriptorForCorrectOrderWithinSequence(elementDescriptor, parentState, xmlName);
+        checkOrder(elementDescriptor, parentState, xmlName, sequenceNameIds, nameId);
         return;
 
       }
@@ -374,7 +410,7 @@ public class XMLClassDescriptorImpl extends Validator implements XMLClassDescrip
     }
     for (XMLFieldDescriptor fieldDescriptor : descriptors) {
       if ("_items".equals(fieldDescriptor.getFieldName())
-          || "-error-if-this-is-used-".equals(fieldDescriptor.getXMLName())) {
+          || CHOICE_NAME.equals(fieldDescriptor.getXMLName())) {
         fillPossibleNames(possibleNames, fieldDescriptor);
       } else {
         possibleNames.add(fieldDescriptor.getXMLName());
@@ -1333,6 +1369,17 @@ public class XMLClassDescriptorImpl extends Validator implements XMLClassDescrip
     this._introspected = introspected;
   } // -- setIntrospected
 
+  /**
+   * Returns true if this XMLClassDescriptorImpl was created via introspection, either at runtime
+   * or at build time by the {@link org.exolab.castor.tools.DescriptorGenerator}.
+   *
+   * @return true if this XMLClassDescriptor was created via introspection
+   * @since 1.4.2
+   */
+  public boolean isIntrospected() {
+    return _introspected;
+  } // -- isIntrospected
+
   // protected String toXMLName(String className) {
   // //-- create default XML name
   // String name = className;
@@ -1400,6 +1447,26 @@ public class XMLClassDescriptorImpl extends Validator implements XMLClassDescrip
     return descriptors;
   }
 
+  /**
+   * Returns the ids of the names of the field descriptors of this descriptor in the given symbol
+   * table, building them if the field descriptors changed since they were last built.
+   *
+   * @param symbols the symbol table of the context names are matched in.
+   * @return the ids of the field names.
+   */
+  FieldNameIndex getNameIndex(final SymbolTable symbols) {
+    XMLFieldDescriptor[] elements = getElementArray();
+    XMLFieldDescriptor[] attributes = getAttributeArray();
+    FieldNameIndex index = _nameIndex;
+    if ((index == null)
+        || !index.isFor(symbols, elements, attributes, _sequenceOfElements.size())) {
+      index = new FieldNameIndex(symbols, this, elements, attributes,
+          _sequenceOfElements.toArray(new XMLFieldDescriptor[0]));
+      _nameIndex = index;
+    }
+    return index;
+  }
+
   private XMLFieldDescriptor[] getElementArray() {
     // -- create local reference to prevent possible
     // -- null pointer (_elemArray could be re-set to null)
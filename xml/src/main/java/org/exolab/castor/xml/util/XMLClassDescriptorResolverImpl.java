@@ -43,6 +43,10 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.logging.Log;
@@ -54,6 +58,7 @@ import org.exolab.castor.xml.Introspector;
 import org.exolab.castor.xml.ResolverException;
 import org.exolab.castor.xml.XMLClassDescriptor;
 import org.exolab.castor.xml.XMLClassDescriptorResolver;
+import org.exolab.castor.xml.XMLMappingLoader;
 import org.exolab.castor.xml.util.resolvers.ResolveHelpers;
 
 /**
@@ -68,6 +73,10 @@ public class XMLClassDescriptorResolverImpl implements XMLClassDescriptorResolve
    */
   private static final Log LOG = LogFactory.getLog(XMLClassDescriptorResolverImpl.class);
 
+  /**
+   * Counts the changes to the descriptors this resolver knows, see {@link #getGeneration()}.
+   */
+  private final AtomicLong _generation = new AtomicLong();
   /**
    * All resolved descriptors are kept here.
    */
@@ -76,6 +85,15 @@ public class XMLClassDescriptorResolverImpl implements XMLClassDescriptorResolve
    * The MappingLoader instance to read descriptors from.
    */
   private MappingLoader _mappingLoader;
+  /**
+   * Mapping loaders creating their descriptors on first use, in the order they have been set.
+   */
+  private final List<XMLMappingLoader> _lazyMappingLoaders =
+      new CopyOnWriteArrayList<XMLMappingLoader>();
+  /**
+   * XML names of mapped classes whose descriptors have not been added to the cache yet.
+   */
+  private final Set<String> _lazyXMLNames = ConcurrentHashMap.newKeySet();
   /**
    * The domain class loader to use.
    */
@@ -105,7 +123,18 @@ public class XMLClassDescriptorResolverImpl implements XMLClassDescriptorResolve
    */
   public XMLClassDescriptorResolverImpl() {
     super();
-    _descriptorCache = new DescriptorCacheImpl();
+    _descriptorCache = new DescriptorCacheImpl(_generation);
+  }
+
+  /**
+   * Returns the generation of the descriptors this resolver knows. It changes whenever a
+   * descriptor is added, be it explicitly or when it is first asked for, and whenever descriptors
+   * are dropped, so that lookups made through this resolver can be cached until it changes.
+   *
+   * @return the generation of the descriptors
+   */
+  public long getGeneration() {
+    return _generation.get();
   }
 
   /**
@@ -154,12 +183,19 @@ public class XMLClassDescriptorResolverImpl implements XMLClassDescriptorResolve
    */
   public void setMappingLoader(final MappingLoader mappingLoader) {
     _mappingLoader = mappingLoader;
-    if (mappingLoader != null) {
+    if ((mappingLoader instanceof XMLMappingLoader)
+        && ((XMLMappingLoader) mappingLoader).isLazyDescriptors()) {
+      // -- descriptors are added to the cache once they are asked for
+      XMLMappingLoader xmlMappingLoader = (XMLMappingLoader) mappingLoader;
+      _lazyMappingLoaders.add(xmlMappingLoader);
+      _lazyXMLNames.addAll(xmlMappingLoader.getXMLNames());
+    } else if (mappingLoader != null) {
       for (ClassDescriptor classDescriptor : mappingLoader.getDescriptors()) {
         _descriptorCache.addDescriptor(classDescriptor.getJavaClass().getName(),
             (XMLClassDescriptor) classDescriptor);
       }
     }
+    _generation.incrementAndGet();
   }
 
   /**
@@ -272,6 +308,11 @@ public class XMLClassDescriptorResolverImpl implements XMLClassDescriptorResolve
       return _descriptorCache.getDescriptor(className);
     }
 
+    XMLClassDescriptor descriptor = resolveLazyMapped(className);
+    if (descriptor != null) {
+      return descriptor;
+    }
+
     ClassLoader l = loader;
     if (l == null) {
       l = _classLoader;
@@ -284,6 +325,65 @@ public class XMLClassDescriptorResolverImpl implements XMLClassDescriptorResolve
     return (XMLClassDescriptor) getResolverStrategy().resolveClass(_descriptorCache, className);
   } // -- resolve(String, ClassLoader)
 
+  /**
+   * {@inheritDoc}
+   */
+  public XMLClassDescriptor resolveKnown(final String className) {
+    if (className == null || className.length() == 0
+        || _descriptorCache.isMissingDescriptor(className)) {
+      return null;
+    }
+    XMLClassDescriptor descriptor = _descriptorCache.getDescriptor(className);
+    if (descriptor != null) {
+      return descriptor;
+    }
+    return resolveLazyMapped(className);
+  } // -- resolveKnown
+
+  /**
+   * Looks for the descriptor of the given class in the mapping loaders creating their descriptors
+   * on first use, the most recently set first, and adds the descriptor found to the cache.
+   * 
+   * @param className The name of the class to look for.
+   * @return The descriptor of the class or <code>null</code> if none of these loaders maps it.
+   */
+  private XMLClassDescriptor resolveLazyMapped(final String className) {
+    for (int i = _lazyMappingLoaders.size() - 1; i >= 0; i--) {
+      XMLClassDescriptor descriptor =
+          (XMLClassDescriptor) _lazyMappingLoaders.get(i).getDescriptor(className);
+      if (descriptor != null) {
+        _descriptorCache.addDescriptor(className, descriptor);
+        return descriptor;
+      }
+    }
+    return null;
+  } // -- resolveLazyMapped
+
+  /**
+   * Adds the descriptors of all mapped classes with the given XML name to the cache, if that has
+   * not happened yet, creating them where needed.
+   * 
+   * @param xmlName The XML name to add the descriptors of.
+   */
+  private void addLazyMapped(final String xmlName) {
+    if (!_lazyXMLNames.contains(xmlName)) {
+      return;
+    }
+    synchronized (_lazyXMLNames) {
+      if (!_lazyXMLNames.contains(xmlName)) {
+        return;
+      }
+      for (XMLMappingLoader mappingLoader : _lazyMappingLoaders) {
+        for (ClassDescriptor classDescriptor : mappingLoader.getDescriptorsByXMLName(xmlName)) {
+          _descriptorCache.addDescriptor(classDescriptor.getJavaClass().getName(),
+              (XMLClassDescriptor) classDescriptor);
+        }
+      }
+      // -- removed only now, so that concurrent lookups find the descriptors in the cache
+      _lazyXMLNames.remove(xmlName);
+    }
+  } // -- addLazyMapped
+
   /**
    * {@inheritDoc}
    */
@@ -296,6 +396,8 @@ public class XMLClassDescriptorResolverImpl implements XMLClassDescriptorResolve
       throw new IllegalArgumentException(message);
     }
 
+    addLazyMapped(xmlName);
+
     // @TODO Joachim 2007-05-05 the class loader is NOT used!
     // get a list of all descriptors with the correct xmlName, regardless of their namespace
     List<ClassDescriptor> possibleMatches = _descriptorCache.getDescriptors(xmlName);
@@ -335,6 +437,8 @@ public class XMLClassDescriptorResolverImpl implements XMLClassDescriptorResolve
       throw new IllegalArgumentException(message);
     }
 
+    addLazyMapped(xmlName);
+
     // get all descriptors with the matching xml name
     return _descriptorCache.getDescriptors(xmlName).iterator();
   } // -- resolveAllByXMLName
@@ -396,6 +500,18 @@ public class XMLClassDescriptorResolverImpl implements XMLClassDescriptorResolve
     }
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  public List<ClassDescriptor> getPackageDescriptors(final String packageName) {
+    if (packageName == null) {
+      String message = "Cannot list the descriptors of a null package name.";
+      LOG.warn(message);
+      throw new IllegalArgumentException(message);
+    }
+    return _descriptorCache.getPackageDescriptors(packageName);
+  }
+
   /**
    * {@inheritDoc}
    * 
@@ -449,16 +565,22 @@ public class XMLClassDescriptorResolverImpl implements XMLClassDescriptorResolve
     /** Lock used to isolate write accesses to the caches internal lists and maps. */
     private final ReentrantReadWriteLock _lock;
 
+    /** The generation of the resolver, advanced whenever a descriptor is added. */
+    private final AtomicLong _generation;
+
     /**
      * Default constructor.<br>
      * <br>
      * Initializes all lists and maps.
+     * 
+     * @param generation The generation of the resolver, advanced whenever a descriptor is added.
      */
-    public DescriptorCacheImpl() {
+    public DescriptorCacheImpl(final AtomicLong generation) {
       super();
 
       LOG2.debug("New instance!");
 
+      _generation = generation;
       _typeMap = new HashMap<String, ClassDescriptor>();
       _xmlNameMap = new HashMap<String, List<ClassDescriptor>>();
       _missingTypes = new ArrayList<String>();
@@ -503,7 +625,11 @@ public class XMLClassDescriptorResolverImpl implements XMLClassDescriptorResolve
         if (LOG2.isDebugEnabled()) {
           LOG2.debug("Adding descriptor class for: " + className + " descriptor: " + descriptor);
         }
-        _typeMap.put(className, descriptor);
+        if (_typeMap.put(className, descriptor) != descriptor) {
+          // -- advanced while the lock is held, so that the descriptor is visible to any
+          // -- reader of the new generation
+          _generation.incrementAndGet();
+        }
 
         String xmlName = descriptor.getXMLName();
         // ignore descriptors with an empty XMLName
@@ -615,6 +741,32 @@ public class XMLClassDescriptorResolverImpl implements XMLClassDescriptorResolve
       }
     } // -- isMissingDescriptor
 
+    /**
+     * Gets the descriptors mapped to the classes of the given package.
+     * 
+     * @param packageName The package name, or the empty string for the default package.
+     * @return The descriptors of the classes of the package; an empty list if there are none.
+     */
+    public List<ClassDescriptor> getPackageDescriptors(final String packageName) {
+      List<ClassDescriptor> descriptors = new ArrayList<ClassDescriptor>();
+
+      // acquire read lock which is released via finally block
+      _lock.readLock().lock();
+      try {
+        for (Map.Entry<String, ClassDescriptor> entry : _typeMap.entrySet()) {
+          String className = entry.getKey();
+          int idx = className.lastIndexOf('.');
+          String classPackage = (idx < 0) ? "" : className.substring(0, idx);
+          if (classPackage.equals(packageName)) {
+            descriptors.add(entry.getValue());
+          }
+        }
+      } finally {
+        _lock.readLock().unlock();
+      }
+      return descriptors;
+    } // -- getPackageDescriptors
+
     /**
      * To add not only a single descriptor but a map of descriptors at once.
      * 
@@ -639,6 +791,10 @@ public class XMLClassDescriptorResolverImpl implements XMLClassDescriptorResolve
    * @see org.exolab.castor.xml.XMLClassDescriptorResolver#cleanDescriptorCache()
    */
   public void cleanDescriptorCache() {
-    _descriptorCache = new DescriptorCacheImpl();
+    _descriptorCache = new DescriptorCacheImpl(_generation);
+    for (XMLMappingLoader mappingLoader : _lazyMappingLoaders) {
+      _lazyXMLNames.addAll(mappingLoader.getXMLNames());
+    }
+    _generation.incrementAndGet();
   }
 } // -- ClassDescriptorResolverImpl
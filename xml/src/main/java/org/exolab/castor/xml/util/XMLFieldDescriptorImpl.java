@@ -635,6 +635,22 @@ public class XMLFieldDescriptorImpl extends FieldDescriptorImpl implements XMLFi
     return false;
   }
 
+  /**
+   * Returns the names {@link #matches(String)} accepts, or null if it accepts any name.
+   *
+   * @return the matched names.
+   */
+  String[] getMatchNames() {
+    if (_isWild) {
+      return null;
+    }
+    String[] matches = _matches;
+    if (matches.length > 0) {
+      return matches;
+    }
+    return new String[] {_xmlName};
+  }
+
   /**
    * @see org.exolab.castor.xml.XMLFieldDescriptor#matches(java.lang.String, java.lang.String)
    *      {@inheritDoc}
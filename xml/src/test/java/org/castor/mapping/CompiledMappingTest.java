@@ -0,0 +1,222 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.castor.mapping;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.io.StringWriter;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.castor.test.entity.Email;
+import org.exolab.castor.mapping.Mapping;
+import org.exolab.castor.mapping.MappingException;
+import org.exolab.castor.mapping.xml.MappingRoot;
+import org.exolab.castor.util.Version;
+import org.exolab.castor.xml.Marshaller;
+import org.exolab.castor.xml.XMLContext;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link CompiledMapping} class.
+ *
+ * @since 1.4.2
+ */
+public class CompiledMappingTest {
+
+  private static final String EMAIL_MAPPING_FILE = "/org/castor/test/entity/mapping-email.xml";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void should_KeepClassMappings_When_WrittenAndRead() throws Exception {
+    URL source = getClass().getResource(EMAIL_MAPPING_FILE);
+    CompiledMapping compiled = read(write(CompiledMapping.compile(source)));
+
+    Mapping mapping = new Mapping();
+    mapping.loadMapping(source);
+    new MappingUnmarshaller().loadMappingOnly(mapping);
+    MappingRoot expected = mapping.getRoot();
+    MappingRoot actual = compiled.getRoot();
+
+    assertEquals(expected.getClassMappingCount(), actual.getClassMappingCount());
+    for (int i = 0; i < expected.getClassMappingCount(); i++) {
+      assertEquals(expected.getClassMapping(i).getName(), actual.getClassMapping(i).getName());
+    }
+    assertEquals(1, compiled.getChecksums().size());
+    assertTrue(compiled.isUpToDate(source));
+  }
+
+  @Test
+  public void should_MarshalSameDocument_When_CompiledMappingIsLoaded() throws Exception {
+    URL source = getClass().getResource(EMAIL_MAPPING_FILE);
+    File file = folder.newFile("mapping-email" + CompiledMapping.FILE_EXTENSION);
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      CompiledMapping.compile(source).write(out);
+    } finally {
+      out.close();
+    }
+
+    Mapping compiled = new Mapping();
+    compiled.loadCompiledMapping(file.toURI().toURL());
+    assertTrue(compiled.getMappingSources().isEmpty());
+
+    Mapping mapping = new Mapping();
+    mapping.loadMapping(source);
+
+    assertEquals(marshal(mapping), marshal(compiled));
+  }
+
+  @Test
+  public void should_BeOutOfDate_When_IncludedMappingChanges() throws Exception {
+    File included = copy(EMAIL_MAPPING_FILE, "email.xml");
+    File main = folder.newFile("main.xml");
+    writeFile(main, "<mapping><include href=\"email.xml\"/></mapping>");
+
+    URL source = main.toURI().toURL();
+    CompiledMapping compiled = CompiledMapping.compile(source);
+    assertEquals(2, compiled.getChecksums().size());
+    assertEquals(2, compiled.getRoot().getClassMappingCount());
+    assertTrue(compiled.isUpToDate(source));
+
+    writeFile(included, "<mapping/>");
+    assertFalse(compiled.isUpToDate(source));
+  }
+
+  @Test
+  public void should_LoadMappingFile_When_CompiledMappingIsOutOfDate() throws Exception {
+    File file = copy(EMAIL_MAPPING_FILE, "mapping.xml");
+    URL source = file.toURI().toURL();
+    File compiledFile = folder.newFile("mapping" + CompiledMapping.FILE_EXTENSION);
+    FileOutputStream out = new FileOutputStream(compiledFile);
+    try {
+      CompiledMapping.compile(source).write(out);
+    } finally {
+      out.close();
+    }
+
+    Mapping mapping = new Mapping();
+    mapping.loadCompiledMapping(compiledFile.toURI().toURL(), source);
+    assertTrue(mapping.getMappingSources().isEmpty());
+    assertEquals(2, mapping.getRoot().getClassMappingCount());
+
+    writeFile(file, "<mapping/>");
+    mapping = new Mapping();
+    mapping.loadCompiledMapping(compiledFile.toURI().toURL(), source);
+    assertEquals(1, mapping.getMappingSources().size());
+    assertEquals(0, mapping.getRoot().getClassMappingCount());
+  }
+
+  @Test(expected = MappingException.class)
+  public void should_Fail_When_StreamIsNoCompiledMapping() throws Exception {
+    byte[] content = "<mapping/>".getBytes(StandardCharsets.UTF_8);
+    CompiledMapping.read(new ByteArrayInputStream(content), "mapping.xml");
+  }
+
+  @Test
+  public void should_Fail_When_CompiledMappingHoldsForeignClass() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ObjectOutputStream output = new ObjectOutputStream(out);
+    output.writeInt(CompiledMapping.MAGIC);
+    output.writeInt(CompiledMapping.FORMAT_VERSION);
+    output.writeUTF(Version.VERSION);
+    output.writeInt(0);
+    output.writeObject(new File("foreign"));
+    output.close();
+
+    try {
+      read(out.toByteArray());
+      fail("Foreign class should be rejected");
+    } catch (MappingException ex) {
+      assertTrue(ex.getException() instanceof InvalidClassException);
+    }
+  }
+
+  @Test
+  public void should_AllowOnlyMappingClasses_When_ClassNamesAreChecked() {
+    assertTrue(CompiledMapping.isAllowed(MappingRoot.class.getName()));
+    assertTrue(CompiledMapping.isAllowed("java.util.ArrayList"));
+    assertTrue(CompiledMapping.isAllowed("[Ljava.lang.Object;"));
+    assertTrue(CompiledMapping.isAllowed("[B"));
+    assertFalse(CompiledMapping.isAllowed("java.io.File"));
+    assertFalse(CompiledMapping.isAllowed("java.util.concurrent.ConcurrentHashMap"));
+    assertFalse(CompiledMapping.isAllowed("[Ljava.io.File;"));
+  }
+
+  private byte[] write(final CompiledMapping compiled) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    compiled.write(out);
+    return out.toByteArray();
+  }
+
+  private CompiledMapping read(final byte[] content) throws IOException, MappingException {
+    return CompiledMapping.read(new ByteArrayInputStream(content), "compiled");
+  }
+
+  private String marshal(final Mapping mapping) throws Exception {
+    XMLContext context = new XMLContext();
+    context.addMapping(mapping);
+    Email email = new Email();
+    email.setFrom("from@castor.org");
+    email.setTo("to@castor.org");
+
+    StringWriter writer = new StringWriter();
+    Marshaller marshaller = context.createMarshaller();
+    marshaller.setWriter(writer);
+    marshaller.marshal(email);
+    return writer.toString();
+  }
+
+  private File copy(final String resource, final String name) throws IOException {
+    File file = folder.newFile(name);
+    InputStream in = getClass().getResourceAsStream(resource);
+    try {
+      FileOutputStream out = new FileOutputStream(file);
+      try {
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+          out.write(buffer, 0, count);
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+    return file;
+  }
+
+  private void writeFile(final File file, final String content) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes(StandardCharsets.UTF_8));
+    } finally {
+      out.close();
+    }
+  }
+}
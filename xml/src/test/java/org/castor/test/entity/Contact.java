@@ -0,0 +1,134 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.castor.test.entity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.exolab.castor.xml.MarshalException;
+import org.exolab.castor.xml.ValidationException;
+import org.exolab.castor.xml.XmlWritable;
+import org.exolab.castor.xml.XmlWriter;
+
+/**
+ * Entity writing itself through an {@link XmlWriter}, the way classes generated with direct
+ * marshalling enabled do. Described by {@link ContactDescriptor}.
+ *
+ * @since 1.4.2
+ */
+public class Contact implements XmlWritable {
+
+  public static final String NOTE_NAMESPACE = "http://castor.org/contact";
+
+  private int id;
+
+  private boolean hasId;
+
+  private String name;
+
+  private long phone;
+
+  private boolean hasPhone;
+
+  private String note;
+
+  private final List<String> tags = new ArrayList<String>();
+
+  private Email email;
+
+  private int directWrites;
+
+  public int getId() {
+    return id;
+  }
+
+  public boolean hasId() {
+    return hasId;
+  }
+
+  public void setId(int id) {
+    this.id = id;
+    this.hasId = true;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public long getPhone() {
+    return phone;
+  }
+
+  public boolean hasPhone() {
+    return hasPhone;
+  }
+
+  public void setPhone(long phone) {
+    this.phone = phone;
+    this.hasPhone = true;
+  }
+
+  public String getNote() {
+    return note;
+  }
+
+  public void setNote(String note) {
+    this.note = note;
+  }
+
+  public List<String> getTags() {
+    return tags;
+  }
+
+  public Email getEmail() {
+    return email;
+  }
+
+  public void setEmail(Email email) {
+    this.email = email;
+  }
+
+  /**
+   * Returns how often this instance has written its content itself.
+   *
+   * @return the number of direct writes
+   */
+  public int getDirectWrites() {
+    return directWrites;
+  }
+
+  @Override
+  public boolean marshalAttributes(XmlWriter writer) throws MarshalException {
+    if (hasId()) {
+      writer.attribute(null, "id", getId());
+    }
+    writer.attribute(null, "name", getName());
+    return true;
+  }
+
+  @Override
+  public void marshalContent(XmlWriter writer) throws MarshalException, ValidationException {
+    ++directWrites;
+    if (hasPhone()) {
+      writer.element(null, "phone", getPhone());
+    }
+    writer.element(NOTE_NAMESPACE, "note", getNote());
+    for (int i = 0; i < tags.size(); i++) {
+      writer.element(null, "tag", tags.get(i));
+    }
+    writer.object(null, "email");
+  }
+}
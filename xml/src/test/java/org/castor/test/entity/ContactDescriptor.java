@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.castor.test.entity;
+
+import org.exolab.castor.xml.NodeType;
+import org.exolab.castor.xml.XMLFieldHandler;
+import org.exolab.castor.xml.util.XMLClassDescriptorImpl;
+import org.exolab.castor.xml.util.XMLFieldDescriptorImpl;
+
+/**
+ * Class descriptor for {@link Contact}, written the way the source generator writes descriptors.
+ *
+ * @since 1.4.2
+ */
+public class ContactDescriptor extends XMLClassDescriptorImpl {
+
+  public ContactDescriptor() {
+    super(Contact.class, "contact");
+
+    XMLFieldDescriptorImpl desc =
+        new XMLFieldDescriptorImpl(Integer.TYPE, "id", "id", NodeType.Attribute);
+    desc.setHandler(new XMLFieldHandler<Object>() {
+      @Override
+      public Object getValue(Object object) {
+        Contact target = (Contact) object;
+        return target.hasId() ? Integer.valueOf(target.getId()) : null;
+      }
+
+      @Override
+      public void setValue(Object object, Object value) {
+        ((Contact) object).setId(((Integer) value).intValue());
+      }
+    });
+    addFieldDescriptor(desc);
+
+    desc = new XMLFieldDescriptorImpl(String.class, "name", "name", NodeType.Attribute);
+    desc.setHandler(new XMLFieldHandler<Object>() {
+      @Override
+      public Object getValue(Object object) {
+        return ((Contact) object).getName();
+      }
+
+      @Override
+      public void setValue(Object object, Object value) {
+        ((Contact) object).setName((String) value);
+      }
+    });
+    addFieldDescriptor(desc);
+
+    desc = new XMLFieldDescriptorImpl(Long.TYPE, "phone", "phone", NodeType.Element);
+    desc.setHandler(new XMLFieldHandler<Object>() {
+      @Override
+      public Object getValue(Object object) {
+        Contact target = (Contact) object;
+        return target.hasPhone() ? Long.valueOf(target.getPhone()) : null;
+      }
+
+      @Override
+      public void setValue(Object object, Object value) {
+        ((Contact) object).setPhone(((Long) value).longValue());
+      }
+    });
+    addFieldDescriptor(desc);
+
+    desc = new XMLFieldDescriptorImpl(String.class, "note", "note", NodeType.Element);
+    desc.setNameSpaceURI(Contact.NOTE_NAMESPACE);
+    desc.setHandler(new XMLFieldHandler<Object>() {
+      @Override
+      public Object getValue(Object object) {
+        return ((Contact) object).getNote();
+      }
+
+      @Override
+      public void setValue(Object object, Object value) {
+        ((Contact) object).setNote((String) value);
+      }
+    });
+    addFieldDescriptor(desc);
+
+    desc = new XMLFieldDescriptorImpl(String.class, "tags", "tag", NodeType.Element);
+    desc.setMultivalued(true);
+    desc.setHandler(new XMLFieldHandler<Object>() {
+      @Override
+      public Object getValue(Object object) {
+        return ((Contact) object).getTags();
+      }
+
+      @Override
+      public void setValue(Object object, Object value) {
+        ((Contact) object).getTags().add((String) value);
+      }
+    });
+    addFieldDescriptor(desc);
+
+    desc = new XMLFieldDescriptorImpl(Email.class, "email", "email", NodeType.Element);
+    desc.setHandler(new XMLFieldHandler<Object>() {
+      @Override
+      public Object getValue(Object object) {
+        return ((Contact) object).getEmail();
+      }
+
+      @Override
+      public void setValue(Object object, Object value) {
+        ((Contact) object).setEmail((Email) value);
+      }
+    });
+    addFieldDescriptor(desc);
+  }
+}
@@ -0,0 +1,273 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.dsml.jndi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.naming.ContextNotEmptyException;
+import javax.naming.NameAlreadyBoundException;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
+
+import org.exolab.castor.dsml.ImportDescriptor;
+import org.exolab.castor.dsml.ImportExportException;
+import org.exolab.castor.dsml.ImportProgressListener;
+import org.junit.Test;
+
+/**
+ * Tests importing DSML documents into an in-memory directory.
+ *
+ * @since 1.4.2
+ */
+public class JNDIImporterTest {
+
+  @Test
+  public void should_CreateAndRefreshEntries_When_ImportedByOneWorker() throws Exception {
+    Directory directory = new Directory();
+    directory.entries.put("cn=old", attributes("cn", "old", "mail", "old@castor.org"));
+
+    JNDIImporter importer = new JNDIImporter(directory.context());
+    importer.importDocument(new StringReader(document(entry("cn=new", "cn", "new")
+        + entry("cn=old", "mail", "new@castor.org"))));
+
+    assertEquals("new", directory.entries.get("cn=new").get("cn").get());
+    assertEquals("old", directory.entries.get("cn=old").get("cn").get());
+    assertEquals("new@castor.org", directory.entries.get("cn=old").get("mail").get());
+  }
+
+  @Test
+  public void should_ApplyEntriesOfOneDNInOrder_When_ImportedByWorkers() throws Exception {
+    Directory directory = new Directory();
+    StringBuilder entries = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      entries.append(entry("cn=entry" + i, "cn", "entry" + i));
+      entries.append(entry("CN=Entry" + i, "description", "first"));
+      entries.append(entry("cn=entry" + i, "description", "second"));
+      if (i % 2 == 0) {
+        entries.append(entry("cn=entry" + i));
+      }
+    }
+    ImportDescriptor descriptor = new ImportDescriptor();
+    for (int i = 0; i < 200; i += 2) {
+      descriptor.addPolicy("cn=entry" + i, ImportDescriptor.Policy.DELETE_EMPTY);
+    }
+
+    JNDIImporter importer = new JNDIImporter(directory.context());
+    importer.setImportDescriptor(descriptor);
+    importer.setWorkerCount(4);
+    importer.setQueueCapacity(8);
+    importer.setBatchSize(5);
+    ProgressListener listener = new ProgressListener();
+    importer.setImportEventListener(listener);
+    importer.setProgressInterval(100);
+    importer.importDocument(new StringReader(document(entries.toString())));
+
+    for (int i = 0; i < 200; i++) {
+      Attributes attrs = directory.entries.get("cn=entry" + i);
+      if (i % 2 == 0) {
+        assertNull(attrs);
+      } else {
+        assertEquals("second", attrs.get("description").get());
+      }
+    }
+    assertEquals(700, listener.processed.get());
+    assertEquals(Long.valueOf(700), listener.reports.get(listener.reports.size() - 1));
+    assertTrue(listener.completed);
+    assertEquals(8, listener.reports.size());
+  }
+
+  @Test
+  public void should_ApplyParentsAndChildrenInOrder_When_ImportedByWorkers() throws Exception {
+    Directory directory = new Directory();
+    StringBuilder entries = new StringBuilder();
+    ImportDescriptor descriptor = new ImportDescriptor();
+    for (int i = 0; i < 40; i++) {
+      entries.append(entry("ou=unit" + i, "ou", "unit" + i));
+      for (int j = 0; j < 5; j++) {
+        entries.append(entry("cn=entry" + j + ",ou=unit" + i, "cn", "entry" + j));
+        entries.append(entry("cn=item,cn=entry" + j + ",ou=unit" + i, "cn", "item"));
+      }
+    }
+    for (int i = 0; i < 40; i += 2) {
+      for (int j = 0; j < 5; j++) {
+        entries.append(entry("cn=item,cn=entry" + j + ",ou=unit" + i));
+        entries.append(entry("cn=entry" + j + ",ou=unit" + i));
+      }
+      entries.append(entry("ou=unit" + i));
+      descriptor.addPolicy("ou=unit" + i, ImportDescriptor.Policy.DELETE_EMPTY);
+    }
+
+    JNDIImporter importer = new JNDIImporter(directory.context());
+    importer.setImportDescriptor(descriptor);
+    importer.setWorkerCount(4);
+    importer.setQueueCapacity(8);
+    importer.setBatchSize(3);
+    importer.importDocument(new StringReader(document(entries.toString())));
+
+    for (int i = 0; i < 40; i++) {
+      for (int j = 0; j < 5; j++) {
+        String child = "cn=item,cn=entry" + j + ",ou=unit" + i;
+        assertEquals(i % 2 != 0, directory.entries.containsKey(child));
+      }
+      assertEquals(i % 2 != 0, directory.entries.containsKey("ou=unit" + i));
+    }
+  }
+
+  @Test
+  public void should_ReportFailure_When_DirectoryRejectsEntry() throws Exception {
+    Directory directory = new Directory();
+    directory.rejected = "cn=entry7";
+    StringBuilder entries = new StringBuilder();
+    for (int i = 0; i < 50; i++) {
+      entries.append(entry("cn=entry" + i, "cn", "entry" + i));
+    }
+
+    JNDIImporter importer = new JNDIImporter(directory.context());
+    importer.setWorkerCount(3);
+    try {
+      importer.importDocument(new StringReader(document(entries.toString())));
+      fail("Expected ImportExportException");
+    } catch (ImportExportException except) {
+      assertTrue(except.getException() instanceof NamingException);
+    }
+  }
+
+  private static String document(final String entries) {
+    return "<dsml><directory-entries>" + entries + "</directory-entries></dsml>";
+  }
+
+  private static String entry(final String dn, final String... nameValues) {
+    StringBuilder entry = new StringBuilder("<entry dn=\"" + dn + "\">");
+    for (int i = 0; i < nameValues.length; i += 2) {
+      entry.append("<attr name=\"" + nameValues[i] + "\"><value>" + nameValues[i + 1]
+          + "</value></attr>");
+    }
+    return entry.append("</entry>").toString();
+  }
+
+  private static Attributes attributes(final String... nameValues) {
+    Attributes attrs = new BasicAttributes(true);
+    for (int i = 0; i < nameValues.length; i += 2) {
+      attrs.put(nameValues[i], nameValues[i + 1]);
+    }
+    return attrs;
+  }
+
+  /**
+   * A directory of entries held in memory, keyed by lower-cased DN, which binds an entry only
+   * below an existing parent and unbinds it only without children.
+   */
+  private static final class Directory implements InvocationHandler {
+    final Map<String, Attributes> entries = new ConcurrentHashMap<String, Attributes>();
+
+    volatile String rejected;
+
+    DirContext context() {
+      return (DirContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+          new Class<?>[] {DirContext.class}, this);
+    }
+
+    public Object invoke(final Object proxy, final Method method, final Object[] args)
+        throws NamingException {
+      String name = (args != null && args.length > 0 && args[0] instanceof String)
+          ? ((String) args[0]).toLowerCase(Locale.ROOT)
+          : null;
+      String op = method.getName();
+      if (op.equals("lookup") && "".equals(name)) {
+        return proxy;
+      } else if (op.equals("close")) {
+        return null;
+      } else if (op.equals("getAttributes") && args.length == 1) {
+        Attributes attrs = entries.get(name);
+        if (attrs == null) {
+          throw new NameNotFoundException(name);
+        }
+        return attrs.clone();
+      } else if (op.equals("bind") && args.length == 3) {
+        if (name.equals(rejected)) {
+          throw new NamingException("Rejected " + name);
+        }
+        int comma = name.indexOf(',');
+        if ((comma > 0) && !entries.containsKey(name.substring(comma + 1))) {
+          throw new NameNotFoundException(name.substring(comma + 1));
+        }
+        Attributes attrs = new BasicAttributes(true);
+        for (javax.naming.directory.Attribute attr : Collections
+            .list(((Attributes) args[2]).getAll())) {
+          attrs.put(attr);
+        }
+        if (entries.putIfAbsent(name, attrs) != null) {
+          throw new NameAlreadyBoundException(name);
+        }
+        return null;
+      } else if (op.equals("modifyAttributes") && args[1] instanceof ModificationItem[]) {
+        Attributes attrs = entries.get(name);
+        if (attrs == null) {
+          throw new NameNotFoundException(name);
+        }
+        for (ModificationItem item : (ModificationItem[]) args[1]) {
+          if (item.getModificationOp() == DirContext.REMOVE_ATTRIBUTE) {
+            attrs.remove(item.getAttribute().getID());
+          } else {
+            attrs.put(item.getAttribute());
+          }
+        }
+        return null;
+      } else if (op.equals("unbind") && args.length == 1) {
+        for (String entry : entries.keySet()) {
+          if (entry.endsWith("," + name)) {
+            throw new ContextNotEmptyException(name);
+          }
+        }
+        entries.remove(name);
+        return null;
+      }
+      throw new UnsupportedOperationException(method.toString());
+    }
+  }
+
+  private static final class ProgressListener implements ImportProgressListener {
+    final AtomicInteger processed = new AtomicInteger();
+
+    final List<Long> reports = new ArrayList<Long>();
+
+    boolean completed;
+
+    public void processedEntry(final String name, final int flag) {
+      processed.incrementAndGet();
+    }
+
+    public void importProgress(final long entries, final long elapsedMillis,
+        final boolean completed) {
+      reports.add(Long.valueOf(entries));
+      this.completed = completed;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.mapping.loader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Method;
+
+import org.exolab.castor.mapping.loader.collection.ArrayBuilder;
+import org.junit.Test;
+
+/**
+ * Tests adding all values collected in an {@link ArrayBuilder} through {@link FieldHandlerImpl}.
+ *
+ * @since 1.4.2
+ */
+public class FieldHandlerImplTest {
+
+  /**
+   * Holds the array field.
+   */
+  public static class Sizes {
+
+    private int[] values;
+
+    public int[] getValues() {
+      return values;
+    }
+
+    public void setValues(final int[] values) {
+      this.values = values;
+    }
+  }
+
+  /**
+   * Holds the array field through an intermediate object.
+   */
+  public static class Order {
+
+    private Sizes sizes;
+
+    public Sizes getSizes() {
+      return sizes;
+    }
+
+    public void setSizes(final Sizes sizes) {
+      this.sizes = sizes;
+    }
+  }
+
+  @Test
+  public void should_CreateIntermediateObject_When_ItIsMissing() throws Exception {
+    FieldHandlerImpl<Integer> handler = createHandler();
+    assertEquals(Integer.TYPE, handler.getArrayComponentType());
+
+    Order order = new Order();
+    handler.addAll(order, createValues(1, 2));
+
+    assertNotNull(order.getSizes());
+    assertArrayEquals(new int[] {1, 2}, order.getSizes().getValues());
+  }
+
+  @Test
+  public void should_AppendToArray_When_IntermediateObjectExists() throws Exception {
+    Sizes sizes = new Sizes();
+    sizes.setValues(new int[] {1});
+    Order order = new Order();
+    order.setSizes(sizes);
+
+    createHandler().addAll(order, createValues(2, 3));
+
+    assertSame(sizes, order.getSizes());
+    assertArrayEquals(new int[] {1, 2, 3}, sizes.getValues());
+  }
+
+  @SuppressWarnings("unchecked")
+  private FieldHandlerImpl<Integer> createHandler() throws Exception {
+    Method[] getSequence = new Method[] {Order.class.getMethod("getSizes")};
+    Method[] setSequence = new Method[] {Order.class.getMethod("setSizes", Sizes.class)};
+    TypeInfo<Integer> typeInfo = new TypeInfo<Integer>(Integer.TYPE, null, null, false, null,
+        CollectionHandlers.getHandler(int[].class));
+    return new FieldHandlerImpl<Integer>("values", getSequence, setSequence,
+        Sizes.class.getMethod("getValues"), Sizes.class.getMethod("setValues", int[].class),
+        typeInfo);
+  }
+
+  private ArrayBuilder createValues(final int... values) {
+    ArrayBuilder builder = ArrayBuilder.newBuilder(Integer.TYPE);
+    for (int value : values) {
+      builder.add(Integer.valueOf(value));
+    }
+    return builder;
+  }
+}
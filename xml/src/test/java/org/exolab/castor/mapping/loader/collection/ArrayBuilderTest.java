@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.mapping.loader.collection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link ArrayBuilder} class.
+ *
+ * @since 1.4.2
+ */
+public class ArrayBuilderTest {
+
+  @Test
+  public void testPrimitiveArrayGrowsPastInitialCapacity() {
+    ArrayBuilder builder = ArrayBuilder.newBuilder(Double.TYPE);
+    for (int i = 0; i < 1000; i++) {
+      builder.add(Double.valueOf(i));
+    }
+    ((ArrayBuilder.OfDouble) builder).addDouble(1000.0);
+
+    double[] array = (double[]) builder.toArray();
+    assertEquals(1001, array.length);
+    for (int i = 0; i < array.length; i++) {
+      assertEquals(i, array[i], 0.0);
+    }
+  }
+
+  @Test
+  public void testExistingElementsComeFirst() {
+    ArrayBuilder builder = ArrayBuilder.newBuilder(Integer.TYPE);
+    builder.add(Integer.valueOf(3));
+    builder.add(Integer.valueOf(4));
+
+    assertArrayEquals(new int[] {1, 2, 3, 4}, (int[]) builder.toArray(new int[] {1, 2}));
+  }
+
+  @Test
+  public void testNullValuesAreIgnored() {
+    ArrayBuilder builder = ArrayBuilder.newBuilder(String.class);
+    builder.add("a");
+    builder.add(null);
+    builder.add("b");
+
+    String[] array = (String[]) builder.toArray();
+    assertArrayEquals(new String[] {"a", "b"}, array);
+  }
+
+  @Test
+  public void testComponentTypeOfExistingArrayIsKept() {
+    ArrayBuilder builder = ArrayBuilder.newBuilder(Object.class);
+    builder.add("b");
+
+    Object array = builder.toArray(new String[] {"a"});
+    assertSame(String[].class, array.getClass());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testValueOfWrongTypeIsRejected() {
+    ArrayBuilder builder = ArrayBuilder.newBuilder(Boolean.TYPE);
+    builder.add("true");
+  }
+
+  @Test
+  public void testWideningConversionsAreApplied() {
+    ArrayBuilder longs = ArrayBuilder.newBuilder(Long.TYPE);
+    longs.add(Integer.valueOf(1));
+    longs.add(Byte.valueOf((byte) 2));
+    longs.add(Character.valueOf('a'));
+    longs.add(Long.valueOf(Long.MAX_VALUE));
+    assertArrayEquals(new long[] {1, 2, 'a', Long.MAX_VALUE}, (long[]) longs.toArray());
+
+    ArrayBuilder doubles = ArrayBuilder.newBuilder(Double.TYPE);
+    doubles.add(Float.valueOf(0.5f));
+    doubles.add(Long.valueOf(3));
+    assertArrayEquals(new double[] {0.5, 3}, (double[]) doubles.toArray(), 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLongIsNotNarrowedToInt() {
+    ArrayBuilder builder = ArrayBuilder.newBuilder(Integer.TYPE);
+    builder.add(Long.valueOf(1L << 32));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDoubleIsNotTruncatedToLong() {
+    ArrayBuilder builder = ArrayBuilder.newBuilder(Long.TYPE);
+    builder.add(Double.valueOf(1.5));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIntegerIsNotNarrowedToByte() {
+    ArrayBuilder builder = ArrayBuilder.newBuilder(Byte.TYPE);
+    builder.add(Integer.valueOf(300));
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Properties;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.castor.test.entity.Email;
+import org.castor.test.entity.Emails;
+import org.castor.test.entity.Entity;
+import org.exolab.castor.mapping.FieldDescriptor;
+import org.exolab.castor.xml.Introspector;
+import org.exolab.castor.xml.XMLClassDescriptor;
+import org.exolab.castor.xml.XMLConstants;
+import org.exolab.castor.xml.XMLContext;
+import org.exolab.castor.xml.XMLFieldDescriptor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link DescriptorGenerator} class.
+ *
+ * @since 1.4.2
+ */
+public class DescriptorGeneratorTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void should_ListDescriptorsInCDRFile_When_Written() throws Exception {
+    DescriptorGenerator generator = new DescriptorGenerator();
+    generator.addClass(Emails.class);
+    File directory = folder.getRoot();
+    generator.write(directory, directory);
+
+    // -- the class of the array field is added as well
+    assertTrue(generator.getGeneratedClasses().contains(Email.class));
+    assertTrue(new File(directory, "org/castor/test/entity/descriptors/EmailsDescriptor.java")
+        .isFile());
+
+    Properties cdr = new Properties();
+    InputStream in = new FileInputStream(
+        new File(directory, "org/castor/test/entity/" + XMLConstants.PKG_CDR_LIST_FILE));
+    try {
+      cdr.load(in);
+    } finally {
+      in.close();
+    }
+    assertEquals("org.castor.test.entity.descriptors.EmailsDescriptor",
+        cdr.getProperty(Emails.class.getName()));
+    assertEquals("org.castor.test.entity.descriptors.EmailDescriptor",
+        cdr.getProperty(Email.class.getName()));
+  }
+
+  @Test
+  public void should_NotUseReflection_When_SourceIsGenerated() {
+    DescriptorGenerator generator = new DescriptorGenerator();
+    generator.addClass(Entity.class);
+
+    String source = generator.getSource(Entity.class);
+    assertNotNull(source);
+    assertTrue(source.contains("target.setId("));
+    assertTrue(source.contains("setIntrospected(true);"));
+    assertFalse(source.contains("java.lang.reflect"));
+  }
+
+  @Test
+  public void should_SkipClass_When_ClassIsNotPublic() {
+    DescriptorGenerator generator = new DescriptorGenerator();
+    generator.addClass(Hidden.class);
+
+    assertTrue(generator.getGeneratedClasses().isEmpty());
+    assertTrue(generator.getSkippedClasses().containsKey(Hidden.class.getName()));
+  }
+
+  @Test
+  public void should_BehaveAsIntrospectedDescriptor_When_Compiled() throws Exception {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    assumeNotNull(compiler);
+
+    DescriptorGenerator generator = new DescriptorGenerator();
+    generator.addClass(Entity.class);
+    File directory = folder.getRoot();
+    generator.write(directory, directory);
+    File source = new File(directory, "org/castor/test/entity/descriptors/EntityDescriptor.java");
+    assertEquals(0, compiler.run(null, null, null, "-nowarn", "-classpath",
+        System.getProperty("java.class.path"), "-d", directory.getPath(), source.getPath()));
+
+    ClassLoader loader =
+        new URLClassLoader(new URL[] {directory.toURI().toURL()}, getClass().getClassLoader());
+    XMLClassDescriptor generated = (XMLClassDescriptor) loader
+        .loadClass("org.castor.test.entity.descriptors.EntityDescriptor").newInstance();
+    XMLClassDescriptor introspected = new XMLContext().getInternalContext().getIntrospector()
+        .generateClassDescriptor(Entity.class);
+
+    assertTrue(Introspector.introspected(generated));
+    assertEquals(introspected.getXMLName(), generated.getXMLName());
+    assertEquals(introspected.getFields().length, generated.getFields().length);
+    for (FieldDescriptor expected : introspected.getFields()) {
+      XMLFieldDescriptor field = (XMLFieldDescriptor) expected;
+      XMLFieldDescriptor actual =
+          generated.getFieldDescriptor(field.getXMLName(), null, field.getNodeType());
+      assertNotNull(actual);
+      assertEquals(field.getFieldName(), actual.getFieldName());
+      assertEquals(field.getFieldType(), actual.getFieldType());
+      assertEquals(field.isMultivalued(), actual.isMultivalued());
+    }
+
+    Entity entity = new Entity();
+    XMLFieldDescriptor id = generated.getFieldDescriptor("id", null, null);
+    id.getHandler().setValue(entity, Integer.valueOf(42));
+    assertEquals(42, entity.getId());
+    assertEquals(Integer.valueOf(42), id.getHandler().getValue(entity));
+    id.getHandler().resetValue(entity);
+    assertEquals(0, entity.getId());
+  }
+
+  /**
+   * A class whose descriptor cannot be generated, as it is not public.
+   */
+  static class Hidden {
+    private String _value;
+
+    public String getValue() {
+      return _value;
+    }
+
+    public void setValue(final String value) {
+      _value = value;
+    }
+  }
+}
@@ -127,7 +127,7 @@ public abstract class BaseMarshallerTest {
    * Represents the path to mapping file.
    * </p>
    */
-  private static final String EMAIL_MAPPING_FILE = "/org/castor/test/entity/mapping-email.xml";
+  protected static final String EMAIL_MAPPING_FILE = "/org/castor/test/entity/mapping-email.xml";
 
   /**
    * Represents the instance of emails used for testing.
@@ -426,7 +426,7 @@ public abstract class BaseMarshallerTest {
    * @return the xml of the marshalled object
    * @throws Exception if any error occurs during marshalling
    */
-  private String marshalEmails(Marshaller marshaller) throws Exception {
+  protected String marshalEmails(Marshaller marshaller) throws Exception {
     return marshal(marshaller, emails);
   }
 
@@ -438,7 +438,7 @@ public abstract class BaseMarshallerTest {
    * @throws org.exolab.castor.mapping.MappingException if any error occurs when loading mapping
    *         file
    */
-  private Marshaller createMarshallerFromMapping(String mapping) throws MappingException {
+  protected Marshaller createMarshallerFromMapping(String mapping) throws MappingException {
     XMLContext xmlContext = createXmlContextFromMapping(mapping);
 
     Marshaller marshaller = xmlContext.createMarshaller();
@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link BatchProcessor} class.
+ *
+ * @since 1.4.2
+ */
+public class BatchProcessorTest {
+
+  /**
+   * Doubles its input, and fails for negative inputs.
+   */
+  private static final BatchProcessor.Task<Integer, Integer> DOUBLE =
+      new BatchProcessor.Task<Integer, Integer>() {
+        public Integer process(final Integer input) throws Exception {
+          if (input.intValue() < 0) {
+            throw new MarshalException("negative: " + input);
+          }
+          Thread.sleep((input.intValue() * 7) % 5);
+          return Integer.valueOf(input.intValue() * 2);
+        }
+      };
+
+  @Test
+  public void should_ReturnResultsInInputOrder_When_TasksCompleteOutOfOrder() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<BatchResult<Integer>> results = new BatchProcessor(executor, 8)
+          .run(Arrays.asList(5, 1, 4, 2, 3, 0, 6, 9, 8, 7), DOUBLE);
+      assertEquals(10, results.size());
+      int[] expected = {10, 2, 8, 4, 6, 0, 12, 18, 16, 14};
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(i, results.get(i).getIndex());
+        assertFalse(results.get(i).isFailed());
+        assertEquals(expected[i], results.get(i).getValue().intValue());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void should_ReportErrorPerInput_When_OneInputFails() throws Exception {
+    List<BatchResult<Integer>> results =
+        new BatchProcessor(null, 4).run(Arrays.asList(1, -1, 2), DOUBLE);
+    assertEquals(2, results.get(0).getValue().intValue());
+    assertTrue(results.get(1).isFailed());
+    assertTrue(results.get(1).getError() instanceof MarshalException);
+    assertNull(results.get(1).getValue());
+    assertEquals(4, results.get(2).getValue().intValue());
+  }
+
+  @Test
+  public void should_NotReadAhead_When_InFlightLimitIsReached() throws Exception {
+    final AtomicInteger taken = new AtomicInteger();
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxAhead = new AtomicInteger();
+    Iterable<Integer> inputs = new Iterable<Integer>() {
+      public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+          public boolean hasNext() {
+            return taken.get() < 50;
+          }
+
+          public Integer next() {
+            return Integer.valueOf(taken.incrementAndGet());
+          }
+
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+    BatchProcessor.Task<Integer, Integer> task = new BatchProcessor.Task<Integer, Integer>() {
+      public Integer process(final Integer input) throws Exception {
+        int ahead = running.incrementAndGet();
+        synchronized (maxAhead) {
+          maxAhead.set(Math.max(maxAhead.get(), ahead));
+        }
+        Thread.sleep(1);
+        running.decrementAndGet();
+        return input;
+      }
+    };
+    List<BatchResult<Integer>> results = new BatchProcessor(null, 3).run(inputs, task);
+    assertEquals(50, results.size());
+    assertTrue(maxAhead.get() <= 3);
+    assertEquals(50, results.get(49).getValue().intValue());
+  }
+
+  @Test
+  public void should_FailInput_When_ExecutorRejectsIt() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    executor.shutdown();
+    List<BatchResult<Integer>> results =
+        new BatchProcessor(executor, 2).run(Arrays.asList(1), DOUBLE);
+    assertTrue(results.get(0).isFailed());
+  }
+}
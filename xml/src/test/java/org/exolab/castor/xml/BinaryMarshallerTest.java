@@ -0,0 +1,293 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.castor.test.entity.Contact;
+import org.castor.test.entity.Email;
+import org.castor.test.entity.Emails;
+import org.exolab.castor.mapping.Mapping;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests the {@link BinaryMarshaller} and {@link BinaryUnmarshaller} classes.
+ *
+ * @since 1.4.2
+ */
+public class BinaryMarshallerTest {
+
+  private static final String EMAIL_MAPPING_FILE = "/org/castor/test/entity/mapping-email.xml";
+
+  @Test
+  public void should_RoundTrip_When_ClassesAreMapped() throws Exception {
+    XMLContext context = new XMLContext();
+    Mapping mapping = new Mapping();
+    mapping.loadMapping(new InputSource(getClass().getResourceAsStream(EMAIL_MAPPING_FILE)));
+    context.addMapping(mapping);
+
+    Emails emails = new Emails();
+    emails.setEmail(new Email[] {createEmail("a@castor.org", "b@castor.org"),
+        createEmail("c@castor.org", "d@castor.org")});
+
+    byte[] bytes = context.createBinaryMarshaller().marshal(emails);
+    Emails result = (Emails) context.createBinaryUnmarshaller().unmarshal(bytes);
+
+    assertEquals(2, result.getEmail().length);
+    assertEquals("a@castor.org", result.getEmail()[0].getFrom());
+    assertEquals("b@castor.org", result.getEmail()[0].getTo());
+    assertEquals("c@castor.org", result.getEmail()[1].getFrom());
+    assertEquals("d@castor.org", result.getEmail()[1].getTo());
+  }
+
+  @Test
+  public void should_RoundTrip_When_DescriptorIsGenerated() throws Exception {
+    XMLContext context = new XMLContext();
+    Contact contact = new Contact();
+    contact.setId(42);
+    contact.setName("Jane Doe");
+    contact.setPhone(-1234567890123L);
+    contact.getTags().add("friend");
+    contact.getTags().add("work");
+    contact.setEmail(createEmail("from@castor.org", "to@castor.org"));
+
+    byte[] bytes = context.createBinaryMarshaller().marshal(contact);
+    Contact result = (Contact) context.createBinaryUnmarshaller().unmarshal(bytes);
+
+    assertEquals(42, result.getId());
+    assertEquals("Jane Doe", result.getName());
+    assertEquals(-1234567890123L, result.getPhone());
+    assertNull(result.getNote());
+    assertEquals(Arrays.asList("friend", "work"), result.getTags());
+    assertEquals("from@castor.org", result.getEmail().getFrom());
+    assertEquals("to@castor.org", result.getEmail().getTo());
+  }
+
+  @Test
+  public void should_PreserveReferences_When_ClassesAreIntrospected() throws Exception {
+    XMLContext context = new XMLContext();
+    Node first = new Node();
+    first.setName("first");
+    first.setValues(new int[] {1, -2, Integer.MAX_VALUE});
+    Node second = new Node();
+    second.setName("second");
+    second.setNext(first);
+    first.setNext(second);
+
+    byte[] bytes = context.createBinaryMarshaller().marshal(first);
+    Node result = (Node) context.createBinaryUnmarshaller().unmarshal(bytes);
+
+    assertEquals("first", result.getName());
+    assertArrayEquals(new int[] {1, -2, Integer.MAX_VALUE}, result.getValues());
+    assertEquals("second", result.getNext().getName());
+    assertSame(result, result.getNext().getNext());
+  }
+
+  @Test
+  public void should_SkipFields_When_ReaderDoesNotKnowThem() throws Exception {
+    Version version = createVersion();
+    byte[] bytes = createVersionContext("name", "note", "count", "email").createBinaryMarshaller()
+        .marshal(version);
+
+    Version result =
+        (Version) createVersionContext("name", "count").createBinaryUnmarshaller().unmarshal(bytes);
+
+    assertEquals("first", result.getName());
+    assertEquals(3, result.getCount());
+    assertNull(result.getNote());
+    assertNull(result.getEmail());
+  }
+
+  @Test
+  public void should_MatchFieldsByName_When_FieldsAreReordered() throws Exception {
+    Version version = createVersion();
+    byte[] bytes = createVersionContext("email", "count", "note", "name").createBinaryMarshaller()
+        .marshal(version);
+
+    Version result = (Version) createVersionContext("name", "note", "count", "email")
+        .createBinaryUnmarshaller().unmarshal(bytes);
+
+    assertEquals("first", result.getName());
+    assertEquals("draft", result.getNote());
+    assertEquals(3, result.getCount());
+    assertEquals("from@castor.org", result.getEmail().getFrom());
+  }
+
+  @Test
+  public void should_KeepInitialValues_When_FieldsAreMissing() throws Exception {
+    Version version = createVersion();
+    byte[] bytes = createVersionContext("name").createBinaryMarshaller().marshal(version);
+
+    Version result = (Version) createVersionContext("name", "note", "count", "email")
+        .createBinaryUnmarshaller().unmarshal(bytes);
+
+    assertEquals("first", result.getName());
+    assertNull(result.getNote());
+    assertEquals(-1, result.getCount());
+    assertNull(result.getEmail());
+  }
+
+  @Test
+  public void should_Fail_When_ClassIsNotKnownToContext() throws Exception {
+    Node node = new Node();
+    node.setName("node");
+    byte[] bytes = new XMLContext().createBinaryMarshaller().marshal(node);
+
+    try {
+      new XMLContext().createBinaryUnmarshaller().unmarshal(bytes);
+      fail("Expected MarshalException");
+    } catch (MarshalException e) {
+      assertEquals("Class " + Node.class.getName() + " is not known to the context",
+          e.getMessage());
+    }
+
+    XMLContext context = new XMLContext();
+    context.addClass(Node.class);
+    assertEquals("node", ((Node) context.createBinaryUnmarshaller().unmarshal(bytes)).getName());
+  }
+
+  @Test(expected = MarshalException.class)
+  public void should_Fail_When_StreamIsNotBinaryMarshalled() throws Exception {
+    new XMLContext().createBinaryUnmarshaller().unmarshal("<emails/>".getBytes("UTF-8"));
+  }
+
+  private static Version createVersion() {
+    Version version = new Version();
+    version.setName("first");
+    version.setNote("draft");
+    version.setCount(3);
+    version.setEmail(createEmail("from@castor.org", "to@castor.org"));
+    return version;
+  }
+
+  /**
+   * Creates a context mapping the given fields of {@link Version}, in the given order, as another
+   * version of the class would.
+   */
+  private static XMLContext createVersionContext(final String... fields) throws Exception {
+    StringBuilder mapping = new StringBuilder("<mapping>");
+    mapping.append("<class name=\"" + Version.class.getName() + "\">");
+    for (String field : fields) {
+      String type = field.equals("count") ? "integer"
+          : field.equals("email") ? Email.class.getName() : "string";
+      mapping.append("<field name=\"" + field + "\" type=\"" + type + "\"/>");
+    }
+    mapping.append("</class>");
+    if (Arrays.asList(fields).contains("email")) {
+      mapping.append("<class name=\"" + Email.class.getName() + "\">"
+          + "<field name=\"from\" type=\"string\"/><field name=\"to\" type=\"string\"/>"
+          + "</class>");
+    }
+    mapping.append("</mapping>");
+
+    XMLContext context = new XMLContext();
+    Mapping loaded = context.createMapping();
+    loaded.loadMapping(new InputSource(new StringReader(mapping.toString())));
+    context.addMapping(loaded);
+    return context;
+  }
+
+  private static Email createEmail(String from, String to) {
+    Email email = new Email();
+    email.setFrom(from);
+    email.setTo(to);
+    return email;
+  }
+
+  /**
+   * A mapped class whose fields change between versions.
+   */
+  public static class Version {
+    private String name;
+
+    private String note;
+
+    private int count = -1;
+
+    private Email email;
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public String getNote() {
+      return note;
+    }
+
+    public void setNote(String note) {
+      this.note = note;
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    public void setCount(int count) {
+      this.count = count;
+    }
+
+    public Email getEmail() {
+      return email;
+    }
+
+    public void setEmail(Email email) {
+      this.email = email;
+    }
+  }
+
+  /**
+   * An introspected class referring to other instances.
+   */
+  public static class Node {
+    private String name;
+
+    private int[] values;
+
+    private Node next;
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public int[] getValues() {
+      return values;
+    }
+
+    public void setValues(int[] values) {
+      this.values = values;
+    }
+
+    public Node getNext() {
+      return next;
+    }
+
+    public void setNext(Node next) {
+      this.next = next;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.castor.mapping.BindingType;
+import org.castor.mapping.MappingUnmarshaller;
+import org.castor.test.entity.Email;
+import org.castor.test.entity.Emails;
+import org.castor.xml.XMLProperties;
+import org.exolab.castor.mapping.ClassDescriptor;
+import org.exolab.castor.mapping.FieldDescriptor;
+import org.exolab.castor.mapping.Mapping;
+import org.junit.Test;
+
+/**
+ * Tests creating the class descriptors of a mapping on first use.
+ *
+ * @since 1.4.2
+ */
+public class LazyMappingDescriptorsTest {
+
+  private static final String EMAIL_MAPPING_FILE = "/org/castor/test/entity/mapping-email.xml";
+
+  @Test
+  public void should_IndexXMLNames_When_DescriptorsAreLazy() throws Exception {
+    XMLMappingLoader loader = loadLazily();
+
+    assertTrue(loader.getXMLNames().contains("emails"));
+    assertTrue(loader.getXMLNames().contains("email"));
+    assertEquals(1, loader.getDescriptorsByXMLName("email").size());
+    assertEquals(Email.class,
+        loader.getDescriptorsByXMLName("email").get(0).getJavaClass());
+  }
+
+  @Test
+  public void should_ResolveRelations_When_DescriptorIsCreatedOnFirstUse() throws Exception {
+    XMLMappingLoader loader = loadLazily();
+
+    ClassDescriptor emails = loader.getDescriptor(Emails.class.getName());
+    assertNotNull(emails);
+    FieldDescriptor field = emails.getFields()[0];
+    assertSame(loader.getDescriptor(Email.class.getName()), field.getClassDescriptor());
+    assertEquals(2, loader.getDescriptors().size());
+  }
+
+  @Test
+  public void should_CreateDescriptorOnce_When_RequestedConcurrently() throws Exception {
+    final XMLMappingLoader loader = loadLazily();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<ClassDescriptor>> futures = new ArrayList<Future<ClassDescriptor>>();
+      for (int i = 0; i < 16; i++) {
+        futures.add(executor.submit(new Callable<ClassDescriptor>() {
+          public ClassDescriptor call() {
+            return loader.getDescriptor(Emails.class.getName());
+          }
+        }));
+      }
+      ClassDescriptor first = futures.get(0).get();
+      assertNotNull(first);
+      for (Future<ClassDescriptor> future : futures) {
+        assertSame(first, future.get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void should_MarshalAndUnmarshalSameDocument_When_DescriptorsAreLazy() throws Exception {
+    Emails emails = new Emails();
+    Email email = new Email();
+    email.setFrom("from@castor.org");
+    email.setTo("to@castor.org");
+    emails.setEmail(new Email[] {email});
+
+    String expected = marshal(createContext(false), emails);
+    XMLContext context = createContext(true);
+    String actual = marshal(context, emails);
+    assertEquals(expected, actual);
+
+    Unmarshaller unmarshaller = context.createUnmarshaller();
+    Emails result = (Emails) unmarshaller.unmarshal(new StringReader(actual));
+    assertEquals(1, result.getEmail().length);
+    assertEquals("to@castor.org", result.getEmail()[0].getTo());
+  }
+
+  private XMLMappingLoader loadLazily() throws Exception {
+    Mapping mapping = new Mapping();
+    mapping.loadMapping(getClass().getResource(EMAIL_MAPPING_FILE));
+    MappingUnmarshaller mappingUnmarshaller = new MappingUnmarshaller();
+    mappingUnmarshaller.setLazyDescriptors(true);
+    return (XMLMappingLoader) mappingUnmarshaller.getMappingLoader(mapping, BindingType.XML);
+  }
+
+  private XMLContext createContext(final boolean lazy) throws Exception {
+    XMLContext context = new XMLContext();
+    context.setProperty(XMLProperties.LAZY_MAPPING_DESCRIPTORS, lazy);
+    Mapping mapping = context.createMapping();
+    mapping.loadMapping(getClass().getResource(EMAIL_MAPPING_FILE));
+    context.addMapping(mapping);
+    return context;
+  }
+
+  private String marshal(final XMLContext context, final Object object) throws Exception {
+    StringWriter writer = new StringWriter();
+    Marshaller marshaller = context.createMarshaller();
+    marshaller.setWriter(writer);
+    marshaller.marshal(object);
+    return writer.toString();
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Set;
+
+import org.castor.test.entity.CastorObject;
+import org.castor.test.entity.Contact;
+import org.exolab.castor.xml.descriptors.StringClassDescriptor;
+import org.exolab.castor.xml.util.XMLFieldDescriptorImpl;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MarshalPlan} class.
+ *
+ * @since 1.4.2
+ */
+public class MarshalPlanTest {
+
+  /**
+   * Holds an object in a field whose type does not tell the class of the object.
+   */
+  public static class Owner {
+
+    private Object contact;
+
+    public Object getContact() {
+      return contact;
+    }
+
+    public void setContact(final Object contact) {
+      this.contact = contact;
+    }
+  }
+
+  /**
+   * Tests that plans are kept per descriptor instance, as descriptors compare by content.
+   */
+  @Test
+  public void should_KeepPlansApart_When_DescriptorsAreEqualButDistinct() {
+    XMLFieldDescriptor first = new XMLFieldDescriptorImpl(String.class, "value", "value", null);
+    XMLFieldDescriptor second = new XMLFieldDescriptorImpl(String.class, "value", "value", null);
+    assertEquals(first, second);
+
+    MarshalPlan.Cache cache = new MarshalPlan.Cache();
+    MarshalPlan plan = createPlan(first, Collections.<String>emptySet());
+    cache.put(first, String.class, plan);
+
+    assertSame(plan, cache.get(first, String.class));
+    assertNull(cache.get(second, String.class));
+    assertNull(cache.get(first, Integer.class));
+  }
+
+  /**
+   * Tests that the plans made for a class are kept when a plan for another field is added.
+   */
+  @Test
+  public void should_KeepPlansOfClass_When_PlanForOtherFieldIsAdded() {
+    XMLFieldDescriptor first = new XMLFieldDescriptorImpl(String.class, "first", "first", null);
+    XMLFieldDescriptor second = new XMLFieldDescriptorImpl(String.class, "second", "second", null);
+    MarshalPlan.Cache cache = new MarshalPlan.Cache();
+    MarshalPlan firstPlan = createPlan(first, Collections.<String>emptySet());
+    MarshalPlan secondPlan = createPlan(second, Collections.<String>emptySet());
+
+    cache.put(first, String.class, firstPlan);
+    cache.put(second, String.class, secondPlan);
+
+    assertSame(firstPlan, cache.get(first, String.class));
+    assertSame(secondPlan, cache.get(second, String.class));
+  }
+
+  /**
+   * Tests that a cleared cache holds no plans.
+   */
+  @Test
+  public void should_DropPlans_When_Cleared() {
+    XMLFieldDescriptor descriptor =
+        new XMLFieldDescriptorImpl(String.class, "value", "value", null);
+    MarshalPlan.Cache cache = new MarshalPlan.Cache();
+    cache.put(descriptor, String.class, createPlan(descriptor, Collections.<String>emptySet()));
+
+    cache.clear();
+    assertNull(cache.get(descriptor, String.class));
+  }
+
+  /**
+   * Tests that a plan applies only to marshallers with the settings it was made for.
+   */
+  @Test
+  public void should_NotApply_When_SettingsDiffer() {
+    XMLFieldDescriptor descriptor =
+        new XMLFieldDescriptorImpl(String.class, "value", "value", null);
+    Set<String> proxies = Collections.singleton("org.example.Proxy");
+    MarshalPlan plan = createPlan(descriptor, proxies);
+
+    assertTrue(plan.appliesTo(true, Collections.singleton("org.example.Proxy")));
+    assertFalse(plan.appliesTo(false, proxies));
+    assertFalse(plan.appliesTo(true, Collections.<String>emptySet()));
+  }
+
+  /**
+   * Tests that marshallers of one context reusing the plans of the objects of a collection write
+   * the same document as a new context.
+   *
+   * @throws Exception in case of marshal problems
+   */
+  @Test
+  public void should_WriteSameDocument_When_PlansAreReused() throws Exception {
+    MarshallerParallelTest.Holder holder = new MarshallerParallelTest.Holder();
+    for (int i = 0; i < 3; i++) {
+      CastorObject item = new CastorObject();
+      item.setName("object" + i);
+      item.setValue(i);
+      holder.getItems().add(item);
+    }
+    holder.getItems().add("text");
+
+    XMLContext context = new XMLContext();
+    String first = marshal(context, holder);
+    String second = marshal(context, holder);
+
+    assertEquals(marshal(new XMLContext(), holder), first);
+    assertEquals(first, second);
+    assertEquals(4, first.split("xsi:type=", -1).length - 1);
+  }
+
+  /**
+   * Tests that the plan leaves out the xsi:type attribute when the element name resolves to the
+   * class, also when the class descriptor is only loaded while the plan is made.
+   *
+   * @throws Exception in case of marshal problems
+   */
+  @Test
+  public void should_LeaveOutTypeAttribute_When_ElementNameResolvesToClass() throws Exception {
+    Contact contact = new Contact();
+    contact.setId(1);
+    contact.setName("name");
+    Owner owner = new Owner();
+    owner.setContact(contact);
+
+    XMLContext context = new XMLContext();
+    String first = marshal(context, owner);
+    String second = marshal(context, owner);
+
+    XMLContext resolved = new XMLContext();
+    resolved.getInternalContext().getXMLClassDescriptorResolver().resolve(Contact.class);
+    assertEquals(marshal(resolved, owner), first);
+    assertEquals(first, second);
+    assertFalse(first.contains("xsi:type="));
+  }
+
+  /**
+   * Creates a plan for strings held by the given field.
+   *
+   * @param descriptor the descriptor of the field
+   * @param proxies the proxy interfaces the plan is made for
+   * @return the plan
+   */
+  private MarshalPlan createPlan(final XMLFieldDescriptor descriptor, final Set<String> proxies) {
+    return new MarshalPlan(descriptor, String.class, "value", new StringClassDescriptor(), false,
+        false, null, false, null, null, null, true, proxies);
+  }
+
+  /**
+   * Marshals the given object with a marshaller of the given context.
+   *
+   * @param context the context to create the marshaller with
+   * @param object the object to marshal
+   * @return the document written
+   * @throws Exception in case of marshal problems
+   */
+  private String marshal(final XMLContext context, final Object object) throws Exception {
+    StringWriter writer = new StringWriter();
+    Marshaller marshaller = context.createMarshaller();
+    marshaller.setWriter(writer);
+    marshaller.marshal(object);
+    return writer.toString();
+  }
+}
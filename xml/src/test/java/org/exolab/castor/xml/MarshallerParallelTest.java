@@ -0,0 +1,261 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.castor.test.entity.CastorObject;
+import org.castor.test.entity.Email;
+import org.castor.test.entity.Emails;
+import org.castor.xml.XMLProperties;
+import org.exolab.castor.mapping.Mapping;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests the {@link Marshaller} class when marshalling large collections on several threads.
+ *
+ * @since 1.4.2
+ */
+public class MarshallerParallelTest {
+
+  /**
+   * Maps the items of a holder without namespace to emails bound to a namespace of their own.
+   */
+  private static final String HOLDER_MAPPING = "<mapping>"
+      + "<class name=\"" + Holder.class.getName() + "\"><map-to xml=\"holder\"/>"
+      + "<field name=\"items\" type=\"" + Email.class.getName() + "\" collection=\"arraylist\">"
+      + "<bind-xml name=\"email\" node=\"element\" ns-uri=\"http://castor.org/email\"/>"
+      + "</field></class>"
+      + "<class name=\"" + Email.class.getName() + "\">"
+      + "<map-to xml=\"email\" ns-uri=\"http://castor.org/email\"/>"
+      + "<field name=\"from\" type=\"string\">"
+      + "<bind-xml name=\"from\" node=\"element\" ns-uri=\"http://castor.org/email\"/></field>"
+      + "<field name=\"to\" type=\"string\">"
+      + "<bind-xml name=\"to\" node=\"element\" ns-uri=\"http://castor.org/email\"/></field>"
+      + "</class></mapping>";
+
+  /**
+   * Holds a list of arbitrary objects, marshalled with their xsi:type.
+   */
+  public static class Holder {
+
+    private List<Object> items = new ArrayList<Object>();
+
+    public List<Object> getItems() {
+      return items;
+    }
+
+    public void setItems(final List<Object> items) {
+      this.items = items;
+    }
+  }
+
+  /**
+   * Tests that an array marshalled in chunks gives the document marshalled sequentially.
+   *
+   * @throws Exception in case of marshal problems
+   */
+  @Test
+  public void should_WriteSameDocument_When_ArrayIsMarshalledInParallel() throws Exception {
+    Emails emails = createEmails(1000);
+    String expected = marshal(new XMLContext(), emails);
+
+    XMLContext context = new XMLContext();
+    context.setProperty(XMLProperties.PARALLEL_MARSHALLING_THRESHOLD, "10");
+    assertEquals(expected, marshal(context, emails));
+  }
+
+  /**
+   * Tests that a list of items declaring namespaces of their own marshalled in chunks gives the
+   * document marshalled sequentially.
+   *
+   * @throws Exception in case of marshal problems
+   */
+  @Test
+  public void should_WriteSameDocument_When_ListIsMarshalledInParallel() throws Exception {
+    Holder holder = new Holder();
+    for (int i = 0; i < 500; i++) {
+      CastorObject item = new CastorObject();
+      item.setName("object" + i);
+      item.setValue(i);
+      holder.getItems().add(item);
+      holder.getItems().add(null);
+    }
+    String expected = marshal(new XMLContext(), holder);
+
+    XMLContext context = new XMLContext();
+    context.setProperty(XMLProperties.PARALLEL_MARSHALLING_THRESHOLD, "10");
+    assertEquals(expected, marshal(context, holder));
+  }
+
+  /**
+   * Tests that items bound to a namespace by a mapping marshalled in chunks give the document
+   * marshalled sequentially.
+   *
+   * @throws Exception in case of marshal problems
+   */
+  @Test
+  public void should_WriteSameDocument_When_MappedItemsAreMarshalledInParallel() throws Exception {
+    Emails emails = createEmails(1000);
+    String expected = marshal(createContextFromMapping(), emails);
+
+    XMLContext context = createContextFromMapping();
+    context.setProperty(XMLProperties.PARALLEL_MARSHALLING_THRESHOLD, "10");
+    assertEquals(expected, marshal(context, emails));
+  }
+
+  /**
+   * Tests that items declaring a namespace without prefix in scope marshalled in chunks all use
+   * the one prefix assigned beforehand, where each item gets a prefix of its own sequentially.
+   *
+   * @throws Exception in case of marshal problems
+   */
+  @Test
+  public void should_UseAssignedPrefix_When_ItemsDeclareNamespace() throws Exception {
+    Holder holder = new Holder();
+    for (int i = 0; i < 1000; i++) {
+      Email email = new Email();
+      email.setFrom("from" + i + "@castor.org");
+      email.setTo("to" + i + "@castor.org");
+      holder.getItems().add(email);
+    }
+    String sequential = marshal(createContextFromHolderMapping(), holder);
+    assertTrue(sequential.contains("<ns1000:email xmlns:ns1000=\"http://castor.org/email\">"));
+
+    XMLContext context = createContextFromHolderMapping();
+    context.setProperty(XMLProperties.PARALLEL_MARSHALLING_THRESHOLD, "10");
+    context.setProperty(XMLProperties.BATCH_EXECUTOR, new Executor() {
+      public void execute(final Runnable command) {
+        new Thread(command).start();
+      }
+    });
+    assertEquals(sequential.replaceAll("ns\\d+", "ns1"), marshal(context, holder));
+  }
+
+  /**
+   * Tests that a chunk is only handed out once the chunks the window size before it have been
+   * written.
+   */
+  @Test
+  public void should_HoldBackChunk_When_WindowIsFull() {
+    Object[] items = new Object[4];
+    Marshaller.ParallelChunk[] chunks = new Marshaller.ParallelChunk[items.length];
+    for (int i = 0; i < chunks.length; i++) {
+      chunks[i] = new Marshaller.ParallelChunk(items, i, i + 1);
+    }
+    Marshaller.ParallelSchedule schedule = new Marshaller.ParallelSchedule(chunks.clone(), 2);
+
+    assertSame(chunks[0], schedule.take());
+    assertSame(chunks[1], schedule.poll());
+    assertNull(schedule.poll());
+
+    schedule.written(0);
+    assertSame(chunks[2], schedule.take());
+    assertNull(schedule.poll());
+
+    schedule.close();
+    assertNull(schedule.take());
+  }
+
+  /**
+   * Tests that the calling thread marshals all chunks when the executor does not run the chunks
+   * handed to it.
+   *
+   * @throws Exception in case of marshal problems
+   */
+  @Test
+  public void should_MarshalOnCallingThread_When_ExecutorRunsNothing() throws Exception {
+    Emails emails = createEmails(100);
+    String expected = marshal(new XMLContext(), emails);
+
+    XMLContext context = new XMLContext();
+    context.setProperty(XMLProperties.PARALLEL_MARSHALLING_THRESHOLD, "10");
+    context.setProperty(XMLProperties.BATCH_EXECUTOR, new Executor() {
+      public void execute(final Runnable command) {
+        // -- never runs the command
+      }
+    });
+    assertEquals(expected, marshal(context, emails));
+  }
+
+  /**
+   * Creates emails with distinct addresses.
+   *
+   * @param count the number of emails to create
+   * @return the emails
+   */
+  private Emails createEmails(final int count) {
+    Email[] email = new Email[count];
+    for (int i = 0; i < count; i++) {
+      email[i] = new Email();
+      email[i].setFrom("from" + i + "@castor.org");
+      email[i].setTo("to" + i + "@castor.org");
+    }
+    Emails emails = new Emails();
+    emails.setEmail(email);
+    return emails;
+  }
+
+  /**
+   * Creates a context with the email mapping loaded.
+   *
+   * @return the context
+   * @throws Exception if the mapping cannot be loaded
+   */
+  private XMLContext createContextFromMapping() throws Exception {
+    XMLContext context = new XMLContext();
+    Mapping mapping = context.createMapping();
+    mapping.loadMapping(getClass().getResource(BaseMarshallerTest.EMAIL_MAPPING_FILE));
+    context.addMapping(mapping);
+    return context;
+  }
+
+  /**
+   * Creates a context with the mapping of holders of emails loaded.
+   *
+   * @return the context
+   * @throws Exception if the mapping cannot be loaded
+   */
+  private XMLContext createContextFromHolderMapping() throws Exception {
+    XMLContext context = new XMLContext();
+    Mapping mapping = context.createMapping();
+    mapping.loadMapping(new InputSource(new StringReader(HOLDER_MAPPING)));
+    context.addMapping(mapping);
+    return context;
+  }
+
+  /**
+   * Marshals the given object with a marshaller of the given context.
+   *
+   * @param context the context to create the marshaller with
+   * @param object the object to marshal
+   * @return the document written
+   * @throws Exception in case of marshal problems
+   */
+  private String marshal(final XMLContext context, final Object object) throws Exception {
+    StringWriter writer = new StringWriter();
+    Marshaller marshaller = context.createMarshaller();
+    marshaller.setWriter(writer);
+    marshaller.marshal(object);
+    return writer.toString();
+  }
+}
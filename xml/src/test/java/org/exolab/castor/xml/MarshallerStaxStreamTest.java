@@ -13,11 +13,15 @@
  */
 package org.exolab.castor.xml;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.StringWriter;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamWriter;
 
+import org.junit.Test;
+
 /**
  * Tests the {@link Marshaller} class when marshalling the output into
  * {@link javax.xml.stream.XMLStreamWriter}.
@@ -40,4 +44,16 @@ public class MarshallerStaxStreamTest extends BaseMarshallerTest {
 
     return writer.toString();
   }
+
+  /**
+   * Tests that namespaces are declared only on the element whose scope declares them.
+   *
+   * @throws Exception in case of marshal problems
+   */
+  @Test
+  public void should_DeclareNamespaceOnce_When_ChildrenShareIt() throws Exception {
+    Marshaller marshaller = createMarshallerFromMapping(EMAIL_MAPPING_FILE);
+    String result = marshalEmails(marshaller);
+    assertEquals(result, 1, result.split("xmlns=\"http://castor.org/email\"", -1).length - 1);
+  }
 }
@@ -0,0 +1,145 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Enumeration;
+
+import org.castor.test.entity.Contact;
+import org.castor.xml.XMLProperties;
+import org.junit.Test;
+
+/**
+ * Tests the {@link NamespacesStack} class.
+ *
+ * @since 1.4.2
+ */
+public class NamespacesStackTest {
+
+  @Test
+  public void should_ResolveInnermostBinding_When_PrefixIsRedeclared() {
+    NamespacesStack stack = new NamespacesStack();
+    stack.addNamespace("a", "urn:outer");
+    stack.addNewNamespaceScope();
+    stack.addNamespace("a", "urn:inner");
+
+    assertEquals("urn:inner", stack.getNamespaceURI("a"));
+
+    stack.removeNamespaceScope();
+    assertEquals("urn:outer", stack.getNamespaceURI("a"));
+    assertEquals("a", stack.getNamespacePrefix("urn:outer"));
+    assertNull(stack.getNamespacePrefix("urn:inner"));
+  }
+
+  @Test
+  public void should_ReturnFirstDeclaredPrefix_When_UriIsBoundTwiceInScope() {
+    NamespacesStack stack = new NamespacesStack();
+    stack.addNamespace("", "urn:test");
+    stack.addNamespace("b", "urn:test");
+    stack.addNamespace("a", "urn:test");
+
+    assertEquals("", stack.getNamespacePrefix("urn:test"));
+    assertEquals("b", stack.getNonDefaultNamespacePrefix("urn:test"));
+
+    stack.removeNamespace("b");
+    assertEquals("a", stack.getNonDefaultNamespacePrefix("urn:test"));
+  }
+
+  @Test
+  public void should_KeepDeclarationOrder_When_PrefixIsRedeclaredInScope() {
+    NamespacesStack stack = new NamespacesStack();
+    stack.addNamespace("a", "urn:a");
+    stack.addNamespace("b", "urn:b");
+    stack.addNamespace("a", "urn:c");
+
+    Enumeration<String> prefixes = stack.getLocalNamespacePrefixes();
+    assertEquals("a", prefixes.nextElement());
+    assertEquals("b", prefixes.nextElement());
+    assertFalse(prefixes.hasMoreElements());
+    assertEquals("a", stack.getNamespacePrefix("urn:c"));
+    assertNull(stack.getNamespacePrefix("urn:a"));
+  }
+
+  @Test
+  public void should_ResolveXmlNamespace_When_NotDeclared() {
+    NamespacesStack stack = new NamespacesStack();
+    assertNull(stack.getNamespaceURI("xml"));
+
+    stack.addNewNamespaceScope();
+    assertEquals(Namespaces.XML_NAMESPACE, stack.getNamespaceURI("xml"));
+    assertEquals("xml", stack.getNamespacePrefix(Namespaces.XML_NAMESPACE));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void should_Fail_When_XmlPrefixIsRebound() {
+    new NamespacesStack().addNamespace("xml", "urn:test");
+  }
+
+  @Test
+  public void should_NotAffectOriginal_When_CopyDeclaresNamespaces() {
+    NamespacesStack stack = new NamespacesStack();
+    stack.addNamespace("a", "urn:a");
+
+    NamespacesStack copy = stack.copy();
+    copy.addNamespace("a", "urn:b");
+    copy.addNewNamespaceScope();
+    copy.addNamespace("c", "urn:c");
+
+    assertEquals("urn:a", stack.getNamespaceURI("a"));
+    assertNull(stack.getNamespaceURI("c"));
+    assertEquals("urn:b", copy.getNamespaceURI("a"));
+    assertEquals("urn:c", copy.getNamespaceURI("c"));
+  }
+
+  @Test
+  public void should_ReuseStorage_When_ScopesArePushedAndPopped() {
+    NamespacesStack stack = new NamespacesStack();
+    for (int i = 0; i < 100; i++) {
+      stack.addNewNamespaceScope();
+      stack.addNamespace("p" + i, "urn:" + i);
+    }
+    assertEquals("p0", stack.getNamespacePrefix("urn:0"));
+    for (int i = 99; i >= 0; i--) {
+      assertEquals("urn:" + i, stack.getNamespaceURI("p" + i));
+      stack.removeNamespaceScope();
+      assertNull(stack.getNamespaceURI("p" + i));
+    }
+    stack.clear();
+    assertNull(stack.getDefaultNamespaceURI());
+    assertTrue(Collections.list(stack.getLocalNamespacePrefixes()).isEmpty());
+  }
+
+  @Test
+  public void should_DeclareNamespacesOnRoot_When_DeclaredUpFront() throws Exception {
+    Contact contact = new Contact();
+    contact.setName("name");
+    contact.setNote("note");
+
+    XMLContext context = new XMLContext();
+    context.setProperty(XMLProperties.DIRECT_MARSHALLING, false);
+    Marshaller marshaller = context.createMarshaller();
+    marshaller.declareNamespaces(new Class<?>[] {Contact.class});
+    StringWriter writer = new StringWriter();
+    marshaller.setWriter(writer);
+    marshaller.marshal(contact);
+
+    String xml = writer.toString();
+    assertTrue(xml, xml.contains("<contact xmlns:ns1=\"" + Contact.NOTE_NAMESPACE + "\""));
+    assertTrue(xml, xml.contains("<ns1:note>note</ns1:note>"));
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.castor.test.entity.CastorObject;
+import org.castor.test.entity.Contact;
+import org.exolab.castor.xml.util.AttributeSetImpl;
+import org.exolab.castor.xml.util.XMLClassDescriptorImpl;
+import org.exolab.castor.xml.util.XMLClassDescriptorResolverImpl;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TypeResolution} class.
+ *
+ * @since 1.4.2
+ */
+public class TypeResolutionTest {
+
+  /**
+   * Tests that resolutions are kept per class loader instance.
+   */
+  @Test
+  public void should_KeepResolutionsApart_When_ClassLoadersDiffer() {
+    ClassLoader first = new URLClassLoader(new URL[0]);
+    ClassLoader second = new URLClassLoader(new URL[0]);
+    TypeResolution resolution = new TypeResolution("org.example.Type", null, null);
+
+    TypeResolution.Cache cache = new TypeResolution.Cache();
+    long generation = cache.synchronize(new XMLClassDescriptorResolverImpl());
+    cache.put(TypeResolution.INSTANCE_TYPE, null, "type", null, "org.example", first, resolution,
+        generation);
+
+    assertSame(resolution,
+        cache.get(TypeResolution.INSTANCE_TYPE, null, "type", null, "org.example", first));
+    assertNull(cache.get(TypeResolution.INSTANCE_TYPE, null, "type", null, "org.example", second));
+    assertNull(cache.get(TypeResolution.INSTANCE_TYPE, "urn:test", "type", null, "org.example",
+        first));
+    assertNull(cache.get(TypeResolution.INSTANCE_TYPE, null, "type", "org.mapped", "org.example",
+        first));
+    assertNull(cache.get(TypeResolution.CLASS_NAME, null, "type", null, "org.example", first));
+  }
+
+  /**
+   * Tests that a cleared cache holds no resolutions.
+   */
+  @Test
+  public void should_DropResolutions_When_Cleared() {
+    TypeResolution.Cache cache = new TypeResolution.Cache();
+    long generation = cache.synchronize(new XMLClassDescriptorResolverImpl());
+    cache.put(TypeResolution.CLASS_NAME, null, "org.example.Type", null, null, null,
+        TypeResolution.UNRESOLVED, generation);
+
+    cache.clear();
+    assertNull(cache.get(TypeResolution.CLASS_NAME, null, "org.example.Type", null, null, null));
+  }
+
+  /**
+   * Tests that names which do not resolve are stored until the resolver adds a descriptor.
+   *
+   * @throws Exception in case of resolver problems
+   */
+  @Test
+  public void should_DropMisses_When_ResolverAddsDescriptor() throws Exception {
+    XMLClassDescriptorResolverImpl resolver = new XMLClassDescriptorResolverImpl();
+    TypeResolution.Cache cache = new TypeResolution.Cache();
+    long generation = cache.synchronize(resolver);
+    cache.put(TypeResolution.ELEMENT_NAME, null, "item", null, "org.example", null,
+        TypeResolution.UNRESOLVED, generation);
+
+    assertEquals(generation, cache.synchronize(resolver));
+    assertSame(TypeResolution.UNRESOLVED,
+        cache.get(TypeResolution.ELEMENT_NAME, null, "item", null, "org.example", null));
+
+    resolver.setMappingLoader(null);
+    cache.synchronize(resolver);
+    assertNull(cache.get(TypeResolution.ELEMENT_NAME, null, "item", null, "org.example", null));
+  }
+
+  /**
+   * Tests that a resolution is not stored if the resolver added descriptors while it was made.
+   */
+  @Test
+  public void should_NotStoreResolution_When_DescriptorsChangedWhileResolving() {
+    XMLClassDescriptorResolverImpl resolver = new XMLClassDescriptorResolverImpl();
+    TypeResolution.Cache cache = new TypeResolution.Cache();
+    long generation = cache.synchronize(resolver);
+
+    resolver.cleanDescriptorCache();
+    cache.put(TypeResolution.ELEMENT_NAME, null, "item", null, "org.example", null,
+        TypeResolution.UNRESOLVED, generation);
+
+    cache.synchronize(resolver);
+    assertNull(cache.get(TypeResolution.ELEMENT_NAME, null, "item", null, "org.example", null));
+  }
+
+  /**
+   * Tests that misses are not stored for resolvers which do not tell when their descriptors change.
+   */
+  @Test
+  public void should_NotStoreMisses_When_ResolverGenerationIsUnknown() {
+    TypeResolution.Cache cache = new TypeResolution.Cache();
+    long generation = cache.synchronize(null);
+    TypeResolution resolved =
+        new TypeResolution("org.example.Type", null, new XMLClassDescriptorImpl(Object.class));
+    cache.put(TypeResolution.ELEMENT_NAME, null, "item", null, "org.example", null,
+        TypeResolution.UNRESOLVED, generation);
+    cache.put(TypeResolution.CLASS_NAME, null, "org.example.Type", null, null, null, resolved,
+        generation);
+
+    assertEquals(TypeResolution.Cache.UNKNOWN_GENERATION, generation);
+    assertNull(cache.get(TypeResolution.ELEMENT_NAME, null, "item", null, "org.example", null));
+    assertSame(resolved,
+        cache.get(TypeResolution.CLASS_NAME, null, "org.example.Type", null, null, null));
+  }
+
+  /**
+   * Tests that a class that cannot be loaded is resolved once and reported on each use.
+   *
+   * @throws Exception in case of resolver problems
+   */
+  @Test
+  public void should_RememberFailure_When_ClassCannotBeLoaded() throws Exception {
+    UnmarshalHandler handler = new XMLContext().createUnmarshaller().createHandler();
+    TypeResolution resolution = handler.resolveClass("org.example.NoSuchType");
+
+    assertSame(resolution, handler.resolveClass("org.example.NoSuchType"));
+    assertNull(handler.getClassDescriptor(resolution));
+    try {
+      resolution.getType();
+      fail("ClassNotFoundException expected");
+    } catch (ClassNotFoundException e) {
+      assertEquals("org.example.NoSuchType", e.getMessage());
+    }
+  }
+
+  /**
+   * Tests that unmarshallers of one context reusing the resolutions of the xsi:type attributes of
+   * a collection read the same objects as a new context.
+   *
+   * @throws Exception in case of marshal or unmarshal problems
+   */
+  @Test
+  public void should_ReadSameObjects_When_ResolutionsAreReused() throws Exception {
+    MarshallerParallelTest.Holder holder = new MarshallerParallelTest.Holder();
+    for (int i = 0; i < 3; i++) {
+      CastorObject item = new CastorObject();
+      item.setName("object" + i);
+      item.setValue(i);
+      holder.getItems().add(item);
+    }
+    holder.getItems().add("text");
+
+    XMLContext context = new XMLContext();
+    StringWriter writer = new StringWriter();
+    Marshaller marshaller = context.createMarshaller();
+    marshaller.setWriter(writer);
+    marshaller.setRootElement("holder");
+    marshaller.marshal(holder);
+    String xml = writer.toString();
+
+    for (int run = 0; run < 2; run++) {
+      MarshallerParallelTest.Holder result = unmarshal(context, xml);
+      assertEquals(4, result.getItems().size());
+      for (int i = 0; i < 3; i++) {
+        CastorObject item = (CastorObject) result.getItems().get(i);
+        assertEquals("object" + i, item.getName());
+        assertEquals(Integer.valueOf(i), item.getValue());
+      }
+      assertEquals("text", result.getItems().get(3));
+    }
+
+    MarshallerParallelTest.Holder result = unmarshal(new XMLContext(), xml);
+    assertNotNull(result);
+    assertEquals(4, result.getItems().size());
+  }
+
+  /**
+   * Tests that an xsi:type value which does not resolve at first is resolved once the class has
+   * been added to the context.
+   *
+   * @throws Exception in case of unmarshal problems
+   */
+  @Test
+  public void should_ResolveType_When_ClassIsAddedAfterMiss() throws Exception {
+    XMLContext context = new XMLContext();
+    UnmarshalHandler handler = context.createUnmarshaller().createHandler();
+    AttributeSet typeAttribute = createTypeAttribute("contact");
+    assertNull(handler.getInstanceType(typeAttribute, null));
+    assertNull(handler.getInstanceType(typeAttribute, null));
+
+    context.addClass(Contact.class);
+    assertEquals(Contact.class.getName(), handler.getInstanceType(typeAttribute, null));
+  }
+
+  /**
+   * Tests that an xsi:type value which does not resolve at first is resolved once the resolver has
+   * created the descriptor of the class on first use, without the context being told.
+   *
+   * @throws Exception in case of resolver problems
+   */
+  @Test
+  public void should_ResolveType_When_DescriptorIsCreatedAfterMiss() throws Exception {
+    XMLContext context = new XMLContext();
+    UnmarshalHandler handler = context.createUnmarshaller().createHandler();
+    AttributeSet typeAttribute = createTypeAttribute("contact");
+    assertNull(handler.getInstanceType(typeAttribute, null));
+
+    context.getInternalContext().getXMLClassDescriptorResolver().resolve(Contact.class);
+    assertEquals(Contact.class.getName(), handler.getInstanceType(typeAttribute, null));
+  }
+
+  /**
+   * Creates the attributes of an element holding the given xsi:type value.
+   *
+   * @param type the xsi:type value
+   * @return the attributes
+   */
+  private AttributeSet createTypeAttribute(final String type) {
+    AttributeSetImpl attributes = new AttributeSetImpl();
+    attributes.setAttribute("type", type, MarshalFramework.XSI_NAMESPACE);
+    return attributes;
+  }
+
+  /**
+   * Unmarshals a holder with an unmarshaller of the given context.
+   *
+   * @param context the context to create the unmarshaller with
+   * @param xml the document to read
+   * @return the holder read
+   * @throws Exception in case of unmarshal problems
+   */
+  private MarshallerParallelTest.Holder unmarshal(final XMLContext context, final String xml)
+      throws Exception {
+    Unmarshaller unmarshaller = context.createUnmarshaller();
+    unmarshaller.setClass(MarshallerParallelTest.Holder.class);
+    return (MarshallerParallelTest.Holder) unmarshaller.unmarshal(new StringReader(xml));
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.castor.test.entity.Email;
+import org.castor.test.entity.Emails;
+import org.castor.xml.UnmarshalListener;
+import org.exolab.castor.mapping.Mapping;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests the {@link UnmarshalSession} class.
+ *
+ * @since 1.4.2
+ */
+public class UnmarshalSessionTest {
+
+  private static final String EMAIL_MAPPING_FILE = "/org/castor/test/entity/mapping-email.xml";
+
+  private static final String EMAILS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+      + "<tns:emails xmlns:tns=\"http://castor.org/email\">"
+      + "<tns:email><tns:from>from@castor.org</tns:from><tns:to>to@castor.org</tns:to></tns:email>"
+      + "<tns:email><tns:from>b\u00e9a@castor.org</tns:from><tns:to>x@castor.org</tns:to>"
+      + "</tns:email>"
+      + "</tns:emails>";
+
+  private Unmarshaller unmarshaller;
+
+  @Before
+  public void setUp() throws Exception {
+    XMLContext context = new XMLContext();
+    Mapping mapping = new Mapping();
+    mapping.loadMapping(new InputSource(getClass().getResourceAsStream(EMAIL_MAPPING_FILE)));
+    context.addMapping(mapping);
+    unmarshaller = context.createUnmarshaller();
+  }
+
+  @Test
+  public void should_Unmarshal_When_DocumentIsFedInChunks() throws Exception {
+    UnmarshalSession session = unmarshaller.createSession();
+    feed(session, EMAILS.getBytes("UTF-8"), 3);
+
+    Emails emails = (Emails) session.finish();
+
+    assertEquals(2, emails.getEmail().length);
+    assertEquals("from@castor.org", emails.getEmail()[0].getFrom());
+    assertEquals("b\u00e9a@castor.org", emails.getEmail()[1].getFrom());
+  }
+
+  @Test
+  public void should_ReportObjects_When_TheyAreComplete() throws Exception {
+    final List<Object> unmarshalled = new ArrayList<Object>();
+    unmarshaller.setUnmarshalListener(new UnmarshalListener() {
+      public void initialized(Object target, Object parent) {}
+
+      public void attributesProcessed(Object target, Object parent) {}
+
+      public void fieldAdded(String fieldName, Object parent, Object child) {}
+
+      public void unmarshalled(Object target, Object parent) {
+        // -- the from and to values are reported too, count the mapped objects only
+        if ((target instanceof Email) || (target instanceof Emails)) {
+          unmarshalled.add(target);
+        }
+      }
+    });
+    byte[] bytes = EMAILS.getBytes("UTF-8");
+    int firstEmailEnd = EMAILS.indexOf("</tns:email>") + "</tns:email>".length();
+    UnmarshalSession session = unmarshaller.createSession();
+
+    session.feed(ByteBuffer.wrap(bytes, 0, firstEmailEnd));
+
+    assertEquals(1, unmarshalled.size());
+    assertTrue(unmarshalled.get(0) instanceof Email);
+
+    session.feed(ByteBuffer.wrap(bytes, firstEmailEnd, bytes.length - firstEmailEnd));
+    session.finish();
+
+    assertEquals(3, unmarshalled.size());
+  }
+
+  @Test
+  public void should_UseParser_When_DocumentHasDoctype() throws Exception {
+    String xml = "<!DOCTYPE emails>" + EMAILS.substring(EMAILS.indexOf("?>") + 2);
+    UnmarshalSession session = unmarshaller.createSession();
+    feed(session, xml.getBytes("UTF-8"), 5);
+
+    Emails emails = (Emails) session.finish();
+
+    assertEquals(2, emails.getEmail().length);
+  }
+
+  @Test(expected = MarshalException.class)
+  public void should_Fail_When_DocumentIsIncomplete() throws Exception {
+    UnmarshalSession session = unmarshaller.createSession();
+    feed(session, EMAILS.substring(0, EMAILS.length() - 5).getBytes("UTF-8"), 64);
+    session.finish();
+  }
+
+  private void feed(UnmarshalSession session, byte[] bytes, int chunkSize) throws Exception {
+    for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+      session.feed(ByteBuffer.wrap(bytes, offset, Math.min(chunkSize, bytes.length - offset)));
+    }
+  }
+}
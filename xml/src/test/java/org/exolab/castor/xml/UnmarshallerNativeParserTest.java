@@ -0,0 +1,32 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import java.io.ByteArrayInputStream;
+
+import org.castor.xml.XMLProperties;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests the {@link Unmarshaller} class when unmarshalling with the built-in
+ * {@link org.exolab.castor.xml.parsing.XMLTokenizer}.
+ *
+ * @since 1.4.2
+ */
+public class UnmarshallerNativeParserTest extends BaseUnmarshallerTest {
+
+  @Override
+  protected Object unmarshal(Unmarshaller unmarshaller, String xml) throws Exception {
+    unmarshaller.setProperty(XMLProperties.NATIVE_PARSER, "true");
+    return unmarshaller.unmarshal(new InputSource(new ByteArrayInputStream(xml.getBytes("UTF-8"))));
+  }
+}
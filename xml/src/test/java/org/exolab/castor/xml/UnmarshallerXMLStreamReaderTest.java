@@ -0,0 +1,57 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+
+import org.castor.test.entity.Emails;
+import org.exolab.castor.mapping.Mapping;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests the {@link Unmarshaller} class when unmarshalling from a
+ * {@link javax.xml.stream.XMLStreamReader}.
+ *
+ * @since 1.4.2
+ */
+public class UnmarshallerXMLStreamReaderTest extends BaseUnmarshallerTest {
+
+  @Override
+  protected Object unmarshal(Unmarshaller unmarshaller, String xml) throws Exception {
+    return unmarshaller
+        .unmarshal(XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml)));
+  }
+
+  @Test
+  public void should_ReadCData_When_ReaderDoesNotCoalesce() throws Exception {
+    XMLContext context = new XMLContext();
+    Mapping mapping = new Mapping();
+    mapping.loadMapping(new InputSource(
+        getClass().getResourceAsStream("/org/castor/test/entity/mapping-email.xml")));
+    context.addMapping(mapping);
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+    String xml = "<tns:emails xmlns:tns=\"http://castor.org/email\"><tns:email>"
+        + "<tns:from><![CDATA[from@castor.org]]></tns:from><tns:to>to@castor.org</tns:to>"
+        + "</tns:email></tns:emails>";
+
+    Emails emails = (Emails) context.createUnmarshaller()
+        .unmarshal(factory.createXMLStreamReader(new StringReader(xml)));
+
+    assertEquals("from@castor.org", emails.getEmail()[0].getFrom());
+  }
+}
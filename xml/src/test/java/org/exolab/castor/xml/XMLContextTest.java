@@ -1,13 +1,35 @@
 package org.exolab.castor.xml;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+
+import org.castor.test.entity.Email;
 import org.castor.test.entity.Entity;
 import org.castor.xml.AbstractInternalContext;
 import org.castor.xml.InternalContext;
+import org.castor.xml.XMLProperties;
 import org.exolab.castor.mapping.Mapping;
 import org.exolab.castor.tools.MappingTool;
 import org.exolab.castor.util.ChangeLog2XML;
@@ -375,6 +397,166 @@ public class XMLContextTest {
     assertNotNull(context2.getInternalContext());
   }
 
+  /**
+   * Test that a released marshaller is handed out again, reset to its initial state.
+   */
+  @Test
+  public void testAcquireReleasedMarshaller() throws Exception {
+    Entity entity = new Entity();
+    entity.setId(1);
+    entity.setName("Test Entity");
+
+    Marshaller marshaller = xmlContext.acquireMarshaller();
+    StringWriter out = new StringWriter();
+    marshaller.setWriter(out);
+    marshaller.setRootElement("thing");
+    marshaller.marshal(entity);
+    assertTrue(out.toString().contains("<thing"));
+    xmlContext.releaseMarshaller(marshaller);
+
+    Marshaller recycled = xmlContext.acquireMarshaller();
+    assertSame(marshaller, recycled);
+    out = new StringWriter();
+    recycled.setWriter(out);
+    recycled.marshal(entity);
+    assertFalse(out.toString().contains("<thing"));
+    assertTrue(out.toString().contains("Test Entity"));
+    assertNotSame(recycled, xmlContext.acquireMarshaller());
+  }
+
+  /**
+   * Test that a released unmarshaller is handed out again and reads new objects.
+   */
+  @Test
+  public void testAcquireReleasedUnmarshaller() throws Exception {
+    String resource = getResource("org/castor/test/entity/input.xml");
+
+    Unmarshaller unmarshaller = xmlContext.acquireUnmarshaller();
+    unmarshaller.setClass(Entity.class);
+    Entity first = (Entity) unmarshaller.unmarshal(new InputSource(resource));
+    xmlContext.releaseUnmarshaller(unmarshaller);
+
+    Unmarshaller recycled = xmlContext.acquireUnmarshaller();
+    assertSame(unmarshaller, recycled);
+    recycled.setClass(Entity.class);
+    Entity second = (Entity) recycled.unmarshal(new InputSource(resource));
+    assertNotSame(first, second);
+    assertEquals(first.getName(), second.getName());
+    assertEquals(1, second.getId());
+  }
+
+  /**
+   * Test that an unmarshaller of another context is not taken into the pool.
+   */
+  @Test
+  public void testReleaseForeignUnmarshaller() {
+    Unmarshaller foreign = new XMLContext().createUnmarshaller();
+    xmlContext.releaseUnmarshaller(foreign);
+    assertNotSame(foreign, xmlContext.acquireUnmarshaller());
+  }
+
+  /**
+   * Test that concurrent calls on a shared unmarshaller never share the reused handler or names.
+   */
+  @Test
+  public void testConcurrentUnmarshalWithSharedUnmarshaller() throws Exception {
+    xmlContext.setProperty(XMLProperties.NATIVE_PARSER, "true");
+    final Unmarshaller unmarshaller = xmlContext.createUnmarshaller();
+    unmarshaller.setClass(Entity.class);
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+      for (int i = 0; i < 8; i++) {
+        final int thread = i;
+        futures.add(executor.submit(new Callable<Boolean>() {
+          public Boolean call() throws Exception {
+            for (int j = 0; j < 1000; j++) {
+              int id = thread * 1000 + j;
+              String xml = "<entity id=\"" + id + "\"><name" + thread + ">ignored</name" + thread
+                  + "><name>Entity " + id + "</name></entity>";
+              InputSource source = (j % 2 == 0)
+                  ? new InputSource(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)))
+                  : new InputSource(new StringReader(xml));
+              Entity entity = (Entity) unmarshaller.unmarshal(source);
+              if (entity.getId() != id || !("Entity " + id).equals(entity.getName())) {
+                return Boolean.FALSE;
+              }
+            }
+            return Boolean.TRUE;
+          }
+        }));
+      }
+      for (Future<Boolean> future : futures) {
+        assertTrue(future.get(60, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Test that a batch of documents is unmarshalled in input order, with per-document errors.
+   */
+  @Test
+  public void testUnmarshalAll() throws Exception {
+    InputStream resource = getClass().getResourceAsStream("/org/castor/test/entity/input.xml");
+    List<Source> sources = Arrays.<Source>asList(new StreamSource(resource),
+        new StreamSource(new StringReader("<entity id=\"2\"><name>Second</name>")),
+        new StreamSource(new StringReader("<entity id=\"3\"><name>Third</name></entity>")));
+
+    List<BatchResult<Entity>> results = xmlContext.unmarshalAll(sources, Entity.class);
+    assertEquals(3, results.size());
+    assertEquals("Test Entity", results.get(0).getValue().getName());
+    assertTrue(results.get(1).isFailed());
+    assertEquals(3, results.get(2).getValue().getId());
+  }
+
+  /**
+   * Test that a batch of objects is marshalled in input order.
+   */
+  @Test
+  public void testMarshalAll() throws Exception {
+    Entity first = new Entity();
+    first.setName("First");
+    Entity second = new Entity();
+    second.setName("Second");
+
+    List<BatchResult<String>> results = xmlContext.marshalAll(Arrays.asList(first, second));
+    assertTrue(results.get(0).getValue().contains("First"));
+    assertTrue(results.get(1).getValue().contains("Second"));
+  }
+
+  /**
+   * Test that a warm-up resolves and round-trips the given classes.
+   */
+  @Test
+  public void testWarmUp() throws Exception {
+    WarmUpReport report =
+        xmlContext.warmUp(null, new Class<?>[] {Entity.class, Email.class, Entity.class}, false);
+    assertFalse(report.isFailed());
+    assertEquals(Arrays.<Class<?>>asList(Entity.class, Email.class), report.getResolvedClasses());
+    assertEquals(report.getResolvedClasses(), report.getRoundTrippedClasses());
+    assertEquals(report.getTotalTime(TimeUnit.NANOSECONDS),
+        report.getResolveTime(TimeUnit.NANOSECONDS) + report.getMarshalTime(TimeUnit.NANOSECONDS)
+            + report.getUnmarshalTime(TimeUnit.NANOSECONDS));
+  }
+
+  /**
+   * Test that a warm-up in parallel records the classes failing without stopping.
+   */
+  @Test
+  public void testWarmUpInParallel() throws Exception {
+    xmlContext.setProperty(XMLProperties.WARM_UP_ROUNDS, 3);
+    WarmUpReport report = xmlContext.warmUp(new String[] {"org.castor.test.entity"},
+        new Class<?>[] {Entity.class, Object.class, Runnable.class}, true);
+    assertTrue(report.getRoundTrippedClasses().contains(Entity.class));
+    assertFalse(report.getRoundTrippedClasses().contains(Object.class));
+    assertFalse(report.getRoundTrippedClasses().contains(Runnable.class));
+    assertTrue(report.isFailed());
+    assertTrue(report.getFailures().containsKey(Object.class));
+  }
+
   /**
    * Returns absolute path for resource.
    *
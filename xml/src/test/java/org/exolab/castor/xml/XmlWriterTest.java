@@ -0,0 +1,142 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.castor.test.entity.Contact;
+import org.castor.test.entity.Email;
+import org.castor.xml.XMLProperties;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the direct marshalling of {@link XmlWritable} instances through an {@link XmlWriter}.
+ *
+ * @since 1.4.2
+ */
+public class XmlWriterTest {
+
+  /**
+   * Represents the contact used for testing.
+   */
+  private Contact contact;
+
+  /**
+   * Sets up the test environment.
+   */
+  @Before
+  public void setUp() {
+    Email email = new Email();
+    email.setFrom("from@castor.org");
+    email.setTo("to@castor.org");
+
+    contact = new Contact();
+    contact.setId(42);
+    contact.setName("Jane <Doe>");
+    contact.setPhone(-1234567890123L);
+    contact.setNote("note & more");
+    contact.getTags().add("friend");
+    contact.getTags().add("work");
+    contact.setEmail(email);
+  }
+
+  /**
+   * Tests that the direct path produces the same document as the descriptor-driven path.
+   *
+   * @throws Exception if any error occurs
+   */
+  @Test
+  public void testDirectOutputMatchesDescriptorOutput() throws Exception {
+    String direct = marshal(createMarshaller(true), contact);
+    assertEquals(1, contact.getDirectWrites());
+
+    String generic = marshal(createMarshaller(false), contact);
+    assertEquals(1, contact.getDirectWrites());
+
+    assertEquals(generic, direct);
+  }
+
+  /**
+   * Tests that unset primitive and null fields are omitted on the direct path as well.
+   *
+   * @throws Exception if any error occurs
+   */
+  @Test
+  public void testDirectOutputOmitsUnsetFields() throws Exception {
+    Contact empty = new Contact();
+    empty.setName("empty");
+
+    String direct = marshal(createMarshaller(true), empty);
+    assertEquals(1, empty.getDirectWrites());
+    assertEquals(marshal(createMarshaller(false), empty), direct);
+  }
+
+  /**
+   * Tests that a {@link MarshalListener} is notified of the same values on both paths.
+   *
+   * @throws Exception if any error occurs
+   */
+  @Test
+  public void testMarshalListenerIsNotified() throws Exception {
+    RecordingListener directListener = new RecordingListener();
+    Marshaller marshaller = createMarshaller(true);
+    marshaller.setMarshalListener(directListener);
+    String direct = marshal(marshaller, contact);
+
+    RecordingListener genericListener = new RecordingListener();
+    marshaller = createMarshaller(false);
+    marshaller.setMarshalListener(genericListener);
+    String generic = marshal(marshaller, contact);
+
+    assertEquals(1, contact.getDirectWrites());
+    assertEquals(generic, direct);
+    assertEquals(genericListener.preMarshalled, directListener.preMarshalled);
+    assertEquals(genericListener.postMarshalled, directListener.postMarshalled);
+  }
+
+  private Marshaller createMarshaller(final boolean direct) {
+    XMLContext context = new XMLContext();
+    context.setProperty(XMLProperties.DIRECT_MARSHALLING, direct);
+    return context.createMarshaller();
+  }
+
+  private String marshal(final Marshaller marshaller, final Object object) throws Exception {
+    StringWriter writer = new StringWriter();
+    marshaller.setWriter(writer);
+    marshaller.marshal(object);
+    return writer.toString();
+  }
+
+  /**
+   * {@link MarshalListener} recording the values it is notified of.
+   */
+  private static class RecordingListener implements MarshalListener {
+
+    private final List<Object> preMarshalled = new ArrayList<Object>();
+
+    private final List<Object> postMarshalled = new ArrayList<Object>();
+
+    public boolean preMarshal(final Object object) {
+      preMarshalled.add(object);
+      return true;
+    }
+
+    public void postMarshal(final Object object) {
+      postMarshalled.add(object);
+    }
+  }
+}
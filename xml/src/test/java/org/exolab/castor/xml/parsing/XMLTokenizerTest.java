@@ -0,0 +1,163 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml.parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Tests the {@link XMLTokenizer} class.
+ *
+ * @since 1.4.2
+ */
+public class XMLTokenizerTest {
+
+  @Test
+  public void should_ReportEvents_When_DocumentIsWellFormed() throws Exception {
+    String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n<!-- comment -->"
+        + "<tns:root xmlns:tns=\"urn:test\" a=\"1 &amp; &#x32;\tb\">\r\n"
+        + "<item id='3'>caf\u00e9 &lt;&#8364;&gt;<![CDATA[<raw>]]></item><empty/><?pi data?>"
+        + "</tns:root>";
+
+    String events = tokenize(xml);
+
+    assertEquals("<tns:root xmlns:tns=urn:test a=1 & 2 b>[\n]<item id=3>[caf\u00e9 <\u20ac><raw>]"
+        + "</item><empty></empty>?pi:data</tns:root>", events);
+  }
+
+  @Test
+  public void should_ShareNames_When_TableIsReused() throws Exception {
+    NameTable names = new NameTable();
+    Recorder first = new Recorder();
+    Recorder second = new Recorder();
+
+    tokenize("<root/>", names, first);
+    tokenize("<root/>", names, second);
+
+    assertSame(first._lastName, second._lastName);
+  }
+
+  @Test
+  public void should_FallBack_When_DocumentHasDoctype() throws Exception {
+    assertFallback("<!DOCTYPE a [<!ENTITY e 'v'>]><a>&e;</a>");
+  }
+
+  @Test
+  public void should_FallBack_When_EncodingIsNotUtf8() throws Exception {
+    assertFallback("<?xml version='1.0' encoding='ISO-8859-1'?><a/>");
+  }
+
+  @Test
+  public void should_Fail_When_EndTagDoesNotMatch() throws Exception {
+    try {
+      tokenize("<a>\n<b></a>");
+      fail("Mismatched end tag accepted");
+    } catch (SAXParseException e) {
+      assertEquals(2, e.getLineNumber());
+    }
+  }
+
+  @Test(expected = SAXParseException.class)
+  public void should_Fail_When_EntityIsNotDeclared() throws Exception {
+    tokenize("<a>&e;</a>");
+  }
+
+  @Test(expected = SAXParseException.class)
+  public void should_Fail_When_AttributeIsRepeated() throws Exception {
+    tokenize("<a b='1' b='2'/>");
+  }
+
+  private void assertFallback(String xml) throws Exception {
+    byte[] bytes = xml.getBytes("ISO-8859-1");
+    XMLTokenizer tokenizer = new XMLTokenizer(new ByteArrayInputStream(bytes), new NameTable());
+
+    assertFalse(tokenizer.open());
+
+    ByteArrayOutputStream replay = new ByteArrayOutputStream();
+    InputStream in = tokenizer.getReplayStream();
+    for (int b = in.read(); b >= 0; b = in.read()) {
+      replay.write(b);
+    }
+    assertEquals(xml, replay.toString("ISO-8859-1"));
+  }
+
+  private String tokenize(String xml) throws Exception {
+    Recorder recorder = new Recorder();
+    tokenize(xml, new NameTable(), recorder);
+    return recorder._events.toString();
+  }
+
+  private void tokenize(String xml, NameTable names, Recorder recorder) throws Exception {
+    XMLTokenizer tokenizer =
+        new XMLTokenizer(new ByteArrayInputStream(xml.getBytes("UTF-8")), names);
+    assertTrue(tokenizer.open());
+    tokenizer.parse(recorder);
+  }
+
+  /**
+   * Records the events reported, joining adjacent character data.
+   */
+  private static class Recorder extends DefaultHandler {
+    private final StringBuilder _events = new StringBuilder();
+
+    private final StringBuilder _text = new StringBuilder();
+
+    private String _lastName;
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) {
+      flush();
+      _lastName = qName;
+      _events.append('<').append(qName);
+      for (int i = 0; i < atts.getLength(); i++) {
+        _events.append(' ').append(atts.getQName(i)).append('=').append(atts.getValue(i));
+      }
+      _events.append('>');
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) {
+      flush();
+      _events.append("</").append(qName).append('>');
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+      _text.append(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) {
+      flush();
+      _events.append('?').append(target).append(':').append(data);
+    }
+
+    private void flush() {
+      if (_text.length() > 0) {
+        _events.append('[').append(_text).append(']');
+        _text.setLength(0);
+      }
+    }
+  }
+}
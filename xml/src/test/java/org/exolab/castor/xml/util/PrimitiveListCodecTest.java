@@ -0,0 +1,72 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.exolab.castor.mapping.loader.collection.ArrayBuilder;
+import org.junit.Test;
+
+/**
+ * Tests the {@link PrimitiveListCodec} class.
+ *
+ * @since 1.4.2
+ */
+public class PrimitiveListCodecTest {
+
+  @Test
+  public void testParseIntegersSeparatedByAnyWhitespace() {
+    ArrayBuilder values = ArrayBuilder.newBuilder(Integer.TYPE);
+    PrimitiveListCodec.parse("  1\t-2\n+3\r\n 2147483647 -2147483648 ", values);
+
+    assertArrayEquals(new int[] {1, -2, 3, Integer.MAX_VALUE, Integer.MIN_VALUE},
+        (int[]) values.toArray());
+  }
+
+  @Test
+  public void testParseEmptyList() {
+    ArrayBuilder values = ArrayBuilder.newBuilder(Long.TYPE);
+    PrimitiveListCodec.parse(" \n ", values);
+
+    assertEquals(0, values.size());
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testParseRejectsOverflow() {
+    PrimitiveListCodec.parse("1 2147483648", ArrayBuilder.newBuilder(Integer.TYPE));
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testParseRejectsLoneSign() {
+    PrimitiveListCodec.parse("1 - 2", ArrayBuilder.newBuilder(Short.TYPE));
+  }
+
+  @Test
+  public void testParseDoublesWithSchemaInfinity() {
+    ArrayBuilder values = ArrayBuilder.newBuilder(Double.TYPE);
+    PrimitiveListCodec.parse("1.5 INF -INF 2e3", values);
+
+    assertArrayEquals(
+        new double[] {1.5, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 2000.0},
+        (double[]) values.toArray(), 0.0);
+  }
+
+  @Test
+  public void testFormatMatchesBoxedValues() {
+    StringBuilder buffer = new StringBuilder();
+    PrimitiveListCodec.format(new double[] {1.0, 0.1, Double.NaN}, buffer);
+
+    assertEquals(Double.valueOf(1.0) + " " + Double.valueOf(0.1) + " " + Double.valueOf(Double.NaN),
+        buffer.toString());
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.exolab.castor.xml.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+
+import org.castor.test.entity.Entity;
+import org.exolab.castor.mapping.Mapping;
+import org.exolab.castor.xml.NodeType;
+import org.exolab.castor.xml.UnmarshalState;
+import org.exolab.castor.xml.Unmarshaller;
+import org.exolab.castor.xml.ValidationException;
+import org.exolab.castor.xml.XMLClassDescriptor;
+import org.exolab.castor.xml.XMLContext;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+/**
+ * Tests the {@link SymbolTable} class.
+ *
+ * @since 1.4.2
+ */
+public class SymbolTableTest {
+
+  @Test
+  public void testGetIdReturnsSameIdForEqualNames() {
+    SymbolTable symbols = new SymbolTable();
+    int id = symbols.getId(new String("name"));
+
+    assertEquals(id, symbols.getId(new String("name")));
+    assertEquals(id, symbols.lookupId(new String("name")));
+    assertTrue(id != symbols.getId("other"));
+    assertEquals(SymbolTable.NO_ID, symbols.lookupId(null));
+  }
+
+  @Test
+  public void testLookupDoesNotAddUnknownNames() {
+    SymbolTable symbols = new SymbolTable();
+    int size = symbols.size();
+
+    assertEquals(SymbolTable.NO_ID, symbols.lookupId("unknown"));
+    assertEquals(size, symbols.size());
+  }
+
+  @Test
+  public void testResolvingDescriptorsLeavesTableEmpty() throws Exception {
+    XMLContext context = new XMLContext();
+    SymbolTable symbols = context.getInternalContext().getSymbolTable();
+    context.getInternalContext().getXMLClassDescriptorResolver().resolve(Entity.class);
+
+    assertEquals(0, symbols.size());
+  }
+
+  @Test
+  public void testIndexResolvesElementsByNameAndNamespaceIds() throws Exception {
+    SymbolTable symbols = new SymbolTable();
+    XMLClassDescriptorImpl descriptor = new XMLClassDescriptorImpl(Entity.class, "entity");
+    XMLFieldDescriptorImpl first = createElement("name", "urn:a");
+    XMLFieldDescriptorImpl second = createElement("name", "urn:b");
+    descriptor.addFieldDescriptor(first);
+    descriptor.addFieldDescriptor(second);
+
+    FieldNameIndex index = symbols.getIndex(descriptor);
+    assertTrue(index.hasElementNames());
+    int nameId = symbols.lookupId(new String("name"));
+    assertSame(second, index.getElementDescriptor(nameId, symbols.lookupNamespaceId("urn:b")));
+    assertSame(first, index.getElementDescriptor(nameId, SymbolTable.ANY_NAMESPACE));
+    assertNull(index.getElementDescriptor(nameId, symbols.lookupNamespaceId("urn:c")));
+    assertNull(index.getElementDescriptor(symbols.lookupId("unknown"), SymbolTable.ANY_NAMESPACE));
+
+    XMLFieldDescriptorImpl other = createElement("other", null);
+    descriptor.addFieldDescriptor(other);
+    index = symbols.getIndex(descriptor);
+    assertSame(other, index.getElementDescriptor(symbols.lookupId("other"),
+        symbols.lookupNamespaceId("")));
+  }
+
+  @Test
+  public void testIndexResolvesAttributesByNameIds() throws Exception {
+    SymbolTable symbols = new SymbolTable();
+    XMLClassDescriptorImpl descriptor = new XMLClassDescriptorImpl(Entity.class, "entity");
+    XMLFieldDescriptorImpl id =
+        new XMLFieldDescriptorImpl(Integer.TYPE, "id", "id", NodeType.Attribute);
+    descriptor.addFieldDescriptor(id);
+
+    FieldNameIndex index = symbols.getIndex(descriptor);
+    assertTrue(index.hasAttributeNames());
+    assertSame(id, index.getAttributeDescriptor(symbols.lookupId("id")));
+    assertNull(index.getAttributeDescriptor(SymbolTable.NO_ID));
+    assertEquals(symbols.lookupId("id"), index.getAttributeNameId(0));
+    assertEquals(symbols.lookupNamespaceId(null), index.getAttributeNamespaceId(0));
+  }
+
+  @Test
+  public void testIndexLeavesIntrospectedDescriptorsToNameMatching() throws Exception {
+    XMLContext context = new XMLContext();
+    SymbolTable symbols = context.getInternalContext().getSymbolTable();
+    XMLClassDescriptor descriptor = (XMLClassDescriptor) context.getInternalContext()
+        .getXMLClassDescriptorResolver().resolve(Entity.class);
+
+    FieldNameIndex index = symbols.getIndex(descriptor);
+    assertFalse(index.hasElementNames());
+    assertFalse(index.hasAttributeNames());
+  }
+
+  @Test
+  public void testSequenceOrderIsCheckedByNameIds() throws Exception {
+    SymbolTable symbols = new SymbolTable();
+    XMLClassDescriptorImpl descriptor = new XMLClassDescriptorImpl(Entity.class, "entity");
+    XMLFieldDescriptorImpl first = createElement("first", null);
+    first.setRequired(true);
+    XMLFieldDescriptorImpl second = createElement("second", null);
+    second.setRequired(true);
+    descriptor.addFieldDescriptor(first);
+    descriptor.addFieldDescriptor(second);
+    descriptor.setCompositorAsSequence();
+    descriptor.addSequenceElement(first);
+    descriptor.addSequenceElement(second);
+
+    FieldNameIndex index = symbols.getIndex(descriptor);
+    UnmarshalState state = new UnmarshalState();
+    index.checkDescriptorForCorrectOrderWithinSequence(first, state, "first",
+        symbols.lookupId("first"));
+    index.checkDescriptorForCorrectOrderWithinSequence(second, state, "second",
+        symbols.lookupId("second"));
+    assertEquals(2, state.getExpectedIndex());
+
+    try {
+      index.checkDescriptorForCorrectOrderWithinSequence(second, new UnmarshalState(), "second",
+          symbols.lookupId("second"));
+      fail("Expected ValidationException");
+    } catch (ValidationException e) {
+      // expected, the first element is required
+    }
+  }
+
+  @Test
+  public void testUnmarshalMappedClassWithNameIds() throws Exception {
+    XMLContext context = new XMLContext();
+    Mapping mapping = context.createMapping();
+    mapping.loadMapping(new InputSource(new StringReader("<mapping>"
+        + "<class name=\"org.castor.test.entity.Entity\">"
+        + "<map-to xml=\"entity\" ns-uri=\"urn:entity\"/>"
+        + "<field name=\"id\" type=\"int\"><bind-xml name=\"id\" node=\"attribute\"/></field>"
+        + "<field name=\"name\" type=\"string\"><bind-xml name=\"name\" node=\"element\"/>"
+        + "</field></class></mapping>")));
+    context.addMapping(mapping);
+    Unmarshaller unmarshaller = context.createUnmarshaller();
+    unmarshaller.setClass(Entity.class);
+
+    Entity entity = (Entity) unmarshaller.unmarshal(new StringReader(
+        "<entity xmlns=\"urn:entity\" id=\"7\"><name>Seven</name></entity>"));
+    assertEquals(7, entity.getId());
+    assertEquals("Seven", entity.getName());
+    assertTrue(context.getInternalContext().getSymbolTable().lookupId("name") >= 0);
+  }
+
+  @Test
+  public void testUnmarshalWithNameIds() throws Exception {
+    XMLContext context = new XMLContext();
+    Unmarshaller unmarshaller = context.createUnmarshaller();
+    unmarshaller.setClass(Entity.class);
+
+    Entity entity = (Entity) unmarshaller
+        .unmarshal(new StringReader("<entity id=\"7\"><name>Seven</name></entity>"));
+    assertEquals(7, entity.getId());
+    assertEquals("Seven", entity.getName());
+  }
+
+  private static XMLFieldDescriptorImpl createElement(final String name, final String namespace) {
+    XMLFieldDescriptorImpl descriptor =
+        new XMLFieldDescriptorImpl(String.class, name, name, NodeType.Element);
+    descriptor.setNameSpaceURI(namespace);
+    return descriptor;
+  }
+}